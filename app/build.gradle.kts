@@ -8,6 +8,9 @@
 plugins {
     // Apply the application plugin to add support for building a CLI application in Java.
     application
+
+    // Apply the JMH plugin to add the jmh source set (src/jmh/java) and the jmh task.
+    alias(libs.plugins.jmh)
 }
 
 repositories {
@@ -37,6 +40,15 @@ application {
     mainClass = "javavm.App"
 }
 
+jmh {
+    jmhVersion = libs.versions.jmh
+    // Report the allocation rate (gc.alloc.rate.norm) alongside the throughput.
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    // Run a subset with e.g. ./gradlew :app:jmh -Pjmh.includes=ConstantTag
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+}
+
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
@@ -0,0 +1,100 @@
+package javavm.classfile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ClassFileReaderの読み取り処理のスループットを計測するベンチマーク
+ *
+ * 小・中・大の3種類の合成クラスについて、ヘッダの読み取り、各方式での定数プールの読み取り、
+ * クラス全体の読み取りを計測します。従来の {@link ClassFileReader#readConstantPool()} は対応するタグが
+ * 限られるため、そのタグだけで構成した同じ大きさのクラスを使用します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassFileReaderBenchmark {
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public SyntheticClassFile.Size size;
+
+    private byte[] classFile;
+    private byte[] legacyClassFile;
+
+    @Setup
+    public void setUp() {
+        classFile = SyntheticClassFile.withMix(SyntheticClassFile.TYPICAL_MIX, size.entries, 42);
+        legacyClassFile = SyntheticClassFile.withMix(SyntheticClassFile.LEGACY_MIX, size.entries, 42);
+    }
+
+    @Benchmark
+    public int readMagic() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            return reader.getMajorVersion();
+        }
+    }
+
+    @Benchmark
+    public int readVersion() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.getMajorVersion();
+        }
+    }
+
+    @Benchmark
+    public ConstantInfo[] readConstantPool() {
+        try (ClassFileReader reader = new ClassFileReader(legacyClassFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.readConstantPool();
+        }
+    }
+
+    @Benchmark
+    public ConstantPool readCompactConstantPool() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.readCompactConstantPool();
+        }
+    }
+
+    @Benchmark
+    public ConstantPool readLazyConstantPool() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.readLazyConstantPool();
+        }
+    }
+
+    @Benchmark
+    public ClassFile readClassFile() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            return reader.readClassFile();
+        }
+    }
+
+    @Benchmark
+    public ClassFile readClassFileEagerly() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            return reader.readClassFile(false);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package javavm.classfile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 定数プールのタグごとに、1エントリあたりの読み取り時間を計測するベンチマーク
+ *
+ * 同じタグのエントリを {@value #ENTRIES} 個並べた定数プールを読み取り、
+ * {@link OperationsPerInvocation} により結果をエントリ単位（ns/エントリ）で報告します。
+ * 固定の7エントリ分の時間も含まれますが、エントリ数に比べて無視できる大きさです。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstantTagBenchmark {
+    static final int ENTRIES = 4096;
+
+    @Param({"Utf8", "Integer", "Float", "Long", "Double", "Class", "String",
+            "Fieldref", "Methodref", "InterfaceMethodref", "NameAndType",
+            "MethodHandle", "MethodType", "Dynamic", "InvokeDynamic", "Module", "Package"})
+    public String tag;
+
+    private byte[] classFile;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        int value = ConstantInfo.class.getField("CONSTANT_" + tag).getInt(null);
+        classFile = SyntheticClassFile.withTag(value, ENTRIES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public ConstantPool compact() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.readCompactConstantPool();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public ConstantPool lazy() {
+        try (ClassFileReader reader = new ClassFileReader(classFile)) {
+            reader.readMagic();
+            reader.readVersion();
+            return reader.readLazyConstantPool();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package javavm.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の合成クラスファイルを生成するクラス
+ *
+ * 同じ引数からは常に同じバイト列を生成するため、実行ごとの結果を比較できます。
+ * 定数プールの先頭には次のエントリを固定で配置し、以降のエントリはこれらを参照します。
+ * <pre>
+ * #1 Utf8 "bench/Synthetic"   #2 Class #1
+ * #3 Utf8 "java/lang/Object"  #4 Class #3
+ * #5 Utf8 "()V"               #6 NameAndType #1:#5
+ * #7 Fieldref #4.#6
+ * </pre>
+ */
+final class SyntheticClassFile {
+    private static final int PREAMBLE_COUNT = 7;
+
+    /**
+     * javacが生成する一般的なクラスに近いタグの構成比（合計100）
+     */
+    static final int[][] TYPICAL_MIX = {
+        {ConstantInfo.CONSTANT_Utf8, 45},
+        {ConstantInfo.CONSTANT_Class, 8},
+        {ConstantInfo.CONSTANT_String, 6},
+        {ConstantInfo.CONSTANT_NameAndType, 12},
+        {ConstantInfo.CONSTANT_Methodref, 14},
+        {ConstantInfo.CONSTANT_Fieldref, 7},
+        {ConstantInfo.CONSTANT_InterfaceMethodref, 2},
+        {ConstantInfo.CONSTANT_Integer, 2},
+        {ConstantInfo.CONSTANT_Float, 1},
+        {ConstantInfo.CONSTANT_Long, 1},
+        {ConstantInfo.CONSTANT_MethodHandle, 1},
+        {ConstantInfo.CONSTANT_InvokeDynamic, 1},
+    };
+
+    /**
+     * {@link ClassFileReader#readConstantPool()} が対応するタグだけの構成比（合計100）
+     */
+    static final int[][] LEGACY_MIX = {
+        {ConstantInfo.CONSTANT_Utf8, 55},
+        {ConstantInfo.CONSTANT_Class, 10},
+        {ConstantInfo.CONSTANT_NameAndType, 15},
+        {ConstantInfo.CONSTANT_Fieldref, 20},
+    };
+
+    /**
+     * ベンチマークで使用するクラスの大きさ（定数プールのエントリ数）
+     */
+    enum Size {
+        SMALL(64),
+        MEDIUM(1024),
+        HUGE(60000);
+
+        final int entries;
+
+        Size(int entries) {
+            this.entries = entries;
+        }
+    }
+
+    private SyntheticClassFile() {
+    }
+
+    /**
+     * 指定した構成比でタグを選んだクラスファイルを生成します。
+     * @param mix タグと比率の組の配列
+     * @param entries 固定エントリを含む定数プールのエントリ数（Long/Doubleは1エントリと数える）
+     * @param seed 乱数の種
+     * @return クラスファイルのバイト列
+     */
+    static byte[] withMix(int[][] mix, int entries, long seed) {
+        int total = 0;
+        for (int[] pair : mix) {
+            total += pair[1];
+        }
+        Random random = new Random(seed);
+        int[] tags = new int[Math.max(0, entries - PREAMBLE_COUNT)];
+        for (int i = 0; i < tags.length; i++) {
+            int pick = random.nextInt(total);
+            for (int[] pair : mix) {
+                pick -= pair[1];
+                if (pick < 0) {
+                    tags[i] = pair[0];
+                    break;
+                }
+            }
+        }
+        return build(tags, random);
+    }
+
+    /**
+     * 固定エントリの後に同じタグのエントリを並べたクラスファイルを生成します。
+     * @param tag エントリのタグ
+     * @param entries 固定エントリを除くエントリ数
+     * @return クラスファイルのバイト列
+     */
+    static byte[] withTag(int tag, int entries) {
+        int[] tags = new int[entries];
+        Arrays.fill(tags, tag);
+        return build(tags, new Random(tag));
+    }
+
+    private static byte[] build(int[] tags, Random random) {
+        int slots = PREAMBLE_COUNT + 1;
+        for (int tag : tags) {
+            slots += tag == ConstantInfo.CONSTANT_Long || tag == ConstantInfo.CONSTANT_Double ? 2 : 1;
+        }
+        if (slots > 0xFFFF) {
+            throw new IllegalArgumentException("定数プールのエントリが多すぎます: " + slots);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61);
+            out.writeShort(slots);
+
+            out.writeByte(ConstantInfo.CONSTANT_Utf8);
+            out.writeUTF("bench/Synthetic");
+            out.writeByte(ConstantInfo.CONSTANT_Class);
+            out.writeShort(1);
+            out.writeByte(ConstantInfo.CONSTANT_Utf8);
+            out.writeUTF("java/lang/Object");
+            out.writeByte(ConstantInfo.CONSTANT_Class);
+            out.writeShort(3);
+            out.writeByte(ConstantInfo.CONSTANT_Utf8);
+            out.writeUTF("()V");
+            out.writeByte(ConstantInfo.CONSTANT_NameAndType);
+            out.writeShort(1);
+            out.writeShort(5);
+            // 従来の readConstantPool() でも読めるよう、固定エントリにはMethodrefを使わない
+            out.writeByte(ConstantInfo.CONSTANT_Fieldref);
+            out.writeShort(4);
+            out.writeShort(6);
+
+            for (int tag : tags) {
+                writeEntry(out, tag, random);
+            }
+
+            // access_flags, this_class, super_class, interfaces, fields, methods, attributes
+            out.writeShort(0x0021);
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, int tag, Random random) throws IOException {
+        out.writeByte(tag);
+        switch (tag) {
+            case ConstantInfo.CONSTANT_Utf8:
+                out.writeUTF(identifier(random));
+                break;
+
+            case ConstantInfo.CONSTANT_Class:
+            case ConstantInfo.CONSTANT_String:
+            case ConstantInfo.CONSTANT_Module:
+            case ConstantInfo.CONSTANT_Package:
+                out.writeShort(1);
+                break;
+
+            case ConstantInfo.CONSTANT_MethodType:
+                out.writeShort(5);
+                break;
+
+            case ConstantInfo.CONSTANT_Integer:
+            case ConstantInfo.CONSTANT_Float:
+                out.writeInt(random.nextInt());
+                break;
+
+            case ConstantInfo.CONSTANT_Long:
+            case ConstantInfo.CONSTANT_Double:
+                out.writeLong(random.nextLong());
+                break;
+
+            case ConstantInfo.CONSTANT_NameAndType:
+                out.writeShort(1);
+                out.writeShort(5);
+                break;
+
+            case ConstantInfo.CONSTANT_Fieldref:
+            case ConstantInfo.CONSTANT_Methodref:
+            case ConstantInfo.CONSTANT_InterfaceMethodref:
+                out.writeShort(2);
+                out.writeShort(6);
+                break;
+
+            case ConstantInfo.CONSTANT_MethodHandle:
+                // REF_getField #7
+                out.writeByte(1);
+                out.writeShort(7);
+                break;
+
+            case ConstantInfo.CONSTANT_Dynamic:
+            case ConstantInfo.CONSTANT_InvokeDynamic:
+                out.writeShort(0);
+                out.writeShort(6);
+                break;
+
+            default:
+                throw new IllegalArgumentException("不正なタグ値です: " + tag);
+        }
+    }
+
+    /**
+     * 4〜40文字の識別子風の文字列を生成します。
+     */
+    private static String identifier(Random random) {
+        int length = 4 + random.nextInt(37);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(64);
+            builder.append(c < 26 ? (char) ('a' + c) : c < 52 ? (char) ('A' + c - 26) : c < 62 ? (char) ('0' + c - 52) : c == 62 ? '/' : '$');
+        }
+        return builder.toString();
+    }
+}
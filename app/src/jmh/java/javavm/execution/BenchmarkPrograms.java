@@ -0,0 +1,293 @@
+package javavm.execution;
+
+/**
+ * インタプリタのベンチマークで実行するプログラム
+ *
+ * javacが生成したこのクラスのバイトコードをインタプリタで実行します。
+ * 比較のため、同じメソッドをJavaから直接呼び出した場合も計測します。
+ */
+public final class BenchmarkPrograms {
+    static int speed = 3;
+    // GCのベンチマークで生かしておくオブジェクトのグラフ
+    static Node retained;
+    static Node young;
+    static Record records;
+
+    private BenchmarkPrograms() {
+    }
+
+    /**
+     * {@link #particles(int)} で移動させる点
+     */
+    public static final class Particle {
+        int x;
+        int y;
+        int dx;
+        int dy;
+
+        Particle(int x, int y) {
+            this.x = x;
+            this.y = y;
+            this.dx = speed;
+            this.dy = 1;
+        }
+    }
+
+    /**
+     * {@link #shapes(int)} で面積を求める図形
+     */
+    public abstract static class Shape {
+        final int size;
+
+        Shape(int size) {
+            this.size = size;
+        }
+
+        abstract int area();
+    }
+
+    /**
+     * 正方形
+     */
+    public static final class Square extends Shape {
+        Square(int size) {
+            super(size);
+        }
+
+        @Override
+        int area() {
+            return size * size;
+        }
+    }
+
+    /**
+     * 直角二等辺三角形
+     */
+    public static final class Triangle extends Shape {
+        Triangle(int size) {
+            super(size);
+        }
+
+        @Override
+        int area() {
+            return size * size / 2;
+        }
+    }
+
+    /**
+     * {@link #tree(int)} で作る木の節点
+     */
+    public static final class Node {
+        final Node left;
+        final Node right;
+        final int value;
+
+        Node(Node left, Node right, int value) {
+            this.left = left;
+            this.right = right;
+            this.value = value;
+        }
+    }
+
+    /**
+     * {@link #buildRecords(int)} で作る、さまざまな型のフィールドを持つオブジェクト
+     */
+    public static final class Record {
+        long id;
+        double score;
+        int count;
+        float ratio;
+        short kind;
+        char code;
+        byte flags;
+        boolean active;
+        Record next;
+        Record parent;
+    }
+
+    /**
+     * 再帰呼び出しによるフィボナッチ数の計算（メソッド呼び出しの性能）
+     */
+    public static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    /**
+     * エラトステネスの篩による素数の数え上げ（配列アクセスと分岐の性能）
+     */
+    public static int sieve(int limit) {
+        boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; i++) {
+            if (composite[i]) {
+                continue;
+            }
+            count++;
+            // i * i がintの範囲を超える場合は消す数がない
+            if (i <= limit / i) {
+                for (int j = i * i; j <= limit; j += i) {
+                    composite[j] = true;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 二重ループでの整数演算（ローカル変数の読み書きと算術命令の性能）
+     */
+    public static long nestedLoops(int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                sum += (i * j) ^ (i + j);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 点の座標を更新するループ（フィールドの読み書きとstaticフィールドの読み取りの性能）
+     */
+    public static long particles(int steps) {
+        Particle[] particles = new Particle[64];
+        for (int i = 0; i < particles.length; i++) {
+            particles[i] = new Particle(i, i * 2);
+        }
+        long checksum = 0;
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < particles.length; i++) {
+                Particle particle = particles[i];
+                particle.x += particle.dx;
+                particle.y += particle.dy;
+                if (particle.x > 1000 || particle.x < 0) {
+                    particle.dx = particle.dx > 0 ? -speed : speed;
+                }
+                checksum += particle.x ^ particle.y;
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * 図形の面積の合計（仮想呼び出しの性能）
+     * 1つ目のループの呼び出し箇所は単相、2つ目は2種類のクラスの多相になります。
+     */
+    public static long shapes(int steps) {
+        Shape[] squares = new Shape[64];
+        Shape[] mixed = new Shape[64];
+        for (int i = 0; i < squares.length; i++) {
+            squares[i] = new Square(i);
+            mixed[i] = i % 2 == 0 ? new Square(i) : new Triangle(i);
+        }
+        long sum = 0;
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < squares.length; i++) {
+                sum += squares[i].area();
+            }
+            for (int i = 0; i < mixed.length; i++) {
+                sum += mixed[i].area();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 深さを指定して完全二分木を作ります（GCがたどるオブジェクトのグラフ）。節点の数は {@code 2^depth - 1} です。
+     */
+    public static Node tree(int depth) {
+        return depth == 0 ? null : new Node(tree(depth - 1), tree(depth - 1), depth);
+    }
+
+    /**
+     * 木を作り、GCを繰り返しても生き残るようにstaticフィールドから参照します。
+     */
+    public static void retain(int depth) {
+        retained = tree(depth);
+    }
+
+    /**
+     * 木を作り、次に呼び出すまでstaticフィールドから参照します。前の木はゴミになります。
+     */
+    public static void replaceYoung(int depth) {
+        young = tree(depth);
+    }
+
+    /**
+     * オブジェクトの連結リストを作り、staticフィールドから参照します（オブジェクトの配置の大きさ）。
+     */
+    public static int buildRecords(int n) {
+        Record head = null;
+        for (int i = 0; i < n; i++) {
+            Record record = new Record();
+            record.id = i;
+            record.score = i * 0.5;
+            record.count = i;
+            record.ratio = i / 3.0f;
+            record.kind = (short) (i % 7);
+            record.code = (char) ('A' + i % 26);
+            record.flags = (byte) i;
+            record.active = i % 2 == 0;
+            record.parent = head == null ? null : head.next;
+            record.next = head;
+            head = record;
+        }
+        records = head;
+        return n;
+    }
+
+    /**
+     * {@link #counters(int, int, boolean)} で増やすカウンタ
+     */
+    public static final class Counter {
+        int value;
+
+        synchronized void increment() {
+            value++;
+        }
+    }
+
+    /**
+     * カウンタを指定した回数だけ増やすスレッドの処理
+     */
+    public static final class Incrementer implements Runnable {
+        final Counter counter;
+        final int iterations;
+
+        Incrementer(Counter counter, int iterations) {
+            this.counter = counter;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < iterations; i++) {
+                counter.increment();
+            }
+        }
+    }
+
+    /**
+     * 合計total回のカウンタの増加をthreads個のスレッドで分担します（モニタとスレッドの性能）。
+     * sharedがtrueの場合はすべてのスレッドが1つのカウンタのロックを奪い合い、falseの場合はスレッドごとのカウンタを使います。
+     */
+    public static int counters(int threads, int total, boolean shared) throws InterruptedException {
+        Counter[] counters = new Counter[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            counters[i] = shared && i > 0 ? counters[0] : new Counter();
+            workers[i] = new Thread(new Incrementer(counters[i], total / threads));
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        int sum = 0;
+        for (int i = 0; i < threads; i++) {
+            if (!shared || i == 0) {
+                sum += counters[i].value;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,78 @@
+package javavm.execution;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ゲストのヒープのGCの停止時間を計測するベンチマーク
+ *
+ * {@link BenchmarkPrograms#tree(int)} で作った大きな木をヒープに置き、GCのスレッド数ごとに1回のGCにかかる時間を計測します。
+ * {@code full} はOld世代に置いた約100万個の節点に印を付けるFull GC、
+ * {@code minor} は毎回作り直す約13万個の節点をSurvivorにコピーするMinor GCです。
+ * スレッド数による違いは、スレッド数以上のプロセッサがある環境でだけ現れます。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=1g")
+@State(Scope.Thread)
+public class GcBenchmark {
+    private static final String PROGRAMS = "javavm/execution/BenchmarkPrograms";
+    private static final long HEAP_SIZE = 256L << 20;
+    private static final long YOUNG_SIZE = 96L << 20;
+    private static final int RETAINED_DEPTH = 20;
+    private static final int YOUNG_DEPTH = 17;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int gcThreads;
+
+    @Param({"full", "minor"})
+    public String kind;
+
+    private Heap heap;
+    private Interpreter interpreter;
+    private RuntimeMethod replaceYoung;
+
+    @Setup
+    public void setUp() {
+        // 作り直す木は毎回すべてSurvivorに収まり、昇格しない
+        heap = new Heap(HEAP_SIZE, Heap.DEFAULT_TLAB_SIZE, YOUNG_SIZE, Heap.MAX_TENURING_THRESHOLD);
+        heap.setGcThreads(gcThreads);
+        MethodArea methodArea = new MethodArea(InterpreterBenchmark.RESOURCES, heap);
+        interpreter = new Interpreter(methodArea);
+        replaceYoung = methodArea.resolveMethod(PROGRAMS, "replaceYoung", "(I)V");
+        interpreter.execute(methodArea.resolveMethod(PROGRAMS, "retain", "(I)V"), RETAINED_DEPTH);
+        // 残す木をOld世代に移す
+        heap.collect();
+    }
+
+    @Setup(Level.Invocation)
+    public void allocate() {
+        if (kind.equals("minor")) {
+            interpreter.execute(replaceYoung, YOUNG_DEPTH);
+        }
+    }
+
+    @Benchmark
+    public long collect() {
+        if (kind.equals("minor")) {
+            heap.collector.collect(null, GcEvent.Kind.MINOR);
+        } else {
+            heap.collect();
+        }
+        return heap.getUsed();
+    }
+}
@@ -0,0 +1,76 @@
+package javavm.execution;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ゲストのオブジェクトがヒープで占める大きさを計測するベンチマーク
+ *
+ * さまざまな型のフィールドを持つ {@link BenchmarkPrograms.Record} の連結リストを作ってFull GCを行い、
+ * 生き残ったオブジェクト1つあたりのバイト数を補助カウンタ {@code bytesPerObject} として報告します。
+ * {@code unpackedBytesPerObject} は、ヘッダを16バイト、すべてのフィールドを8バイトとした場合の参考値です。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class HeapFootprintBenchmark {
+    private static final String PROGRAMS = "javavm/execution/BenchmarkPrograms";
+
+    @Param({"100000"})
+    public int records;
+
+    private Heap heap;
+    private Interpreter interpreter;
+    private RuntimeMethod buildRecords;
+    private RuntimeClass record;
+
+    /**
+     * オブジェクト1つあたりのバイト数を報告する補助カウンタ
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerObject;
+        public long unpackedBytesPerObject;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerObject = 0;
+            unpackedBytesPerObject = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        heap = new Heap(64L << 20, Heap.DEFAULT_TLAB_SIZE);
+        MethodArea methodArea = new MethodArea(InterpreterBenchmark.RESOURCES, heap);
+        interpreter = new Interpreter(methodArea);
+        buildRecords = methodArea.resolveMethod(PROGRAMS, "buildRecords", "(I)I");
+        record = methodArea.lookup(PROGRAMS + "$Record");
+    }
+
+    @Benchmark
+    public long build(Footprint footprint) {
+        interpreter.execute(buildRecords, records);
+        heap.collect();
+        footprint.bytesPerObject = heap.getUsed() / records;
+        footprint.unpackedBytesPerObject = 16 + 8L * (record.getPrimitiveFieldCount() + record.getReferenceFieldCount());
+        return heap.getUsed();
+    }
+}
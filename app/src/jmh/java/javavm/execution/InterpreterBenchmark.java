@@ -0,0 +1,136 @@
+package javavm.execution;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javavm.classfile.ClassFileReader;
+import javavm.classloader.ClassSource;
+
+/**
+ * インタプリタの実行性能を計測するベンチマーク
+ *
+ * {@link BenchmarkPrograms} のメソッドをインタプリタで実行し、1秒あたりの実行回数に加えて
+ * 1秒あたりに実行した命令数を補助カウンタ {@code instructions} として報告します。
+ * {@code direct} は同じメソッドをJavaから直接呼び出した場合の参考値です。
+ * {@code compileThreshold} が0の場合はインタプリタだけで実行し、それ以外の場合はホットなメソッドをコンパイルします
+ * （コンパイルしたコードで実行した命令は {@code instructions} に含まれません）。
+ * {@code superinstructions} を切り替えると、スーパー命令によるディスパッチの回数（{@code instructions}）の違いを比較できます。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+    private static final String PROGRAMS = "javavm/execution/BenchmarkPrograms";
+
+    /** ベンチマークのクラスパスからクラスを読み込む読み込み元 */
+    static final ClassSource RESOURCES = className -> {
+        try (InputStream in = InterpreterBenchmark.class.getResourceAsStream("/" + className + ".class")) {
+            if (in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            try (ClassFileReader reader = new ClassFileReader(in.readAllBytes())) {
+                return reader.readClassFile();
+            }
+        }
+    };
+
+    @Param({"fib", "sieve", "nestedLoops", "particles", "shapes"})
+    public String program;
+
+    @Param({"0", "10000"})
+    public int compileThreshold;
+
+    @Param({"true", "false"})
+    public boolean superinstructions;
+
+    private Interpreter interpreter;
+    private RuntimeMethod method;
+    private int argument;
+
+    /**
+     * 実行した命令数を数える補助カウンタ
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class InstructionCounter {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        TieredCompiler.getInstance().setThreshold(compileThreshold);
+        CodeDecoder.setSuperinstructions(superinstructions);
+        MethodArea methodArea = new MethodArea(RESOURCES);
+        interpreter = new Interpreter(methodArea);
+        switch (program) {
+            case "fib":
+                method = methodArea.resolveMethod(PROGRAMS, "fib", "(I)I");
+                argument = 20;
+                break;
+            case "sieve":
+                method = methodArea.resolveMethod(PROGRAMS, "sieve", "(I)I");
+                argument = 100000;
+                break;
+            case "nestedLoops":
+                method = methodArea.resolveMethod(PROGRAMS, "nestedLoops", "(I)J");
+                argument = 300;
+                break;
+            case "particles":
+                method = methodArea.resolveMethod(PROGRAMS, "particles", "(I)J");
+                argument = 1000;
+                break;
+            case "shapes":
+                method = methodArea.resolveMethod(PROGRAMS, "shapes", "(I)J");
+                argument = 1000;
+                break;
+            default:
+                throw new IllegalArgumentException("不明なプログラムです: " + program);
+        }
+    }
+
+    @Benchmark
+    public Object interpret(InstructionCounter counter) {
+        long before = interpreter.getExecutedInstructions();
+        Object result = interpreter.execute(method, argument);
+        counter.instructions += interpreter.getExecutedInstructions() - before;
+        return result;
+    }
+
+    @Benchmark
+    public long direct() {
+        switch (program) {
+            case "fib":
+                return BenchmarkPrograms.fib(argument);
+            case "sieve":
+                return BenchmarkPrograms.sieve(argument);
+            case "particles":
+                return BenchmarkPrograms.particles(argument);
+            case "shapes":
+                return BenchmarkPrograms.shapes(argument);
+            default:
+                return BenchmarkPrograms.nestedLoops(argument);
+        }
+    }
+}
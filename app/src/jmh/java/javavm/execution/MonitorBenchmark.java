@@ -0,0 +1,55 @@
+package javavm.execution;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ゲストのスレッドとモニタのベンチマーク
+ *
+ * {@link BenchmarkPrograms#counters(int, int, boolean)} で、合計の回数を固定したカウンタの増加をスレッド数ごとに計測します。
+ * {@code shared} が {@code false} の場合はスレッドごとのカウンタを使うため、ロックは競合せずthin lockのままで、
+ * 時間はプロセッサ数までスレッド数にほぼ反比例します。{@code true} の場合は1つのロックを奪い合うため、
+ * 競合したロックの膨張と待機の費用が現れます。スレッド数による違いは、スレッド数以上のプロセッサがある環境でだけ現れます。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitorBenchmark {
+    private static final String PROGRAMS = "javavm/execution/BenchmarkPrograms";
+    private static final int TOTAL = 1 << 20;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean shared;
+
+    private Interpreter interpreter;
+    private RuntimeMethod counters;
+
+    @Setup
+    public void setUp() {
+        MethodArea methodArea = new MethodArea(InterpreterBenchmark.RESOURCES);
+        interpreter = new Interpreter(methodArea);
+        counters = methodArea.resolveMethod(PROGRAMS, "counters", "(IIZ)I");
+    }
+
+    @Benchmark
+    public Object counters() {
+        return interpreter.execute(counters, threads, TOTAL, shared);
+    }
+}
@@ -0,0 +1,392 @@
+package javavm.classfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 解析済みのクラスを格納したクラスアーカイブ
+ *
+ * 前回の起動時に {@link ClassArchiveWriter} で書き出したファイルをメモリマップし、
+ * クラスファイルを解析せずに {@link ClassFile} を復元します。
+ * アーカイブの形式は次の通りです（すべてビッグエンディアン）。
+ * <ul>
+ *   <li>ヘッダ: マジック、形式バージョン、シンボル数、シンボル表の位置、クラス数、クラス索引の位置、
+ *       ヘッダより後のすべての内容のCRC-32</li>
+ *   <li>シンボル表: 各シンボルのオフセットの配列と、u2の長さ + 修正UTF-8のバイト列</li>
+ *   <li>クラス索引: 各クラスレコードのオフセットの配列</li>
+ *   <li>クラスレコード: クラス名、読み込み元の状態、クラスファイルのダイジェスト、検証結果、バージョン、アクセスフラグ、
+ *       スーパークラス名、インターフェース名、定数プールのタグの配列とオペランドの配列、フィールド、
+ *       メソッド（Code属性、StackMapTable属性、LineNumberTable属性を含む）</li>
+ * </ul>
+ * 名前はシンボル番号で参照し、シンボルは最初に使用した時点でシンボルテーブルに登録します。
+ * 復元する際はタグとオペランドの配列を一括でコピーするだけで、定数プールのCONSTANT_Utf8は
+ * 最初のアクセス時にシンボルを取得します。メソッドのCode属性も、最初に {@link MethodInfo#getCode()} を
+ * 呼び出した時点で復元します。このため復元したクラスはアーカイブへの参照を保持します。
+ *
+ * <p>検証結果は検証器（{@link javavm.verifier.VerificationCache}）が書き出したバイト列をそのまま格納し、
+ * 同じダイジェストのクラスファイルを検証する際に、検証の代わりに使用します（{@link #verification(ClassFile)}）。
+ * 検証していないクラスは長さを-1として記録します。</p>
+ *
+ * <p>開く際にCRC-32とシンボル表、クラス索引の範囲を確かめ、書き出しが中断したアーカイブや壊れたアーカイブは
+ * {@link IOException} で拒否します。レコード内の長さと位置も読み取るたびにアーカイブの範囲と照合し、
+ * 範囲外の場合は {@link ClassFormatError} をスローします。</p>
+ *
+ * <p>アーカイブは読み取り専用のため、複数のスレッドから同時にクラスを復元できます。</p>
+ */
+public final class ClassArchive {
+    static final int MAGIC = 0x4A564D41;
+    // 格納する内容を変更した場合は値を上げ、古いアーカイブを使用しないようにする
+    static final int FORMAT_VERSION = 7;
+    static final int HEADER_SIZE = 28;
+    static final int CHECKSUM_OFFSET = 24;
+    static final int NO_SYMBOL = -1;
+
+    // クラスレコード内の位置
+    private static final int STAMP_OFFSET = 4;
+    private static final int DIGEST_OFFSET = 24;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int VERIFICATION_OFFSET = DIGEST_OFFSET + DIGEST_LENGTH;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int[] symbolOffsets;
+    private final Symbol[] symbols;
+    private final int[] classOffsets;
+    private final Map<String, Integer> classIndex;
+
+    private ClassArchive(Path path, ByteBuffer buffer, int[] symbolOffsets, int[] classOffsets) {
+        this.path = path;
+        this.buffer = buffer;
+        this.symbolOffsets = symbolOffsets;
+        this.symbols = new Symbol[symbolOffsets.length];
+        this.classOffsets = classOffsets;
+        this.classIndex = new HashMap<>(classOffsets.length * 2);
+        for (int i = 0; i < classOffsets.length; i++) {
+            classIndex.put(symbol(buffer.getInt(classOffsets[i])).toString(), i);
+        }
+    }
+
+    /**
+     * アーカイブファイルをメモリマップして開きます。
+     * @param path アーカイブファイルのパス
+     * @return 開いたアーカイブ
+     * @throws IOException ファイルを読み込めない場合、または形式が不正か古い場合
+     */
+    public static ClassArchive open(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("クラスアーカイブのサイズが不正です: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("クラスアーカイブではありません: " + path);
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != FORMAT_VERSION) {
+            throw new IOException("クラスアーカイブの形式バージョンが一致しません: " + version + " (" + path + ")");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE));
+        if ((int) crc.getValue() != buffer.getInt(CHECKSUM_OFFSET)) {
+            throw new IOException("クラスアーカイブが壊れています（CRC-32が一致しません）: " + path);
+        }
+        int symbolCount = buffer.getInt(8);
+        int symbolsStart = buffer.getInt(12);
+        int classCount = buffer.getInt(16);
+        int classIndexStart = buffer.getInt(20);
+        if (symbolCount < 0 || classCount < 0 || symbolsStart < HEADER_SIZE || classIndexStart < HEADER_SIZE
+                || symbolsStart + (long) symbolCount * 4 > buffer.limit()
+                || classIndexStart + (long) classCount * 4 > buffer.limit()) {
+            throw new IOException("クラスアーカイブのヘッダが不正です: " + path);
+        }
+
+        int[] symbolOffsets = new int[symbolCount];
+        buffer.slice(symbolsStart, symbolCount * 4).asIntBuffer().get(symbolOffsets);
+        for (int offset : symbolOffsets) {
+            if (offset < HEADER_SIZE || offset > buffer.limit() - 2
+                    || offset + 2 + (buffer.getShort(offset) & 0xFFFF) > buffer.limit()) {
+                throw new IOException("クラスアーカイブのシンボル表が不正です: " + path);
+            }
+        }
+        int[] classOffsets = new int[classCount];
+        buffer.slice(classIndexStart, classCount * 4).asIntBuffer().get(classOffsets);
+        for (int offset : classOffsets) {
+            if (offset < HEADER_SIZE || offset > buffer.limit() - (VERIFICATION_OFFSET + 4)) {
+                throw new IOException("クラスアーカイブのクラス索引が不正です: " + path);
+            }
+        }
+        try {
+            return new ClassArchive(path, buffer, symbolOffsets, classOffsets);
+        } catch (ClassFormatError e) {
+            throw new IOException("クラスアーカイブのクラス索引が不正です: " + path, e);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 格納されたクラスの数を返します。
+     * @return クラス数
+     */
+    public int size() {
+        return classOffsets.length;
+    }
+
+    /**
+     * 格納されたシンボルの数を返します。
+     * @return シンボル数
+     */
+    public int symbolCount() {
+        return symbolOffsets.length;
+    }
+
+    /**
+     * クラスが格納されているかを返します。
+     * @param className 内部形式のクラス名
+     * @return 格納されている場合true
+     */
+    public boolean contains(String className) {
+        return classIndex.containsKey(className);
+    }
+
+    /**
+     * アーカイブ作成時のクラスの読み込み元の状態を返します。
+     * @param className 内部形式のクラス名
+     * @return 読み込み元の状態。格納されていない場合はnull
+     */
+    public SourceStamp stamp(String className) {
+        Integer entry = classIndex.get(className);
+        if (entry == null) {
+            return null;
+        }
+        int offset = classOffsets[entry] + STAMP_OFFSET;
+        return new SourceStamp(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getInt(offset + 16));
+    }
+
+    /**
+     * クラスとともに格納した検証結果を返します。格納したクラスファイルとダイジェストが一致する場合だけ返します。
+     * 同じ名前のクラスの検証結果が格納されていない場合は、クラスのダイジェストを計算しません。
+     * @param classFile 検証するクラス
+     * @return 検証器が書き出した検証結果のバイト列。格納されていない場合、または内容が異なる場合はnull
+     * @throws ClassFormatError 検証結果の長さがアーカイブの範囲外の場合
+     */
+    public byte[] verification(ClassFile classFile) {
+        Integer entry = classIndex.get(classFile.getName().toString());
+        if (entry == null) {
+            return null;
+        }
+        int position = classOffsets[entry];
+        int length = buffer.getInt(position + VERIFICATION_OFFSET);
+        if (length < 0) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        buffer.get(position + DIGEST_OFFSET, digest);
+        if (!Arrays.equals(digest, classFile.getDigest())) {
+            return null;
+        }
+        int start = checkRange(position + VERIFICATION_OFFSET + 4, length);
+        byte[] verification = new byte[length];
+        buffer.get(start, verification);
+        return verification;
+    }
+
+    /**
+     * 格納されたクラスを復元します。
+     * @param className 内部形式のクラス名
+     * @return 復元したクラス。格納されていない場合はnull
+     * @throws ClassFormatError レコードの長さや位置がアーカイブの範囲外の場合
+     */
+    public ClassFile load(String className) {
+        Integer entry = classIndex.get(className);
+        return entry != null ? load(entry) : null;
+    }
+
+    private ClassFile load(int entry) {
+        int position = classOffsets[entry];
+        Symbol name = symbol(buffer.getInt(position));
+        byte[] digest = new byte[DIGEST_LENGTH];
+        buffer.get(position + DIGEST_OFFSET, digest);
+        int verificationLength = Math.max(buffer.getInt(position + VERIFICATION_OFFSET), 0);
+        position = checkRange(position + VERIFICATION_OFFSET + 4, verificationLength + 12L);
+        position = checkRange((position + verificationLength + 3) & ~3, 12);
+        int minorVersion = buffer.getShort(position) & 0xFFFF;
+        int majorVersion = buffer.getShort(position + 2) & 0xFFFF;
+        int accessFlags = buffer.getShort(position + 4) & 0xFFFF;
+        int superId = buffer.getInt(position + 6);
+        Symbol superName = superId == NO_SYMBOL ? null : symbol(superId);
+        int interfacesCount = buffer.getShort(position + 10) & 0xFFFF;
+        position = checkRange(position + 12, interfacesCount * 4L + 2);
+        Symbol[] interfaceNames = new Symbol[interfacesCount];
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames[i] = symbol(buffer.getInt(position));
+            position += 4;
+        }
+
+        int count = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        byte[] tags = new byte[count];
+        buffer.get(checkRange(position, count), tags);
+        position = checkRange((position + count + 3) & ~3, count * 4L + 4);
+        int[] operands = new int[count];
+        buffer.slice(position, count * 4).asIntBuffer().get(operands);
+        position += count * 4;
+
+        int fieldsCount = buffer.getInt(position);
+        position = checkRange(position + 4, fieldsCount * 16L + 4);
+        FieldInfo[] fields = new FieldInfo[fieldsCount];
+        for (int i = 0; i < fieldsCount; i++) {
+            fields[i] = new FieldInfo(buffer.getInt(position),
+                    symbol(buffer.getInt(position + 4)), symbol(buffer.getInt(position + 8)), buffer.getInt(position + 12));
+            position += 16;
+        }
+
+        int methodsCount = buffer.getInt(position);
+        position = checkRange(position + 4, methodsCount * 16L);
+        MethodInfo[] methods = new MethodInfo[methodsCount];
+        CodeLoader codeLoader = new CodeLoader() {
+            @Override
+            public CodeAttribute load(int offset, MethodInfo method) {
+                return loadCode(offset);
+            }
+
+            @Override
+            public CodeView view(int offset, MethodInfo method) {
+                return viewCode(offset);
+            }
+        };
+        for (int i = 0; i < methodsCount; i++) {
+            checkRange(position, 16);
+            int methodAccessFlags = buffer.getInt(position);
+            Symbol methodName = symbol(buffer.getInt(position + 4));
+            Symbol descriptor = symbol(buffer.getInt(position + 8));
+            int codeLength = buffer.getInt(position + 12);
+            position += 16;
+            if (codeLength > 0) {
+                // Code属性は位置だけを記録し、最初に使用する時点で復元する
+                methods[i] = new MethodInfo(methodAccessFlags, methodName, descriptor, codeLoader, position);
+                position = skipCode(position, codeLength);
+            } else {
+                methods[i] = new MethodInfo(methodAccessFlags, methodName, descriptor, null);
+            }
+        }
+
+        return new ClassFile(minorVersion, majorVersion, new ConstantPool(tags, operands, this),
+                accessFlags, name, superName, interfaceNames, fields, methods, digest, null);
+    }
+
+    /**
+     * メソッドのCode属性のレコードを読み飛ばします。読み飛ばす範囲がアーカイブに収まることも確かめます。
+     * @param position max_stackの位置
+     * @return 次のメソッドのレコードの位置
+     */
+    private int skipCode(int position, int codeLength) {
+        checkRange(position, 8);
+        int exceptionTableLength = buffer.getInt(position + 4);
+        checkRange(position + 8, exceptionTableLength * 4L + codeLength + 4);
+        position = (position + 8 + exceptionTableLength * 4 + codeLength + 3) & ~3;
+        int stackMapLength = buffer.getInt(position);
+        position += 4;
+        if (stackMapLength >= 0) {
+            checkRange(position, stackMapLength + 4L);
+            position = (position + stackMapLength + 3) & ~3;
+        }
+        int lineNumberLength = buffer.getInt(checkRange(position, 4));
+        return checkRange(position + 4, lineNumberLength * 4L) + lineNumberLength * 4;
+    }
+
+    /**
+     * メソッドのCode属性を復元します。レコードの範囲はクラスの復元時に確かめている（{@link #skipCode(int, int)}）。
+     * @param position max_stackの位置（直前にバイトコードの長さが格納されている）
+     */
+    private CodeAttribute loadCode(int position) {
+        int codeLength = buffer.getInt(position - 4);
+        int maxStack = buffer.getShort(position) & 0xFFFF;
+        int maxLocals = buffer.getShort(position + 2) & 0xFFFF;
+        int exceptionTableLength = buffer.getInt(position + 4);
+        position += 8;
+        int[] exceptionTable = new int[exceptionTableLength];
+        buffer.slice(position, exceptionTableLength * 4).asIntBuffer().get(exceptionTable);
+        position += exceptionTableLength * 4;
+        byte[] bytecode = new byte[codeLength];
+        buffer.get(position, bytecode);
+        position = (position + codeLength + 3) & ~3;
+        int stackMapLength = buffer.getInt(position);
+        position += 4;
+        byte[] stackMapTable = null;
+        if (stackMapLength >= 0) {
+            stackMapTable = new byte[stackMapLength];
+            buffer.get(position, stackMapTable);
+            position = (position + stackMapLength + 3) & ~3;
+        }
+        int lineNumberLength = buffer.getInt(position);
+        int[] lineNumbers = new int[lineNumberLength];
+        buffer.slice(position + 4, lineNumberLength * 4).asIntBuffer().get(lineNumbers);
+        return new CodeAttribute(maxStack, maxLocals, bytecode, exceptionTable, stackMapTable, lineNumbers);
+    }
+
+    /**
+     * メソッドのCode属性をコピーせずに参照するビューを作ります。LineNumberTable属性は参照しません。
+     * @param position max_stackの位置（直前にバイトコードの長さが格納されている）
+     */
+    private CodeView viewCode(int position) {
+        int codeLength = buffer.getInt(position - 4);
+        int maxStack = buffer.getShort(position) & 0xFFFF;
+        int maxLocals = buffer.getShort(position + 2) & 0xFFFF;
+        int exceptionTableLength = buffer.getInt(position + 4);
+        position += 8;
+        int[] exceptionTable = new int[exceptionTableLength];
+        buffer.slice(position, exceptionTableLength * 4).asIntBuffer().get(exceptionTable);
+        position += exceptionTableLength * 4;
+        ByteBuffer code = buffer.slice(position, codeLength);
+        position = (position + codeLength + 3) & ~3;
+        int stackMapLength = buffer.getInt(position);
+        ByteBuffer stackMapTable = stackMapLength >= 0 ? buffer.slice(position + 4, stackMapLength) : null;
+        return new CodeView(maxStack, maxLocals, code, exceptionTable, stackMapTable);
+    }
+
+    /**
+     * レコードの範囲がアーカイブに収まることを確かめます。
+     * @param position 範囲の開始位置
+     * @param length 範囲の長さ
+     * @return 範囲の開始位置
+     * @throws ClassFormatError 範囲がアーカイブの外にある場合
+     */
+    private int checkRange(int position, long length) {
+        if (position < HEADER_SIZE || length < 0 || position + length > buffer.limit()) {
+            throw new ClassFormatError("クラスアーカイブのレコードが範囲外です: " + position + " + " + length + " (" + path + ")");
+        }
+        return position;
+    }
+
+    /**
+     * シンボル番号に対応するシンボルを返します。最初の参照時にシンボルテーブルへ登録してメモ化します。
+     */
+    Symbol symbol(int id) {
+        if (id < 0 || id >= symbols.length) {
+            throw new ClassFormatError("クラスアーカイブのシンボル番号が不正です: " + id + " (" + path + ")");
+        }
+        Symbol symbol = symbols[id];
+        if (symbol == null) {
+            int offset = symbolOffsets[id];
+            int length = buffer.getShort(offset) & 0xFFFF;
+            symbol = SymbolTable.getInstance().intern(buffer, offset + 2, length);
+            symbols[id] = symbol;
+        }
+        return symbol;
+    }
+}
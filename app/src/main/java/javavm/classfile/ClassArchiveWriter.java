@@ -0,0 +1,234 @@
+package javavm.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 解析済みのクラスをクラスアーカイブファイルへ書き出すクラス
+ *
+ * アーカイブの形式は {@link ClassArchive} を参照してください。
+ * 書き出しは一時ファイルへ行い、完了後に置き換えるため、書き出し中のアーカイブが読まれることはありません。
+ */
+public final class ClassArchiveWriter {
+    private final List<ClassFile> classes = new ArrayList<>();
+    private final List<SourceStamp> stamps = new ArrayList<>();
+    private final List<byte[]> verifications = new ArrayList<>();
+    private final Map<Symbol, Integer> symbolIds = new IdentityHashMap<>();
+    private final List<Symbol> symbols = new ArrayList<>();
+
+    /**
+     * クラスをアーカイブに追加します。
+     * @param classFile 追加するクラス
+     * @param stamp クラスの読み込み元の状態
+     */
+    public void add(ClassFile classFile, SourceStamp stamp) {
+        add(classFile, stamp, null);
+    }
+
+    /**
+     * クラスを検証結果とともにアーカイブに追加します。
+     * @param classFile 追加するクラス
+     * @param stamp クラスの読み込み元の状態
+     * @param verification 検証器が書き出した検証結果のバイト列。検証していない場合はnull
+     */
+    public void add(ClassFile classFile, SourceStamp stamp, byte[] verification) {
+        classes.add(classFile);
+        stamps.add(stamp);
+        verifications.add(verification);
+    }
+
+    /**
+     * 追加したクラスの数を返します。
+     * @return クラス数
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * アーカイブファイルを書き出します。
+     * @param path 書き出し先のパス
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void write(Path path) throws IOException {
+        // クラスレコードを先に組み立て、使用したシンボルを出現順に採番する
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream classOut = new DataOutputStream(classBytes);
+        int[] classOffsets = new int[classes.size()];
+        for (int i = 0; i < classes.size(); i++) {
+            pad(classOut);
+            classOffsets[i] = classOut.size();
+            writeClass(classOut, classes.get(i), stamps.get(i), verifications.get(i));
+        }
+        classOut.flush();
+
+        int symbolsStart = ClassArchive.HEADER_SIZE;
+        int symbolDataStart = symbolsStart + symbols.size() * 4;
+        int symbolDataSize = 0;
+        for (Symbol symbol : symbols) {
+            symbolDataSize += 2 + symbol.byteLength();
+        }
+        int classIndexStart = align(symbolDataStart + symbolDataSize);
+        int classesStart = classIndexStart + classes.size() * 4;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classesStart + classBytes.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ClassArchive.MAGIC);
+        out.writeShort(ClassArchive.FORMAT_VERSION);
+        out.writeShort(0);
+        out.writeInt(symbols.size());
+        out.writeInt(symbolsStart);
+        out.writeInt(classes.size());
+        out.writeInt(classIndexStart);
+        // CRC-32は内容をすべて書き込んだ後に設定する
+        out.writeInt(0);
+
+        int symbolOffset = symbolDataStart;
+        for (Symbol symbol : symbols) {
+            out.writeInt(symbolOffset);
+            symbolOffset += 2 + symbol.byteLength();
+        }
+        for (Symbol symbol : symbols) {
+            out.writeShort(symbol.byteLength());
+            out.write(symbol.bytes());
+        }
+        pad(out);
+        for (int offset : classOffsets) {
+            out.writeInt(classesStart + offset);
+        }
+        classBytes.writeTo(out);
+        out.flush();
+
+        byte[] content = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(content, ClassArchive.HEADER_SIZE, content.length - ClassArchive.HEADER_SIZE);
+        ByteBuffer.wrap(content).putInt(ClassArchive.CHECKSUM_OFFSET, (int) crc.getValue());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temporary, content);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * クラスレコードを書き込みます。
+     * 定数プールはタグの配列とオペランドの配列をそのまま格納し、CONSTANT_Utf8のオペランドにはシンボル番号を格納します。
+     */
+    private void writeClass(DataOutputStream out, ClassFile classFile, SourceStamp stamp, byte[] verification)
+            throws IOException {
+        out.writeInt(symbolId(classFile.getName()));
+        out.writeLong(stamp.getSize());
+        out.writeLong(stamp.getLastModified());
+        out.writeInt(stamp.getCrc());
+        out.write(classFile.getDigest());
+        // 検証していないクラスは長さを-1として記録する
+        if (verification == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(verification.length);
+            out.write(verification);
+            pad(out);
+        }
+        out.writeShort(classFile.getMinorVersion());
+        out.writeShort(classFile.getMajorVersion());
+        out.writeShort(classFile.getAccessFlags());
+        out.writeInt(classFile.getSuperName() == null ? ClassArchive.NO_SYMBOL : symbolId(classFile.getSuperName()));
+        Symbol[] interfaceNames = classFile.getInterfaceNames();
+        out.writeShort(interfaceNames.length);
+        for (Symbol interfaceName : interfaceNames) {
+            out.writeInt(symbolId(interfaceName));
+        }
+
+        ConstantPool constantPool = classFile.getConstantPool();
+        int count = constantPool.size();
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            out.writeByte(i == 0 ? 0 : constantPool.tag(i));
+        }
+        // オペランドの配列を一括で読み込めるよう4バイト境界に揃える
+        pad(out);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && constantPool.tag(i) == ConstantInfo.CONSTANT_Utf8) {
+                out.writeInt(symbolId(constantPool.symbol(i)));
+            } else {
+                out.writeInt(constantPool.compactOperand(i));
+            }
+        }
+
+        FieldInfo[] fields = classFile.getFields();
+        out.writeInt(fields.length);
+        for (FieldInfo field : fields) {
+            out.writeInt(field.getAccessFlags());
+            out.writeInt(symbolId(field.getName()));
+            out.writeInt(symbolId(field.getDescriptor()));
+            out.writeInt(field.getConstantValueIndex());
+        }
+
+        MethodInfo[] methods = classFile.getMethods();
+        out.writeInt(methods.length);
+        for (MethodInfo method : methods) {
+            out.writeInt(method.getAccessFlags());
+            out.writeInt(symbolId(method.getName()));
+            out.writeInt(symbolId(method.getDescriptor()));
+            // 実行していないメソッドのCode属性はデコードした結果を保持しない
+            CodeAttribute code = method.readCode();
+            // Code属性を持たないメソッドはバイトコードの長さを0として記録する
+            if (code == null) {
+                out.writeInt(0);
+                continue;
+            }
+            out.writeInt(code.getCodeLength());
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            int[] exceptionTable = code.exceptionTable();
+            out.writeInt(exceptionTable.length);
+            for (int value : exceptionTable) {
+                out.writeInt(value);
+            }
+            out.write(code.code());
+            pad(out);
+            // StackMapTable属性を持たないメソッドは長さを-1として記録する
+            byte[] stackMapTable = code.stackMapTable();
+            if (stackMapTable == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(stackMapTable.length);
+                out.write(stackMapTable);
+                pad(out);
+            }
+            int[] lineNumbers = code.lineNumbers();
+            out.writeInt(lineNumbers.length);
+            for (int value : lineNumbers) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private int symbolId(Symbol symbol) {
+        Integer id = symbolIds.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            symbolIds.put(symbol, id);
+            symbols.add(symbol);
+        }
+        return id;
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while ((out.size() & 3) != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+}
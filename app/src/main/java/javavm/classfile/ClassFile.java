@@ -0,0 +1,183 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 読み込んだクラスファイルの内容を表現するクラス
+ */
+public final class ClassFile {
+    private final int minorVersion;
+    private final int majorVersion;
+    private final ConstantPool constantPool;
+    private final int accessFlags;
+    private final Symbol name;
+    private final Symbol superName;
+    private final Symbol[] interfaceNames;
+    private final FieldInfo[] fields;
+    private final MethodInfo[] methods;
+    // ダイジェストと、まだ計算していない場合に計算元とするクラスファイルの内容（計算後はnull）
+    private volatile byte[] digest;
+    private ByteBuffer content;
+
+    /**
+     * @param digest クラスファイルのダイジェスト。nullの場合は最初に必要になった時点で {@code content} から計算する
+     * @param content クラスファイル全体の内容。ダイジェストを指定した場合はnull
+     */
+    ClassFile(int minorVersion, int majorVersion, ConstantPool constantPool, int accessFlags,
+            Symbol name, Symbol superName, Symbol[] interfaceNames, FieldInfo[] fields, MethodInfo[] methods,
+            byte[] digest, ByteBuffer content) {
+        this.minorVersion = minorVersion;
+        this.majorVersion = majorVersion;
+        this.constantPool = constantPool;
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.superName = superName;
+        this.interfaceNames = interfaceNames;
+        this.fields = fields;
+        this.methods = methods;
+        // ダイジェストの読み取り（volatile）の後に内容が見えるよう、内容を先に設定する
+        this.content = content;
+        this.digest = digest;
+    }
+
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    /**
+     * クラスのアクセスフラグを取得します。
+     * @return access_flagsの値
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * this_classが示すクラス名を取得します。
+     * @return 内部形式のクラス名
+     */
+    public Symbol getName() {
+        return name;
+    }
+
+    /**
+     * super_classが示すスーパークラス名を取得します。
+     * @return 内部形式のスーパークラス名。java/lang/Objectの場合はnull
+     */
+    public Symbol getSuperName() {
+        return superName;
+    }
+
+    /**
+     * 実装するインターフェース名を宣言順に取得します。
+     * @return インターフェース名の配列（コピー）
+     */
+    public Symbol[] getInterfaceNames() {
+        return interfaceNames.clone();
+    }
+
+    /**
+     * 宣言されたフィールドを宣言順に取得します。
+     * @return フィールドの配列（コピー）
+     */
+    public FieldInfo[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * 宣言されたメソッドを宣言順に取得します。
+     * @return メソッドの配列（コピー）
+     */
+    public MethodInfo[] getMethods() {
+        return methods.clone();
+    }
+
+    /**
+     * 読み込んだクラスファイル全体のSHA-256ダイジェストを取得します。内容が同じクラスファイルは同じ値になります。
+     * クラスファイルを解析した時点では計算せず、最初の呼び出しで計算します（クラスアーカイブから復元したクラスは
+     * アーカイブに格納した値を使用します）。
+     * @return 32バイトのダイジェスト（コピー）
+     */
+    public byte[] getDigest() {
+        byte[] value = digest;
+        if (value == null) {
+            synchronized (this) {
+                value = digest;
+                if (value == null) {
+                    value = digest(content);
+                    digest = value;
+                    content = null;
+                }
+            }
+        }
+        return value.clone();
+    }
+
+    /**
+     * ダイジェストを計算済みかどうかを返します。
+     * @return 計算済みの場合、またはクラスアーカイブから復元したクラスの場合true
+     */
+    public boolean isDigestComputed() {
+        return digest != null;
+    }
+
+    /**
+     * クラスファイル全体のSHA-256ダイジェストを計算します。
+     * @param content クラスファイルの内容（位置からリミットまで）
+     */
+    static byte[] digest(ByteBuffer content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256はすべてのJava実装で利用できる
+            throw new IllegalStateException(e);
+        }
+        digest.update(content.duplicate());
+        return digest.digest();
+    }
+
+    /**
+     * Code属性を持つメソッドのうち、Code属性を一度もデコードしていないメソッドの数を返します。
+     * @return デコードしていないメソッドの数
+     */
+    public int getDeferredCodeCount() {
+        int count = 0;
+        for (MethodInfo method : methods) {
+            if (method.isCodeDeferred()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 名前と記述子が一致するメソッドを探します。スーパークラスは探索しません。
+     * @param name メソッド名
+     * @param descriptor メソッド記述子
+     * @return 見つかったメソッド。存在しない場合はnull
+     */
+    public MethodInfo findMethod(String name, String descriptor) {
+        for (MethodInfo method : methods) {
+            if (method.getName().toString().equals(name) && method.getDescriptor().toString().equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name.toString();
+    }
+}
@@ -1,21 +1,28 @@
 package javavm.classfile;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javavm.profile.LoadPhase;
+import javavm.profile.Profiler;
 
 public class ClassFileReader implements AutoCloseable {
     private static final int MAGIC_NUMBER = 0xCAFEBABE;
     private static final long MAX_FILE_SIZE = 100 * 1024 * 1024; // 100MB
+    // このサイズ未満のファイルはマッピングせずヒープへ一括で読み込む（小さなファイルはmmapの方が遅いため）
+    private static final long MAPPING_THRESHOLD = 64 * 1024; // 64KB
 
-    // TODO: 定数プールの読み取りを実装する
-    // - readConstantPool()メソッドを作成
-    // - constant_pool_countを読み取る(2バイト)
-    // - constant_pool_count - 1個の定数プールエントリを読み取る
-    // - 各エントリはタグ(1バイト)と可変長のデータで構成される
-    private final InputStream inputStream;
+    private final SymbolTable symbolTable = SymbolTable.getInstance();
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int minorVersion;
+    private int majorVersion;
 
     public ClassFileReader(String path) throws ClassNotFoundException {
         File file = new File(path);
@@ -35,26 +42,75 @@ public class ClassFileReader implements AutoCloseable {
             throw new ClassFormatError("ファイルサイズが最大許容サイズを超えています: " + file.length() + " > " + MAX_FILE_SIZE + " bytes");
         }
 
-        try {
-            inputStream = new FileInputStream(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.buffer = readFully(channel);
         } catch (IOException e) {
             throw new ClassNotFoundException("クラスファイルを開けません: " + path, e);
         }
+        this.limit = buffer.limit();
     }
 
-    @Override
-    public void close() throws IOException {
-        if (inputStream != null) {
-            inputStream.close();
+    /**
+     * メモリ上のクラスファイルから読み取るリーダーを生成します。
+     * 配列はコピーされずにそのまま参照されます。
+     * @param bytes クラスファイルのバイト列
+     * @throws ClassFormatError バイト列が空、または最大許容サイズを超える場合
+     */
+    public ClassFileReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * バッファの現在位置からリミットまでをクラスファイルとして読み取るリーダーを生成します。
+     * 内容はコピーされず、渡されたバッファの位置やバイトオーダーも変更しません。
+     * @param buffer クラスファイルの内容を保持するバッファ
+     * @throws ClassFormatError バッファが空、または最大許容サイズを超える場合
+     */
+    public ClassFileReader(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            throw new ClassFormatError("空のクラスファイルです");
+        }
+
+        if (buffer.remaining() > MAX_FILE_SIZE) {
+            throw new ClassFormatError("ファイルサイズが最大許容サイズを超えています: " + buffer.remaining() + " > " + MAX_FILE_SIZE + " bytes");
+        }
+
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.limit = this.buffer.limit();
+    }
+
+    /**
+     * ファイル全体を1回で読み込みます。
+     * 大きなファイルは読み取り専用でメモリマップし、小さなファイルはヒープへ読み込みます。
+     * マップしたバッファはチャネルを閉じた後も有効です。
+     */
+    private static ByteBuffer readFully(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size >= MAPPING_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
         }
+
+        ByteBuffer heapBuffer = ByteBuffer.allocate((int) size);
+        while (heapBuffer.hasRemaining()) {
+            if (channel.read(heapBuffer) < 0) {
+                break;
+            }
+        }
+        heapBuffer.flip();
+        return heapBuffer;
+    }
+
+    @Override
+    public void close() {
+        // バッファはファイルを保持していないため解放するリソースはない
+        // （マップされた領域は参照がなくなった時点でGCにより解放される）
     }
 
     /**
      * クラスファイルのマジックナンバーを読み取り、検証します。
-     * @throws IOException 入出力エラーが発生した場合
      * @throws ClassFormatError マジックナンバーが不正な場合
      */
-    public void readMagic() throws IOException {
+    public void readMagic() {
         int magic = readBigEndianInt();
         if (magic != MAGIC_NUMBER) {
             throw new ClassFormatError("マジックナンバーが不正です: 0x" + Integer.toHexString(magic).toUpperCase());
@@ -63,12 +119,11 @@ public class ClassFileReader implements AutoCloseable {
 
     /**
      * クラスファイルのバージョン情報を読み取り、検証します。
-     * @throws IOException 入出力エラーが発生した場合
      * @throws ClassFormatError バージョン情報の読み取りに失敗した場合
      */
-    public void readVersion() throws IOException {
-        int minorVersion = readBigEndianShort();
-        int majorVersion = readBigEndianShort();
+    public void readVersion() {
+        minorVersion = readBigEndianShort();
+        majorVersion = readBigEndianShort();
 
         // JDK 8以降をサポート（major_version >= 52）
         if (majorVersion < 52) {
@@ -76,13 +131,407 @@ public class ClassFileReader implements AutoCloseable {
         }
     }
 
+    /**
+     * readVersion()で読み取ったマイナーバージョンを返します。
+     * @return minor_version
+     */
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    /**
+     * readVersion()で読み取ったメジャーバージョンを返します。
+     * @return major_version
+     */
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * クラスファイルを先頭から読み取ります。
+     * マジックナンバーとバージョンを検証し、定数プールを遅延モードで読み込んだ後、
+     * アクセスフラグ、this_class、super_class、インターフェース、フィールド、メソッドを読み取ります。
+     * @return 読み取ったクラスファイル
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    public ClassFile readClassFile() {
+        return readClassFile(true);
+    }
+
+    /**
+     * クラスファイルを先頭から読み取ります。
+     * @param retainBuffer trueの場合は定数プールを遅延モードで読み込み、返されたクラスファイルがバッファを参照し続けます。
+     *                     メソッドのCode属性とクラスファイルのダイジェストも、最初に使用する時点でバッファから求めます。
+     *                     falseの場合は即時モードで読み込み、Code属性のデコードとダイジェストの計算も行うため、
+     *                     読み取り後にバッファを再利用できます。
+     * @return 読み取ったクラスファイル
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    public ClassFile readClassFile(boolean retainBuffer) {
+        Profiler profiler = Profiler.getInstance();
+        long start = profiler.timestamp();
+        readMagic();
+        readVersion();
+        ConstantPool constantPool = retainBuffer ? readLazyConstantPool() : readCompactConstantPool();
+        long parseStart = profiler.timestamp();
+
+        int accessFlags = readBigEndianShort();
+        Symbol name = constantPool.classNameSymbol(readBigEndianShort());
+        profiler.recordLoad(LoadPhase.CONSTANT_POOL, name.toString(), start);
+        int superIndex = readBigEndianShort();
+        // super_classが0になるのはjava/lang/Objectのみ
+        Symbol superName = superIndex == 0 ? null : constantPool.classNameSymbol(superIndex);
+
+        int interfacesCount = readBigEndianShort();
+        Symbol[] interfaceNames = new Symbol[interfacesCount];
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames[i] = constantPool.classNameSymbol(readBigEndianShort());
+        }
+
+        int fieldsCount = readBigEndianShort();
+        FieldInfo[] fields = new FieldInfo[fieldsCount];
+        for (int i = 0; i < fieldsCount; i++) {
+            fields[i] = readField(constantPool);
+        }
+
+        ByteBuffer source = buffer;
+        CodeLoader codeLoader = new CodeLoader() {
+            @Override
+            public CodeAttribute load(int offset, MethodInfo method) {
+                return decodeCode(source, offset, constantPool, method);
+            }
+
+            @Override
+            public CodeView view(int offset, MethodInfo method) {
+                return viewCode(source, offset, constantPool, method);
+            }
+        };
+        int methodsCount = readBigEndianShort();
+        MethodInfo[] methods = new MethodInfo[methodsCount];
+        for (int i = 0; i < methodsCount; i++) {
+            methods[i] = readMethod(constantPool, codeLoader, retainBuffer);
+        }
+
+        skipAttributes();
+        if (position != limit) {
+            throw new ClassFormatError("クラスファイルの末尾に余分なデータがあります: " + (limit - position) + " bytes");
+        }
+
+        // バッファを保持する場合、ダイジェストは最初に必要になった時点でバッファから計算する
+        ClassFile classFile = new ClassFile(minorVersion, majorVersion, constantPool, accessFlags, name, superName,
+                interfaceNames, fields, methods, retainBuffer ? null : ClassFile.digest(buffer.slice(0, limit)),
+                retainBuffer ? buffer.slice(0, limit) : null);
+        profiler.recordLoad(LoadPhase.PARSE, name.toString(), parseStart);
+        return classFile;
+    }
+
+    /**
+     * field_infoを読み取ります。ConstantValue属性以外の属性は読み飛ばします。
+     */
+    private FieldInfo readField(ConstantPool constantPool) {
+        int accessFlags = readBigEndianShort();
+        Symbol name = constantPool.symbol(readBigEndianShort());
+        Symbol descriptor = constantPool.symbol(readBigEndianShort());
+        int constantValueIndex = 0;
+
+        int attributesCount = readBigEndianShort();
+        for (int i = 0; i < attributesCount; i++) {
+            Symbol attributeName = constantPool.symbol(readBigEndianShort());
+            int length = readAttributeLength();
+            int end = position + length;
+            if (attributeName.toString().equals("ConstantValue")) {
+                if (length != 2) {
+                    throw new ClassFormatError("ConstantValue属性の長さが不正です: " + name);
+                }
+                constantValueIndex = readBigEndianShort();
+                if (constantValueIndex == 0 || constantValueIndex >= constantPool.size()) {
+                    throw new ClassFormatError("ConstantValue属性の定数が範囲外です: " + name + " #" + constantValueIndex);
+                }
+            }
+            position = end;
+        }
+        return new FieldInfo(accessFlags, name, descriptor, constantValueIndex);
+    }
+
+    /**
+     * method_infoを読み取ります。Code属性以外の属性は読み飛ばします。
+     * バッファを保持する場合、Code属性はattribute_lengthの位置だけを記録し、内容はデコードしません。
+     */
+    private MethodInfo readMethod(ConstantPool constantPool, CodeLoader codeLoader, boolean retainBuffer) {
+        int accessFlags = readBigEndianShort();
+        Symbol name = constantPool.symbol(readBigEndianShort());
+        Symbol descriptor = constantPool.symbol(readBigEndianShort());
+        int codeOffset = -1;
+
+        int attributesCount = readBigEndianShort();
+        for (int i = 0; i < attributesCount; i++) {
+            Symbol attributeName = constantPool.symbol(readBigEndianShort());
+            int length = readAttributeLength();
+            if (attributeName.toString().equals("Code")) {
+                if (codeOffset >= 0) {
+                    throw new ClassFormatError("Code属性が重複しています: " + name + descriptor);
+                }
+                codeOffset = position - 4;
+            }
+            position += length;
+        }
+        if (codeOffset < 0) {
+            return new MethodInfo(accessFlags, name, descriptor, null);
+        }
+        MethodInfo method = new MethodInfo(accessFlags, name, descriptor, codeLoader, codeOffset);
+        if (!retainBuffer) {
+            // バッファが再利用される前にデコードし、読み込み元を参照しないメソッドにする
+            return new MethodInfo(accessFlags, name, descriptor, method.getCode());
+        }
+        return method;
+    }
+
+    /**
+     * Code属性の内容をデコードします。Code属性内の属性はStackMapTable属性とLineNumberTable属性以外を読み飛ばします。
+     * Code属性全体がバッファの範囲内にあることは、クラスファイルの読み込み時に確認済みです。
+     * @param buffer クラスファイルの内容を保持するバッファ（ビッグエンディアン）
+     * @param offset Code属性のattribute_lengthの位置
+     */
+    static CodeAttribute decodeCode(ByteBuffer buffer, int offset, ConstantPool constantPool, MethodInfo method) {
+        int position = offset + 4;
+        int end = position + buffer.getInt(offset);
+        ensureInAttribute(position, 8, end, method);
+        int maxStack = buffer.getShort(position) & 0xFFFF;
+        int maxLocals = buffer.getShort(position + 2) & 0xFFFF;
+        int codeLength = buffer.getInt(position + 4);
+        position += 8;
+        if (codeLength <= 0 || codeLength >= 65536) {
+            throw new ClassFormatError("バイトコードの長さが不正です: " + (codeLength & 0xFFFFFFFFL) + " (" + method + ")");
+        }
+        ensureInAttribute(position, codeLength + 2, end, method);
+        byte[] code = new byte[codeLength];
+        buffer.get(position, code);
+        position += codeLength;
+
+        int exceptionTableLength = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        ensureInAttribute(position, exceptionTableLength * 8 + 2, end, method);
+        int[] exceptionTable = new int[exceptionTableLength * 4];
+        for (int i = 0; i < exceptionTable.length; i++) {
+            exceptionTable[i] = buffer.getShort(position) & 0xFFFF;
+            position += 2;
+        }
+
+        byte[] stackMapTable = null;
+        int[] lineNumbers = new int[0];
+        int attributesCount = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        for (int i = 0; i < attributesCount; i++) {
+            ensureInAttribute(position, 6, end, method);
+            Symbol attributeName = constantPool.symbol(buffer.getShort(position) & 0xFFFF);
+            int length = buffer.getInt(position + 2);
+            position += 6;
+            if (length < 0) {
+                throw new ClassFormatError("属性の長さが不正です: " + (length & 0xFFFFFFFFL) + " (" + method + ")");
+            }
+            ensureInAttribute(position, length, end, method);
+            String attribute = attributeName.toString();
+            if (attribute.equals("StackMapTable")) {
+                if (stackMapTable != null) {
+                    throw new ClassFormatError("StackMapTable属性が重複しています: " + method);
+                }
+                stackMapTable = new byte[length];
+                buffer.get(position, stackMapTable);
+            } else if (attribute.equals("LineNumberTable")) {
+                // LineNumberTable属性は複数あってもよい（JVMS 4.7.12）
+                int entries = length < 2 ? -1 : buffer.getShort(position) & 0xFFFF;
+                if (length != 2 + entries * 4) {
+                    throw new ClassFormatError("LineNumberTable属性の長さが不正です: " + method);
+                }
+                int base = lineNumbers.length;
+                lineNumbers = Arrays.copyOf(lineNumbers, base + entries * 2);
+                for (int k = 0; k < entries * 2; k++) {
+                    lineNumbers[base + k] = buffer.getShort(position + 2 + k * 2) & 0xFFFF;
+                }
+            }
+            position += length;
+        }
+        if (position != end) {
+            throw new ClassFormatError("Code属性の長さが一致しません: " + method);
+        }
+        return new CodeAttribute(maxStack, maxLocals, code, exceptionTable, stackMapTable, lineNumbers);
+    }
+
+    /**
+     * Code属性をデコードせずに参照するビューを作ります。形式の確認は {@link #decodeCode} と同じですが、
+     * バイトコードとStackMapTable属性はバッファの範囲を参照し、LineNumberTable属性は読み飛ばします。
+     * @param buffer クラスファイルの内容を保持するバッファ（ビッグエンディアン）
+     * @param offset Code属性のattribute_lengthの位置
+     */
+    static CodeView viewCode(ByteBuffer buffer, int offset, ConstantPool constantPool, MethodInfo method) {
+        int position = offset + 4;
+        int end = position + buffer.getInt(offset);
+        ensureInAttribute(position, 8, end, method);
+        int maxStack = buffer.getShort(position) & 0xFFFF;
+        int maxLocals = buffer.getShort(position + 2) & 0xFFFF;
+        int codeLength = buffer.getInt(position + 4);
+        position += 8;
+        if (codeLength <= 0 || codeLength >= 65536) {
+            throw new ClassFormatError("バイトコードの長さが不正です: " + (codeLength & 0xFFFFFFFFL) + " (" + method + ")");
+        }
+        ensureInAttribute(position, codeLength + 2, end, method);
+        ByteBuffer code = buffer.slice(position, codeLength);
+        position += codeLength;
+
+        int exceptionTableLength = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        ensureInAttribute(position, exceptionTableLength * 8 + 2, end, method);
+        int[] exceptionTable = new int[exceptionTableLength * 4];
+        for (int i = 0; i < exceptionTable.length; i++) {
+            exceptionTable[i] = buffer.getShort(position) & 0xFFFF;
+            position += 2;
+        }
+
+        ByteBuffer stackMapTable = null;
+        int attributesCount = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        for (int i = 0; i < attributesCount; i++) {
+            ensureInAttribute(position, 6, end, method);
+            Symbol attributeName = constantPool.symbol(buffer.getShort(position) & 0xFFFF);
+            int length = buffer.getInt(position + 2);
+            position += 6;
+            if (length < 0) {
+                throw new ClassFormatError("属性の長さが不正です: " + (length & 0xFFFFFFFFL) + " (" + method + ")");
+            }
+            ensureInAttribute(position, length, end, method);
+            if (attributeName.toString().equals("StackMapTable")) {
+                if (stackMapTable != null) {
+                    throw new ClassFormatError("StackMapTable属性が重複しています: " + method);
+                }
+                stackMapTable = buffer.slice(position, length);
+            }
+            position += length;
+        }
+        if (position != end) {
+            throw new ClassFormatError("Code属性の長さが一致しません: " + method);
+        }
+        return new CodeView(maxStack, maxLocals, code, exceptionTable, stackMapTable);
+    }
+
+    private static void ensureInAttribute(int position, int length, int end, MethodInfo method) {
+        if (length > end - position) {
+            throw new ClassFormatError("Code属性が途中で終わっています: " + method);
+        }
+    }
+
+    /**
+     * 属性の一覧を内容を見ずに読み飛ばします。
+     */
+    private void skipAttributes() {
+        int attributesCount = readBigEndianShort();
+        for (int i = 0; i < attributesCount; i++) {
+            readBigEndianShort();
+            int length = readAttributeLength();
+            position += length;
+        }
+    }
+
+    /**
+     * 属性の長さを読み取り、残りのバイト数が足りることを確認します。
+     */
+    private int readAttributeLength() {
+        int length = readBigEndianInt();
+        if (length < 0) {
+            throw new ClassFormatError("属性の長さが不正です: " + (length & 0xFFFFFFFFL));
+        }
+        ensureAvailable(length);
+        return length;
+    }
+
+    /**
+     * クラスファイルを先頭から末尾まで1回で走査し、構造ごとにビジターへ通知します。
+     * 定数プールは遅延モードで索引化し、ビジターが要求しない属性の内容は読み飛ばします。
+     * @param visitor 通知先のビジター
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    public void accept(ClassFileVisitor visitor) {
+        readMagic();
+        visitor.visitMagic(MAGIC_NUMBER);
+        readVersion();
+        visitor.visitVersion(minorVersion, majorVersion);
+
+        ConstantPool constantPool = readLazyConstantPool();
+        if (visitor.visitConstantPool(constantPool)) {
+            for (int i = 1; i < constantPool.size(); i++) {
+                int tag = constantPool.tag(i);
+                if (tag != 0) {
+                    visitor.visitConstant(constantPool, i, tag);
+                }
+            }
+        }
+
+        int accessFlags = readBigEndianShort();
+        int thisClass = readBigEndianShort();
+        constantPool.classNameIndex(thisClass);
+        int superClass = readBigEndianShort();
+        if (superClass != 0) {
+            constantPool.classNameIndex(superClass);
+        }
+        visitor.visitClass(accessFlags, thisClass, superClass);
+
+        int interfacesCount = readBigEndianShort();
+        for (int i = 0; i < interfacesCount; i++) {
+            int interfaceClass = readBigEndianShort();
+            constantPool.classNameIndex(interfaceClass);
+            visitor.visitInterface(interfaceClass);
+        }
+
+        int fieldsCount = readBigEndianShort();
+        for (int i = 0; i < fieldsCount; i++) {
+            int memberAccessFlags = readBigEndianShort();
+            int nameIndex = readBigEndianShort();
+            int descriptorIndex = readBigEndianShort();
+            boolean visitAttributes = visitor.visitField(memberAccessFlags, nameIndex, descriptorIndex);
+            acceptAttributes(visitor, constantPool, ClassFileVisitor.AttributeOwner.FIELD, visitAttributes);
+        }
+
+        int methodsCount = readBigEndianShort();
+        for (int i = 0; i < methodsCount; i++) {
+            int memberAccessFlags = readBigEndianShort();
+            int nameIndex = readBigEndianShort();
+            int descriptorIndex = readBigEndianShort();
+            boolean visitAttributes = visitor.visitMethod(memberAccessFlags, nameIndex, descriptorIndex);
+            acceptAttributes(visitor, constantPool, ClassFileVisitor.AttributeOwner.METHOD, visitAttributes);
+        }
+
+        acceptAttributes(visitor, constantPool, ClassFileVisitor.AttributeOwner.CLASS, true);
+
+        if (position != limit) {
+            throw new ClassFormatError("クラスファイルの末尾に余分なデータがあります: " + (limit - position) + " bytes");
+        }
+        visitor.visitEnd();
+    }
+
+    /**
+     * 属性の一覧を読み取り、要求された場合はビジターへ通知します。通知しない属性は長さだけを見て読み飛ばします。
+     */
+    private void acceptAttributes(ClassFileVisitor visitor, ConstantPool constantPool,
+            ClassFileVisitor.AttributeOwner owner, boolean visitAttributes) {
+        int attributesCount = readBigEndianShort();
+        for (int i = 0; i < attributesCount; i++) {
+            int nameIndex = readBigEndianShort();
+            int length = readAttributeLength();
+            if (visitAttributes) {
+                Symbol name = constantPool.symbol(nameIndex);
+                if (visitor.visitAttribute(owner, name, length)) {
+                    visitor.visitAttributeContent(owner, name, buffer.slice(position, length).asReadOnlyBuffer());
+                }
+            }
+            position += length;
+        }
+    }
+
     /**
      * 定数プールを読み取ります。
      * @return 読み取った定数プールの配列。インデックス0は未使用でnullが格納されます。
-     * @throws IOException 入出力エラーが発生した場合
      * @throws ClassFormatError 定数プールの読み取りに失敗した場合
      */
-    public ConstantInfo[] readConstantPool() throws IOException {
+    public ConstantInfo[] readConstantPool() {
         int count = readBigEndianShort();
         if (count <= 0) {
             throw new ClassFormatError("定数プールカウントが不正です: " + count);
@@ -94,19 +543,7 @@ public class ClassFileReader implements AutoCloseable {
 
         // インデックス1から定数プールエントリを読み取り
         for (int i = 1; i < count; i++) {
-            int tag = inputStream.read();
-            if (tag < 0) {
-                throw new ClassFormatError("予期せぬファイルの終わりに到達しました");
-            }
-
-            // TODO: CONSTANT_Class(7)の実装
-            // - name_indexを読み取る(2バイト)
-            // - ConstantClassInfoクラスを作成して格納
-
-            // TODO: CONSTANT_Fieldref(9)の実装
-            // - class_indexを読み取る(2バイト)
-            // - name_and_type_indexを読み取る(2バイト)
-            // - ConstantFieldrefInfoクラスを作成して格納
+            int tag = readU1();
 
             switch (tag) {
                 case ConstantInfo.CONSTANT_Class:
@@ -127,16 +564,7 @@ public class ClassFileReader implements AutoCloseable {
                     break;
 
                 case ConstantInfo.CONSTANT_Utf8:
-                    // 文字列の長さを読み取り
-                    int length = readBigEndianShort();
-                    // 文字列のバイト列を読み取り
-                    byte[] bytes = new byte[length];
-                    int n = inputStream.read(bytes);
-                    if (n != length) {
-                        throw new ClassFormatError("予期せぬファイルの終わりに到達しました");
-                    }
-                    // UTF-8文字列に変換
-                    constantPool[i] = new ConstantUtf8Info(new String(bytes));
+                    constantPool[i] = new ConstantUtf8Info(readSymbol());
                     break;
 
                 default:
@@ -148,38 +576,209 @@ public class ClassFileReader implements AutoCloseable {
     }
 
     /**
-     * 入力ストリームから4バイトを読み取り、ビッグエンディアンの整数として返します。
-     * @return 読み取った4バイトから変換された整数
-     * @throws IOException 入出力エラーが発生した場合
-     * @throws ClassFormatError ファイルの末尾に達した場合
+     * 定数プールを読み取り、エントリごとのオブジェクトを生成しない {@link ConstantPool} として返します。
+     * ConstantInfoで定義されたすべてのタグに対応します。
+     * @return 読み取った定数プール
+     * @throws ClassFormatError 定数プールの読み取りに失敗した場合
      */
-    private int readBigEndianInt() throws IOException {
-        int b1 = inputStream.read();
-        int b2 = inputStream.read();
-        int b3 = inputStream.read();
-        int b4 = inputStream.read();
+    public ConstantPool readCompactConstantPool() {
+        int count = readBigEndianShort();
+        if (count <= 0) {
+            throw new ClassFormatError("定数プールカウントが不正です: " + count);
+        }
 
-        if (b1 < 0 || b2 < 0 || b3 < 0 || b4 < 0) {
-            throw new ClassFormatError("予期せぬファイルの終わりに到達しました");
+        byte[] tags = new byte[count];
+        int[] operands = new int[count];
+        Symbol[] symbols = new Symbol[count];
+
+        for (int i = 1; i < count; i++) {
+            int tag = readU1();
+            tags[i] = (byte) tag;
+
+            switch (tag) {
+                case ConstantInfo.CONSTANT_Utf8:
+                    symbols[i] = readSymbol();
+                    break;
+
+                case ConstantInfo.CONSTANT_Integer:
+                case ConstantInfo.CONSTANT_Float:
+                    operands[i] = readBigEndianInt();
+                    break;
+
+                case ConstantInfo.CONSTANT_Long:
+                case ConstantInfo.CONSTANT_Double:
+                    // 8バイト定数は2スロットを占有する
+                    if (i + 1 >= count) {
+                        throw new ClassFormatError("8バイト定数が定数プールの末尾を超えています: #" + i);
+                    }
+                    operands[i] = readBigEndianInt();
+                    operands[++i] = readBigEndianInt();
+                    break;
+
+                case ConstantInfo.CONSTANT_Class:
+                case ConstantInfo.CONSTANT_String:
+                case ConstantInfo.CONSTANT_MethodType:
+                case ConstantInfo.CONSTANT_Module:
+                case ConstantInfo.CONSTANT_Package:
+                    operands[i] = readBigEndianShort();
+                    break;
+
+                case ConstantInfo.CONSTANT_Fieldref:
+                case ConstantInfo.CONSTANT_Methodref:
+                case ConstantInfo.CONSTANT_InterfaceMethodref:
+                case ConstantInfo.CONSTANT_NameAndType:
+                case ConstantInfo.CONSTANT_Dynamic:
+                case ConstantInfo.CONSTANT_InvokeDynamic:
+                    // 連続する2つのu2をそのまま1つのintとして格納する
+                    operands[i] = readBigEndianInt();
+                    break;
+
+                case ConstantInfo.CONSTANT_MethodHandle:
+                    int referenceKind = readU1();
+                    operands[i] = (referenceKind << 16) | readBigEndianShort();
+                    break;
+
+                default:
+                    throw new ClassFormatError("不正なタグ値です: " + tag);
+            }
         }
 
-        return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
+        return new ConstantPool(tags, operands, symbols);
     }
 
     /**
-     * 入力ストリームから2バイトを読み取り、ビッグエンディアンの整数として返します。
-     * @return 読み取った2バイトから変換された整数
-     * @throws IOException 入出力エラーが発生した場合
-     * @throws ClassFormatError ファイルの末尾に達した場合
+     * 定数プールを1回走査して各エントリのタグとバイトオフセットだけを記録し、遅延モードの
+     * {@link ConstantPool} として返します。値はアクセスされた時点でバッファから読み取られます。
+     * 返された定数プールはこのリーダーのバッファを参照し続けます。
+     * @return 読み取った定数プール
+     * @throws ClassFormatError 定数プールの読み取りに失敗した場合
      */
-    private int readBigEndianShort() throws IOException {
-        int b1 = inputStream.read();
-        int b2 = inputStream.read();
+    public ConstantPool readLazyConstantPool() {
+        int count = readBigEndianShort();
+        if (count <= 0) {
+            throw new ClassFormatError("定数プールカウントが不正です: " + count);
+        }
+
+        byte[] tags = new byte[count];
+        int[] offsets = new int[count];
+
+        for (int i = 1; i < count; i++) {
+            int tag = readU1();
+            tags[i] = (byte) tag;
+            offsets[i] = position;
+
+            switch (tag) {
+                case ConstantInfo.CONSTANT_Utf8:
+                    skip(readBigEndianShort());
+                    break;
+
+                case ConstantInfo.CONSTANT_Long:
+                case ConstantInfo.CONSTANT_Double:
+                    // 8バイト定数は2スロットを占有する
+                    if (i + 1 >= count) {
+                        throw new ClassFormatError("8バイト定数が定数プールの末尾を超えています: #" + i);
+                    }
+                    skip(8);
+                    i++;
+                    break;
+
+                case ConstantInfo.CONSTANT_Class:
+                case ConstantInfo.CONSTANT_String:
+                case ConstantInfo.CONSTANT_MethodType:
+                case ConstantInfo.CONSTANT_Module:
+                case ConstantInfo.CONSTANT_Package:
+                    skip(2);
+                    break;
+
+                case ConstantInfo.CONSTANT_MethodHandle:
+                    skip(3);
+                    break;
+
+                case ConstantInfo.CONSTANT_Integer:
+                case ConstantInfo.CONSTANT_Float:
+                case ConstantInfo.CONSTANT_Fieldref:
+                case ConstantInfo.CONSTANT_Methodref:
+                case ConstantInfo.CONSTANT_InterfaceMethodref:
+                case ConstantInfo.CONSTANT_NameAndType:
+                case ConstantInfo.CONSTANT_Dynamic:
+                case ConstantInfo.CONSTANT_InvokeDynamic:
+                    skip(4);
+                    break;
 
-        if (b1 < 0 || b2 < 0) {
+                default:
+                    throw new ClassFormatError("不正なタグ値です: " + tag);
+            }
+        }
+
+        return new ConstantPool(tags, offsets, buffer);
+    }
+
+    /**
+     * 残りのバイト数が足りることを確認します。
+     * @param length これから読み取るバイト数
+     * @throws ClassFormatError ファイルの末尾を超える場合
+     */
+    private void ensureAvailable(int length) {
+        if (length > limit - position) {
             throw new ClassFormatError("予期せぬファイルの終わりに到達しました");
         }
+    }
+
+    /**
+     * バッファから1バイトを読み取り、符号なし整数として返します。
+     * @return 読み取った値（0〜255）
+     * @throws ClassFormatError ファイルの末尾に達した場合
+     */
+    private int readU1() {
+        ensureAvailable(1);
+        return buffer.get(position++) & 0xFF;
+    }
 
-        return (b1 << 8) | b2;
+    /**
+     * 指定バイト数を読み飛ばします。
+     * @param length 読み飛ばすバイト数
+     * @throws ClassFormatError ファイルの末尾を超える場合
+     */
+    private void skip(int length) {
+        ensureAvailable(length);
+        position += length;
+    }
+
+    /**
+     * CONSTANT_Utf8の長さとバイト列を読み取り、シンボルテーブルで一意化したシンボルを返します。
+     * 登録済みのシンボルであれば新たなオブジェクトは生成しません。
+     * @return 読み取ったシンボル
+     * @throws ClassFormatError ファイルの末尾に達した場合、またはバイト列が修正UTF-8として不正な場合
+     */
+    private Symbol readSymbol() {
+        int length = readBigEndianShort();
+        ensureAvailable(length);
+        Symbol symbol = symbolTable.intern(buffer, position, length);
+        position += length;
+        return symbol;
+    }
+
+    /**
+     * バッファから4バイトを読み取り、ビッグエンディアンの整数として返します。
+     * @return 読み取った4バイトから変換された整数
+     * @throws ClassFormatError ファイルの末尾に達した場合
+     */
+    private int readBigEndianInt() {
+        ensureAvailable(4);
+        int value = buffer.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    /**
+     * バッファから2バイトを読み取り、ビッグエンディアンの整数として返します。
+     * @return 読み取った2バイトから変換された整数
+     * @throws ClassFormatError ファイルの末尾に達した場合
+     */
+    private int readBigEndianShort() {
+        ensureAvailable(2);
+        int value = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        return value;
     }
-}
\ No newline at end of file
+}
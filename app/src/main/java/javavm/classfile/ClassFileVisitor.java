@@ -0,0 +1,133 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * クラスファイルを先頭から1回だけ走査し、構造ごとに通知を受け取るビジター
+ *
+ * {@link ClassFileReader#accept(ClassFileVisitor)} はクラスファイルを読み進めながら、次の順序でメソッドを呼び出します。
+ * <pre>
+ * visitMagic → visitVersion → visitConstantPool → (visitConstant)*
+ *   → visitClass → (visitInterface)*
+ *   → (visitField → (visitAttribute → visitAttributeContent?)*)*
+ *   → (visitMethod → (visitAttribute → visitAttributeContent?)*)*
+ *   → (visitAttribute → visitAttributeContent?)* → visitEnd
+ * </pre>
+ * すべてのメソッドは何もしない既定の実装を持つため、必要なものだけをオーバーライドします。
+ *
+ * <p>定数プールは遅延モードで読み込むため、ビジターが参照しないエントリはデコードされません。
+ * フィールドやメソッドの属性、属性の内容も、ビジターが要求しない限り長さだけを見て読み飛ばします。
+ * 走査中に生成されるのは定数プールの索引だけで、クラスの処理が終われば解放できるため、
+ * 大量のクラスを順に処理してもメモリ使用量は増え続けません。</p>
+ *
+ * <p>通知される定数プールと属性の内容はクラスファイルのバッファを参照します。
+ * バッファが再利用される場合（{@link javavm.classloader.Classpath#visit} の圧縮エントリなど）があるため、
+ * {@link #visitEnd()} の後はこれらを参照してはいけません。必要な値は走査中に取り出してください。</p>
+ */
+public abstract class ClassFileVisitor {
+    /**
+     * 属性を持つ構造の種類
+     */
+    public enum AttributeOwner {
+        CLASS,
+        FIELD,
+        METHOD
+    }
+
+    /**
+     * マジックナンバーを検証した後に呼び出されます。
+     * @param magic マジックナンバー（常に0xCAFEBABE）
+     */
+    public void visitMagic(int magic) {
+    }
+
+    /**
+     * バージョンを検証した後に呼び出されます。
+     * @param minorVersion minor_version
+     * @param majorVersion major_version
+     */
+    public void visitVersion(int minorVersion, int majorVersion) {
+    }
+
+    /**
+     * 定数プールを索引化した後に呼び出されます。
+     * @param constantPool 遅延モードの定数プール
+     * @return trueの場合、各エントリについて {@link #visitConstant} を呼び出す
+     */
+    public boolean visitConstantPool(ConstantPool constantPool) {
+        return false;
+    }
+
+    /**
+     * 定数プールのエントリごとに呼び出されます。Long/Doubleの次のスロットは通知されません。
+     * @param constantPool 定数プール
+     * @param index エントリのインデックス
+     * @param tag エントリのタグ
+     */
+    public void visitConstant(ConstantPool constantPool, int index, int tag) {
+    }
+
+    /**
+     * クラスのアクセスフラグと名前を読み取った後に呼び出されます。
+     * @param accessFlags access_flags
+     * @param thisClass this_class（CONSTANT_Classのインデックス）
+     * @param superClass super_class（CONSTANT_Classのインデックス。java/lang/Objectでは0）
+     */
+    public void visitClass(int accessFlags, int thisClass, int superClass) {
+    }
+
+    /**
+     * 実装するインターフェースごとに呼び出されます。
+     * @param interfaceClass CONSTANT_Classのインデックス
+     */
+    public void visitInterface(int interfaceClass) {
+    }
+
+    /**
+     * フィールドごとに呼び出されます。
+     * @param accessFlags access_flags
+     * @param nameIndex 名前を指すCONSTANT_Utf8のインデックス
+     * @param descriptorIndex 記述子を指すCONSTANT_Utf8のインデックス
+     * @return trueの場合、このフィールドの属性について {@link #visitAttribute} を呼び出す
+     */
+    public boolean visitField(int accessFlags, int nameIndex, int descriptorIndex) {
+        return false;
+    }
+
+    /**
+     * メソッドごとに呼び出されます。
+     * @param accessFlags access_flags
+     * @param nameIndex 名前を指すCONSTANT_Utf8のインデックス
+     * @param descriptorIndex 記述子を指すCONSTANT_Utf8のインデックス
+     * @return trueの場合、このメソッドの属性（Codeなど）について {@link #visitAttribute} を呼び出す
+     */
+    public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex) {
+        return false;
+    }
+
+    /**
+     * 属性ごとに呼び出されます。クラスの属性は常に通知されます。
+     * @param owner 属性を持つ構造
+     * @param name 属性名
+     * @param length 属性の内容のバイト数
+     * @return trueの場合、{@link #visitAttributeContent} で内容を通知する。falseの場合は内容を読み飛ばす
+     */
+    public boolean visitAttribute(AttributeOwner owner, Symbol name, int length) {
+        return false;
+    }
+
+    /**
+     * 属性の内容を通知します。
+     * @param owner 属性を持つ構造
+     * @param name 属性名
+     * @param content 属性の内容（attribute_name_indexとattribute_lengthを除く）を参照する読み取り専用のバッファ
+     */
+    public void visitAttributeContent(AttributeOwner owner, Symbol name, ByteBuffer content) {
+    }
+
+    /**
+     * クラスファイルの末尾まで読み取った後に呼び出されます。
+     */
+    public void visitEnd() {
+    }
+}
@@ -0,0 +1,160 @@
+package javavm.classfile;
+
+/**
+ * メソッドのCode属性を表現するクラス
+ *
+ * 例外テーブルは1エントリを4つのint（start_pc, end_pc, handler_pc, catch_type）として
+ * 1つの配列に並べて保持します。Code属性内の属性は、検証に使用するStackMapTable属性の内容を
+ * 解析せずに保持し、LineNumberTable属性は1エントリを2つのint（start_pc, line_number）として保持します。
+ * その他の属性は保持しません。
+ *
+ * <p>クラスファイルやクラスアーカイブから読み込んだメソッドでは、最初に {@link MethodInfo#getCode()} を
+ * 呼び出した時点でデコードします。</p>
+ */
+public final class CodeAttribute {
+    private final int maxStack;
+    private final int maxLocals;
+    private final byte[] code;
+    private final int[] exceptionTable;
+    private final byte[] stackMapTable;
+    private final int[] lineNumbers;
+
+    CodeAttribute(int maxStack, int maxLocals, byte[] code, int[] exceptionTable, byte[] stackMapTable,
+            int[] lineNumbers) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.code = code;
+        this.exceptionTable = exceptionTable;
+        this.stackMapTable = stackMapTable;
+        this.lineNumbers = lineNumbers;
+    }
+
+    /**
+     * オペランドスタックの最大の深さを取得します。
+     * @return max_stackの値
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * ローカル変数の数を取得します。
+     * @return max_localsの値
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * バイトコードの長さを取得します。
+     * @return code_lengthの値
+     */
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /**
+     * バイトコードを取得します。
+     * @return バイトコード（コピー）
+     */
+    public byte[] getCode() {
+        return code.clone();
+    }
+
+    /**
+     * 例外テーブルのエントリ数を取得します。
+     * @return exception_table_lengthの値
+     */
+    public int getExceptionTableLength() {
+        return exceptionTable.length / 4;
+    }
+
+    /**
+     * 例外ハンドラが有効な範囲の開始位置を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return start_pcの値
+     */
+    public int getStartPc(int entry) {
+        return exceptionTable[entry * 4];
+    }
+
+    /**
+     * 例外ハンドラが有効な範囲の終了位置（この位置を含まない）を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return end_pcの値
+     */
+    public int getEndPc(int entry) {
+        return exceptionTable[entry * 4 + 1];
+    }
+
+    /**
+     * 例外ハンドラの開始位置を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return handler_pcの値
+     */
+    public int getHandlerPc(int entry) {
+        return exceptionTable[entry * 4 + 2];
+    }
+
+    /**
+     * 捕捉する例外クラスを指す定数プールのインデックスを取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return catch_typeの値。すべての例外を捕捉する場合は0
+     */
+    public int getCatchType(int entry) {
+        return exceptionTable[entry * 4 + 3];
+    }
+
+    /**
+     * StackMapTable属性の内容（attribute_lengthの後のnumber_of_entriesから末尾まで）を取得します。
+     * @return 属性の内容（コピー）。StackMapTable属性がない場合はnull
+     */
+    public byte[] getStackMapTable() {
+        return stackMapTable == null ? null : stackMapTable.clone();
+    }
+
+    /**
+     * LineNumberTable属性のエントリ数を取得します。複数のLineNumberTable属性がある場合はその合計です。
+     * @return line_number_table_lengthの値
+     */
+    public int getLineNumberTableLength() {
+        return lineNumbers.length / 2;
+    }
+
+    /**
+     * バイトコード上の位置に対応するソースコードの行番号を取得します。
+     * 開始位置がその位置以前のエントリのうち、開始位置が最も大きいエントリの行番号を返します。
+     * @param pc バイトコード上の位置
+     * @return 行番号。対応するエントリがない場合は-1
+     */
+    public int getLineNumber(int pc) {
+        int startPc = -1;
+        int line = -1;
+        for (int i = 0; i < lineNumbers.length; i += 2) {
+            if (lineNumbers[i] <= pc && lineNumbers[i] > startPc) {
+                startPc = lineNumbers[i];
+                line = lineNumbers[i + 1];
+            }
+        }
+        return line;
+    }
+
+    /**
+     * バイトコード、例外テーブル、StackMapTable属性、LineNumberTable属性の配列をそのまま返します。呼び出し側で変更してはいけません。
+     */
+    byte[] code() {
+        return code;
+    }
+
+    int[] exceptionTable() {
+        return exceptionTable;
+    }
+
+    byte[] stackMapTable() {
+        return stackMapTable;
+    }
+
+    int[] lineNumbers() {
+        return lineNumbers;
+    }
+}
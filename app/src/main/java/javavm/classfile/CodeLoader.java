@@ -0,0 +1,24 @@
+package javavm.classfile;
+
+/**
+ * メソッドのCode属性を最初の使用時にデコードする読み込み元（クラスファイルのバッファまたはクラスアーカイブ）
+ */
+interface CodeLoader {
+    /**
+     * Code属性をデコードします。
+     * @param offset 読み込み元におけるCode属性の位置（読み込み元ごとの形式）
+     * @param method デコードするCode属性を持つメソッド（エラーメッセージに使用）
+     * @return デコードしたCode属性
+     * @throws ClassFormatError Code属性の形式が不正な場合
+     */
+    CodeAttribute load(int offset, MethodInfo method);
+
+    /**
+     * Code属性をデコードせずに参照するビューを作ります。
+     * @param offset 読み込み元におけるCode属性の位置（読み込み元ごとの形式）
+     * @param method Code属性を持つメソッド（エラーメッセージに使用）
+     * @return Code属性のビュー
+     * @throws ClassFormatError Code属性の形式が不正な場合
+     */
+    CodeView view(int offset, MethodInfo method);
+}
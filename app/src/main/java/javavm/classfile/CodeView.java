@@ -0,0 +1,122 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * メソッドのCode属性をデコードせずに参照するビュー
+ *
+ * バイトコードとStackMapTable属性の内容は、読み込み元（クラスファイルのバッファまたはクラスアーカイブ）の範囲を
+ * 配列にコピーせずに参照します。LineNumberTable属性は参照しません。
+ * 検証のように、実行するとは限らないメソッドのCode属性を一度だけ走査する場合に使用します（{@link MethodInfo#viewCode()}）。
+ *
+ * <p>例外テーブルは {@link CodeAttribute} と同じく、1エントリを4つのintとして1つの配列に並べて保持します。</p>
+ */
+public final class CodeView {
+    private final int maxStack;
+    private final int maxLocals;
+    private final ByteBuffer code;
+    private final int[] exceptionTable;
+    private final ByteBuffer stackMapTable;
+
+    CodeView(int maxStack, int maxLocals, ByteBuffer code, int[] exceptionTable, ByteBuffer stackMapTable) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.code = code.asReadOnlyBuffer();
+        this.exceptionTable = exceptionTable;
+        this.stackMapTable = stackMapTable == null ? null : stackMapTable.asReadOnlyBuffer();
+    }
+
+    /**
+     * デコード済みのCode属性を参照するビューを作ります。
+     */
+    static CodeView of(CodeAttribute code) {
+        byte[] stackMapTable = code.stackMapTable();
+        return new CodeView(code.getMaxStack(), code.getMaxLocals(), ByteBuffer.wrap(code.code()), code.exceptionTable(),
+                stackMapTable == null ? null : ByteBuffer.wrap(stackMapTable));
+    }
+
+    /**
+     * オペランドスタックの最大の深さを取得します。
+     * @return max_stackの値
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * ローカル変数のスロット数を取得します。
+     * @return max_localsの値
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * バイトコードの長さを取得します。
+     * @return code_lengthの値
+     */
+    public int getCodeLength() {
+        return code.limit();
+    }
+
+    /**
+     * バイトコードのバイトを取得します。
+     * @param offset バイトコード上の位置（0以上 {@link #getCodeLength()} 未満）
+     * @return 符号なしのバイトの値
+     */
+    public int getCodeByte(int offset) {
+        return code.get(offset) & 0xFF;
+    }
+
+    /**
+     * 例外テーブルのエントリ数を取得します。
+     * @return exception_table_lengthの値
+     */
+    public int getExceptionTableLength() {
+        return exceptionTable.length / 4;
+    }
+
+    /**
+     * 例外ハンドラが有効な範囲の開始位置を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return start_pcの値
+     */
+    public int getStartPc(int entry) {
+        return exceptionTable[entry * 4];
+    }
+
+    /**
+     * 例外ハンドラが有効な範囲の終了位置（含まない）を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return end_pcの値
+     */
+    public int getEndPc(int entry) {
+        return exceptionTable[entry * 4 + 1];
+    }
+
+    /**
+     * 例外ハンドラの開始位置を取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return handler_pcの値
+     */
+    public int getHandlerPc(int entry) {
+        return exceptionTable[entry * 4 + 2];
+    }
+
+    /**
+     * 捕捉する例外クラスを指す定数プールのインデックスを取得します。
+     * @param entry 例外テーブルのエントリ番号
+     * @return catch_typeの値。すべての例外を捕捉する場合は0
+     */
+    public int getCatchType(int entry) {
+        return exceptionTable[entry * 4 + 3];
+    }
+
+    /**
+     * StackMapTable属性の内容（attribute_lengthの後のnumber_of_entriesから末尾まで）を取得します。
+     * @return 読み取り専用のバッファ（位置は先頭）。StackMapTable属性がない場合はnull
+     */
+    public ByteBuffer getStackMapTable() {
+        return stackMapTable == null ? null : stackMapTable.duplicate();
+    }
+}
@@ -0,0 +1,418 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 定数プールを配列の組（Struct of Arrays）で保持するクラス
+ *
+ * エントリごとにオブジェクトを生成する代わりに、タグを {@code byte[]}、
+ * オペランドを {@code int[]} に格納します。オペランドの格納形式は次の通りです。
+ * <ul>
+ *   <li>u2を1つ持つエントリ（Class, String, MethodType, Module, Package）: そのままの値</li>
+ *   <li>u2を2つ持つエントリ（Fieldref, Methodref, InterfaceMethodref, NameAndType, Dynamic, InvokeDynamic）:
+ *       {@code (第1オペランド << 16) | 第2オペランド}</li>
+ *   <li>MethodHandle: {@code (reference_kind << 16) | reference_index}</li>
+ *   <li>Integer, Float: 4バイトの値そのもの</li>
+ *   <li>Long, Double: 上位4バイトを自身のスロット、下位4バイトを次のスロットに格納
+ *       （次のスロットは仕様上使用不可のため追加の領域は不要）</li>
+ * </ul>
+ * CONSTANT_Utf8は {@link SymbolTable} で一意化したシンボルを別の配列で保持します。
+ *
+ * <p>遅延モードでは、オペランド配列に各エントリ本体（タグの直後）のバイトオフセットを格納し、
+ * 値はアクセスのたびに元のバッファから読み取ります。CONSTANT_Utf8は最初のアクセス時に
+ * シンボルテーブルから取得してメモ化します。メモ化は同じ値を書き込むだけなので、複数スレッドから同時にアクセスしても
+ * 結果は変わりません。遅延モードの定数プールはクラスファイルのバッファを参照し続けるため、
+ * バッファの内容を書き換えてはいけません。</p>
+ *
+ * <p>{@link ClassArchive} から復元した定数プールは即時モードと同じ格納形式で、
+ * CONSTANT_Utf8のシンボルだけを最初のアクセス時にアーカイブから取得します。</p>
+ */
+public final class ConstantPool {
+    private final byte[] tags;
+    private final int[] operands;
+    private final Symbol[] symbols;
+    // 遅延モードでのみ使用する読み取り元（即時モードではnull）
+    private final ByteBuffer source;
+    // クラスアーカイブから復元した場合のシンボルの取得元（それ以外ではnull）
+    private final ClassArchive archive;
+
+    ConstantPool(byte[] tags, int[] operands, Symbol[] symbols) {
+        this.tags = tags;
+        this.operands = operands;
+        this.symbols = symbols;
+        this.source = null;
+        this.archive = null;
+    }
+
+    ConstantPool(byte[] tags, int[] offsets, ByteBuffer source) {
+        this.tags = tags;
+        this.operands = offsets;
+        this.symbols = new Symbol[tags.length];
+        this.source = source;
+        this.archive = null;
+    }
+
+    /**
+     * クラスアーカイブから復元した定数プールを生成します。
+     * CONSTANT_Utf8のオペランドにはアーカイブ内のシンボル番号を格納し、シンボルは最初のアクセス時に取得します。
+     */
+    ConstantPool(byte[] tags, int[] operands, ClassArchive archive) {
+        this.tags = tags;
+        this.operands = operands;
+        this.symbols = new Symbol[tags.length];
+        this.source = null;
+        this.archive = archive;
+    }
+
+    /**
+     * 遅延モードで生成された定数プールかどうかを返します。
+     * @return 遅延モードの場合true
+     */
+    public boolean isLazy() {
+        return source != null;
+    }
+
+    /**
+     * 定数プールカウント（エントリ数 + 1）を返します。
+     * @return 定数プールカウント
+     */
+    public int size() {
+        return tags.length;
+    }
+
+    /**
+     * 指定したインデックスのタグを返します。
+     * インデックス0、およびLong/Doubleの次のスロットは0を返します。
+     * @param index 定数プールインデックス
+     * @return タグ値
+     * @throws ClassFormatError インデックスが範囲外の場合
+     */
+    public int tag(int index) {
+        checkIndex(index);
+        return tags[index];
+    }
+
+    /**
+     * CONSTANT_Utf8の文字列を返します。
+     * @param index CONSTANT_Utf8を指すインデックス
+     * @return 文字列
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public String utf8(int index) {
+        return symbol(index).toString();
+    }
+
+    /**
+     * CONSTANT_Utf8のシンボルを返します。
+     * @param index CONSTANT_Utf8を指すインデックス
+     * @return 一意化されたシンボル
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public Symbol symbol(int index) {
+        expect(index, ConstantInfo.CONSTANT_Utf8);
+        Symbol symbol = symbols[index];
+        if (symbol == null) {
+            if (archive != null) {
+                symbol = archive.symbol(operands[index]);
+            } else {
+                int offset = operands[index];
+                int length = source.getShort(offset) & 0xFFFF;
+                symbol = SymbolTable.getInstance().intern(source, offset + 2, length);
+            }
+            symbols[index] = symbol;
+        }
+        return symbol;
+    }
+
+    /**
+     * CONSTANT_Classのname_indexを返します。
+     * @param index CONSTANT_Classを指すインデックス
+     * @return クラス名を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int classNameIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_Class);
+        return u2Operand(index);
+    }
+
+    /**
+     * CONSTANT_Classが示すクラス名を返します。
+     * @param index CONSTANT_Classを指すインデックス
+     * @return 内部形式のクラス名（例: {@code java/lang/Object}）
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public String className(int index) {
+        return utf8(classNameIndex(index));
+    }
+
+    /**
+     * CONSTANT_Classが示すクラス名のシンボルを返します。
+     * @param index CONSTANT_Classを指すインデックス
+     * @return クラス名のシンボル
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public Symbol classNameSymbol(int index) {
+        return symbol(classNameIndex(index));
+    }
+
+    /**
+     * CONSTANT_Stringのstring_indexを返します。
+     * @param index CONSTANT_Stringを指すインデックス
+     * @return 文字列を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int stringIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_String);
+        return u2Operand(index);
+    }
+
+    /**
+     * CONSTANT_Integerの値を返します。
+     * @param index CONSTANT_Integerを指すインデックス
+     * @return int値
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int intValue(int index) {
+        expect(index, ConstantInfo.CONSTANT_Integer);
+        return u4Operand(index);
+    }
+
+    /**
+     * CONSTANT_Floatの値を返します。
+     * @param index CONSTANT_Floatを指すインデックス
+     * @return float値
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public float floatValue(int index) {
+        expect(index, ConstantInfo.CONSTANT_Float);
+        return Float.intBitsToFloat(u4Operand(index));
+    }
+
+    /**
+     * CONSTANT_Longの値を返します。
+     * @param index CONSTANT_Longを指すインデックス
+     * @return long値
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public long longValue(int index) {
+        expect(index, ConstantInfo.CONSTANT_Long);
+        return wideOperand(index);
+    }
+
+    /**
+     * CONSTANT_Doubleの値を返します。
+     * @param index CONSTANT_Doubleを指すインデックス
+     * @return double値
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public double doubleValue(int index) {
+        expect(index, ConstantInfo.CONSTANT_Double);
+        return Double.longBitsToDouble(wideOperand(index));
+    }
+
+    /**
+     * Fieldref/Methodref/InterfaceMethodrefのclass_indexを返します。
+     * @param index メンバ参照を指すインデックス
+     * @return クラスを指すCONSTANT_Classのインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはメンバ参照でない場合
+     */
+    public int memberClassIndex(int index) {
+        expectMemberRef(index);
+        return u4Operand(index) >>> 16;
+    }
+
+    /**
+     * Fieldref/Methodref/InterfaceMethodref/Dynamic/InvokeDynamicのname_and_type_indexを返します。
+     * @param index メンバ参照または動的定数を指すインデックス
+     * @return CONSTANT_NameAndTypeのインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int nameAndTypeOf(int index) {
+        checkIndex(index);
+        int tag = tags[index];
+        if (tag != ConstantInfo.CONSTANT_Dynamic && tag != ConstantInfo.CONSTANT_InvokeDynamic) {
+            expectMemberRef(index);
+        }
+        return u4Operand(index) & 0xFFFF;
+    }
+
+    /**
+     * CONSTANT_NameAndTypeのname_indexを返します。
+     * @param index CONSTANT_NameAndTypeを指すインデックス
+     * @return 名前を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int nameIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_NameAndType);
+        return u4Operand(index) >>> 16;
+    }
+
+    /**
+     * CONSTANT_NameAndTypeのdescriptor_indexを返します。
+     * @param index CONSTANT_NameAndTypeを指すインデックス
+     * @return 記述子を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int descriptorIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_NameAndType);
+        return u4Operand(index) & 0xFFFF;
+    }
+
+    /**
+     * CONSTANT_MethodHandleのreference_kindを返します。
+     * @param index CONSTANT_MethodHandleを指すインデックス
+     * @return reference_kind（1〜9）
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int methodHandleKind(int index) {
+        expect(index, ConstantInfo.CONSTANT_MethodHandle);
+        return methodHandleOperand(index) >>> 16;
+    }
+
+    /**
+     * CONSTANT_MethodHandleのreference_indexを返します。
+     * @param index CONSTANT_MethodHandleを指すインデックス
+     * @return 参照先のメンバ参照のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int methodHandleReferenceIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_MethodHandle);
+        return methodHandleOperand(index) & 0xFFFF;
+    }
+
+    /**
+     * CONSTANT_MethodTypeのdescriptor_indexを返します。
+     * @param index CONSTANT_MethodTypeを指すインデックス
+     * @return メソッド記述子を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int methodTypeDescriptorIndex(int index) {
+        expect(index, ConstantInfo.CONSTANT_MethodType);
+        return u2Operand(index);
+    }
+
+    /**
+     * CONSTANT_Dynamic/CONSTANT_InvokeDynamicのbootstrap_method_attr_indexを返します。
+     * @param index 動的定数を指すインデックス
+     * @return BootstrapMethods属性内のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int bootstrapMethodAttrIndex(int index) {
+        checkIndex(index);
+        int tag = tags[index];
+        if (tag != ConstantInfo.CONSTANT_Dynamic) {
+            expect(index, ConstantInfo.CONSTANT_InvokeDynamic);
+        }
+        return u4Operand(index) >>> 16;
+    }
+
+    /**
+     * CONSTANT_Module/CONSTANT_Packageのname_indexを返します。
+     * @param index CONSTANT_ModuleまたはCONSTANT_Packageを指すインデックス
+     * @return 名前を指すCONSTANT_Utf8のインデックス
+     * @throws ClassFormatError インデックスが範囲外、またはタグが一致しない場合
+     */
+    public int moduleOrPackageNameIndex(int index) {
+        checkIndex(index);
+        int tag = tags[index];
+        if (tag != ConstantInfo.CONSTANT_Module) {
+            expect(index, ConstantInfo.CONSTANT_Package);
+        }
+        return u2Operand(index);
+    }
+
+    /**
+     * 即時モードの格納形式でオペランドを返します。遅延モードではバッファから読み取って変換します。
+     * CONSTANT_Utf8の値は格納形式によって異なるため、呼び出し側で {@link #symbol(int)} を使用してください。
+     */
+    int compactOperand(int index) {
+        if (source == null) {
+            return operands[index];
+        }
+        switch (tags[index]) {
+            case ConstantInfo.CONSTANT_Utf8:
+                return 0;
+
+            case ConstantInfo.CONSTANT_Class:
+            case ConstantInfo.CONSTANT_String:
+            case ConstantInfo.CONSTANT_MethodType:
+            case ConstantInfo.CONSTANT_Module:
+            case ConstantInfo.CONSTANT_Package:
+                return u2Operand(index);
+
+            case ConstantInfo.CONSTANT_MethodHandle:
+                return methodHandleOperand(index);
+
+            case ConstantInfo.CONSTANT_Long:
+            case ConstantInfo.CONSTANT_Double:
+                return (int) (wideOperand(index) >>> 32);
+
+            case 0:
+                // Long/Doubleの次のスロットには下位4バイトを格納する
+                if (index > 0 && (tags[index - 1] == ConstantInfo.CONSTANT_Long
+                        || tags[index - 1] == ConstantInfo.CONSTANT_Double)) {
+                    return (int) wideOperand(index - 1);
+                }
+                return 0;
+
+            default:
+                return u4Operand(index);
+        }
+    }
+
+    private int u2Operand(int index) {
+        if (source != null) {
+            return source.getShort(operands[index]) & 0xFFFF;
+        }
+        return operands[index];
+    }
+
+    /**
+     * 4バイトのオペランドを返します。u2を2つ持つエントリでは連続する2つのu2を1つのintとして読むため、
+     * 即時モードの格納形式と一致します。
+     */
+    private int u4Operand(int index) {
+        if (source != null) {
+            return source.getInt(operands[index]);
+        }
+        return operands[index];
+    }
+
+    private int methodHandleOperand(int index) {
+        if (source != null) {
+            int offset = operands[index];
+            return ((source.get(offset) & 0xFF) << 16) | (source.getShort(offset + 1) & 0xFFFF);
+        }
+        return operands[index];
+    }
+
+    private long wideOperand(int index) {
+        if (source != null) {
+            return source.getLong(operands[index]);
+        }
+        return ((long) operands[index] << 32) | (operands[index + 1] & 0xFFFFFFFFL);
+    }
+
+    private void checkIndex(int index) {
+        if (index <= 0 || index >= tags.length) {
+            throw new ClassFormatError("定数プールのインデックスが範囲外です: " + index);
+        }
+    }
+
+    private void expect(int index, int tag) {
+        checkIndex(index);
+        if (tags[index] != tag) {
+            throw new ClassFormatError("定数プールのタグが一致しません: #" + index + " 期待値=" + tag + " 実際=" + tags[index]);
+        }
+    }
+
+    private void expectMemberRef(int index) {
+        checkIndex(index);
+        int tag = tags[index];
+        if (tag != ConstantInfo.CONSTANT_Fieldref
+                && tag != ConstantInfo.CONSTANT_Methodref
+                && tag != ConstantInfo.CONSTANT_InterfaceMethodref) {
+            throw new ClassFormatError("定数プールのエントリがメンバ参照ではありません: #" + index + " タグ=" + tag);
+        }
+    }
+}
@@ -4,10 +4,10 @@ package javavm.classfile;
  * CONSTANT_Utf8型の定数プールエントリ
  */
 public class ConstantUtf8Info extends ConstantInfo {
-    private final String value;
+    private final Symbol symbol;
 
-    public ConstantUtf8Info(String value) {
-        this.value = value;
+    public ConstantUtf8Info(Symbol symbol) {
+        this.symbol = symbol;
     }
 
     @Override
@@ -20,6 +20,14 @@ public class ConstantUtf8Info extends ConstantInfo {
      * @return UTF-8文字列
      */
     public String getValue() {
-        return value;
+        return symbol.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * 一意化されたシンボルを取得します。同じ文字列のシンボルは参照で比較できます。
+     * @return シンボル
+     */
+    public Symbol getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,63 @@
+package javavm.classfile;
+
+/**
+ * クラスファイルのfield_infoを表現するクラス
+ */
+public final class FieldInfo {
+    private final int accessFlags;
+    private final Symbol name;
+    private final Symbol descriptor;
+    private final int constantValueIndex;
+
+    FieldInfo(int accessFlags, Symbol name, Symbol descriptor, int constantValueIndex) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.constantValueIndex = constantValueIndex;
+    }
+
+    /**
+     * フィールドのアクセスフラグを取得します。
+     * @return access_flagsの値
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * フィールド名を取得します。
+     * @return フィールド名のシンボル
+     */
+    public Symbol getName() {
+        return name;
+    }
+
+    /**
+     * フィールド記述子を取得します。
+     * @return フィールド記述子のシンボル（例: {@code I}、{@code Ljava/lang/String;}）
+     */
+    public Symbol getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * ConstantValue属性が指す定数プールのインデックスを取得します。
+     * @return 定数のインデックス。ConstantValue属性がない場合は0
+     */
+    public int getConstantValueIndex() {
+        return constantValueIndex;
+    }
+
+    /**
+     * staticフィールドかどうかを返します。
+     * @return ACC_STATICが設定されている場合true
+     */
+    public boolean isStatic() {
+        return (accessFlags & AccessFlags.ACC_STATIC) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + descriptor;
+    }
+}
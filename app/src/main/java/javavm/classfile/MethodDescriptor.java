@@ -0,0 +1,136 @@
+package javavm.classfile;
+
+/**
+ * メソッド記述子（例: {@code (IJLjava/lang/String;[I)V}）を解析した結果
+ *
+ * 型は記述子の先頭文字で表します。基本型は {@code B C D F I J S Z}、
+ * クラス型は {@code L}、配列型は {@code [}、戻り値のvoidは {@code V} です。
+ */
+public final class MethodDescriptor {
+    private final char[] parameterTypes;
+    private final int parameterSlots;
+    private final char returnType;
+
+    private MethodDescriptor(char[] parameterTypes, int parameterSlots, char returnType) {
+        this.parameterTypes = parameterTypes;
+        this.parameterSlots = parameterSlots;
+        this.returnType = returnType;
+    }
+
+    /**
+     * メソッド記述子を解析します。
+     * @param descriptor メソッド記述子
+     * @return 解析結果
+     * @throws ClassFormatError 記述子の形式が不正な場合
+     */
+    public static MethodDescriptor parse(String descriptor) {
+        if (descriptor.isEmpty() || descriptor.charAt(0) != '(') {
+            throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+        char[] types = new char[descriptor.length()];
+        int count = 0;
+        int slots = 0;
+        int position = 1;
+        while (position < descriptor.length() && descriptor.charAt(position) != ')') {
+            char type = descriptor.charAt(position);
+            position = skipFieldType(descriptor, position);
+            types[count++] = type;
+            slots += type == 'J' || type == 'D' ? 2 : 1;
+        }
+        if (position >= descriptor.length()) {
+            throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+        position++;
+
+        char returnType;
+        if (position < descriptor.length() && descriptor.charAt(position) == 'V') {
+            returnType = 'V';
+            position++;
+        } else {
+            returnType = position < descriptor.length() ? descriptor.charAt(position) : ' ';
+            position = skipFieldType(descriptor, position);
+        }
+        if (position != descriptor.length() || slots > 255) {
+            throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+
+        char[] parameterTypes = new char[count];
+        System.arraycopy(types, 0, parameterTypes, 0, count);
+        return new MethodDescriptor(parameterTypes, slots, returnType);
+    }
+
+    /**
+     * 記述子のpositionから始まるフィールド型を読み飛ばし、次の位置を返します。
+     */
+    private static int skipFieldType(String descriptor, int position) {
+        int start = position;
+        while (position < descriptor.length() && descriptor.charAt(position) == '[') {
+            position++;
+        }
+        if (position - start > 255 || position >= descriptor.length()) {
+            throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+        switch (descriptor.charAt(position)) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+                return position + 1;
+            case 'L':
+                int end = descriptor.indexOf(';', position);
+                if (end < 0 || end == position + 1) {
+                    throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+                }
+                return end + 1;
+            default:
+                throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+    }
+
+    /**
+     * 引数の数を返します。
+     * @return 引数の数
+     */
+    public int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    /**
+     * 引数の型を返します。
+     * @param index 引数の位置
+     * @return 型を表す文字
+     */
+    public char getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    /**
+     * 引数が占めるローカル変数のスロット数を返します。longとdoubleは2スロットとして数えます。
+     * インスタンスメソッドのthisは含みません。
+     * @return スロット数
+     */
+    public int getParameterSlots() {
+        return parameterSlots;
+    }
+
+    /**
+     * 戻り値の型を返します。
+     * @return 型を表す文字。戻り値がない場合は{@code V}
+     */
+    public char getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * 型が参照型（クラス型または配列型）かどうかを判定します。
+     * @param type 型を表す文字
+     * @return 参照型の場合true
+     */
+    public static boolean isReference(char type) {
+        return type == 'L' || type == '[';
+    }
+}
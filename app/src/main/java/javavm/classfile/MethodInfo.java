@@ -0,0 +1,136 @@
+package javavm.classfile;
+
+/**
+ * クラスファイルのmethod_infoを表現するクラス
+ *
+ * クラスの読み込み時はCode属性の位置だけを記録し、バイトコード、例外テーブル、StackMapTable属性、
+ * LineNumberTable属性は {@link #getCode()} が最初に呼び出された時点（通常はメソッドの最初の実行時）に
+ * 一度だけデコードします。一度も実行されないメソッドのCode属性はデコードされません。
+ */
+public final class MethodInfo {
+    private final int accessFlags;
+    private final Symbol name;
+    private final Symbol descriptor;
+    // Code属性の読み込み元と位置。Code属性がない場合、またはデコード済みのCode属性を渡された場合はnull
+    private final CodeLoader codeLoader;
+    private final int codeOffset;
+    private volatile CodeAttribute code;
+
+    MethodInfo(int accessFlags, Symbol name, Symbol descriptor, CodeAttribute code) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.codeLoader = null;
+        this.codeOffset = 0;
+        this.code = code;
+    }
+
+    MethodInfo(int accessFlags, Symbol name, Symbol descriptor, CodeLoader codeLoader, int codeOffset) {
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.codeLoader = codeLoader;
+        this.codeOffset = codeOffset;
+    }
+
+    /**
+     * メソッドのアクセスフラグを取得します。
+     * @return access_flagsの値
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * メソッド名を取得します。
+     * @return メソッド名のシンボル（コンストラクタは{@code <init>}）
+     */
+    public Symbol getName() {
+        return name;
+    }
+
+    /**
+     * メソッド記述子を取得します。
+     * @return メソッド記述子のシンボル（例: {@code (II)I}）
+     */
+    public Symbol getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Code属性を取得します。最初の呼び出しでデコードし、以降は同じ結果を返します。
+     * 複数のスレッドから同時に呼び出した場合も、デコードは一度だけ行います。
+     * @return Code属性。abstractメソッドやnativeメソッドの場合はnull
+     * @throws ClassFormatError Code属性の形式が不正な場合
+     */
+    public CodeAttribute getCode() {
+        CodeAttribute decoded = code;
+        if (decoded == null && codeLoader != null) {
+            synchronized (this) {
+                decoded = code;
+                if (decoded == null) {
+                    decoded = codeLoader.load(codeOffset, this);
+                    code = decoded;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Code属性を取得しますが、デコードした結果を保持しません。
+     * アーカイブの書き出しのように、実行しないメソッドのCode属性を一時的に参照する場合に使用します。
+     * @return Code属性（デコード済みの場合はその結果）。abstractメソッドやnativeメソッドの場合はnull
+     * @throws ClassFormatError Code属性の形式が不正な場合
+     */
+    public CodeAttribute readCode() {
+        CodeAttribute decoded = code;
+        if (decoded == null && codeLoader != null) {
+            decoded = codeLoader.load(codeOffset, this);
+        }
+        return decoded;
+    }
+
+    /**
+     * Code属性をデコードせずに参照するビューを返します。デコード済みの場合はその結果を参照します。
+     * 検証のように、実行するとは限らないメソッドのバイトコードを一度だけ走査する場合に使用します。
+     * @return Code属性のビュー。abstractメソッドやnativeメソッドの場合はnull
+     * @throws ClassFormatError Code属性の形式が不正な場合
+     */
+    public CodeView viewCode() {
+        CodeAttribute decoded = code;
+        if (decoded != null) {
+            return CodeView.of(decoded);
+        }
+        return codeLoader == null ? null : codeLoader.view(codeOffset, this);
+    }
+
+    /**
+     * Code属性を持つかどうかを返します。Code属性はデコードしません。
+     * @return Code属性を持つ場合true
+     */
+    public boolean hasCode() {
+        return codeLoader != null || code != null;
+    }
+
+    /**
+     * Code属性を持ち、まだデコードしていないかどうかを返します。
+     * @return Code属性が一度もデコードされていない場合true
+     */
+    public boolean isCodeDeferred() {
+        return codeLoader != null && code == null;
+    }
+
+    /**
+     * staticメソッドかどうかを返します。
+     * @return ACC_STATICが設定されている場合true
+     */
+    public boolean isStatic() {
+        return (accessFlags & AccessFlags.ACC_STATIC) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return name.toString() + descriptor;
+    }
+}
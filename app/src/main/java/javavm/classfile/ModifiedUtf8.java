@@ -0,0 +1,112 @@
+package javavm.classfile;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * クラスファイルで使用される修正UTF-8（Modified UTF-8）の変換処理
+ *
+ * 標準のUTF-8との違いは次の通りです。
+ * <ul>
+ *   <li>NUL文字（U+0000）は2バイト {@code 0xC0 0x80} で表現される</li>
+ *   <li>補助文字はサロゲートペアの各charを3バイトずつ（計6バイト）で表現する</li>
+ *   <li>4バイト形式は使用しない</li>
+ * </ul>
+ */
+public final class ModifiedUtf8 {
+    private ModifiedUtf8() {
+    }
+
+    /**
+     * 修正UTF-8のバイト列を文字列に変換します。
+     * すべてのバイトがASCIIの場合は1文字ずつのデコードを行いません。
+     * @param bytes 修正UTF-8のバイト列
+     * @return 変換した文字列
+     * @throws ClassFormatError 不正なバイト列の場合
+     */
+    public static String decode(byte[] bytes) {
+        int length = bytes.length;
+        int asciiLength = 0;
+        while (asciiLength < length && bytes[asciiLength] > 0) {
+            asciiLength++;
+        }
+        if (asciiLength == length) {
+            // ASCIIのみの場合はLatin-1として変換する（compact stringsによりコピー1回で済む）
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        char[] chars = new char[length];
+        for (int i = 0; i < asciiLength; i++) {
+            chars[i] = (char) bytes[i];
+        }
+
+        int count = asciiLength;
+        int i = asciiLength;
+        while (i < length) {
+            int b1 = bytes[i] & 0xFF;
+            if (b1 != 0 && b1 < 0x80) {
+                chars[count++] = (char) b1;
+                i++;
+            } else if ((b1 & 0xE0) == 0xC0) {
+                int b2 = continuationByte(bytes, i + 1);
+                chars[count++] = (char) (((b1 & 0x1F) << 6) | b2);
+                i += 2;
+            } else if ((b1 & 0xF0) == 0xE0) {
+                int b2 = continuationByte(bytes, i + 1);
+                int b3 = continuationByte(bytes, i + 2);
+                chars[count++] = (char) (((b1 & 0x0F) << 12) | (b2 << 6) | b3);
+                i += 3;
+            } else {
+                throw new ClassFormatError("不正な修正UTF-8のバイトです: 0x" + Integer.toHexString(b1).toUpperCase() + " (位置 " + i + ")");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * 文字列を修正UTF-8のバイト列に変換します。
+     * @param value 変換する文字列
+     * @return 修正UTF-8のバイト列
+     */
+    public static byte[] encode(String value) {
+        int length = value.length();
+        int byteLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                byteLength += 1;
+            } else if (c < 0x800) {
+                byteLength += 2;
+            } else {
+                byteLength += 3;
+            }
+        }
+
+        byte[] bytes = new byte[byteLength];
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    private static int continuationByte(byte[] bytes, int index) {
+        if (index >= bytes.length) {
+            throw new ClassFormatError("修正UTF-8のバイト列が途中で終わっています");
+        }
+        int b = bytes[index] & 0xFF;
+        if ((b & 0xC0) != 0x80) {
+            throw new ClassFormatError("不正な修正UTF-8の継続バイトです: 0x" + Integer.toHexString(b).toUpperCase() + " (位置 " + index + ")");
+        }
+        return b & 0x3F;
+    }
+}
@@ -0,0 +1,57 @@
+package javavm.classfile;
+
+/**
+ * クラスファイルの読み込み元の状態（サイズ、更新時刻、CRC-32）
+ *
+ * クラスアーカイブに格納したクラスが、読み込み元のファイルから変更されていないかの判定に使用します。
+ */
+public final class SourceStamp {
+    private final long size;
+    private final long lastModified;
+    private final int crc;
+
+    /**
+     * @param size クラスファイルのバイト数
+     * @param lastModified 更新時刻（ディレクトリ上のファイルはエポックミリ秒、JARのエントリはDOS形式の日時）
+     * @param crc クラスファイルの内容のCRC-32
+     */
+    public SourceStamp(long size, long lastModified, int crc) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.crc = crc;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getCrc() {
+        return crc;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SourceStamp)) {
+            return false;
+        }
+        SourceStamp other = (SourceStamp) obj;
+        return size == other.size && lastModified == other.lastModified && crc == other.crc;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(size) * 31 + Long.hashCode(lastModified) * 17 + crc;
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size + " lastModified=" + lastModified + " crc=" + Integer.toHexString(crc);
+    }
+}
@@ -0,0 +1,75 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * シンボルテーブルで一意化された名前（クラス名、メソッド名、記述子など）
+ *
+ * 同じバイト列を持つシンボルはVM全体で1つしか存在しないため、
+ * 同値判定は参照の比較（{@code ==}）で行えます。
+ * インスタンスは {@link SymbolTable} からのみ生成されます。
+ */
+public final class Symbol {
+    private final byte[] bytes;
+    private final String value;
+    private final int hash;
+
+    Symbol(byte[] bytes, String value, int hash) {
+        this.bytes = bytes;
+        this.value = value;
+        this.hash = hash;
+    }
+
+    /**
+     * 修正UTF-8でエンコードされたバイト長を返します。
+     * @return バイト長
+     */
+    public int byteLength() {
+        return bytes.length;
+    }
+
+    /**
+     * 指定位置のバイトを返します。
+     * @param index バイト位置
+     * @return バイト値
+     */
+    public byte byteAt(int index) {
+        return bytes[index];
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * デコード済みの文字列を返します。
+     * @return シンボルの文字列表現
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    /**
+     * 修正UTF-8のバイト列を返します。呼び出し側で変更してはいけません。
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * バッファ上のバイト列と内容が一致するかを判定します。
+     */
+    boolean contentEquals(ByteBuffer buffer, int offset, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
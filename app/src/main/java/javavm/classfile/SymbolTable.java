@@ -0,0 +1,175 @@
+package javavm.classfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * VM全体で共有されるシンボルテーブル
+ *
+ * 修正UTF-8のバイト列をキーに {@link Symbol} を一意化します。クラスファイルのバッファ上の
+ * バイト列をそのまま検索するため、既に登録済みの名前では一時的な文字列や配列を生成しません。
+ *
+ * <p>テーブルはハッシュ値で選択されるセグメントに分割されています。検索はロックを取らずに行い、
+ * 登録とリハッシュだけをセグメント単位で同期します。エントリは不変で、テーブル配列はvolatileな
+ * 参照を通して公開されるため、並行してクラスをロードするスレッドから安全に利用できます。</p>
+ */
+public final class SymbolTable {
+    private static final SymbolTable INSTANCE = new SymbolTable();
+
+    // セグメント数（2の累乗）
+    private static final int SEGMENT_COUNT = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments;
+
+    public SymbolTable() {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * VM全体で共有されるシンボルテーブルを返します。
+     * @return シンボルテーブル
+     */
+    public static SymbolTable getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * バッファ上の修正UTF-8バイト列に対応するシンボルを返します。未登録の場合は登録します。
+     * バッファの位置やリミットは変更しません。
+     * @param buffer バイト列を含むバッファ
+     * @param offset バイト列の開始位置（絶対位置）
+     * @param length バイト長
+     * @return 一意化されたシンボル
+     * @throws ClassFormatError 新規登録時にバイト列が修正UTF-8として不正な場合
+     */
+    public Symbol intern(ByteBuffer buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        return segmentFor(hash).intern(buffer, offset, length, hash);
+    }
+
+    /**
+     * 修正UTF-8バイト列に対応するシンボルを返します。未登録の場合は登録します。
+     * @param bytes 修正UTF-8のバイト列
+     * @return 一意化されたシンボル
+     * @throws ClassFormatError 新規登録時にバイト列が修正UTF-8として不正な場合
+     */
+    public Symbol intern(byte[] bytes) {
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * 文字列に対応するシンボルを返します。未登録の場合は登録します。
+     * @param value 文字列
+     * @return 一意化されたシンボル
+     */
+    public Symbol intern(String value) {
+        return intern(ModifiedUtf8.encode(value));
+    }
+
+    /**
+     * 登録されているシンボルの数を返します。
+     * @return シンボル数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        // 下位ビットはセグメント内のバケット選択に使うため、上位ビットでセグメントを選ぶ
+        return segments[(hash >>> 26) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        // 上位ビットにも下位ビットの影響を反映させる
+        return hash ^ (hash >>> 16) ^ (hash << 16);
+    }
+
+    /**
+     * ハッシュチェーンの要素（不変）
+     */
+    private static final class Entry {
+        final Symbol symbol;
+        final Entry next;
+
+        Entry(Symbol symbol, Entry next) {
+            this.symbol = symbol;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment {
+        private volatile Entry[] table = new Entry[INITIAL_SEGMENT_CAPACITY];
+        // thisで保護される
+        private int count;
+
+        Symbol intern(ByteBuffer buffer, int offset, int length, int hash) {
+            // ロックなしで検索する（見つからなかった場合のみロックを取って再検索する）
+            Symbol symbol = find(table, buffer, offset, length, hash);
+            if (symbol != null) {
+                return symbol;
+            }
+
+            synchronized (this) {
+                Entry[] current = table;
+                symbol = find(current, buffer, offset, length, hash);
+                if (symbol != null) {
+                    return symbol;
+                }
+
+                byte[] bytes = new byte[length];
+                buffer.get(offset, bytes);
+                symbol = new Symbol(bytes, ModifiedUtf8.decode(bytes), hash);
+
+                if (count + 1 > current.length - (current.length >>> 2)) {
+                    current = rehash(current);
+                }
+                int index = hash & (current.length - 1);
+                current[index] = new Entry(symbol, current[index]);
+                count++;
+                // volatile書き込みで新しいエントリを公開する
+                table = current;
+                return symbol;
+            }
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        private static Symbol find(Entry[] table, ByteBuffer buffer, int offset, int length, int hash) {
+            for (Entry entry = table[hash & (table.length - 1)]; entry != null; entry = entry.next) {
+                Symbol symbol = entry.symbol;
+                if (symbol.hashCode() == hash && symbol.contentEquals(buffer, offset, length)) {
+                    return symbol;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 2倍の大きさのテーブルを新たに作成します。既存のテーブルは変更しないため、
+         * 並行して検索中のスレッドは古いテーブルをそのまま辿れます。
+         */
+        private static Entry[] rehash(Entry[] oldTable) {
+            Entry[] newTable = new Entry[oldTable.length * 2];
+            for (Entry head : oldTable) {
+                for (Entry entry = head; entry != null; entry = entry.next) {
+                    int index = entry.symbol.hashCode() & (newTable.length - 1);
+                    newTable[index] = new Entry(entry.symbol, newTable[index]);
+                }
+            }
+            return newTable;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package javavm.classloader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javavm.classfile.ClassArchive;
+import javavm.classfile.ClassArchiveWriter;
+import javavm.classfile.ClassFile;
+import javavm.classfile.SourceStamp;
+import javavm.verifier.Verification;
+import javavm.verifier.VerificationCache;
+
+/**
+ * ディレクトリやクラスパスに含まれる多数のクラスファイルを並列に読み込み、レジストリへ登録するクラス
+ *
+ * 解析はフォーク・ジョインプールで並列に行います。1つのファイルの解析に失敗しても残りの処理は継続し、
+ * 失敗は {@link BulkLoadResult#getFailures()} に記録されます。同じ名前のクラスが複数見つかった場合は
+ * クラスパスの先頭に近いものが登録されるよう、解析後の登録はクラスパスの順序で行います。
+ *
+ * <p>バイトコードの検証（{@link javavm.verifier.TypeCheckingVerifier}）は、解析したワーカースレッドが続けて行います。
+ * 検証結果は {@link VerificationCache} に記録し、内容が変わらないクラスは再び検証しません。クラスアーカイブを使用する場合は、
+ * アーカイブに格納した検証結果も使用します。検証で保留したクラスの継承関係の制約は、登録の直前に、
+ * レジストリと今回読み込んだクラスで照合します。</p>
+ */
+public class BulkClassLoader {
+    // 1タスクがこれ以下のファイル数になるまで分割する
+    private static final int SPLIT_THRESHOLD = 8;
+
+    private final LoadedClassRegistry registry;
+    private final int parallelism;
+    private final VerificationCache verificationCache;
+
+    /**
+     * 利用可能なプロセッサ数と同じ並列度で読み込むローダーを生成します。
+     * @param registry 読み込んだクラスを登録するレジストリ
+     */
+    public BulkClassLoader(LoadedClassRegistry registry) {
+        this(registry, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 指定した並列度で読み込むローダーを生成します。検証結果はVM全体で共有するキャッシュに記録します。
+     * @param registry 読み込んだクラスを登録するレジストリ
+     * @param parallelism 解析に使用するスレッド数
+     * @throws IllegalArgumentException 並列度が1未満の場合
+     */
+    public BulkClassLoader(LoadedClassRegistry registry, int parallelism) {
+        this(registry, parallelism, VerificationCache.getInstance());
+    }
+
+    /**
+     * 指定した並列度と検証結果のキャッシュで読み込むローダーを生成します。
+     * @param registry 読み込んだクラスを登録するレジストリ
+     * @param parallelism 解析と検証に使用するスレッド数
+     * @param verificationCache 検証結果のキャッシュ。nullの場合はバイトコードを検証しない
+     * @throws IllegalArgumentException 並列度が1未満の場合
+     */
+    public BulkClassLoader(LoadedClassRegistry registry, int parallelism, VerificationCache verificationCache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("並列度は1以上である必要があります: " + parallelism);
+        }
+        this.registry = registry;
+        this.parallelism = parallelism;
+        this.verificationCache = verificationCache;
+    }
+
+    /**
+     * ディレクトリ以下のすべてのクラスファイルを読み込みます。
+     * @param directory 探索するディレクトリ
+     * @return ロード結果
+     * @throws IOException ディレクトリの探索に失敗した場合
+     */
+    public BulkLoadResult loadDirectory(Path directory) throws IOException {
+        return loadClasspath(List.of(directory));
+    }
+
+    /**
+     * クラスパスの各エントリに含まれるクラスファイルを読み込みます。
+     * エントリにはディレクトリ、JARファイル、またはクラスファイルを指定できます。
+     * @param classpath クラスパスのエントリ（優先順）
+     * @return ロード結果
+     * @throws IOException ディレクトリの探索やJARファイルの読み取りに失敗した場合
+     */
+    public BulkLoadResult loadClasspath(List<Path> classpath) throws IOException {
+        long start = System.nanoTime();
+        try (Classpath opened = Classpath.open(classpath)) {
+            return load(new ClasspathSource(opened), opened.getShadowedCount(), start);
+        }
+    }
+
+    /**
+     * 開いたクラスパスに含まれるすべてのクラスを読み込みます。
+     * @param classpath 読み込むクラスパス
+     * @return ロード結果
+     */
+    public BulkLoadResult load(Classpath classpath) {
+        return load(new ClasspathSource(classpath), classpath.getShadowedCount(), System.nanoTime());
+    }
+
+    /**
+     * クラスアーカイブを使用して、開いたクラスパスに含まれるすべてのクラスを読み込みます。
+     * 読み込み元が変更されていないクラスは解析せずにアーカイブから復元し、
+     * アーカイブにないクラスや変更されたクラスはクラスファイルを解析します。
+     * @param classpath 読み込むクラスパス
+     * @param archive 前回の起動時に作成したクラスアーカイブ
+     * @return ロード結果
+     */
+    public BulkLoadResult load(Classpath classpath, ClassArchive archive) {
+        return load(new ArchivedClasspathSource(classpath, archive), classpath.getShadowedCount(), System.nanoTime());
+    }
+
+    /**
+     * 開いたクラスパスに含まれるすべてのクラスを読み込み、登録したクラスをクラスアーカイブに書き出します。
+     * クラスの検証結果もアーカイブに格納し、検証に失敗したクラスは失敗した結果とともに格納します。
+     * 書き出したアーカイブは次回の起動時に {@link #load(Classpath, ClassArchive)} で使用できます。
+     * @param classpath 読み込むクラスパス
+     * @param archivePath 書き出すアーカイブファイルのパス
+     * @return ロード結果
+     * @throws IOException 読み込み元の状態の取得やアーカイブの書き込みに失敗した場合
+     */
+    public BulkLoadResult dumpArchive(Classpath classpath, Path archivePath) throws IOException {
+        List<ClassFile> archived = new ArrayList<>();
+        BulkLoadResult result = load(new ClasspathSource(classpath), classpath.getShadowedCount(), System.nanoTime(),
+                archived);
+        ClassArchiveWriter writer = new ClassArchiveWriter();
+        for (ClassFile classFile : archived) {
+            String className = classFile.getName().toString();
+            // ファイル名とクラス名が異なる単独のクラスファイルは次回の検索で見つからないため格納しない
+            if (!classpath.contains(className)) {
+                continue;
+            }
+            try {
+                writer.add(classFile, classpath.stamp(className),
+                        verificationCache == null ? null : verificationCache.toArchive(classFile));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        writer.write(archivePath);
+        return result;
+    }
+
+    /**
+     * 指定したクラスファイルを読み込みます。
+     * @param classFiles クラスファイルのパス（優先順）
+     * @return ロード結果
+     */
+    public BulkLoadResult loadFiles(List<Path> classFiles) {
+        return load(new FileSource(classFiles), 0, System.nanoTime());
+    }
+
+    private BulkLoadResult load(Source source, int shadowedCount, long start) {
+        return load(source, shadowedCount, start, null);
+    }
+
+    /**
+     * @param archived 登録したクラスと検証に失敗したクラスを追加するリスト。nullの場合は追加しない
+     */
+    private BulkLoadResult load(Source source, int shadowedCount, long start, List<ClassFile> archived) {
+        int count = source.size();
+        ClassFile[] parsed = new ClassFile[count];
+        Verification[] verifications = new Verification[count];
+        Throwable[] errors = new Throwable[count];
+
+        if (count > 0) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new ParseTask(source, verificationCache, parsed, verifications, errors, 0, count));
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        // 制約の照合では、登録済みのクラスを優先し、次に今回読み込んだクラスを探す
+        Map<String, ClassFile> batch = new HashMap<>();
+        if (verificationCache != null) {
+            for (int i = 0; i < count; i++) {
+                if (errors[i] == null) {
+                    batch.putIfAbsent(parsed[i].getName().toString(), parsed[i]);
+                }
+            }
+        }
+        Function<String, ClassFile> classes = name -> {
+            ClassFile classFile = registry.find(name);
+            return classFile != null ? classFile : batch.get(name);
+        };
+
+        // クラスパスの順序で登録し、先に現れたクラスを優先する
+        List<ClassFile> loaded = new ArrayList<>(count);
+        List<LoadFailure> failures = new ArrayList<>();
+        int duplicateCount = shadowedCount;
+        int verifiedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (errors[i] == null && verifications[i] != null) {
+                try {
+                    verifications[i].checkConstraints(classes);
+                    verifiedCount++;
+                } catch (VerifyError e) {
+                    errors[i] = e;
+                }
+            }
+            if (errors[i] != null) {
+                failures.add(new LoadFailure(source.path(i), source.className(i), errors[i]));
+                if (archived != null && parsed[i] != null && errors[i] instanceof VerifyError) {
+                    archived.add(parsed[i]);
+                }
+            } else if (registry.register(parsed[i]) == parsed[i]) {
+                loaded.add(parsed[i]);
+                if (archived != null) {
+                    archived.add(parsed[i]);
+                }
+            } else {
+                duplicateCount++;
+            }
+        }
+
+        return new BulkLoadResult(loaded, failures, duplicateCount, source.archivedCount(), verifiedCount,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * 読み込み対象の一覧
+     */
+    private interface Source {
+        int size();
+
+        ClassFile parse(int index) throws IOException, ClassNotFoundException;
+
+        Path path(int index);
+
+        String className(int index);
+
+        /**
+         * 検証結果を探すクラスアーカイブを返します。
+         * @return クラスアーカイブ。使用しない場合はnull
+         */
+        default ClassArchive archive() {
+            return null;
+        }
+
+        default int archivedCount() {
+            return 0;
+        }
+    }
+
+    private static final class FileSource implements Source {
+        private final List<Path> files;
+
+        FileSource(List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        public int size() {
+            return files.size();
+        }
+
+        @Override
+        public ClassFile parse(int index) throws IOException, ClassNotFoundException {
+            return Classpath.readClassFile(files.get(index));
+        }
+
+        @Override
+        public Path path(int index) {
+            return files.get(index);
+        }
+
+        @Override
+        public String className(int index) {
+            // ファイルを解析するまでクラス名は分からない
+            return null;
+        }
+    }
+
+    private static class ClasspathSource implements Source {
+        final Classpath classpath;
+        final List<String> classNames;
+
+        ClasspathSource(Classpath classpath) {
+            this.classpath = classpath;
+            this.classNames = classpath.classNames();
+        }
+
+        @Override
+        public int size() {
+            return classNames.size();
+        }
+
+        @Override
+        public ClassFile parse(int index) throws IOException, ClassNotFoundException {
+            return classpath.load(classNames.get(index));
+        }
+
+        @Override
+        public Path path(int index) {
+            return classpath.locate(classNames.get(index));
+        }
+
+        @Override
+        public String className(int index) {
+            return classNames.get(index);
+        }
+    }
+
+    /**
+     * 変更されていないクラスをクラスアーカイブから復元するクラスパス
+     */
+    private static final class ArchivedClasspathSource extends ClasspathSource {
+        private final ClassArchive archive;
+        private final LongAdder archived = new LongAdder();
+
+        ArchivedClasspathSource(Classpath classpath, ClassArchive archive) {
+            super(classpath);
+            this.archive = archive;
+        }
+
+        @Override
+        public ClassFile parse(int index) throws IOException, ClassNotFoundException {
+            String className = classNames.get(index);
+            SourceStamp stamp = archive.stamp(className);
+            if (stamp != null && classpath.isUnchanged(className, stamp)) {
+                try {
+                    ClassFile classFile = archive.load(className);
+                    archived.increment();
+                    return classFile;
+                } catch (ClassFormatError e) {
+                    // レコードが壊れている場合はクラスファイルを解析し直す
+                }
+            }
+            return super.parse(index);
+        }
+
+        @Override
+        public ClassArchive archive() {
+            return archive;
+        }
+
+        @Override
+        public int archivedCount() {
+            return archived.intValue();
+        }
+    }
+
+    /**
+     * 範囲を分割しながら並列に解析し、解析したクラスを続けて検証するタスク
+     */
+    // シリアライズしないため、フィールドの型はシリアライズ可能でなくてよい
+    @SuppressWarnings("serial")
+    private static final class ParseTask extends RecursiveAction {
+        private final Source source;
+        private final VerificationCache verificationCache;
+        private final ClassFile[] parsed;
+        private final Verification[] verifications;
+        private final Throwable[] errors;
+        private final int from;
+        private final int to;
+
+        ParseTask(Source source, VerificationCache verificationCache, ClassFile[] parsed, Verification[] verifications,
+                Throwable[] errors, int from, int to) {
+            this.source = source;
+            this.verificationCache = verificationCache;
+            this.parsed = parsed;
+            this.verifications = verifications;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        parsed[i] = source.parse(i);
+                        if (verificationCache != null) {
+                            verifications[i] = verificationCache.verify(parsed[i], source.archive());
+                        }
+                    } catch (ClassFormatError | VerifyError | ClassNotFoundException | IOException | RuntimeException e) {
+                        // 想定外の実行時例外もそのファイルの失敗として記録し、バッチの残りを続ける
+                        errors[i] = e;
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParseTask(source, verificationCache, parsed, verifications, errors, from, middle),
+                    new ParseTask(source, verificationCache, parsed, verifications, errors, middle, to));
+        }
+    }
+}
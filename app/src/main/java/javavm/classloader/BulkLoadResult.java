@@ -0,0 +1,76 @@
+package javavm.classloader;
+
+import java.util.Collections;
+import java.util.List;
+
+import javavm.classfile.ClassFile;
+
+/**
+ * 一括ロードの結果
+ */
+public final class BulkLoadResult {
+    private final List<ClassFile> loadedClasses;
+    private final List<LoadFailure> failures;
+    private final int duplicateCount;
+    private final int archivedCount;
+    private final int verifiedCount;
+    private final long elapsedNanos;
+
+    BulkLoadResult(List<ClassFile> loadedClasses, List<LoadFailure> failures, int duplicateCount,
+            int archivedCount, int verifiedCount, long elapsedNanos) {
+        this.loadedClasses = Collections.unmodifiableList(loadedClasses);
+        this.failures = Collections.unmodifiableList(failures);
+        this.duplicateCount = duplicateCount;
+        this.archivedCount = archivedCount;
+        this.verifiedCount = verifiedCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 今回のロードでレジストリに登録されたクラスを返します。
+     * @return 登録されたクラス（クラスパスの順序）
+     */
+    public List<ClassFile> getLoadedClasses() {
+        return loadedClasses;
+    }
+
+    /**
+     * 読み込めなかったファイルを返します。
+     * @return 失敗したファイルと原因（クラスパスの順序）
+     */
+    public List<LoadFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 同じ名前のクラスが既に登録されていたため登録されなかったクラスの数を返します。
+     * @return 重複したクラスの数
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * クラスファイルを解析せず、クラスアーカイブから復元したクラスの数を返します。
+     * @return アーカイブから復元したクラスの数
+     */
+    public int getArchivedCount() {
+        return archivedCount;
+    }
+
+    /**
+     * 検証に成功したクラスの数を返します。検証結果のキャッシュから得た結果を含みます。
+     * @return 検証に成功したクラスの数。検証しない場合は0
+     */
+    public int getVerifiedCount() {
+        return verifiedCount;
+    }
+
+    /**
+     * 探索から登録完了までにかかった時間を返します。
+     * @return 経過時間（ナノ秒）
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,21 @@
+package javavm.classloader;
+
+import java.io.IOException;
+
+import javavm.classfile.ClassFile;
+
+/**
+ * クラス名からクラスファイルを読み込む読み込み元
+ */
+@FunctionalInterface
+public interface ClassSource {
+    /**
+     * クラスを読み込みます。
+     * @param className 内部形式のクラス名（例: {@code java/lang/Object}）
+     * @return 読み込んだクラスファイル
+     * @throws ClassNotFoundException クラスが見つからない場合
+     * @throws IOException 読み込みに失敗した場合
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    ClassFile load(String className) throws ClassNotFoundException, IOException;
+}
@@ -0,0 +1,364 @@
+package javavm.classloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileReader;
+import javavm.classfile.ClassFileVisitor;
+import javavm.classfile.SourceStamp;
+import javavm.profile.LoadPhase;
+import javavm.profile.Profiler;
+
+/**
+ * ディレクトリとJARファイルからなるクラスパス
+ *
+ * 開いた時点ですべてのエントリを走査し、クラス名から格納場所への索引を1つのハッシュマップにまとめます。
+ * 複数のエントリに同じクラスがある場合は、クラスパスの先頭に近いものが索引に登録されます。
+ * このためクラスの検索はエントリ数によらずハッシュ検索1回で済みます。
+ *
+ * <p>JARの無圧縮エントリはメモリマップしたファイルのスライスとしてコピーせずに解析します。
+ * 圧縮エントリはプールしたバッファへ展開して解析し、解析後にバッファを再利用します。
+ * 索引はオープン後に変更されないため、複数のスレッドから同時にクラスを読み込めます。</p>
+ */
+public final class Classpath implements ClassSource, AutoCloseable {
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String JAR_FILE_SUFFIX = ".jar";
+
+    private final List<Path> entries;
+    private final Map<String, Location> index;
+    private final int shadowedCount;
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private Classpath(List<Path> entries, Map<String, Location> index, int shadowedCount) {
+        this.entries = entries;
+        this.index = index;
+        this.shadowedCount = shadowedCount;
+    }
+
+    /**
+     * クラスパスを開き、すべてのエントリを索引化します。
+     * @param entries ディレクトリまたはJARファイルのパス（優先順）
+     * @return 開いたクラスパス
+     * @throws IOException ディレクトリの走査やJARファイルの読み取りに失敗した場合
+     */
+    public static Classpath open(List<Path> entries) throws IOException {
+        Map<String, Location> index = new LinkedHashMap<>();
+        int shadowedCount = 0;
+
+        for (Path entry : entries) {
+            if (Files.isDirectory(entry)) {
+                for (Path file : listClassFiles(entry)) {
+                    if (index.putIfAbsent(classNameOf(entry, file), new Location(file, null, -1)) != null) {
+                        shadowedCount++;
+                    }
+                }
+            } else if (entry.toString().endsWith(JAR_FILE_SUFFIX)) {
+                JarIndex jar = JarIndex.open(entry);
+                for (int i = 0; i < jar.size(); i++) {
+                    if (index.putIfAbsent(jar.className(i), new Location(entry, jar, i)) != null) {
+                        shadowedCount++;
+                    }
+                }
+            } else if (Files.isRegularFile(entry) && entry.toString().endsWith(CLASS_FILE_SUFFIX)) {
+                // 単独のクラスファイルは名前を解析するまで分からないため、ファイル名をキーとする
+                String fileName = entry.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - CLASS_FILE_SUFFIX.length());
+                if (index.putIfAbsent(name, new Location(entry, null, -1)) != null) {
+                    shadowedCount++;
+                }
+            }
+        }
+
+        return new Classpath(List.copyOf(entries), index, shadowedCount);
+    }
+
+    /**
+     * クラスパスのエントリを返します。
+     * @return エントリの一覧
+     */
+    public List<Path> getEntries() {
+        return entries;
+    }
+
+    /**
+     * 索引に含まれるクラス名を、クラスパス上の出現順に返します。
+     * @return 内部形式のクラス名の一覧
+     */
+    public List<String> classNames() {
+        return Collections.unmodifiableList(new ArrayList<>(index.keySet()));
+    }
+
+    /**
+     * 索引に含まれるクラスの数を返します。
+     * @return クラス数
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 前方のエントリに同じ名前のクラスがあったため索引に登録されなかったクラスの数を返します。
+     * @return 隠されたクラスの数
+     */
+    public int getShadowedCount() {
+        return shadowedCount;
+    }
+
+    /**
+     * クラスが索引に含まれるかを返します。
+     * @param className 内部形式のクラス名
+     * @return 含まれる場合true
+     */
+    public boolean contains(String className) {
+        return index.containsKey(className);
+    }
+
+    /**
+     * クラスの格納場所を返します。
+     * @param className 内部形式のクラス名
+     * @return ディレクトリ上のクラスファイル、またはクラスを含むJARファイルのパス。見つからない場合はnull
+     */
+    public Path locate(String className) {
+        Location location = index.get(className);
+        return location != null ? location.path : null;
+    }
+
+    /**
+     * クラスを読み込みます。
+     * @param className 内部形式のクラス名（例: {@code java/lang/Object}）
+     * @return 読み込んだクラスファイル
+     * @throws ClassNotFoundException クラスがクラスパスに存在しない場合
+     * @throws IOException JARエントリの読み取りに失敗した場合
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    @Override
+    public ClassFile load(String className) throws ClassNotFoundException, IOException {
+        // 再利用するバッファは、バッファを参照しない即時モードで解析する
+        return read(className, (reader, pooled) -> reader.readClassFile(!pooled));
+    }
+
+    /**
+     * クラスファイルを走査し、構造ごとにビジターへ通知します。
+     * 圧縮エントリの展開に使用したバッファは走査後に再利用されるため、ビジターは
+     * {@link ClassFileVisitor#visitEnd()} の後に定数プールや属性の内容を参照してはいけません。
+     * @param className 内部形式のクラス名
+     * @param visitor 通知先のビジター
+     * @throws ClassNotFoundException クラスがクラスパスに存在しない場合
+     * @throws IOException JARエントリの読み取りに失敗した場合
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    public void visit(String className, ClassFileVisitor visitor) throws ClassNotFoundException, IOException {
+        read(className, (reader, pooled) -> {
+            reader.accept(visitor);
+            return null;
+        });
+    }
+
+    private <T> T read(String className, ReaderAction<T> action) throws ClassNotFoundException, IOException {
+        Location location = index.get(className);
+        if (location == null) {
+            throw new ClassNotFoundException("クラスが見つかりません: " + className);
+        }
+
+        if (location.jar == null) {
+            return read(location.path, className, action);
+        }
+
+        Profiler profiler = Profiler.getInstance();
+        long start = profiler.timestamp();
+        JarIndex jar = location.jar;
+        int entry = location.entry;
+        if (jar.method(entry) == JarIndex.METHOD_STORED) {
+            // マップしたバッファのスライスをそのまま解析する（コピーなし）
+            try (ClassFileReader reader = new ClassFileReader(jar.storedSlice(entry))) {
+                profiler.recordLoad(LoadPhase.READ, className, start);
+                return action.apply(reader, false);
+            }
+        }
+
+        Inflater inflater = acquireInflater();
+        ByteBuffer buffer = acquireBuffer(jar.uncompressedSize(entry));
+        try {
+            jar.inflate(entry, inflater, buffer);
+            profiler.recordLoad(LoadPhase.READ, className, start);
+            try (ClassFileReader reader = new ClassFileReader(buffer)) {
+                return action.apply(reader, true);
+            }
+        } finally {
+            buffers.offer(buffer);
+            inflaters.offer(inflater);
+        }
+    }
+
+    /**
+     * クラスの読み込み元の状態を返します。
+     * JARのエントリはセントラルディレクトリの値を使用し、ディレクトリ上のファイルは内容を読んでCRC-32を計算します。
+     * @param className 内部形式のクラス名
+     * @return 読み込み元の状態
+     * @throws ClassNotFoundException クラスがクラスパスに存在しない場合
+     * @throws IOException ファイルの読み取りに失敗した場合
+     */
+    public SourceStamp stamp(String className) throws ClassNotFoundException, IOException {
+        Location location = index.get(className);
+        if (location == null) {
+            throw new ClassNotFoundException("クラスが見つかりません: " + className);
+        }
+        if (location.jar != null) {
+            JarIndex jar = location.jar;
+            return new SourceStamp(jar.uncompressedSize(location.entry), jar.modifiedTime(location.entry), jar.crc(location.entry));
+        }
+        BasicFileAttributes attributes = Files.readAttributes(location.path, BasicFileAttributes.class);
+        return new SourceStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), crcOf(location.path));
+    }
+
+    /**
+     * クラスの読み込み元が、指定した状態から変更されていないかを判定します。
+     * サイズが一致する場合はCRC-32を比較し、内容が同じであれば更新時刻が異なっても変更なしとみなします。
+     * 更新時刻を保ったままの変更（{@code cp -p} や、タイムスタンプの精度より短い間隔のビルド）があるため、
+     * 更新時刻の一致だけでは変更なしとみなしません。
+     * @param className 内部形式のクラス名
+     * @param stamp 比較する状態（クラスアーカイブ作成時の状態）
+     * @return 変更されていない場合true。クラスがクラスパスに存在しない場合はfalse
+     * @throws IOException ファイルの読み取りに失敗した場合
+     */
+    public boolean isUnchanged(String className, SourceStamp stamp) throws IOException {
+        Location location = index.get(className);
+        if (location == null) {
+            return false;
+        }
+        if (location.jar != null) {
+            // JARのエントリはCRC-32もセントラルディレクトリから取得でき、内容を読む必要がない
+            JarIndex jar = location.jar;
+            return jar.uncompressedSize(location.entry) == stamp.getSize() && jar.crc(location.entry) == stamp.getCrc();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(location.path, BasicFileAttributes.class);
+        return attributes.size() == stamp.getSize() && crcOf(location.path) == stamp.getCrc();
+    }
+
+    /**
+     * プールしたInflaterを解放します。マップしたJARファイルは参照がなくなった時点で解放されます。
+     */
+    @Override
+    public void close() {
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        buffers.clear();
+    }
+
+    /**
+     * ファイルシステム上のクラスファイルを読み込みます。
+     * @param path クラスファイルのパス
+     * @return 読み込んだクラスファイル
+     * @throws ClassNotFoundException ファイルが存在しない場合
+     * @throws IOException ファイルの読み取りに失敗した場合
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     */
+    static ClassFile readClassFile(Path path) throws ClassNotFoundException, IOException {
+        return read(path, null, (reader, pooled) -> reader.readClassFile());
+    }
+
+    private static <T> T read(Path path, String className, ReaderAction<T> action) throws ClassNotFoundException, IOException {
+        Profiler profiler = Profiler.getInstance();
+        long start = profiler.timestamp();
+        ClassFileReader reader;
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            reader = new ClassFileReader(path.toString());
+        } else {
+            // jrt:/ などのファイルシステムはマップできないため一括で読み込む
+            reader = new ClassFileReader(Files.readAllBytes(path));
+        }
+        profiler.recordLoad(LoadPhase.READ, className, start);
+        try (reader) {
+            return action.apply(reader, false);
+        }
+    }
+
+    private static int crcOf(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(path));
+        return (int) crc.getValue();
+    }
+
+    private Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    /**
+     * 指定サイズ以上の容量を持つバッファをプールから取得します。
+     * 容量が足りないバッファは破棄し、2の累乗に切り上げた容量で作り直します。
+     */
+    private ByteBuffer acquireBuffer(int size) {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null && buffer.capacity() >= size) {
+            return buffer;
+        }
+        int capacity = Math.max(4096, Integer.highestOneBit(Math.max(size - 1, 1)) << 1);
+        return ByteBuffer.allocate(capacity);
+    }
+
+    private static List<Path> listClassFiles(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream
+                    .filter(path -> path.toString().endsWith(CLASS_FILE_SUFFIX))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * ディレクトリからの相対パスを内部形式のクラス名に変換します。
+     */
+    private static String classNameOf(Path root, Path file) {
+        Path relative = root.relativize(file);
+        StringBuilder name = new StringBuilder();
+        for (Path element : relative) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(element.toString());
+        }
+        return name.substring(0, name.length() - CLASS_FILE_SUFFIX.length());
+    }
+
+    /**
+     * リーダーに対する処理。pooledはリーダーのバッファが処理後に再利用される場合にtrue
+     */
+    private interface ReaderAction<T> {
+        T apply(ClassFileReader reader, boolean pooled);
+    }
+
+    /**
+     * クラスの格納場所（ディレクトリ上のファイル、またはJARファイル内のエントリ）
+     */
+    private static final class Location {
+        final Path path;
+        final JarIndex jar;
+        final int entry;
+
+        Location(Path path, JarIndex jar, int entry) {
+            this.path = path;
+            this.jar = jar;
+            this.entry = entry;
+        }
+    }
+}
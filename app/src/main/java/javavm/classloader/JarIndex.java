@@ -0,0 +1,281 @@
+package javavm.classloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * JARファイルをメモリマップし、セントラルディレクトリからクラスファイルのエントリを索引化するクラス
+ *
+ * JARファイルは開いた時点で一度だけ読み取り、クラス名からエントリ番号への索引を作成します。
+ * エントリの情報はエントリ番号を添字とする配列で保持します。
+ */
+final class JarIndex {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    // マルチリリースJARのバージョン別エントリなどはクラスパスの対象外とする
+    private static final String META_INF_PREFIX = "META-INF/";
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final String[] classNames;
+    private final int[] localHeaderOffsets;
+    private final int[] compressedSizes;
+    private final int[] uncompressedSizes;
+    private final byte[] methods;
+    private final int[] crcs;
+    private final int[] modifiedTimes;
+
+    private JarIndex(Path path, ByteBuffer buffer, String[] classNames, int[] localHeaderOffsets,
+            int[] compressedSizes, int[] uncompressedSizes, byte[] methods, int[] crcs, int[] modifiedTimes) {
+        this.path = path;
+        this.buffer = buffer;
+        this.classNames = classNames;
+        this.localHeaderOffsets = localHeaderOffsets;
+        this.compressedSizes = compressedSizes;
+        this.uncompressedSizes = uncompressedSizes;
+        this.methods = methods;
+        this.crcs = crcs;
+        this.modifiedTimes = modifiedTimes;
+    }
+
+    /**
+     * JARファイルを開き、セントラルディレクトリを読み取って索引を作成します。
+     * @param path JARファイルのパス
+     * @return 作成した索引
+     * @throws IOException ファイルを読み込めない場合、またはZIP形式が不正な場合
+     */
+    static JarIndex open(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("2GBを超えるJARファイルには対応していません: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int end = findEndOfCentralDirectory(buffer, path);
+        int entryCount = buffer.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64形式のJARファイルには対応していません: " + path);
+        }
+        if (directoryOffset > end) {
+            throw new ZipException("セントラルディレクトリの位置が不正です: " + path);
+        }
+
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        int[] offsets = new int[entryCount];
+        int[] compressed = new int[entryCount];
+        int[] uncompressed = new int[entryCount];
+        byte[] methods = new byte[entryCount];
+        int[] crcs = new int[entryCount];
+        int[] modifiedTimes = new int[entryCount];
+
+        int position = (int) directoryOffset;
+        int classCount = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > end || buffer.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("セントラルディレクトリが不正です: " + path);
+            }
+            int flags = buffer.getShort(position + 8) & 0xFFFF;
+            int method = buffer.getShort(position + 10) & 0xFFFF;
+            // 下位16ビットが時刻、上位16ビットが日付（DOS形式）
+            int modifiedTime = buffer.getInt(position + 12);
+            int crc = buffer.getInt(position + 16);
+            long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+            // 可変長の部分（名前、拡張フィールド、コメント）がセントラルディレクトリに収まることを確かめてから読み取る
+            if (position + (long) CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength > end
+                    || localHeaderOffset > directoryOffset) {
+                throw new ZipException("セントラルディレクトリが不正です: " + path);
+            }
+
+            String name = decodeName(buffer, position + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+            if (!name.endsWith(CLASS_FILE_SUFFIX) || name.startsWith(META_INF_PREFIX)) {
+                continue;
+            }
+            if ((flags & 0x1) != 0) {
+                throw new ZipException("暗号化されたエントリには対応していません: " + path + "!/" + name);
+            }
+            if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+                throw new ZipException("未対応の圧縮方式です: " + method + " (" + path + "!/" + name + ")");
+            }
+            if (compressedSize > Integer.MAX_VALUE || uncompressedSize > Integer.MAX_VALUE) {
+                throw new ZipException("エントリが大きすぎます: " + path + "!/" + name);
+            }
+
+            String className = name.substring(0, name.length() - CLASS_FILE_SUFFIX.length());
+            // 同じ名前のエントリが複数ある場合は最初のものを使用する
+            if (positions.putIfAbsent(className, classCount) == null) {
+                offsets[classCount] = (int) localHeaderOffset;
+                compressed[classCount] = (int) compressedSize;
+                uncompressed[classCount] = (int) uncompressedSize;
+                methods[classCount] = (byte) method;
+                crcs[classCount] = crc;
+                modifiedTimes[classCount] = modifiedTime;
+                classCount++;
+            }
+        }
+
+        String[] classNames = positions.keySet().toArray(new String[0]);
+        return new JarIndex(path, buffer, classNames,
+                trim(offsets, classCount), trim(compressed, classCount), trim(uncompressed, classCount),
+                Arrays.copyOf(methods, classCount), trim(crcs, classCount), trim(modifiedTimes, classCount));
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * 索引に含まれるクラス数を返します。
+     */
+    int size() {
+        return classNames.length;
+    }
+
+    /**
+     * エントリ番号に対応するクラス名を返します。
+     */
+    String className(int entry) {
+        return classNames[entry];
+    }
+
+    /**
+     * エントリの圧縮方式を返します。
+     */
+    int method(int entry) {
+        return methods[entry];
+    }
+
+    /**
+     * 展開後のサイズを返します。
+     */
+    int uncompressedSize(int entry) {
+        return uncompressedSizes[entry];
+    }
+
+    /**
+     * セントラルディレクトリに記録された、展開後の内容のCRC-32を返します。
+     */
+    int crc(int entry) {
+        return crcs[entry];
+    }
+
+    /**
+     * セントラルディレクトリに記録されたDOS形式の更新日時を返します。
+     */
+    int modifiedTime(int entry) {
+        return modifiedTimes[entry];
+    }
+
+    /**
+     * 無圧縮（STORED）エントリの内容を、マップしたバッファのスライスとしてコピーせずに返します。
+     * @param entry エントリ番号
+     * @return エントリの内容を参照する読み取り専用バッファ
+     * @throws ZipException ローカルヘッダが不正な場合
+     */
+    ByteBuffer storedSlice(int entry) throws ZipException {
+        int start = dataOffset(entry);
+        return buffer.slice(start, uncompressedSizes[entry]).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * 圧縮（DEFLATED）エントリを展開し、target の先頭から書き込みます。
+     * 書き込み後の target は位置0、リミットが展開後のサイズになります。
+     * @param entry エントリ番号
+     * @param inflater 使用するInflater（nowrapモード）。呼び出し前にリセットされます。
+     * @param target 展開先のバッファ。展開後のサイズ以上の容量が必要です。
+     * @throws ZipException 圧縮データが不正な場合
+     */
+    void inflate(int entry, Inflater inflater, ByteBuffer target) throws ZipException {
+        int start = dataOffset(entry);
+        int size = uncompressedSizes[entry];
+        inflater.reset();
+        inflater.setInput(buffer.slice(start, compressedSizes[entry]));
+        target.clear().limit(size);
+        try {
+            while (target.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(target) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("圧縮データが不正です: " + path + "!/" + classNames[entry] + CLASS_FILE_SUFFIX + " (" + e.getMessage() + ")");
+        }
+        if (target.hasRemaining()) {
+            throw new ZipException("展開後のサイズが一致しません: " + path + "!/" + classNames[entry] + CLASS_FILE_SUFFIX);
+        }
+        target.flip();
+    }
+
+    /**
+     * ローカルヘッダを読み取り、エントリのデータ開始位置を返します。
+     */
+    private int dataOffset(int entry) throws ZipException {
+        int header = localHeaderOffsets[entry];
+        if (header + LOCAL_HEADER_SIZE > buffer.limit() || buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("ローカルヘッダが不正です: " + path + "!/" + classNames[entry] + CLASS_FILE_SUFFIX);
+        }
+        int nameLength = buffer.getShort(header + 26) & 0xFFFF;
+        int extraLength = buffer.getShort(header + 28) & 0xFFFF;
+        int start = header + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        int length = methods[entry] == METHOD_STORED ? uncompressedSizes[entry] : compressedSizes[entry];
+        if (start + (long) length > buffer.limit()) {
+            throw new ZipException("エントリのデータがファイルの末尾を超えています: " + path + "!/" + classNames[entry] + CLASS_FILE_SUFFIX);
+        }
+        return start;
+    }
+
+    /**
+     * ファイル末尾からEnd of Central Directoryレコードを探します。
+     */
+    private static int findEndOfCentralDirectory(ByteBuffer buffer, Path path) throws ZipException {
+        int limit = buffer.limit();
+        int lowest = Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_LENGTH);
+        for (int position = limit - END_OF_CENTRAL_DIRECTORY_SIZE; position >= lowest; position--) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new ZipException("JARファイルの形式が不正です（End of Central Directoryが見つかりません）: " + path);
+    }
+
+    private static String decodeName(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] trim(int[] values, int length) {
+        return values.length == length ? values : Arrays.copyOf(values, length);
+    }
+}
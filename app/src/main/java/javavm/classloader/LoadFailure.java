@@ -0,0 +1,47 @@
+package javavm.classloader;
+
+import java.nio.file.Path;
+
+/**
+ * 一括ロード中に読み込めなかったクラスファイルとその原因
+ */
+public final class LoadFailure {
+    private final Path path;
+    private final String className;
+    private final Throwable cause;
+
+    public LoadFailure(Path path, String className, Throwable cause) {
+        this.path = path;
+        this.className = className;
+        this.cause = cause;
+    }
+
+    /**
+     * 読み込めなかったクラスファイル、またはそのクラスを含むJARファイルのパスを返します。
+     * @return パス
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 読み込めなかったクラスの名前を返します。
+     * @return 内部形式のクラス名。クラスファイルを直接指定した場合はnull
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * 読み込みに失敗した原因を返します。
+     * @return ClassFormatError、VerifyError、ClassNotFoundException、IOExceptionのいずれか
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return (className != null ? className + " (" + path + ")" : path.toString()) + ": " + cause;
+    }
+}
@@ -0,0 +1,75 @@
+package javavm.classloader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.Symbol;
+import javavm.classfile.SymbolTable;
+
+/**
+ * ロード済みクラスを名前で管理するレジストリ
+ *
+ * 複数のスレッドから同時に登録・検索できます。同じ名前のクラスは最初に登録されたものが有効です。
+ */
+public class LoadedClassRegistry {
+    private final ConcurrentMap<Symbol, ClassFile> classes = new ConcurrentHashMap<>();
+
+    /**
+     * クラスを登録します。同じ名前のクラスが既に登録されている場合は何もしません。
+     * @param classFile 登録するクラス
+     * @return 登録されているクラス（既に登録済みだった場合はそのクラス）
+     */
+    public ClassFile register(ClassFile classFile) {
+        ClassFile existing = classes.putIfAbsent(classFile.getName(), classFile);
+        return existing != null ? existing : classFile;
+    }
+
+    /**
+     * 名前からクラスを検索します。
+     * @param name 内部形式のクラス名のシンボル
+     * @return 登録されているクラス。未登録の場合はnull
+     */
+    public ClassFile find(Symbol name) {
+        return classes.get(name);
+    }
+
+    /**
+     * 名前からクラスを検索します。
+     * @param name 内部形式のクラス名（例: {@code java/lang/Object}）
+     * @return 登録されているクラス。未登録の場合はnull
+     */
+    public ClassFile find(String name) {
+        return find(SymbolTable.getInstance().intern(name));
+    }
+
+    /**
+     * 登録されているクラスの数を返します。
+     * @return クラス数
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * 登録されているクラスのメソッドのうち、Code属性を一度もデコードしていない（一度も実行されていない）メソッドの数を返します。
+     * @return デコードしていないメソッドの数（呼び出し時点の値）
+     */
+    public int getDeferredCodeCount() {
+        int count = 0;
+        for (ClassFile classFile : classes.values()) {
+            count += classFile.getDeferredCodeCount();
+        }
+        return count;
+    }
+
+    /**
+     * 登録されているクラスの一覧を返します。
+     * @return クラスの一覧（呼び出し時点のスナップショット）
+     */
+    public List<ClassFile> classes() {
+        return new ArrayList<>(classes.values());
+    }
+}
@@ -0,0 +1,758 @@
+package javavm.execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javavm.classfile.CodeAttribute;
+import javavm.classfile.ConstantInfo;
+import javavm.classfile.ConstantPool;
+import javavm.classfile.Symbol;
+
+/**
+ * メソッドのバイトコードを事前デコードし、{@link DecodedCode} の命令列へ変換するクラス
+ *
+ * バイトコードを先頭から1回走査して命令列を出力し、分岐先は走査後にバイトコード上のオフセットから
+ * 命令位置へ置き換えます。条件分岐とswitchの後方への分岐先は、命令列の末尾に追加したgotoを経由させます
+ * （インタプリタはgotoとメソッドの呼び出しでGCの停止要求を確認するため、ループが必ず停止点を通るようにする）。分岐先が命令の境界でない場合やローカル変数の番号が範囲外の場合は
+ * デコード時に {@link VerifyError} を送出するため、インタプリタはこれらを検査しません。
+ *
+ * <p>synchronizedメソッドは、javacがsynchronized文に出力するものと同じ命令列に展開します。入口でロックするオブジェクト
+ * （インスタンスメソッドはthis、staticメソッドはクラス）をmax_localsの位置に追加したローカル変数に保存してmonitorenterを実行し、
+ * 各return命令の前と、メソッド全体を範囲とするすべての例外を捕捉するハンドラ（例外表の最後に追加する）でmonitorexitを実行します。
+ * そのため、インタプリタはメソッドの呼び出しと戻りでロックを扱いません。</p>
+ *
+ * <p>最後に、頻出する命令の並びの先頭をスーパー命令に書き換えます（{@link DecodedOpcode} を参照）。並びはベンチマークの
+ * プログラムで実行回数を数えた隣接する命令の組から選んだもので、インタプリタのディスパッチの回数を減らします。
+ * システムプロパティ {@code javavm.superinstructions} に {@code false} を指定すると書き換えません。</p>
+ */
+final class CodeDecoder {
+    /** スーパー命令への書き換えを無効にする場合に {@code false} を指定するシステムプロパティ */
+    static final String SUPERINSTRUCTIONS_PROPERTY = "javavm.superinstructions";
+
+    private static volatile boolean superinstructions = !"false".equals(System.getProperty(SUPERINSTRUCTIONS_PROPERTY));
+
+    private final RuntimeMethod method;
+    private final ConstantPool constantPool;
+    private final byte[] code;
+    private final int maxLocals;
+    // synchronizedメソッドでロックするオブジェクトを保存するローカル変数。synchronizedメソッドでない場合は-1
+    private final int lockLocal;
+    // バイトコード上のオフセットから命令位置への対応（命令の先頭でない位置は-1）
+    private final int[] indexOf;
+    private final List<Object> constants = new ArrayList<>();
+    private int[] output;
+    private int length;
+    // 分岐先のオフセットを格納した命令列上の位置と、その分岐命令の命令位置
+    private int[] branches = new int[16];
+    private int[] branchSources = new int[16];
+    private int branchCount;
+    // デコード中の命令の命令位置
+    private int current;
+
+    private CodeDecoder(RuntimeMethod method, CodeAttribute codeAttribute) {
+        this.method = method;
+        this.constantPool = method.getOwner().getClassFile().getConstantPool();
+        this.code = codeAttribute.getCode();
+        this.maxLocals = codeAttribute.getMaxLocals();
+        this.lockLocal = method.isSynchronized() ? maxLocals : -1;
+        this.indexOf = new int[code.length + 1];
+        Arrays.fill(indexOf, -1);
+        this.output = new int[code.length + 8];
+    }
+
+    /**
+     * メソッドのバイトコードをデコードします。
+     * @param method デコードするメソッド
+     * @param codeAttribute メソッドのCode属性
+     * @return デコード結果
+     * @throws VerifyError バイトコードが不正な場合
+     */
+    static DecodedCode decode(RuntimeMethod method, CodeAttribute codeAttribute) {
+        return new CodeDecoder(method, codeAttribute).decode(codeAttribute);
+    }
+
+    /**
+     * スーパー命令に書き換えるかどうかを返します。
+     */
+    static boolean isSuperinstructions() {
+        return superinstructions;
+    }
+
+    /**
+     * スーパー命令に書き換えるかどうかを変更します。変更後にデコードする命令列と、変更後に書き換えるクイック命令に適用します。
+     */
+    static void setSuperinstructions(boolean enabled) {
+        superinstructions = enabled;
+    }
+
+    /**
+     * 組み込みメソッドを呼び出す命令列を作ります。
+     * @param method 組み込みメソッドで実行するメソッド
+     * @param intrinsic 組み込みメソッド
+     * @return 組み込みメソッドを呼び出してから戻り値の型のreturn命令を実行する命令列
+     */
+    static DecodedCode decodeIntrinsic(RuntimeMethod method, Intrinsic intrinsic) {
+        int returnOpcode;
+        switch (method.getDescriptor().getReturnType()) {
+            case 'V':
+                returnOpcode = Opcode.RETURN;
+                break;
+            case 'J':
+            case 'D':
+                returnOpcode = Opcode.LRETURN;
+                break;
+            case 'L':
+            case '[':
+                returnOpcode = Opcode.ARETURN;
+                break;
+            default:
+                returnOpcode = Opcode.IRETURN;
+                break;
+        }
+        int[] instructions = {DecodedOpcode.INVOKE_INTRINSIC, 0, returnOpcode};
+        int[] bytecodeIndexes = {-1, -1, -1};
+        return new DecodedCode(method, instructions, new Object[] {intrinsic}, method.getArgumentSlots(), 2,
+                new int[0], new Symbol[0], bytecodeIndexes);
+    }
+
+    private DecodedCode decode(CodeAttribute codeAttribute) {
+        if (lockLocal >= 0) {
+            // ロックするオブジェクトを保存してからロックする
+            if (method.isStatic()) {
+                constants.add(method.getOwner());
+                emit(DecodedOpcode.ACONST, constants.size() - 1);
+            } else {
+                emit(Opcode.ALOAD, 0);
+            }
+            emit(Opcode.ASTORE, lockLocal);
+            emit(Opcode.ALOAD, lockLocal);
+            emit(Opcode.MONITORENTER);
+        }
+        int bodyStart = length;
+        int bytecodeIndex = 0;
+        int lastOpcode = Opcode.NOP;
+        while (bytecodeIndex < code.length) {
+            indexOf[bytecodeIndex] = length;
+            current = length;
+            int opcode = u1(bytecodeIndex);
+            // wideは修飾した命令で判定する
+            lastOpcode = opcode == Opcode.WIDE ? u1(bytecodeIndex + 1) : opcode;
+            bytecodeIndex = decodeInstruction(bytecodeIndex, opcode);
+        }
+        if (bytecodeIndex != code.length) {
+            throw verifyError("最後の命令がバイトコードの末尾を超えています");
+        }
+        if (!endsFlow(lastOpcode)) {
+            throw verifyError("バイトコードの末尾を超えて実行が継続します");
+        }
+        indexOf[code.length] = length;
+        int end = length;
+
+        for (int i = 0; i < branchCount; i++) {
+            int target = instructionAt(output[branches[i]]);
+            if (target <= branchSources[i] && output[branchSources[i]] != Opcode.GOTO) {
+                // 後方への条件分岐はGCの停止点を持つgotoを経由させる（gotoだけが停止点を確認する）
+                output[branches[i]] = length;
+                emit(Opcode.GOTO, target);
+            } else {
+                output[branches[i]] = target;
+            }
+        }
+
+        int handlerCount = codeAttribute.getExceptionTableLength();
+        int[] handlers = new int[(handlerCount + (lockLocal >= 0 ? 1 : 0)) * 3];
+        Symbol[] catchTypes = new Symbol[handlers.length / 3];
+        for (int i = 0; i < handlerCount; i++) {
+            int startPc = codeAttribute.getStartPc(i);
+            int endPc = codeAttribute.getEndPc(i);
+            if (startPc >= endPc) {
+                throw verifyError("例外ハンドラの範囲が不正です: " + startPc + "-" + endPc);
+            }
+            handlers[i * 3] = instructionAt(startPc);
+            handlers[i * 3 + 1] = endPc == code.length ? end : instructionAt(endPc);
+            handlers[i * 3 + 2] = instructionAt(codeAttribute.getHandlerPc(i));
+            int catchType = codeAttribute.getCatchType(i);
+            catchTypes[i] = catchType == 0 ? null : constantPool.classNameSymbol(catchType);
+        }
+        int maxStack = codeAttribute.getMaxStack();
+        if (lockLocal >= 0) {
+            // メソッドから出ていく例外を捕捉してロックを解放し、投げ直す
+            handlers[handlerCount * 3] = bodyStart;
+            handlers[handlerCount * 3 + 1] = end;
+            handlers[handlerCount * 3 + 2] = length;
+            emit(Opcode.ALOAD, lockLocal);
+            emit(Opcode.MONITOREXIT);
+            emit(Opcode.ATHROW);
+            // return命令の前では戻り値の上に、ハンドラでは例外の上にロックするオブジェクトを積む
+            maxStack = Math.max(maxStack + 1, 2);
+        }
+
+        if (superinstructions) {
+            fuse();
+        }
+
+        int[] bytecodeIndexes = new int[length];
+        Arrays.fill(bytecodeIndexes, -1);
+        for (int i = 0; i < code.length; i++) {
+            if (indexOf[i] >= 0) {
+                bytecodeIndexes[indexOf[i]] = i;
+            }
+        }
+
+        return new DecodedCode(method, Arrays.copyOf(output, length), constants.toArray(),
+                lockLocal >= 0 ? maxLocals + 1 : maxLocals, maxStack, handlers, catchTypes, bytecodeIndexes);
+    }
+
+    /**
+     * バイトコードの命令に対応する命令を先頭から順にたどり、隣接する並びの先頭をスーパー命令に書き換えます。
+     * 書き換えた並びの後続の命令からは新しい並びを始めません。
+     */
+    private void fuse() {
+        int[] starts = new int[code.length];
+        int count = 0;
+        for (int i = 0; i < code.length; i++) {
+            if (indexOf[i] >= 0) {
+                starts[count++] = indexOf[i];
+            }
+        }
+        int i = 0;
+        while (i < count - 1) {
+            int pc = starts[i];
+            int next = starts[i + 1];
+            int fused = -1;
+            int fusedCount = 2;
+            switch (output[pc]) {
+                case Opcode.ILOAD:
+                    if (next != pc + 2) {
+                        break;
+                    }
+                    if (output[next] == Opcode.ILOAD) {
+                        if (i + 2 < count && starts[i + 2] == next + 2 && output[next + 2] == Opcode.IADD) {
+                            fused = DecodedOpcode.ILOAD_ILOAD_IADD;
+                            fusedCount = 3;
+                        } else {
+                            fused = DecodedOpcode.ILOAD_ILOAD;
+                        }
+                    } else if (output[next] == DecodedOpcode.ICONST) {
+                        fused = DecodedOpcode.ILOAD_ICONST;
+                    }
+                    break;
+                case Opcode.ALOAD:
+                    if (next == pc + 2 && output[next] == Opcode.ILOAD) {
+                        fused = DecodedOpcode.ALOAD_ILOAD;
+                    }
+                    break;
+                case Opcode.IINC:
+                    if (next == pc + 3 && output[next] == Opcode.GOTO) {
+                        fused = DecodedOpcode.IINC_GOTO;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (fused >= 0) {
+                output[pc] = fused;
+                i += fusedCount;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 1命令をデコードして命令列へ出力し、次の命令のオフセットを返します。
+     */
+    private int decodeInstruction(int bytecodeIndex, int opcode) {
+        switch (opcode) {
+            case Opcode.ACONST_NULL:
+            case Opcode.IALOAD:
+            case Opcode.LALOAD:
+            case Opcode.FALOAD:
+            case Opcode.DALOAD:
+            case Opcode.AALOAD:
+            case Opcode.BALOAD:
+            case Opcode.CALOAD:
+            case Opcode.SALOAD:
+            case Opcode.IASTORE:
+            case Opcode.LASTORE:
+            case Opcode.FASTORE:
+            case Opcode.DASTORE:
+            case Opcode.AASTORE:
+            case Opcode.BASTORE:
+            case Opcode.CASTORE:
+            case Opcode.SASTORE:
+            case Opcode.POP:
+            case Opcode.POP2:
+            case Opcode.DUP:
+            case Opcode.DUP_X1:
+            case Opcode.DUP_X2:
+            case Opcode.DUP2:
+            case Opcode.DUP2_X1:
+            case Opcode.DUP2_X2:
+            case Opcode.SWAP:
+            case Opcode.ARRAYLENGTH:
+            case Opcode.ATHROW:
+            case Opcode.MONITORENTER:
+            case Opcode.MONITOREXIT:
+                emit(opcode);
+                return bytecodeIndex + 1;
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+                emitReturn(opcode);
+                return bytecodeIndex + 1;
+            case Opcode.NOP:
+                // 何もしない命令は出力しない
+                return bytecodeIndex + 1;
+            case Opcode.ICONST_M1:
+            case Opcode.ICONST_0:
+            case Opcode.ICONST_1:
+            case Opcode.ICONST_2:
+            case Opcode.ICONST_3:
+            case Opcode.ICONST_4:
+            case Opcode.ICONST_5:
+                emit(DecodedOpcode.ICONST, opcode - Opcode.ICONST_0);
+                return bytecodeIndex + 1;
+            case Opcode.LCONST_0:
+            case Opcode.LCONST_1:
+                emitLong(opcode - Opcode.LCONST_0);
+                return bytecodeIndex + 1;
+            case Opcode.FCONST_0:
+            case Opcode.FCONST_1:
+            case Opcode.FCONST_2:
+                emit(DecodedOpcode.ICONST, Float.floatToRawIntBits(opcode - Opcode.FCONST_0));
+                return bytecodeIndex + 1;
+            case Opcode.DCONST_0:
+            case Opcode.DCONST_1:
+                emitLong(Double.doubleToRawLongBits(opcode - Opcode.DCONST_0));
+                return bytecodeIndex + 1;
+            case Opcode.BIPUSH:
+                emit(DecodedOpcode.ICONST, (byte) u1(bytecodeIndex + 1));
+                return bytecodeIndex + 2;
+            case Opcode.SIPUSH:
+                emit(DecodedOpcode.ICONST, s2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.LDC:
+                emitConstant(u1(bytecodeIndex + 1), opcode);
+                return bytecodeIndex + 2;
+            case Opcode.LDC_W:
+                emitConstant(u2(bytecodeIndex + 1), opcode);
+                return bytecodeIndex + 3;
+            case Opcode.LDC2_W:
+                emitWideConstant(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.ILOAD:
+            case Opcode.FLOAD:
+                emitLocal(Opcode.ILOAD, u1(bytecodeIndex + 1), 1);
+                return bytecodeIndex + 2;
+            case Opcode.LLOAD:
+            case Opcode.DLOAD:
+                emitLocal(Opcode.LLOAD, u1(bytecodeIndex + 1), 2);
+                return bytecodeIndex + 2;
+            case Opcode.ALOAD:
+                emitLocal(Opcode.ALOAD, u1(bytecodeIndex + 1), 1);
+                return bytecodeIndex + 2;
+            case Opcode.ISTORE:
+            case Opcode.FSTORE:
+                emitLocal(Opcode.ISTORE, u1(bytecodeIndex + 1), 1);
+                return bytecodeIndex + 2;
+            case Opcode.LSTORE:
+            case Opcode.DSTORE:
+                emitLocal(Opcode.LSTORE, u1(bytecodeIndex + 1), 2);
+                return bytecodeIndex + 2;
+            case Opcode.ASTORE:
+                emitLocal(Opcode.ASTORE, u1(bytecodeIndex + 1), 1);
+                return bytecodeIndex + 2;
+            case Opcode.ILOAD_0:
+            case Opcode.ILOAD_1:
+            case Opcode.ILOAD_2:
+            case Opcode.ILOAD_3:
+                emitLocal(Opcode.ILOAD, opcode - Opcode.ILOAD_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.FLOAD_0:
+            case Opcode.FLOAD_1:
+            case Opcode.FLOAD_2:
+            case Opcode.FLOAD_3:
+                emitLocal(Opcode.ILOAD, opcode - Opcode.FLOAD_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.LLOAD_0:
+            case Opcode.LLOAD_1:
+            case Opcode.LLOAD_2:
+            case Opcode.LLOAD_3:
+                emitLocal(Opcode.LLOAD, opcode - Opcode.LLOAD_0, 2);
+                return bytecodeIndex + 1;
+            case Opcode.DLOAD_0:
+            case Opcode.DLOAD_1:
+            case Opcode.DLOAD_2:
+            case Opcode.DLOAD_3:
+                emitLocal(Opcode.LLOAD, opcode - Opcode.DLOAD_0, 2);
+                return bytecodeIndex + 1;
+            case Opcode.ALOAD_0:
+            case Opcode.ALOAD_1:
+            case Opcode.ALOAD_2:
+            case Opcode.ALOAD_3:
+                emitLocal(Opcode.ALOAD, opcode - Opcode.ALOAD_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.ISTORE_0:
+            case Opcode.ISTORE_1:
+            case Opcode.ISTORE_2:
+            case Opcode.ISTORE_3:
+                emitLocal(Opcode.ISTORE, opcode - Opcode.ISTORE_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.FSTORE_0:
+            case Opcode.FSTORE_1:
+            case Opcode.FSTORE_2:
+            case Opcode.FSTORE_3:
+                emitLocal(Opcode.ISTORE, opcode - Opcode.FSTORE_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.LSTORE_0:
+            case Opcode.LSTORE_1:
+            case Opcode.LSTORE_2:
+            case Opcode.LSTORE_3:
+                emitLocal(Opcode.LSTORE, opcode - Opcode.LSTORE_0, 2);
+                return bytecodeIndex + 1;
+            case Opcode.DSTORE_0:
+            case Opcode.DSTORE_1:
+            case Opcode.DSTORE_2:
+            case Opcode.DSTORE_3:
+                emitLocal(Opcode.LSTORE, opcode - Opcode.DSTORE_0, 2);
+                return bytecodeIndex + 1;
+            case Opcode.ASTORE_0:
+            case Opcode.ASTORE_1:
+            case Opcode.ASTORE_2:
+            case Opcode.ASTORE_3:
+                emitLocal(Opcode.ASTORE, opcode - Opcode.ASTORE_0, 1);
+                return bytecodeIndex + 1;
+            case Opcode.IINC:
+                emitLocal(Opcode.IINC, u1(bytecodeIndex + 1), 1);
+                emit((byte) u1(bytecodeIndex + 2));
+                return bytecodeIndex + 3;
+            case Opcode.FRETURN:
+                emitReturn(Opcode.IRETURN);
+                return bytecodeIndex + 1;
+            case Opcode.DRETURN:
+                emitReturn(Opcode.LRETURN);
+                return bytecodeIndex + 1;
+            case Opcode.IFEQ:
+            case Opcode.IFNE:
+            case Opcode.IFLT:
+            case Opcode.IFGE:
+            case Opcode.IFGT:
+            case Opcode.IFLE:
+            case Opcode.IF_ICMPEQ:
+            case Opcode.IF_ICMPNE:
+            case Opcode.IF_ICMPLT:
+            case Opcode.IF_ICMPGE:
+            case Opcode.IF_ICMPGT:
+            case Opcode.IF_ICMPLE:
+            case Opcode.IF_ACMPEQ:
+            case Opcode.IF_ACMPNE:
+            case Opcode.GOTO:
+            case Opcode.IFNULL:
+            case Opcode.IFNONNULL:
+                emit(opcode);
+                emitBranch(bytecodeIndex + s2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.GOTO_W:
+                emit(Opcode.GOTO);
+                emitBranch(bytecodeIndex + s4(bytecodeIndex + 1));
+                return bytecodeIndex + 5;
+            case Opcode.TABLESWITCH:
+                return decodeTableSwitch(bytecodeIndex);
+            case Opcode.LOOKUPSWITCH:
+                return decodeLookupSwitch(bytecodeIndex);
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+                constants.add(null);
+                emit(opcode, constants.size() - 1);
+                emit(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+                emit(opcode, DecodedOpcode.UNRESOLVED);
+                emit(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.NEW:
+                constantPool.classNameIndex(u2(bytecodeIndex + 1));
+                constants.add(null);
+                emit(Opcode.NEW, constants.size() - 1);
+                emit(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.NEWARRAY:
+                int elementType = u1(bytecodeIndex + 1);
+                if (elementType < Interpreter.T_BOOLEAN || elementType > Interpreter.T_LONG) {
+                    throw verifyError("newarrayの要素型が不正です: " + elementType);
+                }
+                emit(Opcode.NEWARRAY, elementType);
+                return bytecodeIndex + 2;
+            case Opcode.ANEWARRAY:
+                constantPool.classNameIndex(u2(bytecodeIndex + 1));
+                emit(Opcode.ANEWARRAY, u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.WIDE:
+                return decodeWide(bytecodeIndex);
+            case Opcode.INVOKEINTERFACE:
+                if (u1(bytecodeIndex + 3) == 0 || u1(bytecodeIndex + 4) != 0) {
+                    throw verifyError("invokeinterfaceのオペランドが不正です");
+                }
+                constants.add(null);
+                emit(Opcode.INVOKEINTERFACE, constants.size() - 1);
+                emit(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 5;
+            case Opcode.CHECKCAST:
+            case Opcode.INSTANCEOF:
+                constantPool.classNameIndex(u2(bytecodeIndex + 1));
+                constants.add(null);
+                emit(opcode, constants.size() - 1);
+                emit(u2(bytecodeIndex + 1));
+                return bytecodeIndex + 3;
+            case Opcode.JSR:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                return bytecodeIndex + 3;
+            case Opcode.RET:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                return bytecodeIndex + 2;
+            case Opcode.MULTIANEWARRAY:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                return bytecodeIndex + 4;
+            case Opcode.INVOKEDYNAMIC:
+            case Opcode.JSR_W:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                return bytecodeIndex + 5;
+            default:
+                // 算術、変換、比較命令はオペランドを持たず、そのまま出力する
+                if (opcode >= Opcode.IADD && opcode <= Opcode.DCMPG && opcode != Opcode.IINC) {
+                    emit(opcode);
+                    return bytecodeIndex + 1;
+                }
+                throw verifyError("不正なオペコードです: " + Opcode.mnemonic(opcode));
+        }
+    }
+
+    /**
+     * ldc/ldc_wの定数を出力します。
+     */
+    private void emitConstant(int index, int opcode) {
+        switch (constantPool.tag(index)) {
+            case ConstantInfo.CONSTANT_Integer:
+                emit(DecodedOpcode.ICONST, constantPool.intValue(index));
+                break;
+            case ConstantInfo.CONSTANT_Float:
+                emit(DecodedOpcode.ICONST, Float.floatToRawIntBits(constantPool.floatValue(index)));
+                break;
+            case ConstantInfo.CONSTANT_String:
+                // 文字列リテラルは同じ内容であれば同じ参照になるよう一意化する
+                constants.add(constantPool.utf8(constantPool.stringIndex(index)).intern());
+                emit(DecodedOpcode.ACONST, constants.size() - 1);
+                break;
+            case ConstantInfo.CONSTANT_Class:
+            case ConstantInfo.CONSTANT_MethodType:
+            case ConstantInfo.CONSTANT_MethodHandle:
+            case ConstantInfo.CONSTANT_Dynamic:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                break;
+            default:
+                throw verifyError("ldcで読み込めない定数です: #" + index);
+        }
+    }
+
+    /**
+     * ldc2_wの定数を出力します。
+     */
+    private void emitWideConstant(int index) {
+        switch (constantPool.tag(index)) {
+            case ConstantInfo.CONSTANT_Long:
+                emitLong(constantPool.longValue(index));
+                break;
+            case ConstantInfo.CONSTANT_Double:
+                emitLong(Double.doubleToRawLongBits(constantPool.doubleValue(index)));
+                break;
+            case ConstantInfo.CONSTANT_Dynamic:
+                emit(DecodedOpcode.UNSUPPORTED, Opcode.LDC2_W);
+                break;
+            default:
+                throw verifyError("ldc2_wで読み込めない定数です: #" + index);
+        }
+    }
+
+    private int decodeTableSwitch(int bytecodeIndex) {
+        // オペランドは4バイト境界から始まる
+        int operands = (bytecodeIndex + 4) & ~3;
+        int defaultOffset = s4(operands);
+        int low = s4(operands + 4);
+        int high = s4(operands + 8);
+        if (low > high || (long) high - low >= code.length) {
+            throw verifyError("tableswitchの範囲が不正です: " + low + "-" + high);
+        }
+        int count = high - low + 1;
+        emit(Opcode.TABLESWITCH, low);
+        emit(high);
+        emitBranch(bytecodeIndex + defaultOffset);
+        for (int i = 0; i < count; i++) {
+            emitBranch(bytecodeIndex + s4(operands + 12 + i * 4));
+        }
+        return operands + 12 + count * 4;
+    }
+
+    private int decodeLookupSwitch(int bytecodeIndex) {
+        int operands = (bytecodeIndex + 4) & ~3;
+        int defaultOffset = s4(operands);
+        int pairs = s4(operands + 4);
+        if (pairs < 0 || pairs >= code.length) {
+            throw verifyError("lookupswitchの組の数が不正です: " + pairs);
+        }
+        emit(Opcode.LOOKUPSWITCH, pairs);
+        emitBranch(bytecodeIndex + defaultOffset);
+        for (int i = 0; i < pairs; i++) {
+            int key = s4(operands + 8 + i * 8);
+            if (i > 0 && key <= output[length - 2]) {
+                throw verifyError("lookupswitchのキーが昇順ではありません");
+            }
+            emit(key);
+            emitBranch(bytecodeIndex + s4(operands + 12 + i * 8));
+        }
+        return operands + 8 + pairs * 8;
+    }
+
+    private int decodeWide(int bytecodeIndex) {
+        int opcode = u1(bytecodeIndex + 1);
+        int index = u2(bytecodeIndex + 2);
+        switch (opcode) {
+            case Opcode.ILOAD:
+            case Opcode.FLOAD:
+                emitLocal(Opcode.ILOAD, index, 1);
+                break;
+            case Opcode.LLOAD:
+            case Opcode.DLOAD:
+                emitLocal(Opcode.LLOAD, index, 2);
+                break;
+            case Opcode.ALOAD:
+                emitLocal(Opcode.ALOAD, index, 1);
+                break;
+            case Opcode.ISTORE:
+            case Opcode.FSTORE:
+                emitLocal(Opcode.ISTORE, index, 1);
+                break;
+            case Opcode.LSTORE:
+            case Opcode.DSTORE:
+                emitLocal(Opcode.LSTORE, index, 2);
+                break;
+            case Opcode.ASTORE:
+                emitLocal(Opcode.ASTORE, index, 1);
+                break;
+            case Opcode.IINC:
+                emitLocal(Opcode.IINC, index, 1);
+                emit(s2(bytecodeIndex + 4));
+                return bytecodeIndex + 6;
+            case Opcode.RET:
+                emit(DecodedOpcode.UNSUPPORTED, opcode);
+                break;
+            default:
+                throw verifyError("wideで修飾できない命令です: " + Opcode.mnemonic(opcode));
+        }
+        return bytecodeIndex + 4;
+    }
+
+    /**
+     * 命令の後に実行が次の命令へ進まないかを判定します。
+     */
+    private static boolean endsFlow(int opcode) {
+        switch (opcode) {
+            case Opcode.GOTO:
+            case Opcode.GOTO_W:
+            case Opcode.TABLESWITCH:
+            case Opcode.LOOKUPSWITCH:
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.FRETURN:
+            case Opcode.DRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+            case Opcode.ATHROW:
+            case Opcode.RET:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int instructionAt(int bytecodeIndex) {
+        if (bytecodeIndex < 0 || bytecodeIndex >= code.length || indexOf[bytecodeIndex] < 0) {
+            throw verifyError("分岐先が命令の境界ではありません: " + bytecodeIndex);
+        }
+        return indexOf[bytecodeIndex];
+    }
+
+    private void emitLocal(int opcode, int index, int size) {
+        if (index + size > maxLocals) {
+            throw verifyError("ローカル変数の番号が範囲外です: " + index);
+        }
+        emit(opcode, index);
+    }
+
+    /**
+     * return命令を出力します。synchronizedメソッドでは、その前にロックを解放します。
+     */
+    private void emitReturn(int opcode) {
+        if (lockLocal >= 0) {
+            emit(Opcode.ALOAD, lockLocal);
+            emit(Opcode.MONITOREXIT);
+        }
+        emit(opcode);
+    }
+
+    private void emitLong(long value) {
+        emit(DecodedOpcode.LCONST, (int) (value >>> 32));
+        emit((int) value);
+    }
+
+    private void emitBranch(int bytecodeIndex) {
+        if (branchCount == branches.length) {
+            branches = Arrays.copyOf(branches, branchCount * 2);
+            branchSources = Arrays.copyOf(branchSources, branchCount * 2);
+        }
+        branchSources[branchCount] = current;
+        branches[branchCount++] = length;
+        emit(bytecodeIndex);
+    }
+
+    private void emit(int opcode, int operand) {
+        emit(opcode);
+        emit(operand);
+    }
+
+    private void emit(int value) {
+        if (length == output.length) {
+            output = Arrays.copyOf(output, length * 2);
+        }
+        output[length++] = value;
+    }
+
+    private int u1(int offset) {
+        if (offset >= code.length) {
+            throw verifyError("命令がバイトコードの末尾を超えています");
+        }
+        return code[offset] & 0xFF;
+    }
+
+    private int u2(int offset) {
+        return (u1(offset) << 8) | u1(offset + 1);
+    }
+
+    private int s2(int offset) {
+        return (short) u2(offset);
+    }
+
+    private int s4(int offset) {
+        return (u2(offset) << 16) | u2(offset + 2);
+    }
+
+    private VerifyError verifyError(String message) {
+        return new VerifyError(message + " (" + method + ")");
+    }
+}
@@ -0,0 +1,106 @@
+package javavm.execution;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+
+/**
+ * ホストのバイトコードにコンパイルしたメソッドの基底クラス
+ *
+ * {@link MethodCompiler} が命令列ごとに生成する隠しクラスがこのクラスを継承し、{@link #run} を実装します。
+ * 生成したコードはフレームのスロットをホストのローカル変数に置いて実行し、次の場合にフレームのスロット配列へ
+ * 書き戻してインタプリタに戻ります（脱最適化）。
+ * <ul>
+ *   <li>メソッド呼び出しとreturn命令（インタプリタがフレームの積み下ろしを行う）</li>
+ *   <li>コンパイラが対応していない命令</li>
+ *   <li>後方への分岐でGCのセーフポイントが要求されている場合</li>
+ * </ul>
+ * インタプリタは、命令列の入口、呼び出し先から戻った位置、後方への分岐先から、生成したコードの実行を再開します。
+ *
+ * <p>コンパイル時にクイック命令に書き換わっていなかったフィールドアクセスとnewに到達した場合は、
+ * 書き戻す前にこのコードを無効にします。命令列は書き換え後に改めてコンパイルされます。</p>
+ */
+abstract class CompiledMethod {
+    /** このクラスの内部形式の名前 */
+    static final String CLASS_NAME = "javavm/execution/CompiledMethod";
+    /** {@link #run} の記述子 */
+    static final String RUN_DESCRIPTOR = "([J[Ljava/lang/Object;II)J";
+
+    final DecodedCode decoded;
+    final Object[] constants;
+    final Heap heap;
+    final ByteBuffer memory;
+    final GarbageCollector collector;
+
+    CompiledMethod(DecodedCode decoded) {
+        this.decoded = decoded;
+        this.constants = decoded.constants;
+        this.heap = decoded.method.getOwner().getMethodArea().getHeap();
+        this.memory = heap.memory;
+        this.collector = heap.collector;
+    }
+
+    /**
+     * 命令位置から実行し、インタプリタに戻る時点のフレームの状態をスロット配列に書き戻します。
+     * @param slots フレームスタックのスロット配列
+     * @param refs フレームスタックの参照の配列
+     * @param fp フレームのベース
+     * @param pc 実行を開始する命令位置（入口、呼び出しの直後、または後方への分岐先）
+     * @return インタプリタが実行を再開する命令位置を下位32ビット、スタックポインタを上位32ビットに置いた値
+     */
+    abstract long run(long[] slots, Object[] refs, int fp, int pc);
+
+    /**
+     * このコードを命令列から外します。以降の呼び出しはインタプリタで実行し、再びしきい値を超えるとコンパイルし直します。
+     */
+    final void invalidate() {
+        DecodedCode code = decoded;
+        if (code.compiled == this) {
+            code.compiled = null;
+            code.invocationCount = 0;
+            code.backedgeCount = 0;
+        }
+    }
+
+    /**
+     * 参照をヒープのオブジェクトのフィールドに格納し、カードをダーティにします。
+     */
+    final void putReference(int field, Object reference, long address) {
+        memory.putInt(field, Heap.compress(heap.encode(reference, address)));
+        heap.cards[field >>> Heap.CARD_SHIFT] = Heap.DIRTY;
+    }
+
+    /**
+     * ヒープの配列またはホストの配列の要素数を返します。
+     */
+    final int arrayLength(Object reference, long address) {
+        return reference == Heap.REFERENCE ? heap.arrayLength(address) : Array.getLength(reference);
+    }
+
+    /**
+     * 命令位置のcheckcastを実行します。
+     */
+    final void checkCast(int pc, Object reference, long address) {
+        TypeCheck.of(decoded, pc).checkCast(heap, reference, address);
+    }
+
+    /**
+     * 命令位置のinstanceofを実行します。
+     */
+    final boolean isInstance(int pc, Object reference, long address) {
+        return TypeCheck.of(decoded, pc).isInstance(heap, reference, address);
+    }
+
+    /**
+     * 2つの参照が同じオブジェクトを指しているかどうかを返します。
+     */
+    static boolean same(Object left, long leftAddress, Object right, long rightAddress) {
+        return left == right && (left != Heap.REFERENCE || leftAddress == rightAddress);
+    }
+
+    /**
+     * 入口でない命令位置から実行しようとした場合のエラーを返します。
+     */
+    static Error invalidEntry(int pc) {
+        return new InternalError("コンパイルしたコードの入口ではありません: 命令位置 " + pc);
+    }
+}
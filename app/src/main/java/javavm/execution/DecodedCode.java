@@ -0,0 +1,230 @@
+package javavm.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javavm.classfile.Symbol;
+import javavm.profile.MethodProfile;
+import javavm.profile.Profiler;
+
+/**
+ * 事前デコードしたメソッドのバイトコード
+ *
+ * 命令列の形式は {@link DecodedOpcode} を参照してください。インタプリタは命令列の位置（以下、命令位置）を
+ * プログラムカウンタとして使用し、バイトコードを再解釈せずに実行します。
+ * 例外テーブルの範囲とハンドラも命令位置に変換して保持します。
+ */
+public final class DecodedCode {
+    final RuntimeMethod method;
+    final int[] instructions;
+    // ACONSTの定数や、解決したINVOKESTATICの呼び出し先などを保持する
+    final Object[] constants;
+    final int maxLocals;
+    final int maxStack;
+    // 呼び出し時に呼び出し元のオペランドスタックから受け取るスロット数
+    final int argumentSlots;
+    // 1ハンドラあたり開始位置、終了位置（含まない）、ハンドラ位置の3要素
+    final int[] handlers;
+    // 捕捉する例外クラス名。すべての例外を捕捉する場合はnull
+    final Symbol[] catchTypes;
+    private final int[] bytecodeIndexes;
+    // クイック命令に書き換えた命令の数（このオブジェクトのロックで保護する）
+    private int quickenedCount;
+    // GCが最初に必要とした時点で作る
+    private volatile ReferenceMap referenceMap;
+    // プロファイラが有効な場合に、デコードした時点で割り当てる
+    final MethodProfile profile;
+    // 呼び出し回数と後方分岐の回数（スレッド間で同期せずに数えるおおよその値）
+    int invocationCount;
+    int backedgeCount;
+    // コンパイルしたコード。インタプリタは設定された後の入口から実行を切り替える
+    volatile CompiledMethod compiled;
+    // 以下は TieredCompiler のロックで保護する
+    boolean queued;
+    int compilations;
+
+    DecodedCode(RuntimeMethod method, int[] instructions, Object[] constants, int maxLocals, int maxStack,
+            int[] handlers, Symbol[] catchTypes, int[] bytecodeIndexes) {
+        this.method = method;
+        this.instructions = instructions;
+        this.constants = constants;
+        this.maxLocals = maxLocals;
+        this.maxStack = maxStack;
+        this.argumentSlots = method.getArgumentSlots();
+        this.handlers = handlers;
+        this.catchTypes = catchTypes;
+        this.bytecodeIndexes = bytecodeIndexes;
+        Profiler profiler = Profiler.getInstance();
+        this.profile = profiler.isEnabled() ? profiler.newMethodProfile(method.toString()) : null;
+    }
+
+    /**
+     * デコード元のメソッドを取得します。
+     * @return メソッド
+     */
+    public RuntimeMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * 命令列の長さ（int配列の要素数）を返します。
+     * @return 命令列の長さ
+     */
+    public int length() {
+        return instructions.length;
+    }
+
+    /**
+     * ローカル変数のスロット数を返します。
+     * @return max_localsの値
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * オペランドスタックの最大の深さを返します。
+     * @return max_stackの値
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * 命令位置に対応するバイトコード上のオフセットを返します。
+     * @param pc 命令位置
+     * @return バイトコード上のオフセット。命令の先頭でない場合は-1
+     */
+    public int bytecodeIndex(int pc) {
+        return pc >= 0 && pc < bytecodeIndexes.length ? bytecodeIndexes[pc] : -1;
+    }
+
+    /**
+     * invokevirtual/invokeinterfaceの呼び出し箇所のインラインキャッシュを返します。
+     * まだ一度も実行されていない呼び出し箇所のキャッシュは含みません。
+     * @return 命令列の順に並べたインラインキャッシュ
+     */
+    public List<InlineCache> getInlineCaches() {
+        List<InlineCache> caches = new ArrayList<>();
+        for (Object constant : constants) {
+            if (constant instanceof InlineCache) {
+                caches.add((InlineCache) constant);
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * クイック命令に書き換えた命令の数を返します。
+     * @return 書き換えた命令の数
+     */
+    public synchronized int getQuickenedCount() {
+        return quickenedCount;
+    }
+
+    /**
+     * 命令をクイック命令に書き換えます。このオブジェクトのロックを保持して呼び出してください。
+     * オペランドを書き込んでから命令番号を書き換えます。インタプリタは命令番号とオペランドをロックなしで読むため、
+     * 他のスレッドには書き換え後の命令番号と書き換え前のオペランドが見える場合があります。
+     * 読む側は {@link #fieldOffset(int)} と {@link #quickConstant(int)} で書き換え前の値を検出し、ロックの中で読み直します。
+     * @param pc 命令位置
+     * @param opcode クイック命令の番号
+     * @param operand 書き換えるオペランドの位置（命令位置からの相対位置）。オペランドを書き換えない場合は0
+     * @param value オペランドの値
+     */
+    void quicken(int pc, int opcode, int operand, int value) {
+        if (operand > 0) {
+            instructions[pc + operand] = value;
+        }
+        instructions[pc] = opcode;
+        quickenedCount++;
+    }
+
+    /**
+     * 命令を、後続の命令と合わせて実行するスーパー命令に書き換えます。このオブジェクトのロックを保持して呼び出してください。
+     * スーパー命令は後続の命令番号を読まずにオペランドだけを読むため、後続のクイック命令のオペランドと同様に
+     * 書き換え前の値を検出できます。
+     * @param pc 命令位置
+     * @param opcode スーパー命令の番号
+     */
+    void fuse(int pc, int opcode) {
+        instructions[pc] = opcode;
+    }
+
+    /**
+     * フィールドアクセスのクイック命令のオペランド（フィールドのオフセット）を返します。
+     * 書き換え前のオペランド（{@link DecodedOpcode#UNRESOLVED}）が見えた場合だけ、ロックの中で読み直します。
+     * @param pc クイック命令の命令位置
+     * @return フィールドのオブジェクトの先頭からのオフセット
+     */
+    int fieldOffset(int pc) {
+        int offset = instructions[pc + 1];
+        return offset != DecodedOpcode.UNRESOLVED ? offset : lockedOperand(pc + 1);
+    }
+
+    private synchronized int lockedOperand(int index) {
+        return instructions[index];
+    }
+
+    /**
+     * getstatic/putstatic/newのクイック命令が参照する解決結果を返します。
+     * 書き換え前の定数（nullや解決したフィールド）が見えた場合だけ、ロックの中で読み直します。
+     * @param index 定数番号
+     * @return 解決結果
+     */
+    QuickConstant quickConstant(int index) {
+        Object constant = constants[index];
+        return constant instanceof QuickConstant ? (QuickConstant) constant : lockedConstant(index);
+    }
+
+    private synchronized QuickConstant lockedConstant(int index) {
+        return (QuickConstant) constants[index];
+    }
+
+    /**
+     * 参照マップを返します。最初の呼び出しで作ります。
+     * @return 参照マップ
+     */
+    ReferenceMap getReferenceMap() {
+        ReferenceMap map = referenceMap;
+        if (map == null) {
+            map = ReferenceMap.compute(this);
+            referenceMap = map;
+        }
+        return map;
+    }
+
+    /**
+     * 命令位置で発生した例外を捕捉するハンドラを探します。
+     * @param pc 例外が発生した命令位置
+     * @param exception 発生した例外
+     * @return ハンドラの命令位置。見つからない場合は-1
+     */
+    int findHandler(int pc, Throwable exception) {
+        for (int i = 0; i < catchTypes.length; i++) {
+            int base = i * 3;
+            if (pc >= handlers[base] && pc < handlers[base + 1]
+                    && (catchTypes[i] == null || isInstance(exception, catchTypes[i].toString()))) {
+                return handlers[base + 2];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 例外が指定したクラスまたはそのサブクラスのインスタンスかを、クラス名で判定します。
+     */
+    private static boolean isInstance(Throwable exception, String className) {
+        for (Class<?> type = exception.getClass(); type != null; type = type.getSuperclass()) {
+            if (type.getName().replace('.', '/').equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
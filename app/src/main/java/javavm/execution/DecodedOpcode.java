@@ -0,0 +1,214 @@
+package javavm.execution;
+
+/**
+ * 事前デコードした命令列で使用する命令番号の定義
+ *
+ * 1命令はint配列の連続した要素に「命令番号、オペランド...」の順で格納します。
+ * 動作が変わらない命令はJVMのオペコード（{@link Opcode}）をそのまま命令番号に使用し、
+ * 次の命令は正規化して同じ動作の命令を1つにまとめます。
+ * <ul>
+ *   <li>iload, fload とその短縮形 → {@code ILOAD 番号}（lload/dload → {@code LLOAD}、aload → {@code ALOAD}、ストア命令も同様）</li>
+ *   <li>iconst_*, fconst_*, bipush, sipush, int/floatのldc → {@code ICONST 値}（floatはビット表現）</li>
+ *   <li>lconst_*, dconst_*, ldc2_w → {@code LCONST 上位32ビット 下位32ビット}（doubleはビット表現）</li>
+ *   <li>Stringのldc → {@code ACONST 定数番号}</li>
+ *   <li>freturn → {@code IRETURN}、dreturn → {@code LRETURN}、goto_w → {@code GOTO}、wide付きの命令 → 通常の命令</li>
+ * </ul>
+ * 分岐先はバイトコード上の相対オフセットではなく、命令列上の絶対位置に変換します。条件分岐とswitchの後方への分岐先は、
+ * 命令列の末尾に追加した {@code GOTO 分岐先} を指します（GCの停止点をgotoにまとめるため）。
+ * 主な命令のオペランドは次の通りです。
+ * <ul>
+ *   <li>{@code IINC 番号 増分}</li>
+ *   <li>{@code TABLESWITCH low high 既定の分岐先 分岐先...}</li>
+ *   <li>{@code LOOKUPSWITCH 組の数 既定の分岐先 (キー 分岐先)...}（キーは昇順）</li>
+ *   <li>{@code INVOKESTATIC 定数番号 定数プールのインデックス}（解決したメソッドを定数番号の位置に保持、INVOKESPECIALも同様）</li>
+ *   <li>{@code INVOKEVIRTUAL 定数番号 定数プールのインデックス}（呼び出し箇所の {@link InlineCache} を定数番号の位置に保持、INVOKEINTERFACEも同様）</li>
+ *   <li>{@code GETFIELD -1 定数プールのインデックス}（PUTFIELDも同様）</li>
+ *   <li>{@code GETSTATIC 定数番号 定数プールのインデックス}（PUTSTATIC、NEWも同様）</li>
+ *   <li>{@code NEWARRAY 要素型}、{@code ANEWARRAY 定数プールのインデックス}</li>
+ *   <li>{@code CHECKCAST 定数番号 定数プールのインデックス}（解決した型の {@link TypeCheck} を定数番号の位置に保持、INSTANCEOFも同様）</li>
+ *   <li>{@code INVOKE_INTRINSIC 定数番号}（組み込みメソッドの命令列だけで使用する）</li>
+ * </ul>
+ *
+ * <p>フィールドアクセスとnewは最初の実行時に参照先を解決し、命令をその場で高速版（クイック命令）に書き換えます。
+ * 書き換えは命令列ごとのロックの中で1回だけ行い、オペランドを書き込んでから命令番号を書き換えます。
+ * インタプリタは命令番号をロックなしで読むため、他のスレッドからは書き換え後の命令番号と書き換え前のオペランドが
+ * 見える場合があります。クイック命令は、書き換え前の値と区別できるオペランド（フィールドのオフセットは
+ * {@link #UNRESOLVED} 以外、定数は {@link QuickConstant}）だけを読み、書き換え前の値が見えた場合は命令列のロックの中で
+ * 読み直します（{@link DecodedCode#fieldOffset(int)}、{@link DecodedCode#quickConstant(int)}）。</p>
+ * <ul>
+ *   <li>{@code IGETFIELD_QUICK オフセット 定数プールのインデックス}（int/float。L〜はlong/double、A〜は参照型、
+ *   B〜はbyte/boolean、C〜はchar、S〜はshort。PUTFIELDも同様で、BPUTFIELD_QUICKはbyte/boolean、SPUTFIELD_QUICKはshort/char）</li>
+ *   <li>{@code IGETSTATIC_QUICK 定数番号 定数プールのインデックス}（定数番号の位置にstaticフィールドの配列と添字の
+ *   {@link QuickConstant} を保持。PUTSTATICも同様）</li>
+ *   <li>{@code NEW_QUICK 定数番号 定数プールのインデックス}（定数番号の位置にクラスの {@link QuickConstant} を保持）</li>
+ * </ul>
+ * staticフィールドとnewは、クラスの初期化が完了するまで書き換えません。
+ *
+ * <p>頻出する命令の並びは、先頭の命令番号を並び全体を実行するスーパー命令に書き換えます（{@link CodeDecoder} を参照）。
+ * 後続の命令とオペランドはそのまま残すため、スーパー命令のオペランドは元の並びと同じ位置にあり、
+ * 並びの途中への分岐も元の命令を実行します。{@link #unfused(int)} は先頭の元の命令番号を返します。</p>
+ * <ul>
+ *   <li>{@code ILOAD_ILOAD a ILOAD b}、{@code ILOAD_ICONST a ICONST v}、{@code ALOAD_ILOAD a ILOAD b}</li>
+ *   <li>{@code ILOAD_ILOAD_IADD a ILOAD b IADD}</li>
+ *   <li>{@code IINC_GOTO 番号 増分 GOTO 分岐先}</li>
+ *   <li>{@code ALOAD_IGETFIELD_QUICK a IGETFIELD_QUICK オフセット 定数プールのインデックス}（getfieldをクイック命令に
+ *   書き換えるときに直前のaloadを書き換える。AGETFIELD_QUICKも同様）</li>
+ * </ul>
+ */
+final class DecodedOpcode {
+    /** int値（floatの場合はビット表現）を積む */
+    static final int ICONST = 0xCB;
+    /** long値（doubleの場合はビット表現）を積む */
+    static final int LCONST = 0xCC;
+    /** 定数の参照を積む */
+    static final int ACONST = 0xCD;
+    /** まだ実行できない命令。オペランドは元のオペコード */
+    static final int UNSUPPORTED = 0xCE;
+
+    static final int IGETFIELD_QUICK = 0xCF;
+    static final int LGETFIELD_QUICK = 0xD0;
+    static final int AGETFIELD_QUICK = 0xD1;
+    static final int IPUTFIELD_QUICK = 0xD2;
+    static final int LPUTFIELD_QUICK = 0xD3;
+    static final int APUTFIELD_QUICK = 0xD4;
+    static final int IGETSTATIC_QUICK = 0xD5;
+    static final int LGETSTATIC_QUICK = 0xD6;
+    static final int AGETSTATIC_QUICK = 0xD7;
+    static final int IPUTSTATIC_QUICK = 0xD8;
+    static final int LPUTSTATIC_QUICK = 0xD9;
+    static final int APUTSTATIC_QUICK = 0xDA;
+    static final int NEW_QUICK = 0xDB;
+    static final int BGETFIELD_QUICK = 0xDC;
+    static final int CGETFIELD_QUICK = 0xDD;
+    static final int SGETFIELD_QUICK = 0xDE;
+    static final int BPUTFIELD_QUICK = 0xDF;
+    static final int SPUTFIELD_QUICK = 0xE0;
+
+    /** 組み込みメソッドを実行する。オペランドは {@link Intrinsic} を保持する定数番号 */
+    static final int INVOKE_INTRINSIC = 0xE1;
+
+    /** 2つのintのローカル変数を積む */
+    static final int ILOAD_ILOAD = 0xE2;
+    /** 2つのintのローカル変数の和を積む */
+    static final int ILOAD_ILOAD_IADD = 0xE3;
+    /** intのローカル変数とint値を積む */
+    static final int ILOAD_ICONST = 0xE4;
+    /** 参照とintのローカル変数を積む */
+    static final int ALOAD_ILOAD = 0xE5;
+    /** ローカル変数のオブジェクトのint/floatのフィールドを積む */
+    static final int ALOAD_IGETFIELD_QUICK = 0xE6;
+    /** ローカル変数のオブジェクトの参照型のフィールドを積む */
+    static final int ALOAD_AGETFIELD_QUICK = 0xE7;
+    /** intのローカル変数を増やして分岐する（ループの末尾） */
+    static final int IINC_GOTO = 0xE8;
+
+    /** getfield/putfieldの未解決のオペランド */
+    static final int UNRESOLVED = -1;
+
+    /** 命令番号ごとの名前（プロファイラのレポートに使用する） */
+    static final String[] MNEMONICS = new String[256];
+
+    static {
+        for (int i = 0; i < MNEMONICS.length; i++) {
+            MNEMONICS[i] = mnemonic(i);
+        }
+    }
+
+    private DecodedOpcode() {
+    }
+
+    /**
+     * 命令番号の名前を返します。
+     * JVMのオペコードと同じ番号の命令はそのニーモニック、事前デコードで追加した命令は定数名を小文字にした名前です。
+     * @param opcode 命令番号
+     * @return 名前
+     */
+    static String mnemonic(int opcode) {
+        switch (opcode) {
+            case ICONST:
+                return "iconst";
+            case LCONST:
+                return "lconst";
+            case ACONST:
+                return "aconst";
+            case UNSUPPORTED:
+                return "unsupported";
+            case IGETFIELD_QUICK:
+                return "igetfield_quick";
+            case LGETFIELD_QUICK:
+                return "lgetfield_quick";
+            case AGETFIELD_QUICK:
+                return "agetfield_quick";
+            case IPUTFIELD_QUICK:
+                return "iputfield_quick";
+            case LPUTFIELD_QUICK:
+                return "lputfield_quick";
+            case APUTFIELD_QUICK:
+                return "aputfield_quick";
+            case IGETSTATIC_QUICK:
+                return "igetstatic_quick";
+            case LGETSTATIC_QUICK:
+                return "lgetstatic_quick";
+            case AGETSTATIC_QUICK:
+                return "agetstatic_quick";
+            case IPUTSTATIC_QUICK:
+                return "iputstatic_quick";
+            case LPUTSTATIC_QUICK:
+                return "lputstatic_quick";
+            case APUTSTATIC_QUICK:
+                return "aputstatic_quick";
+            case NEW_QUICK:
+                return "new_quick";
+            case BGETFIELD_QUICK:
+                return "bgetfield_quick";
+            case CGETFIELD_QUICK:
+                return "cgetfield_quick";
+            case SGETFIELD_QUICK:
+                return "sgetfield_quick";
+            case BPUTFIELD_QUICK:
+                return "bputfield_quick";
+            case SPUTFIELD_QUICK:
+                return "sputfield_quick";
+            case INVOKE_INTRINSIC:
+                return "invoke_intrinsic";
+            case ILOAD_ILOAD:
+                return "iload_iload";
+            case ILOAD_ILOAD_IADD:
+                return "iload_iload_iadd";
+            case ILOAD_ICONST:
+                return "iload_iconst";
+            case ALOAD_ILOAD:
+                return "aload_iload";
+            case ALOAD_IGETFIELD_QUICK:
+                return "aload_igetfield_quick";
+            case ALOAD_AGETFIELD_QUICK:
+                return "aload_agetfield_quick";
+            case IINC_GOTO:
+                return "iinc_goto";
+            default:
+                return Opcode.mnemonic(opcode);
+        }
+    }
+
+    /**
+     * スーパー命令の場合は、並びの先頭の元の命令番号を返します。
+     * @param opcode 命令番号
+     * @return 元の命令番号。スーパー命令でない場合は引数の命令番号
+     */
+    static int unfused(int opcode) {
+        switch (opcode) {
+            case ILOAD_ILOAD:
+            case ILOAD_ILOAD_IADD:
+            case ILOAD_ICONST:
+                return Opcode.ILOAD;
+            case ALOAD_ILOAD:
+            case ALOAD_IGETFIELD_QUICK:
+            case ALOAD_AGETFIELD_QUICK:
+                return Opcode.ALOAD;
+            case IINC_GOTO:
+                return Opcode.IINC;
+            default:
+                return opcode;
+        }
+    }
+}
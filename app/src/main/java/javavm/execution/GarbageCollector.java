@@ -0,0 +1,674 @@
+package javavm.execution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * ヒープの世代別GC
+ *
+ * GCはすべてのスレッドを止めて（stop-the-world）、GCを要求したスレッドが {@link GcWorkers} のワーカーとともに行います。
+ * ワーカーの数はシステムプロパティ {@code javavm.gcThreads}（既定はプロセッサの数）か {@link Heap#setGcThreads(int)} で指定します。
+ *
+ * <ul>
+ * <li>Minor GC: EdenとSurvivor（from）の生きているオブジェクトを、もう一方のSurvivor（to）にコピーします。
+ * コピーするたびにオブジェクトの年齢を1つ増やし、年齢が昇格までの回数に達したオブジェクトと
+ * toに収まらないオブジェクトはOld世代にコピー（昇格）します。Old世代からYoung世代への参照は、
+ * ダーティなカードの範囲だけを走査して見つけます。ルートとカードは1つのスレッドで走査し、コピーしたオブジェクトの
+ * フィールドはワーカーが並列にたどります。同じオブジェクトを複数のワーカーがコピーしないように、マークワードを比較交換で
+ * コピー中（アドレスが0の {@link #FORWARDED}）にしてからコピーします。</li>
+ * <li>Full GC: ヒープ全体の生きているオブジェクトに、ワーカーが並列に {@link MarkBitmap} の印を付けます。
+ * その後、Old世代をマーク・コンパクト（Lisp2の方式）で詰めた後ろにYoung世代の生きているオブジェクトを移します。
+ * Old世代に収まらない分はSurvivorに残します。移動先の計算と移動はアドレスの順に行う必要があるため1つのスレッドで行い、
+ * 参照の更新だけを並列に行います。</li>
+ * </ul>
+ *
+ * <p>ルートは、ゲストのコードを実行中のすべてのスレッドのフレームのうち参照マップ（{@link ReferenceMap}）で参照とされたスロット、
+ * すべてのクラスの参照型のstaticフィールド、ホストが保持している {@link Instance} です。
+ * スレッドはセーフポイント（後方分岐とメソッドの入口、割り当て）でだけ停止するため、停止したスレッドのフレームの命令位置は
+ * 常に参照マップのある位置を指しています。クラスの初期化の完了を待つ間などはセーフ領域に入り、停止したものとして扱います。</p>
+ *
+ * <p>ヒープに格納したホストのオブジェクト（{@link HostReferenceTable}）は、フィールドとstaticフィールドから到達した番号に
+ * 印を付け、印のないものを解放します。Minor GCでは前回のGCの後に登録したものだけを、Full GCではすべてを対象にします。</p>
+ *
+ * <p>マークワードは、Minor GCではコピー先のアドレス（{@link #FORWARDED}）、Full GCでは移動先のアドレスに使用し、
+ * 上位のビットにオブジェクトの年齢を格納します。その間のビットはロックの状態（{@link Monitors}）で、オブジェクトを移動しても保持します。</p>
+ *
+ * <p>GCの結果は {@link GcEvent} としてリスナーに通知し、システムプロパティ {@code javavm.gcLog} がtrueの場合は
+ * 標準エラー出力にも出力します。</p>
+ */
+final class GarbageCollector {
+    /** GCのログを出力するシステムプロパティ */
+    static final String LOG_PROPERTY = "javavm.gcLog";
+    /** GCのワーカーの数を指定するシステムプロパティ */
+    static final String THREADS_PROPERTY = "javavm.gcThreads";
+
+    // マークワードの構成
+    private static final long FORWARDED = 1;
+    private static final long ADDRESS_MASK = 0x7FFFFFF8L;
+    private static final int AGE_SHIFT = 56;
+    private static final long AGE_MASK = 0xFL << AGE_SHIFT;
+    // 移動しても保持するビット
+    private static final long HEADER_MASK = AGE_MASK | Monitors.LOCK_MASK;
+    // ワーカーの間でマークワードを比較交換する
+    private static final VarHandle MARK_WORD = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** GCを要求したスレッドが他のスレッドの停止を待っている間、またはGCの実行中にtrue */
+    volatile boolean safepointRequested;
+
+    private final Heap heap;
+    private final ByteBuffer memory;
+    private final boolean log = Boolean.getBoolean(LOG_PROPERTY);
+    private final List<Consumer<GcEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    // 以下はこのオブジェクトのロックの中で読み書きする
+    // ゲストのコードを実行中のインタプリタと、そのうち停止していないものの数
+    private final Set<Interpreter> mutators = new HashSet<>();
+    private int running;
+    private boolean collecting;
+    // ホストに返したオブジェクト（アドレスからの対応）
+    private final Map<Long, WeakReference<Instance>> handles = new HashMap<>();
+    private long collections;
+    private long minorCollections;
+    private long fullCollections;
+    private long totalPauseNanos;
+    private GcWorkers workers;
+
+    // 1回のGCの作業領域
+    private RuntimeClass[] classes;
+    private final AtomicInteger toTop = new AtomicInteger();
+    private int toEnd;
+    private MarkBitmap bitmap;
+    private final IntList liveOld = new IntList();
+    private IntList[] liveYoung;
+
+    /**
+     * @throws IllegalArgumentException システムプロパティで指定したワーカーの数が不正な場合
+     */
+    GarbageCollector(Heap heap) {
+        this.heap = heap;
+        this.memory = heap.memory;
+        setThreads(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * GCのワーカーの数を変更します。GCの実行中は完了を待ちます。
+     * @throws IllegalArgumentException 1未満の場合
+     */
+    synchronized void setThreads(int threads) {
+        if (workers != null && workers.size() == threads) {
+            return;
+        }
+        GcWorkers replaced = new GcWorkers(threads);
+        if (workers != null) {
+            workers.shutdown();
+        }
+        workers = replaced;
+        liveYoung = new IntList[threads];
+        for (int i = 0; i < threads; i++) {
+            liveYoung[i] = new IntList();
+        }
+    }
+
+    synchronized int getThreads() {
+        return workers.size();
+    }
+
+    /**
+     * インタプリタがゲストのコードの実行を始めたことを登録します。GCの実行中は完了を待ちます。
+     */
+    synchronized void attach(Interpreter mutator) {
+        awaitCompletion();
+        mutators.add(mutator);
+        running++;
+    }
+
+    /**
+     * インタプリタがゲストのコードの実行を終えたことを登録します。以降、このインタプリタのフレームはルートになりません。
+     */
+    synchronized void detach(Interpreter mutator) {
+        mutators.remove(mutator);
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * セーフポイントです。GCが要求されている場合は、停止してGCの完了を待ちます。
+     * 呼び出す前に、フレームの命令位置を停止する位置に設定してください。
+     */
+    synchronized void safepoint() {
+        if (collecting) {
+            stop();
+        }
+    }
+
+    /**
+     * ヒープに触れずに待機する区間（セーフ領域）に入ります。区間の中ではGCが行われる可能性があります。
+     */
+    synchronized void enterSafeRegion() {
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * セーフ領域から出ます。GCの実行中は完了を待ちます。
+     */
+    synchronized void leaveSafeRegion() {
+        awaitCompletion();
+        running++;
+    }
+
+    private void stop() {
+        running--;
+        notifyAll();
+        awaitCompletion();
+        running++;
+    }
+
+    private void awaitCompletion() {
+        boolean interrupted = false;
+        while (collecting) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * GCを行います。別のスレッドがすでにGCを要求している場合は、そのGCの完了を待つだけで戻ります。
+     * @param requester 要求したインタプリタ（ゲストのコードの実行中でない場合はnull）
+     * @param kind GCの種類。Minor GCでOld世代の空きが足りない場合はFull GCを行う
+     * @return このスレッドがGCを行った場合true
+     */
+    boolean collect(Interpreter requester, GcEvent.Kind kind) {
+        GcEvent event;
+        synchronized (this) {
+            boolean attached = requester != null && mutators.contains(requester);
+            if (collecting) {
+                if (attached) {
+                    stop();
+                } else {
+                    awaitCompletion();
+                }
+                return false;
+            }
+            long start = System.nanoTime();
+            collecting = true;
+            safepointRequested = true;
+            boolean interrupted = false;
+            try {
+                // 要求したスレッド以外のすべてのスレッドがセーフポイントで停止するのを待つ
+                int self = attached ? 1 : 0;
+                while (running > self) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                event = perform(kind, start);
+            } finally {
+                collecting = false;
+                safepointRequested = false;
+                notifyAll();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        for (Consumer<GcEvent> listener : listeners) {
+            listener.accept(event);
+        }
+        if (log) {
+            System.err.println(event);
+        }
+        return true;
+    }
+
+    private GcEvent perform(GcEvent.Kind kind, long start) {
+        long usedBefore = heap.getUsed();
+        long youngUsed = heap.edenTop.get() - heap.edenStart + heap.survivorTop - heap.fromStart;
+        if (kind == GcEvent.Kind.MINOR && heap.oldEnd - heap.oldTop.get() < youngUsed) {
+            // すべてが昇格しても収まる空きがなければ、昇格に失敗しないようにヒープ全体を回収する
+            kind = GcEvent.Kind.FULL;
+        }
+        classes = heap.registeredClasses();
+        long promoted;
+        try {
+            promoted = kind == GcEvent.Kind.MINOR ? minor() : full();
+        } finally {
+            classes = null;
+        }
+        heap.resetTlabs();
+
+        long pause = System.nanoTime() - start;
+        collections++;
+        if (kind == GcEvent.Kind.MINOR) {
+            minorCollections++;
+        } else {
+            fullCollections++;
+        }
+        totalPauseNanos += pause;
+        return new GcEvent(kind, collections, pause, usedBefore, heap.getUsed(), promoted, heap.getSize());
+    }
+
+    /**
+     * Minor GCを行います。
+     * @return 昇格したバイト数
+     */
+    private long minor() {
+        int oldTopAtStart = (int) heap.oldTop.get();
+        int survivorStart = heap.toStart;
+        toTop.set(survivorStart);
+        toEnd = survivorStart + heap.survivorSize;
+        LongUnaryOperator[] evacuators = new LongUnaryOperator[workers.size()];
+        for (int i = 0; i < evacuators.length; i++) {
+            int worker = i;
+            evacuators[i] = address -> evacuate(worker, address);
+        }
+
+        // ルートとダーティなカードから直接指されたオブジェクトをコピーし、ワーカーに順に割り振る
+        heap.hostReferences.beginMarking();
+        LongUnaryOperator distribute = roundRobin(evacuators);
+        updateRoots(distribute);
+        scanDirtyCards(oldTopAtStart, distribute);
+        // コピーしたオブジェクトのフィールドを並列にたどる。昇格したオブジェクトはYoung世代を指すフィールドのカードをダーティにする
+        workers.drain((worker, object) -> updateFields(object, 0, Integer.MAX_VALUE, evacuators[worker], object >= heap.oldStart));
+        heap.hostReferences.sweep(false);
+
+        heap.toStart = heap.fromStart;
+        heap.fromStart = survivorStart;
+        heap.survivorTop = toTop.get();
+        heap.edenTop.set(heap.edenStart);
+        return heap.oldTop.get() - oldTopAtStart;
+    }
+
+    /**
+     * EdenかSurvivor（from）のオブジェクトをコピーし、コピーしたオブジェクトをワーカーのキューに積んでコピー先のアドレスを返します。
+     * コピー済みの場合はコピー先を返し、回収の対象でないアドレスはそのまま返します。
+     * 別のワーカーがコピー中の場合は、コピーが終わるのを待ちます。
+     */
+    private long evacuate(int worker, long address) {
+        int object = (int) address;
+        boolean collected = object >= heap.edenStart && object < heap.edenEnd
+                || object >= heap.fromStart && object < heap.fromStart + heap.survivorSize;
+        if (!collected) {
+            return address;
+        }
+        long mark = (long) MARK_WORD.getAcquire(memory, object);
+        while (true) {
+            if ((mark & FORWARDED) != 0) {
+                long target = mark & ADDRESS_MASK;
+                if (target != 0) {
+                    return target;
+                }
+                Thread.onSpinWait();
+            } else if (MARK_WORD.compareAndSet(memory, object, mark, FORWARDED)) {
+                break;
+            }
+            mark = (long) MARK_WORD.getAcquire(memory, object);
+        }
+
+        int size = heap.objectSize(object);
+        int age = Math.min((int) ((mark & AGE_MASK) >>> AGE_SHIFT) + 1, Heap.MAX_TENURING_THRESHOLD);
+        int target = age < heap.getTenuringThreshold() ? reserveSurvivor(size) : -1;
+        if (target < 0) {
+            // 空きは開始時に確認している
+            target = (int) Heap.reserve(heap.oldTop, heap.oldEnd, size);
+            if (target < 0) {
+                throw new InternalError("昇格先のOld世代に空きがありません: " + size + "バイト");
+            }
+            heap.recordObject(target, size);
+        }
+        memory.put(target, memory, object, size);
+        memory.putLong(target, (mark & ~AGE_MASK) | (long) age << AGE_SHIFT);
+        MARK_WORD.setRelease(memory, object, target | FORWARDED);
+        workers.push(worker, target);
+        return target;
+    }
+
+    private int reserveSurvivor(int size) {
+        while (true) {
+            int top = toTop.get();
+            if (size > toEnd - top) {
+                return -1;
+            }
+            if (toTop.compareAndSet(top, top + size)) {
+                return top;
+            }
+        }
+    }
+
+    /**
+     * Old世代のうちGCの開始時に割り当て済みだった範囲のダーティなカードを走査し、カードの範囲のフィールドを更新します。
+     * 更新後もYoung世代を指すフィールドのカードはダーティのままにします。
+     */
+    private void scanDirtyCards(int limit, LongUnaryOperator update) {
+        byte[] cards = heap.cards;
+        for (int card = heap.oldStart >>> Heap.CARD_SHIFT, last = (limit - 1) >>> Heap.CARD_SHIFT; card <= last; card++) {
+            if (cards[card] == Heap.DIRTY) {
+                cards[card] = Heap.CLEAN;
+                int cardStart = card << Heap.CARD_SHIFT;
+                int cardEnd = Math.min(cardStart + Heap.CARD_SIZE, limit);
+                for (int object = heap.cardObjects[card]; object < cardEnd; object += heap.objectSize(object)) {
+                    updateFields(object, cardStart, cardEnd, update, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Full GCを行います。生きているオブジェクトがヒープに収まらない場合は何も移動しません。
+     * @return Young世代からOld世代に移したバイト数
+     */
+    private long full() {
+        int oldStart = heap.oldStart;
+        int oldTop = (int) heap.oldTop.get();
+        if (bitmap == null) {
+            bitmap = new MarkBitmap(heap.getSize());
+        } else {
+            bitmap.clear();
+        }
+        LongUnaryOperator[] markers = new LongUnaryOperator[workers.size()];
+        for (int i = 0; i < markers.length; i++) {
+            int worker = i;
+            liveYoung[i].clear();
+            markers[i] = address -> mark(worker, address);
+        }
+        heap.hostReferences.beginMarking();
+        updateRoots(roundRobin(markers));
+        workers.drain((worker, object) -> updateFields(object, 0, Integer.MAX_VALUE, markers[worker], false));
+        heap.hostReferences.sweep(true);
+
+        // 移動先を決める。Old世代は前に詰め、その後ろにYoung世代のオブジェクトを置く
+        liveOld.clear();
+        int compactTop = oldStart;
+        for (int object = oldStart, size; object < oldTop; object += size) {
+            size = heap.objectSize(object);
+            if (bitmap.isMarked(object)) {
+                memory.putLong(object, memory.getLong(object) | compactTop);
+                liveOld.add(object);
+                compactTop += size;
+            }
+        }
+        IntList young = IntList.concat(liveYoung);
+        Arrays.sort(young.values, 0, young.size);
+        long promoted = 0;
+        int survivorStart = heap.toStart;
+        int survivorTop = survivorStart;
+        for (int i = 0; i < young.size; i++) {
+            int object = young.values[i];
+            int size = heap.objectSize(object);
+            int target;
+            if (size <= heap.oldEnd - compactTop) {
+                target = compactTop;
+                compactTop += size;
+                promoted += size;
+            } else if (size <= survivorStart + heap.survivorSize - survivorTop) {
+                target = survivorTop;
+                survivorTop += size;
+            } else {
+                // 生きているオブジェクトがヒープに収まらない。移動先を消して何も移動せずに終える
+                unmark(liveOld);
+                unmark(young);
+                return 0;
+            }
+            memory.putLong(object, memory.getLong(object) | target);
+        }
+
+        LongUnaryOperator forward = this::forward;
+        updateRoots(forward);
+        int oldCount = liveOld.size;
+        workers.forEach(oldCount + young.size, i -> {
+            int object = i < oldCount ? liveOld.values[i] : young.values[i - oldCount];
+            updateFields(object, 0, Integer.MAX_VALUE, forward, false);
+        });
+
+        // 移動する。Old世代は前方へのコピーだけなので、アドレスの順に移せば未処理のオブジェクトを上書きしない
+        for (int i = 0; i < oldCount; i++) {
+            int object = liveOld.values[i];
+            move(object, memory.getLong(object), heap.objectSize(object));
+        }
+        for (int i = 0; i < young.size; i++) {
+            int object = young.values[i];
+            move(object, memory.getLong(object), heap.objectSize(object));
+        }
+
+        heap.oldTop.set(compactTop);
+        heap.toStart = heap.fromStart;
+        heap.fromStart = survivorStart;
+        heap.survivorTop = survivorTop;
+        heap.edenTop.set(heap.edenStart);
+        rebuildCards(compactTop, survivorTop > survivorStart);
+        return promoted;
+    }
+
+    private long mark(int worker, long address) {
+        int object = (int) address;
+        if (bitmap.mark(object)) {
+            workers.push(worker, object);
+            if (heap.isYoung(object)) {
+                liveYoung[worker].add(object);
+            }
+        }
+        return address;
+    }
+
+    private long forward(long address) {
+        return memory.getLong((int) address) & ADDRESS_MASK;
+    }
+
+    private void move(int object, long word, int size) {
+        int target = (int) (word & ADDRESS_MASK);
+        if (target != object) {
+            memory.put(target, memory, object, size);
+        }
+        memory.putLong(target, word & HEADER_MASK);
+    }
+
+    private void unmark(IntList objects) {
+        for (int i = 0; i < objects.size; i++) {
+            int object = objects.values[i];
+            memory.putLong(object, memory.getLong(object) & HEADER_MASK);
+        }
+    }
+
+    /**
+     * Old世代のオブジェクトの配置をカードに記録し直し、Young世代を指すフィールドのカードだけをダーティにします。
+     */
+    private void rebuildCards(int oldTop, boolean survivors) {
+        Arrays.fill(heap.cards, Heap.CLEAN);
+        LongUnaryOperator identity = address -> address;
+        for (int object = heap.oldStart, size; object < oldTop; object += size) {
+            size = heap.objectSize(object);
+            heap.recordObject(object, size);
+            if (survivors) {
+                updateFields(object, 0, Integer.MAX_VALUE, identity, true);
+            }
+        }
+    }
+
+    /**
+     * 呼び出すたびにワーカーを順に替えて更新を行う操作を返します。
+     */
+    private static LongUnaryOperator roundRobin(LongUnaryOperator[] operators) {
+        int[] next = new int[1];
+        return address -> {
+            LongUnaryOperator operator = operators[next[0]];
+            next[0] = (next[0] + 1) % operators.length;
+            return operator.applyAsLong(address);
+        };
+    }
+
+    /**
+     * すべてのルートの参照を更新します。
+     */
+    private void updateRoots(LongUnaryOperator update) {
+        for (Interpreter mutator : mutators) {
+            updateStack(mutator.getStack(), update);
+        }
+        for (RuntimeClass type : classes) {
+            if (type == null) {
+                continue;
+            }
+            long[] statics = type.staticRefs;
+            for (int i = 0; i < statics.length; i++) {
+                if (statics[i] > 0) {
+                    statics[i] = update.applyAsLong(statics[i]);
+                } else if (statics[i] < 0) {
+                    heap.hostReferences.mark((int) (-1L - statics[i]));
+                }
+            }
+        }
+        if (!handles.isEmpty()) {
+            Map<Long, WeakReference<Instance>> updated = new HashMap<>();
+            for (WeakReference<Instance> reference : handles.values()) {
+                Instance instance = reference.get();
+                if (instance != null) {
+                    instance.address = update.applyAsLong(instance.address);
+                    updated.put(instance.address, reference);
+                }
+            }
+            handles.clear();
+            handles.putAll(updated);
+        }
+    }
+
+    /**
+     * フレームのスロットのうち、命令位置の参照マップで参照とされ、ヒープのオブジェクトを指しているものを更新します。
+     * 呼び出し先のフレームは呼び出し元のオペランドスタックの引数と重なるため、次のフレームのベースまでを走査します。
+     */
+    private static void updateStack(ThreadStack stack, LongUnaryOperator update) {
+        long[] slots = stack.slots;
+        Object[] refs = stack.refs;
+        for (int i = 0; i < stack.depth; i++) {
+            DecodedCode code = stack.codes[i];
+            int base = stack.bases[i];
+            int pc = stack.pcs[i];
+            ReferenceMap map = code.getReferenceMap();
+            int size = map.frameSize(pc);
+            if (size < 0) {
+                throw new InternalError("到達しない命令位置で停止しています: " + code + " @" + pc);
+            }
+            int limit = i + 1 < stack.depth ? Math.min(base + size, stack.bases[i + 1]) : base + size;
+            for (int slot = base; slot < limit; slot++) {
+                if (refs[slot] == Heap.REFERENCE && map.isReference(pc, slot - base)) {
+                    slots[slot] = update.applyAsLong(slots[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * オブジェクトの参照のフィールド（配列の場合は要素）のうち、アドレスが [from, to) の範囲にあるものを更新します。
+     * @param dirty 更新後にYoung世代を指すフィールドのカードをダーティにする場合true
+     */
+    private void updateFields(int object, int from, int to, LongUnaryOperator update, boolean dirty) {
+        int id = memory.getInt(object + Heap.CLASS_OFFSET);
+        if (id == Heap.REFERENCE_ARRAY_ID) {
+            int elements = object + Heap.ARRAY_HEADER_SIZE;
+            int end = Math.min(elements + memory.getInt(object + Heap.LENGTH_OFFSET) * Heap.REFERENCE_SIZE, to);
+            for (int field = Math.max(elements, from); field < end; field += Heap.REFERENCE_SIZE) {
+                updateField(field, update, dirty);
+            }
+        } else {
+            for (int offset : classes[id].referenceOffsets) {
+                int field = object + offset;
+                if (field >= from && field < to) {
+                    updateField(field, update, dirty);
+                }
+            }
+        }
+    }
+
+    private void updateField(int field, LongUnaryOperator update, boolean dirty) {
+        int compressed = memory.getInt(field);
+        if (compressed < 0) {
+            heap.hostReferences.mark(-1 - compressed);
+        } else if (compressed > 0) {
+            long value = Heap.decompress(compressed);
+            long updated = update.applyAsLong(value);
+            if (updated != value) {
+                memory.putInt(field, Heap.compress(updated));
+            }
+            if (dirty && heap.isYoung(updated)) {
+                heap.cards[field >>> Heap.CARD_SHIFT] = Heap.DIRTY;
+            }
+        }
+    }
+
+    /**
+     * オブジェクトをホストに返す値を返します。同じオブジェクトには、ホストが保持している限り同じ値を返します。
+     */
+    synchronized Instance handle(long address) {
+        WeakReference<Instance> reference = handles.get(address);
+        Instance instance = reference == null ? null : reference.get();
+        if (instance == null) {
+            instance = new Instance(heap, address);
+            handles.put(address, new WeakReference<>(instance));
+        }
+        return instance;
+    }
+
+    synchronized long getCollections(GcEvent.Kind kind) {
+        return kind == GcEvent.Kind.MINOR ? minorCollections : fullCollections;
+    }
+
+    synchronized long getTotalPauseNanos() {
+        return totalPauseNanos;
+    }
+
+    void addListener(Consumer<GcEvent> listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Consumer<GcEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * オブジェクトのアドレスの可変長の列
+     */
+    private static final class IntList {
+        int[] values = new int[256];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        static IntList concat(IntList[] lists) {
+            IntList result = new IntList();
+            for (IntList list : lists) {
+                for (int i = 0; i < list.size; i++) {
+                    result.add(list.values[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package javavm.execution;
+
+/**
+ * 1回のGCの結果
+ *
+ * 停止時間はGCを要求してから、すべてのスレッドの停止を待ってGCを終え、実行を再開させるまでの時間です。
+ * 使用量はヒープ全体（Eden、Survivor、Old）の値で、TLAB内の未使用の部分を含みます。
+ */
+public final class GcEvent {
+    /**
+     * GCの種類
+     */
+    public enum Kind {
+        /** Young世代のコピーGC */
+        MINOR,
+        /** Old世代のマーク・コンパクトを含むヒープ全体のGC */
+        FULL
+    }
+
+    private final Kind kind;
+    private final long number;
+    private final long pauseNanos;
+    private final long usedBefore;
+    private final long usedAfter;
+    private final long promotedBytes;
+    private final long heapSize;
+
+    GcEvent(Kind kind, long number, long pauseNanos, long usedBefore, long usedAfter, long promotedBytes, long heapSize) {
+        this.kind = kind;
+        this.number = number;
+        this.pauseNanos = pauseNanos;
+        this.usedBefore = usedBefore;
+        this.usedAfter = usedAfter;
+        this.promotedBytes = promotedBytes;
+        this.heapSize = heapSize;
+    }
+
+    /**
+     * GCの種類を返します。
+     * @return 種類
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * ヒープで何回目のGCかを返します（1から始まり、種類を問わず数えます）。
+     * @return 通し番号
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * 停止時間を返します。
+     * @return ナノ秒
+     */
+    public long getPauseNanos() {
+        return pauseNanos;
+    }
+
+    /**
+     * GC前の使用量を返します。
+     * @return バイト数
+     */
+    public long getUsedBefore() {
+        return usedBefore;
+    }
+
+    /**
+     * GC後の使用量を返します。
+     * @return バイト数
+     */
+    public long getUsedAfter() {
+        return usedAfter;
+    }
+
+    /**
+     * 回収したバイト数を返します。
+     * @return GC前とGC後の使用量の差
+     */
+    public long getCollectedBytes() {
+        return usedBefore - usedAfter;
+    }
+
+    /**
+     * Young世代からOld世代へ移したバイト数を返します。
+     * @return バイト数
+     */
+    public long getPromotedBytes() {
+        return promotedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "[GC " + kind.name().toLowerCase() + " #" + number + "] "
+                + (usedBefore >> 10) + "K->" + (usedAfter >> 10) + "K (" + (heapSize >> 10) + "K), promoted "
+                + (promotedBytes >> 10) + "K, " + String.format("%.3f", pauseNanos / 1e6) + "ms";
+    }
+}
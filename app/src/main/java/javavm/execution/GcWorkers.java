@@ -0,0 +1,226 @@
+package javavm.execution;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * GCの作業を並列に行うワーカースレッドの集まり
+ *
+ * ワーカー0はGCを行うスレッド自身で、残りはプールのスレッドです。ワーカーが1つの場合はプールを作りません。
+ * プールのスレッドはデーモンスレッドで、しばらくGCがなければ終了します。
+ *
+ * <p>オブジェクトをたどる作業は、ワーカーごとの {@link WorkStealingDeque} に積みます。
+ * 自分のキューが空になったワーカーは他のワーカーのキューから盗み、すべてのワーカーが作業を失った時点で終了します。</p>
+ */
+final class GcWorkers {
+    /**
+     * キューから取り出したオブジェクトの処理
+     */
+    interface Task {
+        /**
+         * オブジェクトを処理します。新たにたどるオブジェクトは {@link GcWorkers#push(int, int)} でこのワーカーのキューに積みます。
+         * @param worker ワーカーの番号
+         * @param object オブジェクトのアドレス
+         */
+        void process(int worker, int object);
+    }
+
+    // 範囲を分けて処理する作業の1回の取り分
+    private static final int CHUNK = 256;
+    // 作業のないワーカーがスピンしてから譲るまでの回数
+    private static final int SPINS = 64;
+
+    private final int count;
+    private final ThreadPoolExecutor executor;
+    private final WorkStealingDeque[] deques;
+    // 作業を持っている（盗もうとしている）ワーカーの数
+    private final AtomicInteger active = new AtomicInteger();
+    // いずれかのワーカーが例外で終了した場合true（作業を待っている他のワーカーを終了させる）
+    private volatile boolean aborted;
+
+    GcWorkers(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("GCのスレッド数が不正です: " + count);
+        }
+        this.count = count;
+        this.deques = new WorkStealingDeque[count];
+        for (int i = 0; i < count; i++) {
+            deques[i] = new WorkStealingDeque();
+        }
+        if (count == 1) {
+            this.executor = null;
+        } else {
+            AtomicInteger threads = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(count - 1, count - 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "javavm-gc-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * ワーカーの数を返します。
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * ワーカーのキューにオブジェクトを積みます。GCを行うスレッドは、作業を始める前にすべてのワーカーのキューに積めます。
+     */
+    void push(int worker, int object) {
+        deques[worker].push(object);
+    }
+
+    /**
+     * キューに積んだオブジェクトと、処理中に積まれたオブジェクトがなくなるまで、すべてのワーカーで処理します。
+     */
+    void drain(Task task) {
+        active.set(count);
+        aborted = false;
+        try {
+            run(worker -> {
+                try {
+                    drain(worker, task);
+                } catch (RuntimeException | Error e) {
+                    aborted = true;
+                    throw e;
+                }
+            });
+        } finally {
+            for (WorkStealingDeque deque : deques) {
+                deque.reset();
+            }
+        }
+    }
+
+    /**
+     * 0から {@code n - 1} までの番号を、すべてのワーカーで分担して処理します。
+     */
+    void forEach(int n, IntConsumer body) {
+        AtomicInteger next = new AtomicInteger();
+        run(worker -> {
+            for (int start; (start = next.getAndAdd(CHUNK)) < n; ) {
+                for (int i = start, end = Math.min(start + CHUNK, n); i < end; i++) {
+                    body.accept(i);
+                }
+            }
+        });
+    }
+
+    /**
+     * ワーカーのスレッドを終了します。
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void drain(int worker, Task task) {
+        WorkStealingDeque own = deques[worker];
+        while (true) {
+            int object;
+            while ((object = own.pop()) != WorkStealingDeque.EMPTY) {
+                task.process(worker, object);
+            }
+            object = steal(worker);
+            if (object != WorkStealingDeque.EMPTY) {
+                task.process(worker, object);
+                continue;
+            }
+            // 作業がなくなった。他のワーカーが作業を積むか、全員の作業がなくなるまで待つ
+            active.decrementAndGet();
+            for (int spins = 0; ; spins++) {
+                if (active.get() == 0 || aborted) {
+                    return;
+                }
+                if (hasWork()) {
+                    active.incrementAndGet();
+                    break;
+                }
+                if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private int steal(int worker) {
+        for (int i = 1; i < count; i++) {
+            WorkStealingDeque victim = deques[(worker + i) % count];
+            int object;
+            while ((object = victim.steal()) == WorkStealingDeque.ABORT) {
+                // 取り合いに負けた。要素が残っていれば盗み直す
+            }
+            if (object != WorkStealingDeque.EMPTY) {
+                return object;
+            }
+        }
+        return WorkStealingDeque.EMPTY;
+    }
+
+    private boolean hasWork() {
+        for (WorkStealingDeque deque : deques) {
+            if (!deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * すべてのワーカーで処理を実行し、完了を待ちます。いずれかのワーカーが例外をスローした場合は、すべての完了を待ってからスローします。
+     */
+    private void run(IntConsumer body) {
+        if (executor == null) {
+            body.accept(0);
+            return;
+        }
+        Future<?>[] futures = new Future<?>[count - 1];
+        for (int i = 1; i < count; i++) {
+            int worker = i;
+            futures[i - 1] = executor.submit(() -> body.accept(worker));
+        }
+        Throwable failure = null;
+        try {
+            body.accept(0);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw (Error) failure;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package javavm.execution;
+
+/**
+ * ゲストの {@code java.lang.Thread} に対応するホストのスレッド
+ *
+ * ゲストのスレッドは、開始した時点でホストの仮想スレッドを1つ割り当て、そのスレッド専用の {@link Interpreter} で
+ * {@code run()} を実行します。ゲストのスレッドのオブジェクトとホストのスレッドの対応はメソッド領域
+ * （{@link MethodArea#threads}）が保持し、スレッドが終了すると取り除きます。
+ * {@code Thread(Runnable)} で指定したRunnableもここで保持します（開始しなかったスレッドの対応は残ります）。
+ *
+ * <p>ゲストのスレッドで捕捉されなかった例外は、ホストのスレッドの既定の例外ハンドラに渡します。</p>
+ */
+final class GuestThread {
+    private final Instance thread;
+    // 以下はこのオブジェクトのロックの中で読み書きする
+    private Instance target;
+    private Thread host;
+
+    private GuestThread(Instance thread) {
+        this.thread = thread;
+    }
+
+    /**
+     * {@code Thread(Runnable)} で指定したRunnableを記録します。
+     * @throws IncompatibleClassChangeError Runnableを実装していないホストのオブジェクトを指定した場合
+     */
+    static void initialize(Interpreter interpreter, long thread, Object target, long targetSlot) {
+        if (target == null) {
+            return;
+        }
+        if (target != Heap.REFERENCE) {
+            // ホストのオブジェクト（文字列、基本型の配列、クラス）はRunnableを実装しない
+            throw new IncompatibleClassChangeError(target.getClass().getName() + "はjava/lang/Runnableを実装していません");
+        }
+        GarbageCollector collector = interpreter.getMethodArea().getHeap().collector;
+        GuestThread guest = of(interpreter.getMethodArea(), collector.handle(thread));
+        synchronized (guest) {
+            guest.target = collector.handle(targetSlot);
+        }
+    }
+
+    /**
+     * ゲストのスレッドを開始します。{@code run()} はスレッドのオブジェクトのクラスから仮想呼び出しと同じく選択します。
+     * @throws IllegalThreadStateException すでに開始している場合
+     */
+    static void start(Interpreter interpreter, long thread) {
+        MethodArea methodArea = interpreter.getMethodArea();
+        Heap heap = methodArea.getHeap();
+        GuestThread guest = of(methodArea, heap.collector.handle(thread));
+        RuntimeMethod run = methodArea.resolveMethod(heap.classOf(thread).getName().toString(), "run", "()V");
+        synchronized (guest) {
+            if (guest.host != null) {
+                throw new IllegalThreadStateException("スレッドはすでに開始しています: " + guest.thread);
+            }
+            guest.host = Thread.ofVirtual().name("javavm-" + guest.thread).start(() -> guest.execute(methodArea, run));
+        }
+    }
+
+    private void execute(MethodArea methodArea, RuntimeMethod run) {
+        Interpreter interpreter = new Interpreter(methodArea);
+        try {
+            interpreter.execute(run, thread);
+        } finally {
+            interpreter.releaseLockId();
+            interpreter.releaseOpcodeCounts();
+            methodArea.threads.remove(thread);
+        }
+    }
+
+    /**
+     * {@code Thread.run()} を実行します。Runnableを指定していればその {@code run()} を呼び出し、なければ何もしません。
+     */
+    static void run(Interpreter interpreter, long thread) {
+        MethodArea methodArea = interpreter.getMethodArea();
+        GuestThread guest = methodArea.threads.get(methodArea.getHeap().collector.handle(thread));
+        if (guest == null) {
+            return;
+        }
+        Instance target;
+        synchronized (guest) {
+            target = guest.target;
+        }
+        if (target != null) {
+            RuntimeMethod run = methodArea.resolveMethod(target.getType().getName().toString(), "run", "()V");
+            interpreter.execute(run, target);
+        }
+    }
+
+    /**
+     * ゲストのスレッドの終了を待ちます。開始していないスレッドと終了したスレッドの場合はすぐに戻ります。
+     * 待っている間はセーフ領域に入ります。
+     */
+    static void join(Interpreter interpreter, long thread) {
+        MethodArea methodArea = interpreter.getMethodArea();
+        GuestThread guest = methodArea.threads.get(methodArea.getHeap().collector.handle(thread));
+        if (guest == null) {
+            return;
+        }
+        Thread host;
+        synchronized (guest) {
+            host = guest.host;
+        }
+        if (host == null) {
+            return;
+        }
+        boolean interrupted = false;
+        interpreter.enterSafeRegion();
+        try {
+            while (true) {
+                try {
+                    host.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            interpreter.leaveSafeRegion();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@code Thread.sleep(long)} を実行します。待っている間はセーフ領域に入ります。
+     * ホストのスレッドが割り込まれた場合は、その時点で戻ります。
+     * @throws IllegalArgumentException 時間が負の場合
+     */
+    static void sleep(Interpreter interpreter, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("待機時間が負です: " + millis);
+        }
+        interpreter.enterSafeRegion();
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            interpreter.leaveSafeRegion();
+        }
+    }
+
+    private static GuestThread of(MethodArea methodArea, Instance thread) {
+        return methodArea.threads.computeIfAbsent(thread, GuestThread::new);
+    }
+}
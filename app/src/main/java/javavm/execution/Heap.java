@@ -0,0 +1,648 @@
+package javavm.execution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ゲストのオブジェクトを配置するVMのヒープ
+ *
+ * ヒープはホストのGCが管理しない1つの連続したメモリ領域（ダイレクトバッファ）で、
+ * オブジェクトと参照型の配列はその中のアドレス（領域の先頭からのバイト位置）で表します。
+ * オブジェクトの先頭にはヘッダを置き、フィールドはクラスのリンク時に決めた位置に格納します。
+ *
+ * <pre>
+ * オブジェクト:   | マークワード (8) | クラスID (4) | フィールド（大きさの順に詰める） | 8バイト境界までの詰め物 |
+ * 参照型の配列:   | マークワード (8) | クラスID (4) | 要素数 (4) | 要素 (4 × n)       | 8バイト境界までの詰め物 |
+ * </pre>
+ * フィールドの配置は {@link ObjectLayout} が決めます。
+ *
+ * <p>領域はYoung世代（Edenと2つのSurvivor）とOld世代に分け、{@link GarbageCollector} が回収します。
+ * 割り当てはEdenへのバンプポインタで行います。スレッドはEdenから {@link Tlab} 単位で領域を受け取り、
+ * その中ではロックもアトミック操作も使わずにポインタを進めるだけで割り当てます。
+ * TLABの確保と、TLABに収まらない大きさの割り当てはポインタの比較交換だけで行い、
+ * Edenの半分より大きいオブジェクトは最初からOld世代に割り当てます。空きがない場合はGCを行ってから割り当てをやり直します。</p>
+ *
+ * <pre>
+ * | 予約 (16) | Eden | Survivor | Survivor | Old（カードの境界から） |
+ * </pre>
+ *
+ * <p>Old世代からYoung世代への参照は、ヒープを {@link #CARD_SIZE} バイトごとに区切ったカードの表で記録します。
+ * インタプリタはフィールドや配列の要素に参照を格納するたびに、格納した位置のカードを {@link #DIRTY} にします。</p>
+ *
+ * <p>参照は1つのlongで表します。0はnull、正の値はヒープのアドレス、負の値はホストのオブジェクト（文字列や基本型の配列）の
+ * 参照表の番号です。スタックのスロットでは、参照の配列に {@link #REFERENCE} を置いた位置の値の配列にアドレスを格納し、
+ * staticフィールドにはこの値をそのまま格納します。</p>
+ *
+ * <p>ヒープのフィールドと配列の要素には、参照を32ビットに圧縮して格納します（{@link #compress(long)}）。
+ * オブジェクトは {@link #OBJECT_ALIGNMENT} バイト境界に置くため、アドレスを8で割った値を格納すれば32GBまでのヒープを表せます。
+ * このヒープはアドレスをintで扱うため上限が32GBより小さく、参照は常に圧縮します。</p>
+ *
+ * <p>ヒープのサイズは生成時に指定します。省略した場合はシステムプロパティ {@code javavm.heapSize}
+ * （{@code 64m}、{@code 1g} のような形式）の値、それもなければ {@link #DEFAULT_SIZE} を使用します。
+ * アドレスをintの添字で扱うため、サイズの上限は {@link #MAX_SIZE} です。
+ * Young世代は既定でヒープの3分の1で、その10分の1ずつを2つのSurvivorに割り当てます。</p>
+ */
+public final class Heap {
+    /** ヒープのサイズの既定値 */
+    public static final long DEFAULT_SIZE = 64L << 20;
+    /** ヒープのサイズの上限 */
+    public static final long MAX_SIZE = Integer.MAX_VALUE & ~7;
+    /** TLABのサイズの既定値 */
+    public static final int DEFAULT_TLAB_SIZE = 64 << 10;
+    /** Old世代に昇格するまでに生き残るGCの回数の既定値 */
+    public static final int DEFAULT_TENURING_THRESHOLD = 6;
+    /** 昇格するまでの回数の上限（マークワードの4ビットに格納するため） */
+    public static final int MAX_TENURING_THRESHOLD = 15;
+    /** ヒープのサイズを指定するシステムプロパティ */
+    public static final String SIZE_PROPERTY = "javavm.heapSize";
+
+    // ヘッダの配置。配列のヘッダだけが要素数を持つ
+    static final int HEADER_SIZE = 12;
+    static final int ARRAY_HEADER_SIZE = 16;
+    static final int CLASS_OFFSET = 8;
+    static final int LENGTH_OFFSET = 12;
+    // オブジェクトを置く境界と、圧縮した参照の大きさ
+    static final int OBJECT_ALIGNMENT = 8;
+    static final int REFERENCE_SIZE = 4;
+    private static final int COMPRESSION_SHIFT = 3;
+    // 0はnullを表すため、ヒープの先頭のこのバイト数は使用しない
+    private static final int RESERVED_SIZE = 16;
+
+    // 予約済みのクラスID（0は割り当て前の領域）
+    static final int REFERENCE_ARRAY_ID = 1;
+    private static final int FIRST_CLASS_ID = 2;
+
+    // カードの大きさとカードの状態
+    static final int CARD_SHIFT = 9;
+    static final int CARD_SIZE = 1 << CARD_SHIFT;
+    static final byte CLEAN = 0;
+    static final byte DIRTY = 1;
+
+    /** スタックのスロットがヒープのオブジェクトを指していることを表す印 */
+    static final Object REFERENCE = new Object() {
+        @Override
+        public String toString() {
+            return "REFERENCE";
+        }
+    };
+
+    final ByteBuffer memory;
+    private final long size;
+    private final int tlabSize;
+    private final int tenuringThreshold;
+    final GarbageCollector collector;
+    final Monitors monitors;
+
+    // 領域の境界
+    final int edenStart;
+    final int edenEnd;
+    final int survivorSize;
+    final int oldStart;
+    final int oldEnd;
+    // Edenと、Old世代に次に割り当てる位置
+    final AtomicLong edenTop;
+    final AtomicLong oldTop;
+    // 使用中のSurvivor（from）と空のSurvivor（to）の先頭、fromに次に割り当てる位置。GCの間だけ変更する
+    int fromStart;
+    int toStart;
+    int survivorTop;
+    // カードごとの状態と、Old世代のカードの先頭の位置を含むオブジェクトのアドレス
+    final byte[] cards;
+    final int[] cardObjects;
+
+    private final AtomicLong tlabRefills = new AtomicLong();
+    final HostReferenceTable hostReferences = new HostReferenceTable();
+    // GCの後に空にするため、このヒープから割り当てるすべてのTLAB
+    private final Set<Tlab> tlabs = Collections.newSetFromMap(new WeakHashMap<>());
+    // クラスIDからクラスへの表。登録はロックの中で行い、配列を置き換えて公開する
+    private volatile RuntimeClass[] classes = new RuntimeClass[64];
+    private int classCount = FIRST_CLASS_ID;
+
+    /**
+     * システムプロパティ {@code javavm.heapSize} のサイズ（指定がない場合は既定のサイズ）でヒープを生成します。
+     * @throws IllegalArgumentException システムプロパティの値が不正な場合
+     */
+    public Heap() {
+        this(configuredSize(), DEFAULT_TLAB_SIZE);
+    }
+
+    /**
+     * サイズを指定してヒープを生成します。Young世代はヒープの3分の1です。
+     * @param size ヒープのバイト数
+     * @param tlabSize TLABのバイト数
+     * @throws IllegalArgumentException サイズが8の倍数でないか上限を超える場合、またはTLABがEdenより大きい場合
+     */
+    public Heap(long size, int tlabSize) {
+        this(size, tlabSize, size / 3, DEFAULT_TENURING_THRESHOLD);
+    }
+
+    /**
+     * サイズと世代の構成を指定してヒープを生成します。
+     * @param size ヒープのバイト数
+     * @param tlabSize TLABのバイト数
+     * @param youngSize Young世代（Edenと2つのSurvivor）のバイト数
+     * @param tenuringThreshold Old世代に昇格するまでに生き残るGCの回数（1以上 {@link #MAX_TENURING_THRESHOLD} 以下）
+     * @throws IllegalArgumentException サイズが8の倍数でないか上限を超える場合、TLABがEdenより大きい場合、
+     *         Old世代の領域が残らない場合、または昇格までの回数が範囲外の場合
+     */
+    public Heap(long size, int tlabSize, long youngSize, int tenuringThreshold) {
+        if (size <= RESERVED_SIZE || size > MAX_SIZE || size % OBJECT_ALIGNMENT != 0) {
+            throw new IllegalArgumentException("ヒープのサイズが不正です: " + size);
+        }
+        if (tlabSize < ARRAY_HEADER_SIZE || tlabSize % OBJECT_ALIGNMENT != 0 || tlabSize > size) {
+            throw new IllegalArgumentException("TLABのサイズが不正です: " + tlabSize);
+        }
+        if (youngSize <= 0 || youngSize >= size) {
+            throw new IllegalArgumentException("Young世代のサイズが不正です: " + youngSize);
+        }
+        if (tenuringThreshold < 1 || tenuringThreshold > MAX_TENURING_THRESHOLD) {
+            throw new IllegalArgumentException("昇格までの回数が範囲外です: " + tenuringThreshold);
+        }
+        int survivor = (int) (youngSize / 10) & ~(OBJECT_ALIGNMENT - 1);
+        int eden = (int) (youngSize - 2L * survivor) & ~(OBJECT_ALIGNMENT - 1);
+        if (eden < tlabSize) {
+            throw new IllegalArgumentException("TLABがEdenより大きくなります: Eden " + eden + "バイト, TLAB " + tlabSize + "バイト");
+        }
+        int old = (RESERVED_SIZE + eden + 2 * survivor + CARD_SIZE - 1) & ~(CARD_SIZE - 1);
+        if (old >= size) {
+            throw new IllegalArgumentException("Old世代の領域が残りません: ヒープ " + size + "バイト, Young世代 " + youngSize + "バイト");
+        }
+        this.size = size;
+        this.tlabSize = tlabSize;
+        this.tenuringThreshold = tenuringThreshold;
+        this.memory = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+        this.edenStart = RESERVED_SIZE;
+        this.edenEnd = RESERVED_SIZE + eden;
+        this.survivorSize = survivor;
+        this.fromStart = edenEnd;
+        this.toStart = edenEnd + survivor;
+        this.survivorTop = fromStart;
+        this.oldStart = old;
+        this.oldEnd = (int) size;
+        this.edenTop = new AtomicLong(edenStart);
+        this.oldTop = new AtomicLong(oldStart);
+        int cardCount = (int) ((size + CARD_SIZE - 1) >>> CARD_SHIFT);
+        this.cards = new byte[cardCount];
+        this.cardObjects = new int[cardCount];
+        this.collector = new GarbageCollector(this);
+        this.monitors = new Monitors(this);
+    }
+
+    /**
+     * {@code 64m} のような形式のサイズを解析します。接尾辞k/m/g（大文字も可）はそれぞれ2の10乗、20乗、30乗倍です。
+     * @param text サイズの文字列
+     * @return バイト数
+     * @throws IllegalArgumentException 形式が不正な場合
+     */
+    public static long parseSize(String text) {
+        String trimmed = text.trim();
+        int shift = 0;
+        if (!trimmed.isEmpty()) {
+            switch (Character.toLowerCase(trimmed.charAt(trimmed.length() - 1))) {
+                case 'k':
+                    shift = 10;
+                    break;
+                case 'm':
+                    shift = 20;
+                    break;
+                case 'g':
+                    shift = 30;
+                    break;
+                default:
+                    break;
+            }
+        }
+        String digits = shift == 0 ? trimmed : trimmed.substring(0, trimmed.length() - 1);
+        try {
+            long value = Long.parseLong(digits);
+            if (value <= 0 || value > Long.MAX_VALUE >> shift) {
+                throw new IllegalArgumentException("サイズが範囲外です: " + text);
+            }
+            return value << shift;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("サイズの形式が不正です: " + text, e);
+        }
+    }
+
+    private static long configuredSize() {
+        String value = System.getProperty(SIZE_PROPERTY);
+        return value == null ? DEFAULT_SIZE : parseSize(value);
+    }
+
+    /**
+     * ヒープのサイズを返します。
+     * @return バイト数
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * TLABのサイズを返します。
+     * @return バイト数
+     */
+    public int getTlabSize() {
+        return tlabSize;
+    }
+
+    /**
+     * Young世代（Edenと2つのSurvivor）のサイズを返します。
+     * @return バイト数
+     */
+    public long getYoungSize() {
+        return oldStart - edenStart;
+    }
+
+    /**
+     * Old世代に昇格するまでに生き残るGCの回数を返します。
+     * @return 回数
+     */
+    public int getTenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    /**
+     * 割り当て済みのバイト数を返します。Eden、使用中のSurvivor、Old世代の合計で、TLAB内の未使用の部分を含みます。
+     * @return バイト数
+     */
+    public long getUsed() {
+        return edenTop.get() - edenStart + survivorTop - fromStart + getOldUsed();
+    }
+
+    /**
+     * Old世代に割り当て済みのバイト数を返します。
+     * @return バイト数
+     */
+    public long getOldUsed() {
+        return oldTop.get() - oldStart;
+    }
+
+    /**
+     * TLABを確保した回数を返します。
+     * @return 回数
+     */
+    public long getTlabRefills() {
+        return tlabRefills.get();
+    }
+
+    /**
+     * ヒープ全体のGC（Full GC）を行います。別のスレッドがGCを行っている場合は、その完了を待ってから行います。
+     * ゲストのコードを実行中のスレッドはすべて、次のセーフポイントで停止します。
+     */
+    public void collect() {
+        while (!collector.collect(null, GcEvent.Kind.FULL)) {
+            // 別のスレッドのGCが終わった。改めて要求する
+        }
+    }
+
+    /**
+     * GCを並列に行うスレッドの数を変更します。既定はシステムプロパティ {@code javavm.gcThreads} の値、
+     * それもなければプロセッサの数です。GCの実行中は完了を待ってから変更します。
+     * @param threads スレッドの数（GCを要求したスレッドを含む）
+     * @throws IllegalArgumentException 1未満の場合
+     */
+    public void setGcThreads(int threads) {
+        collector.setThreads(threads);
+    }
+
+    /**
+     * GCを並列に行うスレッドの数を返します。
+     * @return スレッドの数
+     */
+    public int getGcThreads() {
+        return collector.getThreads();
+    }
+
+    /**
+     * Minor GCを行った回数を返します。
+     * @return 回数
+     */
+    public long getMinorCollections() {
+        return collector.getCollections(GcEvent.Kind.MINOR);
+    }
+
+    /**
+     * Full GCを行った回数を返します。
+     * @return 回数
+     */
+    public long getFullCollections() {
+        return collector.getCollections(GcEvent.Kind.FULL);
+    }
+
+    /**
+     * これまでのGCの停止時間の合計を返します。
+     * @return ナノ秒
+     */
+    public long getTotalPauseNanos() {
+        return collector.getTotalPauseNanos();
+    }
+
+    /**
+     * GCが終わるたびに結果を受け取るリスナーを追加します。
+     * リスナーはGCを行ったスレッドで、停止していたスレッドの実行を再開させた後に呼び出します。
+     * @param listener リスナー
+     */
+    public void addGcListener(Consumer<GcEvent> listener) {
+        collector.addListener(listener);
+    }
+
+    /**
+     * リスナーを削除します。
+     * @param listener 追加したリスナー
+     */
+    public void removeGcListener(Consumer<GcEvent> listener) {
+        collector.removeListener(listener);
+    }
+
+    /**
+     * オブジェクトのクラスを返します。
+     * @param address オブジェクトのアドレス
+     * @return クラス。参照型の配列の場合はnull
+     */
+    public RuntimeClass classOf(long address) {
+        int id = memory.getInt((int) address + CLASS_OFFSET);
+        RuntimeClass[] table = classes;
+        if (id < table.length && table[id] != null) {
+            return table[id];
+        }
+        if (id == REFERENCE_ARRAY_ID) {
+            return null;
+        }
+        synchronized (this) {
+            if (id < FIRST_CLASS_ID || id >= classCount) {
+                throw new InternalError("オブジェクトのクラスIDが不正です: " + id + " (@" + address + ")");
+            }
+            return classes[id];
+        }
+    }
+
+    /**
+     * 参照型の配列の要素数を返します。
+     * @param address 配列のアドレス
+     * @return 要素数
+     */
+    public int arrayLength(long address) {
+        return memory.getInt((int) address + LENGTH_OFFSET);
+    }
+
+    /**
+     * クラスにクラスIDを割り当てます。クラスのリンク時に1回だけ呼び出します。
+     */
+    synchronized int register(RuntimeClass runtimeClass) {
+        int id = classCount++;
+        RuntimeClass[] table = classes;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[id] = runtimeClass;
+        classes = table;
+        return id;
+    }
+
+    /**
+     * オブジェクトを割り当て、ヘッダを設定します。フィールドはすべて0（null）です。
+     */
+    long allocateInstance(Tlab tlab, RuntimeClass type) {
+        long address = tlab.allocate(type.instanceSize);
+        memory.putInt((int) address + CLASS_OFFSET, type.heapId);
+        return address;
+    }
+
+    /**
+     * 参照型の配列を割り当て、ヘッダを設定します。要素はすべてnullです。
+     * @throws NegativeArraySizeException 要素数が負の場合
+     */
+    long allocateReferenceArray(Tlab tlab, int length) {
+        if (length < 0) {
+            throw new NegativeArraySizeException(Integer.toString(length));
+        }
+        long address = tlab.allocate(arraySize(length));
+        memory.putInt((int) address + CLASS_OFFSET, REFERENCE_ARRAY_ID);
+        memory.putInt((int) address + LENGTH_OFFSET, length);
+        return address;
+    }
+
+    /**
+     * 配列の要素のアドレスを返します。
+     * @throws ArrayIndexOutOfBoundsException 添字が範囲外の場合
+     */
+    int elementAddress(long array, int index) {
+        int length = arrayLength(array);
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return (int) array + ARRAY_HEADER_SIZE + index * REFERENCE_SIZE;
+    }
+
+    /**
+     * 参照型の配列のバイト数を返します。
+     */
+    static long arraySize(int length) {
+        return (ARRAY_HEADER_SIZE + (long) length * REFERENCE_SIZE + OBJECT_ALIGNMENT - 1) & -OBJECT_ALIGNMENT;
+    }
+
+    /**
+     * TLABに収まらない割り当てを行います。TLABの残りが少ない場合は新しいTLABに切り替え、
+     * TLABの半分より大きい割り当てはEdenから直接、Edenの半分より大きい割り当てはOld世代に行います。
+     * 空きがない場合は、まずMinor GC、それでも足りなければFull GCを行ってからやり直します。
+     * @throws OutOfMemoryError Full GCの後も空きがない場合
+     */
+    long allocateSlow(Tlab tlab, long bytes) {
+        boolean tenured = bytes > (edenEnd - edenStart) / 2;
+        // このスレッドが行ったGCの回数（別のスレッドのGCの完了を待った場合は数えない）
+        int collections = 0;
+        while (true) {
+            long address = tenured ? allocateOld(bytes) : allocateYoung(tlab, bytes);
+            if (address >= 0) {
+                return address;
+            }
+            if (collections == 2) {
+                throw new OutOfMemoryError("Java heap space (" + size + "バイトのヒープで" + bytes + "バイトを割り当てられません)");
+            }
+            GcEvent.Kind kind = tenured || collections > 0 ? GcEvent.Kind.FULL : GcEvent.Kind.MINOR;
+            if (collector.collect(tlab.owner, kind)) {
+                collections++;
+            }
+        }
+    }
+
+    private long allocateYoung(Tlab tlab, long bytes) {
+        if (bytes > tlabSize / 2) {
+            return allocateEden(bytes);
+        }
+        tlab.reset();
+        long start = reserve(edenTop, edenEnd, tlabSize);
+        if (start < 0) {
+            // 残りがTLABより小さい場合は、要求された大きさだけをEdenから直接割り当てる
+            return allocateEden(bytes);
+        }
+        clear(start, tlabSize);
+        tlabRefills.incrementAndGet();
+        tlab.top = start + bytes;
+        tlab.end = start + tlabSize;
+        return start;
+    }
+
+    private long allocateEden(long bytes) {
+        long address = reserve(edenTop, edenEnd, bytes);
+        if (address >= 0) {
+            clear(address, bytes);
+        }
+        return address;
+    }
+
+    private long allocateOld(long bytes) {
+        long address = reserve(oldTop, oldEnd, bytes);
+        if (address >= 0) {
+            clear(address, bytes);
+            recordObject((int) address, (int) bytes);
+        }
+        return address;
+    }
+
+    private void clear(long start, long bytes) {
+        for (int offset = (int) start, end = (int) (start + bytes); offset < end; offset += OBJECT_ALIGNMENT) {
+            memory.putLong(offset, 0);
+        }
+    }
+
+    /**
+     * 境界のポインタを比較交換で進めて領域を確保します。
+     * @return 確保した領域の先頭。空きがない場合は-1
+     */
+    static long reserve(AtomicLong top, long end, long bytes) {
+        while (true) {
+            long current = top.get();
+            if (bytes > end - current) {
+                return -1;
+            }
+            if (top.compareAndSet(current, current + bytes)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Old世代に置いたオブジェクトを、先頭の位置がオブジェクトの範囲に含まれるカードに記録します。
+     * GCはこの記録から、カードの範囲のオブジェクトを順にたどります。
+     */
+    void recordObject(int address, int bytes) {
+        int last = (address + bytes - 1) >>> CARD_SHIFT;
+        for (int card = (address + CARD_SIZE - 1) >>> CARD_SHIFT; card <= last; card++) {
+            cardObjects[card] = address;
+        }
+    }
+
+    /**
+     * オブジェクトのバイト数を返します。
+     */
+    int objectSize(int address) {
+        int id = memory.getInt(address + CLASS_OFFSET);
+        if (id == REFERENCE_ARRAY_ID) {
+            return (int) arraySize(memory.getInt(address + LENGTH_OFFSET));
+        }
+        return classOf(address).instanceSize;
+    }
+
+    /**
+     * アドレスがYoung世代にあるかどうかを返します。
+     */
+    boolean isYoung(long address) {
+        return address >= edenStart && address < oldStart;
+    }
+
+    /**
+     * クラスIDからクラスへの表の写しを返します。予約済みのクラスIDの位置はnullです。
+     */
+    synchronized RuntimeClass[] registeredClasses() {
+        return Arrays.copyOf(classes, classCount);
+    }
+
+    /**
+     * TLABを登録します。登録したTLABはGCの後に空にします。
+     */
+    void addTlab(Tlab tlab) {
+        synchronized (tlabs) {
+            tlabs.add(tlab);
+        }
+    }
+
+    /**
+     * GCでEdenを空にした後、すべてのTLABを空にします。
+     */
+    void resetTlabs() {
+        synchronized (tlabs) {
+            for (Tlab tlab : tlabs) {
+                tlab.reset();
+            }
+        }
+    }
+
+    /**
+     * スタックのスロットの参照を、フィールドなどに格納する形式に変換します。
+     * @param reference 参照の配列の値（{@link #REFERENCE}、null、またはホストのオブジェクト）
+     * @param slot 値の配列の値（ヒープのオブジェクトの場合はアドレス）
+     * @return 格納する値
+     */
+    long encode(Object reference, long slot) {
+        if (reference == REFERENCE) {
+            return slot;
+        }
+        if (reference == null) {
+            return 0;
+        }
+        // フィールドから読んだホストのオブジェクトは、値の配列に番号が残っている。
+        // GCで解放した番号は別のオブジェクトに再利用されるため、同じオブジェクトを指している場合だけ使用する
+        if (slot < 0 && hostReferences.peek((int) (-1L - slot)) == reference) {
+            return slot;
+        }
+        return encodeHost(reference);
+    }
+
+    /**
+     * ホストのオブジェクトを参照表に登録し、フィールドなどに格納する形式に変換します。
+     */
+    long encodeHost(Object object) {
+        return -1L - hostReferences.register(object);
+    }
+
+    /**
+     * 参照をヒープのフィールドと配列の要素に格納する32ビットの形式に圧縮します。
+     * @param value 参照（0はnull、正の値はアドレス、負の値はホストのオブジェクト）
+     * @return 0はnull、正の値はアドレスを8で割った値、負の値はホストのオブジェクト（元の値のまま）
+     */
+    static int compress(long value) {
+        return (int) (value > 0 ? value >>> COMPRESSION_SHIFT : value);
+    }
+
+    /**
+     * 圧縮した参照を元に戻します。
+     */
+    static long decompress(int value) {
+        return value > 0 ? (long) value << COMPRESSION_SHIFT : value;
+    }
+
+    /**
+     * フィールドなどに格納した参照を、スタックの参照の配列に置く値に変換します。
+     * ヒープのオブジェクトの場合、アドレスは格納した値そのものです。
+     * @param value 格納した値
+     * @return {@link #REFERENCE}、null、またはホストのオブジェクト
+     */
+    Object referenceOf(long value) {
+        if (value > 0) {
+            return REFERENCE;
+        }
+        return value == 0 ? null : hostReferences.get((int) (-1L - value));
+    }
+
+    @Override
+    public String toString() {
+        return "Heap[" + getUsed() + "/" + size + "]";
+    }
+}
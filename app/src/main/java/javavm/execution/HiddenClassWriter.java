@@ -0,0 +1,407 @@
+package javavm.execution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link MethodCompiler} が生成するホストのクラスのクラスファイルを組み立てるクラス
+ *
+ * 定数プール、メソッドのCode属性、ラベルによる分岐先の解決だけを扱います。
+ * クラスファイルのバージョンは49（Java 5）で出力します。バージョン50以降で必要なStackMapTable属性を生成せずに済み、
+ * ホストのVMは型推論による検証を行います。
+ *
+ * <p>命令はメソッドごとに {@link #beginMethod(int)} から {@link #endMethod(int, String, String, int, int)} までの間に書き込みます。
+ * ラベルは番号で指定し、メソッドの終わりで分岐先のオフセットを解決します。</p>
+ */
+final class HiddenClassWriter {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int MAJOR_VERSION = 49;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final Buffer constantPool = new Buffer();
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+    private final Buffer methods = new Buffer();
+    private int methodCount;
+
+    // 書き込み中のメソッドの命令とラベル
+    private final Buffer code = new Buffer();
+    private int[] labels = new int[0];
+    // 未解決の分岐ごとに、命令の先頭位置、オフセットを書き込む位置、ラベル、オフセットのバイト数の4要素
+    private int[] fixups = new int[64];
+    private int fixupCount;
+
+    /**
+     * メソッドの書き込みを開始します。
+     * @param labelCount メソッドで使用するラベルの数
+     */
+    void beginMethod(int labelCount) {
+        code.length = 0;
+        labels = new int[labelCount];
+        Arrays.fill(labels, -1);
+        fixupCount = 0;
+    }
+
+    /**
+     * 書き込んだ命令でメソッドを完成させます。
+     * @throws IllegalStateException 命令列が長すぎる場合、または分岐先が16ビットのオフセットで届かない場合
+     */
+    void endMethod(int accessFlags, String name, String descriptor, int maxStack, int maxLocals) {
+        if (code.length > 0xFFFF) {
+            throw new IllegalStateException("メソッドの命令列が長すぎます: " + code.length + "バイト");
+        }
+        if (maxLocals > 0xFFFF) {
+            throw new IllegalStateException("ローカル変数が多すぎます: " + maxLocals);
+        }
+        for (int i = 0; i < fixupCount * 4; i += 4) {
+            int target = labels[fixups[i + 2]];
+            if (target < 0) {
+                throw new IllegalStateException("ラベルの位置が決まっていません: " + fixups[i + 2]);
+            }
+            int offset = target - fixups[i];
+            if (fixups[i + 3] == 2) {
+                if (offset != (short) offset) {
+                    throw new IllegalStateException("分岐先が遠すぎます: " + offset);
+                }
+                code.putShort(fixups[i + 1], offset);
+            } else {
+                code.putInt(fixups[i + 1], offset);
+            }
+        }
+
+        methods.u2(accessFlags);
+        methods.u2(utf8(name));
+        methods.u2(utf8(descriptor));
+        methods.u2(1);
+        methods.u2(utf8("Code"));
+        methods.u4(12 + code.length);
+        methods.u2(maxStack);
+        methods.u2(maxLocals);
+        methods.u4(code.length);
+        methods.bytes(code.data, code.length);
+        // 例外テーブルと属性はない
+        methods.u2(0);
+        methods.u2(0);
+        methodCount++;
+    }
+
+    /**
+     * クラスファイルを出力します。
+     * @param className 内部形式のクラス名
+     * @param superName 内部形式のスーパークラス名
+     * @return クラスファイルのバイト列
+     */
+    byte[] toByteArray(String className, String superName) {
+        int thisClass = classRef(className);
+        int superClass = classRef(superName);
+        Buffer out = new Buffer();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(MAJOR_VERSION);
+        out.u2(constantCount);
+        out.bytes(constantPool.data, constantPool.length);
+        out.u2(ACC_FINAL | ACC_SUPER);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(0);
+        out.u2(0);
+        out.u2(methodCount);
+        out.bytes(methods.data, methods.length);
+        out.u2(0);
+        return Arrays.copyOf(out.data, out.length);
+    }
+
+    /**
+     * 書き込み中の位置にラベルを置きます。
+     */
+    void bind(int label) {
+        labels[label] = code.length;
+    }
+
+    /**
+     * オペランドのない命令を書き込みます。
+     */
+    void op(int opcode) {
+        code.u1(opcode);
+    }
+
+    /**
+     * ローカル変数のロード・ストア命令を書き込みます。番号に応じて短縮形またはwide付きの命令にします。
+     * @param opcode iload〜aload、istore〜astoreのいずれか
+     * @param index ローカル変数の番号
+     */
+    void local(int opcode, int index) {
+        boolean load = opcode <= Opcode.ALOAD;
+        if (index <= 3) {
+            int base = load ? Opcode.ILOAD_0 + (opcode - Opcode.ILOAD) * 4 : Opcode.ISTORE_0 + (opcode - Opcode.ISTORE) * 4;
+            code.u1(base + index);
+        } else if (index <= 0xFF) {
+            code.u1(opcode);
+            code.u1(index);
+        } else {
+            code.u1(Opcode.WIDE);
+            code.u1(opcode);
+            code.u2(index);
+        }
+    }
+
+    /**
+     * int定数を積む命令を書き込みます。
+     */
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.u1(Opcode.ICONST_0 + value);
+        } else if (value == (byte) value) {
+            code.u1(Opcode.BIPUSH);
+            code.u1(value);
+        } else if (value == (short) value) {
+            code.u1(Opcode.SIPUSH);
+            code.u2(value);
+        } else {
+            loadConstant(constant(CONSTANT_INTEGER, "I" + value, value, 0));
+        }
+    }
+
+    /**
+     * long定数を積む命令を書き込みます。
+     */
+    void pushLong(long value) {
+        if (value == 0 || value == 1) {
+            code.u1(Opcode.LCONST_0 + (int) value);
+        } else {
+            code.u1(Opcode.LDC2_W);
+            code.u2(constant(CONSTANT_LONG, "J" + value, (int) (value >>> 32), (int) value));
+        }
+    }
+
+    /**
+     * メソッド呼び出し命令を書き込みます。
+     */
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        code.u1(opcode);
+        code.u2(memberRef(CONSTANT_METHODREF, owner, name, descriptor));
+    }
+
+    /**
+     * フィールドアクセス命令を書き込みます。
+     */
+    void field(int opcode, String owner, String name, String descriptor) {
+        code.u1(opcode);
+        code.u2(memberRef(CONSTANT_FIELDREF, owner, name, descriptor));
+    }
+
+    /**
+     * クラスをオペランドに取る命令（checkcastなど）を書き込みます。
+     */
+    void type(int opcode, String className) {
+        code.u1(opcode);
+        code.u2(classRef(className));
+    }
+
+    /**
+     * 分岐命令を書き込みます。
+     */
+    void jump(int opcode, int label) {
+        int start = code.length;
+        code.u1(opcode);
+        fixup(start, label, 2);
+        code.u2(0);
+    }
+
+    /**
+     * tableswitch命令を書き込みます。
+     * @param targets low〜highのキーに対応する分岐先のラベル
+     */
+    void tableSwitch(int low, int high, int defaultLabel, int[] targets) {
+        int start = switchHeader(Opcode.TABLESWITCH, defaultLabel);
+        code.u4(low);
+        code.u4(high);
+        for (int target : targets) {
+            fixup(start, target, 4);
+            code.u4(0);
+        }
+    }
+
+    /**
+     * lookupswitch命令を書き込みます。
+     * @param keys 昇順のキー
+     * @param targets キーに対応する分岐先のラベル
+     */
+    void lookupSwitch(int defaultLabel, int[] keys, int[] targets) {
+        int start = switchHeader(Opcode.LOOKUPSWITCH, defaultLabel);
+        code.u4(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            code.u4(keys[i]);
+            fixup(start, targets[i], 4);
+            code.u4(0);
+        }
+    }
+
+    private int switchHeader(int opcode, int defaultLabel) {
+        int start = code.length;
+        code.u1(opcode);
+        while (code.length % 4 != 0) {
+            code.u1(0);
+        }
+        fixup(start, defaultLabel, 4);
+        code.u4(0);
+        return start;
+    }
+
+    private void fixup(int start, int label, int width) {
+        if (fixupCount * 4 == fixups.length) {
+            fixups = Arrays.copyOf(fixups, fixups.length * 2);
+        }
+        int base = fixupCount++ * 4;
+        fixups[base] = start;
+        fixups[base + 1] = code.length;
+        fixups[base + 2] = label;
+        fixups[base + 3] = width;
+    }
+
+    private void loadConstant(int index) {
+        if (index <= 0xFF) {
+            code.u1(Opcode.LDC);
+            code.u1(index);
+        } else {
+            code.u1(Opcode.LDC_W);
+            code.u2(index);
+        }
+    }
+
+    private int utf8(String value) {
+        Integer index = constants.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new DataOutputStream(bytes).writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        constantPool.u1(CONSTANT_UTF8);
+        constantPool.bytes(bytes.toByteArray(), bytes.size());
+        return register("U" + value, 1);
+    }
+
+    private int classRef(String className) {
+        Integer index = constants.get("C" + className);
+        if (index != null) {
+            return index;
+        }
+        int name = utf8(className);
+        constantPool.u1(CONSTANT_CLASS);
+        constantPool.u2(name);
+        return register("C" + className, 1);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classRef(owner);
+        int nameAndType = constant(CONSTANT_NAME_AND_TYPE, "N" + name + ":" + descriptor, utf8(name), utf8(descriptor));
+        constantPool.u1(tag);
+        constantPool.u2(ownerIndex);
+        constantPool.u2(nameAndType);
+        return register(key, 1);
+    }
+
+    /**
+     * 2つの値を持つ定数（Integerは1つ目だけ、Longは上位と下位、NameAndTypeは名前と記述子）を追加します。
+     */
+    private int constant(int tag, String key, int first, int second) {
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        constantPool.u1(tag);
+        switch (tag) {
+            case CONSTANT_INTEGER:
+                constantPool.u4(first);
+                return register(key, 1);
+            case CONSTANT_LONG:
+                constantPool.u4(first);
+                constantPool.u4(second);
+                // long定数は定数プールの2エントリを占める
+                return register(key, 2);
+            default:
+                constantPool.u2(first);
+                constantPool.u2(second);
+                return register(key, 1);
+        }
+    }
+
+    private int register(String key, int size) {
+        int index = constantCount;
+        constantCount += size;
+        if (constantCount > 0xFFFF) {
+            throw new IllegalStateException("定数プールのエントリが多すぎます");
+        }
+        constants.put(key, index);
+        return index;
+    }
+
+    /**
+     * ビッグエンディアンで書き込む伸長可能なバイト列
+     */
+    private static final class Buffer {
+        byte[] data = new byte[256];
+        int length;
+
+        void u1(int value) {
+            ensure(1);
+            data[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            ensure(2);
+            putShort(length, value);
+            length += 2;
+        }
+
+        void u4(int value) {
+            ensure(4);
+            putInt(length, value);
+            length += 4;
+        }
+
+        void bytes(byte[] source, int count) {
+            ensure(count);
+            System.arraycopy(source, 0, data, length, count);
+            length += count;
+        }
+
+        void putShort(int position, int value) {
+            data[position] = (byte) (value >>> 8);
+            data[position + 1] = (byte) value;
+        }
+
+        void putInt(int position, int value) {
+            putShort(position, value >>> 16);
+            putShort(position + 2, value);
+        }
+
+        private void ensure(int count) {
+            if (length + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package javavm.execution;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * ヒープに格納したホストのオブジェクトの参照表
+ *
+ * ヒープのフィールドや配列にはホストのオブジェクト（文字列や基本型の配列）を直接格納できないため、
+ * この表に登録した番号を格納します。同じオブジェクトは、表に残っている間は同じ番号になります。
+ *
+ * <p>表はオブジェクトの識別ハッシュ値で {@link #STRIPES} 個の区分に分け、登録は区分ごとのロックの中で行います。
+ * 番号の下位のビットが区分、残りが区分の中の番号です。番号からの取得は、区分ごとに固定長の区画を並べた配列を
+ * ロックなしで読み取ります。</p>
+ *
+ * <p>表はGCから見て弱い参照です。GCはヒープのフィールドとstaticフィールドから到達した番号に印を付け
+ * （{@link #mark(int)}）、印のない番号を解放して再利用します（{@link #sweep(boolean)}）。
+ * Minor GCはOld世代のうちダーティなカードの範囲しか走査しないため、前回のGCの後に登録した番号だけを解放します。
+ * それより前に登録した番号を新たにOld世代のオブジェクトに格納するとカードがダーティになり、登録後の番号と同様に
+ * 走査されますが、Old世代のオブジェクトだけから参照される古い番号は走査されないためです。
+ * 古い番号はFull GCで解放します。</p>
+ *
+ * <p>GCがスレッドを停止している間も、ゲストのコードを実行していないホストのスレッドは登録することがあるため、
+ * 印付けの開始と解放は区分のロックの中で行います。印付けの間に登録した番号は、そのGCでは解放しません。</p>
+ */
+final class HostReferenceTable {
+    private static final int STRIPE_BITS = 4;
+    /** 区分の数 */
+    static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int STRIPE_MASK = STRIPES - 1;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    HostReferenceTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * オブジェクトを登録します。登録済みの場合は同じ番号を返します。
+     * @param object ホストのオブジェクト
+     * @return 番号
+     */
+    int register(Object object) {
+        int hash = System.identityHashCode(object) & STRIPE_MASK;
+        Stripe stripe = stripes[hash];
+        synchronized (stripe) {
+            return stripe.register(object) << STRIPE_BITS | hash;
+        }
+    }
+
+    /**
+     * 番号のオブジェクトを返します。
+     * @param index 番号
+     * @return ホストのオブジェクト
+     */
+    Object get(int index) {
+        Object object = peek(index);
+        if (object != null) {
+            return object;
+        }
+        // 別のスレッドが登録した直後で、まだ見えていない
+        Stripe stripe = stripes[index & STRIPE_MASK];
+        synchronized (stripe) {
+            int local = index >>> STRIPE_BITS;
+            return stripe.chunks[local >>> CHUNK_BITS][local & CHUNK_MASK];
+        }
+    }
+
+    /**
+     * 番号のオブジェクトをロックなしで読み取ります。別のスレッドが登録した直後の場合などはnullを返します。
+     * @param index 番号
+     * @return ホストのオブジェクト。見えない場合はnull
+     */
+    Object peek(int index) {
+        int local = index >>> STRIPE_BITS;
+        Object[][] table = stripes[index & STRIPE_MASK].chunks;
+        int chunk = local >>> CHUNK_BITS;
+        Object[] objects = chunk < table.length ? table[chunk] : null;
+        return objects == null ? null : objects[local & CHUNK_MASK];
+    }
+
+    /**
+     * 登録しているオブジェクトの数を返します。
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.indices.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * GCの印付けを始めます。すべてのスレッドが停止している間に呼び出してください。
+     */
+    void beginMarking() {
+        for (Stripe stripe : stripes) {
+            // ゲストのコードを実行していないスレッドは停止中も登録するため、区分のロックの中で始める（競合はしない）
+            synchronized (stripe) {
+                stripe.marks = new boolean[stripe.count];
+                stripe.recentBeforeMarking = stripe.recentCount;
+            }
+        }
+    }
+
+    /**
+     * 番号に印を付けます。GCのワーカーが並列に呼び出します。印付けの期間外は何もしません。
+     * @param index ヒープに格納されていた番号
+     */
+    void mark(int index) {
+        boolean[] marks = stripes[index & STRIPE_MASK].marks;
+        int local = index >>> STRIPE_BITS;
+        if (marks != null && local < marks.length) {
+            // 複数のワーカーが同じ要素に書き込んでも値は同じ。ワーカーの終了を待った後に読む
+            marks[local] = true;
+        }
+    }
+
+    /**
+     * 印のない番号を解放し、印付けを終えます。すべてのスレッドが停止している間に呼び出してください。
+     * @param full Full GCの場合true。falseの場合は前回のGCの後に登録した番号だけを解放する
+     * @return 解放した番号の数
+     */
+    int sweep(boolean full) {
+        int freed = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                freed += stripe.sweep(full);
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * 表の区分。登録も、GCの印付けの開始と解放も、このオブジェクトのロックの中で行います。
+     * GCがすべてのスレッドを停止している間も、ゲストのコードを実行していないホストのスレッド
+     * （クラスのリンクで定数を格納するスレッドなど）は登録することがあります。
+     */
+    private static final class Stripe {
+        // ロックなしで読み取るため、区画を追加するたびに配列を置き換えて公開する
+        volatile Object[][] chunks = new Object[1][];
+        final IdentityHashMap<Object, Integer> indices = new IdentityHashMap<>();
+        // 割り当てたことのある番号の数と、解放した番号
+        int count;
+        int[] free = new int[16];
+        int freeCount;
+        // 前回のGCの後に登録した番号
+        int[] recent = new int[16];
+        int recentCount;
+        // 印付けの開始時のrecentCount。これより後の番号は印付けの間に登録した
+        int recentBeforeMarking;
+        // GCの印付けの間だけ割り当てる
+        boolean[] marks;
+
+        int register(Object object) {
+            Integer existing = indices.get(object);
+            if (existing != null) {
+                return existing;
+            }
+            int local = freeCount > 0 ? free[--freeCount] : count++;
+            Object[][] table = chunks;
+            int chunk = local >>> CHUNK_BITS;
+            if (chunk >= table.length || table[chunk] == null) {
+                table = Arrays.copyOf(table, Math.max(table.length, chunk + 1));
+                table[chunk] = new Object[CHUNK_SIZE];
+            }
+            table[chunk][local & CHUNK_MASK] = object;
+            chunks = table;
+            indices.put(object, local);
+            boolean[] marked = marks;
+            if (marked != null && local < marked.length) {
+                // 印付けの間に再利用した番号は、ヒープから到達しなくても解放しない
+                marked[local] = true;
+            }
+            if (recentCount == recent.length) {
+                recent = Arrays.copyOf(recent, recentCount * 2);
+            }
+            recent[recentCount++] = local;
+            return local;
+        }
+
+        int sweep(boolean full) {
+            boolean[] marked = marks;
+            marks = null;
+            int freed = 0;
+            if (full) {
+                for (int local = 0; local < marked.length; local++) {
+                    freed += release(local, marked);
+                }
+            } else {
+                for (int i = 0; i < recentBeforeMarking; i++) {
+                    freed += release(recent[i], marked);
+                }
+            }
+            // 印付けの間に登録した番号は、次のGCまで前回のGCの後に登録した番号として残す
+            recentCount -= recentBeforeMarking;
+            System.arraycopy(recent, recentBeforeMarking, recent, 0, recentCount);
+            recentBeforeMarking = 0;
+            return freed;
+        }
+
+        private int release(int local, boolean[] marked) {
+            // 印付けの開始後に割り当てた番号（ゲストのコードを実行していないホストのスレッドが登録したもの）は残す
+            if (local >= marked.length) {
+                return 0;
+            }
+            Object[] objects = chunks[local >>> CHUNK_BITS];
+            Object object = objects[local & CHUNK_MASK];
+            if (object == null || marked[local]) {
+                return 0;
+            }
+            objects[local & CHUNK_MASK] = null;
+            indices.remove(object);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = local;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package javavm.execution;
+
+/**
+ * invokevirtual/invokeinterfaceの呼び出し箇所ごとのインラインキャッシュ
+ *
+ * レシーバのクラスと、そのクラスで選択した呼び出し先の組を保持します。最初のレシーバで単相（monomorphic）になり、
+ * 異なるクラスのレシーバが現れるたびに {@link #MAX_POLYMORPHIC} 組まで多相（polymorphic）として追加します。
+ * それを超えると超多相（megamorphic）になり、以後はキャッシュせずに毎回レシーバのクラスのvtable/itableから呼び出し先を選択します。
+ *
+ * <p>解決したメソッドをオーバーライドするクラスがリンクされていない場合は、レシーバのクラスを確かめずに
+ * 解決したメソッドを直接呼び出します（{@link State#DIRECT}）。オーバーライドするクラスが後からリンクされた時点で、
+ * 通常のキャッシュに切り替えます。</p>
+ *
+ * <p>キャッシュの組は不変の配列として公開し、読み取りはロックなしで行います。更新はこのオブジェクトのロックの中で行います。
+ * ヒット・ミス・状態遷移の回数は同期せずに数えるため、複数のスレッドから同時に呼び出した場合は概数になります。</p>
+ */
+public final class InlineCache {
+    /** 多相の状態で保持するレシーバのクラス数の上限 */
+    public static final int MAX_POLYMORPHIC = 4;
+
+    /**
+     * キャッシュの状態
+     */
+    public enum State {
+        UNINITIALIZED,
+        DIRECT,
+        MONOMORPHIC,
+        POLYMORPHIC,
+        MEGAMORPHIC
+    }
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final RuntimeMethod resolved;
+    // 引数のスロット数（レシーバを含む）
+    final int argumentSlots;
+    // (レシーバのクラス, 呼び出し先) の組を並べた配列。公開後は変更しない
+    private volatile Object[] entries = EMPTY;
+    private volatile State state;
+    private long hits;
+    private long misses;
+    private long transitions;
+
+    InlineCache(RuntimeMethod resolved) {
+        this.resolved = resolved;
+        this.argumentSlots = resolved.getArgumentSlots();
+        this.state = resolved.isAbstract() || resolved.isOverridden() ? State.UNINITIALIZED : State.DIRECT;
+    }
+
+    /**
+     * 呼び出し箇所が参照するメソッド（解決結果）を返します。
+     * @return 解決したメソッド
+     */
+    public RuntimeMethod getResolvedMethod() {
+        return resolved;
+    }
+
+    /**
+     * キャッシュの状態を返します。
+     * @return 状態
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * キャッシュにヒットした呼び出しの回数を返します。
+     * @return ヒット数
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * キャッシュにヒットしなかった呼び出しの回数を返します。超多相の状態での呼び出しを含みます。
+     * @return ミス数
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 状態が変化した回数を返します（未初期化または直接呼び出しから単相への変化を含みます）。
+     * @return 状態遷移の回数
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * キャッシュしているレシーバのクラス数を返します。
+     * @return レシーバのクラス数
+     */
+    public int size() {
+        return entries.length / 2;
+    }
+
+    /**
+     * レシーバのクラスに対する呼び出し先を返します。
+     * @param receiverClass レシーバのクラス
+     * @return 呼び出し先のメソッド
+     * @throws AbstractMethodError 呼び出し先が抽象メソッドの場合
+     */
+    RuntimeMethod lookup(RuntimeClass receiverClass) {
+        if (state == State.DIRECT && !resolved.isOverridden()) {
+            hits++;
+            return resolved;
+        }
+        Object[] cached = entries;
+        for (int i = 0; i < cached.length; i += 2) {
+            if (cached[i] == receiverClass) {
+                hits++;
+                return (RuntimeMethod) cached[i + 1];
+            }
+        }
+        return miss(receiverClass);
+    }
+
+    private RuntimeMethod miss(RuntimeClass receiverClass) {
+        misses++;
+        if (state == State.MEGAMORPHIC) {
+            return receiverClass.selectMethod(resolved);
+        }
+        RuntimeMethod target = receiverClass.selectMethod(resolved);
+        synchronized (this) {
+            Object[] cached = entries;
+            for (int i = 0; i < cached.length; i += 2) {
+                if (cached[i] == receiverClass) {
+                    // 別のスレッドが追加済み
+                    return target;
+                }
+            }
+            if (state == State.MEGAMORPHIC) {
+                return target;
+            }
+            if (cached.length / 2 == MAX_POLYMORPHIC) {
+                entries = EMPTY;
+                changeState(State.MEGAMORPHIC);
+                return target;
+            }
+            Object[] added = new Object[cached.length + 2];
+            System.arraycopy(cached, 0, added, 0, cached.length);
+            added[cached.length] = receiverClass;
+            added[cached.length + 1] = target;
+            entries = added;
+            changeState(added.length == 2 ? State.MONOMORPHIC : State.POLYMORPHIC);
+        }
+        return target;
+    }
+
+    private void changeState(State next) {
+        if (state != next) {
+            state = next;
+            transitions++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return resolved + " [" + state + ", " + size() + "]";
+    }
+}
@@ -0,0 +1,48 @@
+package javavm.execution;
+
+/**
+ * ヒープ上のオブジェクトをホストから参照するための値
+ *
+ * インタプリタの内部ではオブジェクトをヒープのアドレスだけで扱います。
+ * {@link Interpreter#execute(RuntimeMethod, Object...)} がオブジェクトを返すときと、
+ * 引数としてオブジェクトを渡すときにこのクラスを使用します。
+ *
+ * <p>ホストが保持している値はGCのルートになり、GCでオブジェクトが移動するとアドレスを更新します。
+ * 同じオブジェクトには同じ値を返すため、同じオブジェクトかどうかは {@code ==} で判定できます。</p>
+ */
+public final class Instance {
+    final Heap heap;
+    // GCがオブジェクトを移動したときに、ヒープのGCのロックの中で更新する
+    long address;
+
+    Instance(Heap heap, long address) {
+        this.heap = heap;
+        this.address = address;
+    }
+
+    /**
+     * オブジェクトのクラスを取得します。
+     * @return クラス。参照型の配列の場合はnull
+     */
+    public RuntimeClass getType() {
+        synchronized (heap.collector) {
+            return heap.classOf(address);
+        }
+    }
+
+    /**
+     * ヒープ上の現在のアドレスを取得します。GCでオブジェクトが移動すると変わります。
+     * @return アドレス
+     */
+    public long getAddress() {
+        synchronized (heap.collector) {
+            return address;
+        }
+    }
+
+    @Override
+    public String toString() {
+        RuntimeClass type = getType();
+        return (type == null ? "[]" : type.toString()) + "@" + Long.toHexString(getAddress());
+    }
+}
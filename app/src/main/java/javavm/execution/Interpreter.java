@@ -0,0 +1,1689 @@
+package javavm.execution;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+
+import javavm.classfile.AccessFlags;
+import javavm.classfile.ConstantInfo;
+import javavm.classfile.ConstantPool;
+import javavm.classfile.MethodDescriptor;
+import javavm.profile.Profiler;
+
+/**
+ * 事前デコードした命令列を実行するインタプリタ
+ *
+ * 命令列（{@link DecodedCode}）を1つのループで実行します。メソッド呼び出しでは {@link ThreadStack} にフレームを積むだけで、
+ * Javaのメソッド呼び出しを再帰させず、ホストのヒープにも割り当てを行いません。分岐先や定数はデコード時に解決済みのため、
+ * 1命令の実行はint配列の読み取りとswitchによる分岐だけで始まります。
+ *
+ * <p>オブジェクトと参照型の配列は {@link Heap} に割り当て、スタックではアドレスで扱います
+ * （参照のスロットに {@link Heap#REFERENCE}、値のスロットにアドレスを置きます）。割り当てはこのインタプリタの
+ * {@link Tlab} から行います。基本型の配列は対応するJavaの配列（boolean配列はbyte配列）で表し、実行中に発生した例外
+ * （ゼロ除算、配列の範囲外アクセスなど）はJavaの例外をそのまま使用します。
+ * 例外ハンドラの捕捉型は例外クラスの名前で判定します。</p>
+ *
+ * <p>実行中のインタプリタはGCに登録し、gotoとメソッドの入口をセーフポイントとして、GCが要求されていれば停止します
+ * （条件分岐の後方への分岐はデコード時にgotoを経由させているため、すべてのループがセーフポイントを通ります）。
+ * 参照をフィールドや配列の要素に格納するときは、格納した位置のカードをダーティにします。</p>
+ *
+ * <p>monitorenter/monitorexitは {@link Monitors} のthin lockで実行します。synchronizedメソッドのロックの取得と解放は、
+ * デコード時に命令列の入口とreturn命令の前、およびすべての例外を捕捉するハンドラに展開しています（{@link CodeDecoder}）。
+ * nativeメソッドの一部とスレッドの操作は組み込みメソッド（{@link Intrinsic}）で実行します。</p>
+ *
+ * <p>{@link Profiler} が有効な場合は、生成した時点でこのインタプリタ専用の配列を割り当て、命令ごとの実行回数を数えます。
+ * メソッドの呼び出しは {@link ThreadStack} がフレームを積むときに、後方へのgotoはこのインタプリタが数えます。</p>
+ *
+ * <p>インタプリタは状態（実行した命令数など）を持つため、スレッドごとに生成してください。</p>
+ */
+public final class Interpreter {
+    // newarrayの要素型
+    static final int T_BOOLEAN = 4;
+    static final int T_CHAR = 5;
+    static final int T_FLOAT = 6;
+    static final int T_DOUBLE = 7;
+    static final int T_BYTE = 8;
+    static final int T_SHORT = 9;
+    static final int T_INT = 10;
+    static final int T_LONG = 11;
+
+    // invokestaticの命令列上の長さ（呼び出し先から戻った後の再開位置の計算に使用する）
+    private static final int INVOKE_LENGTH = 3;
+
+    private final MethodArea methodArea;
+    private final ThreadStack stack;
+    private final Heap heap;
+    private final Tlab tlab;
+    private final GarbageCollector collector;
+    private long executedInstructions;
+    // 命令番号ごとの実行回数。プロファイラが無効な場合はnull
+    private long[] opcodeCounts;
+    // ロックの所有者の番号（最初にロックを取得するときに割り当てる）
+    private int lockId;
+    // 実行中のexecuteの入れ子の数（<clinit>の実行で入れ子になる）
+    private int executions;
+    // 最外のフレームが返した参照（ヒープのオブジェクトの場合はアドレスも）
+    private Object returnedReference;
+    private long returnedAddress;
+
+    /**
+     * メソッド領域を指定してインタプリタを生成します。
+     * @param methodArea 呼び出し先のクラスを解決するメソッド領域
+     */
+    public Interpreter(MethodArea methodArea) {
+        this(methodArea, new ThreadStack());
+    }
+
+    /**
+     * メソッド領域とフレームスタックを指定してインタプリタを生成します。
+     * スタックの上限を超えて呼び出しが深くなると、実行中のメソッドに {@link StackOverflowError} がスローされます。
+     * @param methodArea 呼び出し先のクラスを解決するメソッド領域
+     * @param stack このインタプリタを実行するスレッドのフレームスタック
+     */
+    public Interpreter(MethodArea methodArea, ThreadStack stack) {
+        this.methodArea = methodArea;
+        this.stack = stack;
+        this.heap = methodArea.getHeap();
+        this.tlab = new Tlab(heap, this);
+        this.collector = heap.collector;
+        Profiler profiler = Profiler.getInstance();
+        this.opcodeCounts = profiler.isEnabled() ? profiler.newOpcodeCounter(DecodedOpcode.MNEMONICS) : null;
+    }
+
+    /**
+     * フレームスタックを返します。
+     * @return フレームスタック
+     */
+    public ThreadStack getStack() {
+        return stack;
+    }
+
+    /**
+     * 呼び出し先のクラスを解決するメソッド領域を返します。
+     * @return メソッド領域
+     */
+    public MethodArea getMethodArea() {
+        return methodArea;
+    }
+
+    /**
+     * これまでに実行した命令の数を返します。
+     * @return 実行した命令の数
+     */
+    public long getExecutedInstructions() {
+        return executedInstructions;
+    }
+
+    /**
+     * メソッドを実行します。
+     * 引数は記述子の型に対応するラッパー型（booleanはBoolean、charはCharacter）で渡し、
+     * インスタンスメソッドの場合は先頭にthisを渡します。ヒープのオブジェクトは {@link Instance} で渡します。
+     * @param method 実行するメソッド
+     * @param arguments 引数
+     * @return 戻り値。基本型はラッパー型、ヒープのオブジェクトは {@link Instance} で返し、戻り値がない場合はnull
+     * @throws IllegalArgumentException 引数の数が一致しない場合
+     */
+    public Object execute(RuntimeMethod method, Object... arguments) {
+        // 実行中はこのスレッドのフレームがGCのルートになる
+        if (executions++ == 0) {
+            collector.attach(this);
+        }
+        try {
+            return invoke(method, arguments);
+        } finally {
+            if (--executions == 0) {
+                collector.detach(this);
+            }
+        }
+    }
+
+    private Object invoke(RuntimeMethod method, Object... arguments) {
+        MethodDescriptor descriptor = method.getDescriptor();
+        int offset = method.isStatic() ? 0 : 1;
+        if (arguments.length != descriptor.getParameterCount() + offset) {
+            throw new IllegalArgumentException("引数の数が一致しません: " + method);
+        }
+        if (method.isStatic()) {
+            method.getOwner().initialize(this);
+        }
+
+        ThreadStack stack = this.stack;
+        int entryDepth = stack.depth;
+        int entryWatermark = stack.watermark;
+        long value;
+        try {
+            // 実行中のフレームが使用していないスロットの先頭にフレームを積む
+            int base = entryWatermark;
+            stack.push(method.getDecodedCode(), base);
+            long[] slots = stack.slots;
+            Object[] refs = stack.refs;
+            int slot = base;
+            if (offset == 1) {
+                setArgument(slots, refs, slot++, arguments[0]);
+            }
+            for (int i = 0; i < descriptor.getParameterCount(); i++) {
+                Object argument = arguments[i + offset];
+                switch (descriptor.getParameterType(i)) {
+                    case 'J':
+                        slots[slot] = ((Number) argument).longValue();
+                        slot += 2;
+                        break;
+                    case 'D':
+                        slots[slot] = Double.doubleToRawLongBits(((Number) argument).doubleValue());
+                        slot += 2;
+                        break;
+                    case 'F':
+                        slots[slot++] = Float.floatToRawIntBits(((Number) argument).floatValue());
+                        break;
+                    case 'Z':
+                        slots[slot++] = (Boolean) argument ? 1 : 0;
+                        break;
+                    case 'C':
+                        slots[slot++] = (Character) argument;
+                        break;
+                    case 'L':
+                    case '[':
+                        setArgument(slots, refs, slot++, argument);
+                        break;
+                    default:
+                        slots[slot++] = ((Number) argument).intValue();
+                        break;
+                }
+            }
+            value = run(entryDepth);
+        } finally {
+            stack.unwind(entryDepth, entryWatermark);
+        }
+
+        switch (descriptor.getReturnType()) {
+            case 'V':
+                return null;
+            case 'Z':
+                return (int) value != 0;
+            case 'B':
+                return (byte) value;
+            case 'C':
+                return (char) value;
+            case 'S':
+                return (short) value;
+            case 'I':
+                return (int) value;
+            case 'J':
+                return value;
+            case 'F':
+                return Float.intBitsToFloat((int) value);
+            case 'D':
+                return Double.longBitsToDouble(value);
+            default:
+                Object reference = returnedReference;
+                returnedReference = null;
+                return reference == Heap.REFERENCE ? collector.handle(returnedAddress) : reference;
+        }
+    }
+
+    /**
+     * GCが完了するまで、このスレッドを停止したものとして扱う区間に入ります。ゲストのコードを実行中でない場合は何もしません。
+     * 区間の中ではヒープに触れてはいけません。
+     */
+    void enterSafeRegion() {
+        if (executions > 0) {
+            collector.enterSafeRegion();
+        }
+    }
+
+    /**
+     * {@link #enterSafeRegion()} の区間から出ます。GCの実行中は完了を待ちます。
+     */
+    void leaveSafeRegion() {
+        if (executions > 0) {
+            collector.leaveSafeRegion();
+        }
+    }
+
+    /**
+     * オブジェクトのロックの所有者としての番号を返します。最初の呼び出しで割り当てます。
+     */
+    int lockId() {
+        if (lockId == 0) {
+            lockId = heap.monitors.acquireId();
+        }
+        return lockId;
+    }
+
+    /**
+     * ロックの所有者の番号を解放します。このインタプリタを実行していたスレッドが終了するときに呼び出します。
+     */
+    void releaseLockId() {
+        if (lockId != 0) {
+            heap.monitors.releaseId(lockId);
+            lockId = 0;
+        }
+    }
+
+    /**
+     * 命令ごとの実行回数をプロファイラの合計に加えます。このインタプリタを実行していたスレッドが終了するときに呼び出します。
+     */
+    void releaseOpcodeCounts() {
+        if (opcodeCounts != null) {
+            Profiler.getInstance().retireOpcodeCounter(opcodeCounts);
+            opcodeCounts = null;
+        }
+    }
+
+    /**
+     * 命令列の呼び出しを数え、しきい値を超えた場合はコンパイルを要求します。
+     * @return コンパイルしたコード。コンパイルしていない場合はnull
+     */
+    private static CompiledMethod countInvocation(DecodedCode decoded) {
+        TieredCompiler.getInstance().count(++decoded.invocationCount, decoded);
+        return decoded.compiled;
+    }
+
+    /**
+     * 後方へのgotoを命令列の後方分岐として数え、しきい値を超えた場合はコンパイルを要求します。
+     * プロファイラが有効な場合は、メソッドの後方分岐としても数えます。
+     * @return コンパイルしたコード。コンパイルしていない場合はnull
+     */
+    private static CompiledMethod countBackedge(DecodedCode decoded) {
+        if (decoded.profile != null) {
+            decoded.profile.recordBackedge();
+        }
+        TieredCompiler.getInstance().count(++decoded.backedgeCount, decoded);
+        return decoded.compiled;
+    }
+
+    /**
+     * 最上位のフレームの命令位置を記録して、GCの完了を待ちます。
+     */
+    private void safepoint(int pc) {
+        stack.pcs[stack.depth - 1] = pc;
+        collector.safepoint();
+    }
+
+    private void setArgument(long[] slots, Object[] refs, int slot, Object argument) {
+        if (argument instanceof Instance) {
+            Instance instance = (Instance) argument;
+            if (instance.heap != heap) {
+                throw new IllegalArgumentException("別のヒープのオブジェクトは渡せません: " + instance);
+            }
+            refs[slot] = Heap.REFERENCE;
+            slots[slot] = instance.address;
+        } else {
+            refs[slot] = argument;
+        }
+    }
+
+    /**
+     * スタックの最上位のフレームから実行を開始し、そのフレームが戻るまで命令を実行します。
+     * 各命令は実行を終えてから命令位置を進めるため、例外が発生した時点の命令位置は発生した命令を指します。
+     * スーパー命令の一部は、先頭の命令を実行して命令位置を進めた後、後続の命令のcaseへそのまま続けて実行します。
+     * フレームを下ろすのは戻り値や例外を受け取るフレームに切り替えるときだけで、
+     * 最上位のフレームより下のフレーム情報は {@link ThreadStack} の配列に保持します。
+     * @param entryDepth 最初のフレームを積む前のフレーム数
+     * @return 基本型の戻り値（参照の場合は {@link #returnedReference} に格納）
+     */
+    @SuppressWarnings("fallthrough")
+    private long run(int entryDepth) {
+        ThreadStack stack = this.stack;
+        DecodedCode decoded = stack.codes[entryDepth];
+        int[] code = decoded.instructions;
+        long[] slots = stack.slots;
+        Object[] refs = stack.refs;
+        ByteBuffer memory = heap.memory;
+        byte[] cards = heap.cards;
+        GarbageCollector collector = this.collector;
+        int fp = stack.bases[entryDepth];
+        int pc = 0;
+        int sp = fp + decoded.maxLocals;
+        long executed = 0;
+        long[] opcodeCounts = this.opcodeCounts;
+        CompiledMethod entry = countInvocation(decoded);
+        if (entry != null) {
+            long state = entry.run(slots, refs, fp, pc);
+            pc = (int) state;
+            sp = (int) (state >>> 32);
+        }
+
+        try {
+            while (true) {
+                try {
+                    while (true) {
+                        executed++;
+                        if (opcodeCounts != null) {
+                            opcodeCounts[code[pc]]++;
+                        }
+                        switch (code[pc]) {
+                            case DecodedOpcode.ICONST:
+                                slots[sp++] = code[pc + 1];
+                                pc += 2;
+                                break;
+                            case DecodedOpcode.LCONST:
+                                slots[sp] = ((long) code[pc + 1] << 32) | (code[pc + 2] & 0xFFFFFFFFL);
+                                sp += 2;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.ACONST:
+                                refs[sp++] = decoded.constants[code[pc + 1]];
+                                pc += 2;
+                                break;
+                            case Opcode.ACONST_NULL:
+                                refs[sp++] = null;
+                                pc++;
+                                break;
+                            case Opcode.ILOAD:
+                                slots[sp++] = slots[fp + code[pc + 1]];
+                                pc += 2;
+                                break;
+                            case Opcode.LLOAD:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                sp += 2;
+                                pc += 2;
+                                break;
+                            case Opcode.ALOAD:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                refs[sp++] = refs[fp + code[pc + 1]];
+                                pc += 2;
+                                break;
+                            case Opcode.ISTORE:
+                                slots[fp + code[pc + 1]] = slots[--sp];
+                                pc += 2;
+                                break;
+                            case Opcode.LSTORE:
+                                sp -= 2;
+                                slots[fp + code[pc + 1]] = slots[sp];
+                                pc += 2;
+                                break;
+                            case Opcode.ASTORE:
+                                sp--;
+                                slots[fp + code[pc + 1]] = slots[sp];
+                                refs[fp + code[pc + 1]] = refs[sp];
+                                pc += 2;
+                                break;
+                            case Opcode.IINC: {
+                                int local = fp + code[pc + 1];
+                                slots[local] = (int) slots[local] + code[pc + 2];
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.ILOAD_ILOAD:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                slots[sp + 1] = slots[fp + code[pc + 3]];
+                                sp += 2;
+                                pc += 4;
+                                break;
+                            case DecodedOpcode.ILOAD_ILOAD_IADD:
+                                slots[sp++] = (int) slots[fp + code[pc + 1]] + (int) slots[fp + code[pc + 3]];
+                                pc += 5;
+                                break;
+                            case DecodedOpcode.ILOAD_ICONST:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                slots[sp + 1] = code[pc + 3];
+                                sp += 2;
+                                pc += 4;
+                                break;
+                            case DecodedOpcode.ALOAD_ILOAD:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                refs[sp] = refs[fp + code[pc + 1]];
+                                slots[sp + 1] = slots[fp + code[pc + 3]];
+                                sp += 2;
+                                pc += 4;
+                                break;
+
+                            case Opcode.IALOAD:
+                                slots[sp - 2] = ((int[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LALOAD:
+                                slots[sp - 2] = ((long[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                pc++;
+                                break;
+                            case Opcode.FALOAD:
+                                slots[sp - 2] = bits(((float[]) refs[sp - 2])[(int) slots[sp - 1]]);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DALOAD:
+                                slots[sp - 2] = bits(((double[]) refs[sp - 2])[(int) slots[sp - 1]]);
+                                pc++;
+                                break;
+                            case Opcode.AALOAD:
+                                if (refs[sp - 2] == Heap.REFERENCE) {
+                                    long value = Heap.decompress(memory.getInt(heap.elementAddress(slots[sp - 2], (int) slots[sp - 1])));
+                                    slots[sp - 2] = value;
+                                    refs[sp - 2] = heap.referenceOf(value);
+                                } else {
+                                    refs[sp - 2] = ((Object[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                }
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.BALOAD:
+                                slots[sp - 2] = ((byte[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.CALOAD:
+                                slots[sp - 2] = ((char[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.SALOAD:
+                                slots[sp - 2] = ((short[]) refs[sp - 2])[(int) slots[sp - 1]];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.IASTORE:
+                                ((int[]) refs[sp - 3])[(int) slots[sp - 2]] = (int) slots[sp - 1];
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.LASTORE:
+                                ((long[]) refs[sp - 4])[(int) slots[sp - 3]] = slots[sp - 2];
+                                sp -= 4;
+                                pc++;
+                                break;
+                            case Opcode.FASTORE:
+                                ((float[]) refs[sp - 3])[(int) slots[sp - 2]] = f(slots[sp - 1]);
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.DASTORE:
+                                ((double[]) refs[sp - 4])[(int) slots[sp - 3]] = d(slots[sp - 2]);
+                                sp -= 4;
+                                pc++;
+                                break;
+                            case Opcode.AASTORE:
+                                if (refs[sp - 3] == Heap.REFERENCE) {
+                                    int element = heap.elementAddress(slots[sp - 3], (int) slots[sp - 2]);
+                                    memory.putInt(element, Heap.compress(heap.encode(refs[sp - 1], slots[sp - 1])));
+                                    cards[element >>> Heap.CARD_SHIFT] = Heap.DIRTY;
+                                } else {
+                                    storeHostElement(refs[sp - 3], (int) slots[sp - 2], refs[sp - 1]);
+                                }
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.BASTORE:
+                                ((byte[]) refs[sp - 3])[(int) slots[sp - 2]] = (byte) slots[sp - 1];
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.CASTORE:
+                                ((char[]) refs[sp - 3])[(int) slots[sp - 2]] = (char) slots[sp - 1];
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.SASTORE:
+                                ((short[]) refs[sp - 3])[(int) slots[sp - 2]] = (short) slots[sp - 1];
+                                sp -= 3;
+                                pc++;
+                                break;
+
+                            case Opcode.POP:
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.POP2:
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.DUP:
+                                slots[sp] = slots[sp - 1];
+                                refs[sp] = refs[sp - 1];
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.DUP2:
+                                slots[sp] = slots[sp - 2];
+                                refs[sp] = refs[sp - 2];
+                                slots[sp + 1] = slots[sp - 1];
+                                refs[sp + 1] = refs[sp - 1];
+                                sp += 2;
+                                pc++;
+                                break;
+                            case Opcode.DUP_X1:
+                                duplicate(slots, refs, sp, 1, 1);
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.DUP_X2:
+                                duplicate(slots, refs, sp, 1, 2);
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.DUP2_X1:
+                                duplicate(slots, refs, sp, 2, 1);
+                                sp += 2;
+                                pc++;
+                                break;
+                            case Opcode.DUP2_X2:
+                                duplicate(slots, refs, sp, 2, 2);
+                                sp += 2;
+                                pc++;
+                                break;
+                            case Opcode.SWAP:
+                                // dup_x1の結果から先頭の複製を取り除くと交換になる
+                                duplicate(slots, refs, sp, 1, 1);
+                                pc++;
+                                break;
+
+                            case Opcode.IADD:
+                                slots[sp - 2] = (int) slots[sp - 2] + (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LADD:
+                                slots[sp - 4] += slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.FADD:
+                                slots[sp - 2] = bits(f(slots[sp - 2]) + f(slots[sp - 1]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DADD:
+                                slots[sp - 4] = bits(d(slots[sp - 4]) + d(slots[sp - 2]));
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.ISUB:
+                                slots[sp - 2] = (int) slots[sp - 2] - (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LSUB:
+                                slots[sp - 4] -= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.FSUB:
+                                slots[sp - 2] = bits(f(slots[sp - 2]) - f(slots[sp - 1]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DSUB:
+                                slots[sp - 4] = bits(d(slots[sp - 4]) - d(slots[sp - 2]));
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.IMUL:
+                                slots[sp - 2] = (int) slots[sp - 2] * (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LMUL:
+                                slots[sp - 4] *= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.FMUL:
+                                slots[sp - 2] = bits(f(slots[sp - 2]) * f(slots[sp - 1]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DMUL:
+                                slots[sp - 4] = bits(d(slots[sp - 4]) * d(slots[sp - 2]));
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.IDIV:
+                                slots[sp - 2] = (int) slots[sp - 2] / (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LDIV:
+                                slots[sp - 4] /= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.FDIV:
+                                slots[sp - 2] = bits(f(slots[sp - 2]) / f(slots[sp - 1]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DDIV:
+                                slots[sp - 4] = bits(d(slots[sp - 4]) / d(slots[sp - 2]));
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.IREM:
+                                slots[sp - 2] = (int) slots[sp - 2] % (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LREM:
+                                slots[sp - 4] %= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.FREM:
+                                slots[sp - 2] = bits(f(slots[sp - 2]) % f(slots[sp - 1]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DREM:
+                                slots[sp - 4] = bits(d(slots[sp - 4]) % d(slots[sp - 2]));
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.INEG:
+                                slots[sp - 1] = -(int) slots[sp - 1];
+                                pc++;
+                                break;
+                            case Opcode.LNEG:
+                                slots[sp - 2] = -slots[sp - 2];
+                                pc++;
+                                break;
+                            case Opcode.FNEG:
+                                slots[sp - 1] = bits(-f(slots[sp - 1]));
+                                pc++;
+                                break;
+                            case Opcode.DNEG:
+                                slots[sp - 2] = bits(-d(slots[sp - 2]));
+                                pc++;
+                                break;
+                            case Opcode.ISHL:
+                                slots[sp - 2] = (int) slots[sp - 2] << (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LSHL:
+                                slots[sp - 3] <<= (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.ISHR:
+                                slots[sp - 2] = (int) slots[sp - 2] >> (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LSHR:
+                                slots[sp - 3] >>= (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.IUSHR:
+                                slots[sp - 2] = (int) slots[sp - 2] >>> (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LUSHR:
+                                slots[sp - 3] >>>= (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.IAND:
+                                slots[sp - 2] = (int) slots[sp - 2] & (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LAND:
+                                slots[sp - 4] &= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.IOR:
+                                slots[sp - 2] = (int) slots[sp - 2] | (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LOR:
+                                slots[sp - 4] |= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+                            case Opcode.IXOR:
+                                slots[sp - 2] = (int) slots[sp - 2] ^ (int) slots[sp - 1];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.LXOR:
+                                slots[sp - 4] ^= slots[sp - 2];
+                                sp -= 2;
+                                pc++;
+                                break;
+
+                            case Opcode.I2L:
+                                // intはスロットに符号拡張して格納しているため値の変換は不要
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.I2F:
+                                slots[sp - 1] = bits((float) (int) slots[sp - 1]);
+                                pc++;
+                                break;
+                            case Opcode.I2D:
+                                slots[sp - 1] = bits((double) (int) slots[sp - 1]);
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.L2I:
+                                slots[sp - 2] = (int) slots[sp - 2];
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.L2F:
+                                slots[sp - 2] = bits((float) slots[sp - 2]);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.L2D:
+                                slots[sp - 2] = bits((double) slots[sp - 2]);
+                                pc++;
+                                break;
+                            case Opcode.F2I:
+                                slots[sp - 1] = (int) f(slots[sp - 1]);
+                                pc++;
+                                break;
+                            case Opcode.F2L:
+                                slots[sp - 1] = (long) f(slots[sp - 1]);
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.F2D:
+                                slots[sp - 1] = bits((double) f(slots[sp - 1]));
+                                sp++;
+                                pc++;
+                                break;
+                            case Opcode.D2I:
+                                slots[sp - 2] = (int) d(slots[sp - 2]);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.D2L:
+                                slots[sp - 2] = (long) d(slots[sp - 2]);
+                                pc++;
+                                break;
+                            case Opcode.D2F:
+                                slots[sp - 2] = bits((float) d(slots[sp - 2]));
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.I2B:
+                                slots[sp - 1] = (byte) slots[sp - 1];
+                                pc++;
+                                break;
+                            case Opcode.I2C:
+                                slots[sp - 1] = (char) slots[sp - 1];
+                                pc++;
+                                break;
+                            case Opcode.I2S:
+                                slots[sp - 1] = (short) slots[sp - 1];
+                                pc++;
+                                break;
+
+                            case Opcode.LCMP:
+                                slots[sp - 4] = Long.compare(slots[sp - 4], slots[sp - 2]);
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.FCMPL:
+                                slots[sp - 2] = compare(f(slots[sp - 2]), f(slots[sp - 1]), -1);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.FCMPG:
+                                slots[sp - 2] = compare(f(slots[sp - 2]), f(slots[sp - 1]), 1);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.DCMPL:
+                                slots[sp - 4] = compare(d(slots[sp - 4]), d(slots[sp - 2]), -1);
+                                sp -= 3;
+                                pc++;
+                                break;
+                            case Opcode.DCMPG:
+                                slots[sp - 4] = compare(d(slots[sp - 4]), d(slots[sp - 2]), 1);
+                                sp -= 3;
+                                pc++;
+                                break;
+
+                            case Opcode.IFEQ:
+                                pc = (int) slots[--sp] == 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFNE:
+                                pc = (int) slots[--sp] != 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFLT:
+                                pc = (int) slots[--sp] < 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFGE:
+                                pc = (int) slots[--sp] >= 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFGT:
+                                pc = (int) slots[--sp] > 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFLE:
+                                pc = (int) slots[--sp] <= 0 ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPEQ:
+                                sp -= 2;
+                                pc = (int) slots[sp] == (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPNE:
+                                sp -= 2;
+                                pc = (int) slots[sp] != (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPLT:
+                                sp -= 2;
+                                pc = (int) slots[sp] < (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPGE:
+                                sp -= 2;
+                                pc = (int) slots[sp] >= (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPGT:
+                                sp -= 2;
+                                pc = (int) slots[sp] > (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ICMPLE:
+                                sp -= 2;
+                                pc = (int) slots[sp] <= (int) slots[sp + 1] ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ACMPEQ:
+                                sp -= 2;
+                                pc = sameReference(slots, refs, sp, sp + 1) ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IF_ACMPNE:
+                                sp -= 2;
+                                pc = !sameReference(slots, refs, sp, sp + 1) ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFNULL:
+                                pc = refs[--sp] == null ? code[pc + 1] : pc + 2;
+                                break;
+                            case Opcode.IFNONNULL:
+                                pc = refs[--sp] != null ? code[pc + 1] : pc + 2;
+                                break;
+                            case DecodedOpcode.IINC_GOTO: {
+                                int local = fp + code[pc + 1];
+                                slots[local] = (int) slots[local] + code[pc + 2];
+                                pc += 3;
+                            }
+                            // 続くgotoを実行する
+                            case Opcode.GOTO: {
+                                int target = code[pc + 1];
+                                CompiledMethod compiled = target <= pc ? countBackedge(decoded) : null;
+                                pc = target;
+                                if (collector.safepointRequested) {
+                                    safepoint(pc);
+                                }
+                                if (compiled != null) {
+                                    // ループの途中からコンパイルしたコードに切り替える
+                                    long state = compiled.run(slots, refs, fp, pc);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.TABLESWITCH:
+                                pc = tableSwitch(code, pc, (int) slots[--sp]);
+                                break;
+                            case Opcode.LOOKUPSWITCH:
+                                pc = lookupSwitch(code, pc, (int) slots[--sp]);
+                                break;
+
+                            case Opcode.INVOKESTATIC:
+                            case Opcode.INVOKESPECIAL: {
+                                RuntimeMethod method = (RuntimeMethod) decoded.constants[code[pc + 1]];
+                                if (method == null) {
+                                    stack.pcs[stack.depth - 1] = pc;
+                                    method = resolveInvoke(decoded, pc);
+                                }
+                                DecodedCode callee = method.getDecodedCode();
+                                // 引数はそのまま呼び出し先のローカル変数になる
+                                sp -= callee.argumentSlots;
+                                if (code[pc] == Opcode.INVOKESPECIAL && refs[sp] == null) {
+                                    throw new NullPointerException("nullに対してメソッドを呼び出しました: " + method);
+                                }
+                                stack.pcs[stack.depth - 1] = pc;
+                                stack.push(callee, sp);
+                                decoded = callee;
+                                code = callee.instructions;
+                                slots = stack.slots;
+                                refs = stack.refs;
+                                fp = sp;
+                                pc = 0;
+                                sp = fp + callee.maxLocals;
+                                if (collector.safepointRequested) {
+                                    safepoint(0);
+                                }
+                                CompiledMethod compiled = countInvocation(callee);
+                                if (compiled != null) {
+                                    long state = compiled.run(slots, refs, fp, 0);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.INVOKEVIRTUAL:
+                            case Opcode.INVOKEINTERFACE: {
+                                InlineCache cache = (InlineCache) decoded.constants[code[pc + 1]];
+                                if (cache == null) {
+                                    stack.pcs[stack.depth - 1] = pc;
+                                    cache = resolveVirtual(decoded, pc);
+                                }
+                                int receiver = sp - cache.argumentSlots;
+                                DecodedCode callee = cache.lookup(receiverClass(refs[receiver], slots[receiver], cache)).getDecodedCode();
+                                sp = receiver;
+                                stack.pcs[stack.depth - 1] = pc;
+                                stack.push(callee, sp);
+                                decoded = callee;
+                                code = callee.instructions;
+                                slots = stack.slots;
+                                refs = stack.refs;
+                                fp = sp;
+                                pc = 0;
+                                sp = fp + callee.maxLocals;
+                                if (collector.safepointRequested) {
+                                    safepoint(0);
+                                }
+                                CompiledMethod compiled = countInvocation(callee);
+                                if (compiled != null) {
+                                    long state = compiled.run(slots, refs, fp, 0);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.IRETURN: {
+                                long value = slots[sp - 1];
+                                if (--stack.depth == entryDepth) {
+                                    return value;
+                                }
+                                // 呼び出し元のスタックは呼び出し先のベースの位置まで引数が取り除かれている
+                                sp = fp;
+                                slots[sp++] = value;
+                                int caller = stack.depth - 1;
+                                decoded = stack.codes[caller];
+                                code = decoded.instructions;
+                                fp = stack.bases[caller];
+                                pc = stack.pcs[caller] + INVOKE_LENGTH;
+                                CompiledMethod compiled = decoded.compiled;
+                                if (compiled != null) {
+                                    // 呼び出し元のコンパイルしたコードに戻る
+                                    long state = compiled.run(slots, refs, fp, pc);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.LRETURN: {
+                                long value = slots[sp - 2];
+                                if (--stack.depth == entryDepth) {
+                                    return value;
+                                }
+                                sp = fp;
+                                slots[sp] = value;
+                                sp += 2;
+                                int caller = stack.depth - 1;
+                                decoded = stack.codes[caller];
+                                code = decoded.instructions;
+                                fp = stack.bases[caller];
+                                pc = stack.pcs[caller] + INVOKE_LENGTH;
+                                CompiledMethod compiled = decoded.compiled;
+                                if (compiled != null) {
+                                    // 呼び出し元のコンパイルしたコードに戻る
+                                    long state = compiled.run(slots, refs, fp, pc);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.ARETURN: {
+                                Object value = refs[sp - 1];
+                                long address = slots[sp - 1];
+                                if (--stack.depth == entryDepth) {
+                                    returnedReference = value;
+                                    returnedAddress = address;
+                                    return 0;
+                                }
+                                sp = fp;
+                                slots[sp] = address;
+                                refs[sp++] = value;
+                                int caller = stack.depth - 1;
+                                decoded = stack.codes[caller];
+                                code = decoded.instructions;
+                                fp = stack.bases[caller];
+                                pc = stack.pcs[caller] + INVOKE_LENGTH;
+                                CompiledMethod compiled = decoded.compiled;
+                                if (compiled != null) {
+                                    // 呼び出し元のコンパイルしたコードに戻る
+                                    long state = compiled.run(slots, refs, fp, pc);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+                            case Opcode.RETURN: {
+                                if (--stack.depth == entryDepth) {
+                                    return 0;
+                                }
+                                sp = fp;
+                                int caller = stack.depth - 1;
+                                decoded = stack.codes[caller];
+                                code = decoded.instructions;
+                                fp = stack.bases[caller];
+                                pc = stack.pcs[caller] + INVOKE_LENGTH;
+                                CompiledMethod compiled = decoded.compiled;
+                                if (compiled != null) {
+                                    // 呼び出し元のコンパイルしたコードに戻る
+                                    long state = compiled.run(slots, refs, fp, pc);
+                                    pc = (int) state;
+                                    sp = (int) (state >>> 32);
+                                }
+                                break;
+                            }
+
+                            case DecodedOpcode.ALOAD_IGETFIELD_QUICK:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                refs[sp++] = refs[fp + code[pc + 1]];
+                                pc += 2;
+                                // 続くigetfield_quickを実行する
+                            case DecodedOpcode.IGETFIELD_QUICK:
+                                slots[sp - 1] = memory.getInt(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc));
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.BGETFIELD_QUICK:
+                                slots[sp - 1] = memory.get(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc));
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.CGETFIELD_QUICK:
+                                slots[sp - 1] = memory.getChar(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc));
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.SGETFIELD_QUICK:
+                                slots[sp - 1] = memory.getShort(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc));
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.LGETFIELD_QUICK:
+                                slots[sp - 1] = memory.getLong(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc));
+                                sp++;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.ALOAD_AGETFIELD_QUICK:
+                                slots[sp] = slots[fp + code[pc + 1]];
+                                refs[sp++] = refs[fp + code[pc + 1]];
+                                pc += 2;
+                                // 続くagetfield_quickを実行する
+                            case DecodedOpcode.AGETFIELD_QUICK: {
+                                long value = Heap.decompress(memory.getInt(address(refs[sp - 1], slots[sp - 1]) + decoded.fieldOffset(pc)));
+                                slots[sp - 1] = value;
+                                refs[sp - 1] = heap.referenceOf(value);
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.IPUTFIELD_QUICK:
+                                memory.putInt(address(refs[sp - 2], slots[sp - 2]) + decoded.fieldOffset(pc), (int) slots[sp - 1]);
+                                sp -= 2;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.BPUTFIELD_QUICK:
+                                memory.put(address(refs[sp - 2], slots[sp - 2]) + decoded.fieldOffset(pc), (byte) slots[sp - 1]);
+                                sp -= 2;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.SPUTFIELD_QUICK:
+                                memory.putShort(address(refs[sp - 2], slots[sp - 2]) + decoded.fieldOffset(pc), (short) slots[sp - 1]);
+                                sp -= 2;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.LPUTFIELD_QUICK:
+                                memory.putLong(address(refs[sp - 3], slots[sp - 3]) + decoded.fieldOffset(pc), slots[sp - 2]);
+                                sp -= 3;
+                                pc += 3;
+                                break;
+                            case DecodedOpcode.APUTFIELD_QUICK: {
+                                int field = address(refs[sp - 2], slots[sp - 2]) + decoded.fieldOffset(pc);
+                                memory.putInt(field, Heap.compress(heap.encode(refs[sp - 1], slots[sp - 1])));
+                                cards[field >>> Heap.CARD_SHIFT] = Heap.DIRTY;
+                                sp -= 2;
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.IGETSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                slots[sp++] = field.statics[field.slot];
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.LGETSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                slots[sp] = field.statics[field.slot];
+                                sp += 2;
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.AGETSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                long value = field.statics[field.slot];
+                                slots[sp] = value;
+                                refs[sp++] = heap.referenceOf(value);
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.IPUTSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                field.statics[field.slot] = slots[--sp];
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.LPUTSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                sp -= 2;
+                                field.statics[field.slot] = slots[sp];
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.APUTSTATIC_QUICK: {
+                                QuickConstant field = decoded.quickConstant(code[pc + 1]);
+                                sp--;
+                                field.statics[field.slot] = heap.encode(refs[sp], slots[sp]);
+                                pc += 3;
+                                break;
+                            }
+                            case DecodedOpcode.NEW_QUICK:
+                                // 割り当てでGCが起きる場合に備えて命令位置を記録する
+                                stack.pcs[stack.depth - 1] = pc;
+                                slots[sp] = heap.allocateInstance(tlab, decoded.quickConstant(code[pc + 1]).type);
+                                refs[sp++] = Heap.REFERENCE;
+                                pc += 3;
+                                break;
+                            case Opcode.GETFIELD:
+                            case Opcode.PUTFIELD:
+                                // 書き換えたクイック命令を同じ命令位置から実行する
+                                quickenField(decoded, pc);
+                                break;
+                            case Opcode.GETSTATIC:
+                            case Opcode.PUTSTATIC:
+                            case Opcode.NEW:
+                                stack.pcs[stack.depth - 1] = pc;
+                                if (!quickenStatic(decoded, pc)) {
+                                    sp = accessDuringInitialization(decoded, pc, sp);
+                                    pc += 3;
+                                }
+                                // <clinit>の実行でスロット配列が拡張されている場合がある
+                                slots = stack.slots;
+                                refs = stack.refs;
+                                break;
+
+                            case Opcode.NEWARRAY:
+                                refs[sp - 1] = newArray(code[pc + 1], (int) slots[sp - 1]);
+                                pc += 2;
+                                break;
+                            case Opcode.ANEWARRAY:
+                                stack.pcs[stack.depth - 1] = pc;
+                                slots[sp - 1] = heap.allocateReferenceArray(tlab, (int) slots[sp - 1]);
+                                refs[sp - 1] = Heap.REFERENCE;
+                                pc += 2;
+                                break;
+                            case Opcode.ARRAYLENGTH:
+                                slots[sp - 1] = refs[sp - 1] == Heap.REFERENCE ? heap.arrayLength(slots[sp - 1]) : Array.getLength(refs[sp - 1]);
+                                pc++;
+                                break;
+                            case Opcode.CHECKCAST:
+                                TypeCheck.of(decoded, pc).checkCast(heap, refs[sp - 1], slots[sp - 1]);
+                                pc += 3;
+                                break;
+                            case Opcode.INSTANCEOF:
+                                slots[sp - 1] = TypeCheck.of(decoded, pc).isInstance(heap, refs[sp - 1], slots[sp - 1]) ? 1 : 0;
+                                pc += 3;
+                                break;
+                            case Opcode.MONITORENTER:
+                                // 取得を待つ間にGCが起きる場合に備えて命令位置を記録する
+                                stack.pcs[stack.depth - 1] = pc;
+                                heap.monitors.enter(this, refs[sp - 1], slots[sp - 1]);
+                                sp--;
+                                pc++;
+                                break;
+                            case Opcode.MONITOREXIT:
+                                heap.monitors.exit(this, refs[sp - 1], slots[sp - 1]);
+                                sp--;
+                                pc++;
+                                break;
+                            case DecodedOpcode.INVOKE_INTRINSIC:
+                                stack.pcs[stack.depth - 1] = pc;
+                                sp = ((Intrinsic) decoded.constants[code[pc + 1]]).invoke(this, fp, sp);
+                                // 組み込みメソッドがゲストのコードを実行した場合はスロット配列が拡張されている場合がある
+                                slots = stack.slots;
+                                refs = stack.refs;
+                                pc += 2;
+                                break;
+                            case Opcode.ATHROW:
+                                throw asThrowable(refs[sp - 1]);
+                            case DecodedOpcode.UNSUPPORTED:
+                                throw new UnsupportedOperationException(
+                                        "未対応の命令です: " + Opcode.mnemonic(code[pc + 1]) + " (" + decoded + ")");
+                            default:
+                                throw new InternalError("命令列が不正です: " + code[pc] + " (" + decoded + ")");
+                        }
+                    }
+                } catch (RuntimeException | Error e) {
+                    // 例外を捕捉するハンドラを、発生したフレームから呼び出し元へ順に探す
+                    int handler = decoded.findHandler(pc, e);
+                    while (handler < 0) {
+                        if (--stack.depth == entryDepth) {
+                            throw e;
+                        }
+                        int caller = stack.depth - 1;
+                        decoded = stack.codes[caller];
+                        pc = stack.pcs[caller];
+                        handler = decoded.findHandler(pc, e);
+                    }
+                    code = decoded.instructions;
+                    fp = stack.bases[stack.depth - 1];
+                    sp = fp + decoded.maxLocals;
+                    refs[sp++] = e;
+                    pc = handler;
+                }
+            }
+        } finally {
+            executedInstructions += executed;
+        }
+    }
+
+    /**
+     * invokestatic/invokespecialの参照先を解決し、命令列の定数に保持します。
+     * invokestaticではクラスを初期化し、このスレッドが初期化中の場合は解決結果を保持しません（初期化の完了前に
+     * 別のスレッドが呼び出せないようにするため）。複数のスレッドが同時に解決した場合も、得られるメソッドは同じです。
+     */
+    private RuntimeMethod resolveInvoke(DecodedCode decoded, int pc) {
+        RuntimeMethod method = resolveMethodRef(decoded, pc);
+        if (decoded.instructions[pc] == Opcode.INVOKESTATIC) {
+            if (!method.isStatic()) {
+                throw new IncompatibleClassChangeError("staticメソッドではありません: " + method);
+            }
+            if (!method.getOwner().initialize(this)) {
+                return method;
+            }
+        } else if (method.isStatic()) {
+            throw new IncompatibleClassChangeError("インスタンスメソッドではありません: " + method);
+        }
+        decoded.constants[decoded.instructions[pc + 1]] = method;
+        return method;
+    }
+
+    /**
+     * invokevirtual/invokeinterfaceの参照先を解決し、呼び出し箇所のインラインキャッシュを生成します。
+     * 生成は命令列のロックの中で行うため、呼び出し箇所ごとに1つだけ生成されます。
+     */
+    private InlineCache resolveVirtual(DecodedCode decoded, int pc) {
+        synchronized (decoded) {
+            InlineCache cache = (InlineCache) decoded.constants[decoded.instructions[pc + 1]];
+            if (cache != null) {
+                return cache;
+            }
+            RuntimeMethod method = resolveMethodRef(decoded, pc);
+            if (method.isStatic()) {
+                throw new IncompatibleClassChangeError("インスタンスメソッドではありません: " + method);
+            }
+            cache = new InlineCache(method);
+            decoded.constants[decoded.instructions[pc + 1]] = cache;
+            return cache;
+        }
+    }
+
+    /**
+     * 呼び出し命令が参照するメソッドを解決します。
+     */
+    private RuntimeMethod resolveMethodRef(DecodedCode decoded, int pc) {
+        ConstantPool constantPool = decoded.method.getOwner().getClassFile().getConstantPool();
+        int index = decoded.instructions[pc + 2];
+        int tag = constantPool.tag(index);
+        if (tag != ConstantInfo.CONSTANT_Methodref && tag != ConstantInfo.CONSTANT_InterfaceMethodref) {
+            throw new IncompatibleClassChangeError("メソッド参照ではありません: #" + index + " (" + decoded + ")");
+        }
+        int nameAndType = constantPool.nameAndTypeOf(index);
+        String className = constantPool.className(constantPool.memberClassIndex(index));
+        String name = constantPool.utf8(constantPool.nameIndex(nameAndType));
+        String descriptor = constantPool.utf8(constantPool.descriptorIndex(nameAndType));
+        if (decoded.instructions[pc] == Opcode.INVOKESPECIAL) {
+            return resolveSpecial(decoded.method.getOwner(), className, name, descriptor);
+        }
+        return methodArea.resolveMethod(className, name, descriptor);
+    }
+
+    /**
+     * 仮想呼び出しのレシーバのクラスを返します。
+     */
+    private RuntimeClass receiverClass(Object receiver, long address, InlineCache cache) {
+        if (receiver == Heap.REFERENCE) {
+            RuntimeClass type = heap.classOf(address);
+            if (type != null) {
+                return type;
+            }
+            throw new UnsupportedOperationException("配列に対する仮想呼び出しは未対応です: " + cache.getResolvedMethod());
+        }
+        if (receiver == null) {
+            throw new NullPointerException("nullに対してメソッドを呼び出しました: " + cache.getResolvedMethod());
+        }
+        // ホストのオブジェクトはjava/lang/Objectのfinalのメソッド（wait/notify/notifyAll）をオーバーライドできないため、
+        // 解決したメソッドをそのまま呼び出す
+        RuntimeMethod resolved = cache.getResolvedMethod();
+        if (resolved.getOwner().getSuperclass() == null
+                && (resolved.getMethodInfo().getAccessFlags() & AccessFlags.ACC_FINAL) != 0) {
+            return resolved.getOwner();
+        }
+        throw new UnsupportedOperationException(
+                "ホストのオブジェクトに対する仮想呼び出しは未対応です: " + receiver.getClass().getName() + " (" + cache.getResolvedMethod() + ")");
+    }
+
+    /**
+     * getfield/putfieldの対象のオブジェクトのアドレスを返します。
+     */
+    static int address(Object reference, long slot) {
+        if (reference == Heap.REFERENCE) {
+            return (int) slot;
+        }
+        if (reference == null) {
+            throw new NullPointerException("nullのフィールドを参照しました");
+        }
+        throw new UnsupportedOperationException("ホストのオブジェクトのフィールドは参照できません: " + reference.getClass().getName());
+    }
+
+    /**
+     * 2つのスロットの参照が同じオブジェクトを指しているかどうかを返します。
+     */
+    private static boolean sameReference(long[] slots, Object[] refs, int left, int right) {
+        return refs[left] == refs[right] && (refs[left] != Heap.REFERENCE || slots[left] == slots[right]);
+    }
+
+    /**
+     * ホストの配列（引数として渡された {@code Object[]}）に参照を格納します。
+     */
+    private static void storeHostElement(Object array, int index, Object value) {
+        if (value == Heap.REFERENCE) {
+            throw new UnsupportedOperationException("ホストの配列にヒープのオブジェクトは格納できません");
+        }
+        ((Object[]) array)[index] = value;
+    }
+
+    /**
+     * invokespecialの呼び出し先を解決します。コンストラクタ以外でスーパークラスのメソッドを参照している場合は、
+     * 呼び出し元のクラスの直接のスーパークラスから探します（super.m() の呼び出し）。
+     */
+    private RuntimeMethod resolveSpecial(RuntimeClass current, String className, String name, String descriptor) {
+        if (!name.equals("<init>") && !current.getName().toString().equals(className)) {
+            for (RuntimeClass ancestor = current.getSuperclass(); ancestor != null; ancestor = ancestor.getSuperclass()) {
+                if (ancestor.getName().toString().equals(className)) {
+                    return methodArea.resolveMethod(current.getSuperclass().getName().toString(), name, descriptor);
+                }
+            }
+        }
+        return methodArea.resolveMethod(className, name, descriptor);
+    }
+
+    /**
+     * getfield/putfieldの参照先を解決し、フィールドの型に応じたクイック命令に書き換えます。
+     * 解決は命令列のロックの中で行うため、複数のスレッドが同時に実行しても1回だけ行われます。
+     */
+    private void quickenField(DecodedCode decoded, int pc) {
+        synchronized (decoded) {
+            int opcode = decoded.instructions[pc];
+            if (opcode != Opcode.GETFIELD && opcode != Opcode.PUTFIELD) {
+                // 別のスレッドが書き換え済み
+                return;
+            }
+            RuntimeField field = resolveField(decoded, pc);
+            if (field.isStatic()) {
+                throw new IncompatibleClassChangeError("インスタンスフィールドではありません: " + field);
+            }
+            boolean get = opcode == Opcode.GETFIELD;
+            int quick;
+            switch (field.getType()) {
+                case 'J':
+                case 'D':
+                    quick = get ? DecodedOpcode.LGETFIELD_QUICK : DecodedOpcode.LPUTFIELD_QUICK;
+                    break;
+                case 'I':
+                case 'F':
+                    quick = get ? DecodedOpcode.IGETFIELD_QUICK : DecodedOpcode.IPUTFIELD_QUICK;
+                    break;
+                case 'B':
+                case 'Z':
+                    quick = get ? DecodedOpcode.BGETFIELD_QUICK : DecodedOpcode.BPUTFIELD_QUICK;
+                    break;
+                case 'C':
+                    quick = get ? DecodedOpcode.CGETFIELD_QUICK : DecodedOpcode.SPUTFIELD_QUICK;
+                    break;
+                case 'S':
+                    quick = get ? DecodedOpcode.SGETFIELD_QUICK : DecodedOpcode.SPUTFIELD_QUICK;
+                    break;
+                default:
+                    quick = get ? DecodedOpcode.AGETFIELD_QUICK : DecodedOpcode.APUTFIELD_QUICK;
+                    break;
+            }
+            decoded.quicken(pc, quick, 1, field.getOffset());
+            // 直前のaloadと合わせて1回で実行する
+            if ((quick == DecodedOpcode.IGETFIELD_QUICK || quick == DecodedOpcode.AGETFIELD_QUICK) && CodeDecoder.isSuperinstructions()
+                    && decoded.bytecodeIndex(pc - 2) >= 0 && decoded.instructions[pc - 2] == Opcode.ALOAD) {
+                decoded.fuse(pc - 2, quick == DecodedOpcode.IGETFIELD_QUICK
+                        ? DecodedOpcode.ALOAD_IGETFIELD_QUICK : DecodedOpcode.ALOAD_AGETFIELD_QUICK);
+            }
+        }
+    }
+
+    /**
+     * getstatic/putstatic/newの参照先を解決してクラスを初期化し、クイック命令に書き換えます。
+     * 解決結果は命令列の定数に1回だけ保持します。クラスの初期化はロックの外で行い、
+     * 初期化が完了するまでは書き換えません。
+     * @return 書き換えた場合（書き換え済みの場合を含む）true。このスレッドがクラスを初期化中の場合false
+     */
+    private boolean quickenStatic(DecodedCode decoded, int pc) {
+        int[] code = decoded.instructions;
+        int constant = code[pc + 1];
+        Object resolved;
+        synchronized (decoded) {
+            if (code[pc] != Opcode.GETSTATIC && code[pc] != Opcode.PUTSTATIC && code[pc] != Opcode.NEW) {
+                return true;
+            }
+            resolved = decoded.constants[constant];
+            if (resolved == null) {
+                resolved = code[pc] == Opcode.NEW ? resolveInstantiableClass(decoded, pc) : resolveStaticField(decoded, pc);
+                decoded.constants[constant] = resolved;
+            }
+        }
+
+        RuntimeClass owner = resolved instanceof RuntimeField ? ((RuntimeField) resolved).getOwner() : (RuntimeClass) resolved;
+        if (!owner.initialize(this)) {
+            return false;
+        }
+
+        synchronized (decoded) {
+            int opcode = code[pc];
+            if (opcode == Opcode.NEW) {
+                decoded.constants[constant] = QuickConstant.forClass(owner);
+                decoded.quicken(pc, DecodedOpcode.NEW_QUICK, 0, 0);
+            } else if (opcode == Opcode.GETSTATIC || opcode == Opcode.PUTSTATIC) {
+                RuntimeField field = (RuntimeField) resolved;
+                int quick;
+                if (field.isReference()) {
+                    quick = opcode == Opcode.GETSTATIC ? DecodedOpcode.AGETSTATIC_QUICK : DecodedOpcode.APUTSTATIC_QUICK;
+                } else if (field.isWide()) {
+                    quick = opcode == Opcode.GETSTATIC ? DecodedOpcode.LGETSTATIC_QUICK : DecodedOpcode.LPUTSTATIC_QUICK;
+                } else {
+                    quick = opcode == Opcode.GETSTATIC ? DecodedOpcode.IGETSTATIC_QUICK : DecodedOpcode.IPUTSTATIC_QUICK;
+                }
+                decoded.constants[constant] = QuickConstant.forStatic(field);
+                decoded.quicken(pc, quick, 0, 0);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 初期化中のクラスのgetstatic/putstatic/newを、命令を書き換えずに実行します。
+     * 初期化中のクラスを参照できるのは初期化を実行しているスレッドだけのため、解決結果はロックなしで読み取れます。
+     * @return 実行後のスタックの深さ
+     */
+    private int accessDuringInitialization(DecodedCode decoded, int pc, int sp) {
+        long[] slots = stack.slots;
+        Object[] refs = stack.refs;
+        Object resolved = decoded.constants[decoded.instructions[pc + 1]];
+        int opcode = decoded.instructions[pc];
+        if (opcode == Opcode.NEW) {
+            slots[sp] = heap.allocateInstance(tlab, (RuntimeClass) resolved);
+            refs[sp] = Heap.REFERENCE;
+            return sp + 1;
+        }
+
+        RuntimeField field = (RuntimeField) resolved;
+        RuntimeClass owner = field.getOwner();
+        int size = field.isWide() ? 2 : 1;
+        if (opcode == Opcode.GETSTATIC) {
+            if (field.isReference()) {
+                slots[sp] = owner.staticRefs[field.getSlot()];
+                refs[sp] = heap.referenceOf(slots[sp]);
+            } else {
+                slots[sp] = owner.staticValues[field.getSlot()];
+            }
+            return sp + size;
+        }
+        sp -= size;
+        if (field.isReference()) {
+            owner.staticRefs[field.getSlot()] = heap.encode(refs[sp], slots[sp]);
+        } else {
+            owner.staticValues[field.getSlot()] = slots[sp];
+        }
+        return sp;
+    }
+
+    private RuntimeField resolveField(DecodedCode decoded, int pc) {
+        ConstantPool constantPool = decoded.method.getOwner().getClassFile().getConstantPool();
+        int index = decoded.instructions[pc + 2];
+        if (constantPool.tag(index) != ConstantInfo.CONSTANT_Fieldref) {
+            throw new IncompatibleClassChangeError("フィールド参照ではありません: #" + index + " (" + decoded + ")");
+        }
+        int nameAndType = constantPool.nameAndTypeOf(index);
+        return methodArea.resolveField(constantPool.className(constantPool.memberClassIndex(index)),
+                constantPool.utf8(constantPool.nameIndex(nameAndType)),
+                constantPool.utf8(constantPool.descriptorIndex(nameAndType)));
+    }
+
+    private RuntimeField resolveStaticField(DecodedCode decoded, int pc) {
+        RuntimeField field = resolveField(decoded, pc);
+        if (!field.isStatic()) {
+            throw new IncompatibleClassChangeError("staticフィールドではありません: " + field);
+        }
+        return field;
+    }
+
+    private RuntimeClass resolveInstantiableClass(DecodedCode decoded, int pc) {
+        ConstantPool constantPool = decoded.method.getOwner().getClassFile().getConstantPool();
+        RuntimeClass runtimeClass = methodArea.lookup(constantPool.className(decoded.instructions[pc + 2]));
+        int flags = runtimeClass.getClassFile().getAccessFlags();
+        if ((flags & (AccessFlags.ACC_INTERFACE | AccessFlags.ACC_ABSTRACT)) != 0) {
+            throw new InstantiationError(runtimeClass.toString());
+        }
+        return runtimeClass;
+    }
+
+    /**
+     * スタックの先頭 {@code count} スロットを複製し、その下の {@code skip} スロットのさらに下へ挿入します。
+     * dup_x1は(1, 1)、dup2_x2は(2, 2)に相当します。
+     */
+    private static void duplicate(long[] slots, Object[] refs, int sp, int count, int skip) {
+        System.arraycopy(slots, sp - count, slots, sp, count);
+        System.arraycopy(refs, sp - count, refs, sp, count);
+        System.arraycopy(slots, sp - count - skip, slots, sp - skip, skip + count);
+        System.arraycopy(refs, sp - count - skip, refs, sp - skip, skip + count);
+        System.arraycopy(slots, sp, slots, sp - count - skip, count);
+        System.arraycopy(refs, sp, refs, sp - count - skip, count);
+    }
+
+    private static int tableSwitch(int[] code, int pc, int key) {
+        int low = code[pc + 1];
+        int high = code[pc + 2];
+        if (key < low || key > high) {
+            return code[pc + 3];
+        }
+        return code[pc + 4 + (key - low)];
+    }
+
+    private static int lookupSwitch(int[] code, int pc, int key) {
+        int pairs = code[pc + 1];
+        int base = pc + 3;
+        int low = 0;
+        int high = pairs - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int candidate = code[base + middle * 2];
+            if (candidate < key) {
+                low = middle + 1;
+            } else if (candidate > key) {
+                high = middle - 1;
+            } else {
+                return code[base + middle * 2 + 1];
+            }
+        }
+        return code[pc + 2];
+    }
+
+    static Object newArray(int elementType, int length) {
+        switch (elementType) {
+            case T_BOOLEAN:
+            case T_BYTE:
+                return new byte[length];
+            case T_CHAR:
+                return new char[length];
+            case T_FLOAT:
+                return new float[length];
+            case T_DOUBLE:
+                return new double[length];
+            case T_SHORT:
+                return new short[length];
+            case T_INT:
+                return new int[length];
+            default:
+                return new long[length];
+        }
+    }
+
+    /**
+     * athrowで投げる参照を例外に変換します。
+     */
+    private static RuntimeException asThrowable(Object reference) {
+        if (reference == Heap.REFERENCE) {
+            return new UnsupportedOperationException("ヒープのオブジェクトを例外としてスローすることは未対応です");
+        }
+        if (reference instanceof RuntimeException) {
+            return (RuntimeException) reference;
+        }
+        if (reference instanceof Error) {
+            throw (Error) reference;
+        }
+        if (reference == null) {
+            return new NullPointerException("athrowの対象がnullです");
+        }
+        return new ClassCastException(reference.getClass().getName() + "は例外ではありません");
+    }
+
+    /**
+     * fcmpl/fcmpg、dcmpl/dcmpgの結果を返します。どちらかがNaNの場合は {@code nanResult} を返します。
+     */
+    private static int compare(double left, double right, int nanResult) {
+        if (left > right) {
+            return 1;
+        }
+        if (left < right) {
+            return -1;
+        }
+        return left == right ? 0 : nanResult;
+    }
+
+    private static float f(long slot) {
+        return Float.intBitsToFloat((int) slot);
+    }
+
+    private static double d(long slot) {
+        return Double.longBitsToDouble(slot);
+    }
+
+    private static long bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+}
@@ -0,0 +1,20 @@
+package javavm.execution;
+
+/**
+ * ホストで実装したメソッド（組み込みメソッド）
+ *
+ * ゲストのコードでは実装できないnativeメソッドや、VMのスレッドとして実装し直すメソッドに使用します。
+ * 組み込みメソッドの命令列は {@code INVOKE_INTRINSIC 定数番号} と戻り値の型のreturn命令だけで、
+ * 引数は通常のメソッドと同じくフレームのローカル変数に並びます。
+ */
+interface Intrinsic {
+    /**
+     * メソッドを実行します。戻り値がある場合はフレームのオペランドスタックに積みます。
+     * スロット配列は実行中に拡張される場合があるため、{@link ThreadStack#slots} から取得してください。
+     * @param interpreter 実行中のインタプリタ
+     * @param fp フレームのローカル変数0の位置
+     * @param sp フレームのオペランドスタックの上端
+     * @return 戻り値を積んだ後のオペランドスタックの上端
+     */
+    int invoke(Interpreter interpreter, int fp, int sp);
+}
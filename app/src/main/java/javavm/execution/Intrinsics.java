@@ -0,0 +1,108 @@
+package javavm.execution;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 組み込みメソッドの表
+ *
+ * JDKのクラスのうち、nativeメソッドに依存するモニタの操作（{@code Object.wait}/{@code notify}）と、
+ * ゲストのスレッド（{@code java.lang.Thread}）の生成、開始、待機をホストで実装します。
+ * JDKの {@code Thread} のコンストラクタと静的初期化はJDKの内部の状態に依存するため、何もしない組み込みメソッドに置き換え、
+ * スレッドの実行に必要な情報は {@link GuestThread} が保持します。
+ */
+final class Intrinsics {
+    private static final Map<String, Intrinsic> INTRINSICS = new HashMap<>();
+
+    static {
+        register("java/lang/Object", "wait", "()V", (interpreter, fp, sp) -> {
+            ThreadStack stack = interpreter.getStack();
+            monitors(interpreter).await(interpreter, stack.refs[fp], stack.slots[fp], 0);
+            return sp;
+        });
+        register("java/lang/Object", "wait", "(J)V", (interpreter, fp, sp) -> {
+            ThreadStack stack = interpreter.getStack();
+            monitors(interpreter).await(interpreter, stack.refs[fp], stack.slots[fp], stack.slots[fp + 1]);
+            return sp;
+        });
+        register("java/lang/Object", "notify", "()V", (interpreter, fp, sp) -> {
+            ThreadStack stack = interpreter.getStack();
+            monitors(interpreter).notify(interpreter, stack.refs[fp], stack.slots[fp], false);
+            return sp;
+        });
+        register("java/lang/Object", "notifyAll", "()V", (interpreter, fp, sp) -> {
+            ThreadStack stack = interpreter.getStack();
+            monitors(interpreter).notify(interpreter, stack.refs[fp], stack.slots[fp], true);
+            return sp;
+        });
+
+        Intrinsic nothing = (interpreter, fp, sp) -> sp;
+        register("java/lang/Thread", "<clinit>", "()V", nothing);
+        register("java/lang/Thread", "<init>", "()V", nothing);
+        register("java/lang/Thread", "<init>", "(Ljava/lang/Runnable;)V", (interpreter, fp, sp) -> {
+            ThreadStack stack = interpreter.getStack();
+            GuestThread.initialize(interpreter, thread(stack, fp), stack.refs[fp + 1], stack.slots[fp + 1]);
+            return sp;
+        });
+        register("java/lang/Thread", "start", "()V", (interpreter, fp, sp) -> {
+            GuestThread.start(interpreter, thread(interpreter.getStack(), fp));
+            return sp;
+        });
+        register("java/lang/Thread", "run", "()V", (interpreter, fp, sp) -> {
+            GuestThread.run(interpreter, thread(interpreter.getStack(), fp));
+            return sp;
+        });
+        register("java/lang/Thread", "join", "()V", (interpreter, fp, sp) -> {
+            GuestThread.join(interpreter, thread(interpreter.getStack(), fp));
+            return sp;
+        });
+        register("java/lang/Thread", "sleep", "(J)V", (interpreter, fp, sp) -> {
+            GuestThread.sleep(interpreter, interpreter.getStack().slots[fp]);
+            return sp;
+        });
+        register("java/lang/Thread", "yield", "()V", (interpreter, fp, sp) -> {
+            Thread.yield();
+            return sp;
+        });
+        register("java/lang/Thread", "onSpinWait", "()V", (interpreter, fp, sp) -> {
+            Thread.onSpinWait();
+            return sp;
+        });
+    }
+
+    private Intrinsics() {
+    }
+
+    private static void register(String className, String name, String descriptor, Intrinsic intrinsic) {
+        INTRINSICS.put(className + "." + name + descriptor, intrinsic);
+    }
+
+    /**
+     * メソッドに対応する組み込みメソッドを返します。
+     * @param method メソッド
+     * @return 組み込みメソッド。ない場合はnull
+     */
+    static Intrinsic lookup(RuntimeMethod method) {
+        return INTRINSICS.get(method.toString());
+    }
+
+    private static Monitors monitors(Interpreter interpreter) {
+        return interpreter.getMethodArea().getHeap().monitors;
+    }
+
+    /**
+     * レシーバのスレッドのオブジェクトのアドレスを返します。
+     * @throws NullPointerException レシーバがnullの場合
+     * @throws IncompatibleClassChangeError レシーバがホストのオブジェクト（Threadのサブクラスではない）の場合
+     */
+    private static long thread(ThreadStack stack, int fp) {
+        Object receiver = stack.refs[fp];
+        if (receiver == null) {
+            throw new NullPointerException("nullに対してスレッドのメソッドを呼び出しました");
+        }
+        if (receiver != Heap.REFERENCE) {
+            throw new IncompatibleClassChangeError(receiver.getClass().getName() + "はjava/lang/Threadのサブクラスではありません");
+        }
+        return stack.slots[fp];
+    }
+}
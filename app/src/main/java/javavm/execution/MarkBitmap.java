@@ -0,0 +1,54 @@
+package javavm.execution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Full GCでオブジェクトに付ける印の表（サイドビットマップ）
+ *
+ * オブジェクトは8バイト境界に置くため、ヒープの8バイトごとに1ビットを割り当てます。
+ * 印はアトミックなビット演算で付けるため、複数のワーカーが同じオブジェクトに印を付けようとしても1つだけが成功します。
+ * マークワードを書き換えないため、印を付ける間もオブジェクトのヘッダは変わりません。
+ */
+final class MarkBitmap {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+
+    MarkBitmap(long heapSize) {
+        this.words = new long[(int) ((heapSize / Heap.OBJECT_ALIGNMENT + 63) >>> 6)];
+    }
+
+    /**
+     * 印を付けます。
+     * @param address オブジェクトのアドレス
+     * @return 印がなく、このスレッドが付けた場合true
+     */
+    boolean mark(int address) {
+        int index = address >>> 3;
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if (((long) WORDS.getOpaque(words, word) & bit) != 0) {
+            return false;
+        }
+        return ((long) WORDS.getAndBitwiseOr(words, word, bit) & bit) == 0;
+    }
+
+    /**
+     * 印が付いているかどうかを返します。印を付ける作業が完了した後に呼び出します。
+     * @param address オブジェクトのアドレス
+     * @return 印が付いている場合true
+     */
+    boolean isMarked(int address) {
+        int index = address >>> 3;
+        return (words[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * すべての印を消します。
+     */
+    void clear() {
+        Arrays.fill(words, 0);
+    }
+}
@@ -0,0 +1,314 @@
+package javavm.execution;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.Symbol;
+import javavm.classloader.ClassSource;
+import javavm.verifier.Verification;
+import javavm.verifier.VerificationCache;
+
+/**
+ * 実行に使用するクラスを保持するメソッド領域
+ *
+ * クラスは最初に参照された時点で読み込み元から読み込み、{@link RuntimeClass} として保持します。
+ * メソッド領域は1つの読み込み元に対応するため、クラスは名前だけで区別します。
+ * 読み込み済みのクラスの検索はロックを使用しません。
+ * 読み込みはクラスごとに調整し、同じクラスを複数のスレッドが同時に参照した場合は1つのスレッドだけが読み込み、
+ * 他のスレッドはその完了を待ちます。異なるクラスは並行して読み込みます。
+ * クラスを読み込むときはスーパークラスとスーパーインターフェースも読み込み、すべて揃ってから登録するため、
+ * 登録されたクラスの継承関係は常に確定しています。継承関係が循環している場合は、読み込みの待機の連鎖が
+ * 自身に戻ることで検出し、{@link ClassCircularityError} をスローします（複数のスレッドにまたがる循環でもデッドロックしません）。
+ * クラスのオブジェクトを割り当てるヒープと、ゲストのスレッド（{@link GuestThread}）もメソッド領域が保持します。
+ *
+ * <p>読み込んだクラスは登録する前に型検査で検証します（{@link VerificationCache}）。
+ * システムプロパティ {@code javavm.verify} に {@code false} を指定すると検証しません。</p>
+ */
+public final class MethodArea {
+    /** 読み込み時の検証を無効にする場合に {@code false} を指定するシステムプロパティ */
+    static final String VERIFY_PROPERTY = "javavm.verify";
+
+    private final ClassSource source;
+    private final Heap heap;
+    private final ConcurrentHashMap<String, RuntimeClass> classes = new ConcurrentHashMap<>();
+    // 読み込み中のクラス
+    private final ConcurrentHashMap<String, Loading> loading = new ConcurrentHashMap<>();
+    // 別のスレッドの読み込みの完了を待っているスレッドと、待っている読み込み
+    private final ConcurrentHashMap<Thread, Loading> waiting = new ConcurrentHashMap<>();
+    // 実行中のゲストのスレッド（Runnableを指定して生成しただけのスレッドを含む）
+    final ConcurrentHashMap<Instance, GuestThread> threads = new ConcurrentHashMap<>();
+    private volatile boolean verification = !"false".equals(System.getProperty(VERIFY_PROPERTY));
+
+    /**
+     * 読み込み元を指定してメソッド領域を生成します。ヒープは {@link Heap#Heap()} の設定で生成します。
+     * @param source クラスの読み込み元
+     */
+    public MethodArea(ClassSource source) {
+        this(source, new Heap());
+    }
+
+    /**
+     * 読み込み元とヒープを指定してメソッド領域を生成します。
+     * @param source クラスの読み込み元
+     * @param heap オブジェクトを割り当てるヒープ
+     */
+    public MethodArea(ClassSource source, Heap heap) {
+        this.source = source;
+        this.heap = heap;
+    }
+
+    /**
+     * オブジェクトを割り当てるヒープを取得します。
+     * @return ヒープ
+     */
+    public Heap getHeap() {
+        return heap;
+    }
+
+    /**
+     * 読み込み時にクラスを検証するかどうかを変更します。変更後に読み込むクラスに適用します。
+     * @param enabled 検証する場合true
+     */
+    void setVerification(boolean enabled) {
+        verification = enabled;
+    }
+
+    /**
+     * クラスを取得します。まだ読み込まれていない場合は読み込み元から読み込みます。
+     * 別のスレッドが同じクラスを読み込み中の場合は、その完了を待ちます。
+     * @param className 内部形式のクラス名
+     * @return クラス
+     * @throws NoClassDefFoundError クラスが見つからない場合、または読み込みに失敗した場合
+     * @throws ClassFormatError クラスファイルの形式が不正な場合
+     * @throws ClassCircularityError クラスが自身をスーパークラスかスーパーインターフェースに持つ場合
+     * @throws VerifyError バイトコードが型検査に失敗した場合
+     */
+    public RuntimeClass lookup(String className) {
+        RuntimeClass runtimeClass = classes.get(className);
+        if (runtimeClass != null) {
+            return runtimeClass;
+        }
+
+        Loading created = new Loading(Thread.currentThread());
+        while (true) {
+            Loading existing = loading.putIfAbsent(className, created);
+            if (existing == null) {
+                break;
+            }
+            runtimeClass = await(className, existing);
+            if (runtimeClass != null) {
+                return runtimeClass;
+            }
+        }
+        // 登録の直後に読み込み中の印を取り除くため、印を置く前に登録されていることがある
+        runtimeClass = classes.get(className);
+        if (runtimeClass != null) {
+            loading.remove(className, created);
+            created.finish(runtimeClass);
+            return runtimeClass;
+        }
+
+        try {
+            runtimeClass = load(className);
+            classes.put(className, runtimeClass);
+        } finally {
+            // 読み込み元の例外を含め、失敗した場合も印を取り除いて待っているスレッドを起こす（runtimeClassはnull）
+            loading.remove(className, created);
+            created.finish(runtimeClass);
+        }
+        return runtimeClass;
+    }
+
+    /**
+     * クラスファイルを読み込み、スーパークラスとスーパーインターフェースを読み込んでから実行時のクラスを作ります。
+     * 実行時のクラスを作る前に {@link VerificationCache} で型検査を行います。継承関係に関する制約は、
+     * 制約に現れるクラスの読み込みが読み込み中のクラスの待機に戻って循環と誤認しないよう、リンク時に照合します
+     * （{@link RuntimeClass#link()}）。
+     */
+    private RuntimeClass load(String className) {
+        ClassFile classFile;
+        try {
+            classFile = source.load(className);
+        } catch (ClassNotFoundException | IOException e) {
+            NoClassDefFoundError error = new NoClassDefFoundError(className);
+            error.initCause(e);
+            throw error;
+        }
+        if (!classFile.getName().toString().equals(className)) {
+            throw new NoClassDefFoundError(className + " (クラスファイルのクラス名が一致しません: " + classFile.getName() + ")");
+        }
+        Symbol superName = classFile.getSuperName();
+        RuntimeClass superclass = superName == null ? null : lookup(superName.toString());
+        Symbol[] interfaceNames = classFile.getInterfaceNames();
+        RuntimeClass[] interfaces = new RuntimeClass[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = lookup(interfaceNames[i].toString());
+        }
+        Verification verified = verification ? VerificationCache.getInstance().verify(classFile) : null;
+        return new RuntimeClass(this, classFile, superclass, interfaces, verified);
+    }
+
+    /**
+     * 検証の制約を照合するため、クラスファイルを取得します。まだ読み込まれていない場合は読み込みます。
+     * @param className 内部形式のクラス名
+     * @return クラスファイル。見つからない場合はnull（制約は満たすとみなす）
+     */
+    ClassFile findClassFile(String className) {
+        try {
+            return lookup(className).getClassFile();
+        } catch (NoClassDefFoundError e) {
+            return null;
+        }
+    }
+
+    /**
+     * 別のスレッドによるクラスの読み込みの完了を待ちます。
+     * 待機の連鎖をたどって自身が読み込み中のクラスに戻る場合は、継承関係が循環しているため待たずにエラーとします。
+     * @return 読み込んだクラス。読み込みが失敗した場合はnull（呼び出し元が改めて読み込み、同じエラーを受け取る）
+     * @throws ClassCircularityError 継承関係が循環している場合
+     */
+    private RuntimeClass await(String className, Loading target) {
+        Thread current = Thread.currentThread();
+        // 待機を記録してから連鎖をたどるため、同時に待ち始めた2つのスレッドの少なくとも一方が循環を検出する
+        waiting.put(current, target);
+        try {
+            for (Loading next = target; next != null; next = waiting.get(next.owner)) {
+                if (next.owner == current) {
+                    throw new ClassCircularityError(className);
+                }
+            }
+            return target.await();
+        } finally {
+            waiting.remove(current);
+        }
+    }
+
+    /**
+     * クラスとそのスーパークラス、スーパーインターフェースの順に、名前と記述子が一致するメソッドを解決します。
+     * @param className メソッドを参照するクラスの内部形式の名前
+     * @param name メソッド名
+     * @param descriptor メソッド記述子
+     * @return 解決したメソッド
+     * @throws NoSuchMethodError メソッドが見つからない場合
+     * @throws NoClassDefFoundError クラスが見つからない場合
+     */
+    public RuntimeMethod resolveMethod(String className, String name, String descriptor) {
+        RuntimeClass runtimeClass = lookup(className);
+        for (RuntimeClass current = runtimeClass; current != null; current = current.getSuperclass()) {
+            RuntimeMethod method = current.findDeclaredMethod(name, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        for (RuntimeClass current = runtimeClass; current != null; current = current.getSuperclass()) {
+            RuntimeMethod method = findInterfaceMethod(current, name, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodError(className + "." + name + descriptor);
+    }
+
+    private static RuntimeMethod findInterfaceMethod(RuntimeClass runtimeClass, String name, String descriptor) {
+        for (RuntimeClass superinterface : runtimeClass.getInterfaces()) {
+            RuntimeMethod method = superinterface.findDeclaredMethod(name, descriptor);
+            if (method != null && !method.isStatic() && !method.isPrivate()) {
+                return method;
+            }
+            method = findInterfaceMethod(superinterface, name, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * フィールドを解決します。クラス、そのスーパーインターフェース、スーパークラスの順に探します。
+     * @param className フィールドを参照するクラスの内部形式の名前
+     * @param name フィールド名
+     * @param descriptor フィールド記述子
+     * @return 解決したフィールド
+     * @throws NoSuchFieldError フィールドが見つからない場合
+     * @throws NoClassDefFoundError クラスが見つからない場合
+     */
+    public RuntimeField resolveField(String className, String name, String descriptor) {
+        RuntimeField field = findField(lookup(className), name, descriptor);
+        if (field == null) {
+            throw new NoSuchFieldError(className + "." + name + ":" + descriptor);
+        }
+        return field;
+    }
+
+    private static RuntimeField findField(RuntimeClass runtimeClass, String name, String descriptor) {
+        for (RuntimeClass current = runtimeClass; current != null; current = current.getSuperclass()) {
+            RuntimeField field = current.findDeclaredField(name, descriptor);
+            if (field != null) {
+                return field;
+            }
+            for (RuntimeClass superinterface : current.getInterfaces()) {
+                field = findField(superinterface, name, descriptor);
+                if (field != null) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 実行中のゲストのスレッドの数を返します。
+     * @return 開始して終了していないスレッドと、Runnableを指定して生成しただけのスレッドの数
+     */
+    public int getThreadCount() {
+        return threads.size();
+    }
+
+    /**
+     * 読み込み済みのクラス数を返します。
+     * @return クラス数
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * 1つのクラスの読み込み
+     */
+    private static final class Loading {
+        final Thread owner;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private RuntimeClass result;
+
+        Loading(Thread owner) {
+            this.owner = owner;
+        }
+
+        void finish(RuntimeClass runtimeClass) {
+            result = runtimeClass;
+            done.countDown();
+        }
+
+        /**
+         * 読み込みの完了を待ちます。割り込まれても待ち続け、割り込みの状態は戻る前に復元します。
+         * @return 読み込んだクラス。失敗した場合はnull
+         */
+        RuntimeClass await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+    }
+}
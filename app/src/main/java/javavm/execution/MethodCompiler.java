@@ -0,0 +1,999 @@
+package javavm.execution;
+
+/**
+ * 事前デコードした命令列を、ホストのバイトコードの隠しクラスに変換するコンパイラ
+ *
+ * 生成するクラスは {@link CompiledMethod} を継承し、{@code run} に命令列全体を変換したコードを持ちます。
+ * フレームのスロットは、{@link ReferenceMap} が求めたスロットの種類に応じてホストのローカル変数に割り当てます
+ * （スロットごとにint、long、参照とアドレスの組の3種類）。オペランドスタックのスロットもローカル変数に置くため、
+ * 変換した各命令はホストのオペランドスタックを命令の中だけで使用します。レジスタへの割り当てはホストのJITに任せます。
+ *
+ * <p>{@code run} の先頭は入口の命令位置による分岐で、入口ごとにスロット配列からローカル変数を読み込んでから
+ * その命令へ分岐します。入口は命令列の先頭、呼び出し命令の直後、および後方への分岐先です。
+ * 呼び出し、return、対応していない命令は、ローカル変数をスロット配列へ書き戻してインタプリタに戻ります
+ * （{@link CompiledMethod} を参照）。インタプリタに戻る命令の後続は、入口から到達しない限り変換しません。</p>
+ *
+ * <p>例外ハンドラを持つ命令列（synchronizedを含む）と組み込みメソッドはコンパイルしません。
+ * 例外が発生した時点のローカル変数をインタプリタに渡す手段がないためです。</p>
+ */
+final class MethodCompiler {
+    /** 生成する隠しクラスの名前（ホストのVMが一意な接尾辞を付ける） */
+    static final String CLASS_NAME = "javavm/execution/Compiled";
+
+    private static final String COMPILED = CompiledMethod.CLASS_NAME;
+    private static final String INTERPRETER = "javavm/execution/Interpreter";
+    private static final String HEAP = "javavm/execution/Heap";
+    private static final String COLLECTOR = "javavm/execution/GarbageCollector";
+    private static final String QUICK_CONSTANT = "javavm/execution/QuickConstant";
+    private static final String BYTE_BUFFER = "java/nio/ByteBuffer";
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    // run(slots, refs, fp, pc) の引数のローカル変数
+    private static final int THIS = 0;
+    private static final int SLOTS = 1;
+    private static final int REFS = 2;
+    private static final int FP = 3;
+    private static final int PC = 4;
+    // フレームのスロットごとに、int（1）、long（2）、参照（1）とアドレス（2）のローカル変数を割り当てる
+    private static final int FIRST_LOCAL = 5;
+    private static final int LOCALS_PER_SLOT = 6;
+    // 1命令の変換で使用するホストのオペランドスタックの深さの上限（dup2_x2で参照とアドレスの組を4つ積む場合など）
+    private static final int MAX_STACK = 16;
+
+    // 変換の対象の2つの命令列の表記（算術命令の型と変換命令の変換元・変換先）
+    private static final String TYPES = "IJFD";
+    private static final String CONVERT_FROM = "IIIJJJFFFDDDIII";
+    private static final String CONVERT_TO = "JFDIFDIJDIJFIII";
+
+    private final DecodedCode decoded;
+    private final int[] code;
+    private final ReferenceMap map;
+    private final HiddenClassWriter writer = new HiddenClassWriter();
+
+    private MethodCompiler(DecodedCode decoded, int[] code) {
+        this.decoded = decoded;
+        this.code = code;
+        this.map = decoded.getReferenceMap();
+    }
+
+    /**
+     * 命令列をコンパイルし、隠しクラスのクラスファイルを作ります。
+     * 命令列はロックの中で複製するため、コンパイル中にクイック命令へ書き換わっても影響を受けません。
+     * @param decoded 命令列
+     * @return クラスファイル。コンパイルの対象外の命令列の場合はnull
+     * @throws IllegalStateException 生成するメソッドがクラスファイルの制限を超える場合
+     */
+    static byte[] compile(DecodedCode decoded) {
+        if (decoded.catchTypes.length > 0) {
+            return null;
+        }
+        int[] code;
+        synchronized (decoded) {
+            code = decoded.instructions.clone();
+        }
+        MethodCompiler compiler = new MethodCompiler(decoded, code);
+        for (int pc = 0; pc < code.length; pc++) {
+            if (compiler.map.frameSize(pc) >= 0) {
+                if (code[pc] == DecodedOpcode.INVOKE_INTRINSIC) {
+                    return null;
+                }
+                // スーパー命令は元の命令ごとに変換する
+                code[pc] = DecodedOpcode.unfused(code[pc]);
+            }
+        }
+        return compiler.generate();
+    }
+
+    private byte[] generate() {
+        int length = code.length;
+        // 到達する命令の次の命令の位置（到達する命令の後続は、次に到達する命令の位置と一致する）
+        int[] next = new int[length];
+        int following = length;
+        for (int pc = length - 1; pc >= 0; pc--) {
+            next[pc] = following;
+            if (map.frameSize(pc) >= 0) {
+                following = pc;
+            }
+        }
+
+        boolean[] entry = new boolean[length];
+        entry[0] = true;
+        for (int pc = 0; pc < length; pc++) {
+            if (map.frameSize(pc) < 0) {
+                continue;
+            }
+            switch (code[pc]) {
+                case Opcode.INVOKESTATIC:
+                case Opcode.INVOKESPECIAL:
+                case Opcode.INVOKEVIRTUAL:
+                case Opcode.INVOKEINTERFACE:
+                    if (next[pc] < length && map.frameSize(next[pc]) >= 0) {
+                        entry[next[pc]] = true;
+                    }
+                    break;
+                case Opcode.GOTO:
+                    if (code[pc + 1] <= pc) {
+                        entry[code[pc + 1]] = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        boolean[] reachable = reachable(entry, next);
+
+        int entryCount = 0;
+        for (boolean e : entry) {
+            if (e) {
+                entryCount++;
+            }
+        }
+        int[] entries = new int[entryCount];
+        int[] entryLabels = new int[entryCount];
+        for (int pc = 0, i = 0; pc < length; pc++) {
+            if (entry[pc]) {
+                entries[i] = pc;
+                entryLabels[i] = length + i;
+                i++;
+            }
+        }
+        int invalid = length + entryCount;
+
+        writer.beginMethod(invalid + 1);
+        writer.local(Opcode.ILOAD, PC);
+        writer.lookupSwitch(invalid, entries, entryLabels);
+        for (int i = 0; i < entryCount; i++) {
+            writer.bind(entryLabels[i]);
+            load(entries[i]);
+            writer.jump(Opcode.GOTO, entries[i]);
+        }
+        writer.bind(invalid);
+        writer.local(Opcode.ILOAD, PC);
+        writer.invoke(Opcode.INVOKESTATIC, COMPILED, "invalidEntry", "(I)Ljava/lang/Error;");
+        writer.op(Opcode.ATHROW);
+        for (int pc = 0; pc < length; pc++) {
+            if (reachable[pc]) {
+                writer.bind(pc);
+                translate(pc);
+            }
+        }
+        writer.endMethod(0, "run", CompiledMethod.RUN_DESCRIPTOR, MAX_STACK,
+                FIRST_LOCAL + LOCALS_PER_SLOT * (decoded.maxLocals + decoded.maxStack));
+
+        writer.beginMethod(0);
+        writer.local(Opcode.ALOAD, THIS);
+        writer.local(Opcode.ALOAD, 1);
+        writer.invoke(Opcode.INVOKESPECIAL, COMPILED, "<init>", "(Ljavavm/execution/DecodedCode;)V");
+        writer.op(Opcode.RETURN);
+        writer.endMethod(0, "<init>", "(Ljavavm/execution/DecodedCode;)V", 2, 2);
+        return writer.toByteArray(CLASS_NAME, COMPILED);
+    }
+
+    /**
+     * 入口から、変換したコードの中で到達する命令を求めます。インタプリタに戻る命令の後続はたどりません。
+     */
+    private boolean[] reachable(boolean[] entry, int[] next) {
+        boolean[] reachable = new boolean[code.length];
+        int[] worklist = new int[code.length];
+        int pending = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            if (entry[pc]) {
+                reachable[pc] = true;
+                worklist[pending++] = pc;
+            }
+        }
+        while (pending > 0) {
+            int pc = worklist[--pending];
+            int[] successors;
+            switch (code[pc]) {
+                case Opcode.GOTO:
+                    successors = new int[] {code[pc + 1]};
+                    break;
+                case Opcode.IFEQ:
+                case Opcode.IFNE:
+                case Opcode.IFLT:
+                case Opcode.IFGE:
+                case Opcode.IFGT:
+                case Opcode.IFLE:
+                case Opcode.IF_ICMPEQ:
+                case Opcode.IF_ICMPNE:
+                case Opcode.IF_ICMPLT:
+                case Opcode.IF_ICMPGE:
+                case Opcode.IF_ICMPGT:
+                case Opcode.IF_ICMPLE:
+                case Opcode.IF_ACMPEQ:
+                case Opcode.IF_ACMPNE:
+                case Opcode.IFNULL:
+                case Opcode.IFNONNULL:
+                    successors = new int[] {code[pc + 1], next[pc]};
+                    break;
+                case Opcode.TABLESWITCH: {
+                    int count = code[pc + 2] - code[pc + 1] + 1;
+                    successors = new int[count + 1];
+                    System.arraycopy(code, pc + 3, successors, 0, count + 1);
+                    break;
+                }
+                case Opcode.LOOKUPSWITCH: {
+                    int pairs = code[pc + 1];
+                    successors = new int[pairs + 1];
+                    successors[pairs] = code[pc + 2];
+                    for (int i = 0; i < pairs; i++) {
+                        successors[i] = code[pc + 4 + i * 2];
+                    }
+                    break;
+                }
+                default:
+                    successors = isExit(code[pc]) ? new int[0] : new int[] {next[pc]};
+                    break;
+            }
+            for (int successor : successors) {
+                if (!reachable[successor]) {
+                    reachable[successor] = true;
+                    worklist[pending++] = successor;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * 命令が常にインタプリタに戻る命令かどうかを返します。
+     */
+    private static boolean isExit(int opcode) {
+        switch (opcode) {
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKEINTERFACE:
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+            case Opcode.ATHROW:
+            case Opcode.AALOAD:
+            case Opcode.AASTORE:
+            case Opcode.ANEWARRAY:
+            case Opcode.MONITORENTER:
+            case Opcode.MONITOREXIT:
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+            case Opcode.NEW:
+            case DecodedOpcode.NEW_QUICK:
+            case DecodedOpcode.UNSUPPORTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 1命令を変換します。
+     */
+    private void translate(int pc) {
+        int opcode = code[pc];
+        int sp = map.frameSize(pc);
+        switch (opcode) {
+            case DecodedOpcode.ICONST:
+                writer.pushInt(code[pc + 1]);
+                storeInt(sp);
+                return;
+            case DecodedOpcode.LCONST:
+                writer.pushLong(((long) code[pc + 1] << 32) | (code[pc + 2] & 0xFFFFFFFFL));
+                storeLong(sp);
+                return;
+            case DecodedOpcode.ACONST:
+                loadConstants();
+                writer.pushInt(code[pc + 1]);
+                writer.op(Opcode.AALOAD);
+                writer.pushLong(0);
+                storeReference(sp);
+                return;
+            case Opcode.ACONST_NULL:
+                writer.op(Opcode.ACONST_NULL);
+                writer.pushLong(0);
+                storeReference(sp);
+                return;
+            case Opcode.ILOAD:
+                loadInt(code[pc + 1]);
+                storeInt(sp);
+                return;
+            case Opcode.LLOAD:
+                loadLong(code[pc + 1]);
+                storeLong(sp);
+                return;
+            case Opcode.ALOAD:
+                loadReference(code[pc + 1]);
+                storeReference(sp);
+                return;
+            case Opcode.ISTORE:
+                loadInt(sp - 1);
+                storeInt(code[pc + 1]);
+                return;
+            case Opcode.LSTORE:
+                loadLong(sp - 2);
+                storeLong(code[pc + 1]);
+                return;
+            case Opcode.ASTORE:
+                loadReference(sp - 1);
+                storeReference(code[pc + 1]);
+                return;
+            case Opcode.IINC:
+                loadInt(code[pc + 1]);
+                writer.pushInt(code[pc + 2]);
+                writer.op(Opcode.IADD);
+                storeInt(code[pc + 1]);
+                return;
+
+            case Opcode.IALOAD:
+                loadElement(sp, "[I", 'I', opcode);
+                return;
+            case Opcode.LALOAD:
+                loadElement(sp, "[J", 'J', opcode);
+                return;
+            case Opcode.FALOAD:
+                loadElement(sp, "[F", 'F', opcode);
+                return;
+            case Opcode.DALOAD:
+                loadElement(sp, "[D", 'D', opcode);
+                return;
+            case Opcode.BALOAD:
+                loadElement(sp, "[B", 'I', opcode);
+                return;
+            case Opcode.CALOAD:
+                loadElement(sp, "[C", 'I', opcode);
+                return;
+            case Opcode.SALOAD:
+                loadElement(sp, "[S", 'I', opcode);
+                return;
+            case Opcode.IASTORE:
+                storeElement(sp, "[I", 'I', opcode);
+                return;
+            case Opcode.LASTORE:
+                storeElement(sp, "[J", 'J', opcode);
+                return;
+            case Opcode.FASTORE:
+                storeElement(sp, "[F", 'F', opcode);
+                return;
+            case Opcode.DASTORE:
+                storeElement(sp, "[D", 'D', opcode);
+                return;
+            case Opcode.BASTORE:
+                storeElement(sp, "[B", 'I', opcode);
+                return;
+            case Opcode.CASTORE:
+                storeElement(sp, "[C", 'I', opcode);
+                return;
+            case Opcode.SASTORE:
+                storeElement(sp, "[S", 'I', opcode);
+                return;
+
+            case Opcode.POP:
+            case Opcode.POP2:
+                // 取り除いたスロットは以降読まれない
+                return;
+            case Opcode.DUP:
+                duplicate(pc, sp, 1, 0, sp + 1);
+                return;
+            case Opcode.DUP_X1:
+                duplicate(pc, sp, 1, 1, sp + 1);
+                return;
+            case Opcode.DUP_X2:
+                duplicate(pc, sp, 1, 2, sp + 1);
+                return;
+            case Opcode.DUP2:
+                duplicate(pc, sp, 2, 0, sp + 2);
+                return;
+            case Opcode.DUP2_X1:
+                duplicate(pc, sp, 2, 1, sp + 2);
+                return;
+            case Opcode.DUP2_X2:
+                duplicate(pc, sp, 2, 2, sp + 2);
+                return;
+            case Opcode.SWAP:
+                duplicate(pc, sp, 1, 1, sp);
+                return;
+
+            case Opcode.LCMP:
+                compare(sp, 'J', opcode);
+                return;
+            case Opcode.FCMPL:
+            case Opcode.FCMPG:
+                compare(sp, 'F', opcode);
+                return;
+            case Opcode.DCMPL:
+            case Opcode.DCMPG:
+                compare(sp, 'D', opcode);
+                return;
+
+            case Opcode.IFEQ:
+            case Opcode.IFNE:
+            case Opcode.IFLT:
+            case Opcode.IFGE:
+            case Opcode.IFGT:
+            case Opcode.IFLE:
+                loadInt(sp - 1);
+                writer.jump(opcode, code[pc + 1]);
+                return;
+            case Opcode.IF_ICMPEQ:
+            case Opcode.IF_ICMPNE:
+            case Opcode.IF_ICMPLT:
+            case Opcode.IF_ICMPGE:
+            case Opcode.IF_ICMPGT:
+            case Opcode.IF_ICMPLE:
+                loadInt(sp - 2);
+                loadInt(sp - 1);
+                writer.jump(opcode, code[pc + 1]);
+                return;
+            case Opcode.IF_ACMPEQ:
+            case Opcode.IF_ACMPNE:
+                loadReference(sp - 2);
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKESTATIC, COMPILED, "same", "(" + OBJECT + "J" + OBJECT + "J)Z");
+                writer.jump(opcode == Opcode.IF_ACMPEQ ? Opcode.IFNE : Opcode.IFEQ, code[pc + 1]);
+                return;
+            case Opcode.IFNULL:
+            case Opcode.IFNONNULL:
+                writer.local(Opcode.ALOAD, objectLocal(sp - 1));
+                writer.jump(opcode, code[pc + 1]);
+                return;
+            case Opcode.GOTO: {
+                int target = code[pc + 1];
+                if (target > pc) {
+                    writer.jump(Opcode.GOTO, target);
+                    return;
+                }
+                // セーフポイントが要求されていればインタプリタに戻り、インタプリタがこのgotoで停止する
+                writer.local(Opcode.ALOAD, THIS);
+                writer.field(Opcode.GETFIELD, COMPILED, "collector", "L" + COLLECTOR + ";");
+                writer.field(Opcode.GETFIELD, COLLECTOR, "safepointRequested", "Z");
+                writer.jump(Opcode.IFEQ, target);
+                exit(pc, 0);
+                return;
+            }
+            case Opcode.TABLESWITCH: {
+                int count = code[pc + 2] - code[pc + 1] + 1;
+                int[] targets = new int[count];
+                System.arraycopy(code, pc + 4, targets, 0, count);
+                loadInt(sp - 1);
+                writer.tableSwitch(code[pc + 1], code[pc + 2], code[pc + 3], targets);
+                return;
+            }
+            case Opcode.LOOKUPSWITCH: {
+                int pairs = code[pc + 1];
+                int[] keys = new int[pairs];
+                int[] targets = new int[pairs];
+                for (int i = 0; i < pairs; i++) {
+                    keys[i] = code[pc + 3 + i * 2];
+                    targets[i] = code[pc + 4 + i * 2];
+                }
+                loadInt(sp - 1);
+                writer.lookupSwitch(code[pc + 2], keys, targets);
+                return;
+            }
+
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+                // インタプリタがreturnを実行するため、戻り値だけを書き戻す
+                exit(pc, decoded.maxLocals);
+                return;
+
+            case DecodedOpcode.IGETFIELD_QUICK:
+                getField(pc, sp, "getInt", "I", 'I');
+                return;
+            case DecodedOpcode.BGETFIELD_QUICK:
+                getField(pc, sp, "get", "B", 'I');
+                return;
+            case DecodedOpcode.CGETFIELD_QUICK:
+                getField(pc, sp, "getChar", "C", 'I');
+                return;
+            case DecodedOpcode.SGETFIELD_QUICK:
+                getField(pc, sp, "getShort", "S", 'I');
+                return;
+            case DecodedOpcode.LGETFIELD_QUICK:
+                getField(pc, sp, "getLong", "J", 'J');
+                return;
+            case DecodedOpcode.AGETFIELD_QUICK:
+                fieldAddress(pc, sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, BYTE_BUFFER, "getInt", "(I)I");
+                writer.invoke(Opcode.INVOKESTATIC, HEAP, "decompress", "(I)J");
+                storeStoredReference(sp - 1);
+                return;
+            case DecodedOpcode.IPUTFIELD_QUICK:
+                putField(pc, sp - 2, "putInt", "I", -1);
+                return;
+            case DecodedOpcode.BPUTFIELD_QUICK:
+                putField(pc, sp - 2, "put", "B", Opcode.I2B);
+                return;
+            case DecodedOpcode.SPUTFIELD_QUICK:
+                putField(pc, sp - 2, "putShort", "S", Opcode.I2S);
+                return;
+            case DecodedOpcode.LPUTFIELD_QUICK:
+                putField(pc, sp - 3, "putLong", "J", -1);
+                return;
+            case DecodedOpcode.APUTFIELD_QUICK:
+                writer.local(Opcode.ALOAD, THIS);
+                loadReference(sp - 2);
+                writer.invoke(Opcode.INVOKESTATIC, INTERPRETER, "address", "(" + OBJECT + "J)I");
+                writer.pushInt(code[pc + 1]);
+                writer.op(Opcode.IADD);
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, COMPILED, "putReference", "(I" + OBJECT + "J)V");
+                return;
+            case DecodedOpcode.IGETSTATIC_QUICK:
+                staticElement(pc);
+                writer.op(Opcode.LALOAD);
+                writer.op(Opcode.L2I);
+                storeInt(sp);
+                return;
+            case DecodedOpcode.LGETSTATIC_QUICK:
+                staticElement(pc);
+                writer.op(Opcode.LALOAD);
+                storeLong(sp);
+                return;
+            case DecodedOpcode.AGETSTATIC_QUICK:
+                staticElement(pc);
+                writer.op(Opcode.LALOAD);
+                storeStoredReference(sp);
+                return;
+            case DecodedOpcode.IPUTSTATIC_QUICK:
+                staticElement(pc);
+                loadInt(sp - 1);
+                writer.op(Opcode.I2L);
+                writer.op(Opcode.LASTORE);
+                return;
+            case DecodedOpcode.LPUTSTATIC_QUICK:
+                staticElement(pc);
+                loadLong(sp - 2);
+                writer.op(Opcode.LASTORE);
+                return;
+            case DecodedOpcode.APUTSTATIC_QUICK:
+                staticElement(pc);
+                writer.local(Opcode.ALOAD, THIS);
+                writer.field(Opcode.GETFIELD, COMPILED, "heap", "L" + HEAP + ";");
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, HEAP, "encode", "(" + OBJECT + "J)J");
+                writer.op(Opcode.LASTORE);
+                return;
+
+            case Opcode.NEWARRAY:
+                writer.pushInt(code[pc + 1]);
+                loadInt(sp - 1);
+                writer.invoke(Opcode.INVOKESTATIC, INTERPRETER, "newArray", "(II)" + OBJECT);
+                writer.pushLong(0);
+                storeReference(sp - 1);
+                return;
+            case Opcode.ARRAYLENGTH:
+                writer.local(Opcode.ALOAD, THIS);
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, COMPILED, "arrayLength", "(" + OBJECT + "J)I");
+                storeInt(sp - 1);
+                return;
+            case Opcode.CHECKCAST:
+                writer.local(Opcode.ALOAD, THIS);
+                writer.pushInt(pc);
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, COMPILED, "checkCast", "(I" + OBJECT + "J)V");
+                return;
+            case Opcode.INSTANCEOF:
+                writer.local(Opcode.ALOAD, THIS);
+                writer.pushInt(pc);
+                loadReference(sp - 1);
+                writer.invoke(Opcode.INVOKEVIRTUAL, COMPILED, "isInstance", "(I" + OBJECT + "J)Z");
+                storeInt(sp - 1);
+                return;
+
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+            case Opcode.NEW:
+                // コンパイル時に未解決だった命令。インタプリタが書き換えた後にコンパイルし直す
+                writer.local(Opcode.ALOAD, THIS);
+                writer.invoke(Opcode.INVOKEVIRTUAL, COMPILED, "invalidate", "()V");
+                exit(pc, 0);
+                return;
+            default:
+                if (isExit(opcode)) {
+                    exit(pc, 0);
+                } else if (opcode >= Opcode.IADD && opcode <= Opcode.LXOR) {
+                    arithmetic(sp, opcode);
+                } else if (opcode >= Opcode.I2L && opcode <= Opcode.I2S) {
+                    convert(sp, opcode);
+                } else {
+                    throw new IllegalStateException("コンパイルできない命令です: " + DecodedOpcode.mnemonic(opcode) + " (" + decoded + ")");
+                }
+                return;
+        }
+    }
+
+    /**
+     * 算術命令（iadd〜lxor）を変換します。ホストの命令はゲストの命令と同じオペコードです。
+     */
+    private void arithmetic(int sp, int opcode) {
+        if (opcode <= Opcode.DREM) {
+            char type = TYPES.charAt((opcode - Opcode.IADD) % 4);
+            int size = size(type);
+            load(type, sp - size * 2);
+            load(type, sp - size);
+            writer.op(opcode);
+            store(type, sp - size * 2);
+        } else if (opcode <= Opcode.DNEG) {
+            char type = TYPES.charAt((opcode - Opcode.INEG) % 4);
+            load(type, sp - size(type));
+            writer.op(opcode);
+            store(type, sp - size(type));
+        } else if (opcode <= Opcode.LUSHR) {
+            // シフト量は常にint
+            char type = (opcode - Opcode.ISHL) % 2 == 0 ? 'I' : 'J';
+            int value = sp - 1 - size(type);
+            load(type, value);
+            loadInt(sp - 1);
+            writer.op(opcode);
+            store(type, value);
+        } else {
+            char type = (opcode - Opcode.IAND) % 2 == 0 ? 'I' : 'J';
+            int size = size(type);
+            load(type, sp - size * 2);
+            load(type, sp - size);
+            writer.op(opcode);
+            store(type, sp - size * 2);
+        }
+    }
+
+    /**
+     * 型変換命令（i2l〜i2s）を変換します。
+     */
+    private void convert(int sp, int opcode) {
+        char from = CONVERT_FROM.charAt(opcode - Opcode.I2L);
+        int slot = sp - size(from);
+        load(from, slot);
+        writer.op(opcode);
+        store(CONVERT_TO.charAt(opcode - Opcode.I2L), slot);
+    }
+
+    /**
+     * lcmp、fcmpl/fcmpg、dcmpl/dcmpgを変換します。
+     */
+    private void compare(int sp, char type, int opcode) {
+        int slot = sp - size(type) * 2;
+        load(type, slot);
+        load(type, sp - size(type));
+        writer.op(opcode);
+        storeInt(slot);
+    }
+
+    /**
+     * ホストの配列の要素を読み込む命令を変換します。
+     */
+    private void loadElement(int sp, String arrayType, char type, int opcode) {
+        writer.local(Opcode.ALOAD, objectLocal(sp - 2));
+        writer.type(Opcode.CHECKCAST, arrayType);
+        loadInt(sp - 1);
+        writer.op(opcode);
+        store(type, sp - 2);
+    }
+
+    /**
+     * ホストの配列の要素に格納する命令を変換します。
+     */
+    private void storeElement(int sp, String arrayType, char type, int opcode) {
+        int array = sp - 2 - size(type);
+        writer.local(Opcode.ALOAD, objectLocal(array));
+        writer.type(Opcode.CHECKCAST, arrayType);
+        loadInt(array + 1);
+        load(type, array + 2);
+        writer.op(opcode);
+    }
+
+    /**
+     * 基本型のgetfieldのクイック命令を変換します。
+     */
+    private void getField(int pc, int sp, String method, String fieldType, char type) {
+        fieldAddress(pc, sp - 1);
+        writer.invoke(Opcode.INVOKEVIRTUAL, BYTE_BUFFER, method, "(I)" + fieldType);
+        store(type, sp - 1);
+    }
+
+    /**
+     * 基本型のputfieldのクイック命令を変換します。
+     * @param object オブジェクトのスロット（値はその次のスロット）
+     * @param narrow 値を縮める命令。不要な場合は-1
+     */
+    private void putField(int pc, int object, String method, String fieldType, int narrow) {
+        fieldAddress(pc, object);
+        load(fieldType.equals("J") ? 'J' : 'I', object + 1);
+        if (narrow >= 0) {
+            writer.op(narrow);
+        }
+        writer.invoke(Opcode.INVOKEVIRTUAL, BYTE_BUFFER, method, "(I" + fieldType + ")L" + BYTE_BUFFER + ";");
+        writer.op(Opcode.POP);
+    }
+
+    /**
+     * ヒープのメモリと、スロットのオブジェクトのフィールドのアドレスを積みます。
+     */
+    private void fieldAddress(int pc, int object) {
+        writer.local(Opcode.ALOAD, THIS);
+        writer.field(Opcode.GETFIELD, COMPILED, "memory", "L" + BYTE_BUFFER + ";");
+        loadReference(object);
+        writer.invoke(Opcode.INVOKESTATIC, INTERPRETER, "address", "(" + OBJECT + "J)I");
+        writer.pushInt(code[pc + 1]);
+        writer.op(Opcode.IADD);
+    }
+
+    /**
+     * staticフィールドのクイック命令の、staticフィールドの配列と添字を積みます。
+     */
+    private void staticElement(int pc) {
+        loadConstants();
+        writer.pushInt(code[pc + 1]);
+        writer.op(Opcode.AALOAD);
+        writer.type(Opcode.CHECKCAST, QUICK_CONSTANT);
+        writer.field(Opcode.GETFIELD, QUICK_CONSTANT, "statics", "[J");
+        // 書き換え後の命令列を複製したロックの後で読むため、定数は書き換え済み
+        writer.pushInt(((QuickConstant) decoded.constants[code[pc + 1]]).slot);
+    }
+
+    private void loadConstants() {
+        writer.local(Opcode.ALOAD, THIS);
+        writer.field(Opcode.GETFIELD, COMPILED, "constants", "[" + OBJECT);
+    }
+
+    /**
+     * フィールドなどに格納した形式の参照（スタックに積んだlong）をスロットに格納します。
+     */
+    private void storeStoredReference(int slot) {
+        writer.local(Opcode.LSTORE, addressLocal(slot));
+        writer.local(Opcode.ALOAD, THIS);
+        writer.field(Opcode.GETFIELD, COMPILED, "heap", "L" + HEAP + ";");
+        writer.local(Opcode.LLOAD, addressLocal(slot));
+        writer.invoke(Opcode.INVOKEVIRTUAL, HEAP, "referenceOf", "(J)" + OBJECT);
+        writer.local(Opcode.ASTORE, objectLocal(slot));
+    }
+
+    /**
+     * dup系の命令とswapを、インタプリタと同じ並べ替えをスロットの移動として変換します。
+     * 移動元をすべてホストのスタックに積んでから、移動先へ逆順に格納します。
+     */
+    private void duplicate(int pc, int sp, int count, int skip, int newSp) {
+        int[] source = new int[sp + count];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = i;
+        }
+        System.arraycopy(source, sp - count, source, sp, count);
+        System.arraycopy(source, sp - count - skip, source, sp - skip, skip + count);
+        System.arraycopy(source, sp, source, sp - count - skip, count);
+        int from = sp - count - skip;
+        for (int target = from; target < newSp; target++) {
+            if (source[target] != target) {
+                push(map.kind(pc, source[target]), source[target]);
+            }
+        }
+        for (int target = newSp - 1; target >= from; target--) {
+            if (source[target] != target) {
+                pop(map.kind(pc, source[target]), target);
+            }
+        }
+    }
+
+    /**
+     * スロットの値を種類に応じて積みます。値のないスロット（longの2番目など）は何もしません。
+     */
+    private void push(byte kind, int slot) {
+        switch (kind) {
+            case ReferenceMap.INT:
+                loadInt(slot);
+                break;
+            case ReferenceMap.LONG:
+                loadLong(slot);
+                break;
+            case ReferenceMap.REFERENCE:
+                loadReference(slot);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void pop(byte kind, int slot) {
+        switch (kind) {
+            case ReferenceMap.INT:
+                storeInt(slot);
+                break;
+            case ReferenceMap.LONG:
+                storeLong(slot);
+                break;
+            case ReferenceMap.REFERENCE:
+                storeReference(slot);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 入口の命令位置のフレームの状態を、スロット配列からローカル変数に読み込みます。
+     */
+    private void load(int pc) {
+        int size = map.frameSize(pc);
+        for (int slot = 0; slot < size; slot++) {
+            switch (map.kind(pc, slot)) {
+                case ReferenceMap.INT:
+                    loadSlot(SLOTS, slot, Opcode.LALOAD);
+                    writer.op(Opcode.L2I);
+                    storeInt(slot);
+                    break;
+                case ReferenceMap.LONG:
+                    loadSlot(SLOTS, slot, Opcode.LALOAD);
+                    storeLong(slot);
+                    break;
+                case ReferenceMap.REFERENCE:
+                    loadSlot(REFS, slot, Opcode.AALOAD);
+                    loadSlot(SLOTS, slot, Opcode.LALOAD);
+                    storeReference(slot);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * ローカル変数をスロット配列に書き戻し、インタプリタが命令位置から実行を再開する状態を返します。
+     * @param from 書き戻す最初のスロット
+     */
+    private void exit(int pc, int from) {
+        int size = map.frameSize(pc);
+        for (int slot = from; slot < size; slot++) {
+            switch (map.kind(pc, slot)) {
+                case ReferenceMap.INT:
+                    slotIndex(SLOTS, slot);
+                    loadInt(slot);
+                    writer.op(Opcode.I2L);
+                    writer.op(Opcode.LASTORE);
+                    break;
+                case ReferenceMap.LONG:
+                    slotIndex(SLOTS, slot);
+                    loadLong(slot);
+                    writer.op(Opcode.LASTORE);
+                    break;
+                case ReferenceMap.REFERENCE:
+                    slotIndex(REFS, slot);
+                    writer.local(Opcode.ALOAD, objectLocal(slot));
+                    writer.op(Opcode.AASTORE);
+                    slotIndex(SLOTS, slot);
+                    writer.local(Opcode.LLOAD, addressLocal(slot));
+                    writer.op(Opcode.LASTORE);
+                    break;
+                default:
+                    break;
+            }
+        }
+        writer.local(Opcode.ILOAD, FP);
+        writer.pushInt(size);
+        writer.op(Opcode.IADD);
+        writer.op(Opcode.I2L);
+        writer.pushInt(32);
+        writer.op(Opcode.LSHL);
+        writer.pushLong(pc);
+        writer.op(Opcode.LOR);
+        writer.op(Opcode.LRETURN);
+    }
+
+    private void loadSlot(int array, int slot, int opcode) {
+        slotIndex(array, slot);
+        writer.op(opcode);
+    }
+
+    /**
+     * スロット配列（または参照の配列）と、フレームのスロットの添字を積みます。
+     */
+    private void slotIndex(int array, int slot) {
+        writer.local(Opcode.ALOAD, array);
+        writer.local(Opcode.ILOAD, FP);
+        if (slot != 0) {
+            writer.pushInt(slot);
+            writer.op(Opcode.IADD);
+        }
+    }
+
+    /**
+     * スロットの値をホストの型で積みます。floatとdoubleはビット表現から変換します。
+     */
+    private void load(char type, int slot) {
+        switch (type) {
+            case 'F':
+                loadInt(slot);
+                writer.invoke(Opcode.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F");
+                break;
+            case 'D':
+                loadLong(slot);
+                writer.invoke(Opcode.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D");
+                break;
+            case 'J':
+                loadLong(slot);
+                break;
+            default:
+                loadInt(slot);
+                break;
+        }
+    }
+
+    /**
+     * ホストの型の値をスロットに格納します。floatとdoubleはビット表現に変換します。
+     */
+    private void store(char type, int slot) {
+        switch (type) {
+            case 'F':
+                writer.invoke(Opcode.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I");
+                storeInt(slot);
+                break;
+            case 'D':
+                writer.invoke(Opcode.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J");
+                storeLong(slot);
+                break;
+            case 'J':
+                storeLong(slot);
+                break;
+            default:
+                storeInt(slot);
+                break;
+        }
+    }
+
+    private void loadInt(int slot) {
+        writer.local(Opcode.ILOAD, intLocal(slot));
+    }
+
+    private void storeInt(int slot) {
+        writer.local(Opcode.ISTORE, intLocal(slot));
+    }
+
+    private void loadLong(int slot) {
+        writer.local(Opcode.LLOAD, longLocal(slot));
+    }
+
+    private void storeLong(int slot) {
+        writer.local(Opcode.LSTORE, longLocal(slot));
+    }
+
+    /**
+     * 参照とアドレスの組を積みます。
+     */
+    private void loadReference(int slot) {
+        writer.local(Opcode.ALOAD, objectLocal(slot));
+        writer.local(Opcode.LLOAD, addressLocal(slot));
+    }
+
+    /**
+     * 積んだ参照とアドレスの組をスロットに格納します。
+     */
+    private void storeReference(int slot) {
+        writer.local(Opcode.LSTORE, addressLocal(slot));
+        writer.local(Opcode.ASTORE, objectLocal(slot));
+    }
+
+    private static int intLocal(int slot) {
+        return FIRST_LOCAL + slot * LOCALS_PER_SLOT;
+    }
+
+    private static int longLocal(int slot) {
+        return FIRST_LOCAL + slot * LOCALS_PER_SLOT + 1;
+    }
+
+    private static int objectLocal(int slot) {
+        return FIRST_LOCAL + slot * LOCALS_PER_SLOT + 3;
+    }
+
+    private static int addressLocal(int slot) {
+        return FIRST_LOCAL + slot * LOCALS_PER_SLOT + 4;
+    }
+
+    private static int size(char type) {
+        return type == 'J' || type == 'D' ? 2 : 1;
+    }
+}
@@ -0,0 +1,90 @@
+package javavm.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 膨張したロック（モニタ）
+ *
+ * オブジェクトのロックは、競合がなく {@code wait}/{@code notify} も使われない間はマークワードだけで表す
+ * thin lockです（{@link Monitors}）。別のスレッドが保持しているロックを取得しようとしたとき、再入の回数が
+ * マークワードに収まらなくなったとき、{@code wait}/{@code notify} を呼び出したときに、このモニタに膨張させます。
+ *
+ * <p>所有者などの状態はモニタのロック（{@link #lock}）の中で読み書きします。取得を待つスレッドは
+ * GCを妨げないようにセーフ領域に入ってから {@link #changed} で待機します。ホストのロックを保持したまま
+ * GCの完了を待つことはありません。仮想スレッドでも待機中にキャリアスレッドを占有しないように、
+ * ホストの {@code synchronized} ではなく {@link ReentrantLock} を使用します。</p>
+ */
+final class Monitor {
+    // ホストのオブジェクトのロック（staticメソッドのクラスのロック）では-1
+    final int index;
+    final ReentrantLock lock = new ReentrantLock();
+    // 所有者が解放したとき、またはnotifyされたときに通知する
+    final Condition changed = lock.newCondition();
+
+    // 以下はlockの中で読み書きする
+    // 所有者のロックの番号（0は所有者なし）と、所有者が重ねて取得した回数
+    int owner;
+    int recursions;
+    // 取得を待っているスレッドの数
+    int entrants;
+    // waitしているスレッド
+    final List<Waiter> waiters = new ArrayList<>();
+
+    Monitor(int index) {
+        this.index = index;
+    }
+
+    /**
+     * 所有者がいなくなるまで待機します。呼び出す前にlockを保持し、セーフ領域に入ってください。
+     * @return 待機中に割り込まれた場合true
+     */
+    boolean awaitRelease() {
+        boolean interrupted = false;
+        while (owner != 0) {
+            try {
+                changed.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * notifyされるか時間が経過するまで待機します。呼び出す前にlockを保持し、セーフ領域に入ってください。
+     * ホストのスレッドが割り込まれた場合は、ゲストの見せかけの起床（spurious wakeup）として扱って戻ります。
+     * @param waiter 待機するスレッドの記録
+     * @param millis 待機するミリ秒。0の場合は時間の制限なし
+     * @return 待機中に割り込まれた場合true
+     */
+    boolean awaitNotification(Waiter waiter, long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (!waiter.notified) {
+            try {
+                if (millis == 0) {
+                    changed.await();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    changed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * waitしている1つのスレッド
+     */
+    static final class Waiter {
+        boolean notified;
+    }
+}
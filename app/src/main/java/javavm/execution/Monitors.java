@@ -0,0 +1,513 @@
+package javavm.execution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ヒープのオブジェクトのロック（monitorenter/monitorexit、synchronizedメソッド、wait/notify）
+ *
+ * ロックの状態はマークワードの {@link #LOCK_MASK} のビットに格納します。
+ * <pre>
+ * 55       54..52        51..32
+ * |   0    | 再入の回数  | 所有者のロックの番号 |   thin lock（所有者の番号が0の場合はロックされていない）
+ * |   1    |       モニタの番号（23ビット）     |   膨張したロック（{@link Monitor}）
+ * </pre>
+ * 競合がなければ、取得と解放はマークワードの比較交換1回だけで行います。所有者のロックの番号はスレッド（インタプリタ）ごとに
+ * 最初にロックを取得するときに割り当てます。別のスレッドが保持しているロックを取得しようとしたとき、
+ * 再入の回数が7回を超えたとき、wait/notifyを呼び出したときにモニタへ膨張させ、モニタの表の番号をマークワードに格納します。
+ * 膨張したロックは、解放したときに待っているスレッドがいなければthin lockに戻し（収縮）、モニタの番号を再利用します。
+ *
+ * <p>マークワードを書き換えるのはゲストのコードを実行中のスレッドだけで、GCはロックのビットを保持したままオブジェクトを
+ * 移動します。マークワードからモニタを取り出したスレッドは、モニタのロックの中でマークワードが今もそのモニタを指していることを
+ * 確かめてから状態を変更します（確かめる前に収縮した場合はやり直します）。</p>
+ *
+ * <p>ホストのオブジェクトのうち、{@link RuntimeClass}（staticのsynchronizedメソッドがロックするクラス）はクラスが持つモニタを
+ * 使用します。その他のホストのオブジェクト（文字列や基本型の配列）はマークワードを持たないため、最初にロックしたときに
+ * オブジェクトの同一性で引く表にモニタを割り当てます。表はオブジェクトを弱参照で保持し、ホストのGCが回収したオブジェクトの
+ * モニタは次にモニタを割り当てるときに取り除きます。回収されたオブジェクトは参照できないため、そのモニタを保持している
+ * スレッドや待機しているスレッドはありません。</p>
+ */
+final class Monitors {
+    /** マークワードのロックのビット */
+    static final long LOCK_MASK = 0xFFFFFFL << 32;
+    /** 所有者のロックの番号の上限 */
+    static final int MAX_ID = 0xFFFFF;
+
+    private static final int LOCK_SHIFT = 32;
+    private static final long OWNER_MASK = (long) MAX_ID << LOCK_SHIFT;
+    private static final int RECURSION_SHIFT = 52;
+    private static final long RECURSION_ONE = 1L << RECURSION_SHIFT;
+    private static final long RECURSION_MASK = 7L << RECURSION_SHIFT;
+    private static final long INFLATED = 1L << 55;
+    private static final long INDEX_MASK = LOCK_MASK & ~INFLATED;
+    private static final int MAX_MONITORS = 1 << 23;
+    private static final VarHandle MARK_WORD = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer memory;
+    // 番号からモニタへの表。使用していない番号はnull
+    private volatile Monitor[] table = new Monitor[16];
+    private final LongAdder inflations = new LongAdder();
+    // ホストのオブジェクトのモニタと、回収されたオブジェクトのキー
+    private final ConcurrentMap<HostKey, Monitor> hostMonitors = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collectedHostObjects = new ReferenceQueue<>();
+
+    // 以下はこのオブジェクトのロックの中で読み書きする
+    private int[] freeIndexes = new int[16];
+    private int freeIndexCount;
+    private int nextIndex;
+    private int[] freeIds = new int[16];
+    private int freeIdCount;
+    private int nextId = 1;
+
+    Monitors(Heap heap) {
+        this.memory = heap.memory;
+    }
+
+    /**
+     * 所有者のロックの番号を割り当てます。解放された番号があれば再利用します。
+     * @throws OutOfMemoryError 番号が上限に達した場合
+     */
+    synchronized int acquireId() {
+        if (freeIdCount > 0) {
+            return freeIds[--freeIdCount];
+        }
+        if (nextId > MAX_ID) {
+            throw new OutOfMemoryError("ロックの所有者の番号が上限に達しました");
+        }
+        return nextId++;
+    }
+
+    /**
+     * 所有者のロックの番号を解放します。番号を持つスレッドがロックを保持していない状態で呼び出してください。
+     */
+    synchronized void releaseId(int id) {
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = id;
+    }
+
+    /**
+     * monitorenterを実行します。別のスレッドが保持している場合は、セーフ領域に入って解放を待ちます。
+     * @param thread 実行中のインタプリタ
+     * @param reference スロットの参照の値
+     * @param slot スロットの値（ヒープのオブジェクトの場合はアドレス）
+     * @throws NullPointerException 参照がnullの場合
+     */
+    void enter(Interpreter thread, Object reference, long slot) {
+        int id = thread.lockId();
+        if (reference != Heap.REFERENCE) {
+            enter(thread, id, hostMonitor(reference), -1);
+            return;
+        }
+        int object = (int) slot;
+        long thin = (long) id << LOCK_SHIFT;
+        while (true) {
+            long mark = (long) MARK_WORD.getVolatile(memory, object);
+            long lock = mark & LOCK_MASK;
+            if (lock == 0) {
+                if (MARK_WORD.compareAndSet(memory, object, mark, mark | thin)) {
+                    return;
+                }
+            } else if ((lock & INFLATED) != 0) {
+                Monitor monitor = monitorAt(lock);
+                if (monitor != null && enter(thread, id, monitor, object)) {
+                    return;
+                }
+            } else if ((lock & OWNER_MASK) == thin && (lock & RECURSION_MASK) != RECURSION_MASK) {
+                if (MARK_WORD.compareAndSet(memory, object, mark, mark + RECURSION_ONE)) {
+                    return;
+                }
+            } else {
+                // 別のスレッドが保持しているか、再入の回数が上限に達した
+                inflate(object, mark);
+            }
+        }
+    }
+
+    /**
+     * 膨張したロックを取得します。
+     * @param object マークワードを確かめるオブジェクトのアドレス。クラスのモニタの場合は-1
+     * @return 取得した場合true。確かめる前に収縮していた場合false
+     */
+    private boolean enter(Interpreter thread, int id, Monitor monitor, int object) {
+        monitor.lock.lock();
+        try {
+            if (object >= 0 && !isCurrent(monitor, object)) {
+                return false;
+            }
+            if (monitor.owner == 0) {
+                monitor.owner = id;
+                return true;
+            }
+            if (monitor.owner == id) {
+                monitor.recursions++;
+                return true;
+            }
+            // 待っている間は収縮しない
+            monitor.entrants++;
+        } finally {
+            monitor.lock.unlock();
+        }
+
+        boolean interrupted;
+        thread.enterSafeRegion();
+        try {
+            monitor.lock.lock();
+            try {
+                interrupted = monitor.awaitRelease();
+                monitor.owner = id;
+                monitor.entrants--;
+            } finally {
+                monitor.lock.unlock();
+            }
+        } finally {
+            thread.leaveSafeRegion();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * monitorexitを実行します。
+     * @throws NullPointerException 参照がnullの場合
+     * @throws IllegalMonitorStateException このスレッドがロックを保持していない場合
+     */
+    void exit(Interpreter thread, Object reference, long slot) {
+        int id = thread.lockId();
+        if (reference != Heap.REFERENCE) {
+            exit(id, hostMonitor(reference), -1);
+            return;
+        }
+        int object = (int) slot;
+        long thin = (long) id << LOCK_SHIFT;
+        while (true) {
+            long mark = (long) MARK_WORD.getVolatile(memory, object);
+            long lock = mark & LOCK_MASK;
+            if ((lock & INFLATED) != 0) {
+                Monitor monitor = monitorAt(lock);
+                if (monitor != null && exit(id, monitor, object)) {
+                    return;
+                }
+            } else if ((lock & OWNER_MASK) != thin) {
+                throw notOwner();
+            } else if (MARK_WORD.compareAndSet(memory, object, mark,
+                    (lock & RECURSION_MASK) != 0 ? mark - RECURSION_ONE : mark & ~LOCK_MASK)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 膨張したロックを解放します。待っているスレッドがいなければ収縮します。
+     * @return 解放した場合true。確かめる前に収縮していた場合false
+     */
+    private boolean exit(int id, Monitor monitor, int object) {
+        monitor.lock.lock();
+        try {
+            if (object >= 0 && !isCurrent(monitor, object)) {
+                return false;
+            }
+            if (monitor.owner != id) {
+                throw notOwner();
+            }
+            if (monitor.recursions > 0) {
+                monitor.recursions--;
+                return true;
+            }
+            monitor.owner = 0;
+            if (monitor.entrants > 0 || !monitor.waiters.isEmpty()) {
+                monitor.changed.signalAll();
+            } else if (object >= 0) {
+                long mark = (long) MARK_WORD.getVolatile(memory, object);
+                MARK_WORD.setVolatile(memory, object, mark & ~LOCK_MASK);
+                free(monitor);
+            }
+            return true;
+        } finally {
+            monitor.lock.unlock();
+        }
+    }
+
+    /**
+     * Object.waitを実行します。ロックを解放してnotifyか時間の経過を待ち、再びロックを取得してから戻ります。
+     * 待っている間はセーフ領域に入ります。
+     * @param millis 待機するミリ秒。0の場合は時間の制限なし
+     * @throws IllegalArgumentException 待機時間が負の場合
+     * @throws IllegalMonitorStateException このスレッドがロックを保持していない場合
+     */
+    void await(Interpreter thread, Object reference, long slot, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("待機時間が負です: " + millis);
+        }
+        int id = thread.lockId();
+        Monitor monitor = lockOwned(id, reference, slot);
+        Monitor.Waiter waiter = new Monitor.Waiter();
+        int recursions;
+        try {
+            recursions = monitor.recursions;
+            monitor.owner = 0;
+            monitor.recursions = 0;
+            monitor.waiters.add(waiter);
+            monitor.changed.signalAll();
+        } finally {
+            monitor.lock.unlock();
+        }
+
+        boolean interrupted;
+        thread.enterSafeRegion();
+        try {
+            monitor.lock.lock();
+            try {
+                interrupted = monitor.awaitNotification(waiter, millis);
+                monitor.waiters.remove(waiter);
+                monitor.entrants++;
+                interrupted |= monitor.awaitRelease();
+                monitor.entrants--;
+                monitor.owner = id;
+                monitor.recursions = recursions;
+            } finally {
+                monitor.lock.unlock();
+            }
+        } finally {
+            thread.leaveSafeRegion();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Object.notify/notifyAllを実行します。
+     * @param all すべての待機中のスレッドに通知する場合true
+     * @throws IllegalMonitorStateException このスレッドがロックを保持していない場合
+     */
+    void notify(Interpreter thread, Object reference, long slot, boolean all) {
+        int id = thread.lockId();
+        if (reference == Heap.REFERENCE) {
+            long lock = (long) MARK_WORD.getVolatile(memory, (int) slot) & LOCK_MASK;
+            if ((lock & INFLATED) == 0) {
+                // thin lockのままであれば、waitしているスレッドはいない
+                if ((lock & OWNER_MASK) != (long) id << LOCK_SHIFT) {
+                    throw notOwner();
+                }
+                return;
+            }
+        }
+        Monitor monitor = lockOwned(id, reference, slot);
+        try {
+            for (Monitor.Waiter waiter : monitor.waiters) {
+                if (!waiter.notified) {
+                    waiter.notified = true;
+                    if (!all) {
+                        break;
+                    }
+                }
+            }
+            monitor.changed.signalAll();
+        } finally {
+            monitor.lock.unlock();
+        }
+    }
+
+    /**
+     * このスレッドが保持しているロックを膨張させ、モニタのロックを取得して返します。
+     * @throws IllegalMonitorStateException このスレッドがロックを保持していない場合
+     */
+    private Monitor lockOwned(int id, Object reference, long slot) {
+        if (reference != Heap.REFERENCE) {
+            Monitor monitor = hostMonitor(reference);
+            monitor.lock.lock();
+            if (monitor.owner != id) {
+                monitor.lock.unlock();
+                throw notOwner();
+            }
+            return monitor;
+        }
+        int object = (int) slot;
+        while (true) {
+            long mark = (long) MARK_WORD.getVolatile(memory, object);
+            long lock = mark & LOCK_MASK;
+            if ((lock & INFLATED) != 0) {
+                Monitor monitor = monitorAt(lock);
+                if (monitor != null) {
+                    monitor.lock.lock();
+                    if (isCurrent(monitor, object)) {
+                        if (monitor.owner != id) {
+                            monitor.lock.unlock();
+                            throw notOwner();
+                        }
+                        return monitor;
+                    }
+                    monitor.lock.unlock();
+                }
+            } else if ((lock & OWNER_MASK) != (long) id << LOCK_SHIFT) {
+                throw notOwner();
+            } else {
+                inflate(object, mark);
+            }
+        }
+    }
+
+    /**
+     * thin lockをモニタに膨張させます。マークワードが読み取った時点から変わっていた場合は何もしません。
+     */
+    private void inflate(int object, long mark) {
+        long lock = mark & LOCK_MASK;
+        Monitor monitor = allocate();
+        monitor.owner = (int) ((lock & OWNER_MASK) >>> LOCK_SHIFT);
+        monitor.recursions = (int) ((lock & RECURSION_MASK) >>> RECURSION_SHIFT);
+        if (MARK_WORD.compareAndSet(memory, object, mark, (mark & ~LOCK_MASK) | INFLATED | (long) monitor.index << LOCK_SHIFT)) {
+            inflations.increment();
+        } else {
+            free(monitor);
+        }
+    }
+
+    /**
+     * オブジェクトのマークワードがモニタを指しているかを返します。番号が再利用された後の古いモニタはfalseです。
+     */
+    private boolean isCurrent(Monitor monitor, int object) {
+        long lock = (long) MARK_WORD.getVolatile(memory, object) & LOCK_MASK;
+        return lock == (INFLATED | (long) monitor.index << LOCK_SHIFT) && table[monitor.index] == monitor;
+    }
+
+    /**
+     * マークワードのロックのビットが指すモニタを返します。収縮して番号が解放されていた場合はnullです。
+     */
+    private Monitor monitorAt(long lock) {
+        int index = (int) ((lock & INDEX_MASK) >>> LOCK_SHIFT);
+        Monitor[] current = table;
+        return index < current.length ? current[index] : null;
+    }
+
+    private synchronized Monitor allocate() {
+        int index;
+        if (freeIndexCount > 0) {
+            index = freeIndexes[--freeIndexCount];
+        } else if (nextIndex < MAX_MONITORS) {
+            index = nextIndex++;
+        } else {
+            throw new OutOfMemoryError("モニタの数が上限に達しました");
+        }
+        Monitor[] current = table;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        Monitor monitor = new Monitor(index);
+        current[index] = monitor;
+        table = current;
+        return monitor;
+    }
+
+    private synchronized void free(Monitor monitor) {
+        table[monitor.index] = null;
+        if (freeIndexCount == freeIndexes.length) {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeIndexCount * 2);
+        }
+        freeIndexes[freeIndexCount++] = monitor.index;
+    }
+
+    /**
+     * ホストのオブジェクトのモニタを返します。初めてロックするオブジェクトの場合はモニタを割り当てます。
+     * @throws NullPointerException 参照がnullの場合
+     */
+    private Monitor hostMonitor(Object reference) {
+        if (reference instanceof RuntimeClass) {
+            return ((RuntimeClass) reference).monitor;
+        }
+        if (reference == null) {
+            throw new NullPointerException("nullのロックを操作しました");
+        }
+        Monitor monitor = hostMonitors.get(new HostKey(reference, null));
+        if (monitor != null) {
+            return monitor;
+        }
+        expungeHostMonitors();
+        return hostMonitors.computeIfAbsent(new HostKey(reference, collectedHostObjects), key -> new Monitor(-1));
+    }
+
+    /**
+     * ホストのGCが回収したオブジェクトのモニタを取り除きます。
+     */
+    private void expungeHostMonitors() {
+        Reference<?> collected;
+        while ((collected = collectedHostObjects.poll()) != null) {
+            hostMonitors.remove(collected);
+        }
+    }
+
+    private static IllegalMonitorStateException notOwner() {
+        return new IllegalMonitorStateException("ロックを保持していません");
+    }
+
+    /**
+     * 膨張したロックの数を返します。
+     * @return 現在モニタに膨張しているロックの数
+     */
+    synchronized int getInflatedCount() {
+        return nextIndex - freeIndexCount;
+    }
+
+    /**
+     * これまでにロックを膨張させた回数を返します。
+     * @return 膨張の回数
+     */
+    long getInflations() {
+        return inflations.sum();
+    }
+
+    /**
+     * モニタを割り当てたホストのオブジェクトの数を返します。回収されたオブジェクトのモニタは数えません。
+     * @return ホストのオブジェクトのモニタの数
+     */
+    int getHostMonitorCount() {
+        expungeHostMonitors();
+        return hostMonitors.size();
+    }
+
+    /**
+     * ホストのオブジェクトの表のキー
+     *
+     * オブジェクトの同一性で比較します。回収されたオブジェクトのキーは、表から取り除くために自身とだけ等しくなります。
+     */
+    private static final class HostKey extends WeakReference<Object> {
+        private final int hash;
+
+        /**
+         * @param queue 回収を通知するキュー。表を検索するだけのキーではnull
+         */
+        HostKey(Object object, ReferenceQueue<Object> queue) {
+            super(object, queue);
+            this.hash = System.identityHashCode(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof HostKey)) {
+                return false;
+            }
+            Object object = get();
+            return object != null && object == ((HostKey) other).get();
+        }
+    }
+}
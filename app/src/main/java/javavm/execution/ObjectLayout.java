@@ -0,0 +1,157 @@
+package javavm.execution;
+
+import java.util.Arrays;
+
+/**
+ * オブジェクトのフィールドの配置
+ *
+ * フィールドは型の大きさの境界に置き、大きい順（long/double、int/float、short/char、byte/boolean）に並べた後に
+ * 参照型（圧縮した4バイト）を並べます。境界に合わせるためにできた隙間は、後から置くより小さいフィールドで埋めます。
+ * サブクラスのフィールドはスーパークラスの最後のフィールドの直後から配置し、スーパークラスの隙間も埋めます。
+ * オブジェクトの大きさは {@link Heap#OBJECT_ALIGNMENT} の倍数に切り上げます。
+ *
+ * <pre>
+ * class Point { int x; long weight; Point next; }
+ * | マークワード (8) | クラスID (4) | x (4) | weight (8) | next (4) | 詰め物 (4) |   = 32バイト
+ * </pre>
+ */
+final class ObjectLayout {
+    /** フィールドのないオブジェクト（ヘッダだけ）の配置 */
+    static final ObjectLayout EMPTY = new ObjectLayout(Heap.HEADER_SIZE, new int[0], new int[0], new int[0]);
+
+    // 配置する順に並べた大きさ。参照型は最後に置くため、同じ4バイトのint/floatとは別の順位にする
+    private static final int[] ORDER = {8, 4, 2, 1, 0};
+
+    private final int end;
+    private final int[] holes;
+    private final int[] offsets;
+    private final int[] referenceOffsets;
+
+    private ObjectLayout(int end, int[] holes, int[] offsets, int[] referenceOffsets) {
+        this.end = end;
+        this.holes = holes;
+        this.offsets = offsets;
+        this.referenceOffsets = referenceOffsets;
+    }
+
+    /**
+     * この配置の後ろにフィールドを追加した配置を返します。
+     * @param types 追加するフィールドの型（記述子の先頭の文字）
+     * @return 追加した配置。{@link #offsetOf(int)} の番号は {@code types} の添字です
+     */
+    ObjectLayout extend(char[] types) {
+        int top = end;
+        int[] free = holes;
+        int[] placed = new int[types.length];
+        int[] references = referenceOffsets;
+        for (int rank : ORDER) {
+            for (int i = 0; i < types.length; i++) {
+                boolean reference = isReference(types[i]);
+                if (reference ? rank != 0 : sizeOf(types[i]) != rank) {
+                    continue;
+                }
+                int size = sizeOf(types[i]);
+                int offset = -1;
+                // 隙間に入る場合は隙間に置く
+                for (int h = 0; h < free.length && offset < 0; h += 2) {
+                    int start = align(free[h], size);
+                    if (start + size <= free[h + 1]) {
+                        offset = start;
+                        free = split(free, h, start, start + size);
+                    }
+                }
+                if (offset < 0) {
+                    offset = align(top, size);
+                    if (offset > top) {
+                        free = addHole(free, top, offset);
+                    }
+                    top = offset + size;
+                }
+                placed[i] = offset;
+                if (reference) {
+                    references = Arrays.copyOf(references, references.length + 1);
+                    references[references.length - 1] = offset;
+                }
+            }
+        }
+        Arrays.sort(references);
+        return new ObjectLayout(top, free, placed, references);
+    }
+
+    /**
+     * {@link #extend(char[])} で追加したフィールドの、オブジェクトの先頭からのバイト数を返します。
+     */
+    int offsetOf(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * ヘッダと詰め物を含めたオブジェクトのバイト数を返します。
+     */
+    int instanceSize() {
+        return align(end, Heap.OBJECT_ALIGNMENT);
+    }
+
+    /**
+     * スーパークラスのものを含む、参照型のフィールドのオブジェクトの先頭からの位置を昇順で返します。
+     */
+    int[] referenceOffsets() {
+        return referenceOffsets;
+    }
+
+    /**
+     * フィールドの値がヒープで占めるバイト数を返します。
+     * @param type 記述子の先頭の文字
+     */
+    static int sizeOf(char type) {
+        switch (type) {
+            case 'J':
+            case 'D':
+                return 8;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'S':
+            case 'C':
+                return 2;
+            case 'B':
+            case 'Z':
+                return 1;
+            default:
+                return Heap.REFERENCE_SIZE;
+        }
+    }
+
+    private static boolean isReference(char type) {
+        return type == 'L' || type == '[';
+    }
+
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    private static int[] addHole(int[] holes, int start, int end) {
+        int[] added = Arrays.copyOf(holes, holes.length + 2);
+        added[holes.length] = start;
+        added[holes.length + 1] = end;
+        return added;
+    }
+
+    /**
+     * 隙間の一部 [start, end) を使用し、残りを隙間として返します。
+     */
+    private static int[] split(int[] holes, int index, int start, int end) {
+        int holeStart = holes[index];
+        int holeEnd = holes[index + 1];
+        int[] rest = new int[holes.length - 2];
+        System.arraycopy(holes, 0, rest, 0, index);
+        System.arraycopy(holes, index + 2, rest, index, holes.length - index - 2);
+        if (start > holeStart) {
+            rest = addHole(rest, holeStart, start);
+        }
+        if (end < holeEnd) {
+            rest = addHole(rest, end, holeEnd);
+        }
+        return rest;
+    }
+}
@@ -0,0 +1,41 @@
+package javavm.execution;
+
+/**
+ * getstatic/putstatic/newのクイック命令が命令列の定数として参照する解決結果
+ *
+ * 命令を書き換える前に命令列の定数に設定し、インタプリタはロックなしで読み取ります。フィールドはすべてfinalのため、
+ * このオブジェクトを読んだスレッドは、書き換えたスレッドから見えていたクラスの内容（インスタンスのサイズや
+ * 初期化済みのstaticフィールドの配列）を読みます。書き換え前の値（未解決のnullや解決したフィールド）が見えた場合は、
+ * 命令列のロックの中で読み直します（{@link DecodedCode#quickConstant(int)} を参照）。
+ */
+final class QuickConstant {
+    /** インスタンスを割り当てるクラス、またはstaticフィールドを宣言したクラス */
+    final RuntimeClass type;
+    /** staticフィールドの配列（基本型は {@code staticValues}、参照型は {@code staticRefs}）。newの場合はnull */
+    final long[] statics;
+    /** staticフィールドの配列の添字 */
+    final int slot;
+
+    private QuickConstant(RuntimeClass type, long[] statics, int slot) {
+        this.type = type;
+        this.statics = statics;
+        this.slot = slot;
+    }
+
+    /**
+     * newのクイック命令の解決結果を作ります。
+     * @param type 初期化済みのクラス
+     */
+    static QuickConstant forClass(RuntimeClass type) {
+        return new QuickConstant(type, null, 0);
+    }
+
+    /**
+     * getstatic/putstaticのクイック命令の解決結果を作ります。
+     * @param field 宣言したクラスが初期化済みのstaticフィールド
+     */
+    static QuickConstant forStatic(RuntimeField field) {
+        RuntimeClass owner = field.getOwner();
+        return new QuickConstant(owner, field.isReference() ? owner.staticRefs : owner.staticValues, field.getSlot());
+    }
+}
@@ -0,0 +1,534 @@
+package javavm.execution;
+
+import java.util.Arrays;
+
+import javavm.classfile.ConstantPool;
+import javavm.classfile.MethodDescriptor;
+
+/**
+ * 命令位置ごとの、フレームのどのスロットが参照を保持しているかの表（参照マップ）
+ *
+ * GCはスタックのスロットのうち、この表で参照とされたスロットだけをルートとして扱います。
+ * 基本型のスロットはint（float、byteなどを含む）とlong（doubleを含む。2スロットの先頭に値を置く）を区別して記録し、
+ * {@link MethodCompiler} がスロットをホストのローカル変数に割り当てるときに使用します。
+ * インタプリタは基本型の値を書き込むときに参照の配列を消去しないため、参照の配列に {@link Heap#REFERENCE} が
+ * 残っていても、そのスロットが今もオブジェクトを指しているとは限りません。
+ *
+ * <p>表は事前デコードした命令列をデータフロー解析して作ります。各命令の実行前の状態として、ローカル変数と
+ * オペランドスタックのスロットごとに参照かどうかを求め、合流点ではすべての経路で参照の場合だけ参照とします
+ * （経路によって型が異なるスロットは、検証済みのバイトコードでは合流後に読まれないため、種類を不明とします）。
+ * クイック命令への書き換えはスタックへの作用を変えないため、書き換えの前後で同じ表を使用できます。</p>
+ */
+final class ReferenceMap {
+    /** 未初期化、または経路によって種類が異なるスロット */
+    static final byte UNKNOWN = 0;
+    /** 参照 */
+    static final byte REFERENCE = 1;
+    /** int、float、およびintに拡張して置く型 */
+    static final byte INT = 2;
+    /** long、doubleの値を置く先頭のスロット */
+    static final byte LONG = 3;
+    /** long、doubleの2番目のスロット */
+    static final byte LONG_HIGH = 4;
+
+    private final DecodedCode code;
+    private final ConstantPool constantPool;
+    // 命令位置ごとの実行前の状態（ローカル変数の後にオペランドスタックを並べる）。到達しない位置はnull
+    private final byte[][] frames;
+    private final int[] worklist;
+    private final boolean[] queued;
+    private int pending;
+
+    private ReferenceMap(DecodedCode code) {
+        this.code = code;
+        this.constantPool = code.method.getOwner().getClassFile().getConstantPool();
+        this.frames = new byte[code.instructions.length][];
+        this.worklist = new int[code.instructions.length];
+        this.queued = new boolean[code.instructions.length];
+    }
+
+    /**
+     * 命令列の参照マップを作ります。
+     * @param code 命令列
+     * @return 参照マップ
+     * @throws VerifyError 合流点でスタックの深さが一致しない場合
+     */
+    static ReferenceMap compute(DecodedCode code) {
+        ReferenceMap map = new ReferenceMap(code);
+        map.analyze();
+        return map;
+    }
+
+    /**
+     * 命令の実行前のフレームのスロット数（ローカル変数とオペランドスタックの合計）を返します。
+     * @param pc 命令位置
+     * @return スロット数。到達しない命令の場合は-1
+     */
+    int frameSize(int pc) {
+        return frames[pc] == null ? -1 : frames[pc].length;
+    }
+
+    /**
+     * 命令の実行前に、フレームのスロットが参照を保持しているかを返します。
+     * @param pc 命令位置
+     * @param slot フレームのベースからのスロットの位置
+     * @return 参照の場合true
+     */
+    boolean isReference(int pc, int slot) {
+        return frames[pc][slot] == REFERENCE;
+    }
+
+    /**
+     * 命令の実行前のフレームのスロットの種類を返します。
+     * @param pc 命令位置
+     * @param slot フレームのベースからのスロットの位置
+     * @return {@link #UNKNOWN}、{@link #REFERENCE}、{@link #INT}、{@link #LONG}、{@link #LONG_HIGH} のいずれか
+     */
+    byte kind(int pc, int slot) {
+        return frames[pc][slot];
+    }
+
+    private void analyze() {
+        RuntimeMethod method = code.method;
+        byte[] entry = new byte[code.maxLocals];
+        int local = 0;
+        if (!method.isStatic()) {
+            entry[local++] = REFERENCE;
+        }
+        MethodDescriptor descriptor = method.getDescriptor();
+        for (int i = 0; i < descriptor.getParameterCount(); i++) {
+            char type = descriptor.getParameterType(i);
+            local = push(entry, local, kind(type), size(type));
+        }
+        merge(entry, entry.length, 0);
+
+        byte[] frame = new byte[code.maxLocals + code.maxStack];
+        while (pending > 0) {
+            int pc = worklist[--pending];
+            queued[pc] = false;
+            byte[] state = frames[pc];
+            System.arraycopy(state, 0, frame, 0, state.length);
+            mergeHandlers(frame, pc);
+            step(frame, state.length, pc);
+        }
+    }
+
+    /**
+     * 命令位置を範囲に含む例外ハンドラへ、ローカル変数と例外の参照だけを積んだ状態を合流させます。
+     */
+    private void mergeHandlers(byte[] frame, int pc) {
+        int[] handlers = code.handlers;
+        for (int i = 0; i < handlers.length; i += 3) {
+            if (pc >= handlers[i] && pc < handlers[i + 1]) {
+                byte[] state = Arrays.copyOf(frame, code.maxLocals + 1);
+                state[code.maxLocals] = REFERENCE;
+                merge(state, state.length, handlers[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * 1命令を実行した後の状態を後続の命令に合流させます。
+     * @param frame 実行前の状態（この配列を書き換える）
+     * @param sp 実行前のスロット数
+     * @param pc 命令位置
+     */
+    private void step(byte[] frame, int sp, int pc) {
+        int[] instructions = code.instructions;
+        // スーパー命令の後続の命令は元のまま残っている
+        int opcode = DecodedOpcode.unfused(instructions[pc]);
+        switch (opcode) {
+            case DecodedOpcode.ICONST:
+                frame[sp++] = INT;
+                merge(frame, sp, pc + 2);
+                return;
+            case DecodedOpcode.LCONST:
+                sp = push(frame, sp, LONG, 2);
+                merge(frame, sp, pc + 3);
+                return;
+            case DecodedOpcode.ACONST:
+                frame[sp++] = REFERENCE;
+                merge(frame, sp, pc + 2);
+                return;
+            case Opcode.ACONST_NULL:
+                frame[sp++] = REFERENCE;
+                merge(frame, sp, pc + 1);
+                return;
+            case Opcode.ILOAD:
+                frame[sp++] = INT;
+                merge(frame, sp, pc + 2);
+                return;
+            case Opcode.LLOAD:
+                sp = push(frame, sp, LONG, 2);
+                merge(frame, sp, pc + 2);
+                return;
+            case Opcode.ALOAD:
+                frame[sp++] = frame[instructions[pc + 1]];
+                merge(frame, sp, pc + 2);
+                return;
+            case Opcode.ISTORE:
+                frame[instructions[pc + 1]] = INT;
+                merge(frame, sp - 1, pc + 2);
+                return;
+            case Opcode.LSTORE:
+                frame[instructions[pc + 1]] = LONG;
+                frame[instructions[pc + 1] + 1] = LONG_HIGH;
+                merge(frame, sp - 2, pc + 2);
+                return;
+            case Opcode.ASTORE:
+                frame[instructions[pc + 1]] = frame[sp - 1];
+                merge(frame, sp - 1, pc + 2);
+                return;
+            case Opcode.IINC:
+                merge(frame, sp, pc + 3);
+                return;
+
+            case Opcode.IALOAD:
+            case Opcode.FALOAD:
+            case Opcode.BALOAD:
+            case Opcode.CALOAD:
+            case Opcode.SALOAD:
+                merge(frame, push(frame, sp - 2, INT, 1), pc + 1);
+                return;
+            case Opcode.LALOAD:
+            case Opcode.DALOAD:
+                merge(frame, push(frame, sp - 2, LONG, 2), pc + 1);
+                return;
+            case Opcode.AALOAD:
+                merge(frame, push(frame, sp - 2, REFERENCE, 1), pc + 1);
+                return;
+            case Opcode.IASTORE:
+            case Opcode.FASTORE:
+            case Opcode.AASTORE:
+            case Opcode.BASTORE:
+            case Opcode.CASTORE:
+            case Opcode.SASTORE:
+                merge(frame, sp - 3, pc + 1);
+                return;
+            case Opcode.LASTORE:
+            case Opcode.DASTORE:
+                merge(frame, sp - 4, pc + 1);
+                return;
+
+            case Opcode.POP:
+            case Opcode.MONITORENTER:
+            case Opcode.MONITOREXIT:
+                merge(frame, sp - 1, pc + 1);
+                return;
+            case Opcode.POP2:
+                merge(frame, sp - 2, pc + 1);
+                return;
+            case Opcode.DUP:
+                frame[sp] = frame[sp - 1];
+                merge(frame, sp + 1, pc + 1);
+                return;
+            case Opcode.DUP_X1:
+                duplicate(frame, sp, 1, 1);
+                merge(frame, sp + 1, pc + 1);
+                return;
+            case Opcode.DUP_X2:
+                duplicate(frame, sp, 1, 2);
+                merge(frame, sp + 1, pc + 1);
+                return;
+            case Opcode.DUP2:
+                frame[sp] = frame[sp - 2];
+                frame[sp + 1] = frame[sp - 1];
+                merge(frame, sp + 2, pc + 1);
+                return;
+            case Opcode.DUP2_X1:
+                duplicate(frame, sp, 2, 1);
+                merge(frame, sp + 2, pc + 1);
+                return;
+            case Opcode.DUP2_X2:
+                duplicate(frame, sp, 2, 2);
+                merge(frame, sp + 2, pc + 1);
+                return;
+            case Opcode.SWAP:
+                duplicate(frame, sp, 1, 1);
+                merge(frame, sp, pc + 1);
+                return;
+
+            case Opcode.IFEQ:
+            case Opcode.IFNE:
+            case Opcode.IFLT:
+            case Opcode.IFGE:
+            case Opcode.IFGT:
+            case Opcode.IFLE:
+            case Opcode.IFNULL:
+            case Opcode.IFNONNULL:
+                merge(frame, sp - 1, instructions[pc + 1]);
+                merge(frame, sp - 1, pc + 2);
+                return;
+            case Opcode.IF_ICMPEQ:
+            case Opcode.IF_ICMPNE:
+            case Opcode.IF_ICMPLT:
+            case Opcode.IF_ICMPGE:
+            case Opcode.IF_ICMPGT:
+            case Opcode.IF_ICMPLE:
+            case Opcode.IF_ACMPEQ:
+            case Opcode.IF_ACMPNE:
+                merge(frame, sp - 2, instructions[pc + 1]);
+                merge(frame, sp - 2, pc + 2);
+                return;
+            case Opcode.GOTO:
+                merge(frame, sp, instructions[pc + 1]);
+                return;
+            case Opcode.TABLESWITCH: {
+                int count = instructions[pc + 2] - instructions[pc + 1] + 1;
+                for (int i = 0; i <= count; i++) {
+                    merge(frame, sp - 1, instructions[pc + 3 + i]);
+                }
+                return;
+            }
+            case Opcode.LOOKUPSWITCH: {
+                int pairs = instructions[pc + 1];
+                merge(frame, sp - 1, instructions[pc + 2]);
+                for (int i = 0; i < pairs; i++) {
+                    merge(frame, sp - 1, instructions[pc + 4 + i * 2]);
+                }
+                return;
+            }
+
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKEINTERFACE: {
+                int index = instructions[pc + 2];
+                MethodDescriptor descriptor = MethodDescriptor.parse(
+                        constantPool.utf8(constantPool.descriptorIndex(constantPool.nameAndTypeOf(index))));
+                sp -= descriptor.getParameterSlots() + (opcode == Opcode.INVOKESTATIC ? 0 : 1);
+                char type = descriptor.getReturnType();
+                if (type != 'V') {
+                    sp = push(frame, sp, kind(type), size(type));
+                }
+                merge(frame, sp, pc + 3);
+                return;
+            }
+            case DecodedOpcode.INVOKE_INTRINSIC: {
+                // 組み込みメソッドは命令列のメソッドの戻り値を積む
+                char type = code.method.getDescriptor().getReturnType();
+                if (type != 'V') {
+                    sp = push(frame, sp, kind(type), size(type));
+                }
+                merge(frame, sp, pc + 2);
+                return;
+            }
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC: {
+                char type = constantPool.utf8(constantPool.descriptorIndex(
+                        constantPool.nameAndTypeOf(instructions[pc + 2]))).charAt(0);
+                int size = size(type);
+                if (opcode == Opcode.GETFIELD || opcode == Opcode.PUTFIELD) {
+                    // オブジェクトの参照を取り除く
+                    sp--;
+                }
+                if (opcode == Opcode.GETFIELD || opcode == Opcode.GETSTATIC) {
+                    sp = push(frame, sp, kind(type), size);
+                } else {
+                    sp -= size;
+                }
+                merge(frame, sp, pc + 3);
+                return;
+            }
+            case DecodedOpcode.IGETFIELD_QUICK:
+            case DecodedOpcode.BGETFIELD_QUICK:
+            case DecodedOpcode.CGETFIELD_QUICK:
+            case DecodedOpcode.SGETFIELD_QUICK:
+                merge(frame, push(frame, sp - 1, INT, 1), pc + 3);
+                return;
+            case DecodedOpcode.LGETFIELD_QUICK:
+                merge(frame, push(frame, sp - 1, LONG, 2), pc + 3);
+                return;
+            case DecodedOpcode.AGETFIELD_QUICK:
+                merge(frame, push(frame, sp - 1, REFERENCE, 1), pc + 3);
+                return;
+            case DecodedOpcode.IPUTFIELD_QUICK:
+            case DecodedOpcode.BPUTFIELD_QUICK:
+            case DecodedOpcode.SPUTFIELD_QUICK:
+            case DecodedOpcode.APUTFIELD_QUICK:
+                merge(frame, sp - 2, pc + 3);
+                return;
+            case DecodedOpcode.LPUTFIELD_QUICK:
+                merge(frame, sp - 3, pc + 3);
+                return;
+            case DecodedOpcode.IGETSTATIC_QUICK:
+                merge(frame, push(frame, sp, INT, 1), pc + 3);
+                return;
+            case DecodedOpcode.LGETSTATIC_QUICK:
+                merge(frame, push(frame, sp, LONG, 2), pc + 3);
+                return;
+            case DecodedOpcode.AGETSTATIC_QUICK:
+            case Opcode.NEW:
+            case DecodedOpcode.NEW_QUICK:
+                merge(frame, push(frame, sp, REFERENCE, 1), pc + 3);
+                return;
+            case DecodedOpcode.IPUTSTATIC_QUICK:
+            case DecodedOpcode.APUTSTATIC_QUICK:
+                merge(frame, sp - 1, pc + 3);
+                return;
+            case DecodedOpcode.LPUTSTATIC_QUICK:
+                merge(frame, sp - 2, pc + 3);
+                return;
+            case Opcode.NEWARRAY:
+            case Opcode.ANEWARRAY:
+                merge(frame, push(frame, sp - 1, REFERENCE, 1), pc + 2);
+                return;
+            case Opcode.ARRAYLENGTH:
+                merge(frame, push(frame, sp - 1, INT, 1), pc + 1);
+                return;
+            case Opcode.CHECKCAST:
+                merge(frame, sp, pc + 3);
+                return;
+            case Opcode.INSTANCEOF:
+                merge(frame, push(frame, sp - 1, INT, 1), pc + 3);
+                return;
+
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+            case Opcode.ATHROW:
+            case DecodedOpcode.UNSUPPORTED:
+                // 後続の命令はない（未対応の命令は実行すると例外になる）
+                return;
+            default:
+                if (opcode >= Opcode.IADD && opcode <= Opcode.DCMPG) {
+                    int popped = arithmeticOperands(opcode);
+                    int pushed = arithmeticResult(opcode);
+                    merge(frame, push(frame, sp - popped, pushed == 2 ? LONG : INT, pushed), pc + 1);
+                    return;
+                }
+                throw new InternalError("命令列が不正です: " + opcode + " (" + code + ")");
+        }
+    }
+
+    /**
+     * 算術、変換、比較命令が取り除くスロット数を返します。
+     */
+    private static int arithmeticOperands(int opcode) {
+        if (opcode <= Opcode.DREM) {
+            // iadd〜drem: int, long, float, doubleの順に並ぶ2項演算
+            return (opcode - Opcode.IADD) % 2 == 0 ? 2 : 4;
+        }
+        if (opcode <= Opcode.DNEG) {
+            return (opcode - Opcode.INEG) % 2 == 0 ? 1 : 2;
+        }
+        if (opcode <= Opcode.LXOR) {
+            boolean wide = (opcode - Opcode.ISHL) % 2 != 0;
+            if (opcode <= Opcode.LUSHR) {
+                // シフト量は常にint
+                return wide ? 3 : 2;
+            }
+            return wide ? 4 : 2;
+        }
+        switch (opcode) {
+            case Opcode.L2I:
+            case Opcode.L2F:
+            case Opcode.L2D:
+            case Opcode.D2I:
+            case Opcode.D2L:
+            case Opcode.D2F:
+                return 2;
+            case Opcode.LCMP:
+            case Opcode.DCMPL:
+            case Opcode.DCMPG:
+                return 4;
+            case Opcode.FCMPL:
+            case Opcode.FCMPG:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * 算術、変換、比較命令が積むスロット数を返します。
+     */
+    private static int arithmeticResult(int opcode) {
+        if (opcode <= Opcode.DNEG) {
+            return (opcode - Opcode.IADD) % 2 == 0 ? 1 : 2;
+        }
+        if (opcode <= Opcode.LXOR) {
+            return (opcode - Opcode.ISHL) % 2 == 0 ? 1 : 2;
+        }
+        switch (opcode) {
+            case Opcode.I2L:
+            case Opcode.I2D:
+            case Opcode.L2D:
+            case Opcode.F2L:
+            case Opcode.F2D:
+            case Opcode.D2L:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int size(char type) {
+        return type == 'J' || type == 'D' ? 2 : 1;
+    }
+
+    /**
+     * 記述子の型の値を置く先頭のスロットの種類を返します。
+     */
+    private static byte kind(char type) {
+        if (MethodDescriptor.isReference(type)) {
+            return REFERENCE;
+        }
+        return type == 'J' || type == 'D' ? LONG : INT;
+    }
+
+    /**
+     * 種類のスロットを積みます。{@link #LONG} の場合は2番目のスロットを {@link #LONG_HIGH} にします。
+     */
+    private static int push(byte[] frame, int sp, byte kind, int count) {
+        frame[sp++] = kind;
+        if (count == 2) {
+            frame[sp++] = LONG_HIGH;
+        }
+        return sp;
+    }
+
+    /**
+     * インタプリタのdup_x系の命令と同じ並べ替えを行います。
+     */
+    private static void duplicate(byte[] frame, int sp, int count, int skip) {
+        System.arraycopy(frame, sp - count, frame, sp, count);
+        System.arraycopy(frame, sp - count - skip, frame, sp - skip, skip + count);
+        System.arraycopy(frame, sp, frame, sp - count - skip, count);
+    }
+
+    /**
+     * 命令位置の実行前の状態に合流させ、変化した場合は再解析の対象にします。
+     */
+    private void merge(byte[] frame, int sp, int pc) {
+        byte[] state = frames[pc];
+        if (state == null) {
+            frames[pc] = Arrays.copyOf(frame, sp);
+            enqueue(pc);
+            return;
+        }
+        if (state.length != sp) {
+            throw new VerifyError("合流点でスタックの深さが一致しません: 命令位置 " + pc + " (" + code + ")");
+        }
+        boolean changed = false;
+        for (int i = 0; i < sp; i++) {
+            if (state[i] != frame[i] && state[i] != UNKNOWN) {
+                state[i] = UNKNOWN;
+                changed = true;
+            }
+        }
+        if (changed) {
+            enqueue(pc);
+        }
+    }
+
+    private void enqueue(int pc) {
+        if (!queued[pc]) {
+            queued[pc] = true;
+            worklist[pending++] = pc;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package javavm.execution;
+
+import javavm.classfile.AccessFlags;
+import javavm.classfile.ClassFile;
+import javavm.classfile.ConstantInfo;
+import javavm.classfile.ConstantPool;
+import javavm.classfile.FieldInfo;
+import javavm.classfile.MethodInfo;
+import javavm.classfile.Symbol;
+import javavm.verifier.Verification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * メソッド領域に読み込まれた実行時のクラス
+ *
+ * フィールドの配置はリンク時（最初にフィールドやオブジェクトが必要になった時点）に決め、
+ * オブジェクトはヒープ（{@link Heap}）上に、staticフィールドの値はクラスが保持する配列に格納します。
+ * 同じくリンク時に、仮想呼び出しの呼び出し先を並べたvtableと、実装するインターフェースごとのitableを作ります。
+ * クラスの初期化（{@code <clinit>} の実行）はJVM仕様と同じく、スレッドごとに1回だけ、
+ * スーパークラスの初期化の後に行います。
+ *
+ * <p>スーパークラスとスーパーインターフェースは読み込み時（{@link MethodArea#lookup(String)}）に解決済みです。
+ * リンクと初期化はクラスごとのロックで排他します。ゲストのスレッドは仮想スレッドで動くため、
+ * 初期化の完了を待つ間にキャリアスレッドを固定しないよう、ホストのsynchronizedではなく {@link ReentrantLock} を使用します。
+ * リンクと初期化の結果は、volatileの状態を書き込む前に設定するため、状態を確かめたスレッドからはロックなしで読めます。</p>
+ */
+public final class RuntimeClass {
+    // 初期化の状態
+    private static final int UNINITIALIZED = 0;
+    private static final int INITIALIZING = 1;
+    private static final int INITIALIZED = 2;
+    private static final int ERRONEOUS = 3;
+
+    private final MethodArea methodArea;
+    private final ClassFile classFile;
+    private final RuntimeClass superclass;
+    private final RuntimeClass[] interfaces;
+    private final RuntimeMethod[] methods;
+
+    // リンク時に設定する
+    private RuntimeField[] fields;
+    private int primitiveFieldCount;
+    private int referenceFieldCount;
+    // インスタンスフィールドの配置と、オブジェクトのバイト数とヒープでのクラスID
+    ObjectLayout layout;
+    int instanceSize;
+    int heapId;
+    // 参照型のインスタンスフィールドのオブジェクトの先頭からの位置（スーパークラスのフィールドを含む）
+    int[] referenceOffsets;
+    long[] staticValues;
+    // 参照型のstaticフィールド（圧縮しない形式。0はnull、正の値はアドレス、負の値はホストのオブジェクト）
+    long[] staticRefs;
+    // 仮想呼び出しの呼び出し先。スーパークラスのvtableの後ろに自身が追加したメソッドを並べる
+    RuntimeMethod[] vtable;
+    // 実装するすべてのインターフェースと、それぞれのitable（インターフェースのメソッドの添字ごとの呼び出し先）
+    private RuntimeClass[] itableInterfaces;
+    private RuntimeMethod[][] itables;
+    // インターフェースの場合、itableの添字の順に並べたメソッド
+    private RuntimeMethod[] interfaceMethods;
+    // 読み込み時の検証結果（検証しなかった場合はnull）。リンク時に制約を照合した後は破棄する
+    private Verification verification;
+    private volatile boolean linked;
+
+    private volatile int state = UNINITIALIZED;
+    // リンクと初期化の状態の変更を排他するロックと、初期化の完了を通知する条件
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition initialized = lock.newCondition();
+    // 初期化を実行中のスレッド
+    private Thread initializer;
+    // staticのsynchronizedメソッドがロックするモニタ
+    final Monitor monitor = new Monitor(-1);
+
+    RuntimeClass(MethodArea methodArea, ClassFile classFile, RuntimeClass superclass, RuntimeClass[] interfaces,
+            Verification verification) {
+        this.methodArea = methodArea;
+        this.classFile = classFile;
+        this.superclass = superclass;
+        this.interfaces = interfaces;
+        this.verification = verification;
+        MethodInfo[] infos = classFile.getMethods();
+        this.methods = new RuntimeMethod[infos.length];
+        for (int i = 0; i < infos.length; i++) {
+            methods[i] = new RuntimeMethod(this, infos[i]);
+        }
+    }
+
+    /**
+     * クラス名を取得します。
+     * @return 内部形式のクラス名のシンボル
+     */
+    public Symbol getName() {
+        return classFile.getName();
+    }
+
+    /**
+     * 読み込んだクラスファイルを取得します。
+     * @return クラスファイル
+     */
+    public ClassFile getClassFile() {
+        return classFile;
+    }
+
+    /**
+     * このクラスを読み込んだメソッド領域を取得します。
+     */
+    MethodArea getMethodArea() {
+        return methodArea;
+    }
+
+    /**
+     * インターフェースかどうかを返します。
+     * @return ACC_INTERFACEが設定されている場合true
+     */
+    public boolean isInterface() {
+        return (classFile.getAccessFlags() & AccessFlags.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * スーパークラスを取得します。
+     * @return スーパークラス。java/lang/Objectの場合はnull
+     */
+    public RuntimeClass getSuperclass() {
+        return superclass;
+    }
+
+    /**
+     * 直接実装するインターフェースを取得します。
+     * @return インターフェースの配列（コピー）
+     */
+    public RuntimeClass[] getInterfaces() {
+        return interfaces.clone();
+    }
+
+    /**
+     * このクラスのオブジェクトを、指定したクラスまたはインターフェースの型として扱えるかどうかを返します
+     * （checkcast/instanceof）。
+     * @param type クラスまたはインターフェース
+     * @return このクラス自身、スーパークラス、または実装するインターフェース（スーパーインターフェースを含む）の場合true
+     */
+    boolean isSubtypeOf(RuntimeClass type) {
+        boolean isInterface = type.isInterface();
+        for (RuntimeClass c = this; c != null; c = c.superclass) {
+            if (c == type) {
+                return true;
+            }
+            if (isInterface) {
+                for (RuntimeClass superinterface : c.interfaces) {
+                    if (superinterface.isSubtypeOf(type)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * このクラスで宣言されたメソッドから、名前と記述子が一致するものを探します。
+     * @param name メソッド名
+     * @param descriptor メソッド記述子
+     * @return 見つかったメソッド。存在しない場合はnull
+     */
+    public RuntimeMethod findDeclaredMethod(String name, String descriptor) {
+        for (RuntimeMethod method : methods) {
+            MethodInfo info = method.getMethodInfo();
+            if (info.getName().toString().equals(name) && info.getDescriptor().toString().equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * invokevirtual/invokeinterfaceで、このクラスのオブジェクトに対して呼び出すメソッドを選択します。
+     * privateメソッドはそのまま呼び出し、クラスのメソッドはvtable、インターフェースのメソッドはitableから選択します。
+     * @param resolved 呼び出し箇所で解決したメソッド
+     * @return 呼び出すメソッド
+     * @throws AbstractMethodError 呼び出すメソッドが抽象メソッドの場合
+     * @throws IncompatibleClassChangeError このクラスがインターフェースを実装していない場合
+     */
+    RuntimeMethod selectMethod(RuntimeMethod resolved) {
+        if (!resolved.isVirtual()) {
+            return resolved;
+        }
+        link();
+        RuntimeMethod method;
+        if (resolved.itableIndex >= 0) {
+            method = itable(resolved.getOwner())[resolved.itableIndex];
+        } else {
+            method = vtable[resolved.vtableIndex];
+        }
+        if (method.isAbstract()) {
+            throw new AbstractMethodError(this + "." + method.getMethodInfo().getName() + method.getMethodInfo().getDescriptor());
+        }
+        return method;
+    }
+
+    private RuntimeMethod[] itable(RuntimeClass superinterface) {
+        RuntimeClass[] interfaces = itableInterfaces;
+        for (int i = 0; i < interfaces.length; i++) {
+            if (interfaces[i] == superinterface) {
+                return itables[i];
+            }
+        }
+        throw new IncompatibleClassChangeError(this + "は" + superinterface + "を実装していません");
+    }
+
+    /**
+     * このクラスで宣言されたフィールドから、名前と記述子が一致するものを探します。
+     * @param name フィールド名
+     * @param descriptor フィールド記述子
+     * @return 見つかったフィールド。存在しない場合はnull
+     */
+    public RuntimeField findDeclaredField(String name, String descriptor) {
+        link();
+        for (RuntimeField field : fields) {
+            FieldInfo info = field.getFieldInfo();
+            if (info.getName().toString().equals(name) && info.getDescriptor().toString().equals(descriptor)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * スーパークラスのものを含む、オブジェクトの基本型フィールドの数を返します。
+     * @return 基本型フィールドの数
+     */
+    public int getPrimitiveFieldCount() {
+        link();
+        return primitiveFieldCount;
+    }
+
+    /**
+     * スーパークラスのものを含む、オブジェクトの参照型フィールドの数を返します。
+     * @return 参照型フィールドの数
+     */
+    public int getReferenceFieldCount() {
+        link();
+        return referenceFieldCount;
+    }
+
+    /**
+     * ヘッダを含めたオブジェクトのバイト数を返します。
+     * @return バイト数
+     */
+    public int getInstanceSize() {
+        link();
+        return instanceSize;
+    }
+
+    /**
+     * スーパークラスのものを含む、インスタンスフィールドの配置を返します。
+     */
+    ObjectLayout getLayout() {
+        link();
+        return layout;
+    }
+
+    /**
+     * クラスの初期化が完了しているかどうかを返します。
+     * @return 初期化が完了している場合true
+     */
+    public boolean isInitialized() {
+        return state == INITIALIZED;
+    }
+
+    /**
+     * クラスをリンクします。スーパークラスのインスタンスフィールドの後ろに自身のインスタンスフィールドを詰めて配置し（{@link ObjectLayout}）、
+     * staticフィールドの配列を確保してConstantValue属性の値を設定します。ヒープのクラスIDもこの時点で割り当てます。
+     * 最初に、読み込み時の検証で保留した継承関係に関する制約をメソッド領域のクラスと照合します。
+     * @throws VerifyError 制約を満たさない場合
+     */
+    void link() {
+        if (linked) {
+            return;
+        }
+        // スーパークラスとスーパーインターフェースを先にリンクし、クラスごとのロックを入れ子にしない
+        if (superclass != null) {
+            superclass.link();
+        }
+        for (RuntimeClass superinterface : interfaces) {
+            superinterface.link();
+        }
+        lock.lock();
+        try {
+            if (linked) {
+                return;
+            }
+            // 照合のためのクラスの読み込みはクラスごとのロックを取らないため、ロックの中で行ってよい
+            if (verification != null) {
+                verification.checkConstraints(methodArea::findClassFile);
+                verification = null;
+            }
+            int primitives = superclass == null ? 0 : superclass.getPrimitiveFieldCount();
+            int references = superclass == null ? 0 : superclass.getReferenceFieldCount();
+            int staticPrimitives = 0;
+            int staticReferences = 0;
+
+            FieldInfo[] infos = classFile.getFields();
+            char[] types = new char[infos.length];
+            int instanceFields = 0;
+            for (FieldInfo info : infos) {
+                if (!info.isStatic()) {
+                    types[instanceFields++] = info.getDescriptor().toString().charAt(0);
+                }
+            }
+            ObjectLayout objectLayout = (superclass == null ? ObjectLayout.EMPTY : superclass.getLayout())
+                    .extend(Arrays.copyOf(types, instanceFields));
+
+            RuntimeField[] declared = new RuntimeField[infos.length];
+            for (int i = 0, index = 0; i < infos.length; i++) {
+                FieldInfo info = infos[i];
+                char type = info.getDescriptor().toString().charAt(0);
+                boolean reference = type == 'L' || type == '[';
+                if (info.isStatic()) {
+                    int slot = reference ? staticReferences++ : staticPrimitives++;
+                    declared[i] = new RuntimeField(this, info, slot, -1);
+                } else {
+                    int slot = primitives + references;
+                    if (reference) {
+                        references++;
+                    } else {
+                        primitives++;
+                    }
+                    declared[i] = new RuntimeField(this, info, slot, objectLayout.offsetOf(index++));
+                }
+            }
+
+            staticValues = new long[staticPrimitives];
+            staticRefs = new long[staticReferences];
+            fields = declared;
+            primitiveFieldCount = primitives;
+            referenceFieldCount = references;
+            layout = objectLayout;
+            instanceSize = objectLayout.instanceSize();
+            referenceOffsets = objectLayout.referenceOffsets();
+            heapId = methodArea.getHeap().register(this);
+            // 文字列の定数はホストの参照表に登録するため、GCがstaticフィールドを走査するクラスの登録後に設定する
+            for (RuntimeField field : declared) {
+                int index = field.getFieldInfo().getConstantValueIndex();
+                if (field.isStatic() && index != 0) {
+                    setConstantValue(field, index);
+                }
+            }
+            if (isInterface()) {
+                linkInterfaceMethods();
+            } else {
+                linkMethods();
+            }
+            linked = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * インターフェースの仮想呼び出しの対象のメソッドに、宣言順にitableの添字を割り当てます。
+     */
+    private void linkInterfaceMethods() {
+        List<RuntimeMethod> declared = new ArrayList<>();
+        for (RuntimeMethod method : methods) {
+            if (method.isVirtual()) {
+                method.itableIndex = declared.size();
+                declared.add(method);
+            }
+        }
+        interfaceMethods = declared.toArray(new RuntimeMethod[0]);
+        vtable = new RuntimeMethod[0];
+        itableInterfaces = new RuntimeClass[0];
+        itables = new RuntimeMethod[0][];
+    }
+
+    /**
+     * vtableとitableを作ります。
+     * スーパークラスのメソッドをオーバーライドするメソッドはその添字を引き継ぎ、新しいメソッドは末尾に追加します。
+     */
+    private void linkMethods() {
+        List<RuntimeMethod> table = new ArrayList<>();
+        if (superclass != null) {
+            table.addAll(Arrays.asList(superclass.vtable));
+        }
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < table.size(); i++) {
+            indices.put(signature(table.get(i)), i);
+        }
+        for (RuntimeMethod method : methods) {
+            if (!method.isVirtual()) {
+                continue;
+            }
+            Integer index = indices.get(signature(method));
+            if (index == null) {
+                method.vtableIndex = table.size();
+                indices.put(signature(method), table.size());
+                table.add(method);
+            } else {
+                table.get(index).markOverridden();
+                method.vtableIndex = index;
+                table.set(index, method);
+            }
+        }
+        vtable = table.toArray(new RuntimeMethod[0]);
+
+        Set<RuntimeClass> interfaces = new LinkedHashSet<>();
+        if (superclass != null) {
+            interfaces.addAll(Arrays.asList(superclass.itableInterfaces));
+        }
+        collectInterfaces(this, interfaces);
+        itableInterfaces = interfaces.toArray(new RuntimeClass[0]);
+        itables = new RuntimeMethod[itableInterfaces.length][];
+        for (int i = 0; i < itableInterfaces.length; i++) {
+            RuntimeMethod[] declared = itableInterfaces[i].interfaceMethods;
+            RuntimeMethod[] itable = new RuntimeMethod[declared.length];
+            for (int j = 0; j < declared.length; j++) {
+                Integer index = indices.get(signature(declared[j]));
+                RuntimeMethod selected = index != null ? vtable[index] : findDefaultMethod(declared[j]);
+                if (selected != declared[j]) {
+                    declared[j].markOverridden();
+                }
+                itable[j] = selected;
+            }
+            itables[i] = itable;
+        }
+    }
+
+    private static void collectInterfaces(RuntimeClass runtimeClass, Set<RuntimeClass> interfaces) {
+        for (RuntimeClass superinterface : runtimeClass.interfaces) {
+            if (interfaces.add(superinterface)) {
+                collectInterfaces(superinterface, interfaces);
+            }
+        }
+    }
+
+    /**
+     * クラスにもスーパークラスにも宣言されていないインターフェースのメソッドの呼び出し先として、
+     * スーパーインターフェースのデフォルトメソッドを探します。見つからない場合は抽象メソッドのままとします。
+     */
+    private RuntimeMethod findDefaultMethod(RuntimeMethod interfaceMethod) {
+        MethodInfo info = interfaceMethod.getMethodInfo();
+        String name = info.getName().toString();
+        String descriptor = info.getDescriptor().toString();
+        for (RuntimeClass current = this; current != null; current = current.superclass) {
+            RuntimeMethod method = findDefaultMethod(current, name, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        return interfaceMethod;
+    }
+
+    private static RuntimeMethod findDefaultMethod(RuntimeClass runtimeClass, String name, String descriptor) {
+        for (RuntimeClass superinterface : runtimeClass.interfaces) {
+            RuntimeMethod method = superinterface.findDeclaredMethod(name, descriptor);
+            if (method != null && method.isVirtual() && !method.isAbstract()) {
+                return method;
+            }
+            method = findDefaultMethod(superinterface, name, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static String signature(RuntimeMethod method) {
+        MethodInfo info = method.getMethodInfo();
+        return info.getName() + ":" + info.getDescriptor();
+    }
+
+    private void setConstantValue(RuntimeField field, int index) {
+        ConstantPool constantPool = classFile.getConstantPool();
+        switch (constantPool.tag(index)) {
+            case ConstantInfo.CONSTANT_Integer:
+                staticValues[field.getSlot()] = constantPool.intValue(index);
+                break;
+            case ConstantInfo.CONSTANT_Float:
+                staticValues[field.getSlot()] = Float.floatToRawIntBits(constantPool.floatValue(index));
+                break;
+            case ConstantInfo.CONSTANT_Long:
+                staticValues[field.getSlot()] = constantPool.longValue(index);
+                break;
+            case ConstantInfo.CONSTANT_Double:
+                staticValues[field.getSlot()] = Double.doubleToRawLongBits(constantPool.doubleValue(index));
+                break;
+            case ConstantInfo.CONSTANT_String:
+                staticRefs[field.getSlot()] = methodArea.getHeap().encodeHost(constantPool.utf8(constantPool.stringIndex(index)).intern());
+                break;
+            default:
+                throw new ClassFormatError("ConstantValue属性の定数の型が不正です: " + field + " #" + index);
+        }
+    }
+
+    /**
+     * クラスを初期化します。初期化済みの場合は何もしません。
+     * 別のスレッドが初期化中の場合は完了を待ち、同じスレッドが初期化中の場合（{@code <clinit>} からの再帰）は待たずに戻ります。
+     * @param interpreter {@code <clinit>} を実行するインタプリタ
+     * @return 初期化が完了している場合true。このスレッドが初期化中の場合false
+     * @throws NoClassDefFoundError 以前の初期化が失敗している場合
+     * @throws VerifyError リンク時の検証の制約を満たさない場合（初期化の失敗とはせず、参照するたびにスローする）
+     * @throws ExceptionInInitializerError {@code <clinit>} が例外をスローした場合
+     */
+    boolean initialize(Interpreter interpreter) {
+        if (state == INITIALIZED) {
+            return true;
+        }
+        // JVM仕様と同じく、リンクは初期化の前に行い、失敗してもクラスを初期化の失敗の状態にしない
+        link();
+        Thread current = Thread.currentThread();
+        int observed;
+        // 別のスレッドの初期化の完了を待つ間は、GCを妨げないようにセーフ領域に入る
+        interpreter.enterSafeRegion();
+        try {
+            observed = acquireInitialization(current);
+        } finally {
+            interpreter.leaveSafeRegion();
+        }
+        if (observed == INITIALIZED) {
+            return true;
+        }
+        if (observed == INITIALIZING) {
+            return false;
+        }
+
+        try {
+            if (!isInterface() && superclass != null) {
+                superclass.initialize(interpreter);
+            }
+            RuntimeMethod clinit = findDeclaredMethod("<clinit>", "()V");
+            if (clinit != null) {
+                interpreter.execute(clinit);
+            }
+        } catch (Error e) {
+            finishInitialization(ERRONEOUS);
+            throw e;
+        } catch (RuntimeException e) {
+            finishInitialization(ERRONEOUS);
+            throw new ExceptionInInitializerError(e);
+        }
+        finishInitialization(INITIALIZED);
+        return true;
+    }
+
+    /**
+     * 別のスレッドの初期化が完了するのを待ち、初期化されていなければこのスレッドが初期化を始めます。
+     * @return 初期化済みの場合は {@link #INITIALIZED}、このスレッドが初期化中の場合は {@link #INITIALIZING}、
+     *         このスレッドが初期化を始めた場合は {@link #UNINITIALIZED}
+     */
+    private int acquireInitialization(Thread current) {
+        lock.lock();
+        try {
+            while (state == INITIALIZING && initializer != current) {
+                try {
+                    initialized.await();
+                } catch (InterruptedException e) {
+                    current.interrupt();
+                    throw new NoClassDefFoundError("クラスの初期化を待機中に割り込まれました: " + this);
+                }
+            }
+            if (state == INITIALIZED || state == INITIALIZING) {
+                return state;
+            }
+            if (state == ERRONEOUS) {
+                throw new NoClassDefFoundError("クラスの初期化に失敗しています: " + this);
+            }
+            state = INITIALIZING;
+            initializer = current;
+            return UNINITIALIZED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finishInitialization(int result) {
+        lock.lock();
+        try {
+            state = result;
+            initializer = null;
+            initialized.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return classFile.getName().toString();
+    }
+}
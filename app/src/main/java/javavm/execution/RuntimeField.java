@@ -0,0 +1,96 @@
+package javavm.execution;
+
+import javavm.classfile.FieldInfo;
+
+/**
+ * 実行時のフィールド
+ *
+ * インスタンスフィールドの値はヒープ上のオブジェクトの {@link #getOffset()} の位置に、型の大きさ
+ * （参照型は圧縮した4バイト）で格納します。staticフィールドの値はクラスが持つ2つの {@code long[]}（基本型と参照型）の
+ * どちらかに格納し、その添字を {@link #getSlot()} で返します。
+ */
+public final class RuntimeField {
+    private final RuntimeClass owner;
+    private final FieldInfo fieldInfo;
+    private final char type;
+    private final int slot;
+    private final int offset;
+
+    RuntimeField(RuntimeClass owner, FieldInfo fieldInfo, int slot, int offset) {
+        this.owner = owner;
+        this.fieldInfo = fieldInfo;
+        this.type = fieldInfo.getDescriptor().toString().charAt(0);
+        this.slot = slot;
+        this.offset = offset;
+    }
+
+    /**
+     * フィールドを宣言したクラスを取得します。
+     * @return 宣言したクラス
+     */
+    public RuntimeClass getOwner() {
+        return owner;
+    }
+
+    /**
+     * クラスファイル上のフィールド情報を取得します。
+     * @return フィールド情報
+     */
+    public FieldInfo getFieldInfo() {
+        return fieldInfo;
+    }
+
+    /**
+     * フィールドの型を返します。
+     * @return 記述子の先頭の文字（オブジェクトは {@code 'L'}、配列は {@code '['}）
+     */
+    public char getType() {
+        return type;
+    }
+
+    /**
+     * フィールドの番号を返します。
+     * @return staticフィールドの場合は値を格納する配列（参照型と基本型で別）の添字、
+     *         インスタンスフィールドの場合はスーパークラスのフィールドを含めた宣言順の番号
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * オブジェクトの先頭からフィールドの値までのバイト数を返します。
+     * @return バイト数。staticフィールドの場合は-1
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * staticフィールドかどうかを返します。
+     * @return staticフィールドの場合true
+     */
+    public boolean isStatic() {
+        return fieldInfo.isStatic();
+    }
+
+    /**
+     * 参照型のフィールドかどうかを返します。
+     * @return オブジェクトまたは配列の場合true
+     */
+    public boolean isReference() {
+        return type == 'L' || type == '[';
+    }
+
+    /**
+     * オペランドスタックで2スロットを占める型（long/double）かどうかを返します。
+     * @return longまたはdoubleの場合true
+     */
+    public boolean isWide() {
+        return type == 'J' || type == 'D';
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + fieldInfo.getName() + ":" + fieldInfo.getDescriptor();
+    }
+}
@@ -0,0 +1,173 @@
+package javavm.execution;
+
+import javavm.classfile.AccessFlags;
+import javavm.classfile.CodeAttribute;
+import javavm.classfile.MethodDescriptor;
+import javavm.classfile.MethodInfo;
+
+/**
+ * 実行時のメソッド
+ *
+ * バイトコードは最初に実行される時点で {@link CodeDecoder} によって事前デコードし、結果を保持します。
+ * nativeメソッドなど、ホストで実装するメソッドは {@link Intrinsics} の組み込みメソッドを呼び出します。
+ * 仮想呼び出しの対象になるメソッドには、宣言したクラスのリンク時にvtableまたはitableの添字を割り当てます。
+ */
+public final class RuntimeMethod {
+    private final RuntimeClass owner;
+    private final MethodInfo methodInfo;
+    private final MethodDescriptor descriptor;
+    private volatile DecodedCode decodedCode;
+
+    // リンク時に設定する。対象外の場合は-1
+    int vtableIndex = -1;
+    int itableIndex = -1;
+    private volatile boolean overridden;
+
+    RuntimeMethod(RuntimeClass owner, MethodInfo methodInfo) {
+        this.owner = owner;
+        this.methodInfo = methodInfo;
+        this.descriptor = MethodDescriptor.parse(methodInfo.getDescriptor().toString());
+    }
+
+    /**
+     * メソッドを宣言したクラスを取得します。
+     * @return 宣言したクラス
+     */
+    public RuntimeClass getOwner() {
+        return owner;
+    }
+
+    /**
+     * クラスファイル上のメソッド情報を取得します。
+     * @return メソッド情報
+     */
+    public MethodInfo getMethodInfo() {
+        return methodInfo;
+    }
+
+    /**
+     * 解析済みのメソッド記述子を取得します。
+     * @return メソッド記述子
+     */
+    public MethodDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * staticメソッドかどうかを返します。
+     * @return staticメソッドの場合true
+     */
+    public boolean isStatic() {
+        return methodInfo.isStatic();
+    }
+
+    /**
+     * privateメソッドかどうかを返します。
+     * @return privateメソッドの場合true
+     */
+    public boolean isPrivate() {
+        return (methodInfo.getAccessFlags() & AccessFlags.ACC_PRIVATE) != 0;
+    }
+
+    /**
+     * 抽象メソッドかどうかを返します。
+     * @return 抽象メソッドの場合true
+     */
+    public boolean isAbstract() {
+        return (methodInfo.getAccessFlags() & AccessFlags.ACC_ABSTRACT) != 0;
+    }
+
+    /**
+     * synchronizedメソッドかどうかを返します。
+     * @return ACC_SYNCHRONIZEDが設定されている場合true
+     */
+    public boolean isSynchronized() {
+        return (methodInfo.getAccessFlags() & AccessFlags.ACC_SYNCHRONIZED) != 0;
+    }
+
+    /**
+     * 仮想呼び出しで選択される対象のメソッドかどうかを返します。
+     * staticメソッド、privateメソッド、インスタンス初期化メソッドは対象外です。
+     * @return 仮想呼び出しの対象の場合true
+     */
+    public boolean isVirtual() {
+        return !isStatic() && !isPrivate() && !methodInfo.getName().toString().equals("<init>");
+    }
+
+    /**
+     * クラスのvtableでの添字を返します。
+     * @return 添字。インターフェースのメソッドや仮想呼び出しの対象外のメソッドの場合は-1
+     */
+    public int getVtableIndex() {
+        return vtableIndex;
+    }
+
+    /**
+     * インターフェースのitableでの添字を返します。
+     * @return 添字。クラスのメソッドや仮想呼び出しの対象外のメソッドの場合は-1
+     */
+    public int getItableIndex() {
+        return itableIndex;
+    }
+
+    /**
+     * リンク済みのクラスに、このメソッドをオーバーライドするメソッドがあるかどうかを返します。
+     * インターフェースのメソッドの場合は、実装するクラスが別のメソッドを選択していればtrueです。
+     * falseの間は、呼び出し箇所をこのメソッドに直接結び付けることができます。
+     * @return オーバーライドするメソッドがある場合true
+     */
+    public boolean isOverridden() {
+        return overridden;
+    }
+
+    void markOverridden() {
+        overridden = true;
+    }
+
+    /**
+     * 引数が占めるローカル変数のスロット数を返します。インスタンスメソッドはthisの1スロットを含みます。
+     * @return スロット数
+     */
+    public int getArgumentSlots() {
+        return descriptor.getParameterSlots() + (isStatic() ? 0 : 1);
+    }
+
+    /**
+     * 事前デコードしたバイトコードを取得します。最初の呼び出しでデコードし、以降は同じ結果を返します。
+     * 組み込みメソッド（{@link Intrinsics}）がある場合は、バイトコードの代わりに組み込みメソッドを呼び出す命令列を返します。
+     * @return デコード結果
+     * @throws AbstractMethodError abstractメソッドの場合
+     * @throws UnsatisfiedLinkError nativeメソッドの場合
+     * @throws VerifyError バイトコードが不正な場合
+     */
+    public DecodedCode getDecodedCode() {
+        DecodedCode decoded = decodedCode;
+        if (decoded == null) {
+            synchronized (this) {
+                decoded = decodedCode;
+                if (decoded == null) {
+                    Intrinsic intrinsic = Intrinsics.lookup(this);
+                    decoded = intrinsic != null ? CodeDecoder.decodeIntrinsic(this, intrinsic) : CodeDecoder.decode(this, code());
+                    decodedCode = decoded;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    private CodeAttribute code() {
+        CodeAttribute code = methodInfo.getCode();
+        if (code == null) {
+            if ((methodInfo.getAccessFlags() & AccessFlags.ACC_NATIVE) != 0) {
+                throw new UnsatisfiedLinkError(this.toString());
+            }
+            throw new AbstractMethodError(this.toString());
+        }
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + methodInfo.getName() + methodInfo.getDescriptor();
+    }
+}
@@ -0,0 +1,166 @@
+package javavm.execution;
+
+import java.util.Arrays;
+
+import javavm.profile.MethodProfile;
+
+/**
+ * スレッドごとのフレームスタック
+ *
+ * すべてのフレームのローカル変数とオペランドスタックを1つの連続した {@code long[]} に確保し、
+ * 参照は同じ位置の {@code Object[]} に格納します。VMのヒープのオブジェクトは {@link Heap#REFERENCE} を置き、
+ * アドレスを {@code long[]} 側に格納します。
+ * フレームの積み下ろしはスタックポインタの移動だけで行い、メソッド呼び出しでホストのヒープにオブジェクトを生成しません。
+ *
+ * <p>呼び出し先のローカル変数は、呼び出し元のオペランドスタックに積まれた引数の位置から始まります。
+ * そのため引数は複製せずにそのまま呼び出し先のローカル変数になります。</p>
+ *
+ * <pre>
+ * | 呼び出し元のローカル変数 | 呼び出し元のスタック | 引数 = 呼び出し先のローカル変数 | 呼び出し先のスタック |
+ *                                                  ^ 呼び出し先のベース
+ * </pre>
+ *
+ * <p>スロット配列とフレーム情報の配列は必要に応じて上限まで拡張します。
+ * フレーム数またはスロット数が上限を超えると {@link StackOverflowError} をスローします。</p>
+ */
+public final class ThreadStack {
+    /** フレーム数の上限の既定値 */
+    public static final int DEFAULT_MAX_DEPTH = 4096;
+    /** スロット数の上限の既定値 */
+    public static final int DEFAULT_MAX_SLOTS = 1 << 18;
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_FRAMES = 64;
+
+    private final int maxDepth;
+    private final int maxSlots;
+
+    long[] slots;
+    Object[] refs;
+    // フレームごとの命令列、ベース（ローカル変数0の位置）、呼び出し中の命令位置（呼び出し先から戻るまで有効）
+    DecodedCode[] codes;
+    int[] bases;
+    int[] pcs;
+    // 実行中のフレーム数
+    int depth;
+    // これまでにフレームが使用したスロットの上端（この位置より上の参照はすべてnull）
+    int watermark;
+
+    /**
+     * 既定の上限でスタックを生成します。
+     */
+    public ThreadStack() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_MAX_SLOTS);
+    }
+
+    /**
+     * 上限を指定してスタックを生成します。
+     * @param maxDepth フレーム数の上限
+     * @param maxSlots スロット数の上限
+     * @throws IllegalArgumentException 上限が1未満の場合
+     */
+    public ThreadStack(int maxDepth, int maxSlots) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("フレーム数の上限は1以上である必要があります: " + maxDepth);
+        }
+        if (maxSlots < 1) {
+            throw new IllegalArgumentException("スロット数の上限は1以上である必要があります: " + maxSlots);
+        }
+        this.maxDepth = maxDepth;
+        this.maxSlots = maxSlots;
+        this.slots = new long[Math.min(INITIAL_SLOTS, maxSlots)];
+        this.refs = new Object[slots.length];
+        int frames = Math.min(INITIAL_FRAMES, maxDepth);
+        this.codes = new DecodedCode[frames];
+        this.bases = new int[frames];
+        this.pcs = new int[frames];
+    }
+
+    /**
+     * フレーム数の上限を返します。
+     * @return フレーム数の上限
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * スロット数の上限を返します。
+     * @return スロット数の上限
+     */
+    public int getMaxSlots() {
+        return maxSlots;
+    }
+
+    /**
+     * 実行中のフレーム数を返します。
+     * @return フレーム数
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 現在確保しているスロット数を返します。
+     * @return スロット配列の長さ
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * フレームを積みます。スロット配列を拡張した場合は {@link #slots} と {@link #refs} が新しい配列に替わります。
+     * 命令列にプロファイラのカウンタがあれば、呼び出しを数えます。
+     * @param code フレームで実行する命令列
+     * @param base フレームのローカル変数0の位置
+     * @throws StackOverflowError フレーム数またはスロット数が上限を超える場合
+     */
+    void push(DecodedCode code, int base) {
+        if (depth == maxDepth) {
+            throw new StackOverflowError("フレーム数が上限（" + maxDepth + "）を超えました: " + code.method);
+        }
+        int limit = base + code.maxLocals + code.maxStack;
+        if (limit > slots.length) {
+            growSlots(limit, code);
+        }
+        if (depth == codes.length) {
+            int frames = (int) Math.min((long) depth * 2, maxDepth);
+            codes = Arrays.copyOf(codes, frames);
+            bases = Arrays.copyOf(bases, frames);
+            pcs = Arrays.copyOf(pcs, frames);
+        }
+        if (limit > watermark) {
+            watermark = limit;
+        }
+        codes[depth] = code;
+        bases[depth] = base;
+        depth++;
+        MethodProfile profile = code.profile;
+        if (profile != null) {
+            profile.recordInvocation();
+        }
+    }
+
+    /**
+     * フレーム数を {@code entryDepth} に戻します。最外のフレームまで戻った場合は、
+     * 実行中に使用したスロットの参照を消去してホストのGCが回収できるようにします。
+     * @param entryDepth 戻すフレーム数
+     * @param entryWatermark 積む前のスロットの上端
+     */
+    void unwind(int entryDepth, int entryWatermark) {
+        depth = entryDepth;
+        if (entryDepth == 0) {
+            Arrays.fill(refs, entryWatermark, watermark, null);
+            watermark = entryWatermark;
+        }
+    }
+
+    private void growSlots(int limit, DecodedCode code) {
+        if (limit > maxSlots) {
+            throw new StackOverflowError("スロット数が上限（" + maxSlots + "）を超えました: " + code.method);
+        }
+        int capacity = (int) Math.min(Math.max((long) slots.length * 2, limit), maxSlots);
+        slots = Arrays.copyOf(slots, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+    }
+}
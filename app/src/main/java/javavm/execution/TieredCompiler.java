@@ -0,0 +1,191 @@
+package javavm.execution;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 呼び出し回数と後方分岐の回数がしきい値を超えた命令列を、バックグラウンドのスレッドでコンパイルする第2段階の実行系
+ *
+ * インタプリタは命令列ごとに呼び出しと後方分岐を数え、いずれかがしきい値を超えるとコンパイルを要求します。
+ * コンパイルは {@link MethodCompiler} が生成したクラスファイルを隠しクラスとして定義し、完了すると
+ * 命令列の {@code compiled} に設定します。インタプリタは次の呼び出し、呼び出し先から戻った位置、または
+ * 後方分岐から、コンパイルしたコードの実行に切り替えます（スタック上で実行中のフレームの置き換え）。
+ *
+ * <p>しきい値はシステムプロパティ {@code javavm.compileThreshold} で指定します（既定は10000、0でコンパイルしない）。
+ * コンパイルに失敗した命令列と、無効化が一定の回数を超えた命令列はインタプリタで実行し続けます。</p>
+ *
+ * <p>コンパイルの失敗として扱うのは、生成するメソッドがクラスファイルの制限を超える場合や対応していない命令がある場合
+ * （{@link IllegalStateException}）と、生成したクラスを定義できない場合（{@link LinkageError}、
+ * {@link ReflectiveOperationException}）です。最後の失敗の原因を保持し（{@link #getLastFailure()}）、
+ * システムプロパティ {@code javavm.compileLog} がtrueの場合は標準エラー出力にも出力します。
+ * それ以外の例外とVMのエラー（{@link OutOfMemoryError} など）はコンパイラのスレッドにそのまま伝えます。</p>
+ */
+public final class TieredCompiler {
+    /** コンパイルのしきい値を指定するシステムプロパティ */
+    public static final String THRESHOLD_PROPERTY = "javavm.compileThreshold";
+    /** コンパイルの失敗を出力するシステムプロパティ */
+    public static final String LOG_PROPERTY = "javavm.compileLog";
+    /** コンパイルのしきい値の既定値 */
+    public static final int DEFAULT_THRESHOLD = 10000;
+    // 1つの命令列をコンパイルし直す回数の上限（未解決のフィールドアクセスによる無効化を繰り返す場合）
+    static final int MAX_COMPILATIONS = 4;
+
+    private static final TieredCompiler INSTANCE = new TieredCompiler();
+
+    // 0（コンパイルしない）はInteger.MAX_VALUEで表す
+    private volatile int threshold;
+    private final boolean log = Boolean.getBoolean(LOG_PROPERTY);
+    private final ThreadPoolExecutor executor;
+    // 以下はこのオブジェクトのロックで保護する
+    private int pending;
+    private int compiledCount;
+    private int failedCount;
+    private Throwable lastFailure;
+
+    private TieredCompiler() {
+        setThreshold(Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD));
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "javavm-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * VM全体で共有するコンパイラを返します。
+     * @return コンパイラ
+     */
+    public static TieredCompiler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * コンパイルのしきい値を返します。
+     * @return 呼び出し回数または後方分岐の回数のしきい値。コンパイルしない場合は0
+     */
+    public int getThreshold() {
+        int value = threshold;
+        return value == Integer.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * コンパイルのしきい値を変更します。すでに数えた回数はそのまま新しいしきい値と比較します。
+     * @param threshold 呼び出し回数または後方分岐の回数のしきい値。0の場合はコンパイルしない
+     * @throws IllegalArgumentException 負の場合
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("コンパイルのしきい値が不正です: " + threshold);
+        }
+        this.threshold = threshold == 0 ? Integer.MAX_VALUE : threshold;
+    }
+
+    /**
+     * コンパイルした命令列の数を返します。
+     * @return コンパイルに成功した回数
+     */
+    public synchronized int getCompiledCount() {
+        return compiledCount;
+    }
+
+    /**
+     * コンパイルに失敗した命令列の数を返します。対象外の命令列（例外ハンドラを持つものなど）は含みません。
+     * @return コンパイルに失敗した回数
+     */
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 最後に失敗したコンパイルの原因を返します。
+     * @return 原因の例外。失敗したことがない場合はnull
+     */
+    public synchronized Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * 要求済みのコンパイルがすべて完了するまで待ちます。
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * 回数がしきい値を超えたかどうかを判定し、超えた場合はコンパイルを要求します。
+     * @param count 命令列の呼び出し回数または後方分岐の回数
+     * @param code 命令列
+     */
+    void count(int count, DecodedCode code) {
+        if (count > threshold) {
+            request(code);
+        }
+    }
+
+    /**
+     * 命令列のコンパイルを要求します。コンパイル済み、要求済み、またはコンパイルし直す回数の上限に達した場合は何もしません。
+     */
+    synchronized void request(DecodedCode code) {
+        // 要求の後はしきい値に達するまで判定しない
+        code.invocationCount = Integer.MIN_VALUE;
+        code.backedgeCount = Integer.MIN_VALUE;
+        if (code.compiled != null || code.queued || code.compilations >= MAX_COMPILATIONS) {
+            return;
+        }
+        code.queued = true;
+        code.compilations++;
+        pending++;
+        executor.execute(() -> compile(code));
+    }
+
+    private void compile(DecodedCode code) {
+        CompiledMethod compiled = null;
+        Throwable failure = null;
+        try {
+            compiled = define(code);
+        } catch (IllegalStateException | LinkageError | ReflectiveOperationException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                if (compiled != null) {
+                    code.compiled = compiled;
+                    compiledCount++;
+                } else {
+                    // 対象外か失敗した命令列はコンパイルし直さない
+                    code.compilations = MAX_COMPILATIONS;
+                    if (failure != null) {
+                        failedCount++;
+                        lastFailure = failure;
+                    }
+                }
+                code.queued = false;
+                if (--pending == 0) {
+                    notifyAll();
+                }
+            }
+        }
+        if (failure != null && log) {
+            System.err.println("コンパイルに失敗しました: " + code);
+            failure.printStackTrace();
+        }
+    }
+
+    /**
+     * 命令列をコンパイルし、生成したクラスを隠しクラスとして定義します。
+     * @return コンパイルしたコード。コンパイルの対象外の命令列の場合はnull
+     */
+    private static CompiledMethod define(DecodedCode code) throws ReflectiveOperationException {
+        byte[] bytes = MethodCompiler.compile(code);
+        if (bytes == null) {
+            return null;
+        }
+        Class<?> compiledClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+        return compiledClass.asSubclass(CompiledMethod.class).getDeclaredConstructor(DecodedCode.class).newInstance(code);
+    }
+}
@@ -0,0 +1,50 @@
+package javavm.execution;
+
+/**
+ * スレッドごとの割り当て領域（Thread Local Allocation Buffer）
+ *
+ * ヒープのEdenから受け取った領域の中で、ポインタを進めるだけでオブジェクトを割り当てます。
+ * 1つのスレッドだけが使用するため、割り当てに同期は必要ありません。
+ * GCでEdenを空にすると、ヒープがすべてのTLABを空にします。
+ */
+final class Tlab {
+    private final Heap heap;
+    // 割り当てを行うインタプリタ（GCを要求したスレッドの判定に使用する）。インタプリタを使用しない場合はnull
+    final Interpreter owner;
+    // 次に割り当てる位置と領域の終端。最初はどちらも0で、最初の割り当てで領域を受け取る
+    long top;
+    long end;
+
+    Tlab(Heap heap) {
+        this(heap, null);
+    }
+
+    Tlab(Heap heap, Interpreter owner) {
+        this.heap = heap;
+        this.owner = owner;
+        heap.addTlab(this);
+    }
+
+    /**
+     * 領域を割り当てます。
+     * @param bytes バイト数（8の倍数）
+     * @return 割り当てたアドレス
+     * @throws OutOfMemoryError GCの後もヒープに空きがない場合
+     */
+    long allocate(long bytes) {
+        long address = top;
+        if (end - address >= bytes) {
+            top = address + bytes;
+            return address;
+        }
+        return heap.allocateSlow(this, bytes);
+    }
+
+    /**
+     * このTLABを空にします。Edenは先頭から走査しないため、残りの領域はそのまま捨てます。
+     */
+    void reset() {
+        top = 0;
+        end = 0;
+    }
+}
@@ -0,0 +1,121 @@
+package javavm.execution;
+
+/**
+ * checkcast/instanceofの対象の型
+ *
+ * 命令が参照するクラスを最初の実行時に解決し、命令列の定数に保持します（{@link #of(DecodedCode, int)}）。
+ * ヒープのオブジェクトは {@link RuntimeClass} のスーパークラスとスーパーインターフェースをたどって判定し、
+ * ホストのオブジェクト（文字列、基本型の配列、例外など）はホストのクラスの継承関係をクラス名で照合します
+ * （例外ハンドラの {@code catch_type} の照合と同じ方法）。
+ *
+ * <p>ヒープの参照型の配列は要素型を記録していないため、java/lang/Object、java/lang/Cloneable、java/io/Serializable と
+ * すべての参照型の配列型のインスタンスとして扱います（要素型は確かめません）。</p>
+ */
+final class TypeCheck {
+    // 内部形式のクラス名、または配列型の記述子
+    private final String className;
+    // 解決したクラス。配列型の場合はnull
+    private final RuntimeClass type;
+
+    private TypeCheck(String className, RuntimeClass type) {
+        this.className = className;
+        this.type = type;
+    }
+
+    /**
+     * checkcast/instanceofの対象の型を返します。未解決の場合はクラスを解決し、命令列の定数に保持します。
+     * 複数のスレッドが同時に解決した場合も、得られるクラスは同じです。
+     * @param decoded 命令列
+     * @param pc 命令位置
+     * @return 対象の型
+     */
+    static TypeCheck of(DecodedCode decoded, int pc) {
+        int index = decoded.instructions[pc + 1];
+        TypeCheck check = (TypeCheck) decoded.constants[index];
+        if (check == null) {
+            RuntimeClass owner = decoded.method.getOwner();
+            String className = owner.getClassFile().getConstantPool().className(decoded.instructions[pc + 2]);
+            RuntimeClass type = className.charAt(0) == '[' ? null : owner.getMethodArea().lookup(className);
+            check = new TypeCheck(className, type);
+            decoded.constants[index] = check;
+        }
+        return check;
+    }
+
+    /**
+     * 参照がこの型のインスタンスかどうかを返します（instanceof）。
+     * @param heap ヒープ
+     * @param reference スロットの参照（ヒープのオブジェクトの場合は {@link Heap#REFERENCE}）
+     * @param address ヒープのオブジェクトのアドレス
+     * @return インスタンスの場合true。nullの場合はfalse
+     */
+    boolean isInstance(Heap heap, Object reference, long address) {
+        if (reference == Heap.REFERENCE) {
+            RuntimeClass objectClass = heap.classOf(address);
+            if (objectClass == null) {
+                // 参照型の配列
+                if (type == null) {
+                    return className.charAt(1) == 'L' || className.charAt(1) == '[';
+                }
+                return className.equals("java/lang/Object") || className.equals("java/lang/Cloneable")
+                        || className.equals("java/io/Serializable");
+            }
+            return type != null && objectClass.isSubtypeOf(type);
+        }
+        return reference != null && isHostInstance(reference.getClass(), className);
+    }
+
+    /**
+     * 参照をこの型にキャストできることを確かめます（checkcast）。nullは常にキャストできます。
+     * @param heap ヒープ
+     * @param reference スロットの参照（ヒープのオブジェクトの場合は {@link Heap#REFERENCE}）
+     * @param address ヒープのオブジェクトのアドレス
+     * @throws ClassCastException この型のインスタンスでない場合
+     */
+    void checkCast(Heap heap, Object reference, long address) {
+        if (reference != null && !isInstance(heap, reference, address)) {
+            String actual;
+            if (reference == Heap.REFERENCE) {
+                RuntimeClass objectClass = heap.classOf(address);
+                actual = objectClass == null ? "参照型の配列" : objectClass.toString();
+            } else {
+                actual = reference.getClass().getName().replace('.', '/');
+            }
+            throw new ClassCastException(actual + "は" + className + "にキャストできません");
+        }
+    }
+
+    /**
+     * ホストのクラスが、内部形式のクラス名または配列型の記述子が示す型に代入できるかどうかを返します。
+     */
+    private static boolean isHostInstance(Class<?> hostClass, String className) {
+        if (className.charAt(0) == '[') {
+            if (!hostClass.isArray()) {
+                return false;
+            }
+            Class<?> component = hostClass.getComponentType();
+            char element = className.charAt(1);
+            if (component.isPrimitive() || (element != 'L' && element != '[')) {
+                // 基本型の配列は要素型が一致する場合だけ代入できる
+                return hostClass.getName().equals(className);
+            }
+            return isHostInstance(component, element == '[' ? className.substring(1) : className.substring(2, className.length() - 1));
+        }
+        for (Class<?> c = hostClass; c != null; c = c.getSuperclass()) {
+            if (c.getName().replace('.', '/').equals(className)) {
+                return true;
+            }
+            for (Class<?> superinterface : c.getInterfaces()) {
+                if (isHostInstance(superinterface, className)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+}
@@ -0,0 +1,119 @@
+package javavm.execution;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * GCのワーカーごとの作業キュー（Chase-Levの両端キュー）
+ *
+ * 所有するワーカーだけが末尾への追加と末尾からの取り出しを行い、他のワーカーは先頭から盗みます。
+ * 所有者の操作は最後の1要素を取り合う場合を除いて比較交換を使いません。
+ * 要素はオブジェクトのアドレス（正の値）で、空の場合は {@link #EMPTY} を返します。
+ */
+final class WorkStealingDeque {
+    /** 要素がないことを表す値 */
+    static final int EMPTY = -1;
+    /** 他のワーカーとの取り合いに負けたことを表す値 */
+    static final int ABORT = -2;
+
+    private static final VarHandle TOP;
+
+    static {
+        try {
+            TOP = MethodHandles.lookup().findVarHandle(WorkStealingDeque.class, "top", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 要素の配列（長さは2のべき乗）。拡張時は新しい配列に置き換え、盗む側が古い配列を読んでも値は変わらない
+    private volatile int[] buffer;
+    // 盗む側の位置と所有者の位置。[top, bottom) に要素がある
+    private volatile int top;
+    private volatile int bottom;
+
+    WorkStealingDeque() {
+        this(1 << 10);
+    }
+
+    WorkStealingDeque(int capacity) {
+        this.buffer = new int[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+    }
+
+    /**
+     * 末尾に追加します。所有するワーカーだけが呼び出せます。
+     */
+    void push(int value) {
+        int b = bottom;
+        int[] array = buffer;
+        if (b - top >= array.length - 1) {
+            array = grow(array, top, b);
+        }
+        array[b & (array.length - 1)] = value;
+        // volatileの書き込みで要素を公開する
+        bottom = b + 1;
+    }
+
+    /**
+     * 末尾から取り出します。所有するワーカーだけが呼び出せます。
+     * @return 要素。空の場合は {@link #EMPTY}
+     */
+    int pop() {
+        int b = bottom - 1;
+        int[] array = buffer;
+        bottom = b;
+        // bottomの書き込みの後にtopを読む（volatileの書き込みと読み取りの順序は入れ替わらない）
+        int t = top;
+        if (t > b) {
+            bottom = t;
+            return EMPTY;
+        }
+        int value = array[b & (array.length - 1)];
+        if (t < b) {
+            return value;
+        }
+        // 最後の1要素は盗む側と取り合う
+        boolean won = TOP.compareAndSet(this, t, t + 1);
+        bottom = t + 1;
+        return won ? value : EMPTY;
+    }
+
+    /**
+     * 先頭から盗みます。どのスレッドからも呼び出せます。
+     * @return 要素。空の場合は {@link #EMPTY}、他のワーカーとの取り合いに負けた場合は {@link #ABORT}
+     */
+    int steal() {
+        int t = top;
+        int b = bottom;
+        if (t >= b) {
+            return EMPTY;
+        }
+        int[] array = buffer;
+        int value = array[t & (array.length - 1)];
+        return TOP.compareAndSet(this, t, t + 1) ? value : ABORT;
+    }
+
+    /**
+     * 要素があるかどうかを返します。他のスレッドの操作と同時に呼び出した場合、結果は目安です。
+     */
+    boolean isEmpty() {
+        return top >= bottom;
+    }
+
+    /**
+     * 空にします。他のワーカーが操作していない間に呼び出します（位置の値があふれないように、GCの作業ごとに0に戻す）。
+     */
+    void reset() {
+        top = 0;
+        bottom = 0;
+    }
+
+    private int[] grow(int[] array, int t, int b) {
+        int[] grown = new int[array.length * 2];
+        for (int i = t; i < b; i++) {
+            grown[i & (grown.length - 1)] = array[i & (array.length - 1)];
+        }
+        buffer = grown;
+        return grown;
+    }
+}
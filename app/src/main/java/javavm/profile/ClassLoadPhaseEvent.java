@@ -0,0 +1,29 @@
+package javavm.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * クラスの読み込みの1つの段階にかかった時間を記録するJFRのイベント
+ */
+@Name("javavm.ClassLoadPhase")
+@Label("クラスの読み込みの段階")
+@Description("クラスファイルの取得、定数プールの解析、その他の構造の解析、検証のいずれかにかかった時間")
+@Category({"Javavm", "Profile"})
+@StackTrace(false)
+final class ClassLoadPhaseEvent extends Event {
+    @Label("クラス名")
+    String className;
+
+    @Label("段階")
+    String phase;
+
+    @Label("時間")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
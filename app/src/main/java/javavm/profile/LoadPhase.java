@@ -0,0 +1,15 @@
+package javavm.profile;
+
+/**
+ * プロファイラが時間を計測するクラスの読み込みの段階
+ */
+public enum LoadPhase {
+    /** クラスファイルの内容の取得（ファイルの読み込みやマップ、JARエントリの展開） */
+    READ,
+    /** 定数プールの解析 */
+    CONSTANT_POOL,
+    /** 定数プール以外の構造（フィールド、メソッド、属性）の解析 */
+    PARSE,
+    /** バイトコードの検証 */
+    VERIFY
+}
@@ -0,0 +1,61 @@
+package javavm.profile;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 1つのメソッドの呼び出し回数と後方分岐の回数
+ *
+ * 複数のスレッドが同時に数えるため、カウンタには {@link LongAdder} を使用します。
+ */
+public final class MethodProfile {
+    private final String name;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder backedges = new LongAdder();
+
+    MethodProfile(String name) {
+        this.name = name;
+    }
+
+    /**
+     * メソッドの名前を返します。
+     * @return 「クラス名.メソッド名記述子」の形式の名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 呼び出しを1回数えます。
+     */
+    public void recordInvocation() {
+        invocations.increment();
+    }
+
+    /**
+     * 後方分岐（ループの繰り返し）を1回数えます。
+     */
+    public void recordBackedge() {
+        backedges.increment();
+    }
+
+    /**
+     * 呼び出し回数を返します。
+     * @return 呼び出し回数
+     */
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * 後方分岐の回数を返します。
+     * @return 後方分岐の回数
+     */
+    public long getBackedges() {
+        return backedges.sum();
+    }
+
+    void reset() {
+        invocations.reset();
+        backedges.reset();
+    }
+}
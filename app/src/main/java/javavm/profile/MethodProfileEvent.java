@@ -0,0 +1,29 @@
+package javavm.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * メソッドごとの呼び出し回数と後方分岐の回数を定期的に記録するJFRのイベント
+ */
+@Name("javavm.MethodProfile")
+@Label("メソッドのプロファイル")
+@Description("プロファイラを有効にしてからのメソッドの呼び出し回数と後方分岐の回数（累計）")
+@Category({"Javavm", "Profile"})
+@Period("endChunk")
+@StackTrace(false)
+final class MethodProfileEvent extends Event {
+    @Label("メソッド")
+    String method;
+
+    @Label("呼び出し回数")
+    long invocations;
+
+    @Label("後方分岐の回数")
+    long backedges;
+}
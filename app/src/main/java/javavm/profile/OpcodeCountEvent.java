@@ -0,0 +1,26 @@
+package javavm.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * 命令ごとの実行回数を定期的に記録するJFRのイベント
+ */
+@Name("javavm.OpcodeCount")
+@Label("命令の実行回数")
+@Description("プロファイラを有効にしてから実行した命令の回数（命令ごとの累計）")
+@Category({"Javavm", "Profile"})
+@Period("endChunk")
+@StackTrace(false)
+final class OpcodeCountEvent extends Event {
+    @Label("命令")
+    String opcode;
+
+    @Label("回数")
+    long count;
+}
@@ -0,0 +1,361 @@
+package javavm.profile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * 命令ごとの実行回数、メソッドごとの呼び出し回数と後方分岐の回数、クラスの読み込みの段階ごとの時間を集計するプロファイラ
+ *
+ * 既定では無効で、無効の間は計測しません。システムプロパティ {@code javavm.profile} に {@code text} または {@code json}
+ * を指定すると起動時に有効になり、終了時にその形式のレポートを {@code javavm.profile.file} のファイル
+ * （指定しない場合は標準エラー出力）に出力します。
+ *
+ * <p>計測の費用を抑えるため、カウンタは共有しません。命令の実行回数はインタプリタ（スレッド）ごとの配列に数え、
+ * メソッドのカウンタと読み込みの時間は {@link LongAdder} で数えます。実行中のスレッドの配列は同期せずに読むため、
+ * レポートの値はその時点までのおおよその値です。有効にした後に生成したインタプリタと、有効にした後にデコードしたメソッドが
+ * 計測の対象です。</p>
+ *
+ * <p>有効の間は、読み込みの段階ごとにJFRのイベント（{@code javavm.ClassLoadPhase}）を記録し、
+ * 記録のチャンクの終わりに命令とメソッドの累計（{@code javavm.OpcodeCount}、{@code javavm.MethodProfile}）を記録します。</p>
+ */
+public final class Profiler {
+    /** 起動時に有効にし、終了時のレポートの形式（{@code text} または {@code json}）を指定するシステムプロパティ */
+    public static final String PROPERTY = "javavm.profile";
+    /** 終了時のレポートの出力先のファイルを指定するシステムプロパティ */
+    public static final String FILE_PROPERTY = "javavm.profile.file";
+
+    /**
+     * レポートの形式
+     */
+    public enum Format {
+        /** 回数の多い順に並べた表 */
+        TEXT,
+        /** JSON */
+        JSON
+    }
+
+    private static final Profiler INSTANCE = new Profiler();
+
+    static {
+        String format = System.getProperty(PROPERTY);
+        if (format != null) {
+            INSTANCE.setEnabled(true);
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> INSTANCE.dump(Format.valueOf(format.toUpperCase(Locale.ROOT)), System.getProperty(FILE_PROPERTY)),
+                "javavm-profile"));
+        }
+    }
+
+    private volatile boolean enabled;
+    private boolean periodicEventsRegistered;
+    // 命令番号ごとの名前（最初に配列を割り当てたときに設定する）
+    private volatile String[] opcodeNames = new String[0];
+    // 実行中のスレッドの命令ごとの回数と、終了したスレッドの回数の合計（合計はこのオブジェクトのロックで保護する）
+    private final List<long[]> opcodeCounters = new CopyOnWriteArrayList<>();
+    private long[] retiredOpcodeCounts = new long[0];
+    private final ConcurrentLinkedQueue<MethodProfile> methods = new ConcurrentLinkedQueue<>();
+    private final LongAdder[] loadCounts = new LongAdder[LoadPhase.values().length];
+    private final LongAdder[] loadNanos = new LongAdder[LoadPhase.values().length];
+
+    private Profiler() {
+        for (int i = 0; i < loadCounts.length; i++) {
+            loadCounts[i] = new LongAdder();
+            loadNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * VM全体で共有するプロファイラを返します。
+     * @return プロファイラ
+     */
+    public static Profiler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 計測が有効かどうかを返します。
+     * @return 有効な場合true
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 計測を有効または無効にします。すでに割り当てたカウンタは、無効にした後も値を保持します。
+     * @param enabled 有効にする場合true
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && !periodicEventsRegistered) {
+            FlightRecorder.addPeriodicEvent(OpcodeCountEvent.class, this::emitOpcodeCounts);
+            FlightRecorder.addPeriodicEvent(MethodProfileEvent.class, this::emitMethodProfiles);
+            periodicEventsRegistered = true;
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * すべての回数と時間を0に戻します。割り当て済みのカウンタはそのまま使用できます。
+     */
+    public synchronized void reset() {
+        for (long[] counts : opcodeCounters) {
+            Arrays.fill(counts, 0);
+        }
+        Arrays.fill(retiredOpcodeCounts, 0);
+        for (MethodProfile method : methods) {
+            method.reset();
+        }
+        for (int i = 0; i < loadCounts.length; i++) {
+            loadCounts[i].reset();
+            loadNanos[i].reset();
+        }
+    }
+
+    /**
+     * 1つのスレッドが命令の実行回数を数える配列を割り当てます。配列の添字は命令番号です。
+     * 配列は割り当てたスレッドだけが書き込み、スレッドが終了するときに {@link #retireOpcodeCounter(long[])} で返します。
+     * @param names 命令番号ごとの名前（配列の長さが命令番号の数になる）
+     * @return 命令の実行回数を数える配列
+     */
+    public long[] newOpcodeCounter(String[] names) {
+        opcodeNames = names;
+        long[] counts = new long[names.length];
+        opcodeCounters.add(counts);
+        return counts;
+    }
+
+    /**
+     * スレッドが終了したため、命令の実行回数を合計に加えて配列を手放します。
+     * @param counts {@link #newOpcodeCounter(String[])} で割り当てた配列
+     */
+    public synchronized void retireOpcodeCounter(long[] counts) {
+        if (!opcodeCounters.remove(counts)) {
+            return;
+        }
+        if (retiredOpcodeCounts.length < counts.length) {
+            retiredOpcodeCounts = Arrays.copyOf(retiredOpcodeCounts, counts.length);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            retiredOpcodeCounts[i] += counts[i];
+        }
+    }
+
+    /**
+     * 命令番号ごとの実行回数の合計を返します。
+     * @return 命令番号を添字とする実行回数
+     */
+    public synchronized long[] getOpcodeCounts() {
+        long[] total = Arrays.copyOf(retiredOpcodeCounts, opcodeNames.length);
+        for (long[] counts : opcodeCounters) {
+            for (int i = 0; i < counts.length && i < total.length; i++) {
+                total[i] += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * メソッドのカウンタを割り当てます。
+     * @param name 「クラス名.メソッド名記述子」の形式の名前
+     * @return カウンタ
+     */
+    public MethodProfile newMethodProfile(String name) {
+        MethodProfile profile = new MethodProfile(name);
+        methods.add(profile);
+        return profile;
+    }
+
+    /**
+     * 割り当てたメソッドのカウンタを返します。
+     * @return カウンタの一覧（呼び出し時点のスナップショット）
+     */
+    public List<MethodProfile> getMethodProfiles() {
+        return new ArrayList<>(methods);
+    }
+
+    /**
+     * 読み込みの段階の開始時刻を返します。
+     * @return 有効な場合は {@link System#nanoTime()} の値、無効な場合は0
+     */
+    public long timestamp() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 読み込みの段階の時間を記録します。
+     * @param phase 段階
+     * @param className 読み込んだクラスの名前（分からない場合はnull）
+     * @param start {@link #timestamp()} で取得した開始時刻。0の場合は何もしない
+     */
+    public void recordLoad(LoadPhase phase, String className, long start) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        loadCounts[phase.ordinal()].increment();
+        loadNanos[phase.ordinal()].add(nanos);
+        ClassLoadPhaseEvent event = new ClassLoadPhaseEvent();
+        if (event.isEnabled()) {
+            event.className = className;
+            event.phase = phase.name();
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * 段階を計測した回数を返します。
+     * @param phase 段階
+     * @return 回数
+     */
+    public long getLoadCount(LoadPhase phase) {
+        return loadCounts[phase.ordinal()].sum();
+    }
+
+    /**
+     * 段階にかかった時間の合計を返します。
+     * @param phase 段階
+     * @return ナノ秒
+     */
+    public long getLoadNanos(LoadPhase phase) {
+        return loadNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * レポートを作成します。命令とメソッドは回数の多い順に並べ、回数が0のものは省きます。
+     * @param format 形式
+     * @return レポート
+     */
+    public String report(Format format) {
+        long[] counts = getOpcodeCounts();
+        String[] names = opcodeNames;
+        List<Integer> opcodes = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                opcodes.add(i);
+                total += counts[i];
+            }
+        }
+        opcodes.sort(Comparator.comparingLong((Integer opcode) -> counts[opcode]).reversed());
+        List<MethodProfile> profiles = new ArrayList<>();
+        for (MethodProfile method : methods) {
+            if (method.getInvocations() > 0 || method.getBackedges() > 0) {
+                profiles.add(method);
+            }
+        }
+        profiles.sort(Comparator.comparingLong(MethodProfile::getInvocations)
+            .thenComparingLong(MethodProfile::getBackedges).reversed());
+        return format == Format.JSON ? json(names, counts, opcodes, profiles) : text(names, counts, opcodes, total, profiles);
+    }
+
+    private String text(String[] names, long[] counts, List<Integer> opcodes, long total, List<MethodProfile> profiles) {
+        StringBuilder out = new StringBuilder();
+        out.append("== 命令の実行回数 (合計 ").append(total).append(") ==\n");
+        for (int opcode : opcodes) {
+            out.append(String.format("%15d %6.2f%%  %s%n", counts[opcode], counts[opcode] * 100.0 / total, names[opcode]));
+        }
+        out.append("== メソッド ==\n");
+        out.append(String.format("%15s %15s  %s%n", "invocations", "backedges", "method"));
+        for (MethodProfile method : profiles) {
+            out.append(String.format("%15d %15d  %s%n", method.getInvocations(), method.getBackedges(), method.getName()));
+        }
+        out.append("== クラスの読み込み ==\n");
+        out.append(String.format("%-15s %10s %12s %12s%n", "phase", "count", "total ms", "mean us"));
+        for (LoadPhase phase : LoadPhase.values()) {
+            long count = getLoadCount(phase);
+            long nanos = getLoadNanos(phase);
+            out.append(String.format("%-15s %10d %12.3f %12.3f%n", phase, count, nanos / 1e6, count == 0 ? 0.0 : nanos / 1e3 / count));
+        }
+        return out.toString();
+    }
+
+    private String json(String[] names, long[] counts, List<Integer> opcodes, List<MethodProfile> profiles) {
+        StringBuilder out = new StringBuilder("{\n  \"opcodes\": [");
+        for (int i = 0; i < opcodes.size(); i++) {
+            int opcode = opcodes.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    {\"opcode\": ").append(quote(names[opcode]))
+                .append(", \"count\": ").append(counts[opcode]).append('}');
+        }
+        out.append("\n  ],\n  \"methods\": [");
+        for (int i = 0; i < profiles.size(); i++) {
+            MethodProfile method = profiles.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    {\"method\": ").append(quote(method.getName()))
+                .append(", \"invocations\": ").append(method.getInvocations())
+                .append(", \"backedges\": ").append(method.getBackedges()).append('}');
+        }
+        out.append("\n  ],\n  \"classLoading\": {");
+        LoadPhase[] phases = LoadPhase.values();
+        for (int i = 0; i < phases.length; i++) {
+            out.append(i == 0 ? "\n" : ",\n").append("    ").append(quote(phases[i].name()))
+                .append(": {\"count\": ").append(getLoadCount(phases[i]))
+                .append(", \"nanos\": ").append(getLoadNanos(phases[i])).append('}');
+        }
+        return out.append("\n  }\n}\n").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    private void dump(Format format, String file) {
+        String report = report(format);
+        if (file == null) {
+            System.err.print(report);
+            return;
+        }
+        try {
+            Files.writeString(Path.of(file), report);
+        } catch (IOException e) {
+            System.err.println("プロファイルのレポートを書き込めませんでした: " + file + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private void emitOpcodeCounts() {
+        long[] counts = getOpcodeCounts();
+        String[] names = opcodeNames;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                OpcodeCountEvent event = new OpcodeCountEvent();
+                event.opcode = names[i];
+                event.count = counts[i];
+                event.commit();
+            }
+        }
+    }
+
+    private void emitMethodProfiles() {
+        for (MethodProfile method : methods) {
+            long invocations = method.getInvocations();
+            long backedges = method.getBackedges();
+            if (invocations > 0 || backedges > 0) {
+                MethodProfileEvent event = new MethodProfileEvent();
+                event.method = method.getName();
+                event.invocations = invocations;
+                event.backedges = backedges;
+                event.commit();
+            }
+        }
+    }
+}
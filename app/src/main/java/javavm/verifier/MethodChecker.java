@@ -0,0 +1,1230 @@
+package javavm.verifier;
+
+import java.util.Arrays;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.CodeView;
+import javavm.classfile.ConstantInfo;
+import javavm.classfile.ConstantPool;
+import javavm.classfile.FieldInfo;
+import javavm.classfile.MethodInfo;
+import javavm.execution.Opcode;
+
+/**
+ * 1つのメソッドの型検査
+ *
+ * バイトコードを先頭から1回走査し、命令ごとに次の順で検査します。
+ * <ol>
+ *   <li>スタックマップフレームがある位置では、直前の命令から実行が継続する場合に現在の型がフレームに代入できることを確認し、
+ *       現在の型をフレームの型に置き換える。無条件分岐の直後にはフレームが必要</li>
+ *   <li>命令を範囲に含む例外ハンドラについて、現在のローカル変数と捕捉する例外の型がハンドラのフレームに代入できることを確認する</li>
+ *   <li>命令のオペランドの型を確認して型を更新し、分岐先のフレームに代入できることを確認する</li>
+ * </ol>
+ * フレームの位置、例外ハンドラの範囲、未初期化の型が参照するnew命令は、走査の後に命令の境界にあることを確認します。
+ */
+final class MethodChecker {
+    private final TypeCheckingVerifier verifier;
+    private final ConstantPool constantPool;
+    private final MethodInfo method;
+    // Code属性は読み込み元を参照するビューで走査し、デコードしない
+    private final CodeView code;
+    private final int codeLength;
+    private final int[] exceptionTable;
+    private final int maxStack;
+    private final int[] locals;
+    private final int[] stack;
+    // 戻り値の型。voidの場合は-1
+    private final int returnType;
+    private final boolean constructor;
+    private final StackMapFrames frames;
+    // バイトコード上のオフセットからフレームの番号への対応（フレームがない位置は-1）
+    private final int[] frameAt;
+    // 例外ハンドラが捕捉する例外の型
+    private final int[] catchTypes;
+    private int sp;
+    // thisが未初期化のまま（スーパークラスのコンストラクタを呼び出す前）の場合true
+    private boolean thisUninit;
+    // 検査中の命令のオフセット
+    private int pc;
+
+    MethodChecker(TypeCheckingVerifier verifier, MethodInfo method) {
+        this.verifier = verifier;
+        this.constantPool = verifier.classFile().getConstantPool();
+        this.method = method;
+        this.code = method.viewCode();
+        this.codeLength = code.getCodeLength();
+        this.maxStack = code.getMaxStack();
+        this.locals = new int[code.getMaxLocals()];
+        this.stack = new int[maxStack];
+        this.exceptionTable = new int[code.getExceptionTableLength() * 4];
+        for (int i = 0; i < exceptionTable.length; i += 4) {
+            exceptionTable[i] = code.getStartPc(i / 4);
+            exceptionTable[i + 1] = code.getEndPc(i / 4);
+            exceptionTable[i + 2] = code.getHandlerPc(i / 4);
+            exceptionTable[i + 3] = code.getCatchType(i / 4);
+        }
+
+        String name = method.getName().toString();
+        int[] signature = verifier.signature(method.getDescriptor().toString());
+        this.returnType = signature[signature.length - 1];
+        this.constructor = name.equals("<init>");
+        int size = 0;
+        if (!method.isStatic()) {
+            if (constructor && !verifier.className().equals(TypeCheckingVerifier.OBJECT)) {
+                size = setLocal(size, VerificationType.UNINITIALIZED_THIS);
+                thisUninit = true;
+            } else {
+                size = setLocal(size, verifier.objectType(verifier.className()));
+            }
+        }
+        for (int i = 0; i < signature.length - 1; i++) {
+            size = setLocal(size, signature[i]);
+        }
+        this.frames = StackMapFrames.parse(code.getStackMapTable(), locals.clone(), size, maxStack, codeLength,
+                verifier, constantPool);
+        this.frameAt = new int[codeLength];
+        Arrays.fill(frameAt, -1);
+        for (int i = 0; i < frames.count; i++) {
+            frameAt[frames.offsets[i]] = i;
+        }
+        this.catchTypes = new int[exceptionTable.length / 4];
+    }
+
+    /**
+     * メソッドを検査します。
+     * @throws VerifyError 型検査に失敗した場合
+     */
+    void check() {
+        checkExceptionTable();
+        boolean[] boundaries = new boolean[codeLength + 1];
+        int next = 0;
+        // 直前の命令から実行が継続する場合true
+        boolean reachable = true;
+        pc = 0;
+        while (pc < codeLength) {
+            boundaries[pc] = true;
+            if (next < frames.count && frames.offsets[next] < pc) {
+                throw verifyError("スタックマップフレームが命令の境界にありません: " + frames.offsets[next]);
+            }
+            if (next < frames.count && frames.offsets[next] == pc) {
+                if (reachable) {
+                    checkFrame(next);
+                }
+                loadFrame(next);
+                next++;
+            } else if (!reachable) {
+                throw verifyError("無条件分岐の後にスタックマップフレームがありません");
+            }
+            checkHandlers();
+            reachable = execute(u1(pc));
+        }
+        if (reachable) {
+            throw verifyError("バイトコードの末尾を超えて実行が継続します");
+        }
+        if (next < frames.count) {
+            throw verifyError("スタックマップフレームが命令の境界にありません: " + frames.offsets[next]);
+        }
+        boundaries[codeLength] = true;
+        for (int i = 0; i < exceptionTable.length; i += 4) {
+            if (!boundaries[exceptionTable[i]] || !boundaries[exceptionTable[i + 1]]) {
+                throw verifyError("例外ハンドラの範囲が命令の境界にありません: " + exceptionTable[i] + "-" + exceptionTable[i + 1]);
+            }
+        }
+        for (int i = 0; i < frames.newOffsetCount; i++) {
+            int offset = frames.newOffsets[i];
+            if (!boundaries[offset] || u1(offset) != Opcode.NEW) {
+                throw verifyError("未初期化の型がnew命令を指していません: " + offset);
+            }
+        }
+    }
+
+    private void checkExceptionTable() {
+        for (int i = 0; i < exceptionTable.length; i += 4) {
+            int startPc = exceptionTable[i];
+            int endPc = exceptionTable[i + 1];
+            int handlerPc = exceptionTable[i + 2];
+            if (startPc >= endPc || endPc > codeLength || handlerPc >= codeLength) {
+                throw verifyError("例外ハンドラの範囲が不正です: " + startPc + "-" + endPc);
+            }
+            int catchType = exceptionTable[i + 3] == 0
+                    ? verifier.objectType(TypeCheckingVerifier.THROWABLE)
+                    : verifier.objectType(constantPool.className(exceptionTable[i + 3]));
+            if (!verifier.isAssignable(catchType, verifier.objectType(TypeCheckingVerifier.THROWABLE))) {
+                throw verifyError("例外ハンドラが捕捉する型がThrowableではありません: " + verifier.nameOf(catchType));
+            }
+            catchTypes[i / 4] = catchType;
+            frameIndex(handlerPc);
+        }
+    }
+
+    /**
+     * 検査中の命令を範囲に含む例外ハンドラについて、現在のローカル変数で入口のフレームに代入できることを確認します。
+     */
+    private void checkHandlers() {
+        for (int i = 0; i < exceptionTable.length; i += 4) {
+            if (pc < exceptionTable[i] || pc >= exceptionTable[i + 1]) {
+                continue;
+            }
+            int frame = frameIndex(exceptionTable[i + 2]);
+            checkLocals(frame);
+            int[] target = frames.stacks[frame];
+            if (target.length != 1 || !verifier.isAssignable(catchTypes[i / 4], target[0])) {
+                throw verifyError("例外ハンドラのスタックマップフレームのオペランドスタックが不正です: " + exceptionTable[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * 現在の型がフレームの型に代入できることを確認します。
+     */
+    private void checkFrame(int frame) {
+        checkLocals(frame);
+        int[] target = frames.stacks[frame];
+        if (target.length != sp) {
+            throw verifyError("オペランドスタックの深さがスタックマップフレームと一致しません: " + frames.offsets[frame]);
+        }
+        for (int i = 0; i < sp; i++) {
+            if (!verifier.isAssignable(stack[i], target[i])) {
+                throw verifyError("オペランドスタックの型がスタックマップフレームと一致しません: " + frames.offsets[frame]);
+            }
+        }
+    }
+
+    private void checkLocals(int frame) {
+        int[] target = frames.locals[frame];
+        for (int i = 0; i < locals.length; i++) {
+            if (!verifier.isAssignable(locals[i], target[i])) {
+                throw verifyError("ローカル変数" + i + "の型がスタックマップフレームと一致しません: " + frames.offsets[frame]);
+            }
+        }
+        if (thisUninit && !frames.thisUninit[frame]) {
+            throw verifyError("未初期化のthisがスタックマップフレームと一致しません: " + frames.offsets[frame]);
+        }
+    }
+
+    private void loadFrame(int frame) {
+        System.arraycopy(frames.locals[frame], 0, locals, 0, locals.length);
+        int[] target = frames.stacks[frame];
+        System.arraycopy(target, 0, stack, 0, target.length);
+        sp = target.length;
+        thisUninit = frames.thisUninit[frame];
+    }
+
+    /**
+     * 分岐先のフレームを確認します。
+     */
+    private void branch(int target) {
+        checkFrame(frameIndex(target));
+    }
+
+    private int frameIndex(int target) {
+        int frame = target >= 0 && target < codeLength ? frameAt[target] : -1;
+        if (frame < 0) {
+            throw verifyError("分岐先にスタックマップフレームがありません: " + target);
+        }
+        return frame;
+    }
+
+    /**
+     * 命令を検査して型を更新し、pcを次の命令へ進めます。
+     * @return 次の命令へ実行が継続する場合true
+     */
+    private boolean execute(int opcode) {
+        int next = pc + 1;
+        switch (opcode) {
+            case Opcode.NOP:
+                break;
+            case Opcode.ACONST_NULL:
+                push(VerificationType.NULL);
+                break;
+            case Opcode.ICONST_M1:
+            case Opcode.ICONST_0:
+            case Opcode.ICONST_1:
+            case Opcode.ICONST_2:
+            case Opcode.ICONST_3:
+            case Opcode.ICONST_4:
+            case Opcode.ICONST_5:
+                push(VerificationType.INTEGER);
+                break;
+            case Opcode.LCONST_0:
+            case Opcode.LCONST_1:
+                push(VerificationType.LONG);
+                break;
+            case Opcode.FCONST_0:
+            case Opcode.FCONST_1:
+            case Opcode.FCONST_2:
+                push(VerificationType.FLOAT);
+                break;
+            case Opcode.DCONST_0:
+            case Opcode.DCONST_1:
+                push(VerificationType.DOUBLE);
+                break;
+            case Opcode.BIPUSH:
+                push(VerificationType.INTEGER);
+                next = pc + 2;
+                break;
+            case Opcode.SIPUSH:
+                push(VerificationType.INTEGER);
+                next = pc + 3;
+                break;
+            case Opcode.LDC:
+                push(constantType(u1(pc + 1), false));
+                next = pc + 2;
+                break;
+            case Opcode.LDC_W:
+                push(constantType(u2(pc + 1), false));
+                next = pc + 3;
+                break;
+            case Opcode.LDC2_W:
+                push(constantType(u2(pc + 1), true));
+                next = pc + 3;
+                break;
+            case Opcode.ILOAD:
+            case Opcode.LLOAD:
+            case Opcode.FLOAD:
+            case Opcode.DLOAD:
+            case Opcode.ALOAD:
+                load(opcode - Opcode.ILOAD, u1(pc + 1));
+                next = pc + 2;
+                break;
+            case Opcode.ILOAD_0:
+            case Opcode.ILOAD_1:
+            case Opcode.ILOAD_2:
+            case Opcode.ILOAD_3:
+            case Opcode.LLOAD_0:
+            case Opcode.LLOAD_1:
+            case Opcode.LLOAD_2:
+            case Opcode.LLOAD_3:
+            case Opcode.FLOAD_0:
+            case Opcode.FLOAD_1:
+            case Opcode.FLOAD_2:
+            case Opcode.FLOAD_3:
+            case Opcode.DLOAD_0:
+            case Opcode.DLOAD_1:
+            case Opcode.DLOAD_2:
+            case Opcode.DLOAD_3:
+            case Opcode.ALOAD_0:
+            case Opcode.ALOAD_1:
+            case Opcode.ALOAD_2:
+            case Opcode.ALOAD_3:
+                load((opcode - Opcode.ILOAD_0) / 4, (opcode - Opcode.ILOAD_0) % 4);
+                break;
+            case Opcode.IALOAD:
+                arrayLoad("[I", VerificationType.INTEGER);
+                break;
+            case Opcode.LALOAD:
+                arrayLoad("[J", VerificationType.LONG);
+                break;
+            case Opcode.FALOAD:
+                arrayLoad("[F", VerificationType.FLOAT);
+                break;
+            case Opcode.DALOAD:
+                arrayLoad("[D", VerificationType.DOUBLE);
+                break;
+            case Opcode.AALOAD:
+                arrayLoad(null, 0);
+                break;
+            case Opcode.BALOAD:
+                arrayLoad("[B", VerificationType.INTEGER);
+                break;
+            case Opcode.CALOAD:
+                arrayLoad("[C", VerificationType.INTEGER);
+                break;
+            case Opcode.SALOAD:
+                arrayLoad("[S", VerificationType.INTEGER);
+                break;
+            case Opcode.ISTORE:
+            case Opcode.LSTORE:
+            case Opcode.FSTORE:
+            case Opcode.DSTORE:
+            case Opcode.ASTORE:
+                store(opcode - Opcode.ISTORE, u1(pc + 1));
+                next = pc + 2;
+                break;
+            case Opcode.ISTORE_0:
+            case Opcode.ISTORE_1:
+            case Opcode.ISTORE_2:
+            case Opcode.ISTORE_3:
+            case Opcode.LSTORE_0:
+            case Opcode.LSTORE_1:
+            case Opcode.LSTORE_2:
+            case Opcode.LSTORE_3:
+            case Opcode.FSTORE_0:
+            case Opcode.FSTORE_1:
+            case Opcode.FSTORE_2:
+            case Opcode.FSTORE_3:
+            case Opcode.DSTORE_0:
+            case Opcode.DSTORE_1:
+            case Opcode.DSTORE_2:
+            case Opcode.DSTORE_3:
+            case Opcode.ASTORE_0:
+            case Opcode.ASTORE_1:
+            case Opcode.ASTORE_2:
+            case Opcode.ASTORE_3:
+                store((opcode - Opcode.ISTORE_0) / 4, (opcode - Opcode.ISTORE_0) % 4);
+                break;
+            case Opcode.IASTORE:
+                arrayStore("[I", VerificationType.INTEGER);
+                break;
+            case Opcode.LASTORE:
+                arrayStore("[J", VerificationType.LONG);
+                break;
+            case Opcode.FASTORE:
+                arrayStore("[F", VerificationType.FLOAT);
+                break;
+            case Opcode.DASTORE:
+                arrayStore("[D", VerificationType.DOUBLE);
+                break;
+            case Opcode.AASTORE:
+                arrayStore(null, 0);
+                break;
+            case Opcode.BASTORE:
+                arrayStore("[B", VerificationType.INTEGER);
+                break;
+            case Opcode.CASTORE:
+                arrayStore("[C", VerificationType.INTEGER);
+                break;
+            case Opcode.SASTORE:
+                arrayStore("[S", VerificationType.INTEGER);
+                break;
+            case Opcode.POP:
+                checkSlots(1, 1);
+                sp -= 1;
+                break;
+            case Opcode.POP2:
+                checkSlots(2, 2);
+                sp -= 2;
+                break;
+            case Opcode.DUP:
+                checkSlots(1, 1);
+                duplicate(1, 0);
+                break;
+            case Opcode.DUP_X1:
+                checkSlots(1, 2);
+                duplicate(1, 1);
+                break;
+            case Opcode.DUP_X2:
+                checkSlots(1, 3);
+                duplicate(1, 2);
+                break;
+            case Opcode.DUP2:
+                checkSlots(2, 2);
+                duplicate(2, 0);
+                break;
+            case Opcode.DUP2_X1:
+                checkSlots(2, 3);
+                duplicate(2, 1);
+                break;
+            case Opcode.DUP2_X2:
+                checkSlots(2, 4);
+                duplicate(2, 2);
+                break;
+            case Opcode.SWAP:
+                checkSlots(1, 2);
+                int top = stack[sp - 1];
+                stack[sp - 1] = stack[sp - 2];
+                stack[sp - 2] = top;
+                break;
+            case Opcode.IADD:
+            case Opcode.LADD:
+            case Opcode.FADD:
+            case Opcode.DADD:
+            case Opcode.ISUB:
+            case Opcode.LSUB:
+            case Opcode.FSUB:
+            case Opcode.DSUB:
+            case Opcode.IMUL:
+            case Opcode.LMUL:
+            case Opcode.FMUL:
+            case Opcode.DMUL:
+            case Opcode.IDIV:
+            case Opcode.LDIV:
+            case Opcode.FDIV:
+            case Opcode.DDIV:
+            case Opcode.IREM:
+            case Opcode.LREM:
+            case Opcode.FREM:
+            case Opcode.DREM:
+                binary(numericType(opcode - Opcode.IADD), numericType(opcode - Opcode.IADD));
+                break;
+            case Opcode.INEG:
+            case Opcode.LNEG:
+            case Opcode.FNEG:
+            case Opcode.DNEG:
+                convert(numericType(opcode - Opcode.INEG), numericType(opcode - Opcode.INEG));
+                break;
+            case Opcode.ISHL:
+            case Opcode.ISHR:
+            case Opcode.IUSHR:
+            case Opcode.IAND:
+            case Opcode.IOR:
+            case Opcode.IXOR:
+                binary(VerificationType.INTEGER, VerificationType.INTEGER);
+                break;
+            case Opcode.LSHL:
+            case Opcode.LSHR:
+            case Opcode.LUSHR:
+                pop(VerificationType.INTEGER);
+                convert(VerificationType.LONG, VerificationType.LONG);
+                break;
+            case Opcode.LAND:
+            case Opcode.LOR:
+            case Opcode.LXOR:
+                binary(VerificationType.LONG, VerificationType.LONG);
+                break;
+            case Opcode.IINC:
+                local(u1(pc + 1), VerificationType.INTEGER);
+                next = pc + 3;
+                break;
+            case Opcode.I2L:
+                convert(VerificationType.INTEGER, VerificationType.LONG);
+                break;
+            case Opcode.I2F:
+                convert(VerificationType.INTEGER, VerificationType.FLOAT);
+                break;
+            case Opcode.I2D:
+                convert(VerificationType.INTEGER, VerificationType.DOUBLE);
+                break;
+            case Opcode.L2I:
+                convert(VerificationType.LONG, VerificationType.INTEGER);
+                break;
+            case Opcode.L2F:
+                convert(VerificationType.LONG, VerificationType.FLOAT);
+                break;
+            case Opcode.L2D:
+                convert(VerificationType.LONG, VerificationType.DOUBLE);
+                break;
+            case Opcode.F2I:
+                convert(VerificationType.FLOAT, VerificationType.INTEGER);
+                break;
+            case Opcode.F2L:
+                convert(VerificationType.FLOAT, VerificationType.LONG);
+                break;
+            case Opcode.F2D:
+                convert(VerificationType.FLOAT, VerificationType.DOUBLE);
+                break;
+            case Opcode.D2I:
+                convert(VerificationType.DOUBLE, VerificationType.INTEGER);
+                break;
+            case Opcode.D2L:
+                convert(VerificationType.DOUBLE, VerificationType.LONG);
+                break;
+            case Opcode.D2F:
+                convert(VerificationType.DOUBLE, VerificationType.FLOAT);
+                break;
+            case Opcode.I2B:
+            case Opcode.I2C:
+            case Opcode.I2S:
+                convert(VerificationType.INTEGER, VerificationType.INTEGER);
+                break;
+            case Opcode.LCMP:
+                binary(VerificationType.LONG, VerificationType.INTEGER);
+                break;
+            case Opcode.FCMPL:
+            case Opcode.FCMPG:
+                binary(VerificationType.FLOAT, VerificationType.INTEGER);
+                break;
+            case Opcode.DCMPL:
+            case Opcode.DCMPG:
+                binary(VerificationType.DOUBLE, VerificationType.INTEGER);
+                break;
+            case Opcode.IFEQ:
+            case Opcode.IFNE:
+            case Opcode.IFLT:
+            case Opcode.IFGE:
+            case Opcode.IFGT:
+            case Opcode.IFLE:
+                pop(VerificationType.INTEGER);
+                branch(pc + s2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.IF_ICMPEQ:
+            case Opcode.IF_ICMPNE:
+            case Opcode.IF_ICMPLT:
+            case Opcode.IF_ICMPGE:
+            case Opcode.IF_ICMPGT:
+            case Opcode.IF_ICMPLE:
+                pop(VerificationType.INTEGER);
+                pop(VerificationType.INTEGER);
+                branch(pc + s2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.IF_ACMPEQ:
+            case Opcode.IF_ACMPNE:
+                popReference();
+                popReference();
+                branch(pc + s2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.IFNULL:
+            case Opcode.IFNONNULL:
+                popReference();
+                branch(pc + s2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.GOTO:
+                branch(pc + s2(pc + 1));
+                pc += 3;
+                return false;
+            case Opcode.GOTO_W:
+                branch(pc + s4(pc + 1));
+                pc += 5;
+                return false;
+            case Opcode.TABLESWITCH:
+                pc = tableSwitch();
+                return false;
+            case Opcode.LOOKUPSWITCH:
+                pc = lookupSwitch();
+                return false;
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.FRETURN:
+            case Opcode.DRETURN:
+                int expected = numericType(opcode - Opcode.IRETURN);
+                if (returnType != expected) {
+                    throw verifyError("戻り値の型がメソッド記述子と一致しません");
+                }
+                pop(expected);
+                pc += 1;
+                return false;
+            case Opcode.ARETURN:
+                if (!VerificationType.isObject(returnType)) {
+                    throw verifyError("戻り値の型がメソッド記述子と一致しません");
+                }
+                popAssignable(returnType);
+                pc += 1;
+                return false;
+            case Opcode.RETURN:
+                if (returnType != -1) {
+                    throw verifyError("戻り値の型がメソッド記述子と一致しません");
+                }
+                if (constructor && thisUninit) {
+                    throw verifyError("スーパークラスのコンストラクタを呼び出さずにコンストラクタから戻ります");
+                }
+                pc += 1;
+                return false;
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+                field(opcode, u2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKESTATIC:
+                invoke(opcode, u2(pc + 1));
+                next = pc + 3;
+                break;
+            case Opcode.INVOKEINTERFACE:
+            case Opcode.INVOKEDYNAMIC:
+                invoke(opcode, u2(pc + 1));
+                next = pc + 5;
+                break;
+            case Opcode.NEW:
+                String created = constantPool.className(u2(pc + 1));
+                if (created.charAt(0) == '[') {
+                    throw verifyError("newで配列は生成できません: " + created);
+                }
+                push(VerificationType.uninitialized(pc));
+                next = pc + 3;
+                break;
+            case Opcode.NEWARRAY:
+                pop(VerificationType.INTEGER);
+                push(verifier.objectType(primitiveArray(u1(pc + 1))));
+                next = pc + 2;
+                break;
+            case Opcode.ANEWARRAY:
+                String element = constantPool.className(u2(pc + 1));
+                pop(VerificationType.INTEGER);
+                push(verifier.objectType(element.charAt(0) == '[' ? "[" + element : "[L" + element + ";"));
+                next = pc + 3;
+                break;
+            case Opcode.MULTIANEWARRAY:
+                String arrayName = constantPool.className(u2(pc + 1));
+                int dimensions = u1(pc + 3);
+                if (dimensions == 0 || dimensions > arrayName.length() || !arrayName.startsWith("[".repeat(dimensions))) {
+                    throw verifyError("multianewarrayの次元数が不正です: " + arrayName + " " + dimensions);
+                }
+                for (int i = 0; i < dimensions; i++) {
+                    pop(VerificationType.INTEGER);
+                }
+                push(verifier.objectType(arrayName));
+                next = pc + 4;
+                break;
+            case Opcode.ARRAYLENGTH:
+                int array = popCategory1();
+                if (array != VerificationType.NULL && !isArray(array)) {
+                    throw verifyError("arraylengthのオペランドが配列ではありません");
+                }
+                push(VerificationType.INTEGER);
+                break;
+            case Opcode.ATHROW:
+                popAssignable(verifier.objectType(TypeCheckingVerifier.THROWABLE));
+                pc += 1;
+                return false;
+            case Opcode.CHECKCAST:
+                popInitialized();
+                push(verifier.objectType(constantPool.className(u2(pc + 1))));
+                next = pc + 3;
+                break;
+            case Opcode.INSTANCEOF:
+                constantPool.className(u2(pc + 1));
+                popInitialized();
+                push(VerificationType.INTEGER);
+                next = pc + 3;
+                break;
+            case Opcode.MONITORENTER:
+            case Opcode.MONITOREXIT:
+                popInitialized();
+                break;
+            case Opcode.WIDE:
+                next = wide(u1(pc + 1));
+                break;
+            default:
+                // jsrとretはStackMapTable属性による検証では使用できない（JVMS 4.9.1）
+                throw verifyError("検証できないオペコードです: " + Opcode.mnemonic(opcode));
+        }
+        pc = next;
+        return true;
+    }
+
+    private int wide(int opcode) {
+        int index = u2(pc + 2);
+        switch (opcode) {
+            case Opcode.ILOAD:
+            case Opcode.LLOAD:
+            case Opcode.FLOAD:
+            case Opcode.DLOAD:
+            case Opcode.ALOAD:
+                load(opcode - Opcode.ILOAD, index);
+                return pc + 4;
+            case Opcode.ISTORE:
+            case Opcode.LSTORE:
+            case Opcode.FSTORE:
+            case Opcode.DSTORE:
+            case Opcode.ASTORE:
+                store(opcode - Opcode.ISTORE, index);
+                return pc + 4;
+            case Opcode.IINC:
+                local(index, VerificationType.INTEGER);
+                return pc + 6;
+            default:
+                throw verifyError("wideで修飾できない命令です: " + Opcode.mnemonic(opcode));
+        }
+    }
+
+    /**
+     * 種類の番号（0: int, 1: long, 2: float, 3: double, 4: 参照）に対応する型を返します。
+     */
+    private static int numericType(int kind) {
+        switch (kind % 4) {
+            case 0:
+                return VerificationType.INTEGER;
+            case 1:
+                return VerificationType.LONG;
+            case 2:
+                return VerificationType.FLOAT;
+            default:
+                return VerificationType.DOUBLE;
+        }
+    }
+
+    private void load(int kind, int index) {
+        if (kind == 4) {
+            checkLocalIndex(index, 1);
+            int type = locals[index];
+            if (!VerificationType.isReference(type)) {
+                throw verifyError("ローカル変数" + index + "が参照型ではありません");
+            }
+            push(type);
+        } else {
+            int type = numericType(kind);
+            local(index, type);
+            push(type);
+        }
+    }
+
+    /**
+     * ローカル変数の型を確認します。
+     */
+    private void local(int index, int type) {
+        int slots = VerificationType.isCategory2(type) ? 2 : 1;
+        checkLocalIndex(index, slots);
+        if (locals[index] != type || (slots == 2 && locals[index + 1] != VerificationType.TOP)) {
+            throw verifyError("ローカル変数" + index + "の型が一致しません");
+        }
+    }
+
+    private void store(int kind, int index) {
+        int type;
+        if (kind == 4) {
+            // returnAddressはjsrを使用できないため現れない
+            type = popCategory1();
+            if (!VerificationType.isReference(type)) {
+                throw verifyError("astoreのオペランドが参照型ではありません");
+            }
+        } else {
+            type = numericType(kind);
+            pop(type);
+        }
+        int slots = VerificationType.isCategory2(type) ? 2 : 1;
+        checkLocalIndex(index, slots);
+        setLocal(index, type);
+        // 書き込んだ後のローカル変数でも例外ハンドラのフレームを満たす必要がある
+        checkHandlers();
+    }
+
+    /**
+     * ローカル変数に型を設定し、次のローカル変数の番号を返します。
+     * 2スロットの値の片方を上書きした場合、残った片方はtopにします。
+     */
+    private int setLocal(int index, int type) {
+        int slots = VerificationType.isCategory2(type) ? 2 : 1;
+        if (index + slots > locals.length) {
+            throw verifyError("引数がmax_localsに収まりません");
+        }
+        if (index > 0 && VerificationType.isCategory2(locals[index - 1])) {
+            locals[index - 1] = VerificationType.TOP;
+        }
+        locals[index] = type;
+        if (slots == 2) {
+            locals[index + 1] = VerificationType.TOP;
+        }
+        return index + slots;
+    }
+
+    private void checkLocalIndex(int index, int slots) {
+        if (index + slots > locals.length) {
+            throw verifyError("ローカル変数の番号が範囲外です: " + index);
+        }
+    }
+
+    private void arrayLoad(String arrayName, int elementType) {
+        pop(VerificationType.INTEGER);
+        int array = popCategory1();
+        if (arrayName == null) {
+            // aaload: 要素の型は配列の型から決まる
+            if (array == VerificationType.NULL) {
+                push(VerificationType.NULL);
+                return;
+            }
+            if (!isArray(array) || !TypeCheckingVerifier.isReferenceDescriptor(verifier.nameOf(array).charAt(1))) {
+                throw verifyError("aaloadのオペランドが参照型の配列ではありません");
+            }
+            push(verifier.objectType(TypeCheckingVerifier.componentName(verifier.nameOf(array))));
+            return;
+        }
+        checkPrimitiveArray(array, arrayName);
+        push(elementType);
+    }
+
+    private void arrayStore(String arrayName, int elementType) {
+        if (arrayName == null) {
+            // aastore: 要素の型の互換性は実行時に検査する
+            popInitialized();
+            pop(VerificationType.INTEGER);
+            int array = popCategory1();
+            if (array != VerificationType.NULL
+                    && (!isArray(array) || !TypeCheckingVerifier.isReferenceDescriptor(verifier.nameOf(array).charAt(1)))) {
+                throw verifyError("aastoreのオペランドが参照型の配列ではありません");
+            }
+            return;
+        }
+        pop(elementType);
+        pop(VerificationType.INTEGER);
+        checkPrimitiveArray(popCategory1(), arrayName);
+    }
+
+    private void checkPrimitiveArray(int array, String arrayName) {
+        if (array == VerificationType.NULL) {
+            return;
+        }
+        String name = isArray(array) ? verifier.nameOf(array) : null;
+        // baload/bastoreはbooleanの配列にも使用する
+        if (!arrayName.equals(name) && !(arrayName.equals("[B") && "[Z".equals(name))) {
+            throw verifyError("配列の型が命令と一致しません: " + arrayName);
+        }
+    }
+
+    private boolean isArray(int type) {
+        return VerificationType.isObject(type) && verifier.nameOf(type).charAt(0) == '[';
+    }
+
+    private static String primitiveArray(int elementType) {
+        switch (elementType) {
+            case 4:
+                return "[Z";
+            case 5:
+                return "[C";
+            case 6:
+                return "[F";
+            case 7:
+                return "[D";
+            case 8:
+                return "[B";
+            case 9:
+                return "[S";
+            case 10:
+                return "[I";
+            case 11:
+                return "[J";
+            default:
+                throw new VerifyError("newarrayの要素型が不正です: " + elementType);
+        }
+    }
+
+    /**
+     * スタックの上から {@code moved} スロットを複製し、その下の {@code skipped} スロットの下に挿入します。
+     */
+    private void duplicate(int moved, int skipped) {
+        if (sp + moved > maxStack) {
+            throw verifyError("オペランドスタックがmax_stackを超えます");
+        }
+        int base = sp - moved - skipped;
+        System.arraycopy(stack, base, stack, base + moved, moved + skipped);
+        System.arraycopy(stack, base + moved + skipped, stack, base, moved);
+        sp += moved;
+    }
+
+    /**
+     * スタックの上から {@code first} スロットと {@code depth} スロットの位置が、2スロットの値を分断しないことを確認します。
+     * スタックのtopは2スロットの値の2スロット目だけなので、境界の直上のスロットがtopでなければよい。
+     */
+    private void checkSlots(int first, int depth) {
+        if (sp < depth) {
+            throw verifyError("オペランドスタックが空です");
+        }
+        if (stack[sp - first] == VerificationType.TOP || stack[sp - depth] == VerificationType.TOP) {
+            throw verifyError("2スロットの値を分割して操作しています");
+        }
+    }
+
+    private void binary(int operandType, int resultType) {
+        pop(operandType);
+        pop(operandType);
+        push(resultType);
+    }
+
+    private void convert(int operandType, int resultType) {
+        pop(operandType);
+        push(resultType);
+    }
+
+    private int constantType(int index, boolean wide) {
+        int tag = constantPool.tag(index);
+        int type;
+        switch (tag) {
+            case ConstantInfo.CONSTANT_Integer:
+                type = VerificationType.INTEGER;
+                break;
+            case ConstantInfo.CONSTANT_Float:
+                type = VerificationType.FLOAT;
+                break;
+            case ConstantInfo.CONSTANT_Long:
+                type = VerificationType.LONG;
+                break;
+            case ConstantInfo.CONSTANT_Double:
+                type = VerificationType.DOUBLE;
+                break;
+            case ConstantInfo.CONSTANT_String:
+                type = verifier.objectType("java/lang/String");
+                break;
+            case ConstantInfo.CONSTANT_Class:
+                type = verifier.objectType("java/lang/Class");
+                break;
+            case ConstantInfo.CONSTANT_MethodType:
+                type = verifier.objectType("java/lang/invoke/MethodType");
+                break;
+            case ConstantInfo.CONSTANT_MethodHandle:
+                type = verifier.objectType("java/lang/invoke/MethodHandle");
+                break;
+            case ConstantInfo.CONSTANT_Dynamic:
+                type = verifier.fieldType(constantPool.utf8(constantPool.descriptorIndex(constantPool.nameAndTypeOf(index))));
+                break;
+            default:
+                throw verifyError("ldcで読み込めない定数です: #" + index);
+        }
+        if (VerificationType.isCategory2(type) != wide) {
+            throw verifyError((wide ? "ldc2_w" : "ldc") + "で読み込めない定数です: #" + index);
+        }
+        return type;
+    }
+
+    private void field(int opcode, int index) {
+        if (constantPool.tag(index) != ConstantInfo.CONSTANT_Fieldref) {
+            throw verifyError("フィールド参照ではありません: #" + index);
+        }
+        int nameAndType = constantPool.nameAndTypeOf(index);
+        String name = constantPool.utf8(constantPool.nameIndex(nameAndType));
+        String descriptor = constantPool.utf8(constantPool.descriptorIndex(nameAndType));
+        int type = verifier.fieldType(descriptor);
+        String owner = constantPool.className(constantPool.memberClassIndex(index));
+        switch (opcode) {
+            case Opcode.GETSTATIC:
+                push(type);
+                break;
+            case Opcode.PUTSTATIC:
+                popAssignable(type);
+                break;
+            case Opcode.GETFIELD:
+                popAssignable(verifier.objectType(owner));
+                push(type);
+                break;
+            default:
+                popAssignable(type);
+                int receiver = popCategory1();
+                if (receiver == VerificationType.UNINITIALIZED_THIS) {
+                    // スーパークラスのコンストラクタを呼び出す前は、このクラスで宣言したフィールドにだけ代入できる
+                    if (!owner.equals(verifier.className()) || !declaresField(name, descriptor)) {
+                        throw verifyError("未初期化のthisのフィールドに代入できません: " + name);
+                    }
+                } else if (!verifier.isAssignable(receiver, verifier.objectType(owner))) {
+                    throw verifyError("putfieldのオブジェクトの型が不正です: " + owner);
+                }
+                break;
+        }
+    }
+
+    private boolean declaresField(String name, String descriptor) {
+        ClassFile classFile = verifier.classFile();
+        for (FieldInfo field : classFile.getFields()) {
+            if (field.getName().toString().equals(name) && field.getDescriptor().toString().equals(descriptor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invoke(int opcode, int index) {
+        int tag = constantPool.tag(index);
+        boolean validTag;
+        switch (opcode) {
+            case Opcode.INVOKEVIRTUAL:
+                validTag = tag == ConstantInfo.CONSTANT_Methodref;
+                break;
+            case Opcode.INVOKEINTERFACE:
+                validTag = tag == ConstantInfo.CONSTANT_InterfaceMethodref;
+                break;
+            case Opcode.INVOKEDYNAMIC:
+                validTag = tag == ConstantInfo.CONSTANT_InvokeDynamic;
+                break;
+            default:
+                validTag = tag == ConstantInfo.CONSTANT_Methodref || tag == ConstantInfo.CONSTANT_InterfaceMethodref;
+                break;
+        }
+        if (!validTag) {
+            throw verifyError(Opcode.mnemonic(opcode) + "の定数の種類が不正です: #" + index);
+        }
+        int nameAndType = constantPool.nameAndTypeOf(index);
+        String name = constantPool.utf8(constantPool.nameIndex(nameAndType));
+        int[] signature = verifier.signature(constantPool.utf8(constantPool.descriptorIndex(nameAndType)));
+        boolean initializer = name.equals("<init>");
+        if (name.charAt(0) == '<' && !(initializer && opcode == Opcode.INVOKESPECIAL)) {
+            throw verifyError("呼び出せないメソッドです: " + name);
+        }
+        if (opcode == Opcode.INVOKEINTERFACE) {
+            int slots = 1;
+            for (int i = 0; i < signature.length - 1; i++) {
+                slots += VerificationType.isCategory2(signature[i]) ? 2 : 1;
+            }
+            if (u1(pc + 3) != slots || u1(pc + 4) != 0) {
+                throw verifyError("invokeinterfaceのオペランドが不正です");
+            }
+        } else if (opcode == Opcode.INVOKEDYNAMIC && u2(pc + 3) != 0) {
+            throw verifyError("invokedynamicのオペランドが不正です");
+        }
+
+        for (int i = signature.length - 2; i >= 0; i--) {
+            popAssignable(signature[i]);
+        }
+        if (opcode != Opcode.INVOKESTATIC && opcode != Opcode.INVOKEDYNAMIC) {
+            String owner = constantPool.className(constantPool.memberClassIndex(index));
+            if (initializer) {
+                initialize(owner, popCategory1(), signature);
+            } else {
+                int receiver = popCategory1();
+                if (receiver != VerificationType.NULL && !VerificationType.isObject(receiver)) {
+                    throw verifyError("初期化されていないオブジェクトのメソッドは呼び出せません: " + name);
+                }
+                // インターフェースのメソッドのレシーバはjava/lang/Objectとして扱う
+                int expected = opcode == Opcode.INVOKESPECIAL ? verifier.objectType(verifier.className())
+                        : opcode == Opcode.INVOKEVIRTUAL ? verifier.objectType(owner)
+                        : verifier.objectType(TypeCheckingVerifier.OBJECT);
+                if (!verifier.isAssignable(receiver, expected)) {
+                    throw verifyError("レシーバの型が不正です: " + name);
+                }
+            }
+        }
+        int result = signature[signature.length - 1];
+        if (result != -1) {
+            push(result);
+        }
+    }
+
+    /**
+     * コンストラクタの呼び出しで、未初期化のオブジェクトを初期化済みの型に置き換えます。
+     */
+    private void initialize(String owner, int receiver, int[] signature) {
+        if (signature[signature.length - 1] != -1) {
+            throw verifyError("コンストラクタの戻り値がvoidではありません");
+        }
+        int initialized;
+        if (receiver == VerificationType.UNINITIALIZED_THIS) {
+            if (!owner.equals(verifier.className()) && !owner.equals(verifier.superName())) {
+                throw verifyError("thisに対して呼び出せないコンストラクタです: " + owner);
+            }
+            initialized = verifier.objectType(verifier.className());
+            thisUninit = false;
+        } else if (VerificationType.isUninitialized(receiver)) {
+            int newPc = VerificationType.value(receiver);
+            if (u1(newPc) != Opcode.NEW || !constantPool.className(u2(newPc + 1)).equals(owner)) {
+                throw verifyError("new命令で生成したクラスと異なるコンストラクタです: " + owner);
+            }
+            initialized = verifier.objectType(owner);
+        } else {
+            throw verifyError("初期化済みのオブジェクトに対してコンストラクタを呼び出せません");
+        }
+        for (int i = 0; i < locals.length; i++) {
+            if (locals[i] == receiver) {
+                locals[i] = initialized;
+            }
+        }
+        for (int i = 0; i < sp; i++) {
+            if (stack[i] == receiver) {
+                stack[i] = initialized;
+            }
+        }
+    }
+
+    private int tableSwitch() {
+        pop(VerificationType.INTEGER);
+        int base = (pc + 4) & ~3;
+        int low = s4(base + 4);
+        int high = s4(base + 8);
+        if (low > high) {
+            throw verifyError("tableswitchの範囲が不正です: " + low + "-" + high);
+        }
+        long end = base + 12 + ((long) high - low + 1) * 4;
+        if (end > codeLength) {
+            throw verifyError("命令がバイトコードの末尾を超えています");
+        }
+        branch(pc + s4(base));
+        for (int offset = base + 12; offset < end; offset += 4) {
+            branch(pc + s4(offset));
+        }
+        return (int) end;
+    }
+
+    private int lookupSwitch() {
+        pop(VerificationType.INTEGER);
+        int base = (pc + 4) & ~3;
+        int pairs = s4(base + 4);
+        if (pairs < 0) {
+            throw verifyError("lookupswitchの組の数が不正です: " + pairs);
+        }
+        long end = base + 8 + (long) pairs * 8;
+        if (end > codeLength) {
+            throw verifyError("命令がバイトコードの末尾を超えています");
+        }
+        branch(pc + s4(base));
+        for (int i = 0; i < pairs; i++) {
+            int offset = base + 8 + i * 8;
+            if (i > 0 && s4(offset) <= s4(offset - 8)) {
+                throw verifyError("lookupswitchのキーが昇順ではありません");
+            }
+            branch(pc + s4(offset + 4));
+        }
+        return (int) end;
+    }
+
+    private void push(int type) {
+        int slots = VerificationType.isCategory2(type) ? 2 : 1;
+        if (sp + slots > maxStack) {
+            throw verifyError("オペランドスタックがmax_stackを超えます");
+        }
+        stack[sp++] = type;
+        if (slots == 2) {
+            stack[sp++] = VerificationType.TOP;
+        }
+    }
+
+    /**
+     * 1スロットの値を取り出します。
+     */
+    private int popCategory1() {
+        if (sp == 0) {
+            throw verifyError("オペランドスタックが空です");
+        }
+        int type = stack[--sp];
+        if (type == VerificationType.TOP) {
+            throw verifyError("2スロットの値を分割して操作しています");
+        }
+        return type;
+    }
+
+    /**
+     * 基本型の値を取り出し、型が一致することを確認します。
+     */
+    private void pop(int type) {
+        if (VerificationType.isCategory2(type)) {
+            if (sp < 2 || stack[sp - 1] != VerificationType.TOP || stack[sp - 2] != type) {
+                throw verifyError("オペランドスタックの型が一致しません");
+            }
+            sp -= 2;
+        } else if (popCategory1() != type) {
+            throw verifyError("オペランドスタックの型が一致しません");
+        }
+    }
+
+    /**
+     * 値を取り出し、型に代入できることを確認します。
+     */
+    private void popAssignable(int type) {
+        if (!VerificationType.isObject(type)) {
+            pop(type);
+        } else if (!verifier.isAssignable(popCategory1(), type)) {
+            throw verifyError("オペランドスタックの型を" + verifier.nameOf(type) + "に代入できません");
+        }
+    }
+
+    private void popReference() {
+        if (!VerificationType.isReference(popCategory1())) {
+            throw verifyError("オペランドスタックの値が参照型ではありません");
+        }
+    }
+
+    /**
+     * 初期化済みの参照（またはnull）を取り出します。
+     */
+    private void popInitialized() {
+        int type = popCategory1();
+        if (type != VerificationType.NULL && !VerificationType.isObject(type)) {
+            throw verifyError("オペランドスタックの値が初期化済みの参照ではありません");
+        }
+    }
+
+    private int u1(int offset) {
+        if (offset >= codeLength) {
+            throw verifyError("命令がバイトコードの末尾を超えています");
+        }
+        return code.getCodeByte(offset);
+    }
+
+    private int u2(int offset) {
+        return (u1(offset) << 8) | u1(offset + 1);
+    }
+
+    private int s2(int offset) {
+        return (short) u2(offset);
+    }
+
+    private int s4(int offset) {
+        return (u2(offset) << 16) | u2(offset + 2);
+    }
+
+    private VerifyError verifyError(String message) {
+        return new VerifyError(message + " (" + verifier.className() + "." + method.getName() + method.getDescriptor()
+                + " pc=" + pc + ")");
+    }
+}
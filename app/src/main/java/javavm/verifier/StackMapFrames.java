@@ -0,0 +1,253 @@
+package javavm.verifier;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javavm.classfile.ConstantPool;
+
+/**
+ * StackMapTable属性を解析したフレームの一覧（JVMS 4.7.4）
+ *
+ * 差分で表現されたフレームを先頭から順に展開し、フレームごとにローカル変数（長さmax_locals、未使用はtop）と
+ * オペランドスタックの型を保持します。longとdoubleは2スロットに展開し、2スロット目をtopとします。
+ */
+final class StackMapFrames {
+    private static final int ITEM_TOP = 0;
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_FLOAT = 2;
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_LONG = 4;
+    private static final int ITEM_NULL = 5;
+    private static final int ITEM_UNINITIALIZED_THIS = 6;
+    private static final int ITEM_OBJECT = 7;
+    private static final int ITEM_UNINITIALIZED = 8;
+
+    /** フレームの数 */
+    final int count;
+    /** フレームのバイトコード上のオフセット（昇順） */
+    final int[] offsets;
+    final int[][] locals;
+    final int[][] stacks;
+    /** ローカル変数にuninitializedThisを含む（flagThisUninitが立つ）場合true */
+    final boolean[] thisUninit;
+    /** Uninitializedの型が参照するnew命令のオフセット（重複あり） */
+    final int[] newOffsets;
+    final int newOffsetCount;
+
+    private StackMapFrames(int count, int[] offsets, int[][] locals, int[][] stacks, boolean[] thisUninit,
+            int[] newOffsets, int newOffsetCount) {
+        this.count = count;
+        this.offsets = offsets;
+        this.locals = locals;
+        this.stacks = stacks;
+        this.thisUninit = thisUninit;
+        this.newOffsets = newOffsets;
+        this.newOffsetCount = newOffsetCount;
+    }
+
+    /**
+     * StackMapTable属性を解析します。
+     * @param in 属性の内容を先頭から読み取るバッファ。属性がない場合はnull（フレームなし）
+     * @param initialLocals メソッドの入口のローカル変数の型（長さmax_locals）
+     * @param initialSize 入口のフレームのローカル変数の数（スロット数）
+     * @param maxStack オペランドスタックの最大の深さ
+     * @param codeLength バイトコードの長さ
+     * @throws VerifyError 属性の形式や内容が不正な場合
+     */
+    static StackMapFrames parse(ByteBuffer in, int[] initialLocals, int initialSize, int maxStack, int codeLength,
+            TypeCheckingVerifier verifier, ConstantPool constantPool) {
+        if (in == null) {
+            return new StackMapFrames(0, new int[0], new int[0][], new int[0][], new boolean[0], new int[0], 0);
+        }
+        try {
+            int count = in.getShort() & 0xFFFF;
+            Parser parser = new Parser(in, count, initialLocals, initialSize, maxStack, codeLength, verifier, constantPool);
+            for (int i = 0; i < count; i++) {
+                parser.parseFrame(i);
+            }
+            if (in.hasRemaining()) {
+                throw new VerifyError("StackMapTable属性の末尾に余分なデータがあります");
+            }
+            return new StackMapFrames(count, parser.offsets, parser.frameLocals, parser.frameStacks, parser.thisUninit,
+                    parser.newOffsets, parser.newOffsetCount);
+        } catch (BufferUnderflowException e) {
+            throw new VerifyError("StackMapTable属性が途中で終わっています");
+        }
+    }
+
+    /**
+     * 差分を展開しながらフレームを読み取る状態
+     */
+    private static final class Parser {
+        private final ByteBuffer in;
+        private final int maxLocals;
+        private final int maxStack;
+        private final int codeLength;
+        private final TypeCheckingVerifier verifier;
+        private final ConstantPool constantPool;
+        final int[] offsets;
+        final int[][] frameLocals;
+        final int[][] frameStacks;
+        final boolean[] thisUninit;
+        int[] newOffsets = new int[4];
+        int newOffsetCount;
+        // 直前のフレームのローカル変数とその数（スロット数）
+        private int[] locals;
+        private int size;
+        private int offset = -1;
+        private int[] stack = new int[0];
+
+        Parser(ByteBuffer in, int count, int[] initialLocals, int initialSize, int maxStack, int codeLength,
+                TypeCheckingVerifier verifier, ConstantPool constantPool) {
+            this.in = in;
+            this.maxLocals = initialLocals.length;
+            this.maxStack = maxStack;
+            this.codeLength = codeLength;
+            this.verifier = verifier;
+            this.constantPool = constantPool;
+            this.offsets = new int[count];
+            this.frameLocals = new int[count][];
+            this.frameStacks = new int[count][];
+            this.thisUninit = new boolean[count];
+            this.locals = initialLocals;
+            this.size = initialSize;
+        }
+
+        void parseFrame(int index) {
+            int frameType = in.get() & 0xFF;
+            int delta;
+            int[] nextLocals = locals;
+            int[] nextStack = new int[0];
+            if (frameType < 64) {
+                // same_frame
+                delta = frameType;
+            } else if (frameType < 128) {
+                // same_locals_1_stack_item_frame
+                delta = frameType - 64;
+                nextStack = readStack(1);
+            } else if (frameType < 247) {
+                throw new VerifyError("予約されたフレームの種類です: " + frameType);
+            } else if (frameType == 247) {
+                // same_locals_1_stack_item_frame_extended
+                delta = in.getShort() & 0xFFFF;
+                nextStack = readStack(1);
+            } else if (frameType < 251) {
+                // chop_frame
+                delta = in.getShort() & 0xFFFF;
+                nextLocals = locals.clone();
+                for (int k = 251 - frameType; k > 0; k--) {
+                    if (size == 0) {
+                        throw new VerifyError("chop_frameで取り除くローカル変数がありません");
+                    }
+                    size -= size >= 2 && nextLocals[size - 1] == VerificationType.TOP
+                            && VerificationType.isCategory2(nextLocals[size - 2]) ? 2 : 1;
+                    Arrays.fill(nextLocals, size, maxLocals, VerificationType.TOP);
+                }
+            } else if (frameType == 251) {
+                // same_frame_extended
+                delta = in.getShort() & 0xFFFF;
+            } else if (frameType < 255) {
+                // append_frame
+                delta = in.getShort() & 0xFFFF;
+                nextLocals = locals.clone();
+                for (int k = frameType - 251; k > 0; k--) {
+                    size = readLocal(nextLocals, size);
+                }
+            } else {
+                // full_frame
+                delta = in.getShort() & 0xFFFF;
+                nextLocals = new int[maxLocals];
+                int localCount = in.getShort() & 0xFFFF;
+                size = 0;
+                for (int k = 0; k < localCount; k++) {
+                    size = readLocal(nextLocals, size);
+                }
+                nextStack = readStack(in.getShort() & 0xFFFF);
+            }
+
+            offset = offset < 0 ? delta : offset + delta + 1;
+            if (offset >= codeLength) {
+                throw new VerifyError("スタックマップフレームの位置がバイトコードの範囲外です: " + offset);
+            }
+            locals = nextLocals;
+            stack = nextStack;
+            offsets[index] = offset;
+            frameLocals[index] = locals;
+            frameStacks[index] = stack;
+            for (int i = 0; i < size; i++) {
+                if (locals[i] == VerificationType.UNINITIALIZED_THIS) {
+                    thisUninit[index] = true;
+                    break;
+                }
+            }
+        }
+
+        private int readLocal(int[] target, int position) {
+            int type = readType();
+            int slots = VerificationType.isCategory2(type) ? 2 : 1;
+            if (position + slots > maxLocals) {
+                throw new VerifyError("スタックマップフレームのローカル変数がmax_localsを超えます");
+            }
+            target[position] = type;
+            if (slots == 2) {
+                target[position + 1] = VerificationType.TOP;
+            }
+            return position + slots;
+        }
+
+        private int[] readStack(int count) {
+            int[] types = new int[Math.min(count * 2, maxStack + 2)];
+            int depth = 0;
+            for (int k = 0; k < count; k++) {
+                int type = readType();
+                if (type == VerificationType.TOP) {
+                    throw new VerifyError("スタックマップフレームのオペランドスタックにtopは置けません");
+                }
+                int slots = VerificationType.isCategory2(type) ? 2 : 1;
+                if (depth + slots > maxStack) {
+                    throw new VerifyError("スタックマップフレームのオペランドスタックがmax_stackを超えます");
+                }
+                types[depth++] = type;
+                if (slots == 2) {
+                    types[depth++] = VerificationType.TOP;
+                }
+            }
+            return Arrays.copyOf(types, depth);
+        }
+
+        private int readType() {
+            int tag = in.get() & 0xFF;
+            switch (tag) {
+                case ITEM_TOP:
+                    return VerificationType.TOP;
+                case ITEM_INTEGER:
+                    return VerificationType.INTEGER;
+                case ITEM_FLOAT:
+                    return VerificationType.FLOAT;
+                case ITEM_DOUBLE:
+                    return VerificationType.DOUBLE;
+                case ITEM_LONG:
+                    return VerificationType.LONG;
+                case ITEM_NULL:
+                    return VerificationType.NULL;
+                case ITEM_UNINITIALIZED_THIS:
+                    return VerificationType.UNINITIALIZED_THIS;
+                case ITEM_OBJECT:
+                    return verifier.objectType(constantPool.className(in.getShort() & 0xFFFF));
+                case ITEM_UNINITIALIZED:
+                    int newOffset = in.getShort() & 0xFFFF;
+                    if (newOffset >= codeLength) {
+                        throw new VerifyError("未初期化の型のnew命令の位置が範囲外です: " + newOffset);
+                    }
+                    if (newOffsetCount == newOffsets.length) {
+                        newOffsets = Arrays.copyOf(newOffsets, newOffsetCount * 2);
+                    }
+                    newOffsets[newOffsetCount++] = newOffset;
+                    return VerificationType.uninitialized(newOffset);
+                default:
+                    throw new VerifyError("検証型のタグが不正です: " + tag);
+            }
+        }
+    }
+}
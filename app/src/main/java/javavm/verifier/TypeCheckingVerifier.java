@@ -0,0 +1,253 @@
+package javavm.verifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.MethodInfo;
+
+/**
+ * StackMapTable属性を使用する型検査による検証器（JVMS 4.10.1）
+ *
+ * 各メソッドのバイトコードを先頭から1回だけ走査し、命令ごとにローカル変数とオペランドスタックの型を更新します。
+ * 分岐先と例外ハンドラの入口ではStackMapTable属性のフレームを使用し、現在の型がフレームの型に代入できることだけを
+ * 確認するため、合流点で型を推論し直す反復は行いません。検証の時間はバイトコードの長さに比例します。
+ *
+ * <p>クラス型どうしの代入可能性は他のクラスの継承関係が必要なため、検証中は判定せず、制約として
+ * {@link Verification} に記録します。このため検証結果はクラスファイルの内容だけで決まり、
+ * {@link VerificationCache} でキャッシュできます。制約は {@link Verification#checkConstraints} で継承関係と照合します。</p>
+ *
+ * <p>protectedメンバーのアクセス検査は行いません。</p>
+ */
+public final class TypeCheckingVerifier {
+    static final String OBJECT = "java/lang/Object";
+    static final String THROWABLE = "java/lang/Throwable";
+
+    private final ClassFile classFile;
+    private final String className;
+    private final String superName;
+    // クラス型の名前の表。クラス型の値には添字を格納する
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    // 解析済みのメソッド記述子（引数の型の後に戻り値の型を並べる。戻り値がvoidの場合は-1）
+    private final Map<String, int[]> signatures = new HashMap<>();
+    private final Set<String> constraintKeys = new HashSet<>();
+    private final List<String> sources = new ArrayList<>();
+    private final List<String> targets = new ArrayList<>();
+
+    private TypeCheckingVerifier(ClassFile classFile) {
+        this.classFile = classFile;
+        this.className = classFile.getName().toString();
+        this.superName = classFile.getSuperName() == null ? null : classFile.getSuperName().toString();
+    }
+
+    /**
+     * クラスのCode属性を持つすべてのメソッドを検証します。
+     * @param classFile 検証するクラス
+     * @return 検証結果（継承関係に関する制約）
+     * @throws VerifyError バイトコードが型検査に失敗した場合
+     * @throws ClassFormatError 定数プールや記述子の形式が不正な場合
+     */
+    public static Verification verify(ClassFile classFile) {
+        TypeCheckingVerifier verifier = new TypeCheckingVerifier(classFile);
+        for (MethodInfo method : classFile.getMethods()) {
+            if (method.hasCode()) {
+                new MethodChecker(verifier, method).check();
+            }
+        }
+        return new Verification(verifier.className,
+                verifier.sources.toArray(new String[0]), verifier.targets.toArray(new String[0]), null);
+    }
+
+    ClassFile classFile() {
+        return classFile;
+    }
+
+    String className() {
+        return className;
+    }
+
+    String superName() {
+        return superName;
+    }
+
+    /**
+     * クラス型を返します。
+     * @param name 内部形式のクラス名、または配列型の記述子
+     */
+    int objectType(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return VerificationType.object(id);
+    }
+
+    /**
+     * クラス型の名前を返します。
+     */
+    String nameOf(int type) {
+        return names.get(VerificationType.value(type));
+    }
+
+    /**
+     * フィールド記述子が表す型を返します。
+     * @throws ClassFormatError 記述子の形式が不正な場合
+     */
+    int fieldType(String descriptor) {
+        int end = endOfType(descriptor, 0);
+        if (end != descriptor.length()) {
+            throw new ClassFormatError("フィールド記述子が不正です: " + descriptor);
+        }
+        return typeOf(descriptor, 0, end);
+    }
+
+    /**
+     * メソッド記述子を解析し、引数の型の後に戻り値の型（voidの場合は-1）を並べた配列を返します。
+     * 呼び出し側で配列を変更してはいけません。
+     * @throws ClassFormatError 記述子の形式が不正な場合
+     */
+    int[] signature(String descriptor) {
+        int[] signature = signatures.get(descriptor);
+        if (signature != null) {
+            return signature;
+        }
+        if (descriptor.isEmpty() || descriptor.charAt(0) != '(') {
+            throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+        }
+        int[] types = new int[descriptor.length()];
+        int count = 0;
+        int position = 1;
+        while (position < descriptor.length() && descriptor.charAt(position) != ')') {
+            int end = endOfType(descriptor, position);
+            types[count++] = typeOf(descriptor, position, end);
+            position = end;
+        }
+        position++;
+        if (position == descriptor.length() - 1 && descriptor.charAt(position) == 'V') {
+            types[count++] = -1;
+        } else {
+            int end = endOfType(descriptor, position);
+            if (end != descriptor.length()) {
+                throw new ClassFormatError("メソッド記述子が不正です: " + descriptor);
+            }
+            types[count++] = typeOf(descriptor, position, end);
+        }
+        signature = Arrays.copyOf(types, count);
+        signatures.put(descriptor, signature);
+        return signature;
+    }
+
+    /**
+     * 型 {@code from} の値を型 {@code to} の場所に代入できるかを返します（JVMS 4.10.1.2）。
+     * クラス型どうしで継承関係が必要な場合は制約を記録して代入できるとみなします。
+     */
+    boolean isAssignable(int from, int to) {
+        if (from == to || to == VerificationType.TOP) {
+            return true;
+        }
+        if (!VerificationType.isObject(to)) {
+            return false;
+        }
+        if (from == VerificationType.NULL) {
+            return true;
+        }
+        return VerificationType.isObject(from) && isAssignable(nameOf(from), nameOf(to));
+    }
+
+    private boolean isAssignable(String from, String to) {
+        if (from.equals(to) || to.equals(OBJECT)) {
+            return true;
+        }
+        boolean fromArray = from.charAt(0) == '[';
+        if (to.charAt(0) == '[') {
+            if (!fromArray || !isReferenceDescriptor(from.charAt(1)) || !isReferenceDescriptor(to.charAt(1))) {
+                // 基本型の配列は同じ型にだけ代入できる
+                return false;
+            }
+            return isAssignable(componentName(from), componentName(to));
+        }
+        if (fromArray) {
+            return to.equals("java/lang/Cloneable") || to.equals("java/io/Serializable");
+        }
+        if (from.equals(className) && to.equals(superName)) {
+            return true;
+        }
+        if (constraintKeys.add(from + ';' + to)) {
+            sources.add(from);
+            targets.add(to);
+        }
+        return true;
+    }
+
+    /**
+     * 参照型の要素を持つ配列型の、要素の型の名前を返します。
+     */
+    static String componentName(String arrayName) {
+        return arrayName.charAt(1) == 'L' ? arrayName.substring(2, arrayName.length() - 1) : arrayName.substring(1);
+    }
+
+    static boolean isReferenceDescriptor(char type) {
+        return type == 'L' || type == '[';
+    }
+
+    private int typeOf(String descriptor, int start, int end) {
+        switch (descriptor.charAt(start)) {
+            case 'B':
+            case 'C':
+            case 'I':
+            case 'S':
+            case 'Z':
+                return VerificationType.INTEGER;
+            case 'F':
+                return VerificationType.FLOAT;
+            case 'J':
+                return VerificationType.LONG;
+            case 'D':
+                return VerificationType.DOUBLE;
+            case 'L':
+                return objectType(descriptor.substring(start + 1, end - 1));
+            default:
+                return objectType(descriptor.substring(start, end));
+        }
+    }
+
+    /**
+     * 記述子の {@code position} から始まるフィールド型の次の位置を返します。
+     */
+    private static int endOfType(String descriptor, int position) {
+        int start = position;
+        while (position < descriptor.length() && descriptor.charAt(position) == '[') {
+            position++;
+        }
+        if (position - start > 255 || position >= descriptor.length()) {
+            throw new ClassFormatError("記述子が不正です: " + descriptor);
+        }
+        switch (descriptor.charAt(position)) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+                return position + 1;
+            case 'L':
+                int end = descriptor.indexOf(';', position);
+                if (end < 0 || end == position + 1) {
+                    throw new ClassFormatError("記述子が不正です: " + descriptor);
+                }
+                return end + 1;
+            default:
+                throw new ClassFormatError("記述子が不正です: " + descriptor);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package javavm.verifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+
+import javavm.classfile.AccessFlags;
+import javavm.classfile.ClassFile;
+import javavm.classfile.Symbol;
+
+/**
+ * クラスの検証結果
+ *
+ * 型検査に成功したクラスについて、検証中に判定を保留した「クラス {@code source} はクラス {@code target} に代入できる」
+ * という制約を保持します。制約はクラスファイルの内容だけで決まるため、内容が同じクラスは同じ結果を共有できます。
+ * 型検査に失敗したクラスの結果は、制約の代わりに失敗の内容を保持します。
+ *
+ * <p>結果はクラスアーカイブにバイト列として格納できます（{@link #toBytes()}）。形式は、失敗の内容の有無（boolean）、
+ * 失敗の内容（失敗した場合のみ、修正UTF-8）、制約の数（int）、制約ごとの代入される側と代入先のクラス名（修正UTF-8）です。</p>
+ */
+public final class Verification {
+    // スーパークラスをたどる上限（継承関係が循環している場合に止めるため）
+    private static final int MAX_DEPTH = 1 << 16;
+
+    private final String className;
+    private final String[] sources;
+    private final String[] targets;
+    private final String failure;
+
+    Verification(String className, String[] sources, String[] targets, String failure) {
+        this.className = className;
+        this.sources = sources;
+        this.targets = targets;
+        this.failure = failure;
+    }
+
+    /**
+     * 型検査に失敗したクラスの結果を生成します。
+     * @param message 失敗の内容
+     */
+    static Verification failed(String className, String message) {
+        return new Verification(className, new String[0], new String[0], message);
+    }
+
+    /**
+     * 検証したクラスの名前を返します。
+     * @return 内部形式のクラス名
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * 継承関係に関する制約の数を返します。
+     * @return 制約の数
+     */
+    public int getConstraintCount() {
+        return sources.length;
+    }
+
+    /**
+     * 制約で代入される側のクラスを返します。
+     * @param index 制約の番号
+     * @return 内部形式のクラス名
+     */
+    public String getSource(int index) {
+        return sources[index];
+    }
+
+    /**
+     * 制約で代入先となるクラスを返します。
+     * @param index 制約の番号
+     * @return 内部形式のクラス名
+     */
+    public String getTarget(int index) {
+        return targets[index];
+    }
+
+    /**
+     * 型検査に失敗した場合の内容を返します。
+     * @return 失敗の内容。成功した場合はnull
+     */
+    String failure() {
+        return failure;
+    }
+
+    /**
+     * クラスアーカイブに格納するバイト列に変換します。
+     * @return 変換したバイト列
+     */
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeBoolean(failure != null);
+            if (failure != null) {
+                out.writeUTF(failure);
+            }
+            out.writeInt(sources.length);
+            for (int i = 0; i < sources.length; i++) {
+                out.writeUTF(sources[i]);
+                out.writeUTF(targets[i]);
+            }
+        } catch (IOException e) {
+            // メモリ上のストリームへの書き込みは失敗しない
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * クラスアーカイブに格納したバイト列から結果を復元します。
+     * @param className 検証したクラスの名前
+     * @param bytes {@link #toBytes()} で変換したバイト列
+     * @return 復元した結果。バイト列の形式が不正な場合はnull
+     */
+    static Verification fromBytes(String className, byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            String failure = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            if (count < 0 || count > bytes.length) {
+                return null;
+            }
+            String[] sources = new String[count];
+            String[] targets = new String[count];
+            for (int i = 0; i < count; i++) {
+                sources[i] = in.readUTF();
+                targets[i] = in.readUTF();
+            }
+            return in.available() == 0 ? new Verification(className, sources, targets, failure) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 制約を継承関係と照合します。
+     * 代入先がインターフェースの場合は、JVMS 4.10.1.2と同様にjava/lang/Objectとして扱い、照合しません。
+     * 代入先のクラス、またはスーパークラスをたどる途中のクラスが見つからない場合は、判定できないため満たすとみなします。
+     * @param classes クラス名からクラスを検索する関数（見つからない場合はnull）
+     * @throws VerifyError 代入できないことが分かった制約がある場合
+     */
+    public void checkConstraints(Function<String, ClassFile> classes) {
+        for (int i = 0; i < sources.length; i++) {
+            if (!isSubclass(sources[i], targets[i], classes)) {
+                throw new VerifyError(sources[i] + "は" + targets[i] + "に代入できません (" + className + ")");
+            }
+        }
+    }
+
+    private static boolean isSubclass(String source, String target, Function<String, ClassFile> classes) {
+        ClassFile targetClass = classes.apply(target);
+        if (targetClass == null || (targetClass.getAccessFlags() & AccessFlags.ACC_INTERFACE) != 0) {
+            return true;
+        }
+        String name = source;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            if (name.equals(target)) {
+                return true;
+            }
+            ClassFile current = classes.apply(name);
+            if (current == null) {
+                return true;
+            }
+            Symbol superName = current.getSuperName();
+            if (superName == null) {
+                return false;
+            }
+            name = superName.toString();
+        }
+        return false;
+    }
+}
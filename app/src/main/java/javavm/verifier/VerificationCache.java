@@ -0,0 +1,197 @@
+package javavm.verifier;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javavm.classfile.ClassArchive;
+import javavm.classfile.ClassFile;
+import javavm.profile.LoadPhase;
+import javavm.profile.Profiler;
+
+/**
+ * クラスファイルのダイジェストで内容を確かめる検証結果のキャッシュ
+ *
+ * 型検査の結果はクラスファイルの内容だけで決まるため、内容が同じクラスは一度だけ検証し、
+ * 以降は記録した結果（失敗した場合はその内容）を返します。複数のスレッドから同時に使用できます。
+ * 同じクラスを複数のスレッドが同時に検証した場合は、それぞれが検証し、最初に記録した結果を共有します。
+ *
+ * <p>結果はクラス名ごとに記録し、同じ名前の結果がある場合だけ、ダイジェストを比べて内容が同じかを確かめます。
+ * ダイジェストはクラスファイルの最初の比較で計算するため（{@link ClassFile#getDigest()}）、初めて検証するクラスの
+ * ダイジェストは計算しません。記録した結果と同じクラスファイル自体を検証する場合も比較しません。</p>
+ *
+ * <p>クラスアーカイブを指定した場合は、検証する前にアーカイブに格納した結果を探します
+ * （{@link #verify(ClassFile, ClassArchive)}）。アーカイブには {@link #toArchive(ClassFile)} で変換した結果を格納します。</p>
+ */
+public final class VerificationCache {
+    private static final VerificationCache INSTANCE = new VerificationCache();
+
+    private final ConcurrentMap<String, Entry> results = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder archiveHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 共有のキャッシュとは独立した空のキャッシュを生成します。
+     */
+    public VerificationCache() {
+    }
+
+    /**
+     * VM全体で共有するキャッシュを返します。
+     * @return 共有のキャッシュ
+     */
+    public static VerificationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * クラスを検証します。同じ内容のクラスを検証済みであれば、検証せずに記録した結果を返します。
+     * @param classFile 検証するクラス
+     * @return 検証結果
+     * @throws VerifyError バイトコードが型検査に失敗した場合（記録した失敗を含む）
+     * @throws ClassFormatError 定数プールや記述子の形式が不正な場合
+     */
+    public Verification verify(ClassFile classFile) {
+        return verify(classFile, null);
+    }
+
+    /**
+     * クラスを検証します。記録した結果がなければ、クラスアーカイブに格納した結果を探し、どちらもない場合だけ検証します。
+     * アーカイブから読み込んだ結果も記録します。
+     * @param classFile 検証するクラス
+     * @param archive 検証結果を格納したクラスアーカイブ。nullの場合は探さない
+     * @return 検証結果
+     * @throws VerifyError バイトコードが型検査に失敗した場合（記録した失敗を含む）
+     * @throws ClassFormatError 定数プールや記述子の形式が不正な場合
+     */
+    public Verification verify(ClassFile classFile, ClassArchive archive) {
+        String className = classFile.getName().toString();
+        Entry entry = results.get(className);
+        Verification verification = null;
+        if (entry != null && entry.matches(classFile)) {
+            hits.increment();
+            verification = entry.verification;
+        } else {
+            byte[] archived = null;
+            try {
+                archived = archive == null ? null : archive.verification(classFile);
+            } catch (ClassFormatError e) {
+                // レコードが壊れている場合は検証し直す
+            }
+            if (archived != null) {
+                verification = Verification.fromBytes(className, archived);
+            }
+            if (verification != null) {
+                archiveHits.increment();
+            } else {
+                misses.increment();
+                verification = check(classFile);
+            }
+            // 別のスレッドが同じ内容の結果を先に記録していればそれを共有し、内容が異なる結果は置き換える
+            verification = results.merge(className, new Entry(classFile, verification),
+                    (recorded, created) -> recorded.matches(classFile) ? recorded : created).verification;
+        }
+        if (verification.failure() != null) {
+            throw new VerifyError(verification.failure());
+        }
+        return verification;
+    }
+
+    private static Verification check(ClassFile classFile) {
+        Profiler profiler = Profiler.getInstance();
+        long start = profiler.timestamp();
+        Verification verification;
+        try {
+            verification = TypeCheckingVerifier.verify(classFile);
+        } catch (VerifyError e) {
+            verification = Verification.failed(classFile.getName().toString(), e.getMessage());
+        }
+        profiler.recordLoad(LoadPhase.VERIFY, classFile.getName().toString(), start);
+        return verification;
+    }
+
+    /**
+     * クラスの記録した検証結果（失敗を含む）を、クラスアーカイブに格納するバイト列に変換します。
+     * @param classFile 検証したクラス
+     * @return 変換したバイト列。内容が同じクラスの結果を記録していない場合はnull
+     */
+    public byte[] toArchive(ClassFile classFile) {
+        Entry entry = results.get(classFile.getName().toString());
+        return entry != null && entry.matches(classFile) ? entry.verification.toBytes() : null;
+    }
+
+    /**
+     * 記録した結果の数を返します。
+     * @return 検証したクラスの数
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * 記録した結果を返した回数を返します。
+     * @return キャッシュのヒット数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * クラスアーカイブに格納した結果を返した回数を返します。
+     * @return アーカイブのヒット数
+     */
+    public long getArchiveHitCount() {
+        return archiveHits.sum();
+    }
+
+    /**
+     * 検証を行った回数を返します。
+     * @return キャッシュのミス数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 記録した結果をすべて破棄します。
+     */
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * 記録した結果と、検証したクラスファイルの内容
+     *
+     * ダイジェストが必要になるまではクラスファイルを保持し、ダイジェストを取得した後はダイジェストだけを保持します。
+     */
+    private static final class Entry {
+        final Verification verification;
+        // ダイジェストを先に書き込み、クラスファイルを手放す。クラスファイルがnullならダイジェストは設定済み
+        private volatile ClassFile classFile;
+        private volatile byte[] digest;
+
+        Entry(ClassFile classFile, Verification verification) {
+            this.classFile = classFile;
+            this.verification = verification;
+        }
+
+        /**
+         * 記録したクラスファイルと内容が同じかを返します。同じクラスファイルの場合はダイジェストを計算しません。
+         */
+        boolean matches(ClassFile candidate) {
+            ClassFile recorded = classFile;
+            if (recorded == candidate) {
+                return true;
+            }
+            byte[] value = digest;
+            if (value == null) {
+                value = recorded.getDigest();
+                digest = value;
+                classFile = null;
+            }
+            return Arrays.equals(value, candidate.getDigest());
+        }
+    }
+}
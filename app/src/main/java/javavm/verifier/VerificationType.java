@@ -0,0 +1,72 @@
+package javavm.verifier;
+
+/**
+ * 検証で扱う型（JVMS 4.10.1.2の検証型）をintで表現するための定義
+ *
+ * 基本型と特別な型は小さな定数で、クラス型と未初期化の型は上位4ビットの種別と下位28ビットの値で表します。
+ * クラス型の値は {@link TypeCheckingVerifier} が管理するクラス名の表の添字、未初期化の型の値はオブジェクトを
+ * 生成したnew命令のオフセットです。longとdoubleはローカル変数とオペランドスタックで2スロットを占め、
+ * 2スロット目は {@link #TOP} とします。
+ */
+final class VerificationType {
+    static final int TOP = 0;
+    static final int INTEGER = 1;
+    static final int FLOAT = 2;
+    static final int LONG = 3;
+    static final int DOUBLE = 4;
+    static final int NULL = 5;
+    static final int UNINITIALIZED_THIS = 6;
+
+    private static final int VALUE_BITS = 28;
+    private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+    private static final int OBJECT = 1 << VALUE_BITS;
+    private static final int UNINITIALIZED = 2 << VALUE_BITS;
+
+    private VerificationType() {
+    }
+
+    /**
+     * クラス型を返します。
+     * @param nameId クラス名の表の添字
+     */
+    static int object(int nameId) {
+        return OBJECT | nameId;
+    }
+
+    /**
+     * new命令で生成した未初期化のオブジェクトの型を返します。
+     * @param offset new命令のオフセット
+     */
+    static int uninitialized(int offset) {
+        return UNINITIALIZED | offset;
+    }
+
+    static boolean isObject(int type) {
+        return (type & ~VALUE_MASK) == OBJECT;
+    }
+
+    static boolean isUninitialized(int type) {
+        return (type & ~VALUE_MASK) == UNINITIALIZED;
+    }
+
+    /**
+     * クラス型の名前の添字、または未初期化の型のnew命令のオフセットを返します。
+     */
+    static int value(int type) {
+        return type & VALUE_MASK;
+    }
+
+    /**
+     * 参照型（nullと未初期化の型を含む）かどうかを返します。
+     */
+    static boolean isReference(int type) {
+        return isObject(type) || isUninitialized(type) || type == NULL || type == UNINITIALIZED_THIS;
+    }
+
+    /**
+     * 2スロットを占める型かどうかを返します。
+     */
+    static boolean isCategory2(int type) {
+        return type == LONG || type == DOUBLE;
+    }
+}
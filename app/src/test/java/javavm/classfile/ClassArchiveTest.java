@@ -0,0 +1,344 @@
+package javavm.classfile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+class ClassArchiveTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * すべてのタグを含む定数プールを持ち、インターフェースを1つ実装するクラスファイル
+     */
+    private static byte[] createClassFile() {
+        return new byte[] {
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            0x00, 0x00, 0x00, 0x34,
+            0x00, 0x16,
+            // #1: CONSTANT_Utf8 {"Test"}, #2: CONSTANT_Class {#1}
+            0x01, 0x00, 0x04, 0x54, 0x65, 0x73, 0x74,
+            0x07, 0x00, 0x01,
+            // #3: CONSTANT_Utf8 {"()V"}, #4: CONSTANT_NameAndType {#1, #3}
+            0x01, 0x00, 0x03, 0x28, 0x29, 0x56,
+            0x0C, 0x00, 0x01, 0x00, 0x03,
+            // #5-7: Fieldref, Methodref, InterfaceMethodref {#2, #4}
+            0x09, 0x00, 0x02, 0x00, 0x04,
+            0x0A, 0x00, 0x02, 0x00, 0x04,
+            0x0B, 0x00, 0x02, 0x00, 0x04,
+            // #8: CONSTANT_String {#1}
+            0x08, 0x00, 0x01,
+            // #9: CONSTANT_Integer {-2}, #10: CONSTANT_Float {1.5f}
+            0x03, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFE,
+            0x04, 0x3F, (byte)0xC0, 0x00, 0x00,
+            // #11-12: CONSTANT_Long {0x0123456789ABCDEF}, #13-14: CONSTANT_Double {2.5}
+            0x05, 0x01, 0x23, 0x45, 0x67, (byte)0x89, (byte)0xAB, (byte)0xCD, (byte)0xEF,
+            0x06, 0x40, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            // #15: CONSTANT_MethodHandle {5, #6}, #16: CONSTANT_MethodType {#3}
+            0x0F, 0x05, 0x00, 0x06,
+            0x10, 0x00, 0x03,
+            // #17: CONSTANT_InvokeDynamic {7, #4}, #18: CONSTANT_Dynamic {8, #4}, #19: CONSTANT_Module {#1}
+            0x12, 0x00, 0x07, 0x00, 0x04,
+            0x11, 0x00, 0x08, 0x00, 0x04,
+            0x13, 0x00, 0x01,
+            // #20: CONSTANT_Utf8 {"Iface"}, #21: CONSTANT_Class {#20}
+            0x01, 0x00, 0x05, 0x49, 0x66, 0x61, 0x63, 0x65,
+            0x07, 0x00, 0x14,
+            // access_flags = public | super, this_class = #2, super_class = 0
+            0x00, 0x21, 0x00, 0x02, 0x00, 0x00,
+            // interfaces = {#21}
+            0x00, 0x01, 0x00, 0x15,
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+        };
+    }
+
+    private ClassFile read(boolean retainBuffer) {
+        try (ClassFileReader reader = new ClassFileReader(createClassFile())) {
+            return reader.readClassFile(retainBuffer);
+        }
+    }
+
+    private ClassFile roundTrip(ClassFile classFile) throws IOException {
+        Path path = tempDir.resolve("classes.jsa");
+        ClassArchiveWriter writer = new ClassArchiveWriter();
+        writer.add(classFile, new SourceStamp(123, 456, 0x789));
+        writer.write(path);
+
+        ClassArchive archive = ClassArchive.open(path);
+        assertEquals(1, archive.size(), "格納したクラス数が一致しません");
+        assertTrue(archive.contains("Test"), "格納したクラスを検索できるべきです");
+        assertEquals(new SourceStamp(123, 456, 0x789), archive.stamp("Test"), "読み込み元の状態が一致しません");
+        return archive.load("Test");
+    }
+
+    @Test
+    void testRoundTripLazyConstantPool() throws Exception {
+        ClassFile original = read(true);
+        assertClassEquals(original, roundTrip(original));
+    }
+
+    @Test
+    void testRoundTripCompactConstantPool() throws Exception {
+        ClassFile original = read(false);
+        assertClassEquals(original, roundTrip(original));
+    }
+
+    @Test
+    void testArchivedValues() throws Exception {
+        ClassFile archived = roundTrip(read(true));
+        ConstantPool pool = archived.getConstantPool();
+
+        assertFalse(pool.isLazy(), "復元した定数プールはクラスファイルのバッファを参照しないはずです");
+        assertEquals(-2, pool.intValue(9), "int値が一致しません");
+        assertEquals(1.5f, pool.floatValue(10), "float値が一致しません");
+        assertEquals(0x0123456789ABCDEFL, pool.longValue(11), "long値が一致しません");
+        assertEquals(2.5, pool.doubleValue(13), "double値が一致しません");
+        assertEquals(5, pool.methodHandleKind(15), "reference_kindが一致しません");
+        assertEquals(6, pool.methodHandleReferenceIndex(15), "reference_indexが一致しません");
+        assertEquals(8, pool.bootstrapMethodAttrIndex(18), "bootstrap_method_attr_indexが一致しません");
+        assertNull(archived.getSuperName(), "スーパークラスがない場合はnullであるべきです");
+        assertSame(SymbolTable.getInstance().intern("Iface"), archived.getInterfaceNames()[0],
+            "インターフェース名は一意化されたシンボルであるべきです");
+    }
+
+    @Test
+    void testRoundTripMembers() throws Exception {
+        // javacが生成したフィールドとメソッドを持つクラスファイルを格納する
+        byte[] content;
+        try (InputStream in = ClassArchiveTest.class.getResourceAsStream("ClassArchiveTest.class")) {
+            content = in.readAllBytes();
+        }
+        ClassFile original;
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            original = reader.readClassFile();
+        }
+
+        ClassArchive archive = ClassArchive.open(writeArchiveOf(original));
+        ClassFile archived = archive.load("javavm/classfile/ClassArchiveTest");
+
+        // アーカイブの書き出しと復元ではCode属性をデコードしない
+        int methodsWithCode = 0;
+        for (MethodInfo method : original.getMethods()) {
+            methodsWithCode += method.hasCode() ? 1 : 0;
+        }
+        assertEquals(methodsWithCode, original.getDeferredCodeCount(), "書き出したクラスのCode属性はデコードされないはずです");
+        assertEquals(methodsWithCode, archived.getDeferredCodeCount(), "復元したクラスのCode属性はデコードされないはずです");
+
+        assertClassEquals(original, archived);
+        assertEquals(0, archived.getDeferredCodeCount(), "使用したCode属性はデコード済みとなるべきです");
+        assertEquals(1, archived.getFields().length, "フィールド数が一致しません");
+        assertNotNull(archived.findMethod("testRoundTripMembers", "()V").getCode(), "Code属性が復元されるべきです");
+    }
+
+    @Test
+    void testVerificationResult() throws Exception {
+        byte[] content;
+        try (InputStream in = ClassArchiveTest.class.getResourceAsStream("ClassArchiveTest.class")) {
+            content = in.readAllBytes();
+        }
+        ClassFile members;
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            members = reader.readClassFile();
+        }
+        Path path = tempDir.resolve("classes.jsa");
+        ClassArchiveWriter writer = new ClassArchiveWriter();
+        // 長さが4の倍数でない結果の後にも次のクラスを格納できる
+        writer.add(read(true), new SourceStamp(0, 0, 0), new byte[] {1, 2, 3, 4, 5});
+        writer.add(members, new SourceStamp(0, 0, 0), null);
+        writer.write(path);
+
+        ClassArchive archive = ClassArchive.open(path);
+        ClassFile test = read(true);
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, archive.verification(test), "格納した検証結果が返されるべきです");
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile reread = reader.readClassFile();
+            assertNull(archive.verification(reread), "検証結果を格納していないクラスはnullであるべきです");
+            assertFalse(reread.isDigestComputed(), "検証結果がない場合はダイジェストを計算しないはずです");
+        }
+
+        byte[] changed = createClassFile();
+        changed[5]++;
+        try (ClassFileReader reader = new ClassFileReader(changed)) {
+            assertNull(archive.verification(reader.readClassFile()), "内容が異なるクラスの検証結果は返さないはずです");
+        }
+        assertClassEquals(test, archive.load("Test"));
+        assertClassEquals(members, archive.load("javavm/classfile/ClassArchiveTest"));
+    }
+
+    @Test
+    void testMissingClass() throws Exception {
+        ClassArchive archive = ClassArchive.open(writeArchiveOf(read(true)));
+
+        assertFalse(archive.contains("Missing"), "格納していないクラスは見つからないはずです");
+        assertNull(archive.stamp("Missing"), "格納していないクラスの状態はnullであるべきです");
+        assertNull(archive.load("Missing"), "格納していないクラスはnullであるべきです");
+    }
+
+    @Test
+    void testRejectsInvalidFile() throws Exception {
+        Path path = tempDir.resolve("invalid.jsa");
+        Files.write(path, new byte[32]);
+
+        assertThrows(IOException.class, () -> ClassArchive.open(path), "マジックが一致しないファイルは拒否されるべきです");
+    }
+
+    @Test
+    void testRejectsOtherFormatVersion() throws Exception {
+        Path path = writeArchiveOf(read(true));
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[5]++;
+        Files.write(path, bytes);
+
+        IOException exception = assertThrows(IOException.class, () -> ClassArchive.open(path),
+            "形式バージョンが異なるアーカイブは拒否されるべきです");
+        assertTrue(exception.getMessage().contains("形式バージョン"), "例外メッセージに形式バージョンの不一致を含める必要があります");
+    }
+
+    @Test
+    void testRejectsCorruptArchive() throws Exception {
+        Path path = writeArchiveOf(readMembers());
+        byte[] original = Files.readAllBytes(path);
+
+        byte[] corrupt = original.clone();
+        corrupt[corrupt.length / 2] ^= 0x40;
+        Files.write(path, corrupt);
+        IOException exception = assertThrows(IOException.class, () -> ClassArchive.open(path),
+            "内容が壊れたアーカイブは拒否されるべきです");
+        assertTrue(exception.getMessage().contains("CRC-32"), "例外メッセージにCRC-32の不一致を含める必要があります");
+
+        // 書き出しが中断したアーカイブ
+        Files.write(path, Arrays.copyOf(original, original.length * 2 / 3));
+        assertThrows(IOException.class, () -> ClassArchive.open(path), "途中までのアーカイブは拒否されるべきです");
+    }
+
+    @Test
+    void testCorruptRecordsAreRejected() throws Exception {
+        ClassFile members = readMembers();
+        Path path = writeArchiveOf(members);
+        byte[] original = Files.readAllBytes(path);
+        Random random = new Random(42);
+        for (int run = 0; run < 300; run++) {
+            // CRC-32を設定し直し、範囲の検査だけで壊れたレコードを検出できることを確かめる
+            byte[] corrupt = original.clone();
+            for (int i = 0; i < 16; i++) {
+                corrupt[ClassArchive.HEADER_SIZE + random.nextInt(corrupt.length - ClassArchive.HEADER_SIZE)] =
+                    (byte) random.nextInt(256);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(corrupt, ClassArchive.HEADER_SIZE, corrupt.length - ClassArchive.HEADER_SIZE);
+            ByteBuffer.wrap(corrupt).putInt(ClassArchive.CHECKSUM_OFFSET, (int) crc.getValue());
+            Files.write(path, corrupt);
+
+            ClassArchive archive;
+            try {
+                archive = ClassArchive.open(path);
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                for (String className : List.of("javavm/classfile/ClassArchiveTest", "Test")) {
+                    archive.stamp(className);
+                    archive.verification(members);
+                    ClassFile archived = archive.load(className);
+                    if (archived == null) {
+                        continue;
+                    }
+                    for (MethodInfo method : archived.getMethods()) {
+                        method.viewCode();
+                        method.getCode();
+                    }
+                }
+            } catch (ClassFormatError e) {
+                // 壊れたレコードはClassFormatErrorとして報告する
+            }
+        }
+    }
+
+    private ClassFile readMembers() throws IOException {
+        byte[] content;
+        try (InputStream in = ClassArchiveTest.class.getResourceAsStream("ClassArchiveTest.class")) {
+            content = in.readAllBytes();
+        }
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            return reader.readClassFile();
+        }
+    }
+
+    private Path writeArchiveOf(ClassFile classFile) throws IOException {
+        Path path = tempDir.resolve("classes.jsa");
+        ClassArchiveWriter writer = new ClassArchiveWriter();
+        writer.add(classFile, new SourceStamp(0, 0, 0));
+        writer.write(path);
+        return path;
+    }
+
+    private void assertClassEquals(ClassFile expected, ClassFile actual) {
+        assertSame(expected.getName(), actual.getName(), "クラス名のシンボルが一致しません");
+        assertEquals(expected.getMinorVersion(), actual.getMinorVersion(), "マイナーバージョンが一致しません");
+        assertEquals(expected.getMajorVersion(), actual.getMajorVersion(), "メジャーバージョンが一致しません");
+        assertEquals(expected.getAccessFlags(), actual.getAccessFlags(), "アクセスフラグが一致しません");
+        assertArrayEquals(expected.getInterfaceNames(), actual.getInterfaceNames(), "インターフェース名が一致しません");
+        assertArrayEquals(expected.getDigest(), actual.getDigest(), "ダイジェストが一致しません");
+
+        ConstantPool expectedPool = expected.getConstantPool();
+        ConstantPool actualPool = actual.getConstantPool();
+        assertEquals(expectedPool.size(), actualPool.size(), "定数プールカウントが一致しません");
+        for (int i = 1; i < expectedPool.size(); i++) {
+            assertEquals(expectedPool.tag(i), actualPool.tag(i), "タグが一致しません: #" + i);
+            if (expectedPool.tag(i) == ConstantInfo.CONSTANT_Utf8) {
+                assertSame(expectedPool.symbol(i), actualPool.symbol(i), "シンボルが一致しません: #" + i);
+            } else {
+                assertEquals(expectedPool.compactOperand(i), actualPool.compactOperand(i), "オペランドが一致しません: #" + i);
+            }
+        }
+
+        FieldInfo[] expectedFields = expected.getFields();
+        FieldInfo[] actualFields = actual.getFields();
+        assertEquals(expectedFields.length, actualFields.length, "フィールド数が一致しません");
+        for (int i = 0; i < expectedFields.length; i++) {
+            assertEquals(expectedFields[i].getAccessFlags(), actualFields[i].getAccessFlags(), "フィールドのアクセスフラグが一致しません");
+            assertSame(expectedFields[i].getName(), actualFields[i].getName(), "フィールド名が一致しません");
+            assertSame(expectedFields[i].getDescriptor(), actualFields[i].getDescriptor(), "フィールド記述子が一致しません");
+            assertEquals(expectedFields[i].getConstantValueIndex(), actualFields[i].getConstantValueIndex(),
+                "フィールドの定数が一致しません");
+        }
+
+        MethodInfo[] expectedMethods = expected.getMethods();
+        MethodInfo[] actualMethods = actual.getMethods();
+        assertEquals(expectedMethods.length, actualMethods.length, "メソッド数が一致しません");
+        for (int i = 0; i < expectedMethods.length; i++) {
+            String method = expectedMethods[i].toString();
+            assertEquals(expectedMethods[i].getAccessFlags(), actualMethods[i].getAccessFlags(), "メソッドのアクセスフラグが一致しません: " + method);
+            assertSame(expectedMethods[i].getName(), actualMethods[i].getName(), "メソッド名が一致しません: " + method);
+            assertSame(expectedMethods[i].getDescriptor(), actualMethods[i].getDescriptor(), "メソッド記述子が一致しません: " + method);
+            CodeAttribute expectedCode = expectedMethods[i].getCode();
+            CodeAttribute actualCode = actualMethods[i].getCode();
+            if (expectedCode == null) {
+                assertNull(actualCode, "Code属性がないメソッドはnullであるべきです: " + method);
+                continue;
+            }
+            assertEquals(expectedCode.getMaxStack(), actualCode.getMaxStack(), "max_stackが一致しません: " + method);
+            assertEquals(expectedCode.getMaxLocals(), actualCode.getMaxLocals(), "max_localsが一致しません: " + method);
+            assertArrayEquals(expectedCode.getCode(), actualCode.getCode(), "バイトコードが一致しません: " + method);
+            assertArrayEquals(expectedCode.getStackMapTable(), actualCode.getStackMapTable(), "StackMapTable属性が一致しません: " + method);
+            assertEquals(expectedCode.getLineNumberTableLength(), actualCode.getLineNumberTableLength(), "LineNumberTable属性の長さが一致しません: " + method);
+            for (int pc = 0; pc < expectedCode.getCodeLength(); pc++) {
+                assertEquals(expectedCode.getLineNumber(pc), actualCode.getLineNumber(pc), "行番号が一致しません: " + method + " pc=" + pc);
+            }
+            assertEquals(expectedCode.getExceptionTableLength(), actualCode.getExceptionTableLength(), "例外テーブルの長さが一致しません: " + method);
+            for (int j = 0; j < expectedCode.getExceptionTableLength(); j++) {
+                assertEquals(expectedCode.getHandlerPc(j), actualCode.getHandlerPc(j), "handler_pcが一致しません: " + method);
+                assertEquals(expectedCode.getCatchType(j), actualCode.getCatchType(j), "catch_typeが一致しません: " + method);
+            }
+        }
+    }
+}
@@ -6,8 +6,11 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.HashSet;
 
 class ClassFileReaderTest {
@@ -377,4 +380,315 @@ class ClassFileReaderTest {
             assertEquals(4, nameAndTypeInfo.getDescriptorIndex(), "descriptor_indexが一致しません");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReadFromByteArray() throws Exception {
+        // ファイルを経由せずにメモリ上のバイト列から読み取る
+        byte[] content = new byte[] {
+            // マジックナンバー
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            // バージョン情報（Java 8）
+            0x00, 0x00, 0x00, 0x34,
+            // 定数プールカウント = 3
+            0x00, 0x03,
+            // #1: CONSTANT_Utf8 {"Test"}
+            0x01, 0x00, 0x04, 0x54, 0x65, 0x73, 0x74,
+            // #2: CONSTANT_Class {name_index = 1}
+            0x07, 0x00, 0x01
+        };
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            reader.readMagic();
+            reader.readVersion();
+            ConstantInfo[] constantPool = reader.readConstantPool();
+
+            assertEquals(3, constantPool.length, "定数プールの長さは3であるべきです");
+            assertEquals("Test", ((ConstantUtf8Info)constantPool[1]).getValue(), "UTF-8文字列の値が一致しません");
+            assertEquals(1, ((ConstantClassInfo)constantPool[2]).getNameIndex(), "name_indexが一致しません");
+        }
+    }
+
+    @Test
+    void testReadFromByteBufferUsesRemainingRange() throws Exception {
+        // 前後に余分なデータを持つバッファの position〜limit の範囲だけを読み取る
+        byte[] content = new byte[] {
+            0x00, 0x00, 0x00,
+            // マジックナンバー
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            // バージョン情報（Java 8）
+            0x00, 0x00, 0x00, 0x34,
+            0x7F
+        };
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        buffer.position(3).limit(11);
+
+        try (ClassFileReader reader = new ClassFileReader(buffer)) {
+            reader.readMagic();
+            reader.readVersion();
+            ClassFormatError exception = assertThrows(
+                ClassFormatError.class,
+                () -> reader.readConstantPool(),
+                "limitを超えて読み取る場合はClassFormatErrorをスローする必要があります"
+            );
+
+            assertTrue(
+                exception.getMessage().contains("予期せぬファイルの終わり"),
+                "例外メッセージにファイルが不完全である旨を含める必要があります"
+            );
+        }
+
+        assertEquals(3, buffer.position(), "渡されたバッファの位置は変更されないべきです");
+    }
+
+    @Test
+    void testEmptyByteArray() {
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> new ClassFileReader(new byte[0]),
+            "空のバイト列の場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("空のクラスファイルです"),
+            "例外メッセージにファイルが空である旨を含める必要があります"
+        );
+    }
+
+    @Test
+    void testTruncatedUtf8Entry() {
+        // 長さ分のバイト列が存在しないUTF-8エントリ
+        byte[] content = new byte[] {
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            0x00, 0x00, 0x00, 0x34,
+            0x00, 0x02,
+            0x01, 0x00, 0x10, 0x54, 0x65
+        };
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            reader.readMagic();
+            reader.readVersion();
+            ClassFormatError exception = assertThrows(
+                ClassFormatError.class,
+                () -> reader.readConstantPool(),
+                "不完全なUTF-8エントリの場合はClassFormatErrorをスローする必要があります"
+            );
+
+            assertTrue(
+                exception.getMessage().contains("予期せぬファイルの終わり"),
+                "例外メッセージにファイルが不完全である旨を含める必要があります"
+            );
+        }
+    }
+
+    @Test
+    void testReadMappedClassFile() throws Exception {
+        // メモリマップで読み込まれる大きさ（64KB以上）のクラスファイルを作成
+        int stringLength = 40000;
+        byte[] content = new byte[10 + 2 * (3 + stringLength)];
+        byte[] header = {
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            0x00, 0x00, 0x00, 0x34,
+            // 定数プールカウント = 3
+            0x00, 0x03
+        };
+        System.arraycopy(header, 0, content, 0, header.length);
+        int offset = header.length;
+        for (char c : new char[] {'a', 'b'}) {
+            content[offset++] = 0x01;
+            content[offset++] = (byte)(stringLength >> 8);
+            content[offset++] = (byte)stringLength;
+            for (int i = 0; i < stringLength; i++) {
+                content[offset++] = (byte)c;
+            }
+        }
+
+        String validClassPath = createTestClassFile(content);
+
+        try (ClassFileReader reader = new ClassFileReader(validClassPath)) {
+            reader.readMagic();
+            reader.readVersion();
+            ConstantInfo[] constantPool = reader.readConstantPool();
+
+            assertEquals("a".repeat(stringLength), ((ConstantUtf8Info)constantPool[1]).getValue(), "1番目の文字列が一致しません");
+            assertEquals("b".repeat(stringLength), ((ConstantUtf8Info)constantPool[2]).getValue(), "2番目の文字列が一致しません");
+        }
+    }
+
+    @Test
+    void testReadClassFile() throws Exception {
+        // javacが生成した実際のクラスファイルを読み取る
+        byte[] content;
+        try (InputStream in = ClassFileReaderTest.class.getResourceAsStream("ClassFileReaderTest.class")) {
+            content = in.readAllBytes();
+        }
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile();
+
+            assertEquals("javavm/classfile/ClassFileReaderTest", classFile.getName().toString(), "クラス名が一致しません");
+            assertEquals("java/lang/Object", classFile.getSuperName().toString(), "スーパークラス名が一致しません");
+            assertEquals(0, classFile.getInterfaceNames().length, "インターフェースは実装していません");
+            assertTrue(classFile.getMajorVersion() >= 52, "major_versionは52以上であるべきです");
+            assertEquals(classFile.getMajorVersion(), reader.getMajorVersion(), "リーダーのmajor_versionと一致するべきです");
+        }
+    }
+
+    /**
+     * メンバーの読み取りを確認するためのクラス
+     */
+    static class Members {
+        static final long LIMIT = 10;
+        int count;
+
+        static int sum(int[] values) {
+            int total = 0;
+            try {
+                for (int value : values) {
+                    total += value;
+                }
+            } catch (NullPointerException e) {
+                return -1;
+            }
+            return total;
+        }
+
+        native void nativeMethod();
+    }
+
+    @Test
+    void testReadMembers() throws Exception {
+        byte[] content;
+        try (InputStream in = ClassFileReaderTest.class.getResourceAsStream("ClassFileReaderTest$Members.class")) {
+            content = in.readAllBytes();
+        }
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile();
+
+            FieldInfo[] fields = classFile.getFields();
+            assertEquals(2, fields.length, "フィールド数が一致しません");
+            assertEquals("LIMIT", fields[0].getName().toString(), "フィールド名が一致しません");
+            assertEquals("J", fields[0].getDescriptor().toString(), "フィールド記述子が一致しません");
+            assertTrue(fields[0].isStatic(), "staticフィールドであるべきです");
+            assertFalse(fields[1].isStatic(), "インスタンスフィールドであるべきです");
+            int constant = fields[0].getConstantValueIndex();
+            assertEquals(ConstantInfo.CONSTANT_Long, classFile.getConstantPool().tag(constant), "定数の型が一致しません");
+            assertEquals(10L, classFile.getConstantPool().longValue(constant), "定数の値が一致しません");
+            assertEquals(0, fields[1].getConstantValueIndex(), "定数でないフィールドのインデックスは0であるべきです");
+
+            MethodInfo sum = classFile.findMethod("sum", "([I)I");
+            assertNotNull(sum, "メソッドが見つかるべきです");
+            assertTrue(sum.isStatic(), "staticメソッドであるべきです");
+            CodeAttribute code = sum.getCode();
+            assertTrue(code.getMaxLocals() >= 2, "引数とローカル変数の数が読み取られるべきです");
+            assertTrue(code.getCodeLength() > 0, "バイトコードが読み取られるべきです");
+            assertEquals(1, code.getExceptionTableLength(), "例外テーブルのエントリ数が一致しません");
+            assertEquals("java/lang/NullPointerException",
+                classFile.getConstantPool().className(code.getCatchType(0)), "捕捉する例外クラスが一致しません");
+            assertTrue(code.getStartPc(0) < code.getEndPc(0), "例外ハンドラの範囲が不正です");
+            // ループと例外ハンドラがあるため、javacはStackMapTable属性を出力する
+            assertNotNull(code.getStackMapTable(), "StackMapTable属性が保持されるべきです");
+            assertNull(classFile.findMethod("<init>", "()V").getCode().getStackMapTable(),
+                "分岐のないメソッドはStackMapTable属性を持たないはずです");
+            assertEquals(32, classFile.getDigest().length, "ダイジェストはSHA-256の32バイトであるべきです");
+
+            assertNull(classFile.findMethod("nativeMethod", "()V").getCode(), "nativeメソッドはCode属性を持たないはずです");
+            assertNull(classFile.findMethod("missing", "()V"), "存在しないメソッドはnullであるべきです");
+        }
+    }
+
+    @Test
+    void testDigestIsComputedOnDemand() throws Exception {
+        byte[] content;
+        try (InputStream in = ClassFileReaderTest.class.getResourceAsStream("ClassFileReaderTest$Members.class")) {
+            content = in.readAllBytes();
+        }
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(content);
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile();
+            assertFalse(classFile.isDigestComputed(), "ダイジェストは読み込み時には計算しないはずです");
+            assertArrayEquals(expected, classFile.getDigest(), "ダイジェストはクラスファイル全体のSHA-256であるべきです");
+            assertTrue(classFile.isDigestComputed(), "取得後は計算済みとなるべきです");
+        }
+
+        // バッファを保持しない場合は読み込み時に計算する
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile(false);
+            assertTrue(classFile.isDigestComputed(), "バッファを保持しない場合は読み込み時に計算するべきです");
+            assertArrayEquals(expected, classFile.getDigest(), "ダイジェストが一致しません");
+        }
+    }
+
+    @Test
+    void testDeferredCode() throws Exception {
+        byte[] content;
+        try (InputStream in = ClassFileReaderTest.class.getResourceAsStream("ClassFileReaderTest$Members.class")) {
+            content = in.readAllBytes();
+        }
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile();
+            MethodInfo sum = classFile.findMethod("sum", "([I)I");
+            MethodInfo nativeMethod = classFile.findMethod("nativeMethod", "()V");
+            // <init>とsumのCode属性は読み込み時にはデコードしない
+            assertEquals(2, classFile.getDeferredCodeCount(), "Code属性はデコードされていないはずです");
+            assertTrue(sum.isCodeDeferred(), "Code属性はデコードされていないはずです");
+            assertFalse(nativeMethod.hasCode(), "nativeメソッドはCode属性を持たないはずです");
+            assertFalse(nativeMethod.isCodeDeferred(), "Code属性がないメソッドはデコード待ちではないはずです");
+
+            // readCodeはデコードした結果を保持しない
+            CodeAttribute read = sum.readCode();
+            assertTrue(read.getCodeLength() > 0, "バイトコードが読み取られるべきです");
+            assertTrue(sum.isCodeDeferred(), "readCodeはデコードした結果を保持しないはずです");
+            assertNotSame(read, sum.readCode(), "readCodeは毎回デコードするべきです");
+
+            // viewCodeはデコードせずに同じ内容を参照する
+            CodeView view = sum.viewCode();
+            assertTrue(sum.isCodeDeferred(), "viewCodeはCode属性をデコードしないはずです");
+            assertEquals(read.getMaxStack(), view.getMaxStack(), "max_stackが一致しません");
+            assertEquals(read.getMaxLocals(), view.getMaxLocals(), "max_localsが一致しません");
+            assertEquals(read.getCodeLength(), view.getCodeLength(), "バイトコードの長さが一致しません");
+            for (int i = 0; i < view.getCodeLength(); i++) {
+                assertEquals(read.code()[i] & 0xFF, view.getCodeByte(i), "バイトコードが一致しません: " + i);
+            }
+            assertEquals(read.exceptionTable().length / 4, view.getExceptionTableLength(), "例外テーブルの長さが一致しません");
+            ByteBuffer stackMapTable = view.getStackMapTable();
+            assertNotNull(stackMapTable, "ループを含むメソッドはStackMapTable属性を持つはずです");
+            byte[] frames = new byte[stackMapTable.remaining()];
+            stackMapTable.get(frames);
+            assertArrayEquals(read.stackMapTable(), frames, "StackMapTable属性の内容が一致しません");
+            assertNull(nativeMethod.viewCode(), "Code属性がないメソッドはnullであるべきです");
+
+            // 複数のスレッドから同時に呼び出しても同じ結果を共有する
+            CodeAttribute[] results = new CodeAttribute[4];
+            Thread[] threads = new Thread[results.length];
+            for (int i = 0; i < threads.length; i++) {
+                int index = i;
+                threads[i] = new Thread(() -> results[index] = sum.getCode());
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (CodeAttribute result : results) {
+                assertSame(results[0], result, "Code属性のデコードは一度だけ行うべきです");
+            }
+            assertSame(results[0], sum.readCode(), "デコード後はreadCodeも同じ結果を返すべきです");
+            assertFalse(sum.isCodeDeferred(), "getCodeの後はデコード済みとなるべきです");
+            assertEquals(1, classFile.getDeferredCodeCount(), "デコードしていないメソッドの数が一致しません");
+
+            CodeAttribute code = sum.getCode();
+            assertTrue(code.getLineNumberTableLength() > 0, "LineNumberTable属性が読み取られるべきです");
+            assertTrue(code.getLineNumber(0) > 0, "先頭の命令の行番号が読み取られるべきです");
+            assertTrue(code.getLineNumber(code.getCodeLength() - 1) >= code.getLineNumber(0), "行番号が一致しません");
+        }
+
+        // バッファを保持しない場合は読み込み時にデコードする
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            ClassFile classFile = reader.readClassFile(false);
+            assertEquals(0, classFile.getDeferredCodeCount(), "Code属性はデコード済みであるべきです");
+            assertNotNull(classFile.findMethod("sum", "([I)I").getCode(), "Code属性が読み取られるべきです");
+        }
+    }
+}
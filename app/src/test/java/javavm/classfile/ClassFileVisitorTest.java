@@ -0,0 +1,226 @@
+package javavm.classfile;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ClassFileVisitorTest {
+    /**
+     * 走査の対象とするクラス
+     */
+    static class Sample implements Runnable {
+        int counter;
+
+        @Override
+        public void run() {
+            counter++;
+        }
+    }
+
+    private static byte[] sampleClassFile() throws Exception {
+        try (InputStream in = ClassFileVisitorTest.class.getResourceAsStream("ClassFileVisitorTest$Sample.class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * 通知を文字列として記録するビジター。メソッドの属性は要求しない
+     */
+    private static class RecordingVisitor extends ClassFileVisitor {
+        final List<String> events = new ArrayList<>();
+        ConstantPool constantPool;
+
+        @Override
+        public void visitMagic(int magic) {
+            events.add("magic " + Integer.toHexString(magic));
+        }
+
+        @Override
+        public void visitVersion(int minorVersion, int majorVersion) {
+            events.add("version");
+        }
+
+        @Override
+        public boolean visitConstantPool(ConstantPool constantPool) {
+            this.constantPool = constantPool;
+            events.add("constantPool");
+            return false;
+        }
+
+        @Override
+        public void visitClass(int accessFlags, int thisClass, int superClass) {
+            events.add("class " + constantPool.className(thisClass) + " extends " + constantPool.className(superClass));
+        }
+
+        @Override
+        public void visitInterface(int interfaceClass) {
+            events.add("interface " + constantPool.className(interfaceClass));
+        }
+
+        @Override
+        public boolean visitField(int accessFlags, int nameIndex, int descriptorIndex) {
+            events.add("field " + constantPool.utf8(nameIndex) + " " + constantPool.utf8(descriptorIndex));
+            return false;
+        }
+
+        @Override
+        public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex) {
+            events.add("method " + constantPool.utf8(nameIndex) + constantPool.utf8(descriptorIndex));
+            return false;
+        }
+
+        @Override
+        public boolean visitAttribute(AttributeOwner owner, Symbol name, int length) {
+            events.add("attribute " + owner + " " + name);
+            return false;
+        }
+
+        @Override
+        public void visitEnd() {
+            events.add("end");
+        }
+    }
+
+    @Test
+    void testEventOrder() throws Exception {
+        RecordingVisitor visitor = new RecordingVisitor();
+        try (ClassFileReader reader = new ClassFileReader(sampleClassFile())) {
+            reader.accept(visitor);
+        }
+
+        List<String> events = visitor.events;
+        assertEquals(Arrays.asList(
+            "magic cafebabe",
+            "version",
+            "constantPool",
+            "class javavm/classfile/ClassFileVisitorTest$Sample extends java/lang/Object",
+            "interface java/lang/Runnable",
+            "field counter I",
+            "method <init>()V",
+            "method run()V"
+        ), events.subList(0, 8), "通知の順序が一致しません");
+        assertEquals("end", events.get(events.size() - 1), "最後にvisitEndが呼び出されるべきです");
+        // メソッドの属性は要求していないため、以降はクラスの属性だけが通知される
+        for (String event : events.subList(8, events.size() - 1)) {
+            assertTrue(event.startsWith("attribute CLASS "), "クラスの属性だけが通知されるべきです: " + event);
+        }
+        assertTrue(events.contains("attribute CLASS SourceFile"), "SourceFile属性が通知されるべきです: " + events);
+    }
+
+    @Test
+    void testCodeContentOnlyWhenRequested() throws Exception {
+        List<String> methods = new ArrayList<>();
+        List<ByteBuffer> codes = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+
+        ClassFileVisitor visitor = new ClassFileVisitor() {
+            ConstantPool constantPool;
+            String method;
+
+            @Override
+            public boolean visitConstantPool(ConstantPool constantPool) {
+                this.constantPool = constantPool;
+                return false;
+            }
+
+            @Override
+            public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex) {
+                method = constantPool.utf8(nameIndex);
+                return true;
+            }
+
+            @Override
+            public boolean visitAttribute(AttributeOwner owner, Symbol name, int length) {
+                if (owner == AttributeOwner.METHOD && name.toString().equals("Code") && method.equals("run")) {
+                    lengths.add(length);
+                    return true;
+                }
+                skipped.add(owner + " " + name);
+                return false;
+            }
+
+            @Override
+            public void visitAttributeContent(AttributeOwner owner, Symbol name, ByteBuffer content) {
+                methods.add(method);
+                codes.add(content);
+            }
+        };
+
+        try (ClassFileReader reader = new ClassFileReader(sampleClassFile())) {
+            reader.accept(visitor);
+        }
+
+        assertEquals(List.of("run"), methods, "要求したCode属性だけが通知されるべきです");
+        assertTrue(skipped.contains("METHOD Code"), "<init>のCode属性は読み飛ばされるべきです: " + skipped);
+
+        ByteBuffer code = codes.get(0);
+        assertEquals((int) lengths.get(0), code.remaining(), "内容の長さが属性の長さと一致しません");
+        assertTrue(code.isReadOnly(), "属性の内容は読み取り専用であるべきです");
+        // Code属性: max_stack(u2), max_locals(u2), code_length(u4), code[code_length], ...
+        int maxLocals = code.getShort(2) & 0xFFFF;
+        int codeLength = code.getInt(4);
+        assertEquals(1, maxLocals, "runメソッドのローカル変数はthisのみです");
+        assertTrue(codeLength > 0 && codeLength < code.remaining(), "code_lengthが不正です: " + codeLength);
+        assertEquals(0xB1, code.get(8 + codeLength - 1) & 0xFF, "runメソッドの最後の命令はreturnであるべきです");
+    }
+
+    @Test
+    void testVisitConstants() throws Exception {
+        int[] visited = new int[1];
+        int[] expected = new int[1];
+        ClassFileVisitor visitor = new ClassFileVisitor() {
+            @Override
+            public boolean visitConstantPool(ConstantPool constantPool) {
+                for (int i = 1; i < constantPool.size(); i++) {
+                    if (constantPool.tag(i) != 0) {
+                        expected[0]++;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void visitConstant(ConstantPool constantPool, int index, int tag) {
+                assertEquals(constantPool.tag(index), tag, "通知されたタグが一致しません: #" + index);
+                visited[0]++;
+            }
+        };
+
+        try (ClassFileReader reader = new ClassFileReader(sampleClassFile())) {
+            reader.accept(visitor);
+        }
+
+        assertTrue(visited[0] > 0, "定数プールのエントリが通知されるべきです");
+        assertEquals(expected[0], visited[0], "使用不可のスロットを除くすべてのエントリが通知されるべきです");
+    }
+
+    @Test
+    void testTrailingDataRejected() throws Exception {
+        byte[] content = sampleClassFile();
+        byte[] extended = Arrays.copyOf(content, content.length + 1);
+
+        try (ClassFileReader reader = new ClassFileReader(extended)) {
+            ClassFormatError exception = assertThrows(ClassFormatError.class, () -> reader.accept(new RecordingVisitor()),
+                "末尾に余分なデータがある場合はClassFormatErrorをスローする必要があります");
+            assertTrue(exception.getMessage().contains("余分なデータ"), "例外メッセージに余分なデータがある旨を含める必要があります");
+        }
+    }
+
+    @Test
+    void testTruncatedAttributeRejected() throws Exception {
+        byte[] content = sampleClassFile();
+        byte[] truncated = Arrays.copyOf(content, content.length - 1);
+        RecordingVisitor visitor = new RecordingVisitor();
+
+        try (ClassFileReader reader = new ClassFileReader(truncated)) {
+            assertThrows(ClassFormatError.class, () -> reader.accept(visitor),
+                "属性の内容が途中で終わっている場合はClassFormatErrorをスローする必要があります");
+        }
+        assertFalse(visitor.events.contains("end"), "不正なクラスファイルではvisitEndは呼び出されないはずです");
+    }
+}
@@ -0,0 +1,235 @@
+package javavm.classfile;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantPoolTest {
+    private static final byte[] HEADER = {
+        // マジックナンバー
+        (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+        // バージョン情報（Java 8）
+        0x00, 0x00, 0x00, 0x34
+    };
+
+    private ConstantPool readPool(byte[] pool) {
+        return readPool(pool, false);
+    }
+
+    private ConstantPool readPool(byte[] pool, boolean lazy) {
+        byte[] content = new byte[HEADER.length + pool.length];
+        System.arraycopy(HEADER, 0, content, 0, HEADER.length);
+        System.arraycopy(pool, 0, content, HEADER.length, pool.length);
+
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            reader.readMagic();
+            reader.readVersion();
+            return lazy ? reader.readLazyConstantPool() : reader.readCompactConstantPool();
+        }
+    }
+
+    /**
+     * すべてのタグを含む定数プール（カウント = 20）
+     */
+    private byte[] createPoolWithAllTags() {
+        return new byte[] {
+            0x00, 0x14,
+            // #1: CONSTANT_Utf8 {"Test"}
+            0x01, 0x00, 0x04, 0x54, 0x65, 0x73, 0x74,
+            // #2: CONSTANT_Class {name_index = 1}
+            0x07, 0x00, 0x01,
+            // #3: CONSTANT_Utf8 {"()V"}
+            0x01, 0x00, 0x03, 0x28, 0x29, 0x56,
+            // #4: CONSTANT_NameAndType {name_index = 1, descriptor_index = 3}
+            0x0C, 0x00, 0x01, 0x00, 0x03,
+            // #5: CONSTANT_Fieldref {class_index = 2, name_and_type_index = 4}
+            0x09, 0x00, 0x02, 0x00, 0x04,
+            // #6: CONSTANT_Methodref {class_index = 2, name_and_type_index = 4}
+            0x0A, 0x00, 0x02, 0x00, 0x04,
+            // #7: CONSTANT_InterfaceMethodref {class_index = 2, name_and_type_index = 4}
+            0x0B, 0x00, 0x02, 0x00, 0x04,
+            // #8: CONSTANT_String {string_index = 1}
+            0x08, 0x00, 0x01,
+            // #9: CONSTANT_Integer {-2}
+            0x03, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFE,
+            // #10: CONSTANT_Float {1.5f = 0x3FC00000}
+            0x04, 0x3F, (byte)0xC0, 0x00, 0x00,
+            // #11-12: CONSTANT_Long {0x0123456789ABCDEF}
+            0x05, 0x01, 0x23, 0x45, 0x67, (byte)0x89, (byte)0xAB, (byte)0xCD, (byte)0xEF,
+            // #13-14: CONSTANT_Double {2.5 = 0x4004000000000000}
+            0x06, 0x40, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            // #15: CONSTANT_MethodHandle {reference_kind = 5, reference_index = 6}
+            0x0F, 0x05, 0x00, 0x06,
+            // #16: CONSTANT_MethodType {descriptor_index = 3}
+            0x10, 0x00, 0x03,
+            // #17: CONSTANT_InvokeDynamic {bootstrap_method_attr_index = 7, name_and_type_index = 4}
+            0x12, 0x00, 0x07, 0x00, 0x04,
+            // #18: CONSTANT_Dynamic {bootstrap_method_attr_index = 8, name_and_type_index = 4}
+            0x11, 0x00, 0x08, 0x00, 0x04,
+            // #19: CONSTANT_Module {name_index = 1}
+            0x13, 0x00, 0x01
+        };
+    }
+
+    @Test
+    void testReadAllTags() {
+        assertAllTags(readPool(createPoolWithAllTags(), false));
+    }
+
+    @Test
+    void testReadAllTagsLazily() {
+        ConstantPool pool = readPool(createPoolWithAllTags(), true);
+
+        assertTrue(pool.isLazy(), "遅延モードの定数プールであるべきです");
+        assertAllTags(pool);
+    }
+
+    @Test
+    void testLazyUtf8IsMemoized() {
+        ConstantPool pool = readPool(createPoolWithAllTags(), true);
+
+        String first = pool.utf8(1);
+        assertSame(first, pool.utf8(1), "2回目以降のアクセスではメモ化された文字列を返すべきです");
+        assertSame(first, pool.className(2), "クラス名も同じ文字列を参照するべきです");
+    }
+
+    @Test
+    void testLazyScanTruncatedUtf8() {
+        // 長さ分のバイト列が存在しないUTF-8エントリ
+        byte[] pool = {
+            0x00, 0x02,
+            0x01, 0x00, 0x10, 0x54, 0x65
+        };
+
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> readPool(pool, true),
+            "走査時に不完全なエントリを検出した場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("予期せぬファイルの終わり"),
+            "例外メッセージにファイルが不完全である旨を含める必要があります"
+        );
+    }
+
+    @Test
+    void testLazyScanInvalidTag() {
+        byte[] pool = {
+            0x00, 0x02,
+            0x02, 0x00, 0x00
+        };
+
+        assertThrows(
+            ClassFormatError.class,
+            () -> readPool(pool, true),
+            "走査時に不正なタグ値を検出した場合はClassFormatErrorをスローする必要があります"
+        );
+    }
+
+    private void assertAllTags(ConstantPool pool) {
+        assertEquals(20, pool.size(), "定数プールカウントが一致しません");
+        assertEquals("Test", pool.utf8(1), "UTF-8文字列の値が一致しません");
+        assertEquals(1, pool.classNameIndex(2), "name_indexが一致しません");
+        assertEquals("Test", pool.className(2), "クラス名が一致しません");
+        assertEquals(1, pool.nameIndex(4), "NameAndTypeのname_indexが一致しません");
+        assertEquals(3, pool.descriptorIndex(4), "NameAndTypeのdescriptor_indexが一致しません");
+
+        for (int index = 5; index <= 7; index++) {
+            assertEquals(2, pool.memberClassIndex(index), "class_indexが一致しません: #" + index);
+            assertEquals(4, pool.nameAndTypeOf(index), "name_and_type_indexが一致しません: #" + index);
+        }
+        assertEquals(ConstantInfo.CONSTANT_Fieldref, pool.tag(5), "タグが一致しません");
+        assertEquals(ConstantInfo.CONSTANT_Methodref, pool.tag(6), "タグが一致しません");
+        assertEquals(ConstantInfo.CONSTANT_InterfaceMethodref, pool.tag(7), "タグが一致しません");
+
+        assertEquals(1, pool.stringIndex(8), "string_indexが一致しません");
+        assertEquals(-2, pool.intValue(9), "int値が一致しません");
+        assertEquals(1.5f, pool.floatValue(10), "float値が一致しません");
+        assertEquals(0x0123456789ABCDEFL, pool.longValue(11), "long値が一致しません");
+        assertEquals(0, pool.tag(12), "Longの次のスロットは使用不可であるべきです");
+        assertEquals(2.5, pool.doubleValue(13), "double値が一致しません");
+        assertEquals(0, pool.tag(14), "Doubleの次のスロットは使用不可であるべきです");
+
+        assertEquals(5, pool.methodHandleKind(15), "reference_kindが一致しません");
+        assertEquals(6, pool.methodHandleReferenceIndex(15), "reference_indexが一致しません");
+        assertEquals(3, pool.methodTypeDescriptorIndex(16), "MethodTypeのdescriptor_indexが一致しません");
+        assertEquals(7, pool.bootstrapMethodAttrIndex(17), "InvokeDynamicのbootstrap_method_attr_indexが一致しません");
+        assertEquals(4, pool.nameAndTypeOf(17), "InvokeDynamicのname_and_type_indexが一致しません");
+        assertEquals(8, pool.bootstrapMethodAttrIndex(18), "Dynamicのbootstrap_method_attr_indexが一致しません");
+        assertEquals(1, pool.moduleOrPackageNameIndex(19), "Moduleのname_indexが一致しません");
+    }
+
+    @Test
+    void testTagMismatch() {
+        ConstantPool pool = readPool(createPoolWithAllTags());
+
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> pool.classNameIndex(1),
+            "タグが一致しない場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("定数プールのタグが一致しません"),
+            "例外メッセージにタグが一致しない旨を含める必要があります"
+        );
+        assertThrows(ClassFormatError.class, () -> pool.memberClassIndex(4), "NameAndTypeはメンバ参照ではありません");
+        assertThrows(ClassFormatError.class, () -> pool.longValue(12), "Longの次のスロットは参照できません");
+    }
+
+    @Test
+    void testIndexOutOfRange() {
+        ConstantPool pool = readPool(createPoolWithAllTags());
+
+        assertThrows(ClassFormatError.class, () -> pool.tag(0), "インデックス0は参照できません");
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> pool.utf8(20),
+            "範囲外のインデックスの場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("インデックスが範囲外"),
+            "例外メッセージにインデックスが範囲外である旨を含める必要があります"
+        );
+    }
+
+    @Test
+    void testLongAtEndOfPool() {
+        // 2スロット目が定数プールに収まらないLong
+        byte[] pool = {
+            0x00, 0x02,
+            0x05, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01
+        };
+
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> readPool(pool),
+            "末尾を超える8バイト定数の場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("8バイト定数"),
+            "例外メッセージに8バイト定数に関する説明を含める必要があります"
+        );
+    }
+
+    @Test
+    void testInvalidTag() {
+        byte[] pool = {
+            0x00, 0x02,
+            0x02, 0x00, 0x00
+        };
+
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> readPool(pool),
+            "不正なタグ値の場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("不正なタグ"),
+            "例外メッセージにタグ値が不正である旨を含める必要があります"
+        );
+    }
+}
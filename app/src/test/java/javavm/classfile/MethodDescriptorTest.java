@@ -0,0 +1,36 @@
+package javavm.classfile;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodDescriptorTest {
+    @Test
+    void testParse() {
+        MethodDescriptor descriptor = MethodDescriptor.parse("(IJLjava/lang/String;[[DZ)Ljava/lang/Object;");
+
+        assertEquals(5, descriptor.getParameterCount(), "引数の数が一致しません");
+        assertEquals('I', descriptor.getParameterType(0), "引数の型が一致しません");
+        assertEquals('J', descriptor.getParameterType(1), "引数の型が一致しません");
+        assertEquals('L', descriptor.getParameterType(2), "引数の型が一致しません");
+        assertEquals('[', descriptor.getParameterType(3), "引数の型が一致しません");
+        assertEquals('Z', descriptor.getParameterType(4), "引数の型が一致しません");
+        assertEquals(6, descriptor.getParameterSlots(), "longは2スロットとして数えるべきです");
+        assertEquals('L', descriptor.getReturnType(), "戻り値の型が一致しません");
+    }
+
+    @Test
+    void testParseVoid() {
+        MethodDescriptor descriptor = MethodDescriptor.parse("()V");
+
+        assertEquals(0, descriptor.getParameterCount(), "引数はないはずです");
+        assertEquals(0, descriptor.getParameterSlots(), "スロット数は0であるべきです");
+        assertEquals('V', descriptor.getReturnType(), "戻り値の型が一致しません");
+    }
+
+    @Test
+    void testRejectsInvalidDescriptor() {
+        for (String invalid : new String[] {"", "I", "(I", "(V)V", "(L;)V", "(Ljava/lang/String)V", "()", "()VV", "(Q)V"}) {
+            assertThrows(ClassFormatError.class, () -> MethodDescriptor.parse(invalid), "不正な記述子は拒否されるべきです: " + invalid);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package javavm.classfile;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class SymbolTableTest {
+    @Test
+    void testSameBytesReturnSameSymbol() {
+        SymbolTable table = new SymbolTable();
+        // 異なるバッファ上の同じバイト列
+        ByteBuffer first = ByteBuffer.wrap(new byte[] {0x00, 'j', 'a', 'v', 'a', 0x00});
+        ByteBuffer second = ByteBuffer.wrap("java".getBytes());
+
+        Symbol symbol = table.intern(first, 1, 4);
+
+        assertSame(symbol, table.intern(second, 0, 4), "同じバイト列には同じシンボルを返すべきです");
+        assertSame(symbol, table.intern("java"), "文字列からも同じシンボルを取得できるべきです");
+        assertEquals("java", symbol.toString(), "シンボルの文字列表現が一致しません");
+        assertEquals(1, table.size(), "シンボルは1つだけ登録されるべきです");
+    }
+
+    @Test
+    void testDifferentBytesReturnDifferentSymbols() {
+        SymbolTable table = new SymbolTable();
+
+        Symbol init = table.intern("<init>");
+        Symbol clinit = table.intern("<clinit>");
+
+        assertNotSame(init, clinit, "異なるバイト列には異なるシンボルを返すべきです");
+        assertEquals(2, table.size(), "シンボルは2つ登録されるべきです");
+    }
+
+    @Test
+    void testManySymbolsSurviveRehash() {
+        SymbolTable table = new SymbolTable();
+        List<Symbol> symbols = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            symbols.add(table.intern("name" + i));
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertSame(symbols.get(i), table.intern("name" + i), "リハッシュ後も同じシンボルを返すべきです: " + i);
+        }
+        assertEquals(10000, table.size(), "登録されたシンボル数が一致しません");
+    }
+
+    @Test
+    void testDecodeModifiedUtf8() {
+        SymbolTable table = new SymbolTable();
+
+        // NUL文字は 0xC0 0x80 で表現される
+        Symbol nul = table.intern(new byte[] {'a', (byte)0xC0, (byte)0x80, 'b'});
+        assertEquals("a\u0000b", nul.toString(), "NUL文字が正しくデコードされるべきです");
+
+        // 3バイト文字（「あ」= U+3042）
+        Symbol hiragana = table.intern(new byte[] {(byte)0xE3, (byte)0x81, (byte)0x82});
+        assertEquals("あ", hiragana.toString(), "3バイト文字が正しくデコードされるべきです");
+
+        // 補助文字（U+1F600）はサロゲートペアの各charを3バイトずつで表現する
+        Symbol emoji = table.intern(new byte[] {
+            (byte)0xED, (byte)0xA0, (byte)0xBD, (byte)0xED, (byte)0xB8, (byte)0x80
+        });
+        assertEquals("😀", emoji.toString(), "サロゲートペアが正しくデコードされるべきです");
+    }
+
+    @Test
+    void testEncodeRoundTrip() {
+        String value = "a\u0000あ😀";
+        byte[] bytes = ModifiedUtf8.encode(value);
+
+        assertArrayEquals(new byte[] {
+            'a', (byte)0xC0, (byte)0x80, (byte)0xE3, (byte)0x81, (byte)0x82,
+            (byte)0xED, (byte)0xA0, (byte)0xBD, (byte)0xED, (byte)0xB8, (byte)0x80
+        }, bytes, "修正UTF-8へのエンコード結果が一致しません");
+        assertEquals(value, ModifiedUtf8.decode(bytes), "デコード結果が元の文字列と一致しません");
+    }
+
+    @Test
+    void testInvalidModifiedUtf8() {
+        SymbolTable table = new SymbolTable();
+
+        // 0x00 は修正UTF-8では使用できない
+        assertThrows(ClassFormatError.class, () -> table.intern(new byte[] {'a', 0x00}),
+            "0x00を含むバイト列の場合はClassFormatErrorをスローする必要があります");
+        // 4バイト形式は使用できない
+        assertThrows(ClassFormatError.class, () -> table.intern(new byte[] {(byte)0xF0, (byte)0x9F, (byte)0x98, (byte)0x80}),
+            "4バイト形式の場合はClassFormatErrorをスローする必要があります");
+
+        ClassFormatError exception = assertThrows(
+            ClassFormatError.class,
+            () -> table.intern(new byte[] {(byte)0xE3, (byte)0x81}),
+            "途中で終わるバイト列の場合はClassFormatErrorをスローする必要があります"
+        );
+
+        assertTrue(
+            exception.getMessage().contains("修正UTF-8"),
+            "例外メッセージに修正UTF-8に関する説明を含める必要があります"
+        );
+        assertEquals(0, table.size(), "不正なバイト列は登録されないべきです");
+    }
+
+    @Test
+    void testConcurrentIntern() throws Exception {
+        SymbolTable table = new SymbolTable();
+        int threadCount = 8;
+        int symbolCount = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<Symbol[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Symbol[] result = new Symbol[symbolCount];
+                    for (int i = 0; i < symbolCount; i++) {
+                        result[i] = table.intern("java/lang/Class" + i);
+                    }
+                    return result;
+                }));
+            }
+            start.countDown();
+
+            Symbol[] expected = futures.get(0).get();
+            for (Future<Symbol[]> future : futures) {
+                Symbol[] actual = future.get();
+                for (int i = 0; i < symbolCount; i++) {
+                    assertSame(expected[i], actual[i], "すべてのスレッドが同じシンボルを取得するべきです: " + i);
+                }
+            }
+            assertEquals(symbolCount, table.size(), "同じ名前は1回だけ登録されるべきです");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testClassFilesShareSymbols() {
+        byte[] content = new byte[] {
+            (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE,
+            0x00, 0x00, 0x00, 0x34,
+            0x00, 0x02,
+            // #1: CONSTANT_Utf8 {"()V"}
+            0x01, 0x00, 0x03, 0x28, 0x29, 0x56
+        };
+
+        ConstantInfo[] first;
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            reader.readMagic();
+            reader.readVersion();
+            first = reader.readConstantPool();
+        }
+        ConstantPool second;
+        try (ClassFileReader reader = new ClassFileReader(content.clone())) {
+            reader.readMagic();
+            reader.readVersion();
+            second = reader.readLazyConstantPool();
+        }
+
+        Symbol symbol = ((ConstantUtf8Info)first[1]).getSymbol();
+        assertSame(symbol, second.symbol(1), "異なるクラスファイルの同じ名前は同じシンボルであるべきです");
+        assertSame(symbol, SymbolTable.getInstance().intern("()V"), "VM全体のシンボルテーブルに登録されるべきです");
+    }
+}
@@ -0,0 +1,315 @@
+package javavm.classloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import javavm.classfile.ClassArchive;
+import javavm.classfile.ClassFile;
+import javavm.classfile.MethodInfo;
+import javavm.verifier.VerificationCache;
+
+class BulkClassLoaderTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 指定した名前を持つ最小のクラスファイル（スーパークラスはjava/lang/Object）を生成します。
+     */
+    private static byte[] createClassFile(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        // 定数プールカウント = 5
+        out.writeShort(5);
+        // #1: CONSTANT_Utf8 {name}, #2: CONSTANT_Class {#1}
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(7);
+        out.writeShort(1);
+        // #3: CONSTANT_Utf8 {"java/lang/Object"}, #4: CONSTANT_Class {#3}
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // access_flags = public | super, this_class = #2, super_class = #4
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        // interfaces, fields, methods, attributes はすべて0個
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 型検査に失敗するメソッド（returnせずにバイトコードの末尾に達する）を1つ持つクラスファイルを生成します。
+     */
+    private static byte[] createUnverifiableClassFile(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(8);
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // #5: "run", #6: "()V", #7: "Code"
+        out.writeByte(1);
+        out.writeUTF("run");
+        out.writeByte(1);
+        out.writeUTF("()V");
+        out.writeByte(1);
+        out.writeUTF("Code");
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        // static void run() { iconst_0 }
+        out.writeShort(1);
+        out.writeShort(0x0008);
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);
+        out.writeShort(7);
+        out.writeInt(13);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeInt(1);
+        out.writeByte(0x03);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private Path writeClass(Path root, String name) throws IOException {
+        Path path = root.resolve(name + ".class");
+        Files.createDirectories(path.getParent());
+        Files.write(path, createClassFile(name));
+        return path;
+    }
+
+    @Test
+    void testLoadDirectoryTree() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            writeClass(tempDir, "sample/pkg" + (i % 5) + "/Class" + i);
+        }
+        // クラスファイル以外は無視される
+        Files.writeString(tempDir.resolve("sample/README.txt"), "not a class");
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry, 4).loadDirectory(tempDir);
+
+        assertEquals(50, result.getLoadedClasses().size(), "すべてのクラスがロードされるべきです");
+        assertTrue(result.getFailures().isEmpty(), "失敗したファイルはないはずです: " + result.getFailures());
+        assertEquals(50, registry.size(), "すべてのクラスがレジストリに登録されるべきです");
+
+        ClassFile classFile = registry.find("sample/pkg3/Class13");
+        assertNotNull(classFile, "クラス名で検索できるべきです");
+        assertEquals("java/lang/Object", classFile.getSuperName().toString(), "スーパークラス名が一致しません");
+    }
+
+    @Test
+    void testFailuresDoNotStopBatch() throws Exception {
+        writeClass(tempDir, "good/First");
+        writeClass(tempDir, "good/Second");
+        Path broken = tempDir.resolve("good/Broken.class");
+        Files.write(broken, new byte[] {(byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0x00});
+        Path wrongMagic = tempDir.resolve("good/WrongMagic.class");
+        Files.write(wrongMagic, new byte[] {0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x34});
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry, 2).loadDirectory(tempDir);
+
+        assertEquals(2, result.getLoadedClasses().size(), "正しいクラスはロードされるべきです");
+        assertEquals(2, result.getFailures().size(), "不正なファイルは失敗として記録されるべきです");
+        for (LoadFailure failure : result.getFailures()) {
+            assertTrue(failure.getCause() instanceof ClassFormatError,
+                "失敗の原因はClassFormatErrorであるべきです: " + failure);
+        }
+        assertEquals(broken, result.getFailures().get(0).getPath(), "失敗したファイルのパスが記録されるべきです");
+        assertNotNull(registry.find("good/First"), "正しいクラスは登録されるべきです");
+    }
+
+    @Test
+    void testClasspathOrderWinsForDuplicates() throws Exception {
+        Path first = tempDir.resolve("first");
+        Path second = tempDir.resolve("second");
+        Path expected = writeClass(first, "dup/Same");
+        writeClass(second, "dup/Same");
+        writeClass(second, "dup/Other");
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry, 4).loadClasspath(List.of(first, second));
+
+        assertEquals(2, registry.size(), "重複したクラスは1つだけ登録されるべきです");
+        assertEquals(1, result.getDuplicateCount(), "重複したクラスの数が一致しません");
+        assertSame(result.getLoadedClasses().get(0), registry.find("dup/Same"),
+            "クラスパスの先頭のクラスが登録されるべきです: " + expected);
+    }
+
+    @Test
+    void testLoadCompiledClasses() throws Exception {
+        // javacが生成した実際のクラスファイル（このテスト自身を含むディレクトリ）を読み込む
+        Path testClasses = Path.of(BulkClassLoaderTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry).loadDirectory(testClasses);
+
+        assertTrue(result.getFailures().isEmpty(), "javacが生成したクラスはすべて読み込めるべきです: " + result.getFailures());
+        ClassFile self = registry.find("javavm/classloader/BulkClassLoaderTest");
+        assertNotNull(self, "テストクラス自身が登録されるべきです");
+        assertEquals("java/lang/Object", self.getSuperName().toString(), "スーパークラス名が一致しません");
+        assertEquals(result.getLoadedClasses().size(), result.getVerifiedCount(), "すべてのクラスが検証されるべきです");
+        // 検証でデコードしたCode属性は保持しないため、ロード直後はどのメソッドもデコード済みではない
+        int methodsWithCode = 0;
+        for (ClassFile classFile : registry.classes()) {
+            for (MethodInfo method : classFile.getMethods()) {
+                methodsWithCode += method.hasCode() ? 1 : 0;
+            }
+        }
+        assertTrue(methodsWithCode > 0, "Code属性を持つメソッドがあるはずです");
+        assertEquals(methodsWithCode, registry.getDeferredCodeCount(), "Code属性はデコードされていないはずです");
+    }
+
+    @Test
+    void testVerifyErrorIsRecordedAsFailure() throws Exception {
+        writeClass(tempDir, "verify/Good");
+        Path bad = tempDir.resolve("verify/Bad.class");
+        Files.write(bad, createUnverifiableClassFile("verify/Bad"));
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry, 2, new VerificationCache()).loadDirectory(tempDir);
+
+        assertEquals(1, result.getLoadedClasses().size(), "検証に成功したクラスはロードされるべきです");
+        assertEquals(1, result.getFailures().size(), "検証に失敗したクラスは失敗として記録されるべきです");
+        LoadFailure failure = result.getFailures().get(0);
+        assertEquals(bad, failure.getPath(), "失敗したファイルのパスが記録されるべきです");
+        assertTrue(failure.getCause() instanceof VerifyError, "失敗の原因はVerifyErrorであるべきです: " + failure);
+        assertNull(registry.find("verify/Bad"), "検証に失敗したクラスは登録されないはずです");
+
+        // 検証を無効にした場合はそのままロードされる
+        BulkLoadResult unverified = new BulkClassLoader(new LoadedClassRegistry(), 2, null).loadDirectory(tempDir);
+        assertEquals(2, unverified.getLoadedClasses().size(), "検証しない場合はすべてロードされるべきです");
+        assertEquals(0, unverified.getVerifiedCount(), "検証したクラスはないはずです");
+    }
+
+    @Test
+    void testVerificationCacheReusesResults() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            writeClass(tempDir, "cached/Class" + i);
+        }
+        VerificationCache cache = new VerificationCache();
+
+        BulkLoadResult first = new BulkClassLoader(new LoadedClassRegistry(), 2, cache).loadDirectory(tempDir);
+        assertEquals(10, first.getVerifiedCount(), "すべてのクラスが検証されるべきです");
+        assertEquals(10, cache.getMissCount(), "初回はすべて検証するべきです");
+
+        BulkLoadResult second = new BulkClassLoader(new LoadedClassRegistry(), 2, cache).loadDirectory(tempDir);
+        assertEquals(10, second.getVerifiedCount(), "すべてのクラスが検証済みとなるべきです");
+        assertEquals(10, cache.getMissCount(), "内容が同じクラスは検証し直さないはずです");
+        assertEquals(10, cache.getHitCount(), "2回目はすべてキャッシュから返すべきです");
+        assertEquals(10, cache.size(), "記録した結果の数が一致しません");
+    }
+
+    @Test
+    void testArchiveSkipsUnchangedClasses() throws Exception {
+        Path classes = tempDir.resolve("classes");
+        for (int i = 0; i < 20; i++) {
+            writeClass(classes, "archived/Class" + i);
+        }
+        Path archivePath = tempDir.resolve("classes.jsa");
+
+        try (Classpath classpath = Classpath.open(List.of(classes))) {
+            BulkLoadResult dumped = new BulkClassLoader(new LoadedClassRegistry(), 2).dumpArchive(classpath, archivePath);
+            assertEquals(20, dumped.getLoadedClasses().size(), "すべてのクラスがロードされるべきです");
+            assertEquals(0, dumped.getArchivedCount(), "ダンプ時はアーカイブを使用しないはずです");
+        }
+
+        // 内容を変更したクラスと、更新時刻だけを変更したクラス
+        Path changed = classes.resolve("archived/Class3.class");
+        byte[] content = createClassFile("archived/Class3");
+        content[7] = 53;
+        Files.write(changed, content);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 60_000));
+        Path touched = classes.resolve("archived/Class4.class");
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 60_000));
+        // サイズと更新時刻を保ったまま内容を変更したクラス
+        Path preserved = classes.resolve("archived/Class5.class");
+        FileTime preservedTime = Files.getLastModifiedTime(preserved);
+        byte[] edited = createClassFile("archived/Class5");
+        edited[7] = 53;
+        Files.write(preserved, edited);
+        Files.setLastModifiedTime(preserved, preservedTime);
+        writeClass(classes, "archived/Added");
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        try (Classpath classpath = Classpath.open(List.of(classes))) {
+            ClassArchive archive = ClassArchive.open(archivePath);
+            BulkLoadResult result = new BulkClassLoader(registry, 2).load(classpath, archive);
+
+            assertTrue(result.getFailures().isEmpty(), "失敗したクラスはないはずです: " + result.getFailures());
+            assertEquals(21, registry.size(), "すべてのクラスが登録されるべきです");
+            assertEquals(18, result.getArchivedCount(), "変更されていないクラスはアーカイブから復元されるべきです");
+        }
+        assertEquals(53, registry.find("archived/Class3").getMajorVersion(), "変更されたクラスは解析し直すべきです");
+        assertEquals(53, registry.find("archived/Class5").getMajorVersion(), "更新時刻が同じでも内容が異なるクラスは解析し直すべきです");
+        assertEquals(52, registry.find("archived/Class4").getMajorVersion(), "内容が同じクラスはアーカイブのものと一致するべきです");
+        assertEquals("java/lang/Object", registry.find("archived/Class7").getSuperName().toString(), "スーパークラス名が一致しません");
+    }
+
+    @Test
+    void testArchiveStoresVerificationResults() throws Exception {
+        Path classes = tempDir.resolve("classes");
+        for (int i = 0; i < 5; i++) {
+            writeClass(classes, "stored/Class" + i);
+        }
+        Files.write(classes.resolve("stored/Bad.class"), createUnverifiableClassFile("stored/Bad"));
+        Path archivePath = tempDir.resolve("classes.jsa");
+
+        try (Classpath classpath = Classpath.open(List.of(classes))) {
+            BulkLoadResult dumped = new BulkClassLoader(new LoadedClassRegistry(), 2, new VerificationCache())
+                .dumpArchive(classpath, archivePath);
+            assertEquals(1, dumped.getFailures().size(), "検証に失敗したクラスは失敗として記録されるべきです");
+        }
+
+        // 内容を変更したクラスは検証し直す
+        Path changed = classes.resolve("stored/Class0.class");
+        byte[] content = createClassFile("stored/Class0");
+        content[7] = 53;
+        Files.write(changed, content);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 60_000));
+
+        VerificationCache cache = new VerificationCache();
+        try (Classpath classpath = Classpath.open(List.of(classes))) {
+            BulkLoadResult result = new BulkClassLoader(new LoadedClassRegistry(), 2, cache)
+                .load(classpath, ClassArchive.open(archivePath));
+
+            assertEquals(5, result.getVerifiedCount(), "検証に成功したクラスの数が一致しません");
+            assertEquals(1, result.getFailures().size(), "アーカイブに格納した失敗も報告されるべきです");
+            assertTrue(result.getFailures().get(0).getCause() instanceof VerifyError,
+                "失敗の原因はVerifyErrorであるべきです: " + result.getFailures());
+        }
+        assertEquals(5, cache.getArchiveHitCount(), "変更されていないクラスはアーカイブの検証結果を使うべきです");
+        assertEquals(1, cache.getMissCount(), "変更したクラスだけを検証するべきです");
+    }
+}
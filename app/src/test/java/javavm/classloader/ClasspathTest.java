@@ -0,0 +1,233 @@
+package javavm.classloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileVisitor;
+import javavm.classfile.ConstantPool;
+
+class ClasspathTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 指定した名前を持つ最小のクラスファイル（スーパークラスはjava/lang/Object）を生成します。
+     */
+    private static byte[] createClassFile(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(5);
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * クラスを格納したJARファイルを作成します。偶数番目のクラスは無圧縮、奇数番目のクラスは圧縮して格納します。
+     */
+    private Path writeJar(String fileName, String... classNames) throws IOException {
+        Path jar = tempDir.resolve(fileName);
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file)) {
+            JarEntry manifest = new JarEntry("META-INF/versions/9/Ignored.class");
+            out.putNextEntry(manifest);
+            out.write(new byte[] {0x00});
+            out.closeEntry();
+
+            for (int i = 0; i < classNames.length; i++) {
+                byte[] data = createClassFile(classNames[i]);
+                JarEntry entry = new JarEntry(classNames[i] + ".class");
+                if (i % 2 == 0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    void testLoadStoredAndDeflatedEntries() throws Exception {
+        Path jar = writeJar("lib.jar", "lib/Stored", "lib/Deflated", "lib/Stored2", "lib/Deflated2");
+
+        try (Classpath classpath = Classpath.open(List.of(jar))) {
+            assertEquals(4, classpath.size(), "META-INF以下を除くクラスが索引化されるべきです");
+            assertFalse(classpath.contains("META-INF/versions/9/Ignored"), "META-INF以下のエントリは無視されるべきです");
+
+            for (String name : List.of("lib/Stored", "lib/Deflated", "lib/Stored2", "lib/Deflated2")) {
+                ClassFile classFile = classpath.load(name);
+                assertEquals(name, classFile.getName().toString(), "クラス名が一致しません");
+                assertEquals("java/lang/Object", classFile.getSuperName().toString(), "スーパークラス名が一致しません");
+            }
+            assertEquals(jar, classpath.locate("lib/Deflated"), "JARファイルのパスが返されるべきです");
+        }
+    }
+
+    @Test
+    void testDeflatedEntryDoesNotShareBuffer() throws Exception {
+        Path jar = writeJar("lib.jar", "a/Stored", "a/First", "b/Stored", "b/Second");
+
+        try (Classpath classpath = Classpath.open(List.of(jar))) {
+            ClassFile first = classpath.load("a/First");
+            // 2つ目の展開でプールしたバッファが再利用されても、先に読み込んだクラスは影響を受けない
+            ClassFile second = classpath.load("b/Second");
+            assertEquals("a/First", first.getName().toString(), "先に読み込んだクラスの名前が変わってはいけません");
+            assertEquals("a/First", first.getConstantPool().utf8(1), "先に読み込んだ定数プールが変わってはいけません");
+            assertEquals("b/Second", second.getName().toString(), "クラス名が一致しません");
+        }
+    }
+
+    @Test
+    void testDirectoryPrecedesJar() throws Exception {
+        Path directory = tempDir.resolve("classes");
+        Path path = directory.resolve("app/Main.class");
+        Files.createDirectories(path.getParent());
+        Files.write(path, createClassFile("app/Main"));
+        Path jar = writeJar("app.jar", "app/Main", "app/Util");
+
+        try (Classpath classpath = Classpath.open(List.of(directory, jar))) {
+            assertEquals(2, classpath.size(), "同じ名前のクラスは1つだけ索引化されるべきです");
+            assertEquals(1, classpath.getShadowedCount(), "隠されたクラスの数が一致しません");
+            assertEquals(path, classpath.locate("app/Main"), "クラスパスの先頭のエントリが優先されるべきです");
+            assertEquals(jar, classpath.locate("app/Util"), "後方のJARのクラスも検索できるべきです");
+            assertEquals(List.of("app/Main", "app/Util"), classpath.classNames(), "クラス名はクラスパス上の順序で並ぶべきです");
+        }
+    }
+
+    @Test
+    void testMissingClass() throws Exception {
+        Path jar = writeJar("lib.jar", "lib/Present");
+
+        try (Classpath classpath = Classpath.open(List.of(jar))) {
+            assertThrows(ClassNotFoundException.class, () -> classpath.load("lib/Missing"),
+                "存在しないクラスはClassNotFoundExceptionになるべきです");
+            assertNull(classpath.locate("lib/Missing"), "存在しないクラスの格納場所はnullであるべきです");
+        }
+    }
+
+    @Test
+    void testInvalidJar() throws Exception {
+        Path jar = tempDir.resolve("broken.jar");
+        Files.write(jar, new byte[] {0x50, 0x4b, 0x03, 0x04, 0x00, 0x00});
+
+        assertThrows(ZipException.class, () -> Classpath.open(List.of(jar)),
+            "End of Central Directoryのないファイルは拒否されるべきです");
+    }
+
+    @Test
+    void testCorruptCentralDirectory() throws Exception {
+        Path jar = writeJar("lib.jar", "lib/Stored", "lib/Deflated");
+        byte[] original = Files.readAllBytes(jar);
+        ByteBuffer buffer = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+        int header = -1;
+        for (int i = original.length - 4; i >= 0; i--) {
+            if (buffer.getInt(i) == 0x02014b50) {
+                header = i;
+                break;
+            }
+        }
+        assertTrue(header >= 0, "セントラルディレクトリのヘッダが見つかりません");
+
+        // 名前の長さがファイルの末尾を超える
+        byte[] corrupt = original.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putShort(header + 28, (short) 0xFFFF);
+        Files.write(jar, corrupt);
+        assertThrows(ZipException.class, () -> Classpath.open(List.of(jar)), "名前の長さが不正なJARファイルは拒否されるべきです");
+
+        // ローカルヘッダの位置がセントラルディレクトリより後ろにある
+        corrupt = original.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(header + 42, 0x80000000);
+        Files.write(jar, corrupt);
+        assertThrows(ZipException.class, () -> Classpath.open(List.of(jar)), "ローカルヘッダの位置が不正なJARファイルは拒否されるべきです");
+
+        // セントラルディレクトリの位置が2GBを超える
+        corrupt = original.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(corrupt.length - 22 + 16, 0x80000000);
+        Files.write(jar, corrupt);
+        assertThrows(ZipException.class, () -> Classpath.open(List.of(jar)), "セントラルディレクトリの位置が不正なJARファイルは拒否されるべきです");
+    }
+
+    @Test
+    void testBulkLoadFromJar() throws Exception {
+        String[] names = new String[40];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "bulk/Class" + i;
+        }
+        Path jar = writeJar("bulk.jar", names);
+
+        LoadedClassRegistry registry = new LoadedClassRegistry();
+        BulkLoadResult result = new BulkClassLoader(registry, 4).loadClasspath(List.of(jar));
+
+        assertTrue(result.getFailures().isEmpty(), "失敗したエントリはないはずです: " + result.getFailures());
+        assertEquals(40, registry.size(), "すべてのクラスがレジストリに登録されるべきです");
+        assertNotNull(registry.find("bulk/Class17"), "クラス名で検索できるべきです");
+    }
+
+    @Test
+    void testVisitEntries() throws Exception {
+        Path jar = writeJar("lib.jar", "visit/Stored", "visit/Deflated");
+        List<String> names = new ArrayList<>();
+
+        try (Classpath classpath = Classpath.open(List.of(jar))) {
+            for (String className : classpath.classNames()) {
+                classpath.visit(className, new ClassFileVisitor() {
+                    ConstantPool constantPool;
+
+                    @Override
+                    public boolean visitConstantPool(ConstantPool constantPool) {
+                        this.constantPool = constantPool;
+                        return false;
+                    }
+
+                    @Override
+                    public void visitClass(int accessFlags, int thisClass, int superClass) {
+                        names.add(constantPool.className(thisClass) + " : " + constantPool.className(superClass));
+                    }
+                });
+            }
+        }
+
+        assertEquals(List.of("visit/Stored : java/lang/Object", "visit/Deflated : java/lang/Object"), names,
+            "無圧縮・圧縮の両方のエントリを走査できるべきです");
+    }
+}
@@ -0,0 +1,281 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileReader;
+
+class CodeDecoderTest {
+    /**
+     * static int m(int) を1つだけ持ち、指定したバイトコードと例外テーブルを持つクラスファイルを作成します。
+     * @param accessFlags メソッドのアクセスフラグ（ACC_STATICを含める）
+     */
+    private static byte[] createClassFile(int accessFlags, int maxLocals, byte[] code, int[] exceptionTable) throws IOException {
+        return createClassFile("Test", "m", accessFlags, maxLocals, code, exceptionTable);
+    }
+
+    /**
+     * int型の引数を1つ受け取りintを返すメソッドを1つだけ持ち、指定したバイトコードと例外テーブルを持つクラスファイルを作成します。
+     * StackMapTable属性は出力しません。
+     * @param className 内部形式のクラス名
+     * @param name メソッド名
+     * @param accessFlags メソッドのアクセスフラグ（ACC_STATICを含める）
+     */
+    static byte[] createClassFile(String className, String name, int accessFlags, int maxLocals, byte[] code,
+            int[] exceptionTable) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(10);
+        // #1: クラス名, #2: Class #1, #3: メソッド名, #4: "(I)I", #5: "Code"
+        out.writeByte(1);
+        out.writeUTF(className);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(1);
+        out.writeUTF("(I)I");
+        out.writeByte(1);
+        out.writeUTF("Code");
+        // #6: Integer 100000, #7-8: Long 1L << 40, #9: Float 2.5f
+        out.writeByte(3);
+        out.writeInt(100000);
+        out.writeByte(5);
+        out.writeLong(1L << 40);
+        out.writeByte(4);
+        out.writeFloat(2.5f);
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(accessFlags);
+        out.writeShort(3);
+        out.writeShort(4);
+        out.writeShort(1);
+        out.writeShort(5);
+        out.writeInt(12 + code.length + exceptionTable.length * 2);
+        out.writeShort(4);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(exceptionTable.length / 4);
+        for (int value : exceptionTable) {
+            out.writeShort(value);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private static DecodedCode decode(int maxLocals, byte[] code, int... exceptionTable) throws IOException {
+        return decode(0x0008, maxLocals, code, exceptionTable);
+    }
+
+    static DecodedCode decode(int accessFlags, int maxLocals, byte[] code, int... exceptionTable) throws IOException {
+        byte[] content = createClassFile(accessFlags, maxLocals, code, exceptionTable);
+        MethodArea methodArea = new MethodArea(className -> {
+            try (ClassFileReader reader = new ClassFileReader(content)) {
+                return reader.readClassFile();
+            }
+        });
+        // 手で組み立てたバイトコードはStackMapTable属性を持たないため、検証せずにデコードだけを確かめる
+        methodArea.setVerification(false);
+        return methodArea.resolveMethod("Test", "m", "(I)I").getDecodedCode();
+    }
+
+    static byte[] code(int... values) {
+        byte[] code = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            code[i] = (byte) values[i];
+        }
+        return code;
+    }
+
+    @Test
+    void testCanonicalizesShortForms() throws Exception {
+        DecodedCode decoded = decode(2, code(
+            Opcode.ILOAD_0,
+            Opcode.BIPUSH, -5,
+            Opcode.IADD,
+            Opcode.FCONST_2,
+            Opcode.FSTORE_1,
+            Opcode.LDC, 6,
+            Opcode.IADD,
+            Opcode.IRETURN));
+
+        assertArrayEquals(new int[] {
+            // iloadとiconstの並びは先頭がスーパー命令になる
+            DecodedOpcode.ILOAD_ICONST, 0,
+            DecodedOpcode.ICONST, -5,
+            Opcode.IADD,
+            DecodedOpcode.ICONST, Float.floatToRawIntBits(2.0f),
+            Opcode.ISTORE, 1,
+            DecodedOpcode.ICONST, 100000,
+            Opcode.IADD,
+            Opcode.IRETURN
+        }, decoded.instructions, "短縮形の命令は正規化されるべきです");
+        assertEquals(0, decoded.bytecodeIndex(0), "先頭の命令のオフセットが一致しません");
+        assertEquals(1, decoded.bytecodeIndex(2), "bipushのオフセットが一致しません");
+        assertEquals(-1, decoded.bytecodeIndex(3), "オペランドの位置は命令の先頭ではありません");
+    }
+
+    @Test
+    void testResolvesBranchTargets() throws Exception {
+        DecodedCode decoded = decode(1, code(
+            Opcode.ILOAD_0,           // 0
+            Opcode.IFEQ, 0, 8,        // 1 -> 9
+            Opcode.LDC2_W, 0, 7,      // 4
+            Opcode.L2I,               // 7
+            Opcode.IRETURN,           // 8
+            Opcode.ICONST_M1,         // 9
+            Opcode.IRETURN));         // 10
+
+        assertArrayEquals(new int[] {
+            Opcode.ILOAD, 0,
+            Opcode.IFEQ, 9,
+            DecodedOpcode.LCONST, 1 << 8, 0,
+            Opcode.L2I,
+            Opcode.IRETURN,
+            DecodedOpcode.ICONST, -1,
+            Opcode.IRETURN
+        }, decoded.instructions, "分岐先は命令位置に変換されるべきです");
+    }
+
+    @Test
+    void testTableSwitchAndHandlers() throws Exception {
+        // tableswitchのオペランドは4バイト境界から始まる
+        DecodedCode decoded = decode(1, code(
+            Opcode.ILOAD_0,                           // 0
+            Opcode.TABLESWITCH, 0, 0,                 // 1, padding
+            0, 0, 0, 23,                              // default -> 24
+            0, 0, 0, 1,                               // low
+            0, 0, 0, 2,                               // high
+            0, 0, 0, 25,                              // 1 -> 26
+            0, 0, 0, 23,                              // 2 -> 24
+            Opcode.ICONST_0,                          // 24
+            Opcode.IRETURN,                           // 25
+            Opcode.ICONST_1,                          // 26
+            Opcode.IRETURN),                          // 27
+            0, 24, 26, 0);
+
+        assertArrayEquals(new int[] {
+            Opcode.ILOAD, 0,
+            Opcode.TABLESWITCH, 1, 2, 8, 11, 8,
+            DecodedOpcode.ICONST, 0,
+            Opcode.IRETURN,
+            DecodedOpcode.ICONST, 1,
+            Opcode.IRETURN
+        }, decoded.instructions, "tableswitchの分岐先が一致しません");
+        assertArrayEquals(new int[] {0, 8, 11}, decoded.handlers, "例外テーブルは命令位置に変換されるべきです");
+        assertNull(decoded.catchTypes[0], "catch_typeが0のハンドラはすべての例外を捕捉するはずです");
+    }
+
+    @Test
+    void testSynchronizedMethod() throws Exception {
+        // static synchronized int m(int)
+        DecodedCode decoded = decode(0x0028, 1, code(
+            Opcode.ILOAD_0,           // 0
+            Opcode.IFEQ, 0, 5,        // 1 -> 6
+            Opcode.ICONST_1,          // 4
+            Opcode.IRETURN,           // 5
+            Opcode.ICONST_0,          // 6
+            Opcode.IRETURN));         // 7
+
+        assertArrayEquals(new int[] {
+            DecodedOpcode.ACONST, 0,
+            Opcode.ASTORE, 1,
+            Opcode.ALOAD, 1,
+            Opcode.MONITORENTER,
+            Opcode.ILOAD, 0,
+            Opcode.IFEQ, 17,
+            DecodedOpcode.ICONST, 1,
+            Opcode.ALOAD, 1,
+            Opcode.MONITOREXIT,
+            Opcode.IRETURN,
+            DecodedOpcode.ICONST, 0,
+            Opcode.ALOAD, 1,
+            Opcode.MONITOREXIT,
+            Opcode.IRETURN,
+            Opcode.ALOAD, 1,
+            Opcode.MONITOREXIT,
+            Opcode.ATHROW
+        }, decoded.instructions, "入口とreturnの前でロックを取得、解放するべきです");
+        assertSame(decoded.getMethod().getOwner(), decoded.constants[0], "staticメソッドはクラスをロックするはずです");
+        assertEquals(2, decoded.maxLocals, "ロックするオブジェクトのローカル変数を追加するべきです");
+        assertEquals(0, decoded.bytecodeIndex(7), "バイトコードの先頭は入口の処理の後ろに対応するべきです");
+        assertArrayEquals(new int[] {7, 23, 23}, decoded.handlers, "メソッド全体で例外を捕捉してロックを解放するべきです");
+        assertNull(decoded.catchTypes[0], "ロックを解放するハンドラはすべての例外を捕捉するはずです");
+        // 参照マップは追加した命令を含めて計算できる
+        assertTrue(decoded.getReferenceMap().isReference(23, 1), "ハンドラではロックするオブジェクトが参照です");
+    }
+
+    @Test
+    void testFusesSuperinstructions() throws Exception {
+        DecodedCode decoded = decode(2, code(
+            Opcode.ILOAD_0,           // 0
+            Opcode.ILOAD_1,           // 1
+            Opcode.IADD,              // 2
+            Opcode.ISTORE_1,          // 3
+            Opcode.ILOAD_0,           // 4
+            Opcode.ILOAD_1,           // 5
+            Opcode.IF_ICMPGE, 0, 9,   // 6 -> 15
+            Opcode.IINC, 1, 1,        // 9
+            Opcode.GOTO, -1, -8,      // 12 -> 4
+            Opcode.ILOAD_1,           // 15
+            Opcode.IRETURN));         // 16
+
+        assertArrayEquals(new int[] {
+            DecodedOpcode.ILOAD_ILOAD_IADD, 0,
+            Opcode.ILOAD, 1,
+            Opcode.IADD,
+            Opcode.ISTORE, 1,
+            DecodedOpcode.ILOAD_ILOAD, 0,
+            Opcode.ILOAD, 1,
+            Opcode.IF_ICMPGE, 18,
+            DecodedOpcode.IINC_GOTO, 1, 1,
+            Opcode.GOTO, 7,
+            Opcode.ILOAD, 1,
+            Opcode.IRETURN
+        }, decoded.instructions, "並びの先頭だけをスーパー命令に書き換えるべきです");
+        assertEquals(Opcode.ILOAD, DecodedOpcode.unfused(decoded.instructions[7]), "元の命令番号を返すべきです");
+        assertTrue(decoded.getReferenceMap().frameSize(9) >= 0, "スーパー命令の後続の命令も参照マップに含まれるべきです");
+
+        CodeDecoder.setSuperinstructions(false);
+        try {
+            assertEquals(Opcode.ILOAD, decode(2, code(Opcode.ILOAD_0, Opcode.ILOAD_1, Opcode.IADD, Opcode.IRETURN)).instructions[0],
+                "無効の場合は書き換えないはずです");
+        } finally {
+            CodeDecoder.setSuperinstructions(true);
+        }
+    }
+
+    @Test
+    void testRejectsBranchIntoInstruction() throws Exception {
+        VerifyError error = assertThrows(VerifyError.class, () -> decode(1, code(
+            Opcode.GOTO, 0, 1,
+            Opcode.ICONST_0,
+            Opcode.IRETURN)), "命令の途中への分岐は拒否されるべきです");
+        assertTrue(error.getMessage().contains("Test.m(I)I"), "例外メッセージにメソッド名を含める必要があります");
+    }
+
+    @Test
+    void testRejectsInvalidCode() {
+        assertThrows(VerifyError.class, () -> decode(1, code(Opcode.ILOAD, 1, Opcode.IRETURN)),
+            "範囲外のローカル変数は拒否されるべきです");
+        assertThrows(VerifyError.class, () -> decode(1, code(Opcode.ICONST_0)),
+            "末尾を超えて実行が継続するコードは拒否されるべきです");
+        assertThrows(VerifyError.class, () -> decode(1, code(0xFF, Opcode.IRETURN)),
+            "不正なオペコードは拒否されるべきです");
+        assertThrows(VerifyError.class, () -> decode(1, code(Opcode.SIPUSH, 0)),
+            "途中で終わる命令は拒否されるべきです");
+    }
+}
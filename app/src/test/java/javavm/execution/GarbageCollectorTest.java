@@ -0,0 +1,200 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+class GarbageCollectorTest {
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+
+    private static MethodArea methodArea(Heap heap) {
+        return new MethodArea(InterpreterTest.TEST_CLASSES, heap);
+    }
+
+    @Test
+    void testMinorCollection() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024));
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        assertEquals(GuestObjects.churn(100000), new Interpreter(methodArea).execute(churn, 100000), "GCの後も結果が一致するべきです");
+        assertTrue(heap.getMinorCollections() > 10, "Edenが一杯になるたびにMinor GCを行うべきです: " + heap.getMinorCollections());
+        assertEquals(0, heap.getFullCollections(), "生き残るオブジェクトが少なければFull GCは不要です");
+        assertTrue(heap.getOldUsed() < 4096, "短命なオブジェクトは昇格させるべきではありません: " + heap.getOldUsed());
+    }
+
+    @Test
+    void testCardTable() {
+        // すべてのオブジェクトを最初のGCで昇格させ、Old世代の配列からYoung世代への参照を作る
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024, 256 << 10, 1));
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        assertEquals(GuestObjects.churn(50000), new Interpreter(methodArea).execute(churn, 50000),
+            "Old世代からの参照をたどって生きているオブジェクトを残すべきです");
+        assertTrue(heap.getMinorCollections() > 10, "Minor GCの回数が少なすぎます");
+        assertTrue(heap.getOldUsed() > 0, "昇格までの回数が1なら生き残ったオブジェクトは昇格するべきです");
+    }
+
+    @Test
+    void testFullCollection() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024, 256 << 10, 1));
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod rounds = methodArea.resolveMethod(OBJECTS, "rounds", "(II)J");
+        assertEquals(GuestObjects.rounds(40, 5000), new Interpreter(methodArea).execute(rounds, 40, 5000),
+            "マーク・コンパクトの後も結果が一致するべきです");
+        assertTrue(heap.getFullCollections() > 0, "昇格したゴミでOld世代が一杯になったらFull GCを行うべきです");
+
+        long before = heap.getUsed();
+        heap.collect();
+        assertTrue(heap.getUsed() < before, "明示的なFull GCでゴミを回収するべきです");
+        assertEquals(0, heap.edenTop.get() - heap.edenStart, "Full GCの後はEdenが空になるべきです");
+    }
+
+    @Test
+    void testHostReferencesAreCollected() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024));
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod arrayChurn = methodArea.resolveMethod(OBJECTS, "arrayChurn", "(I)J");
+        Interpreter interpreter = new Interpreter(methodArea);
+        assertEquals(GuestObjects.arrayChurn(200000), interpreter.execute(arrayChurn, 200000),
+            "GCの後もフィールドに格納した配列が残るべきです");
+        assertTrue(heap.getMinorCollections() > 10, "Minor GCの回数が少なすぎます");
+        // 40万個の配列を格納したが、残るのは最後のMinor GCの後に登録したものと生きているものだけ
+        int registered = heap.hostReferences.size();
+        assertTrue(registered < 40000, "Minor GCで死んだオブジェクトの配列を解放するべきです: " + registered);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(GuestObjects.arrayChurn(200000), interpreter.execute(arrayChurn, 200000), "繰り返した結果が一致しません");
+            assertTrue(heap.hostReferences.size() < 40000, "登録数は実行を繰り返しても増え続けないはずです: " + heap.hostReferences.size());
+        }
+        heap.collect();
+        // staticフィールドの配列と文字列の定数だけが残る
+        assertTrue(heap.hostReferences.size() <= 4, "Full GCで到達しない配列をすべて解放するべきです: " + heap.hostReferences.size());
+        assertArrayEquals(new int[] {1, 2, 3}, (int[]) interpreter.execute(methodArea.resolveMethod(OBJECTS, "pick", "(I)Ljava/lang/Object;"), 3),
+            "staticフィールドの配列は解放しないはずです");
+    }
+
+    @Test
+    void testInstanceSurvivesCollection() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024));
+        Heap heap = methodArea.getHeap();
+        Interpreter interpreter = new Interpreter(methodArea);
+        RuntimeMethod keep = methodArea.resolveMethod(OBJECTS, "keep", "(I)Ljava/lang/Object;");
+        RuntimeMethod pick = methodArea.resolveMethod(OBJECTS, "pick", "(I)Ljava/lang/Object;");
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        RuntimeMethod nullField = methodArea.resolveMethod(OBJECTS, "nullField", "(L" + OBJECTS + "$Point;)I");
+
+        Instance kept = (Instance) interpreter.execute(keep, 7);
+        Instance picked = (Instance) interpreter.execute(pick, 1);
+        long address = kept.getAddress();
+        interpreter.execute(churn, 20000);
+        heap.collect();
+        assertTrue(heap.getMinorCollections() > 0, "GCが行われていません");
+        assertNotEquals(address, kept.getAddress(), "GCでオブジェクトは移動するべきです");
+        assertSame(kept, interpreter.execute(keep, 0), "同じオブジェクトには同じInstanceを返すべきです");
+        assertEquals(7, interpreter.execute(nullField, kept), "staticフィールドから参照されたオブジェクトが残っていません");
+        assertEquals(1, interpreter.execute(nullField, picked), "ホストが保持しているオブジェクトが残っていません");
+        assertEquals(OBJECTS + "$Point", picked.getType().getName().toString(), "移動後のクラスが一致しません");
+    }
+
+    @Test
+    void testConcurrentCollection() throws Exception {
+        MethodArea methodArea = methodArea(new Heap(2 << 20, 1024));
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        RuntimeMethod linkedSum = methodArea.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                boolean retain = i % 2 == 0;
+                results.add(executor.submit(() -> {
+                    Interpreter interpreter = new Interpreter(methodArea);
+                    start.await();
+                    return retain ? interpreter.execute(linkedSum, 3000) : interpreter.execute(churn, 50000);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < threads; i++) {
+                Object expected = i % 2 == 0 ? GuestObjects.linkedSum(3000) : GuestObjects.churn(50000);
+                assertEquals(expected, results.get(i).get(), "GCと同時に実行した結果が一致しません");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(heap.getMinorCollections() > 0, "複数のスレッドの割り当てでGCを行うべきです");
+    }
+
+    @Test
+    void testParallelCollection() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024, 256 << 10, 2));
+        Heap heap = methodArea.getHeap();
+        heap.setGcThreads(4);
+        assertEquals(4, heap.getGcThreads(), "GCのスレッド数が変更されていません");
+        Interpreter interpreter = new Interpreter(methodArea);
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        RuntimeMethod rounds = methodArea.resolveMethod(OBJECTS, "rounds", "(II)J");
+        RuntimeMethod linkedSum = methodArea.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        assertEquals(GuestObjects.churn(50000), interpreter.execute(churn, 50000), "並列のMinor GCの後も結果が一致するべきです");
+        assertEquals(GuestObjects.rounds(40, 5000), interpreter.execute(rounds, 40, 5000), "並列のFull GCの後も結果が一致するべきです");
+        assertEquals(GuestObjects.linkedSum(3000), interpreter.execute(linkedSum, 3000), "並列のGCの後も結果が一致するべきです");
+        assertTrue(heap.getMinorCollections() > 0, "Minor GCが行われていません");
+        assertTrue(heap.getFullCollections() > 0, "Full GCが行われていません");
+
+        heap.setGcThreads(1);
+        long before = heap.getUsed();
+        heap.collect();
+        assertTrue(heap.getUsed() <= before, "スレッド数を変更した後もGCを行えるべきです");
+        assertThrows(IllegalArgumentException.class, () -> heap.setGcThreads(0), "GCのスレッド数は1以上です");
+    }
+
+    @Test
+    void testPackedFields() {
+        // byte/short/charなどの小さいフィールドと圧縮した参照が、GCでの移動の後も保たれるべき
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024, 256 << 10, 2));
+        RuntimeMethod packed = methodArea.resolveMethod(OBJECTS, "packed", "(I)J");
+        Interpreter interpreter = new Interpreter(methodArea);
+        assertEquals(GuestObjects.packed(5000), interpreter.execute(packed, 5000), "詰めたフィールドの値が一致しません");
+        assertTrue(methodArea.getHeap().getMinorCollections() > 0, "GCが行われていません");
+    }
+
+    @Test
+    void testEvents() {
+        MethodArea methodArea = methodArea(new Heap(1 << 20, 1024));
+        Heap heap = methodArea.getHeap();
+        List<GcEvent> events = new ArrayList<>();
+        Consumer<GcEvent> listener = events::add;
+        heap.addGcListener(listener);
+        RuntimeMethod churn = methodArea.resolveMethod(OBJECTS, "churn", "(I)J");
+        new Interpreter(methodArea).execute(churn, 20000);
+        heap.collect();
+
+        assertEquals(heap.getMinorCollections() + heap.getFullCollections(), events.size(), "GCごとに通知するべきです");
+        GcEvent minor = events.get(0);
+        assertEquals(GcEvent.Kind.MINOR, minor.getKind(), "最初はMinor GCのはずです");
+        assertEquals(1, minor.getNumber(), "通し番号は1から始まるべきです");
+        assertTrue(minor.getCollectedBytes() > 0, "回収したバイト数を報告するべきです");
+        assertTrue(minor.getPauseNanos() > 0, "停止時間を報告するべきです");
+        assertTrue(minor.toString().startsWith("[GC minor #1] "), "形式が一致しません: " + minor);
+        GcEvent full = events.get(events.size() - 1);
+        assertEquals(GcEvent.Kind.FULL, full.getKind(), "明示的なGCはFull GCです");
+        assertEquals(heap.getUsed(), full.getUsedAfter(), "GC後の使用量が一致しません");
+        long total = 0;
+        for (GcEvent event : events) {
+            total += event.getPauseNanos();
+        }
+        assertEquals(total, heap.getTotalPauseNanos(), "停止時間の合計が一致しません");
+
+        heap.removeGcListener(listener);
+        int count = events.size();
+        heap.collect();
+        assertEquals(count, events.size(), "削除したリスナーには通知するべきではありません");
+    }
+}
@@ -0,0 +1,60 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class GcWorkersTest {
+    @Test
+    void testDrain() {
+        // 二分木の節点を番号でたどる。すべての節点をちょうど1回ずつ処理するべき
+        int nodes = 1 << 16;
+        GcWorkers workers = new GcWorkers(4);
+        try {
+            AtomicIntegerArray visits = new AtomicIntegerArray(nodes);
+            workers.push(0, 1);
+            workers.drain((worker, node) -> {
+                visits.incrementAndGet(node);
+                for (int child = node * 2; child <= node * 2 + 1; child++) {
+                    if (child < nodes) {
+                        workers.push(worker, child);
+                    }
+                }
+            });
+            for (int i = 1; i < nodes; i++) {
+                assertEquals(1, visits.get(i), "節点" + i + "を処理した回数が1ではありません");
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    void testForEach() {
+        GcWorkers workers = new GcWorkers(3);
+        try {
+            AtomicIntegerArray visits = new AtomicIntegerArray(10000);
+            workers.forEach(visits.length(), visits::incrementAndGet);
+            for (int i = 0; i < visits.length(); i++) {
+                assertEquals(1, visits.get(i), "番号" + i + "を処理した回数が1ではありません");
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    void testFailure() {
+        GcWorkers workers = new GcWorkers(2);
+        try {
+            workers.push(0, 1);
+            workers.push(1, 2);
+            assertThrows(IllegalStateException.class, () -> workers.drain((worker, object) -> {
+                throw new IllegalStateException("失敗");
+            }), "ワーカーの例外をスローするべきです");
+            assertThrows(IllegalArgumentException.class, () -> new GcWorkers(0), "ワーカーの数は1以上です");
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package javavm.execution;
+
+/**
+ * 仮想呼び出しとインターフェース呼び出しを使用するテスト用のプログラム
+ *
+ * 呼び出し箇所ごとのインラインキャッシュの状態を確かめるため、各メソッドの仮想呼び出しは1箇所だけにしています。
+ */
+final class GuestDispatch {
+    interface Shape {
+        int area();
+
+        default int sides() {
+            return 0;
+        }
+    }
+
+    abstract static class Base implements Shape {
+        final int size;
+
+        Base(int size) {
+            this.size = size;
+        }
+
+        int scaled(int factor) {
+            return area() * factor;
+        }
+    }
+
+    static final class Square extends Base {
+        Square(int size) {
+            super(size);
+        }
+
+        @Override
+        public int area() {
+            return size * size;
+        }
+
+        @Override
+        public int sides() {
+            return 4;
+        }
+    }
+
+    static final class Rect extends Base {
+        final int height;
+
+        Rect(int size, int height) {
+            super(size);
+            this.height = height;
+        }
+
+        @Override
+        public int area() {
+            return size * height;
+        }
+
+        @Override
+        public int sides() {
+            return 4;
+        }
+    }
+
+    static final class Triangle extends Base {
+        Triangle(int size) {
+            super(size);
+        }
+
+        @Override
+        public int area() {
+            return size * size / 2;
+        }
+
+        @Override
+        public int sides() {
+            return 3;
+        }
+    }
+
+    static class Circle extends Base {
+        Circle(int size) {
+            super(size);
+        }
+
+        @Override
+        public int area() {
+            return 3 * size * size;
+        }
+    }
+
+    static final class Ring extends Circle {
+        Ring(int size) {
+            super(size);
+        }
+
+        @Override
+        public int area() {
+            return super.area() - 3;
+        }
+    }
+
+    static final class Dot implements Shape {
+        @Override
+        public int area() {
+            return 1;
+        }
+    }
+
+    static final class Box<T> {
+        private final T value;
+
+        Box(T value) {
+            this.value = value;
+        }
+
+        T get() {
+            return value;
+        }
+    }
+
+    static long monomorphic(int n) {
+        Base square = new Square(3);
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += square.area();
+        }
+        return sum;
+    }
+
+    static long direct(int n) {
+        Circle circle = new Circle(2);
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += circle.area();
+        }
+        return sum;
+    }
+
+    static long polymorphic(int n) {
+        Base[] shapes = {new Square(2), new Rect(2, 5), new Triangle(4), new Circle(1)};
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += shapes[i % shapes.length].area();
+        }
+        return sum;
+    }
+
+    static long megamorphic(int n) {
+        Shape[] shapes = {new Square(2), new Rect(2, 5), new Triangle(4), new Circle(1), new Ring(2), new Dot()};
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += shapes[i % shapes.length].sides();
+        }
+        return sum;
+    }
+
+    static int scaled(int size, int factor) {
+        Base ring = new Ring(size);
+        return ring.scaled(factor);
+    }
+
+    static int nullReceiver(Shape shape) {
+        try {
+            return shape.area();
+        } catch (NullPointerException e) {
+            return -1;
+        }
+    }
+
+    static int hostReceiver(Object object) {
+        return object.hashCode();
+    }
+
+    static long typeChecks(int n) {
+        Object[] objects = {new Square(2), new Ring(3), new Dot(), "host", new int[1], new String[1], new Object[0][], null};
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            Object object = objects[i % objects.length];
+            if (object instanceof Shape) {
+                sum += ((Shape) object).area();
+            }
+            if (object instanceof Base) {
+                sum += ((Base) object).size * 10L;
+            }
+            if (object instanceof Circle) {
+                sum += 100;
+            }
+            if (object instanceof CharSequence) {
+                sum += 1000;
+            }
+            if (object instanceof Comparable) {
+                sum += 10000;
+            }
+            if (object instanceof int[]) {
+                sum += ((int[]) object).length * 100000L;
+            }
+            if (object instanceof Object[]) {
+                sum += ((Object[]) object).length * 1000000L + 1000000L;
+            }
+            if (object instanceof Cloneable) {
+                sum += 10000000L;
+            }
+        }
+        return sum;
+    }
+
+    static int generic(int size) {
+        Box<Square> box = new Box<>(new Square(size));
+        return box.get().area();
+    }
+
+    static int badCast(int size) {
+        Object rect = new Rect(size, 1);
+        return ((Square) rect).size;
+    }
+
+    static int hostCast(Object object) {
+        Object[] array = (Object[]) object;
+        return array == null ? -1 : array.length;
+    }
+}
@@ -0,0 +1,196 @@
+package javavm.execution;
+
+/**
+ * オブジェクトとフィールドを使用するテスト用のプログラム
+ *
+ * インタプリタはまだcheckcastを実行できないため、処理はstaticメソッドで行います。
+ */
+final class GuestObjects {
+    static final String NAME = "guest";
+    static final long LIMIT = 1L << 40;
+    static int counter;
+    static long total = 100;
+    static int[] table = {1, 2, 3};
+    static int initCount;
+    static int zero;
+    static Point kept;
+
+    static class Point {
+        int x;
+        long weight;
+        Point next;
+
+        Point(int x, long weight) {
+            this.x = x;
+            this.weight = weight;
+        }
+    }
+
+    static class Point3 extends Point {
+        double z;
+        boolean flag;
+
+        Point3(int x, long weight, double z) {
+            super(x, weight);
+            this.z = z;
+            this.flag = true;
+        }
+    }
+
+    static class Packed extends Point {
+        byte b;
+        char c;
+        Packed other;
+        short s;
+        float f;
+        boolean odd;
+
+        Packed(int x) {
+            super(x, -x);
+        }
+    }
+
+    static class Node {
+        int[] data;
+
+        Node(int[] data) {
+            this.data = data;
+        }
+    }
+
+    static class Init {
+        static int value = initCount++ + 10;
+    }
+
+    static class Broken {
+        static int value = 1 / zero;
+    }
+
+    static long linkedSum(int n) {
+        Point head = null;
+        for (int i = 0; i < n; i++) {
+            Point point = i % 2 == 0 ? new Point(i, i * 10L) : new Point3(i, i, i / 2.0);
+            point.next = head;
+            head = point;
+        }
+        long sum = 0;
+        for (Point point = head; point != null; point = point.next) {
+            sum += point.x + point.weight;
+        }
+        return sum;
+    }
+
+    static double inherited(int x) {
+        Point3 point = new Point3(x, 2, 0.5);
+        return point.flag ? point.x + point.weight + point.z : -1;
+    }
+
+    static long statics(int n) {
+        for (int i = 0; i < n; i++) {
+            counter++;
+            total += i;
+        }
+        return total + counter + table[2];
+    }
+
+    static int nullField(Point point) {
+        try {
+            return point.x;
+        } catch (NullPointerException e) {
+            return -1;
+        }
+    }
+
+    static int initOnce() {
+        return Init.value + Init.value + initCount;
+    }
+
+    static int broken() {
+        return Broken.value;
+    }
+
+    static Object pick(int i) {
+        Object[] values = {NAME, new Point(i, 2), null, table};
+        return values[i];
+    }
+
+    static long allocate(int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += new Point(i, 1).x;
+        }
+        return sum;
+    }
+
+    static long churn(int n) {
+        Point[] ring = new Point[16];
+        for (int i = 0; i < n; i++) {
+            Point point = new Point(i, i * 3L);
+            point.next = new Point(-i, 1);
+            ring[i & 15] = point;
+        }
+        long sum = 0;
+        for (Point point : ring) {
+            sum += point.x + point.weight + point.next.x + point.next.weight;
+        }
+        return sum;
+    }
+
+    static long arrayChurn(int n) {
+        Node[] ring = new Node[16];
+        for (int i = 0; i < n; i++) {
+            // コンストラクタとputfieldで格納し、最初の配列はすぐに到達しなくなる
+            Node node = new Node(new int[] {i, 1});
+            node.data = new int[] {i, 2};
+            ring[i & 15] = node;
+        }
+        long sum = table.length;
+        for (Node node : ring) {
+            sum += node.data[0] + node.data[1];
+        }
+        return sum;
+    }
+
+    static long rounds(int rounds, int n) {
+        long total = 0;
+        for (int r = 0; r < rounds; r++) {
+            Point head = null;
+            for (int i = 0; i < n; i++) {
+                Point point = new Point(i, r);
+                point.next = head;
+                head = point;
+            }
+            for (Point point = head; point != null; point = point.next) {
+                total += point.x + point.weight;
+            }
+        }
+        return total;
+    }
+
+    static Object keep(int x) {
+        if (kept == null) {
+            kept = new Point(x, 0);
+        }
+        return kept;
+    }
+
+    static long packed(int n) {
+        Packed previous = null;
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            Packed packed = new Packed(i);
+            // 型の範囲を超える値を格納して、符号拡張と切り詰めを確かめる
+            packed.b = (byte) (i * 37);
+            packed.c = (char) (i * 4099);
+            packed.s = (short) (-i * 1031);
+            packed.f = i / 4.0f;
+            packed.odd = i % 2 == 1;
+            packed.other = previous;
+            previous = packed;
+        }
+        for (Packed packed = previous; packed != null; packed = packed.other) {
+            sum += packed.x + packed.weight + packed.b + packed.c + packed.s + (long) (packed.f * 4) + (packed.odd ? 1 : 0);
+        }
+        return sum;
+    }
+}
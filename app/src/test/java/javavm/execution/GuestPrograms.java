@@ -0,0 +1,253 @@
+package javavm.execution;
+
+/**
+ * インタプリタのテストで実行するプログラム
+ *
+ * javacが生成したバイトコードをインタプリタで実行し、結果をJavaで直接実行した結果と比較します。
+ * JDKのクラスは読み込めないため、文字列連結やjava.lang.Mathの呼び出しは使用しません。
+ */
+final class GuestPrograms {
+    private GuestPrograms() {
+    }
+
+    static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    static int sieve(int limit) {
+        boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; i++) {
+            if (composite[i]) {
+                continue;
+            }
+            count++;
+            // i * i がintの範囲を超える場合は消す数がない
+            if (i <= limit / i) {
+                for (int j = i * i; j <= limit; j += i) {
+                    composite[j] = true;
+                }
+            }
+        }
+        return count;
+    }
+
+    static long nestedLoops(int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                sum += i ^ j;
+            }
+        }
+        return sum;
+    }
+
+    static long longArithmetic(long a, long b) {
+        long result = a * b + (a / 3) - (b % 7);
+        result ^= result >>> 13;
+        result = (result << 5) | (result >> 60);
+        return result & 0x7FFFFFFFFFFFL;
+    }
+
+    static double floatingPoint(float f, double d) {
+        float g = f * 1.5f - 0.25f;
+        double e = d / 3.0 + g;
+        if (e > 100.0) {
+            e = e % 100.0;
+        }
+        return -e + (long) g + (int) d + (float) e;
+    }
+
+    static int conversions(int value) {
+        byte b = (byte) value;
+        char c = (char) value;
+        short s = (short) value;
+        long l = value;
+        float f = value;
+        return b + c + s + (int) (l >> 1) + (int) f;
+    }
+
+    static int compareFloats(double a, double b) {
+        int result = 0;
+        if (a < b) {
+            result |= 1;
+        }
+        if (a > b) {
+            result |= 2;
+        }
+        if ((float) a == (float) b) {
+            result |= 4;
+        }
+        return result;
+    }
+
+    static int denseSwitch(int value) {
+        switch (value) {
+            case 0:
+                return 10;
+            case 1:
+                return 11;
+            case 2:
+                return 12;
+            case 3:
+                return 13;
+            case 4:
+                return 14;
+            default:
+                return -1;
+        }
+    }
+
+    static int sparseSwitch(int value) {
+        switch (value) {
+            case -1000:
+                return 1;
+            case 7:
+                return 2;
+            case 1000:
+                return 3;
+            case 100000:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    static long arrays(int n) {
+        int[] ints = new int[n];
+        long[] longs = new long[n];
+        double[] doubles = new double[n];
+        float[] floats = new float[n];
+        char[] chars = new char[n];
+        short[] shorts = new short[n];
+        byte[] bytes = new byte[n];
+        int[][] matrix = new int[2][];
+        matrix[0] = ints;
+        matrix[1] = new int[] {7, 8, 9};
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            ints[i] = i * 3;
+            longs[i] = longs[i > 0 ? i - 1 : 0] + i;
+            doubles[i] = i / 2.0;
+            floats[i] = i * 0.5f;
+            chars[i] = (char) ('a' + i);
+            shorts[i] = (short) (i * 1000);
+            bytes[i] = (byte) (i * 100);
+        }
+        for (int i = 0; i < n; i++) {
+            total += ints[i] + longs[i] + (long) doubles[i] + (long) floats[i] + chars[i] + shorts[i] + bytes[i];
+        }
+        return total + matrix[1][2] + matrix[0].length + matrix.length;
+    }
+
+    static long duplicates(long[] values, int index) {
+        // 複合代入はdup2_x2などの命令になる
+        long last = values[index] += 5;
+        int[] counter = new int[1];
+        int previous = counter[0]++;
+        return last + previous + counter[0];
+    }
+
+    static int divide(int a, int b) {
+        try {
+            return a / b;
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    static int outOfBounds(int index) {
+        int[] values = new int[3];
+        try {
+            return values[index];
+        } catch (RuntimeException e) {
+            return -2;
+        } finally {
+            values[0] = 1;
+        }
+    }
+
+    static int uncaught(int[] values) {
+        return values[5];
+    }
+
+    static int catchFromCallee(int a) {
+        try {
+            return divide(a, 0) + thrower(a);
+        } catch (IllegalStateException e) {
+            return 0;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return -3;
+        }
+    }
+
+    private static int thrower(int a) {
+        int[] values = new int[a];
+        return values[a];
+    }
+
+    static int depth(int n) {
+        return n == 0 ? 0 : depth(n - 1) + 1;
+    }
+
+    static int catchOverflow(int n) {
+        try {
+            return depth(n);
+        } catch (StackOverflowError e) {
+            return -1;
+        }
+    }
+
+    /**
+     * テストでは読み込み元が {@link Malformed} を検証に失敗するクラスファイルに差し替えます。
+     */
+    static int catchVerifyError(int n) {
+        try {
+            return Malformed.value(n);
+        } catch (VerifyError e) {
+            return -1;
+        }
+    }
+
+    static final class Malformed {
+        static int value(int n) {
+            return n;
+        }
+    }
+
+    /**
+     * テストでは読み込み元が {@link Derived} をスーパークラスを持たないクラスファイルに差し替えます。
+     */
+    static int catchConstraintError() {
+        try {
+            return Widening.widen() != null ? 1 : 0;
+        } catch (VerifyError e) {
+            return -1;
+        }
+    }
+
+    static class Base {
+    }
+
+    static final class Derived extends Base {
+    }
+
+    static final class Widening {
+        static Base widen() {
+            return new Derived();
+        }
+    }
+
+    static String literal(boolean other) {
+        return other ? "other" : "guest";
+    }
+
+    static boolean isNull(Object value) {
+        return value == null;
+    }
+
+    static int unsupported() {
+        Class<?> type = String.class;
+        return type == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,39 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestThreadTest {
+    private static final String THREADS = "javavm/execution/GuestThreads";
+
+    private static MethodArea methodArea() {
+        return new MethodArea(InterpreterTest.TEST_CLASSES, new Heap(1 << 20, 1024));
+    }
+
+    @Test
+    void testContendedCounter() {
+        MethodArea methodArea = methodArea();
+        RuntimeMethod contended = methodArea.resolveMethod(THREADS, "contended", "(IIZ)I");
+        assertEquals(4000, new Interpreter(methodArea).execute(contended, 4, 1000, false),
+            "synchronizedメソッドで保護したカウンタの値が一致しません");
+        assertEquals(0, methodArea.getThreadCount(), "終了したスレッドが残っています");
+    }
+
+    @Test
+    void testThreadSubclass() {
+        MethodArea methodArea = methodArea();
+        RuntimeMethod workers = methodArea.resolveMethod(THREADS, "workers", "(II)I");
+        assertEquals(2 * 4 * 500, new Interpreter(methodArea).execute(workers, 4, 500),
+            "synchronized文とstaticのsynchronizedメソッドで保護した値が一致しません");
+        assertEquals(0, methodArea.getThreadCount(), "終了したスレッドが残っています");
+    }
+
+    @Test
+    void testWaitNotify() {
+        MethodArea methodArea = methodArea();
+        RuntimeMethod handoff = methodArea.resolveMethod(THREADS, "handoff", "(I)J");
+        assertEquals(5050L, new Interpreter(methodArea).execute(handoff, 100),
+            "wait/notifyで受け渡した値の合計が一致しません");
+        assertEquals(0, methodArea.getHeap().monitors.getInflatedCount(), "膨張したロックが残っています");
+    }
+}
@@ -0,0 +1,307 @@
+package javavm.execution;
+
+/**
+ * スレッドとロックを使用するテスト用のプログラム
+ */
+final class GuestThreads {
+    static final Object LOCK = new Object();
+    static int shared;
+
+    static class Counter {
+        int value;
+        Object last;
+
+        synchronized void increment() {
+            value++;
+        }
+
+        synchronized void incrementAllocating() {
+            // ロックを保持したまま割り当て、GCでオブジェクトを移動させる
+            last = new Object();
+            value++;
+        }
+
+        synchronized int get() {
+            return value;
+        }
+
+        synchronized int nested(int depth) {
+            return depth == 0 ? value : nested(depth - 1) + 1;
+        }
+    }
+
+    static class Incrementer implements Runnable {
+        final Counter counter;
+        final int iterations;
+        final boolean allocating;
+
+        Incrementer(Counter counter, int iterations, boolean allocating) {
+            this.counter = counter;
+            this.iterations = iterations;
+            this.allocating = allocating;
+        }
+
+        public void run() {
+            for (int i = 0; i < iterations; i++) {
+                if (allocating) {
+                    counter.incrementAllocating();
+                } else {
+                    counter.increment();
+                }
+            }
+        }
+    }
+
+    static class Worker extends Thread {
+        final int iterations;
+
+        Worker(int iterations) {
+            this.iterations = iterations;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < iterations; i++) {
+                synchronized (LOCK) {
+                    shared++;
+                }
+                incrementStatic();
+            }
+        }
+    }
+
+    static synchronized void incrementStatic() {
+        shared++;
+    }
+
+    static class Mailbox {
+        int value;
+        boolean full;
+
+        synchronized void put(int item) throws InterruptedException {
+            while (full) {
+                wait();
+            }
+            value = item;
+            full = true;
+            notifyAll();
+        }
+
+        synchronized int take() throws InterruptedException {
+            while (!full) {
+                wait();
+            }
+            full = false;
+            notifyAll();
+            return value;
+        }
+    }
+
+    /**
+     * ホストのオブジェクト（文字列）をロックとして使うメールボックス
+     */
+    static class HostMailbox extends Mailbox {
+        final Object lock;
+
+        HostMailbox(Object lock) {
+            this.lock = lock;
+        }
+
+        @Override
+        void put(int item) throws InterruptedException {
+            synchronized (lock) {
+                while (full) {
+                    lock.wait();
+                }
+                value = item;
+                full = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        int take() throws InterruptedException {
+            synchronized (lock) {
+                while (!full) {
+                    lock.wait();
+                }
+                full = false;
+                lock.notifyAll();
+                return value;
+            }
+        }
+    }
+
+    static class ArrayIncrementer implements Runnable {
+        final int[] counter;
+        final int iterations;
+
+        ArrayIncrementer(int[] counter, int iterations) {
+            this.counter = counter;
+            this.iterations = iterations;
+        }
+
+        public void run() {
+            for (int i = 0; i < iterations; i++) {
+                synchronized (counter) {
+                    counter[0]++;
+                }
+            }
+        }
+    }
+
+    static class Producer implements Runnable {
+        final Mailbox mailbox;
+        final int count;
+
+        Producer(Mailbox mailbox, int count) {
+            this.mailbox = mailbox;
+            this.count = count;
+        }
+
+        public void run() {
+            try {
+                for (int i = 1; i <= count; i++) {
+                    mailbox.put(i);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 1つのカウンタを複数のスレッドで増やし、最終的な値を返します。
+     */
+    static int contended(int threads, int iterations, boolean allocating) throws InterruptedException {
+        Counter counter = new Counter();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Incrementer(counter, iterations, allocating));
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        return counter.get();
+    }
+
+    /**
+     * Threadのサブクラスのスレッドで、synchronized文とstaticのsynchronizedメソッドを使って共有の値を増やします。
+     */
+    static int workers(int threads, int iterations) throws InterruptedException {
+        shared = 0;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(iterations);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        return shared;
+    }
+
+    /**
+     * 別のスレッドが送った1からcountまでの値をwait/notifyで受け取り、合計を返します。
+     */
+    static long handoff(int count) throws InterruptedException {
+        return handoff(new Mailbox(), count);
+    }
+
+    /**
+     * 文字列をロックとして、別のスレッドが送った1からcountまでの値をwait/notifyで受け取り、合計を返します。
+     */
+    static long hostHandoff(int count) throws InterruptedException {
+        return handoff(new HostMailbox("mailbox"), count);
+    }
+
+    private static long handoff(Mailbox mailbox, int count) throws InterruptedException {
+        Thread producer = new Thread(new Producer(mailbox, count));
+        producer.start();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += mailbox.take();
+        }
+        producer.join();
+        return sum;
+    }
+
+    /**
+     * 基本型の配列をロックとして、複数のスレッドで配列の要素を増やし、最終的な値を返します。
+     */
+    static int hostArrayLock(int threads, int iterations) throws InterruptedException {
+        int[] counter = new int[1];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new ArrayIncrementer(counter, iterations));
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        return counter[0];
+    }
+
+    /**
+     * 別々の基本型の配列を1つずつロックし、ロックの中で書き込んだ値の合計を返します。
+     */
+    static int lockArrays(int count) {
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            int[] array = new int[1];
+            synchronized (array) {
+                array[0] = i;
+                sum += array[0];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * thin lockの再入の上限を超えてsynchronizedメソッドを再帰的に呼び出します。
+     */
+    static int nested(int depth) {
+        return new Counter().nested(depth);
+    }
+
+    /**
+     * 例外でsynchronized文を抜けた後のカウンタを返します。ロックは解放されているはずです。
+     */
+    static Counter releaseOnException() {
+        Counter counter = new Counter();
+        try {
+            synchronized (counter) {
+                counter.value = 1 / counter.value;
+            }
+        } catch (ArithmeticException e) {
+            counter.value = 10;
+        }
+        counter.nested(2);
+        return counter;
+    }
+
+    /**
+     * ロックを保持せずにnotifyを呼び出すとIllegalMonitorStateExceptionになることを確かめます。
+     */
+    static boolean notifyWithoutLock() {
+        Object object = new Object();
+        try {
+            object.notify();
+            return false;
+        } catch (IllegalMonitorStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 時間を指定したwaitが、notifyされなくても戻ることを確かめます。
+     */
+    static boolean timedWait() throws InterruptedException {
+        Object object = new Object();
+        synchronized (object) {
+            object.wait(5);
+        }
+        return true;
+    }
+}
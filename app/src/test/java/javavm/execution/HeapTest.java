@@ -0,0 +1,241 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class HeapTest {
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+
+    @Test
+    void testParseSize() {
+        assertEquals(4096, Heap.parseSize("4096"), "接尾辞のないサイズはバイト数です");
+        assertEquals(64L << 10, Heap.parseSize("64k"), "kは2の10乗倍です");
+        assertEquals(64L << 20, Heap.parseSize("64M"), "大文字の接尾辞も使用できるべきです");
+        assertEquals(2L << 30, Heap.parseSize(" 2g "), "前後の空白は無視するべきです");
+        assertThrows(IllegalArgumentException.class, () -> Heap.parseSize("abc"), "数値でないサイズは不正です");
+        assertThrows(IllegalArgumentException.class, () -> Heap.parseSize("0m"), "0は不正です");
+        assertThrows(IllegalArgumentException.class, () -> Heap.parseSize("m"), "数値のないサイズは不正です");
+    }
+
+    @Test
+    void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new Heap(1000 + 4, 64), "8の倍数でないサイズは不正です");
+        assertThrows(IllegalArgumentException.class, () -> new Heap(Heap.MAX_SIZE + 8, 64), "上限を超えるサイズは不正です");
+        assertThrows(IllegalArgumentException.class, () -> new Heap(1024, 2048), "ヒープより大きいTLABは不正です");
+        assertThrows(IllegalArgumentException.class, () -> new Heap(1 << 20, 1024, 1 << 20, 6), "Old世代の残らない構成は不正です");
+        assertThrows(IllegalArgumentException.class, () -> new Heap(1 << 20, 64 << 10, 4096, 6), "Edenより大きいTLABは不正です");
+        assertThrows(IllegalArgumentException.class, () -> new Heap(1 << 20, 1024, 1 << 18, 16), "昇格までの回数が上限を超えています");
+    }
+
+    @Test
+    void testTlabAllocation() {
+        Heap heap = new Heap(1 << 20, 1024);
+        Tlab tlab = new Tlab(heap);
+        long first = tlab.allocate(32);
+        long second = tlab.allocate(32);
+        assertEquals(first + 32, second, "TLAB内ではポインタを進めて割り当てるべきです");
+        assertEquals(1, heap.getTlabRefills(), "最初の割り当てでTLABを1回確保するべきです");
+        assertEquals(1024, heap.getUsed(), "使用量はTLABの分だけ増えるべきです");
+
+        for (int i = 0; i < 1024 / 32; i++) {
+            tlab.allocate(32);
+        }
+        assertEquals(2, heap.getTlabRefills(), "TLABが一杯になったら新しいTLABを確保するべきです");
+
+        long large = tlab.allocate(1000);
+        assertEquals(heap.edenStart + 2048, large, "TLABに収まらない大きな割り当てはヒープから直接行うべきです");
+        assertEquals(2, heap.getTlabRefills(), "大きな割り当てでTLABを確保するべきではありません");
+
+        long tenured = tlab.allocate(heap.getYoungSize());
+        assertEquals(heap.oldStart, tenured, "Edenの半分より大きい割り当てはOld世代に行うべきです");
+        assertEquals(heap.getYoungSize(), heap.getOldUsed(), "Old世代の使用量が一致しません");
+    }
+
+    @Test
+    void testGenerations() {
+        Heap heap = new Heap(1 << 20, 1024, 300 << 10, 3);
+        assertEquals(3, heap.getTenuringThreshold(), "昇格までの回数が一致しません");
+        assertEquals(30 << 10, heap.survivorSize, "SurvivorはそれぞれYoung世代の10分の1です");
+        assertEquals(heap.edenStart + (240 << 10), heap.edenEnd, "EdenはYoung世代の残りです");
+        assertEquals(0, heap.oldStart % Heap.CARD_SIZE, "Old世代はカードの境界から始まるべきです");
+        assertTrue(heap.oldStart >= heap.edenEnd + 2 * heap.survivorSize, "Old世代はSurvivorの後ろに置くべきです");
+    }
+
+    @Test
+    void testReferenceArray() {
+        Heap heap = new Heap(1 << 20, 1024);
+        Tlab tlab = new Tlab(heap);
+        long array = heap.allocateReferenceArray(tlab, 5);
+        assertEquals(5, heap.arrayLength(array), "要素数が一致しません");
+        assertNull(heap.classOf(array), "参照型の配列のクラスはnullです");
+        assertEquals(0, heap.memory.getInt(heap.elementAddress(array, 4)), "要素はnullで初期化されるべきです");
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> heap.elementAddress(array, 5), "範囲外の添字は例外になるべきです");
+        assertThrows(NegativeArraySizeException.class, () -> heap.allocateReferenceArray(tlab, -1), "負の要素数は例外になるべきです");
+    }
+
+    @Test
+    void testHostReferences() {
+        Heap heap = new Heap(1 << 20, 1024);
+        String text = "guest";
+        long encoded = heap.encodeHost(text);
+        assertTrue(encoded < 0, "ホストのオブジェクトは負の値で格納するべきです");
+        assertEquals(encoded, heap.encode(text, 0), "同じオブジェクトは同じ値になるべきです");
+        assertSame(text, heap.referenceOf(encoded), "格納した値からホストのオブジェクトに戻せるべきです");
+        assertEquals(0, heap.encode(null, 0), "nullは0で格納するべきです");
+        assertNull(heap.referenceOf(0), "0はnullです");
+        assertEquals(128, heap.encode(Heap.REFERENCE, 128), "ヒープのオブジェクトはアドレスで格納するべきです");
+        assertSame(Heap.REFERENCE, heap.referenceOf(128), "正の値はヒープのオブジェクトです");
+    }
+
+    @Test
+    void testHostReferencesRegisteredDuringMarking() {
+        HostReferenceTable table = new HostReferenceTable();
+        // 番号を再利用させるため、同じ区分に入るオブジェクトを用意する
+        Object[] objects = new Object[3];
+        objects[0] = new Object();
+        int stripe = System.identityHashCode(objects[0]) & (HostReferenceTable.STRIPES - 1);
+        for (int i = 1; i < objects.length; i++) {
+            do {
+                objects[i] = new Object();
+            } while ((System.identityHashCode(objects[i]) & (HostReferenceTable.STRIPES - 1)) != stripe);
+        }
+        int released = table.register(objects[0]);
+        int kept = table.register(objects[1]);
+        table.beginMarking();
+        table.mark(kept);
+        assertEquals(1, table.sweep(true), "印のない番号を解放するべきです");
+
+        // 印付けの間に登録したオブジェクトは、解放した番号を再利用しても解放しない
+        table.beginMarking();
+        int registered = table.register(objects[2]);
+        assertEquals(released, registered, "解放した番号を再利用するべきです");
+        assertEquals(0, table.sweep(false), "印付けの間に登録した番号を解放してはいけません");
+        assertSame(objects[2], table.get(registered), "登録したオブジェクトが残っているべきです");
+
+        // 次のMinor GCでは前回のGCの後に登録した番号として扱う
+        table.beginMarking();
+        assertEquals(1, table.sweep(false), "ヒープから到達しない番号は次のGCで解放するべきです");
+        assertEquals(1, table.size(), "登録数が一致しません");
+    }
+
+    @Test
+    void testConcurrentHostReferences() throws Exception {
+        Heap heap = new Heap(1 << 20, 1024);
+        int threads = 8;
+        Object[] shared = new Object[1000];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = new int[] {i};
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<long[]> encoded = new ArrayList<>();
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int offset = i;
+                results.add(executor.submit(() -> {
+                    long[] values = new long[shared.length];
+                    start.await();
+                    // スレッドごとに異なる順で登録し、同じ区分への登録を競合させる
+                    for (int j = 0; j < shared.length; j++) {
+                        int index = (j * 7 + offset * 131) % shared.length;
+                        values[index] = heap.encode(shared[index], 0);
+                    }
+                    return values;
+                }));
+            }
+            start.countDown();
+            for (Future<long[]> result : results) {
+                encoded.add(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < shared.length; i++) {
+            long value = encoded.get(0)[i];
+            for (long[] values : encoded) {
+                assertEquals(value, values[i], "同じオブジェクトはどのスレッドからも同じ番号になるべきです");
+            }
+            assertSame(shared[i], heap.referenceOf(value), "番号からホストのオブジェクトに戻せるべきです");
+            assertEquals(value, heap.encode(shared[i], value), "番号が同じオブジェクトを指していればそのまま格納するべきです");
+            distinct.add(value);
+        }
+        assertEquals(shared.length, distinct.size(), "異なるオブジェクトは異なる番号になるべきです");
+        assertEquals(shared.length, heap.hostReferences.size(), "登録数が一致しません");
+    }
+
+    @Test
+    void testGuestObjects() {
+        MethodArea methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+        Interpreter interpreter = new Interpreter(methodArea);
+        RuntimeMethod pick = methodArea.resolveMethod(OBJECTS, "pick", "(I)Ljava/lang/Object;");
+        assertEquals("guest", interpreter.execute(pick, 0), "配列に格納した文字列が一致しません");
+        Object point = interpreter.execute(pick, 1);
+        assertInstanceOf(Instance.class, point, "ヒープのオブジェクトはInstanceとして返すべきです");
+        assertEquals(OBJECTS + "$Point", ((Instance) point).getType().getName().toString(), "オブジェクトのクラスが一致しません");
+        assertNull(interpreter.execute(pick, 2), "nullの要素が一致しません");
+        assertArrayEquals(new int[] {1, 2, 3}, (int[]) interpreter.execute(pick, 3), "基本型の配列が一致しません");
+        assertTrue(methodArea.getHeap().getUsed() > 0, "オブジェクトはヒープに割り当てるべきです");
+    }
+
+    @Test
+    void testOutOfMemory() {
+        MethodArea methodArea = new MethodArea(InterpreterTest.TEST_CLASSES, new Heap(64 << 10, 1024));
+        RuntimeMethod allocate = methodArea.resolveMethod(OBJECTS, "allocate", "(I)J");
+        RuntimeMethod linkedSum = methodArea.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        Interpreter interpreter = new Interpreter(methodArea);
+        assertEquals(GuestObjects.allocate(10000), interpreter.execute(allocate, 10000), "ゴミはGCで回収して割り当てを続けるべきです");
+        OutOfMemoryError error = assertThrows(OutOfMemoryError.class, () -> interpreter.execute(linkedSum, 10000),
+            "生きているオブジェクトでヒープが一杯になったらOutOfMemoryErrorになるべきです");
+        assertTrue(error.getMessage().startsWith("Java heap space"), "メッセージが一致しません: " + error.getMessage());
+        assertEquals(GuestObjects.linkedSum(100), interpreter.execute(linkedSum, 100), "例外の後も割り当てを続けられるべきです");
+    }
+
+    @Test
+    void testConcurrentAllocation() throws Exception {
+        // GCが起きないように、すべての割り当てがEdenに収まる大きさにする
+        Heap heap = new Heap(64 << 20, 4096);
+        int threads = 8;
+        int count = 10000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<long[]> allocated = new ArrayList<>();
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    Tlab tlab = new Tlab(heap);
+                    long[] addresses = new long[count];
+                    start.await();
+                    for (int j = 0; j < count; j++) {
+                        // 大きな割り当てを混ぜ、TLABとヒープからの直接の割り当てを競合させる
+                        addresses[j] = j % 100 == 0 ? heap.allocateReferenceArray(tlab, 300) : tlab.allocate(48);
+                    }
+                    return addresses;
+                }));
+            }
+            start.countDown();
+            for (Future<long[]> result : results) {
+                allocated.add(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Set<Long> seen = new HashSet<>();
+        for (long[] addresses : allocated) {
+            for (long address : addresses) {
+                assertTrue(address >= heap.edenStart && address < heap.edenTop.get(), "アドレスがEdenの範囲外です: " + address);
+                assertTrue(seen.add(address), "同じアドレスが重複して割り当てられました: " + address);
+            }
+        }
+    }
+}
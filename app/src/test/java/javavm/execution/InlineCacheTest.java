@@ -0,0 +1,86 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+
+class InlineCacheTest {
+    private static final String DISPATCH = "javavm/execution/GuestDispatch";
+
+    private MethodArea methodArea;
+    private Interpreter interpreter;
+
+    @BeforeEach
+    void setUp() {
+        methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+        interpreter = new Interpreter(methodArea);
+    }
+
+    /**
+     * メソッドを実行し、唯一の仮想呼び出し箇所のインラインキャッシュを返します。
+     */
+    private InlineCache runAndGetCache(String name, int n) {
+        RuntimeMethod method = methodArea.resolveMethod(DISPATCH, name, "(I)J");
+        interpreter.execute(method, n);
+        List<InlineCache> caches = method.getDecodedCode().getInlineCaches();
+        assertEquals(1, caches.size(), "仮想呼び出し箇所は1つです");
+        return caches.get(0);
+    }
+
+    @Test
+    void testMonomorphic() {
+        InlineCache cache = runAndGetCache("monomorphic", 100);
+        assertEquals(InlineCache.State.MONOMORPHIC, cache.getState(), "レシーバのクラスが1つなら単相になるべきです");
+        assertEquals(1, cache.size(), "キャッシュしたクラスの数が一致しません");
+        assertEquals(1, cache.getMisses(), "ミスは最初の呼び出しだけのはずです");
+        assertEquals(99, cache.getHits(), "2回目以降の呼び出しはヒットするべきです");
+        assertEquals(1, cache.getTransitions(), "状態遷移の回数が一致しません");
+    }
+
+    @Test
+    void testDirectBinding() {
+        InlineCache cache = runAndGetCache("direct", 10);
+        assertEquals(InlineCache.State.DIRECT, cache.getState(), "オーバーライドされていないメソッドは直接呼び出すべきです");
+        assertEquals(10, cache.getHits(), "直接呼び出しはヒットとして数えるべきです");
+        assertEquals(0, cache.getMisses(), "ミス数が一致しません");
+
+        // Ringのリンクで Circle.area がオーバーライドされる
+        interpreter.execute(methodArea.resolveMethod(DISPATCH, "scaled", "(II)I"), 2, 3);
+        cache = runAndGetCache("direct", 10);
+        assertEquals(InlineCache.State.MONOMORPHIC, cache.getState(), "オーバーライドされたら通常のキャッシュに切り替えるべきです");
+        assertEquals(1, cache.getMisses(), "切り替え後の最初の呼び出しはミスするべきです");
+        assertEquals(19, cache.getHits(), "ヒット数が一致しません");
+        assertEquals(1, cache.getTransitions(), "状態遷移の回数が一致しません");
+    }
+
+    @Test
+    void testPolymorphic() {
+        InlineCache cache = runAndGetCache("polymorphic", 100);
+        assertEquals(InlineCache.State.POLYMORPHIC, cache.getState(), "レシーバのクラスが複数なら多相になるべきです");
+        assertEquals(InlineCache.MAX_POLYMORPHIC, cache.size(), "キャッシュしたクラスの数が一致しません");
+        assertEquals(4, cache.getMisses(), "クラスごとに1回だけミスするべきです");
+        assertEquals(96, cache.getHits(), "キャッシュしたクラスの呼び出しはヒットするべきです");
+        assertEquals(2, cache.getTransitions(), "未初期化→単相→多相の2回遷移するべきです");
+        assertEquals("area", cache.getResolvedMethod().getMethodInfo().getName().toString(), "解決したメソッドが一致しません");
+    }
+
+    @Test
+    void testMegamorphic() {
+        InlineCache cache = runAndGetCache("megamorphic", 60);
+        assertEquals(InlineCache.State.MEGAMORPHIC, cache.getState(), "上限を超えるクラスが現れたら超多相になるべきです");
+        assertEquals(0, cache.size(), "超多相ではクラスを保持しないべきです");
+        assertEquals(60, cache.getMisses(), "超多相では毎回呼び出し先を選択するべきです");
+        assertEquals(0, cache.getHits(), "ヒット数が一致しません");
+        assertEquals(3, cache.getTransitions(), "未初期化→単相→多相→超多相の3回遷移するべきです");
+    }
+
+    @Test
+    void testUnexecutedSite() {
+        RuntimeMethod method = methodArea.resolveMethod(DISPATCH, "nullReceiver", "(L" + DISPATCH + "$Shape;)I");
+        assertTrue(method.getDecodedCode().getInlineCaches().isEmpty(), "実行前の呼び出し箇所にはキャッシュがないべきです");
+        interpreter.execute(method, (Object) null);
+        assertEquals(InlineCache.State.UNINITIALIZED, method.getDecodedCode().getInlineCaches().get(0).getState(),
+            "nullのレシーバではキャッシュの状態は変化しないべきです");
+    }
+}
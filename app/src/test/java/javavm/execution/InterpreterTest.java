@@ -0,0 +1,310 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileReader;
+import javavm.classloader.ClassSource;
+
+class InterpreterTest {
+    private static final String PROGRAMS = "javavm/execution/GuestPrograms";
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+    private static final String DISPATCH = "javavm/execution/GuestDispatch";
+
+    private MethodArea methodArea;
+    private Interpreter interpreter;
+
+    /**
+     * テストのクラスパスからクラスファイルを読み込む読み込み元
+     */
+    static final ClassSource TEST_CLASSES = className -> {
+        try (InputStream in = InterpreterTest.class.getResourceAsStream("/" + className + ".class")) {
+            if (in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            try (ClassFileReader reader = new ClassFileReader(in.readAllBytes())) {
+                return reader.readClassFile();
+            }
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        methodArea = new MethodArea(TEST_CLASSES);
+        interpreter = new Interpreter(methodArea);
+    }
+
+    private Object run(String name, String descriptor, Object... arguments) {
+        return interpreter.execute(methodArea.resolveMethod(PROGRAMS, name, descriptor), arguments);
+    }
+
+    private Object runObjects(String name, String descriptor, Object... arguments) {
+        return interpreter.execute(methodArea.resolveMethod(OBJECTS, name, descriptor), arguments);
+    }
+
+    private Object runDispatch(String name, String descriptor, Object... arguments) {
+        return interpreter.execute(methodArea.resolveMethod(DISPATCH, name, descriptor), arguments);
+    }
+
+    @Test
+    void testRecursiveCalls() {
+        assertEquals(GuestPrograms.fib(20), run("fib", "(I)I", 20), "fibの結果が一致しません");
+        assertTrue(interpreter.getExecutedInstructions() > 20000, "実行した命令数が数えられるべきです");
+        // Code属性は最初の実行時にデコードし、実行していないメソッドはデコードしない
+        assertFalse(methodArea.resolveMethod(PROGRAMS, "fib", "(I)I").getMethodInfo().isCodeDeferred(),
+            "実行したメソッドのCode属性はデコード済みであるべきです");
+        assertTrue(methodArea.resolveMethod(PROGRAMS, "sieve", "(I)I").getMethodInfo().isCodeDeferred(),
+            "実行していないメソッドのCode属性はデコードされないはずです");
+    }
+
+    @Test
+    void testLoopsAndArrays() {
+        assertEquals(GuestPrograms.sieve(10000), run("sieve", "(I)I", 10000), "sieveの結果が一致しません");
+        assertEquals(GuestPrograms.nestedLoops(100), run("nestedLoops", "(I)J", 100), "nestedLoopsの結果が一致しません");
+        assertEquals(GuestPrograms.arrays(12), run("arrays", "(I)J", 12), "配列操作の結果が一致しません");
+    }
+
+    @Test
+    void testSuperinstructionsReduceDispatches() {
+        // コンパイルしたコードの命令は数えないため、インタプリタだけで比較する
+        TieredCompiler compiler = TieredCompiler.getInstance();
+        int threshold = compiler.getThreshold();
+        compiler.setThreshold(0);
+        long[] dispatches = new long[2];
+        try {
+            for (int i = 0; i < 2; i++) {
+                CodeDecoder.setSuperinstructions(i == 1);
+                setUp();
+                assertEquals(GuestPrograms.sieve(10000), run("sieve", "(I)I", 10000), "sieveの結果が一致しません");
+                assertEquals(GuestObjects.linkedSum(100), runObjects("linkedSum", "(I)J", 100), "linkedSumの結果が一致しません");
+                dispatches[i] = interpreter.getExecutedInstructions();
+            }
+        } finally {
+            CodeDecoder.setSuperinstructions(true);
+            compiler.setThreshold(threshold);
+        }
+        assertTrue(dispatches[1] < dispatches[0] * 9 / 10,
+            "スーパー命令でディスパッチの回数が1割以上減るべきです: " + dispatches[0] + " -> " + dispatches[1]);
+    }
+
+    @Test
+    void testArithmetic() {
+        assertEquals(GuestPrograms.longArithmetic(123456789L, -987654321L),
+            run("longArithmetic", "(JJ)J", 123456789L, -987654321L), "long演算の結果が一致しません");
+        assertEquals(GuestPrograms.floatingPoint(3.25f, 1234.5),
+            run("floatingPoint", "(FD)D", 3.25f, 1234.5), "浮動小数点演算の結果が一致しません");
+        for (int value : new int[] {0, -1, 200, 70000, Integer.MIN_VALUE}) {
+            assertEquals(GuestPrograms.conversions(value), run("conversions", "(I)I", value), "型変換の結果が一致しません: " + value);
+        }
+        double[][] pairs = {{1, 2}, {2, 1}, {1, 1}, {Double.NaN, 1}};
+        for (double[] pair : pairs) {
+            assertEquals(GuestPrograms.compareFloats(pair[0], pair[1]), run("compareFloats", "(DD)I", pair[0], pair[1]),
+                "比較の結果が一致しません: " + pair[0] + ", " + pair[1]);
+        }
+    }
+
+    @Test
+    void testSwitches() {
+        for (int value = -2; value <= 6; value++) {
+            assertEquals(GuestPrograms.denseSwitch(value), run("denseSwitch", "(I)I", value), "tableswitchの結果が一致しません: " + value);
+        }
+        for (int value : new int[] {-1000, 7, 1000, 100000, 0, 8, -999}) {
+            assertEquals(GuestPrograms.sparseSwitch(value), run("sparseSwitch", "(I)I", value), "lookupswitchの結果が一致しません: " + value);
+        }
+    }
+
+    @Test
+    void testStackManipulation() {
+        long[] values = {1, 2, 3};
+        assertEquals(GuestPrograms.duplicates(new long[] {1, 2, 3}, 1), run("duplicates", "([JI)J", values, 1),
+            "dup命令の結果が一致しません");
+        assertEquals(7, values[1], "配列の要素が更新されるべきです");
+    }
+
+    @Test
+    void testExceptionHandlers() {
+        assertEquals(3, run("divide", "(II)I", 7, 2), "例外が発生しない場合の結果が一致しません");
+        assertEquals(-1, run("divide", "(II)I", 7, 0), "ゼロ除算は捕捉されるべきです");
+        assertEquals(0, run("outOfBounds", "(I)I", 2), "範囲内のアクセスは成功するべきです");
+        assertEquals(-2, run("outOfBounds", "(I)I", 3), "範囲外のアクセスは捕捉されるべきです");
+        assertEquals(-3, run("catchFromCallee", "(I)I", 2), "呼び出し先で発生した例外は呼び出し元で捕捉されるべきです");
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> run("uncaught", "([I)I", (Object) new int[1]),
+            "捕捉されない例外は呼び出し側へ送出されるべきです");
+        assertEquals(3, run("divide", "(II)I", 9, 3), "例外の後も実行を継続できるべきです");
+    }
+
+    @Test
+    void testStackOverflow() {
+        interpreter = new Interpreter(methodArea, new ThreadStack(100, 10000));
+        assertEquals(98, run("depth", "(I)I", 98), "上限以内の深さの呼び出しは成功するべきです");
+        assertThrows(StackOverflowError.class, () -> run("depth", "(I)I", 100),
+            "フレーム数の上限を超えるとStackOverflowErrorになるべきです");
+        assertEquals(0, interpreter.getStack().getDepth(), "例外の後はすべてのフレームが下ろされるべきです");
+        assertEquals(-1, run("catchOverflow", "(I)I", 1000), "StackOverflowErrorはゲストのハンドラで捕捉できるべきです");
+        assertEquals(10, run("catchOverflow", "(I)I", 10), "スタックあふれの後も実行を継続できるべきです");
+
+        interpreter = new Interpreter(methodArea, new ThreadStack(10000, 64));
+        assertThrows(StackOverflowError.class, () -> run("depth", "(I)I", 100),
+            "スロット数の上限を超えるとStackOverflowErrorになるべきです");
+    }
+
+    @Test
+    void testCallsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean threads) || !threads.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        RuntimeMethod fib = methodArea.resolveMethod(PROGRAMS, "fib", "(I)I");
+        interpreter.execute(fib, 20);
+
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        interpreter.execute(fib, 20);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // fib(20)は約2万回の呼び出しを行う。1回の呼び出しで割り当てると数百KB以上になる
+        assertTrue(allocated < 16 * 1024, "メソッド呼び出しでホストのヒープに割り当てるべきではありません: " + allocated + "バイト");
+    }
+
+    @Test
+    void testReferences() {
+        assertSame("guest", run("literal", "(Z)Ljava/lang/String;", false), "文字列リテラルは一意化されるべきです");
+        assertEquals("other", run("literal", "(Z)Ljava/lang/String;", true), "文字列リテラルが一致しません");
+        assertEquals(true, run("isNull", "(Ljava/lang/Object;)Z", (Object) null), "nullの判定が一致しません");
+        assertEquals(false, run("isNull", "(Ljava/lang/Object;)Z", "value"), "nullの判定が一致しません");
+    }
+
+    @Test
+    void testObjectsAndFields() {
+        assertEquals(GuestObjects.linkedSum(100), runObjects("linkedSum", "(I)J", 100), "オブジェクトの連結リストの結果が一致しません");
+        assertEquals(GuestObjects.inherited(5), runObjects("inherited", "(I)D", 5), "継承したフィールドの結果が一致しません");
+        assertEquals(-1, runObjects("nullField", "(L" + OBJECTS + "$Point;)I", (Object) null),
+            "nullのフィールドアクセスはNullPointerExceptionになるべきです");
+    }
+
+    @Test
+    void testStaticFields() {
+        // ホスト側の同じクラスの値は変化させないため、期待値は直接計算する
+        assertEquals(100L + 45 + 10 + 3, runObjects("statics", "(I)J", 10), "staticフィールドの結果が一致しません");
+        assertEquals(100L + 90 + 20 + 3, runObjects("statics", "(I)J", 10), "staticフィールドの値は実行をまたいで保持されるべきです");
+    }
+
+    @Test
+    void testQuickening() {
+        RuntimeMethod method = methodArea.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        interpreter.execute(method, 10);
+        int quickened = method.getDecodedCode().getQuickenedCount();
+        assertTrue(quickened > 0, "フィールドアクセスはクイック命令に書き換えられるべきです");
+        interpreter.execute(method, 10);
+        assertEquals(quickened, method.getDecodedCode().getQuickenedCount(), "書き換えは1回だけ行われるべきです");
+    }
+
+    @Test
+    void testConcurrentQuickening() throws Exception {
+        RuntimeMethod single = methodArea.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        interpreter.execute(single, 10);
+        int expected = single.getDecodedCode().getQuickenedCount();
+
+        MethodArea shared = new MethodArea(TEST_CLASSES);
+        RuntimeMethod method = shared.resolveMethod(OBJECTS, "linkedSum", "(I)J");
+        int threads = 8;
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        try {
+            java.util.List<java.util.concurrent.Future<Object>> results = new java.util.ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return new Interpreter(shared).execute(method, 1000);
+                }));
+            }
+            start.countDown();
+            for (java.util.concurrent.Future<Object> result : results) {
+                assertEquals(GuestObjects.linkedSum(1000), result.get(), "同時に実行した結果が一致しません");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(expected, method.getDecodedCode().getQuickenedCount(), "同時に実行しても各命令の書き換えは1回だけ行われるべきです");
+    }
+
+    @Test
+    void testVirtualCalls() {
+        assertEquals(GuestDispatch.monomorphic(50), runDispatch("monomorphic", "(I)J", 50), "単相の呼び出しの結果が一致しません");
+        assertEquals(GuestDispatch.direct(50), runDispatch("direct", "(I)J", 50), "直接呼び出しの結果が一致しません");
+        assertEquals(GuestDispatch.polymorphic(50), runDispatch("polymorphic", "(I)J", 50), "多相の呼び出しの結果が一致しません");
+        assertEquals(GuestDispatch.megamorphic(50), runDispatch("megamorphic", "(I)J", 50),
+            "超多相の呼び出しとデフォルトメソッドの結果が一致しません");
+        assertEquals(GuestDispatch.scaled(3, 7), runDispatch("scaled", "(II)I", 3, 7), "superの呼び出しの結果が一致しません");
+        assertEquals(-1, runDispatch("nullReceiver", "(L" + DISPATCH + "$Shape;)I", (Object) null),
+            "nullに対する呼び出しはNullPointerExceptionになるべきです");
+        assertThrows(UnsupportedOperationException.class, () -> runDispatch("hostReceiver", "(Ljava/lang/Object;)I", "host"),
+            "ホストのオブジェクトに対する仮想呼び出しは未対応です");
+    }
+
+    @Test
+    void testUnsupportedInstruction() {
+        UnsupportedOperationException exception = assertThrows(UnsupportedOperationException.class,
+            () -> run("unsupported", "()I"), "未対応の命令は実行時に例外を送出するべきです");
+        assertTrue(exception.getMessage().contains("ldc"), "例外メッセージに命令名を含める必要があります");
+    }
+
+    @Test
+    void testTypeChecks() {
+        assertEquals(GuestDispatch.typeChecks(80), runDispatch("typeChecks", "(I)J", 80), "instanceofとcheckcastの結果が一致しません");
+        assertEquals(GuestDispatch.generic(5), runDispatch("generic", "(I)I", 5), "総称型のキャストの結果が一致しません");
+        ClassCastException exception = assertThrows(ClassCastException.class, () -> runDispatch("badCast", "(I)I", 3),
+            "互換性のない型へのキャストはClassCastExceptionになるべきです");
+        assertTrue(exception.getMessage().contains(DISPATCH + "$Rect") && exception.getMessage().contains(DISPATCH + "$Square"),
+            "例外メッセージにオブジェクトのクラスとキャスト先の型を含める必要があります: " + exception.getMessage());
+        assertEquals(2, runDispatch("hostCast", "(Ljava/lang/Object;)I", (Object) new String[2]),
+            "ホストの配列は共変の配列型にキャストできるべきです");
+        assertEquals(-1, runDispatch("hostCast", "(Ljava/lang/Object;)I", (Object) null), "nullはキャストできるべきです");
+        assertThrows(ClassCastException.class, () -> runDispatch("hostCast", "(Ljava/lang/Object;)I", "host"),
+            "文字列は配列型にキャストできないはずです");
+        assertThrows(ClassCastException.class, () -> runDispatch("hostCast", "(Ljava/lang/Object;)I", (Object) new int[2]),
+            "基本型の配列は参照型の配列型にキャストできないはずです");
+    }
+
+    @Test
+    void testVerifyError() {
+        // Malformedは戻り値の型が一致しないメソッドを持つクラスに、DerivedはBaseを継承しないクラスに差し替える
+        String malformed = PROGRAMS + "$Malformed";
+        String derived = PROGRAMS + "$Derived";
+        methodArea = new MethodArea(className -> {
+            byte[] content;
+            if (className.equals(malformed)) {
+                content = CodeDecoderTest.createClassFile(className, "value", 0x0008, 1,
+                    CodeDecoderTest.code(Opcode.FCONST_0, Opcode.IRETURN), new int[0]);
+            } else if (className.equals(derived)) {
+                content = CodeDecoderTest.createClassFile(className, "value", 0x0008, 1,
+                    CodeDecoderTest.code(Opcode.ILOAD_0, Opcode.IRETURN), new int[0]);
+            } else {
+                return TEST_CLASSES.load(className);
+            }
+            try (ClassFileReader reader = new ClassFileReader(content)) {
+                return reader.readClassFile();
+            }
+        });
+        interpreter = new Interpreter(methodArea);
+
+        assertEquals(-1, run("catchVerifyError", "(I)I", 5), "検証に失敗したクラスの参照はVerifyErrorになるべきです");
+        assertEquals(-1, run("catchVerifyError", "(I)I", 5), "検証に失敗したクラスは登録されないはずです");
+        assertThrows(VerifyError.class, () -> methodArea.lookup(malformed), "読み込み時に検証するべきです");
+        // Widening.widenの戻り値の制約（DerivedはBaseに代入できる）はリンク時にメソッド領域のクラスと照合する
+        assertEquals(-1, run("catchConstraintError", "()I"), "制約を満たさないクラスはリンク時にVerifyErrorになるべきです");
+        assertEquals(-1, run("catchConstraintError", "()I"), "制約を満たさないクラスは何度でもVerifyErrorになるべきです");
+    }
+
+    @Test
+    void testResolutionErrors() {
+        assertThrows(NoSuchMethodError.class, () -> methodArea.resolveMethod(PROGRAMS, "missing", "()V"),
+            "存在しないメソッドはNoSuchMethodErrorになるべきです");
+        assertThrows(NoClassDefFoundError.class, () -> methodArea.resolveMethod("missing/Missing", "run", "()V"),
+            "存在しないクラスはNoClassDefFoundErrorになるべきです");
+        assertThrows(IllegalArgumentException.class, () -> run("fib", "(I)I"), "引数の数が一致しない場合は拒否されるべきです");
+    }
+}
@@ -0,0 +1,45 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MarkBitmapTest {
+    @Test
+    void testMark() {
+        MarkBitmap bitmap = new MarkBitmap(4096);
+        assertFalse(bitmap.isMarked(16), "印を付ける前です");
+        assertTrue(bitmap.mark(16), "最初に印を付けた場合はtrueです");
+        assertFalse(bitmap.mark(16), "印が付いている場合はfalseです");
+        assertTrue(bitmap.isMarked(16), "印が付いているべきです");
+        assertFalse(bitmap.isMarked(24), "隣のアドレスには印がありません");
+        assertTrue(bitmap.mark(4088), "末尾のアドレスにも印を付けられるべきです");
+
+        bitmap.clear();
+        assertFalse(bitmap.isMarked(16), "clearで印が消えるべきです");
+        assertFalse(bitmap.isMarked(4088), "clearで印が消えるべきです");
+    }
+
+    @Test
+    void testConcurrentMark() throws Exception {
+        // 同じワードのビットを複数のスレッドが同時に付けても、各アドレスでちょうど1回だけ成功するべき
+        int size = 1 << 16;
+        MarkBitmap bitmap = new MarkBitmap(size);
+        AtomicInteger marked = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int address = 0; address < size; address += Heap.OBJECT_ALIGNMENT) {
+                    if (bitmap.mark(address)) {
+                        marked.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(size / Heap.OBJECT_ALIGNMENT, marked.get(), "印を付けるのに成功した回数が一致しません");
+    }
+}
@@ -0,0 +1,244 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javavm.classfile.ClassFileReader;
+import javavm.classloader.ClassSource;
+
+class MethodAreaTest {
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+    private static final String PROGRAMS = "javavm/execution/GuestPrograms";
+
+    /**
+     * メソッドを持たないクラスのクラスファイルを作成します。
+     */
+    private static byte[] createClassFile(int accessFlags, String name, String superName, String... interfaceNames)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        List<String> classNames = new ArrayList<>();
+        classNames.add(name);
+        classNames.add(superName);
+        classNames.addAll(List.of(interfaceNames));
+        out.writeShort(1 + classNames.size() * 2);
+        for (String className : classNames) {
+            out.writeByte(1);
+            out.writeUTF(className);
+            out.writeByte(7);
+            out.writeShort(classNames.indexOf(className) * 2 + 1);
+        }
+        out.writeShort(accessFlags);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(interfaceNames.length);
+        for (int i = 0; i < interfaceNames.length; i++) {
+            out.writeShort(6 + i * 2);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 作成したクラスファイルを優先し、それ以外はテスト用のクラスを読み込む読み込み元
+     */
+    private static ClassSource source(Map<String, byte[]> classFiles) {
+        return className -> {
+            byte[] content = classFiles.get(className);
+            if (content == null) {
+                return InterpreterTest.TEST_CLASSES.load(className);
+            }
+            try (ClassFileReader reader = new ClassFileReader(content)) {
+                return reader.readClassFile();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("他のスレッドの読み込みを待てませんでした");
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void testLoadsOnceUnderContention() throws Exception {
+        int threads = 8;
+        Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        CountDownLatch waiting = new CountDownLatch(threads);
+        MethodArea methodArea = new MethodArea(className -> {
+            loads.computeIfAbsent(className, name -> new AtomicInteger()).incrementAndGet();
+            if (className.equals(OBJECTS)) {
+                // すべてのスレッドが参照するまで読み込みを終えない
+                await(waiting);
+            }
+            return InterpreterTest.TEST_CLASSES.load(className);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<RuntimeClass>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    waiting.countDown();
+                    return methodArea.lookup(OBJECTS);
+                }));
+            }
+            RuntimeClass first = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<RuntimeClass> future : futures) {
+                assertSame(first, future.get(10, TimeUnit.SECONDS), "すべてのスレッドが同じクラスを受け取るべきです");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get(OBJECTS).get(), "同じクラスは1回だけ読み込むべきです");
+        assertEquals(1, loads.get("java/lang/Object").get(), "スーパークラスも1回だけ読み込むべきです");
+    }
+
+    @Test
+    void testLoadsDifferentClassesInParallel() throws Exception {
+        // 2つのクラスの読み込みが同時に進まなければ、どちらも完了しない
+        CountDownLatch started = new CountDownLatch(2);
+        MethodArea methodArea = new MethodArea(className -> {
+            if (className.equals(OBJECTS) || className.equals(PROGRAMS)) {
+                started.countDown();
+                await(started);
+            }
+            return InterpreterTest.TEST_CLASSES.load(className);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RuntimeClass> objects = executor.submit(() -> methodArea.lookup(OBJECTS));
+            Future<RuntimeClass> programs = executor.submit(() -> methodArea.lookup(PROGRAMS));
+            assertEquals(OBJECTS, objects.get(10, TimeUnit.SECONDS).getName().toString(), "クラス名が一致しません");
+            assertEquals(PROGRAMS, programs.get(10, TimeUnit.SECONDS).getName().toString(), "クラス名が一致しません");
+        } finally {
+            executor.shutdownNow();
+        }
+        assertSame(methodArea.lookup("java/lang/Object"), methodArea.lookup(OBJECTS).getSuperclass(),
+            "スーパークラスは読み込み時に解決されるべきです");
+    }
+
+    @Test
+    void testFailedLoadCanBeRetried() throws Exception {
+        byte[] content = createClassFile(0x0021, "Foo", "java/lang/Object");
+        AtomicInteger attempts = new AtomicInteger();
+        MethodArea methodArea = new MethodArea(className -> {
+            if (className.equals("Foo") && attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("読み込み元の障害");
+            }
+            return source(Map.of("Foo", content)).load(className);
+        });
+
+        assertThrows(IllegalStateException.class, () -> methodArea.lookup("Foo"), "読み込み元の例外がそのまま伝わるべきです");
+        assertEquals("Foo", methodArea.lookup("Foo").getName().toString(), "失敗した後に同じスレッドで読み込み直せるべきです");
+        assertEquals(2, attempts.get(), "失敗した読み込みは記録しないはずです");
+    }
+
+    @Test
+    void testFailedLoadWakesWaitingThreads() throws Exception {
+        byte[] content = createClassFile(0x0021, "Foo", "java/lang/Object");
+        CountDownLatch started = new CountDownLatch(1);
+        Thread[] waiter = new Thread[1];
+        Thread owner = Thread.currentThread();
+        MethodArea methodArea = new MethodArea(className -> {
+            if (className.equals("Foo") && Thread.currentThread() == owner) {
+                started.countDown();
+                // もう一方のスレッドが読み込みの完了を待ち始めてから失敗する
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (waiter[0].getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                throw new IllegalStateException("読み込み元の障害");
+            }
+            return source(Map.of("Foo", content)).load(className);
+        });
+
+        RuntimeClass[] result = new RuntimeClass[1];
+        waiter[0] = new Thread(() -> {
+            await(started);
+            result[0] = methodArea.lookup("Foo");
+        });
+        waiter[0].start();
+        assertThrows(IllegalStateException.class, () -> methodArea.lookup("Foo"), "読み込み元の例外がそのまま伝わるべきです");
+        waiter[0].join(10_000);
+
+        assertFalse(waiter[0].isAlive(), "読み込みの失敗を待っているスレッドが起きていません");
+        assertNotNull(result[0], "待っていたスレッドは改めて読み込むべきです");
+        assertEquals("Foo", result[0].getName().toString(), "クラス名が一致しません");
+    }
+
+    @Test
+    void testCircularSuperclass() throws Exception {
+        MethodArea methodArea = new MethodArea(source(Map.of(
+            "A", createClassFile(0x0021, "A", "B"),
+            "B", createClassFile(0x0021, "B", "A"))));
+        int size = methodArea.size();
+
+        assertThrows(ClassCircularityError.class, () -> methodArea.lookup("A"), "循環する継承関係を検出するべきです");
+        assertThrows(ClassCircularityError.class, () -> methodArea.lookup("B"), "読み込み中の印が残っていてはいけません");
+        assertEquals(size, methodArea.size(), "循環するクラスを登録してはいけません");
+    }
+
+    @Test
+    void testCircularInterfaces() throws Exception {
+        MethodArea methodArea = new MethodArea(source(Map.of(
+            "I", createClassFile(0x0601, "I", "java/lang/Object", "J"),
+            "J", createClassFile(0x0601, "J", "java/lang/Object", "I"),
+            "C", createClassFile(0x0021, "C", "java/lang/Object", "I"))));
+
+        assertThrows(ClassCircularityError.class, () -> methodArea.lookup("C"), "循環するインターフェースを検出するべきです");
+    }
+
+    @Test
+    void testCircularSuperclassAcrossThreads() throws Exception {
+        // 2つのスレッドがそれぞれAとBを読み込み中にしてから、互いのクラスを参照する
+        CountDownLatch started = new CountDownLatch(2);
+        Map<String, byte[]> classFiles = Map.of(
+            "A", createClassFile(0x0021, "A", "B"),
+            "B", createClassFile(0x0021, "B", "A"));
+        MethodArea methodArea = new MethodArea(className -> {
+            if (classFiles.containsKey(className) && started.getCount() > 0) {
+                started.countDown();
+                await(started);
+            }
+            return source(classFiles).load(className);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RuntimeClass> a = executor.submit(() -> methodArea.lookup("A"));
+            Future<RuntimeClass> b = executor.submit(() -> methodArea.lookup("B"));
+            for (Future<RuntimeClass> future : List.of(a, b)) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS),
+                    "スレッドをまたぐ循環でもデッドロックせずにエラーとするべきです");
+                assertInstanceOf(ClassCircularityError.class, e.getCause(), "循環する継承関係を検出するべきです");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
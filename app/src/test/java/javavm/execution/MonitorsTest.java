@@ -0,0 +1,100 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonitorsTest {
+    private static final String THREADS = "javavm/execution/GuestThreads";
+
+    private static MethodArea methodArea() {
+        return new MethodArea(InterpreterTest.TEST_CLASSES, new Heap(1 << 20, 1024));
+    }
+
+    @Test
+    void testUncontendedLockStaysThin() {
+        MethodArea methodArea = methodArea();
+        Monitors monitors = methodArea.getHeap().monitors;
+        RuntimeMethod contended = methodArea.resolveMethod(THREADS, "contended", "(IIZ)I");
+        assertEquals(1000, new Interpreter(methodArea).execute(contended, 1, 1000, false), "カウンタの値が一致しません");
+        assertEquals(0, monitors.getInflations(), "競合しないロックは膨張しないはずです");
+        assertEquals(0, monitors.getInflatedCount(), "膨張したロックが残っています");
+    }
+
+    @Test
+    void testDeepRecursionInflatesAndDeflates() {
+        MethodArea methodArea = methodArea();
+        Monitors monitors = methodArea.getHeap().monitors;
+        RuntimeMethod nested = methodArea.resolveMethod(THREADS, "nested", "(I)I");
+        assertEquals(20, new Interpreter(methodArea).execute(nested, 20), "再帰呼び出しの結果が一致しません");
+        assertEquals(1, monitors.getInflations(), "再入の上限を超えるとロックが膨張するはずです");
+        assertEquals(0, monitors.getInflatedCount(), "解放したロックは収縮するはずです");
+    }
+
+    @Test
+    void testExceptionReleasesLock() {
+        MethodArea methodArea = methodArea();
+        Heap heap = methodArea.getHeap();
+        RuntimeMethod release = methodArea.resolveMethod(THREADS, "releaseOnException",
+            "()L" + THREADS + "$Counter;");
+        Instance counter = (Instance) new Interpreter(methodArea).execute(release);
+        assertEquals(0, heap.memory.getLong((int) counter.getAddress()) & Monitors.LOCK_MASK,
+            "例外で抜けたsynchronized文のロックが解放されていません");
+    }
+
+    @Test
+    void testNotifyWithoutLock() {
+        MethodArea methodArea = methodArea();
+        RuntimeMethod notifyWithoutLock = methodArea.resolveMethod(THREADS, "notifyWithoutLock", "()Z");
+        assertEquals(true, new Interpreter(methodArea).execute(notifyWithoutLock),
+            "ロックを保持せずにnotifyするとIllegalMonitorStateExceptionになるべきです");
+    }
+
+    @Test
+    void testTimedWait() {
+        MethodArea methodArea = methodArea();
+        RuntimeMethod timedWait = methodArea.resolveMethod(THREADS, "timedWait", "()Z");
+        assertEquals(true, new Interpreter(methodArea).execute(timedWait), "時間を指定したwaitが戻りません");
+        assertEquals(0, methodArea.getHeap().monitors.getInflatedCount(), "waitの後のロックが収縮していません");
+    }
+
+    @Test
+    void testLockSurvivesCollection() {
+        // 小さなヒープで、ロックを保持したオブジェクトをGCで移動させる
+        MethodArea methodArea = new MethodArea(InterpreterTest.TEST_CLASSES, new Heap(1 << 18, 256));
+        RuntimeMethod contended = methodArea.resolveMethod(THREADS, "contended", "(IIZ)I");
+        assertEquals(4 * 5000, new Interpreter(methodArea).execute(contended, 4, 5000, true),
+            "GCの後もロックで保護したカウンタの値が一致するべきです");
+        assertTrue(methodArea.getHeap().collector.getCollections(GcEvent.Kind.MINOR) > 0, "GCが実行されていません");
+        assertEquals(0, methodArea.getHeap().monitors.getInflatedCount(), "膨張したロックが残っています");
+    }
+
+    @Test
+    void testHostObjectLocks() {
+        MethodArea methodArea = methodArea();
+        Monitors monitors = methodArea.getHeap().monitors;
+        RuntimeMethod hostArrayLock = methodArea.resolveMethod(THREADS, "hostArrayLock", "(II)I");
+        assertEquals(4 * 2000, new Interpreter(methodArea).execute(hostArrayLock, 4, 2000),
+            "配列のロックで保護したカウンタの値が一致しません");
+
+        RuntimeMethod hostHandoff = methodArea.resolveMethod(THREADS, "hostHandoff", "(I)J");
+        assertEquals(100L * 101 / 2, new Interpreter(methodArea).execute(hostHandoff, 100),
+            "文字列のロックでwait/notifyした値の合計が一致しません");
+        assertEquals(0, monitors.getInflations(), "ホストのオブジェクトのロックはマークワードを膨張させないはずです");
+    }
+
+    @Test
+    void testHostMonitorsAreCollected() throws InterruptedException {
+        MethodArea methodArea = methodArea();
+        Monitors monitors = methodArea.getHeap().monitors;
+        RuntimeMethod lockArrays = methodArea.resolveMethod(THREADS, "lockArrays", "(I)I");
+        assertEquals(999 * 1000 / 2, new Interpreter(methodArea).execute(lockArrays, 1000), "値の合計が一致しません");
+
+        // 到達できなくなった配列のモニタは、ホストのGCの後に取り除かれる
+        for (int i = 0; i < 50 && monitors.getHostMonitorCount() > 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(monitors.getHostMonitorCount() <= 10,
+            "回収された配列のモニタが残っています: " + monitors.getHostMonitorCount());
+    }
+}
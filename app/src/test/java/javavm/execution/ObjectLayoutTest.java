@@ -0,0 +1,42 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectLayoutTest {
+    @Test
+    void testOrder() {
+        // 宣言順はbyte, 参照, long, short, int
+        ObjectLayout layout = ObjectLayout.EMPTY.extend(new char[] {'B', 'L', 'J', 'S', 'I'});
+        assertEquals(16, layout.offsetOf(2), "longは8バイト境界に置くべきです");
+        assertEquals(12, layout.offsetOf(4), "intはヘッダの後ろの隙間に置くべきです");
+        assertEquals(24, layout.offsetOf(3), "shortはlongの後ろに置くべきです");
+        assertEquals(26, layout.offsetOf(0), "byteはshortの後ろに置くべきです");
+        assertEquals(28, layout.offsetOf(1), "参照は最後に4バイト境界に置くべきです");
+        assertEquals(32, layout.instanceSize(), "大きさは8バイトの倍数に切り上げるべきです");
+        assertArrayEquals(new int[] {28}, layout.referenceOffsets(), "参照の位置が一致しません");
+    }
+
+    @Test
+    void testFillHoles() {
+        ObjectLayout layout = ObjectLayout.EMPTY.extend(new char[] {'D', 'Z', 'C'});
+        assertEquals(16, layout.offsetOf(0), "doubleは8バイト境界に置くべきです");
+        assertEquals(12, layout.offsetOf(2), "charはヘッダの後ろの隙間に置くべきです");
+        assertEquals(14, layout.offsetOf(1), "booleanは残りの隙間に置くべきです");
+        assertEquals(24, layout.instanceSize(), "隙間を埋めれば詰め物は不要です");
+        assertEquals(16, ObjectLayout.EMPTY.instanceSize(), "フィールドのないオブジェクトもヘッダを8バイトの倍数に切り上げるべきです");
+    }
+
+    @Test
+    void testSubclass() {
+        ObjectLayout parent = ObjectLayout.EMPTY.extend(new char[] {'J', 'L'});
+        assertEquals(12, parent.offsetOf(1), "参照はヘッダの後ろの隙間に置くべきです");
+        assertEquals(24, parent.instanceSize(), "大きさが一致しません");
+        ObjectLayout child = parent.extend(new char[] {'I', '[', 'J'});
+        assertEquals(24, child.offsetOf(2), "サブクラスのフィールドはスーパークラスのフィールドの後ろに置くべきです");
+        assertEquals(32, child.offsetOf(0), "サブクラスのフィールドが一致しません");
+        assertEquals(36, child.offsetOf(1), "サブクラスのフィールドが一致しません");
+        assertEquals(40, child.instanceSize(), "大きさが一致しません");
+        assertArrayEquals(new int[] {12, 36}, child.referenceOffsets(), "スーパークラスの参照の位置も含めるべきです");
+    }
+}
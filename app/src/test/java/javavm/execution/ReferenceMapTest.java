@@ -0,0 +1,55 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceMapTest {
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+
+    private final MethodArea methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+
+    private DecodedCode decode(String name, String descriptor) {
+        return methodArea.resolveMethod(OBJECTS, name, descriptor).getDecodedCode();
+    }
+
+    @Test
+    void testEntry() {
+        DecodedCode code = decode("nullField", "(L" + OBJECTS + "$Point;)I");
+        ReferenceMap map = code.getReferenceMap();
+        assertEquals(code.maxLocals, map.frameSize(0), "入口ではオペランドスタックは空です");
+        assertTrue(map.isReference(0, 0), "参照型の引数は参照です");
+
+        code = decode("rounds", "(II)J");
+        map = code.getReferenceMap();
+        assertFalse(map.isReference(0, 0), "int型の引数は参照ではありません");
+        assertFalse(map.isReference(0, 1), "int型の引数は参照ではありません");
+        assertSame(map, code.getReferenceMap(), "参照マップは1回だけ作るべきです");
+    }
+
+    @Test
+    void testHandler() {
+        DecodedCode code = decode("nullField", "(L" + OBJECTS + "$Point;)I");
+        ReferenceMap map = code.getReferenceMap();
+        int handler = code.handlers[2];
+        assertEquals(code.maxLocals + 1, map.frameSize(handler), "ハンドラの入口ではスタックに例外だけを積むべきです");
+        assertTrue(map.isReference(handler, code.maxLocals), "例外は参照です");
+    }
+
+    @Test
+    void testLoopMerge() {
+        // ループの先頭ではheadが参照、カウンタが基本型のまま合流する
+        DecodedCode code = decode("linkedSum", "(I)J");
+        ReferenceMap map = code.getReferenceMap();
+        int loops = 0;
+        for (int pc = 0; pc < code.instructions.length; pc++) {
+            if (map.frameSize(pc) >= 0 && code.instructions[pc] == Opcode.GOTO && code.instructions[pc + 1] < pc) {
+                int target = code.instructions[pc + 1];
+                assertEquals(code.maxLocals, map.frameSize(target), "ループの先頭ではオペランドスタックは空です");
+                assertFalse(map.isReference(target, 0), "引数nは参照ではありません");
+                assertTrue(map.isReference(target, 1), "headは参照です");
+                loops++;
+            }
+        }
+        assertTrue(loops > 0, "後方への分岐が見つかりません");
+    }
+}
@@ -0,0 +1,125 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuntimeClassTest {
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+
+    private MethodArea methodArea;
+
+    @BeforeEach
+    void setUp() {
+        methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+    }
+
+    @Test
+    void testFieldLayout() {
+        RuntimeClass point = methodArea.lookup(OBJECTS + "$Point");
+        RuntimeClass point3 = methodArea.lookup(OBJECTS + "$Point3");
+        assertEquals(2, point.getPrimitiveFieldCount(), "基本型フィールドの数が一致しません");
+        assertEquals(1, point.getReferenceFieldCount(), "参照型フィールドの数が一致しません");
+        assertEquals(4, point3.getPrimitiveFieldCount(), "スーパークラスのフィールドも数えるべきです");
+        assertEquals(1, point3.getReferenceFieldCount(), "スーパークラスのフィールドも数えるべきです");
+
+        RuntimeField x = methodArea.resolveField(OBJECTS + "$Point3", "x", "I");
+        assertSame(point, x.getOwner(), "継承したフィールドは宣言したクラスに解決されるべきです");
+        RuntimeField z = point3.findDeclaredField("z", "D");
+        assertTrue(z.getSlot() >= 2, "サブクラスのフィールドはスーパークラスのフィールドの後ろに配置されるべきです");
+        assertTrue(z.isWide(), "doubleは2スロットの型です");
+        assertTrue(point.findDeclaredField("next", "L" + OBJECTS + "$Point;").isReference(), "参照型のフィールドです");
+        assertThrows(NoSuchFieldError.class, () -> methodArea.resolveField(OBJECTS + "$Point", "y", "I"),
+            "存在しないフィールドはNoSuchFieldErrorになるべきです");
+    }
+
+    @Test
+    void testPackedFields() {
+        // int x, long weight, Point next はヘッダの後ろの隙間も使って詰める
+        RuntimeClass point = methodArea.lookup(OBJECTS + "$Point");
+        assertEquals(32, point.getInstanceSize(), "フィールドを大きさの順に詰めるべきです");
+        assertEquals(12, point.findDeclaredField("x", "I").getOffset(), "intはヘッダの後ろの隙間に置くべきです");
+        assertEquals(16, point.findDeclaredField("weight", "J").getOffset(), "longは8バイト境界に置くべきです");
+        assertEquals(24, point.findDeclaredField("next", "L" + OBJECTS + "$Point;").getOffset(), "参照は4バイトです");
+        RuntimeClass point3 = methodArea.lookup(OBJECTS + "$Point3");
+        assertEquals(28, point3.findDeclaredField("flag", "Z").getOffset(), "サブクラスのフィールドでスーパークラスの後ろの隙間を埋めるべきです");
+        assertEquals(40, point3.getInstanceSize(), "サブクラスの大きさが一致しません");
+    }
+
+    @Test
+    void testVtable() {
+        String dispatch = "javavm/execution/GuestDispatch";
+        RuntimeClass circle = methodArea.lookup(dispatch + "$Circle");
+        RuntimeClass ring = methodArea.lookup(dispatch + "$Ring");
+        RuntimeClass square = methodArea.lookup(dispatch + "$Square");
+        RuntimeMethod circleArea = circle.findDeclaredMethod("area", "()I");
+        RuntimeMethod ringArea = ring.findDeclaredMethod("area", "()I");
+        RuntimeMethod scaled = methodArea.resolveMethod(dispatch + "$Base", "scaled", "(I)I");
+
+        circle.link();
+        assertTrue(circleArea.getVtableIndex() >= 0, "仮想呼び出しの対象のメソッドにはvtableの添字が割り当てられるべきです");
+        assertFalse(circleArea.isOverridden(), "サブクラスがリンクされるまではオーバーライドされていないべきです");
+        ring.link();
+        assertEquals(circleArea.getVtableIndex(), ringArea.getVtableIndex(), "オーバーライドしたメソッドは同じ添字を引き継ぐべきです");
+        assertTrue(circleArea.isOverridden(), "サブクラスのリンクでオーバーライドが記録されるべきです");
+        assertSame(ringArea, ring.selectMethod(circleArea), "vtableからオーバーライドしたメソッドが選択されるべきです");
+        assertSame(scaled, square.selectMethod(scaled), "継承したメソッドが選択されるべきです");
+        assertEquals(-1, methodArea.resolveMethod(dispatch + "$Square", "<init>", "(I)V").getVtableIndex(),
+            "コンストラクタは仮想呼び出しの対象外です");
+    }
+
+    @Test
+    void testItable() {
+        String dispatch = "javavm/execution/GuestDispatch";
+        RuntimeClass square = methodArea.lookup(dispatch + "$Square");
+        RuntimeClass circle = methodArea.lookup(dispatch + "$Circle");
+        RuntimeMethod area = methodArea.resolveMethod(dispatch + "$Shape", "area", "()I");
+        RuntimeMethod sides = methodArea.resolveMethod(dispatch + "$Shape", "sides", "()I");
+
+        circle.link();
+        assertEquals(0, area.getItableIndex(), "インターフェースのメソッドには宣言順にitableの添字が割り当てられるべきです");
+        assertEquals(1, sides.getItableIndex(), "インターフェースのメソッドには宣言順にitableの添字が割り当てられるべきです");
+        assertEquals(-1, area.getVtableIndex(), "インターフェースのメソッドにはvtableの添字はありません");
+        assertSame(circle.findDeclaredMethod("area", "()I"), circle.selectMethod(area), "itableから実装が選択されるべきです");
+        assertSame(sides, circle.selectMethod(sides), "実装がない場合はデフォルトメソッドが選択されるべきです");
+        assertFalse(sides.isOverridden(), "デフォルトメソッドを選択したクラスだけならオーバーライドされていないべきです");
+        square.link();
+        assertSame(square.findDeclaredMethod("sides", "()I"), square.selectMethod(sides), "オーバーライドしたメソッドが選択されるべきです");
+        assertTrue(sides.isOverridden(), "デフォルトメソッドのオーバーライドが記録されるべきです");
+        assertThrows(IncompatibleClassChangeError.class, () -> methodArea.lookup(OBJECTS + "$Point").selectMethod(area),
+            "実装していないインターフェースのメソッドは選択できないべきです");
+    }
+
+    @Test
+    void testConstantValue() {
+        RuntimeClass objects = methodArea.lookup(OBJECTS);
+        RuntimeField name = objects.findDeclaredField("NAME", "Ljava/lang/String;");
+        RuntimeField limit = objects.findDeclaredField("LIMIT", "J");
+        assertSame("guest", methodArea.getHeap().referenceOf(objects.staticRefs[name.getSlot()]),
+            "ConstantValue属性の文字列が設定されるべきです");
+        assertEquals(1L << 40, objects.staticValues[limit.getSlot()], "ConstantValue属性の値が設定されるべきです");
+        assertFalse(objects.isInitialized(), "リンクしただけでは初期化されないべきです");
+    }
+
+    @Test
+    void testInitialization() {
+        Interpreter interpreter = new Interpreter(methodArea);
+        RuntimeClass init = methodArea.lookup(OBJECTS + "$Init");
+        assertFalse(init.isInitialized(), "参照されるまで初期化されないべきです");
+        assertEquals(21, interpreter.execute(methodArea.resolveMethod(OBJECTS, "initOnce", "()I")),
+            "<clinit>は1回だけ実行されるべきです");
+        assertTrue(init.isInitialized(), "getstaticでクラスが初期化されるべきです");
+        assertTrue(methodArea.lookup(OBJECTS).isInitialized(), "staticメソッドの実行でクラスが初期化されるべきです");
+    }
+
+    @Test
+    void testFailedInitialization() {
+        Interpreter interpreter = new Interpreter(methodArea);
+        RuntimeMethod broken = methodArea.resolveMethod(OBJECTS, "broken", "()I");
+        ExceptionInInitializerError error = assertThrows(ExceptionInInitializerError.class, () -> interpreter.execute(broken),
+            "<clinit>の例外はExceptionInInitializerErrorになるべきです");
+        assertInstanceOf(ArithmeticException.class, error.getCause(), "原因の例外が保持されるべきです");
+        assertThrows(NoClassDefFoundError.class, () -> interpreter.execute(broken),
+            "初期化に失敗したクラスはNoClassDefFoundErrorになるべきです");
+    }
+}
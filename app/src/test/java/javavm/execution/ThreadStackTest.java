@@ -0,0 +1,39 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadStackTest {
+
+    @Test
+    void testDefaultLimits() {
+        ThreadStack stack = new ThreadStack();
+        assertEquals(ThreadStack.DEFAULT_MAX_DEPTH, stack.getMaxDepth(), "フレーム数の上限が既定値になるべきです");
+        assertEquals(ThreadStack.DEFAULT_MAX_SLOTS, stack.getMaxSlots(), "スロット数の上限が既定値になるべきです");
+        assertEquals(0, stack.getDepth(), "生成直後はフレームがないべきです");
+        assertTrue(stack.getCapacity() < stack.getMaxSlots(), "スロットは上限まで一度に確保しないべきです");
+    }
+
+    @Test
+    void testInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new ThreadStack(0, 100), "フレーム数の上限0は拒否されるべきです");
+        assertThrows(IllegalArgumentException.class, () -> new ThreadStack(100, 0), "スロット数の上限0は拒否されるべきです");
+    }
+
+    @Test
+    void testGrowsUpToLimit() {
+        MethodArea methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+        ThreadStack stack = new ThreadStack(5000, 1 << 16);
+        Interpreter interpreter = new Interpreter(methodArea, stack);
+        RuntimeMethod depth = methodArea.resolveMethod("javavm/execution/GuestPrograms", "depth", "(I)I");
+        int initial = stack.getCapacity();
+
+        assertEquals(3000, interpreter.execute(depth, 3000), "深い再帰呼び出しの結果が一致しません");
+        assertTrue(stack.getCapacity() > initial, "スロット配列は必要に応じて拡張されるべきです");
+        assertTrue(stack.getCapacity() <= stack.getMaxSlots(), "スロット配列は上限を超えて拡張されないべきです");
+        assertEquals(0, stack.getDepth(), "実行後はすべてのフレームが下ろされるべきです");
+        for (Object ref : stack.refs) {
+            assertNull(ref, "実行後は参照が残らないべきです");
+        }
+    }
+}
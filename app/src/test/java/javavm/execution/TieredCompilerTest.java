@@ -0,0 +1,166 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredCompilerTest {
+    private static final String PROGRAMS = "javavm/execution/GuestPrograms";
+    private static final String OBJECTS = "javavm/execution/GuestObjects";
+    private static final String DISPATCH = "javavm/execution/GuestDispatch";
+
+    private final TieredCompiler compiler = TieredCompiler.getInstance();
+    private int failed;
+    private MethodArea methodArea;
+    private Interpreter interpreter;
+
+    @BeforeEach
+    void setUp() {
+        compiler.setThreshold(2);
+        failed = compiler.getFailedCount();
+        methodArea = new MethodArea(InterpreterTest.TEST_CLASSES);
+        interpreter = new Interpreter(methodArea);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        compiler.awaitIdle();
+        compiler.setThreshold(TieredCompiler.DEFAULT_THRESHOLD);
+    }
+
+    private Object run(String owner, String name, String descriptor, Object... arguments) {
+        return interpreter.execute(methodArea.resolveMethod(owner, name, descriptor), arguments);
+    }
+
+    /**
+     * しきい値を超えるまで実行してコンパイルを待ちます。
+     */
+    private void warmUp(String owner, String name, String descriptor, Object... arguments) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            run(owner, name, descriptor, arguments);
+        }
+        compiler.awaitIdle();
+        assertNotNull(methodArea.resolveMethod(owner, name, descriptor).getDecodedCode().compiled,
+            "コンパイルされるべきです: " + name + descriptor);
+    }
+
+    @Test
+    void testCompiledResults() throws InterruptedException {
+        warmUp(PROGRAMS, "fib", "(I)I", 5);
+        assertEquals(GuestPrograms.fib(20), run(PROGRAMS, "fib", "(I)I", 20), "fibの結果が一致しません");
+        warmUp(PROGRAMS, "sieve", "(I)I", 100);
+        assertEquals(GuestPrograms.sieve(10000), run(PROGRAMS, "sieve", "(I)I", 10000), "sieveの結果が一致しません");
+        warmUp(PROGRAMS, "arrays", "(I)J", 3);
+        assertEquals(GuestPrograms.arrays(12), run(PROGRAMS, "arrays", "(I)J", 12), "配列操作の結果が一致しません");
+        warmUp(PROGRAMS, "longArithmetic", "(JJ)J", 1L, 2L);
+        assertEquals(GuestPrograms.longArithmetic(123456789L, -987654321L),
+            run(PROGRAMS, "longArithmetic", "(JJ)J", 123456789L, -987654321L), "long演算の結果が一致しません");
+        warmUp(PROGRAMS, "floatingPoint", "(FD)D", 1f, 2.0);
+        assertEquals(GuestPrograms.floatingPoint(3.25f, 1234.5),
+            run(PROGRAMS, "floatingPoint", "(FD)D", 3.25f, 1234.5), "浮動小数点演算の結果が一致しません");
+        warmUp(PROGRAMS, "conversions", "(I)I", 1);
+        for (int value : new int[] {0, -1, 200, 70000, Integer.MIN_VALUE}) {
+            assertEquals(GuestPrograms.conversions(value), run(PROGRAMS, "conversions", "(I)I", value), "型変換の結果が一致しません: " + value);
+        }
+        warmUp(PROGRAMS, "compareFloats", "(DD)I", 1.0, 2.0);
+        double[][] pairs = {{1, 2}, {2, 1}, {1, 1}, {Double.NaN, 1}};
+        for (double[] pair : pairs) {
+            assertEquals(GuestPrograms.compareFloats(pair[0], pair[1]), run(PROGRAMS, "compareFloats", "(DD)I", pair[0], pair[1]),
+                "浮動小数点の比較の結果が一致しません");
+        }
+        warmUp(PROGRAMS, "denseSwitch", "(I)I", 0);
+        warmUp(PROGRAMS, "sparseSwitch", "(I)I", 0);
+        for (int value = -2; value <= 6; value++) {
+            assertEquals(GuestPrograms.denseSwitch(value), run(PROGRAMS, "denseSwitch", "(I)I", value), "tableswitchの結果が一致しません");
+        }
+        for (int value : new int[] {-1000, 7, 1000, 100000, 3}) {
+            assertEquals(GuestPrograms.sparseSwitch(value), run(PROGRAMS, "sparseSwitch", "(I)I", value), "lookupswitchの結果が一致しません");
+        }
+        warmUp(PROGRAMS, "duplicates", "([JI)J", new long[] {1, 2}, 0);
+        assertEquals(GuestPrograms.duplicates(new long[] {1, 2, 3}, 2), run(PROGRAMS, "duplicates", "([JI)J", new long[] {1, 2, 3}, 2),
+            "dup系の命令の結果が一致しません");
+        warmUp(PROGRAMS, "isNull", "(Ljava/lang/Object;)Z", "guest");
+        assertEquals(true, run(PROGRAMS, "isNull", "(Ljava/lang/Object;)Z", (Object) null), "nullの判定が一致しません");
+        assertEquals(failed, compiler.getFailedCount(), "コンパイルに失敗するべきではありません");
+    }
+
+    @Test
+    void testCompiledFieldAccess() throws InterruptedException {
+        warmUp(OBJECTS, "linkedSum", "(I)J", 3);
+        assertEquals(GuestObjects.linkedSum(50), run(OBJECTS, "linkedSum", "(I)J", 50), "フィールドアクセスの結果が一致しません");
+        warmUp(OBJECTS, "packed", "(I)J", 3);
+        assertEquals(GuestObjects.packed(50), run(OBJECTS, "packed", "(I)J", 50), "小さい型のフィールドの結果が一致しません");
+        warmUp(OBJECTS, "churn", "(I)J", 20);
+        assertEquals(GuestObjects.churn(5000), run(OBJECTS, "churn", "(I)J", 5000), "参照のフィールドの結果が一致しません");
+        assertEquals(failed, compiler.getFailedCount(), "コンパイルに失敗するべきではありません");
+    }
+
+    @Test
+    void testCompiledTypeChecks() throws InterruptedException {
+        warmUp(DISPATCH, "typeChecks", "(I)J", 8);
+        assertEquals(GuestDispatch.typeChecks(80), run(DISPATCH, "typeChecks", "(I)J", 80), "instanceofとcheckcastの結果が一致しません");
+        warmUp(DISPATCH, "hostCast", "(Ljava/lang/Object;)I", (Object) new Object[1]);
+        assertThrows(ClassCastException.class, () -> run(DISPATCH, "hostCast", "(Ljava/lang/Object;)I", "host"),
+            "コンパイルしたコードのcheckcastも互換性のない型を拒否するべきです");
+        assertEquals(failed, compiler.getFailedCount(), "コンパイルに失敗するべきではありません");
+    }
+
+    @Test
+    void testFailureIsRecorded() throws Exception {
+        // 生成するメソッドのローカル変数がクラスファイルの上限を超える命令列（iload_0, ireturn）
+        DecodedCode code = CodeDecoderTest.decode(0x0008, 20000, CodeDecoderTest.code(0x1A, 0xAC));
+        compiler.request(code);
+        compiler.awaitIdle();
+        assertNull(code.compiled, "コンパイルに失敗した命令列はインタプリタで実行するはずです");
+        assertEquals(failed + 1, compiler.getFailedCount(), "失敗した回数を数えるべきです");
+        Throwable failure = compiler.getLastFailure();
+        assertTrue(failure instanceof IllegalStateException && failure.getMessage().contains("ローカル変数"),
+            "失敗の原因を保持するべきです: " + failure);
+        // 失敗した命令列はコンパイルし直さない
+        compiler.request(code);
+        compiler.awaitIdle();
+        assertEquals(failed + 1, compiler.getFailedCount(), "失敗した命令列はコンパイルし直さないはずです");
+    }
+
+    @Test
+    void testExceptionFromCompiledCode() throws InterruptedException {
+        warmUp(PROGRAMS, "uncaught", "([I)I", new int[6]);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> run(PROGRAMS, "uncaught", "([I)I", new int[1]),
+            "コンパイルしたコードの例外がゲストに伝わるべきです");
+        // 例外ハンドラを持つメソッドはコンパイルしない
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, run(PROGRAMS, "divide", "(II)I", 1, 0), "例外を捕捉するべきです");
+        }
+        compiler.awaitIdle();
+        assertNull(methodArea.resolveMethod(PROGRAMS, "divide", "(II)I").getDecodedCode().compiled,
+            "例外ハンドラを持つメソッドはコンパイルしないはずです");
+    }
+
+    @Test
+    void testLoopSwitchesToCompiledCode() throws InterruptedException {
+        compiler.setThreshold(0);
+        run(PROGRAMS, "nestedLoops", "(I)J", 100);
+        long interpreted = interpreter.getExecutedInstructions();
+
+        compiler.setThreshold(100);
+        run(PROGRAMS, "nestedLoops", "(I)J", 10);
+        compiler.awaitIdle();
+        long before = interpreter.getExecutedInstructions();
+        assertEquals(GuestPrograms.nestedLoops(100), run(PROGRAMS, "nestedLoops", "(I)J", 100), "nestedLoopsの結果が一致しません");
+        assertTrue(interpreter.getExecutedInstructions() - before < interpreted / 100,
+            "コンパイルしたコードで実行した命令はインタプリタの命令数に含まれないはずです");
+    }
+
+    @Test
+    void testThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> compiler.setThreshold(-1), "負のしきい値は不正です");
+        compiler.setThreshold(0);
+        assertEquals(0, compiler.getThreshold(), "0はコンパイルしないことを表すべきです");
+        for (int i = 0; i < 5; i++) {
+            run(PROGRAMS, "fib", "(I)I", 10);
+        }
+        assertNull(methodArea.resolveMethod(PROGRAMS, "fib", "(I)I").getDecodedCode().compiled,
+            "しきい値が0の場合はコンパイルしないはずです");
+    }
+}
@@ -0,0 +1,74 @@
+package javavm.execution;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class WorkStealingDequeTest {
+    @Test
+    void testOwner() {
+        WorkStealingDeque deque = new WorkStealingDeque(4);
+        assertTrue(deque.isEmpty(), "生成直後は空です");
+        assertEquals(WorkStealingDeque.EMPTY, deque.pop(), "空の場合はEMPTYを返すべきです");
+        for (int i = 1; i <= 100; i++) {
+            deque.push(i);
+        }
+        assertEquals(100, deque.pop(), "所有者は末尾から取り出すべきです");
+        assertEquals(1, deque.steal(), "盗む側は先頭から取り出すべきです");
+        for (int i = 99; i >= 2; i--) {
+            assertEquals(i, deque.pop(), "拡張の後も要素を失うべきではありません");
+        }
+        assertTrue(deque.isEmpty(), "すべて取り出したら空です");
+        assertEquals(WorkStealingDeque.EMPTY, deque.steal(), "空の場合はEMPTYを返すべきです");
+    }
+
+    @Test
+    void testConcurrentSteal() throws Exception {
+        // 所有者が積みながら取り出し、他のスレッドが盗む。すべての要素がちょうど1回ずつ取り出されるべき
+        int count = 200000;
+        int thieves = 3;
+        WorkStealingDeque deque = new WorkStealingDeque(16);
+        int[] taken = new int[count + 1];
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        int[][] stolen = new int[thieves][count + 1];
+        for (int t = 0; t < thieves; t++) {
+            int[] mine = stolen[t];
+            Thread thread = new Thread(() -> {
+                while (!done.get() || !deque.isEmpty()) {
+                    int value = deque.steal();
+                    if (value > 0) {
+                        mine[value]++;
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 1; i <= count; i++) {
+            deque.push(i);
+            if (i % 3 == 0) {
+                int value = deque.pop();
+                if (value > 0) {
+                    taken[value]++;
+                }
+            }
+        }
+        for (int value; (value = deque.pop()) != WorkStealingDeque.EMPTY; ) {
+            taken[value]++;
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 1; i <= count; i++) {
+            int total = taken[i];
+            for (int[] mine : stolen) {
+                total += mine[i];
+            }
+            assertEquals(1, total, "要素" + i + "を取り出した回数が1ではありません");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package javavm.profile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileReader;
+import javavm.classloader.Classpath;
+import javavm.execution.Interpreter;
+import javavm.execution.MethodArea;
+import javavm.execution.Opcode;
+import javavm.verifier.VerificationCache;
+
+class ProfilerTest {
+    private static final String PROGRAMS = "javavm/execution/GuestPrograms";
+
+    @TempDir
+    Path tempDir;
+
+    private final Profiler profiler = Profiler.getInstance();
+
+    @BeforeEach
+    void setUp() {
+        profiler.setEnabled(true);
+        profiler.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        profiler.setEnabled(false);
+        profiler.reset();
+    }
+
+    /**
+     * テスト用のクラスをクラスパスから読み込むメソッド領域を作成します。
+     */
+    private static MethodArea methodArea() {
+        return new MethodArea(className -> {
+            try (InputStream in = ProfilerTest.class.getResourceAsStream("/" + className + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(className);
+                }
+                try (ClassFileReader reader = new ClassFileReader(in.readAllBytes())) {
+                    return reader.readClassFile();
+                }
+            }
+        });
+    }
+
+    private long invocations(String method) {
+        long total = 0;
+        for (MethodProfile profile : profiler.getMethodProfiles()) {
+            if (profile.getName().equals(method)) {
+                total += profile.getInvocations();
+            }
+        }
+        return total;
+    }
+
+    private long backedges(String method) {
+        long total = 0;
+        for (MethodProfile profile : profiler.getMethodProfiles()) {
+            if (profile.getName().equals(method)) {
+                total += profile.getBackedges();
+            }
+        }
+        return total;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Test
+    void testCountsOpcodesAndInvocations() {
+        MethodArea methodArea = methodArea();
+        Interpreter interpreter = new Interpreter(methodArea);
+        assertEquals(55, interpreter.execute(methodArea.resolveMethod(PROGRAMS, "fib", "(I)I"), 10), "結果が一致しません");
+
+        assertEquals(177, invocations(PROGRAMS + ".fib(I)I"), "再帰呼び出しを含めた呼び出し回数が一致しません");
+        long[] counts = profiler.getOpcodeCounts();
+        assertEquals(interpreter.getExecutedInstructions(), sum(counts), "命令ごとの回数の合計は実行した命令数と一致するべきです");
+        assertEquals(176, counts[Opcode.INVOKESTATIC], "invokestaticの回数が一致しません");
+    }
+
+    @Test
+    void testCountsBackedges() {
+        MethodArea methodArea = methodArea();
+        Interpreter interpreter = new Interpreter(methodArea);
+        interpreter.execute(methodArea.resolveMethod(PROGRAMS, "nestedLoops", "(I)J"), 10);
+
+        assertEquals(1, invocations(PROGRAMS + ".nestedLoops(I)J"), "呼び出し回数が一致しません");
+        assertEquals(10 + 10 * 10, backedges(PROGRAMS + ".nestedLoops(I)J"), "ループの繰り返しの回数が一致しません");
+    }
+
+    @Test
+    void testDisabled() {
+        profiler.setEnabled(false);
+        MethodArea methodArea = methodArea();
+        new Interpreter(methodArea).execute(methodArea.resolveMethod(PROGRAMS, "fib", "(I)I"), 10);
+
+        assertEquals(0, sum(profiler.getOpcodeCounts()), "無効の間は命令を数えないはずです");
+        assertEquals(0, invocations(PROGRAMS + ".fib(I)I"), "無効の間にデコードしたメソッドは数えないはずです");
+    }
+
+    @Test
+    void testLoadPhases() throws Exception {
+        Path classes = tempDir.resolve("classes");
+        Path file = classes.resolve("javavm/execution/GuestPrograms.class");
+        Files.createDirectories(file.getParent());
+        try (InputStream in = ProfilerTest.class.getResourceAsStream("/" + PROGRAMS + ".class")) {
+            Files.write(file, in.readAllBytes());
+        }
+        ClassFile classFile;
+        try (Classpath classpath = Classpath.open(List.of(classes))) {
+            classFile = classpath.load(PROGRAMS);
+        }
+        new VerificationCache().verify(classFile);
+
+        for (LoadPhase phase : LoadPhase.values()) {
+            assertEquals(1, profiler.getLoadCount(phase), "段階ごとに1回計測するべきです: " + phase);
+            assertTrue(profiler.getLoadNanos(phase) > 0, "時間を計測するべきです: " + phase);
+        }
+    }
+
+    @Test
+    void testReport() {
+        MethodArea methodArea = methodArea();
+        new Interpreter(methodArea).execute(methodArea.resolveMethod(PROGRAMS, "fib", "(I)I"), 10);
+
+        String text = profiler.report(Profiler.Format.TEXT);
+        assertTrue(text.contains(PROGRAMS + ".fib(I)I"), "メソッドが含まれていません");
+        assertTrue(text.indexOf("invokestatic") > 0, "命令が含まれていません");
+        String json = profiler.report(Profiler.Format.JSON);
+        assertTrue(json.startsWith("{") && json.trim().endsWith("}"), "JSONのオブジェクトではありません");
+        assertTrue(json.contains("{\"method\": \"" + PROGRAMS + ".fib(I)I\", \"invocations\": 177, \"backedges\": 0}"),
+            "メソッドの回数が含まれていません");
+    }
+}
@@ -0,0 +1,238 @@
+package javavm.verifier;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javavm.classfile.ClassFile;
+import javavm.classfile.ClassFileReader;
+
+class TypeCheckingVerifierTest {
+    private static final String CLASS_NAME = "test/Sample";
+
+    /**
+     * staticメソッドrunを1つだけ持つクラスファイルを生成します。
+     * 定数プールの#10はjava/lang/StringのCONSTANT_Classです。
+     * @param stackMapTable StackMapTable属性の内容。nullの場合は属性を出力しない
+     */
+    static byte[] createClassFile(String descriptor, int maxStack, int maxLocals, byte[] code, byte[] stackMapTable)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(11);
+        // #1, #2: このクラス、#3, #4: java/lang/Object
+        out.writeByte(1);
+        out.writeUTF(CLASS_NAME);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // #5: メソッド名、#6: 記述子、#7, #8: 属性名
+        out.writeByte(1);
+        out.writeUTF("run");
+        out.writeByte(1);
+        out.writeUTF(descriptor);
+        out.writeByte(1);
+        out.writeUTF("Code");
+        out.writeByte(1);
+        out.writeUTF("StackMapTable");
+        // #9, #10: java/lang/String
+        out.writeByte(1);
+        out.writeUTF("java/lang/String");
+        out.writeByte(7);
+        out.writeShort(9);
+
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        // public static run
+        out.writeShort(1);
+        out.writeShort(0x0009);
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);
+        out.writeShort(7);
+        int stackMapLength = stackMapTable == null ? 0 : 6 + stackMapTable.length;
+        out.writeInt(12 + code.length + stackMapLength);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        if (stackMapTable == null) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(1);
+            out.writeShort(8);
+            out.writeInt(stackMapTable.length);
+            out.write(stackMapTable);
+        }
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    static ClassFile read(byte[] content) {
+        try (ClassFileReader reader = new ClassFileReader(content)) {
+            return reader.readClassFile();
+        }
+    }
+
+    private static Verification verify(String descriptor, int maxStack, int maxLocals, int[] code, int... stackMapTable)
+            throws IOException {
+        return TypeCheckingVerifier.verify(read(createClassFile(descriptor, maxStack, maxLocals, toBytes(code),
+                stackMapTable.length == 0 ? null : toBytes(stackMapTable))));
+    }
+
+    private static byte[] toBytes(int[] values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    // iload_0; ifeq +5; iconst_1; ireturn; iconst_0; ireturn
+    private static final int[] BRANCH = {0x1A, 0x99, 0x00, 0x05, 0x04, 0xAC, 0x03, 0xAC};
+
+    @Test
+    void testStraightLineCode() throws Exception {
+        // iload_0; ireturn
+        Verification verification = verify("(I)I", 1, 1, new int[] {0x1A, 0xAC});
+        assertEquals(CLASS_NAME, verification.getClassName(), "クラス名が一致しません");
+        assertEquals(0, verification.getConstraintCount(), "制約はないはずです");
+    }
+
+    @Test
+    void testOperandTypeMismatch() {
+        // aload_0; areturn（引数はint）
+        VerifyError error = assertThrows(VerifyError.class, () -> verify("(I)Ljava/lang/Object;", 1, 1, new int[] {0x2A, 0xB0}),
+            "intのローカル変数をaloadで読み込めないはずです");
+        assertTrue(error.getMessage().contains("pc=0"), "失敗した命令の位置を含めるべきです: " + error.getMessage());
+        // iconst_0; areturn
+        assertThrows(VerifyError.class, () -> verify("()Ljava/lang/Object;", 1, 0, new int[] {0x03, 0xB0}),
+            "intを参照型として返せないはずです");
+        // lconst_0; ireturn
+        assertThrows(VerifyError.class, () -> verify("()I", 2, 0, new int[] {0x09, 0xAC}),
+            "longをintとして返せないはずです");
+    }
+
+    @Test
+    void testStackBounds() {
+        // iconst_0; iconst_0; pop2; return（max_stack = 1）
+        assertThrows(VerifyError.class, () -> verify("()V", 1, 0, new int[] {0x03, 0x03, 0x58, 0xB1}),
+            "max_stackを超えて積めないはずです");
+        // pop; return
+        assertThrows(VerifyError.class, () -> verify("()V", 1, 0, new int[] {0x57, 0xB1}),
+            "空のスタックから取り出せないはずです");
+        // lconst_0; pop; return
+        assertThrows(VerifyError.class, () -> verify("()V", 2, 0, new int[] {0x09, 0x57, 0xB1}),
+            "longの片方だけを取り出せないはずです");
+    }
+
+    @Test
+    void testFallingOffEnd() {
+        // iconst_0（returnがない）
+        assertThrows(VerifyError.class, () -> verify("()V", 1, 0, new int[] {0x03}),
+            "バイトコードの末尾を超えて実行が継続してはいけません");
+    }
+
+    @Test
+    void testBranchRequiresStackMapFrame() throws Exception {
+        VerifyError error = assertThrows(VerifyError.class, () -> verify("(I)I", 1, 1, BRANCH),
+            "分岐先にフレームがない場合は失敗するべきです");
+        assertTrue(error.getMessage().contains("スタックマップフレーム"), "フレームがないことを示すべきです: " + error.getMessage());
+
+        // same_frame（オフセット6）
+        verify("(I)I", 1, 1, BRANCH, 0x00, 0x01, 6);
+    }
+
+    @Test
+    void testFrameMismatch() {
+        // full_frame（オフセット6、ローカル変数 [java/lang/String]、スタック []）はintの引数と一致しない
+        assertThrows(VerifyError.class,
+            () -> verify("(I)I", 1, 1, BRANCH, 0x00, 0x01, 255, 0x00, 0x06, 0x00, 0x01, 7, 0x00, 10, 0x00, 0x00),
+            "ローカル変数の型がフレームと一致しない場合は失敗するべきです");
+        // フレームが命令の境界にない（オフセット3）
+        assertThrows(VerifyError.class, () -> verify("(I)I", 1, 1, BRANCH, 0x00, 0x02, 3, 2),
+            "命令の途中にあるフレームは拒否されるべきです");
+    }
+
+    @Test
+    void testCompiledClasses() throws Exception {
+        // javacが生成した実際のクラスファイル（テストクラスのディレクトリ）はすべて検証に成功する
+        Path testClasses = Path.of(TypeCheckingVerifierTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(testClasses)) {
+            files = stream.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        assertFalse(files.isEmpty(), "クラスファイルが見つかりません");
+        for (Path file : files) {
+            ClassFile classFile = read(Files.readAllBytes(file));
+            assertDoesNotThrow(() -> TypeCheckingVerifier.verify(classFile), "検証に失敗しました: " + file);
+        }
+    }
+
+    static class Base {
+    }
+
+    static class Derived extends Base {
+    }
+
+    static class Unrelated {
+    }
+
+    static Base upcast(Derived derived) {
+        return derived;
+    }
+
+    private static ClassFile load(String name) throws IOException {
+        try (InputStream in = TypeCheckingVerifierTest.class.getResourceAsStream(name.substring(name.lastIndexOf('/') + 1) + ".class")) {
+            return read(in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testConstraints() throws Exception {
+        String self = "javavm/verifier/TypeCheckingVerifierTest";
+        String base = self + "$Base";
+        String derived = self + "$Derived";
+        Verification verification = TypeCheckingVerifier.verify(load(self));
+        boolean found = false;
+        for (int i = 0; i < verification.getConstraintCount(); i++) {
+            found |= verification.getSource(i).equals(derived) && verification.getTarget(i).equals(base);
+        }
+        assertTrue(found, "DerivedをBaseとして返す制約が記録されるべきです");
+
+        Map<String, ClassFile> classes = new HashMap<>();
+        classes.put(base, load(base));
+        classes.put(derived, load(derived));
+        assertDoesNotThrow(() -> verification.checkConstraints(classes::get), "継承関係を満たす制約は成功するべきです");
+        assertDoesNotThrow(() -> verification.checkConstraints(name -> null), "継承関係が分からない制約は満たすとみなすべきです");
+
+        // Derivedがjava/lang/Objectの直接のサブクラスであれば、Baseには代入できない
+        classes.put(derived, load(self + "$Unrelated"));
+        try (InputStream in = Object.class.getResourceAsStream("Object.class")) {
+            classes.put("java/lang/Object", read(in.readAllBytes()));
+        }
+        VerifyError error = assertThrows(VerifyError.class, () -> verification.checkConstraints(classes::get),
+            "継承関係を満たさない制約は失敗するべきです");
+        assertTrue(error.getMessage().contains(base), "代入先のクラスを含めるべきです: " + error.getMessage());
+    }
+}
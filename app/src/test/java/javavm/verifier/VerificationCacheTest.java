@@ -0,0 +1,87 @@
+package javavm.verifier;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javavm.classfile.ClassFile;
+
+class VerificationCacheTest {
+    private static ClassFile createClass(int[] code) throws Exception {
+        byte[] bytes = new byte[code.length];
+        for (int i = 0; i < code.length; i++) {
+            bytes[i] = (byte) code[i];
+        }
+        return TypeCheckingVerifierTest.read(TypeCheckingVerifierTest.createClassFile("(I)I", 1, 1, bytes, null));
+    }
+
+    @Test
+    void testSameContentIsVerifiedOnce() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        // iload_0; ireturn
+        Verification first = cache.verify(createClass(new int[] {0x1A, 0xAC}));
+        Verification second = cache.verify(createClass(new int[] {0x1A, 0xAC}));
+
+        assertSame(first, second, "内容が同じクラスは同じ結果を共有するべきです");
+        assertEquals(1, cache.getMissCount(), "検証は一度だけ行うべきです");
+        assertEquals(1, cache.getHitCount(), "2回目はキャッシュから返すべきです");
+        assertEquals(1, cache.size(), "記録した結果の数が一致しません");
+
+        // iconst_0; ireturn は内容が異なるため別に検証する
+        cache.verify(createClass(new int[] {0x03, 0xAC}));
+        assertEquals(2, cache.getMissCount(), "内容が異なるクラスは検証するべきです");
+
+        cache.clear();
+        assertEquals(0, cache.size(), "クリア後は結果がないはずです");
+        cache.verify(createClass(new int[] {0x1A, 0xAC}));
+        assertEquals(3, cache.getMissCount(), "クリア後は検証し直すべきです");
+    }
+
+    @Test
+    void testFailureIsCached() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        // aload_0; ireturn（引数はint）
+        int[] code = {0x2A, 0xAC};
+        VerifyError first = assertThrows(VerifyError.class, () -> cache.verify(createClass(code)),
+            "型検査に失敗するべきです");
+        VerifyError second = assertThrows(VerifyError.class, () -> cache.verify(createClass(code)),
+            "記録した失敗を返すべきです");
+
+        assertEquals(first.getMessage(), second.getMessage(), "失敗の内容が一致するべきです");
+        assertEquals(1, cache.getMissCount(), "失敗したクラスも検証は一度だけ行うべきです");
+        assertEquals(1, cache.getHitCount(), "2回目はキャッシュから返すべきです");
+    }
+
+    @Test
+    void testDigestIsComputedOnlyForComparison() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        ClassFile first = createClass(new int[] {0x1A, 0xAC});
+        cache.verify(first);
+        cache.verify(first);
+        assertFalse(first.isDigestComputed(), "初めて検証するクラスと記録したクラス自体はダイジェストを計算しないはずです");
+        assertTrue(first.getMethods()[0].isCodeDeferred(), "検証はCode属性をデコードしないはずです");
+
+        ClassFile second = createClass(new int[] {0x1A, 0xAC});
+        cache.verify(second);
+        assertTrue(second.isDigestComputed(), "同じ名前の結果と比べるクラスはダイジェストを計算するべきです");
+        assertEquals(1, cache.getMissCount(), "内容が同じクラスは検証し直さないはずです");
+        assertEquals(2, cache.getHitCount(), "記録した結果を返すべきです");
+    }
+
+    @Test
+    void testResultRoundTrip() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        ClassFile good = createClass(new int[] {0x1A, 0xAC});
+        Verification verification = cache.verify(good);
+        Verification restored = Verification.fromBytes(verification.getClassName(), cache.toArchive(good));
+        assertNull(restored.failure(), "成功した結果が復元されるべきです");
+        assertEquals(verification.getConstraintCount(), restored.getConstraintCount(), "制約の数が一致しません");
+
+        ClassFile bad = createClass(new int[] {0x2A, 0xAC});
+        VerifyError error = assertThrows(VerifyError.class, () -> cache.verify(bad), "型検査に失敗するべきです");
+        Verification failed = Verification.fromBytes(bad.getName().toString(), cache.toArchive(bad));
+        assertEquals(error.getMessage(), failed.failure(), "失敗の内容が復元されるべきです");
+
+        assertNull(cache.toArchive(createClass(new int[] {0x03, 0xAC})), "記録していない内容のクラスはnullであるべきです");
+        assertNull(Verification.fromBytes("test/Sample", new byte[] {1}), "不正なバイト列はnullであるべきです");
+    }
+}